@@ -65,6 +65,8 @@ import org.helios.jmx.dynamic.annotations.JMXNotificationType;
 import org.helios.jmx.dynamic.annotations.JMXNotifications;
 import org.helios.jmx.dynamic.annotations.JMXOperation;
 import org.helios.jmx.dynamic.annotations.options.AttributeMutabilityOption;
+import org.helios.collectors.execution.CollectionExecutor;
+import org.helios.collectors.execution.CollectionStats;
 import org.helios.collectors.scheduler.HeliosScheduler;
 import org.helios.jmx.threadservices.scheduling.NamedTask;
 import org.helios.jmx.threadservices.scheduling.ObjectExecutionTask;
@@ -286,6 +288,31 @@ public abstract class AbstractCollector extends ManagedObjectDynamicMBean implem
 	/** Total number of collectors running at this time time in this JVM. */
 	protected static AtomicInteger numberOfCollectorsRunning = new AtomicInteger();
 	
+	/**
+	 * If true, scheduled collections are submitted to the shared {@link CollectionExecutor} 
+	 * which skips overlapping runs, bounds concurrency and enforces the collect timeout. 
+	 * If false, collections run on the scheduler's thread.
+	 */
+	protected boolean useCollectionExecutor = true;
+	
+	/**
+	 * The deadline for a collection in milliseconds, after which the collecting thread is interrupted. 
+	 * A value of zero means no deadline. Only enforced when the CollectionExecutor is used. 
+	 */
+	protected long collectDeadline = 0L;
+	
+	/** The margin in ms. by which the executor deadline exceeds a collector's own collection timeout */
+	public static final long COLLECT_DEADLINE_MARGIN = 5000L;
+	
+	/**
+	 * The window in milliseconds within which the start of each collection is offset to spread collectors
+	 * sharing a frequency. A negative value uses the CollectionExecutor's default. The window is capped at half the frequency.
+	 */
+	protected long collectJitter = -1L;
+	
+	/** The execution state and latency statistics of this collector's collections */
+	protected final CollectionStats collectionStats = new CollectionStats();
+	
 	/**
 	 * If saveStackTraces is true, the 
 	 * collector will retain a copy of the thread stack trace after the 
@@ -695,7 +722,11 @@ public abstract class AbstractCollector extends ManagedObjectDynamicMBean implem
 	 * Callback method for HeliosScheduler to trigger the start of a collection. 
 	 */
 	public CollectionResult call() throws CollectorException {
-		collect();
+		if(useCollectionExecutor) {
+			CollectionExecutor.getInstance().submit(this);
+		} else {
+			collect();
+		}
 		return collectionResult;
 	}	
 	
@@ -785,6 +816,7 @@ public abstract class AbstractCollector extends ManagedObjectDynamicMBean implem
 				executeExceptionScript();
 			}finally {
 				totalCollectionCount++;
+				collectionStats.recordLatency(System.currentTimeMillis()-lastTimeCollectionStarted);
 				setState(currState);
 				if(!errors){
 					postCollect();
@@ -1926,6 +1958,176 @@ public abstract class AbstractCollector extends ManagedObjectDynamicMBean implem
 		this.cacheEntryTimeToLive = cacheEntryTimeToLive;
 	}
 	
+	/**
+	 * Returns the execution state and latency statistics of this collector's collections
+	 * @return the collection stats
+	 */
+	public CollectionStats getCollectionStats() {
+		return collectionStats;
+	}
+	
+	/**
+	 * Returns the host this collector collects from, used to bound concurrent collections per host.
+	 * The default is null, meaning no per host bound. Collectors of remote targets should override.
+	 * @return the target host or null
+	 */
+	@JMXAttribute(name="TargetHost", description="The host this collector collects from", mutability=AttributeMutabilityOption.READ_ONLY)
+	public String getTargetHost() {
+		return null;
+	}
+	
+	/**
+	 * Indicates if scheduled collections are submitted to the shared CollectionExecutor
+	 * @return true if the CollectionExecutor is used
+	 */
+	@JMXAttribute(name="UseCollectionExecutor", description="Indicates if scheduled collections are submitted to the shared CollectionExecutor", mutability=AttributeMutabilityOption.READ_WRITE)
+	public boolean getUseCollectionExecutor() {
+		return useCollectionExecutor;
+	}
+
+	/**
+	 * Sets if scheduled collections are submitted to the shared CollectionExecutor
+	 * @param useCollectionExecutor true to use the CollectionExecutor
+	 */
+	public void setUseCollectionExecutor(boolean useCollectionExecutor) {
+		this.useCollectionExecutor = useCollectionExecutor;
+	}
+
+	/**
+	 * Returns the collection deadline in ms.
+	 * @return the collection deadline in ms. Zero means no deadline.
+	 */
+	@JMXAttribute(name="CollectDeadline", description="The collection deadline in ms. after which the collecting thread is interrupted", mutability=AttributeMutabilityOption.READ_WRITE)
+	public long getCollectDeadline() {
+		return collectDeadline;
+	}
+
+	/**
+	 * Sets the collection deadline in ms.
+	 * @param collectDeadline the collection deadline in ms. Zero means no deadline.
+	 */
+	public void setCollectDeadline(long collectDeadline) {
+		this.collectDeadline = Math.max(0L, collectDeadline);
+	}
+	
+	/**
+	 * Returns the deadline the CollectionExecutor enforces. This is the configured deadline, raised to the collector's
+	 * own collection timeout plus {@link #COLLECT_DEADLINE_MARGIN} so a collector gets to time out its own requests first.
+	 * @return the effective collection deadline in ms. Zero means no deadline.
+	 */
+	@JMXAttribute(name="EffectiveCollectDeadline", description="The collection deadline in ms. enforced by the CollectionExecutor", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getEffectiveCollectDeadline() {
+		if(collectDeadline<=0) return 0L;
+		long own = getInternalCollectTimeout();
+		return own>0 ? Math.max(collectDeadline, own + COLLECT_DEADLINE_MARGIN) : collectDeadline;
+	}
+	
+	/**
+	 * Returns the collector's own timeout for a whole collection. The default is zero, meaning none. 
+	 * Collectors that time out their own requests should override.
+	 * @return the collector's own collection timeout in ms.
+	 */
+	protected long getInternalCollectTimeout() {
+		return 0L;
+	}
+
+	/**
+	 * Returns the collection start jitter window in ms.
+	 * @return the jitter window in ms. A negative value uses the CollectionExecutor's default.
+	 */
+	@JMXAttribute(name="CollectJitter", description="The collection start jitter window in ms.", mutability=AttributeMutabilityOption.READ_WRITE)
+	public long getCollectJitter() {
+		return collectJitter;
+	}
+
+	/**
+	 * Sets the collection start jitter window in ms.
+	 * @param collectJitter the jitter window in ms. A negative value uses the CollectionExecutor's default.
+	 */
+	public void setCollectJitter(long collectJitter) {
+		this.collectJitter = collectJitter;
+	}
+	
+	/**
+	 * Returns the median collection latency
+	 * @return the 50th percentile collection latency in ms.
+	 */
+	@JMXAttribute(name="CollectionLatencyP50", description="The median collection latency in ms.", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getCollectionLatencyP50() {
+		return collectionStats.getLatency().getPercentile(50);
+	}
+	
+	/**
+	 * Returns the 95th percentile collection latency
+	 * @return the 95th percentile collection latency in ms.
+	 */
+	@JMXAttribute(name="CollectionLatencyP95", description="The 95th percentile collection latency in ms.", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getCollectionLatencyP95() {
+		return collectionStats.getLatency().getPercentile(95);
+	}
+	
+	/**
+	 * Returns the 99th percentile collection latency
+	 * @return the 99th percentile collection latency in ms.
+	 */
+	@JMXAttribute(name="CollectionLatencyP99", description="The 99th percentile collection latency in ms.", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getCollectionLatencyP99() {
+		return collectionStats.getLatency().getPercentile(99);
+	}
+	
+	/**
+	 * Returns the longest collection latency
+	 * @return the longest collection latency in ms.
+	 */
+	@JMXAttribute(name="CollectionLatencyMax", description="The longest collection latency in ms.", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getCollectionLatencyMax() {
+		return collectionStats.getLatency().getMax();
+	}
+	
+	/**
+	 * Returns the collection latency histogram
+	 * @return the non empty latency buckets
+	 */
+	@JMXAttribute(name="CollectionLatencyHistogram", description="The collection latency histogram", mutability=AttributeMutabilityOption.READ_ONLY)
+	public String getCollectionLatencyHistogram() {
+		return collectionStats.getLatency().toString();
+	}
+	
+	/**
+	 * Returns the number of collections skipped because the prior collection had not completed
+	 * @return the overlap skip count
+	 */
+	@JMXAttribute(name="OverlapSkipCount", description="The number of collections skipped because the prior collection had not completed", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getOverlapSkipCount() {
+		return collectionStats.getOverlapSkips();
+	}
+	
+	/**
+	 * Returns the number of collections that ran past the collect timeout
+	 * @return the deadline overrun count
+	 */
+	@JMXAttribute(name="DeadlineOverrunCount", description="The number of collections that ran past the collect timeout", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getDeadlineOverrunCount() {
+		return collectionStats.getDeadlineOverruns();
+	}
+	
+	/**
+	 * Returns the number of collections deferred by a concurrency limit
+	 * @return the deferral count
+	 */
+	@JMXAttribute(name="ConcurrencyDeferralCount", description="The number of collections deferred by a concurrency limit", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getConcurrencyDeferralCount() {
+		return collectionStats.getDeferrals();
+	}
+	
+	/**
+	 * Resets the collection latency histogram and the skip, overrun and deferral counts
+	 */
+	@JMXOperation (name="resetCollectionStats", description="Resets the collection latency histogram and the skip, overrun and deferral counts")
+	public void resetCollectionStats() {
+		collectionStats.reset();
+	}
+	
 	
     
 }
@@ -0,0 +1,628 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.collectors.execution;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+import org.helios.collectors.AbstractCollector;
+import org.helios.helpers.ConfigurationHelper;
+import org.helios.helpers.JMXHelper;
+import org.helios.helpers.JMXHelperExtended;
+import org.helios.jmx.dynamic.ManagedObjectDynamicMBean;
+import org.helios.jmx.dynamic.annotations.JMXAttribute;
+import org.helios.jmx.dynamic.annotations.JMXManagedObject;
+import org.helios.jmx.dynamic.annotations.JMXOperation;
+import org.helios.jmx.dynamic.annotations.JMXParameter;
+import org.helios.jmx.dynamic.annotations.options.AttributeMutabilityOption;
+
+/**
+ * <p>Title: CollectionExecutor</p>
+ * <p>Description: The shared engine that runs collections off the scheduler's threads. The scheduler's callback submits
+ * the collector and returns immediately, and the executor then:<ul>
+ * <li>Skips and counts the collection if the collector's prior collection is still in flight, rather than stacking runs.</li>
+ * <li>Delays the start by a stable, per collector offset within the collector's jitter window so collectors sharing a 
+ * frequency do not all fire on the same boundary.</li>
+ * <li>Bounds the number of concurrent collections per collector class and per target host. A collection denied a permit
+ * is queued on the denying limit and dispatched when a permit is released.</li>
+ * <li>Interrupts a collection that runs past the collector's deadline and counts the overrun.</li>
+ * </ul></p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.collectors.execution.CollectionExecutor</code></p>
+ */
+@JMXManagedObject(annotated=true, declared=true)
+public class CollectionExecutor extends ManagedObjectDynamicMBean implements ThreadFactory {
+	/** The worker pool that runs collections */
+	protected final ThreadPoolExecutor workers;
+	/** The timer for start offsets and deadlines */
+	protected final ScheduledThreadPoolExecutor timer;
+	/** The worker pool size */
+	protected final int poolSize;
+	/** The per collector class limits keyed by class name */
+	protected final Map<String, ConcurrencyLimit> classLimits = new HashMap<String, ConcurrencyLimit>();
+	/** The per target host limits keyed by host */
+	protected final Map<String, ConcurrencyLimit> hostLimits = new HashMap<String, ConcurrencyLimit>();
+	/** Guards the limits */
+	protected final Object limitLock = new Object();
+	/** The default limit for concurrent collections of one collector class */
+	protected volatile int defaultClassLimit;
+	/** The default limit for concurrent collections against one target host */
+	protected volatile int defaultHostLimit;
+	/** The default start jitter window in ms. */
+	protected volatile long defaultJitter;
+	
+	/** The number of collections submitted */
+	protected final AtomicLong submitted = new AtomicLong(0L);
+	/** The number of collections completed */
+	protected final AtomicLong completed = new AtomicLong(0L);
+	/** The number of collections skipped because the prior collection was in flight */
+	protected final AtomicLong overlapSkips = new AtomicLong(0L);
+	/** The number of collections that ran past their deadline */
+	protected final AtomicLong overruns = new AtomicLong(0L);
+	/** The number of collections deferred by a concurrency limit */
+	protected final AtomicLong deferrals = new AtomicLong(0L);
+	/** The number of collections currently waiting on a concurrency limit */
+	protected final AtomicInteger waiting = new AtomicInteger(0);
+	
+	/** Class logger */
+	protected static final Logger LOG = Logger.getLogger(CollectionExecutor.class);
+	/** A serial number generator for thread names */
+	protected static final AtomicInteger serial = new AtomicInteger(0);
+	/** The static singleton reference */
+	protected static volatile CollectionExecutor collectionExecutor = null;
+	/** The singleton lock */
+	protected static final Object lock = new Object();
+	
+	/** The system property or environmental variable that overrides the worker pool size */
+	public static final String POOL_SIZE_PROP = "org.helios.collectors.executor.poolsize";
+	/** The default worker pool size */
+	public static final int DEFAULT_POOL_SIZE = 64;
+	/** The system property or environmental variable that overrides the default per collector class limit */
+	public static final String CLASS_LIMIT_PROP = "org.helios.collectors.executor.classlimit";
+	/** The default per collector class limit */
+	public static final int DEFAULT_CLASS_LIMIT = 32;
+	/** The system property or environmental variable that overrides the default per target host limit */
+	public static final String HOST_LIMIT_PROP = "org.helios.collectors.executor.hostlimit";
+	/** The default per target host limit */
+	public static final int DEFAULT_HOST_LIMIT = 4;
+	/** The system property or environmental variable that overrides the default start jitter window in ms. */
+	public static final String JITTER_PROP = "org.helios.collectors.executor.jitter";
+	/** The default start jitter window in ms. */
+	public static final long DEFAULT_JITTER = 5000L;
+	/** The service's JMX ObjectName */
+	public static final ObjectName OBJECT_NAME = JMXHelper.objectName("org.helios.collectors:service=CollectionExecutor");
+	
+	/**
+	 * Constructs the singleton CollectionExecutor
+	 */
+	protected CollectionExecutor() {
+		poolSize = intProperty(POOL_SIZE_PROP, DEFAULT_POOL_SIZE);
+		defaultClassLimit = intProperty(CLASS_LIMIT_PROP, DEFAULT_CLASS_LIMIT);
+		defaultHostLimit = intProperty(HOST_LIMIT_PROP, DEFAULT_HOST_LIMIT);
+		defaultJitter = intProperty(JITTER_PROP, (int)DEFAULT_JITTER);
+		workers = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), this);
+		workers.allowCoreThreadTimeOut(true);
+		timer = new ScheduledThreadPoolExecutor(1, this);
+		try {
+			JMXHelperExtended.getHeliosMBeanServer().registerMBean(this, OBJECT_NAME);
+		} catch (Exception e) {
+			LOG.warn("Failed to register management interface. Continuing without.");
+		}
+		LOG.info("CollectionExecutor Started with [" + poolSize + "] workers.");
+	}
+	
+	/**
+	 * Acquires the singleton instance of the CollectionExecutor.
+	 * @return the CollectionExecutor
+	 */
+	public static CollectionExecutor getInstance() {
+		if(collectionExecutor!=null) return collectionExecutor;
+		synchronized(lock) {
+			if(collectionExecutor!=null) return collectionExecutor;
+			collectionExecutor = new CollectionExecutor();
+		}
+		return collectionExecutor;
+	}
+	
+	/**
+	 * Reads a positive int from the environment or system properties
+	 * @param name The property name
+	 * @param defaultValue The value to use if the property is not set or is invalid
+	 * @return the property value
+	 */
+	protected static int intProperty(String name, int defaultValue) {
+		try {
+			int value = Integer.parseInt(ConfigurationHelper.getEnvThenSystemProperty(name, "" + defaultValue).trim());
+			return value<0 ? defaultValue : value;
+		} catch (Exception e) {
+			return defaultValue;
+		}
+	}
+	
+	/**
+	 * Submits a collection of the passed collector. Returns immediately.
+	 * @param collector The collector to collect
+	 * @return true if the collection was submitted, false if it was skipped because the prior collection is still in flight
+	 */
+	public boolean submit(final AbstractCollector collector) {
+		if(collector==null) throw new IllegalArgumentException("The passed collector was null", new Throwable());
+		final CollectionStats stats = collector.getCollectionStats();
+		if(!stats.tryBegin()) {
+			overlapSkips.incrementAndGet();
+			if(LOG.isDebugEnabled()) LOG.debug("Skipping collection of [" + collector.getBeanName() + "] as the prior collection is still in flight");
+			return false;
+		}
+		submitted.incrementAndGet();
+		final CollectionRun run = new CollectionRun(collector, stats);
+		long offset = startOffset(collector);
+		try {
+			if(offset>0) {
+				timer.schedule(new Runnable() {
+					public void run() {
+						admit(run);
+					}
+				}, offset, TimeUnit.MILLISECONDS);
+			} else {
+				admit(run);
+			}
+		} catch (RuntimeException e) {
+			stats.end();
+			throw e;
+		}
+		return true;
+	}
+	
+	/**
+	 * Computes the start offset of the passed collector within its jitter window. 
+	 * The offset is derived from the bean name so it is the same on every period.
+	 * @param collector The collector
+	 * @return the start offset in ms.
+	 */
+	protected long startOffset(AbstractCollector collector) {
+		long jitter = collector.getCollectJitter();
+		if(jitter<0) jitter = defaultJitter;
+		long frequency = collector.getFrequency();
+		if(frequency>0 && jitter>frequency/2) jitter = frequency/2;
+		if(jitter<=0) return 0L;
+		String name = collector.getBeanName();
+		int hash = name==null ? System.identityHashCode(collector) : name.hashCode();
+		return (hash & Integer.MAX_VALUE) % jitter;
+	}
+	
+	/**
+	 * Runs the passed collection if permits are available from its limits, otherwise queues it on the first limit that denied it.
+	 * @param run The collection to admit
+	 */
+	protected void admit(CollectionRun run) {
+		synchronized(limitLock) {
+			if(!tryAcquire(run)) {
+				if(!run.deferred) {
+					run.deferred = true;
+					run.stats.deferred();
+					deferrals.incrementAndGet();
+				}
+				waiting.incrementAndGet();
+				return;
+			}
+		}
+		dispatch(run);
+	}
+	
+	/**
+	 * Acquires a permit from each of the passed collection's limits, or queues it on the first limit that is exhausted.
+	 * Must be called holding the limit lock.
+	 * @param run The collection
+	 * @return true if the permits were acquired
+	 */
+	protected boolean tryAcquire(CollectionRun run) {
+		if(run.classLimit==null) run.classLimit = limit(classLimits, run.collector.getClass().getName(), defaultClassLimit);
+		if(run.hostLimit==null) {
+			String host = run.collector.getTargetHost();
+			if(host!=null && host.trim().length()>0) run.hostLimit = limit(hostLimits, host.trim().toLowerCase(), defaultHostLimit);
+		}
+		if(!run.classLimit.available()) {
+			run.classLimit.waiting.add(run);
+			return false;
+		}
+		if(run.hostLimit!=null && !run.hostLimit.available()) {
+			run.hostLimit.waiting.add(run);
+			return false;
+		}
+		run.classLimit.active++;
+		if(run.hostLimit!=null) run.hostLimit.active++;
+		return true;
+	}
+	
+	/**
+	 * Returns the named limit, creating it with the default if it does not exist. Must be called holding the limit lock.
+	 * @param limits The limit map
+	 * @param name The limit name
+	 * @param defaultLimit The limit to create with
+	 * @return the limit
+	 */
+	protected static ConcurrencyLimit limit(Map<String, ConcurrencyLimit> limits, String name, int defaultLimit) {
+		ConcurrencyLimit limit = limits.get(name);
+		if(limit==null) {
+			limit = new ConcurrencyLimit(name, Math.max(1, defaultLimit));
+			limits.put(name, limit);
+		}
+		return limit;
+	}
+	
+	/**
+	 * Hands the admitted collection to the worker pool
+	 * @param run The admitted collection
+	 */
+	protected void dispatch(CollectionRun run) {
+		try {
+			workers.execute(run);
+		} catch (RuntimeException e) {
+			LOG.error("Failed to dispatch collection of [" + run.collector.getBeanName() + "]", e);
+			release(run);
+		}
+	}
+	
+	/**
+	 * Releases the permits of the completed collection and admits whichever waiting collections can now run
+	 * @param run The completed collection
+	 */
+	protected void release(CollectionRun run) {
+		run.stats.end();
+		completed.incrementAndGet();
+		List<CollectionRun> ready = new ArrayList<CollectionRun>(2);
+		synchronized(limitLock) {
+			run.classLimit.active--;
+			if(run.hostLimit!=null) run.hostLimit.active--;
+			drain(run.classLimit, ready);
+			if(run.hostLimit!=null) drain(run.hostLimit, ready);
+		}
+		for(CollectionRun next: ready) {
+			dispatch(next);
+		}
+	}
+	
+	/**
+	 * Admits waiting collections from the passed limit while it has permits. A waiting collection that is denied by its
+	 * other limit moves to that limit's queue. Must be called holding the limit lock.
+	 * @param limit The limit to drain
+	 * @param ready Collects the admitted collections
+	 */
+	protected void drain(ConcurrencyLimit limit, List<CollectionRun> ready) {
+		while(limit.available() && !limit.waiting.isEmpty()) {
+			CollectionRun next = (CollectionRun)limit.waiting.poll();
+			if(tryAcquire(next)) {
+				waiting.decrementAndGet();
+				ready.add(next);
+			}
+		}
+	}
+	
+	/**
+	 * Sets the concurrency limit for a collector class
+	 * @param className The collector class name
+	 * @param limit The maximum number of concurrent collections
+	 */
+	@JMXOperation(name="setClassLimit", description="Sets the concurrency limit for a collector class")
+	public void setClassLimit(
+			@JMXParameter(name="className", description="The collector class name") String className, 
+			@JMXParameter(name="limit", description="The maximum number of concurrent collections") int limit) {
+		if(className==null) throw new IllegalArgumentException("The passed class name was null", new Throwable());
+		setLimit(classLimits, className, limit);
+	}
+	
+	/**
+	 * Sets the concurrency limit for a target host
+	 * @param host The target host
+	 * @param limit The maximum number of concurrent collections
+	 */
+	@JMXOperation(name="setHostLimit", description="Sets the concurrency limit for a target host")
+	public void setHostLimit(
+			@JMXParameter(name="host", description="The target host") String host, 
+			@JMXParameter(name="limit", description="The maximum number of concurrent collections") int limit) {
+		if(host==null) throw new IllegalArgumentException("The passed host was null", new Throwable());
+		setLimit(hostLimits, host.trim().toLowerCase(), limit);
+	}
+	
+	/**
+	 * Sets a limit and admits any waiting collections the new limit allows
+	 * @param limits The limit map
+	 * @param name The limit name
+	 * @param limit The maximum number of concurrent collections
+	 */
+	protected void setLimit(Map<String, ConcurrencyLimit> limits, String name, int limit) {
+		if(limit<1) throw new IllegalArgumentException("Invalid limit [" + limit + "]", new Throwable());
+		List<CollectionRun> ready = new ArrayList<CollectionRun>();
+		synchronized(limitLock) {
+			ConcurrencyLimit cl = limit(limits, name, limit);
+			cl.limit = limit;
+			drain(cl, ready);
+		}
+		for(CollectionRun next: ready) {
+			dispatch(next);
+		}
+	}
+	
+	/**
+	 * Returns a summary of the concurrency limits
+	 * @return a summary of each limit
+	 */
+	@JMXAttribute(name="Limits", description="A summary of the concurrency limits", mutability=AttributeMutabilityOption.READ_ONLY)
+	public String[] getLimits() {
+		List<String> summary = new ArrayList<String>();
+		synchronized(limitLock) {
+			for(ConcurrencyLimit cl: classLimits.values()) {
+				summary.add("Class:" + cl);
+			}
+			for(ConcurrencyLimit cl: hostLimits.values()) {
+				summary.add("Host:" + cl);
+			}
+		}
+		return summary.toArray(new String[summary.size()]);
+	}
+	
+	/**
+	 * Runs one collection of the passed collector on the calling worker thread
+	 * @param collector The collector to collect
+	 * @throws Exception thrown if the collection fails
+	 */
+	protected void collect(AbstractCollector collector) throws Exception {
+		collector.collect();
+	}
+	
+	/**
+	 * Creates threads for the worker pool and timer
+	 * @param r The runnable
+	 * @return a new daemon thread
+	 * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+	 */
+	public Thread newThread(Runnable r) {
+		Thread t = new Thread(r, "CollectionExecutor-Thread#" + serial.incrementAndGet());
+		t.setDaemon(true);
+		return t;
+	}
+
+	/**
+	 * Returns the worker pool size
+	 * @return the worker pool size
+	 */
+	@JMXAttribute(name="PoolSize", description="The worker pool size", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getPoolSize() {
+		return poolSize;
+	}
+	
+	/**
+	 * Returns the number of running collections
+	 * @return the number of running collections
+	 */
+	@JMXAttribute(name="ActiveCount", description="The number of running collections", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getActiveCount() {
+		return workers.getActiveCount();
+	}
+	
+	/**
+	 * Returns the number of admitted collections waiting for a worker
+	 * @return the worker queue depth
+	 */
+	@JMXAttribute(name="QueuedCount", description="The number of admitted collections waiting for a worker", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getQueuedCount() {
+		return workers.getQueue().size();
+	}
+	
+	/**
+	 * Returns the number of collections waiting on a concurrency limit
+	 * @return the number of waiting collections
+	 */
+	@JMXAttribute(name="WaitingCount", description="The number of collections waiting on a concurrency limit", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getWaitingCount() {
+		return waiting.get();
+	}
+
+	/**
+	 * Returns the number of collections submitted
+	 * @return the submitted count
+	 */
+	@JMXAttribute(name="SubmittedCount", description="The number of collections submitted", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getSubmittedCount() {
+		return submitted.get();
+	}
+
+	/**
+	 * Returns the number of collections completed
+	 * @return the completed count
+	 */
+	@JMXAttribute(name="CompletedCount", description="The number of collections completed", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getCompletedCount() {
+		return completed.get();
+	}
+
+	/**
+	 * Returns the number of collections skipped because the prior collection was in flight
+	 * @return the overlap skip count
+	 */
+	@JMXAttribute(name="OverlapSkipCount", description="The number of collections skipped because the prior collection was in flight", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getOverlapSkipCount() {
+		return overlapSkips.get();
+	}
+
+	/**
+	 * Returns the number of collections that ran past their deadline
+	 * @return the overrun count
+	 */
+	@JMXAttribute(name="DeadlineOverrunCount", description="The number of collections that ran past their deadline", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getDeadlineOverrunCount() {
+		return overruns.get();
+	}
+
+	/**
+	 * Returns the number of collections deferred by a concurrency limit
+	 * @return the deferral count
+	 */
+	@JMXAttribute(name="ConcurrencyDeferralCount", description="The number of collections deferred by a concurrency limit", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getConcurrencyDeferralCount() {
+		return deferrals.get();
+	}
+
+	/**
+	 * Returns the default limit for concurrent collections of one collector class
+	 * @return the default class limit
+	 */
+	@JMXAttribute(name="DefaultClassLimit", description="The default limit for concurrent collections of one collector class", mutability=AttributeMutabilityOption.READ_WRITE)
+	public int getDefaultClassLimit() {
+		return defaultClassLimit;
+	}
+
+	/**
+	 * Sets the default limit for concurrent collections of one collector class. Applies to classes without a limit.
+	 * @param defaultClassLimit the default class limit
+	 */
+	public void setDefaultClassLimit(int defaultClassLimit) {
+		if(defaultClassLimit<1) throw new IllegalArgumentException("Invalid limit [" + defaultClassLimit + "]", new Throwable());
+		this.defaultClassLimit = defaultClassLimit;
+	}
+
+	/**
+	 * Returns the default limit for concurrent collections against one target host
+	 * @return the default host limit
+	 */
+	@JMXAttribute(name="DefaultHostLimit", description="The default limit for concurrent collections against one target host", mutability=AttributeMutabilityOption.READ_WRITE)
+	public int getDefaultHostLimit() {
+		return defaultHostLimit;
+	}
+
+	/**
+	 * Sets the default limit for concurrent collections against one target host. Applies to hosts without a limit.
+	 * @param defaultHostLimit the default host limit
+	 */
+	public void setDefaultHostLimit(int defaultHostLimit) {
+		if(defaultHostLimit<1) throw new IllegalArgumentException("Invalid limit [" + defaultHostLimit + "]", new Throwable());
+		this.defaultHostLimit = defaultHostLimit;
+	}
+
+	/**
+	 * Returns the default start jitter window
+	 * @return the default jitter window in ms.
+	 */
+	@JMXAttribute(name="DefaultJitter", description="The default start jitter window in ms.", mutability=AttributeMutabilityOption.READ_WRITE)
+	public long getDefaultJitter() {
+		return defaultJitter;
+	}
+
+	/**
+	 * Sets the default start jitter window
+	 * @param defaultJitter the default jitter window in ms.
+	 */
+	public void setDefaultJitter(long defaultJitter) {
+		this.defaultJitter = Math.max(0L, defaultJitter);
+	}
+	
+	/**
+	 * <p>Title: CollectionRun</p>
+	 * <p>Description: One submitted collection. Runs the collector's <code>collect()</code> under its deadline and releases its permits.</p> 
+	 */
+	protected class CollectionRun implements Runnable {
+		/** The collector */
+		final AbstractCollector collector;
+		/** The collector's execution stats */
+		final CollectionStats stats;
+		/** The collector class limit */
+		ConcurrencyLimit classLimit = null;
+		/** The target host limit, null if the collector has no target host */
+		ConcurrencyLimit hostLimit = null;
+		/** Indicates the collection has been counted as deferred */
+		boolean deferred = false;
+		/** The running thread, guarded by this */
+		Thread runner = null;
+
+		/**
+		 * Creates a new CollectionRun
+		 * @param collector The collector
+		 * @param stats The collector's execution stats
+		 */
+		CollectionRun(AbstractCollector collector, CollectionStats stats) {
+			this.collector = collector;
+			this.stats = stats;
+		}
+
+		/**
+		 * Runs the collection
+		 * @see java.lang.Runnable#run()
+		 */
+		public void run() {
+			ScheduledFuture<?> deadline = null;
+			final long timeout = collector.getEffectiveCollectDeadline();
+			try {
+				synchronized(this) {
+					runner = Thread.currentThread();
+				}
+				if(timeout>0) {
+					deadline = timer.schedule(new Runnable() {
+						public void run() {
+							overrun(timeout);
+						}
+					}, timeout, TimeUnit.MILLISECONDS);
+				}
+				collect(collector);
+			} catch (Throwable e) {
+				if(LOG.isDebugEnabled()) LOG.debug("Collection of [" + collector.getBeanName() + "] failed", e);
+			} finally {
+				synchronized(this) {
+					runner = null;
+				}
+				if(deadline!=null) deadline.cancel(false);
+				Thread.interrupted();
+				release(this);
+			}
+		}
+		
+		/**
+		 * Counts the overrun and interrupts the collection if it is still running
+		 * @param timeout The deadline that was exceeded in ms.
+		 */
+		void overrun(long timeout) {
+			synchronized(this) {
+				if(runner==null) return;
+				stats.overrun();
+				overruns.incrementAndGet();
+				LOG.warn("Collection of [" + collector.getBeanName() + "] exceeded its deadline of [" + timeout + "] ms. Interrupting.");
+				runner.interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.collectors.execution;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Title: CollectionStats</p>
+ * <p>Description: The per collector execution state and statistics maintained by the {@link CollectionExecutor}: 
+ * the in-flight flag that prevents overlapping runs, the collection latency histogram and the skip, overrun and deferral counts.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.collectors.execution.CollectionStats</code></p>
+ */
+
+public class CollectionStats {
+	/** Indicates if a collection is submitted or running */
+	protected final AtomicBoolean inFlight = new AtomicBoolean(false);
+	/** The collection latency histogram */
+	protected final LatencyHistogram latency = new LatencyHistogram();
+	/** The number of collections skipped because the prior collection had not completed */
+	protected final AtomicLong overlapSkips = new AtomicLong(0L);
+	/** The number of collections that ran past their deadline */
+	protected final AtomicLong deadlineOverruns = new AtomicLong(0L);
+	/** The number of collections deferred by a concurrency limit */
+	protected final AtomicLong deferrals = new AtomicLong(0L);
+	
+	/**
+	 * Marks a collection as in flight
+	 * @return true if the collection may proceed, false if the prior collection is still in flight, in which case the skip is counted
+	 */
+	public boolean tryBegin() {
+		if(inFlight.compareAndSet(false, true)) return true;
+		overlapSkips.incrementAndGet();
+		return false;
+	}
+	
+	/**
+	 * Clears the in flight flag
+	 */
+	public void end() {
+		inFlight.set(false);
+	}
+	
+	/**
+	 * Indicates if a collection is in flight
+	 * @return true if a collection is submitted or running
+	 */
+	public boolean isInFlight() {
+		return inFlight.get();
+	}
+	
+	/**
+	 * Records a collection latency
+	 * @param elapsed the elapsed time of the collection in ms.
+	 */
+	public void recordLatency(long elapsed) {
+		latency.record(elapsed);
+	}
+	
+	/**
+	 * Counts a deadline overrun
+	 */
+	public void overrun() {
+		deadlineOverruns.incrementAndGet();
+	}
+	
+	/**
+	 * Counts a concurrency deferral
+	 */
+	public void deferred() {
+		deferrals.incrementAndGet();
+	}
+
+	/**
+	 * Returns the collection latency histogram
+	 * @return the latency histogram
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Returns the number of collections skipped because the prior collection had not completed
+	 * @return the overlap skip count
+	 */
+	public long getOverlapSkips() {
+		return overlapSkips.get();
+	}
+
+	/**
+	 * Returns the number of collections that ran past their deadline
+	 * @return the deadline overrun count
+	 */
+	public long getDeadlineOverruns() {
+		return deadlineOverruns.get();
+	}
+
+	/**
+	 * Returns the number of collections deferred by a concurrency limit
+	 * @return the deferral count
+	 */
+	public long getDeferrals() {
+		return deferrals.get();
+	}
+	
+	/**
+	 * Resets the histogram and counters. The in flight flag is not affected.
+	 */
+	public void reset() {
+		latency.reset();
+		overlapSkips.set(0L);
+		deadlineOverruns.set(0L);
+		deferrals.set(0L);
+	}
+}
@@ -0,0 +1,76 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.collectors.execution;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * <p>Title: ConcurrencyLimit</p>
+ * <p>Description: A named bound on the number of concurrently running collections, with a FIFO of the collections waiting on it.
+ * Instances are not thread safe and are always accessed under the {@link CollectionExecutor}'s lock.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.collectors.execution.ConcurrencyLimit</code></p>
+ */
+
+class ConcurrencyLimit {
+	/** The limit name, a collector class name or a target host */
+	final String name;
+	/** The maximum number of concurrent collections */
+	int limit;
+	/** The number of running collections */
+	int active = 0;
+	/** The collections waiting for a permit */
+	final Queue<Runnable> waiting = new ArrayDeque<Runnable>();
+	
+	/**
+	 * Creates a new ConcurrencyLimit
+	 * @param name The limit name
+	 * @param limit The maximum number of concurrent collections
+	 */
+	ConcurrencyLimit(String name, int limit) {
+		this.name = name;
+		this.limit = limit;
+	}
+	
+	/**
+	 * Indicates if another collection can be admitted
+	 * @return true if a permit is available
+	 */
+	boolean available() {
+		return active < limit;
+	}
+	
+	/**
+	 * Constructs a <code>String</code> with key attributes in name = value format.
+	 * @return a <code>String</code> representation of this object.
+	 */
+	@Override
+	public String toString() {
+		return name + " [active:" + active + "/" + limit + ", waiting:" + waiting.size() + "]";
+	}
+}
@@ -0,0 +1,188 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.collectors.execution;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Title: LatencyHistogram</p>
+ * <p>Description: A fixed bucket, lock free histogram of collection latencies in ms. Recording is a bucket scan and two 
+ * atomic increments. Percentiles are reported as the upper bound of the bucket holding the requested rank, so they are
+ * conservative to within one bucket.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.collectors.execution.LatencyHistogram</code></p>
+ */
+
+public class LatencyHistogram {
+	/** The inclusive upper bounds of each bucket in ms. The last bucket is unbounded. */
+	protected final long[] bounds;
+	/** The bucket counts, one more than the number of bounds */
+	protected final AtomicLongArray counts;
+	/** The number of recorded values */
+	protected final AtomicLong count = new AtomicLong(0L);
+	/** The sum of recorded values */
+	protected final AtomicLong total = new AtomicLong(0L);
+	/** The largest recorded value */
+	protected final AtomicLong max = new AtomicLong(0L);
+	
+	/** The default bucket bounds in ms. */
+	public static final long[] DEFAULT_BOUNDS = new long[]{1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 120000};
+	
+	/**
+	 * Creates a new LatencyHistogram with the default bucket bounds
+	 */
+	public LatencyHistogram() {
+		this(DEFAULT_BOUNDS);
+	}
+	
+	/**
+	 * Creates a new LatencyHistogram
+	 * @param bounds The ascending inclusive upper bounds of each bucket in ms.
+	 */
+	public LatencyHistogram(long[] bounds) {
+		if(bounds==null || bounds.length==0) throw new IllegalArgumentException("The passed bounds were null or empty", new Throwable());
+		for(int i = 1; i < bounds.length; i++) {
+			if(bounds[i]<=bounds[i-1]) throw new IllegalArgumentException("The passed bounds are not ascending", new Throwable());
+		}
+		this.bounds = bounds.clone();
+		counts = new AtomicLongArray(bounds.length+1);
+	}
+	
+	/**
+	 * Records a latency
+	 * @param latency The latency in ms.
+	 */
+	public void record(long latency) {
+		if(latency<0) latency = 0;
+		int index = 0;
+		while(index<bounds.length && latency>bounds[index]) index++;
+		counts.incrementAndGet(index);
+		count.incrementAndGet();
+		total.addAndGet(latency);
+		long m = max.get();
+		while(latency>m && !max.compareAndSet(m, latency)) {
+			m = max.get();
+		}
+	}
+	
+	/**
+	 * Returns the latency at the passed percentile
+	 * @param percentile The percentile, between 0 and 100
+	 * @return the upper bound of the bucket holding the percentile, the maximum for the unbounded bucket, or 0 if nothing has been recorded 
+	 */
+	public long getPercentile(double percentile) {
+		long[] snapshot = getCounts();
+		long n = 0;
+		for(long c: snapshot) n += c;
+		if(n==0) return 0L;
+		long rank = (long)Math.ceil(n * Math.min(100d, Math.max(0d, percentile)) / 100d);
+		if(rank<1) rank = 1;
+		long seen = 0;
+		for(int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+			if(seen>=rank) return i<bounds.length ? Math.min(bounds[i], max.get()) : max.get();
+		}
+		return max.get();
+	}
+	
+	/**
+	 * Returns a snapshot of the bucket counts
+	 * @return the bucket counts, the last being the count of values above the largest bound
+	 */
+	public long[] getCounts() {
+		long[] snapshot = new long[counts.length()];
+		for(int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = counts.get(i);
+		}
+		return snapshot;
+	}
+	
+	/**
+	 * Returns the bucket bounds
+	 * @return the inclusive upper bounds of each bucket in ms.
+	 */
+	public long[] getBounds() {
+		return bounds.clone();
+	}
+	
+	/**
+	 * Returns the number of recorded values
+	 * @return the number of recorded values
+	 */
+	public long getCount() {
+		return count.get();
+	}
+	
+	/**
+	 * Returns the mean recorded latency
+	 * @return the mean latency in ms.
+	 */
+	public long getMean() {
+		long n = count.get();
+		return n==0 ? 0L : total.get()/n;
+	}
+	
+	/**
+	 * Returns the largest recorded latency
+	 * @return the largest latency in ms.
+	 */
+	public long getMax() {
+		return max.get();
+	}
+	
+	/**
+	 * Clears the histogram
+	 */
+	public void reset() {
+		for(int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0L);
+		}
+		count.set(0L);
+		total.set(0L);
+		max.set(0L);
+	}
+	
+	/**
+	 * Renders the non empty buckets
+	 * @return a string of <code>&lt;=bound:count</code> pairs
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		long[] snapshot = getCounts();
+		StringBuilder b = new StringBuilder();
+		for(int i = 0; i < snapshot.length; i++) {
+			if(snapshot[i]==0) continue;
+			if(b.length()>0) b.append(", ");
+			if(i<bounds.length) b.append("<=").append(bounds[i]);
+			else b.append(">").append(bounds[bounds.length-1]);
+			b.append(":").append(snapshot[i]);
+		}
+		return b.toString();
+	}
+}
@@ -27,11 +27,23 @@ package org.helios.collectors.jdbc;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 import org.helios.collectors.AbstractCollector;
@@ -39,7 +51,10 @@ import org.helios.collectors.CollectionResult;
 import org.helios.collectors.exceptions.CollectorInitException;
 import org.helios.collectors.exceptions.CollectorStartException;
 import org.helios.collectors.jdbc.connection.IJDBCConnectionFactory;
+import org.helios.helpers.ConfigurationHelper;
+import org.helios.jmx.dynamic.annotations.JMXAttribute;
 import org.helios.jmx.dynamic.annotations.JMXManagedObject;
+import org.helios.jmx.dynamic.annotations.options.AttributeMutabilityOption;
 import org.helios.ot.tracer.ITracer;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
@@ -63,6 +78,33 @@ public class JDBCCollector extends AbstractCollector implements ApplicationConte
 	protected long operationTimeout = 5000;
 	protected Map<String, SQLMapping> sqlMaps = new ConcurrentHashMap<String, SQLMapping>();
 	protected ApplicationContext appContext = null;
+	/** The maximum number of connections used concurrently to execute independent SQLMappings. 1 executes all mappings serially. */
+	protected int maxConnections = 1;
+	/** Indicates if connections and their prepared statements are retained between collections */
+	protected boolean cacheConnections = false;
+	/** The default result set fetch size for mappings that do not define one. Zero or less uses the driver's default. */
+	protected int fetchSize = 0;
+	/** The idle connections retained between collections */
+	protected final LinkedList<MappingConnection> idleConnections = new LinkedList<MappingConnection>();
+	/** The number of connections used by the last collection */
+	protected volatile int lastConnectionCount = 0;
+	
+	/** The system property name for the size of the shared SQLMapping thread pool */
+	public static final String MAPPING_THREADS_PROP = "org.helios.collectors.jdbc.mapping.threads";
+	/** The default size of the shared SQLMapping thread pool */
+	public static final int DEFAULT_MAPPING_THREADS = Runtime.getRuntime().availableProcessors() * 4;
+	/** Serial number generator for SQLMapping thread names */
+	private static final AtomicInteger serial = new AtomicInteger(0);
+	/** The SQLMapping thread pool shared by all JDBC collectors */
+	protected static final ExecutorService MAPPING_POOL = Executors.newFixedThreadPool(
+			ConfigurationHelper.getIntSystemThenEnvProperty(MAPPING_THREADS_PROP, DEFAULT_MAPPING_THREADS), 
+			new ThreadFactory(){
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "JDBCMappingThread#" + serial.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+	});
 	
 	
 	/**
@@ -105,39 +147,150 @@ public class JDBCCollector extends AbstractCollector implements ApplicationConte
 	
 
 	/**
+	 * Executes the SQLMappings. Mappings that bind results into bind variable providers are executed first on the calling thread.
+	 * The remaining mappings are executed concurrently over up to <code>maxConnections</code> connections, 
+	 * each connection draining a shared queue of mappings.
 	 * @return
 	 * @see org.helios.collectors.AbstractCollector#collectCallback()
 	 */
 	@Override
 	public CollectionResult collectCallback() {
-		Connection conn = null;
+		MappingConnection mconn = null;
 		CollectionResult result = new CollectionResult();		
 		try {
 			if(log.isDebugEnabled()) log.debug("Connecting");
 			long start = System.currentTimeMillis();
-//			tracer.startThreadInfoCapture();
-			conn = connectionFactory.getJDBCConnection(connectionTimeout);
-//			tracer.endThreadInfoCapture("Local Postgres", "Connect");
+			mconn = acquireConnection();
 			long elapsed = System.currentTimeMillis()-start;			
 			if(log.isDebugEnabled()) log.debug("Connected in [" + elapsed + "] ms.");
-			Map<String, Object> connMetaData = getConnMetaData(conn);
+			List<SQLMapping> serialMaps = new ArrayList<SQLMapping>();
+			final Queue<SQLMapping> parallelMaps = new ConcurrentLinkedQueue<SQLMapping>();
 			for(SQLMapping sqlMap: sqlMaps.values()) {
 				if(!sqlMap.isPre()) {
-					sqlMap.setConnMetaData(connMetaData);
-					sqlMap.execute(conn);
+					if(maxConnections>1 && !sqlMap.isResultBinding()) {
+						parallelMaps.add(sqlMap);
+					} else {
+						serialMaps.add(sqlMap);
+					}
 				}
 			}
+			for(SQLMapping sqlMap: serialMaps) {
+				sqlMap.execute(mconn, fetchSize);
+			}
+			int connectionCount = Math.max(1, Math.min(maxConnections, parallelMaps.size()));
+			List<Future<Integer>> futures = new ArrayList<Future<Integer>>(connectionCount-1);
+			for(int i = 1; i < connectionCount; i++) {
+				futures.add(MAPPING_POOL.submit(new Callable<Integer>(){
+					public Integer call() throws Exception {
+						MappingConnection laneConn = acquireConnection();
+						try {
+							return executeMappings(laneConn, parallelMaps);
+						} finally {
+							releaseConnection(laneConn);
+						}
+					}
+				}));
+			}
+			executeMappings(mconn, parallelMaps);
+			for(Future<Integer> f: futures) {
+				try {
+					f.get();
+				} catch (ExecutionException ee) {
+					if(logErrors) {
+						log.error("Failed to acquire concurrent connection", ee.getCause());
+					}
+				}
+			}
+			lastConnectionCount = connectionCount;
 			result.setResultForLastCollection(CollectionResult.Result.SUCCESSFUL);
 		} catch (Exception e) {			
 			result.setResultForLastCollection(CollectionResult.Result.FAILURE);
+			if(mconn!=null) mconn.setFailed();
 			if(logErrors) {
 				log.error("Failed to acquire connection", e);
 			}
 		} finally {
-			try { conn.close(); } catch (Exception e) {}
+			releaseConnection(mconn);
 		}
 		return result;
 	}
+	
+	/**
+	 * Executes queued SQLMappings against the passed connection until the queue is empty.
+	 * @param mconn The connection to execute against
+	 * @param queue The queue of mappings to execute
+	 * @return the number of mappings executed
+	 */
+	protected int executeMappings(MappingConnection mconn, Queue<SQLMapping> queue) {
+		int executed = 0;
+		SQLMapping sqlMap = null;
+		while((sqlMap = queue.poll())!=null) {
+			sqlMap.execute(mconn, fetchSize);
+			executed++;
+		}
+		return executed;
+	}
+	
+	/**
+	 * Acquires a connection, reusing an idle connection if connections are cached.
+	 * @return a mapping connection
+	 * @throws Exception
+	 */
+	protected MappingConnection acquireConnection() throws Exception {
+		if(cacheConnections) {
+			synchronized(idleConnections) {
+				if(!idleConnections.isEmpty()) return idleConnections.removeFirst();
+			}
+		}
+		Connection conn = connectionFactory.getJDBCConnection(connectionTimeout);
+		try {
+			return new MappingConnection(conn, getConnMetaData(conn), cacheConnections);
+		} catch (SQLException e) {
+			try { conn.close(); } catch (Exception ex) {}
+			throw e;
+		}
+	}
+	
+	/**
+	 * Releases a connection after a collection. The connection is retained if connections are cached and no execution on it failed, 
+	 * otherwise it is closed.
+	 * @param mconn The connection to release
+	 */
+	protected void releaseConnection(MappingConnection mconn) {
+		if(mconn==null) return;
+		if(cacheConnections && !mconn.isFailed()) {
+			synchronized(idleConnections) {
+				if(idleConnections.size() < maxConnections) {
+					idleConnections.addLast(mconn);
+					return;
+				}
+			}
+		}
+		mconn.close();
+	}
+	
+	/**
+	 * Closes all the idle connections
+	 */
+	protected void closeIdleConnections() {
+		List<MappingConnection> closes = null;
+		synchronized(idleConnections) {
+			closes = new ArrayList<MappingConnection>(idleConnections);
+			idleConnections.clear();
+		}
+		for(MappingConnection mconn: closes) {
+			mconn.close();
+		}
+	}
+	
+	/**
+	 * Closes the idle connections when the collector stops
+	 * @see org.helios.collectors.AbstractCollector#stopCollector()
+	 */
+	@Override
+	public void stopCollector() {
+		closeIdleConnections();
+	}
 
 	/**
 	 * Extracts key values from the DB Connection meta data to pass to mappers.
@@ -202,6 +355,79 @@ public class JDBCCollector extends AbstractCollector implements ApplicationConte
 		this.operationTimeout = operationTimeout;
 	}
 
+	/**
+	 * Returns the maximum number of connections used concurrently to execute independent SQLMappings
+	 * @return the maximum number of connections
+	 */
+	@JMXAttribute(name="MaxConnections", description="The maximum number of connections used concurrently to execute independent SQLMappings", mutability=AttributeMutabilityOption.READ_WRITE)
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * Sets the maximum number of connections used concurrently to execute independent SQLMappings. 1 executes all mappings serially.
+	 * @param maxConnections the maximum number of connections
+	 */
+	public void setMaxConnections(int maxConnections) {
+		if(maxConnections<1) throw new IllegalArgumentException("Invalid max connections [" + maxConnections + "]", new Throwable());
+		this.maxConnections = maxConnections;
+	}
+
+	/**
+	 * Indicates if connections and their prepared statements are retained between collections
+	 * @return true if connections are cached
+	 */
+	@JMXAttribute(name="CacheConnections", description="Indicates if connections and their prepared statements are retained between collections", mutability=AttributeMutabilityOption.READ_WRITE)
+	public boolean getCacheConnections() {
+		return cacheConnections;
+	}
+
+	/**
+	 * Sets if connections and their prepared statements are retained between collections
+	 * @param cacheConnections true to cache connections
+	 */
+	public void setCacheConnections(boolean cacheConnections) {
+		this.cacheConnections = cacheConnections;
+		if(!cacheConnections) closeIdleConnections();
+	}
+
+	/**
+	 * Returns the default result set fetch size for mappings that do not define one
+	 * @return the default fetch size
+	 */
+	@JMXAttribute(name="FetchSize", description="The default result set fetch size for mappings that do not define one", mutability=AttributeMutabilityOption.READ_WRITE)
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * Sets the default result set fetch size for mappings that do not define one. Zero or less uses the driver's default.
+	 * @param fetchSize the default fetch size
+	 */
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+	
+	/**
+	 * Returns the number of idle connections retained between collections
+	 * @return the number of idle connections
+	 */
+	@JMXAttribute(name="IdleConnectionCount", description="The number of idle connections retained between collections", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getIdleConnectionCount() {
+		synchronized(idleConnections) {
+			return idleConnections.size();
+		}
+	}
+	
+	/**
+	 * Returns the number of connections used by the last collection
+	 * @return the number of connections used by the last collection
+	 */
+	@JMXAttribute(name="LastConnectionCount", description="The number of connections used by the last collection", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getLastConnectionCount() {
+		return lastConnectionCount;
+	}
+
 	/**
 	 * @param connectionFactory the connectionFactory to set
 	 */
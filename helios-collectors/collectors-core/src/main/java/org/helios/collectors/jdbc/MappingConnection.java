@@ -0,0 +1,161 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.collectors.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Title: MappingConnection</p>
+ * <p>Description: A connection used by a JDBCCollector to execute SQLMappings. Holds the connection's meta-data and, 
+ * when statement caching is enabled, the prepared statements created against the connection keyed by SQL text so they 
+ * can be re-executed on subsequent collections. Instances are used by one thread at a time.</p> 
+ * <p>Company: Helios Development Group</p>
+ * @author Whitehead (whitehead.nicholas@gmail.com)
+ * @version $LastChangedRevision$
+ * $HeadURL$
+ * $Id$
+ */
+public class MappingConnection {
+	/** The underlying connection */
+	protected final Connection connection;
+	/** The connection meta-data */
+	protected final Map<String, Object> connMetaData;
+	/** Indicates if prepared statements are retained between executions */
+	protected final boolean cacheStatements;
+	/** The cached prepared statements keyed by SQL text */
+	protected final Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+	/** Indicates that an execution on this connection failed and the connection should be discarded */
+	protected boolean failed = false;
+	
+	/** The maximum number of prepared statements cached per connection. Mappings with token bound SQL may render a new SQL text each execution. */
+	public static final int MAX_CACHED_STATEMENTS = 64;
+	
+	/**
+	 * Creates a new MappingConnection
+	 * @param connection The underlying connection
+	 * @param connMetaData The connection meta-data
+	 * @param cacheStatements If true, prepared statements are retained between executions
+	 */
+	public MappingConnection(Connection connection, Map<String, Object> connMetaData, boolean cacheStatements) {
+		this.connection = connection;
+		this.connMetaData = connMetaData;
+		this.cacheStatements = cacheStatements;
+	}
+	
+	/**
+	 * Returns a prepared statement for the passed SQL, reusing a cached statement if one exists.
+	 * @param sql The SQL to prepare
+	 * @return a prepared statement
+	 * @throws SQLException
+	 */
+	public PreparedStatement prepareStatement(String sql) throws SQLException {
+		PreparedStatement ps = statements.get(sql);
+		if(ps==null) {
+			ps = connection.prepareStatement(sql);
+			if(cacheStatements && statements.size() < MAX_CACHED_STATEMENTS) {
+				statements.put(sql, ps);
+			}
+		}
+		return ps;
+	}
+	
+	/**
+	 * Releases a prepared statement once its execution completes. The statement is closed 
+	 * if it is not cached or the execution failed.
+	 * @param sql The SQL the statement was prepared for
+	 * @param ps The prepared statement
+	 * @param executionFailed true if the execution failed
+	 */
+	public void releaseStatement(String sql, PreparedStatement ps, boolean executionFailed) {
+		if(ps==null) return;
+		boolean cached = statements.get(sql)==ps;
+		if(!cached || executionFailed) {
+			if(cached) statements.remove(sql);
+			try { ps.close(); } catch (Exception e) {}
+		}
+		if(executionFailed) failed = true;
+	}
+	
+	/**
+	 * Closes all the cached prepared statements
+	 */
+	public void closeStatements() {
+		for(PreparedStatement ps: statements.values()) {
+			try { ps.close(); } catch (Exception e) {}
+		}
+		statements.clear();
+	}
+	
+	/**
+	 * Closes all the cached prepared statements and the underlying connection
+	 */
+	public void close() {
+		closeStatements();
+		try { connection.close(); } catch (Exception e) {}
+	}
+
+	/**
+	 * Returns the underlying connection
+	 * @return the connection
+	 */
+	public Connection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Returns the connection meta-data
+	 * @return the connMetaData
+	 */
+	public Map<String, Object> getConnMetaData() {
+		return connMetaData;
+	}
+	
+	/**
+	 * Returns the number of cached prepared statements
+	 * @return the number of cached prepared statements
+	 */
+	public int getCachedStatementCount() {
+		return statements.size();
+	}
+
+	/**
+	 * Indicates if an execution on this connection failed
+	 * @return true if an execution failed
+	 */
+	public boolean isFailed() {
+		return failed;
+	}
+	
+	/**
+	 * Marks this connection as failed so it is discarded
+	 */
+	public void setFailed() {
+		failed = true;
+	}
+}
@@ -102,6 +102,10 @@ public class SQLMapping implements ApplicationContextAware, BeanNameAware {
 	protected boolean pre = false;
 	/** An array of sqlmap names of sqlmaps that are pres for this map */
 	protected String[] pres = null;
+	/** The result set fetch size hint. Zero or less uses the collector's default. */
+	protected int fetchSize = 0;
+	/** Indicates if numeric columns are extracted as primitives rather than strings */
+	protected boolean typedExtraction = true;
 	/** Class logger */
 	protected static Logger LOG = Logger.getLogger(SQLMapping.class);
 	
@@ -138,23 +142,46 @@ public class SQLMapping implements ApplicationContextAware, BeanNameAware {
 	}
 	
 	/**
-	 * @param conn
+	 * Executes this mapping against the passed connection, closing any statements created when the execution completes.
+	 * @param conn The connection to execute against.
+	 * @return true if the execution succeeded
 	 * @throws SQLException
 	 */
-	public void execute(Connection conn) throws SQLException {
+	public boolean execute(Connection conn) throws SQLException {
+		MappingConnection mconn = new MappingConnection(conn, connMetaData, false);
+		try {
+			return execute(mconn, 0);
+		} finally {
+			mconn.closeStatements();
+		}
+	}
+	
+	/**
+	 * Executes this mapping against the passed mapping connection. Prepared statements are reused if the connection caches them.
+	 * @param mconn The mapping connection to execute against.
+	 * @param defaultFetchSize The fetch size to use if this mapping does not define one. Zero or less uses the driver's default.
+	 * @return true if the execution succeeded
+	 */
+	public boolean execute(MappingConnection mconn, int defaultFetchSize) {
+		Connection conn = mconn.getConnection();
+		Map<String, Object> connMetaData = mconn.getConnMetaData();
+		int rowFetchSize = fetchSize > 0 ? fetchSize : defaultFetchSize;
 		PreparedStatement ps = null;
+		String rSql = null;
 		Statement st = null;
 		ResultSet rset = null;
+		boolean failed = true;
 		long start = System.currentTimeMillis(), elapsed = 0;
 		try {
 			if(bindVarsSupported) {
 				if(LOG.isDebugEnabled()) LOG.debug("Compiling PreparedQuery SQL");
-				String rSql = sql.get();
+				rSql = sql.get();
 				for(Map.Entry<String, IBindVariableProvider> bind: tbinds.entrySet()) {					
 						rSql = bind.getValue().bind(rSql, bind.getKey()).toString();				
 				}
 				if(LOG.isDebugEnabled()) LOG.debug("Prepared SQL:[" + rSql + "]");
-				ps = conn.prepareStatement(rSql);
+				ps = mconn.prepareStatement(rSql);
+				if(rowFetchSize > 0) ps.setFetchSize(rowFetchSize);
 				for(Map.Entry<Integer, IBindVariableProvider> bind: binds.entrySet()) {
 					bind.getValue().bind(ps, bind.getKey());
 				}
@@ -167,10 +194,11 @@ public class SQLMapping implements ApplicationContextAware, BeanNameAware {
 				}				
 				if(LOG.isDebugEnabled()) LOG.debug("Prepared SQL:[" + boundSql + "]");
 				st = conn.createStatement();
+				if(rowFetchSize > 0) st.setFetchSize(rowFetchSize);
 				if(LOG.isDebugEnabled()) LOG.debug("Executing Statement");
 				rset = st.executeQuery(boundSql.toString());
 			}
-			ProcessedResultSet prs  = new ProcessedResultSet(rset);
+			ProcessedResultSet prs  = new ProcessedResultSet(rset, -1, true, typedExtraction);
 			prs.setQueryName(mappingName);
 			//if(LOG.isDebugEnabled()) LOG.debug("Retrieved [" + prs.getRowCount() + "] rows.");
 			try { rset.close(); } catch (Exception e) {}
@@ -206,13 +234,27 @@ public class SQLMapping implements ApplicationContextAware, BeanNameAware {
 			}
 			elapsed = System.currentTimeMillis()-start;
 			tracer.traceSticky(elapsed, "Collection Time (ms)", "Helios", "Collectors", "Database", mappingName);
+			failed = false;
 		} catch (Exception e) {
 			if(LOG.isEnabledFor(Level.ERROR)) LOG.error("SQLMap Execution Error:\n\tSQL:" + sql, e);
 		} finally {
 			try { if(rset!=null) rset.close(); } catch (Exception e) {}
 			try { if(st!=null) st.close(); } catch (Exception e) {}
-			try { if(ps!=null) ps.close(); } catch (Exception e) {}
+			mconn.releaseStatement(rSql, ps, failed);
 		}
+		return !failed;
+	}
+	
+	/**
+	 * Indicates if any of this mapping's metric maps bind result values into a bind variable provider.
+	 * Mappings that bind results may feed other mappings' queries so they are not executed concurrently.
+	 * @return true if this mapping binds results
+	 */
+	public boolean isResultBinding() {
+		for(MetricMap mm: metricMaps) {
+			if(mm.isBinderEnabled()) return true;
+		}
+		return false;
 	}
 	
 	
@@ -434,5 +476,33 @@ public class SQLMapping implements ApplicationContextAware, BeanNameAware {
 		this.pres = pres;
 	}
 
+	/**
+	 * @return the fetchSize
+	 */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * @param fetchSize the fetchSize to set. Zero or less uses the collector's default.
+	 */
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * @return the typedExtraction
+	 */
+	public boolean isTypedExtraction() {
+		return typedExtraction;
+	}
+
+	/**
+	 * @param typedExtraction If true, numeric columns are extracted as primitives rather than strings
+	 */
+	public void setTypedExtraction(boolean typedExtraction) {
+		this.typedExtraction = typedExtraction;
+	}
+
 
 }
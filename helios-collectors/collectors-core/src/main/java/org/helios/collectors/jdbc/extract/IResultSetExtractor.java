@@ -50,7 +50,18 @@ public interface IResultSetExtractor {
 	 * @throws IOException
 	 */
 	public Map<Integer, Map<Integer, Object>> processResultSet(ResultSet rset, int maxRows, boolean useStrings) throws SQLException, IOException;
-	
+
+	/**
+	 * Creates a map of the name/values from a result set, retrieving numeric columns as <code>Long</code>s or <code>Double</code>s
+	 * directly from the driver and all other columns as strings.
+	 * @param rset The result set to convert.
+	 * @param maxRows The maximum number of rows to read. < 1 means all rows.
+	 * @return A map of name/values for the result set keyed as follows:<code>Map<ROWID, MAP<COLID, VALUE>></code>
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public Map<Integer, Map<Integer, Object>> processNumericResultSet(ResultSet rset, int maxRows) throws SQLException, IOException;
+
 	/**
 	 * Creates a map of the name/values from a result set. Defaults the maxRows to -1 and useStrings to true.
 	 * @param rset The result set to convert.
@@ -95,8 +95,20 @@ public class ProcessedResultSet implements IProcessedResultSet, IReadOnlyProcess
 	 * @throws IOException
 	 */
 	public ProcessedResultSet(ResultSet rset, int maxRows, boolean useStrings) throws SQLException, IOException {
+		this(rset, maxRows, useStrings, false);
+	}
+	
+	/**
+	 * @param rset
+	 * @param maxRows
+	 * @param useStrings
+	 * @param numericPrimitives If true, numeric columns are retrieved as <code>Long</code>s or <code>Double</code>s and all others as strings. Overrides <code>useStrings</code>.
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public ProcessedResultSet(ResultSet rset, int maxRows, boolean useStrings, boolean numericPrimitives) throws SQLException, IOException {
 		long start = System.currentTimeMillis();
-		values = rsetExtractor.processResultSet(rset, maxRows, useStrings);
+		values = numericPrimitives ? rsetExtractor.processNumericResultSet(rset, maxRows) : rsetExtractor.processResultSet(rset, maxRows, useStrings);
 		timeToGet = System.currentTimeMillis()-start;
 		ResultSetMetaData rsmd = rset.getMetaData();
 		colCount = rsmd.getColumnCount();
@@ -108,7 +120,7 @@ public class ProcessedResultSet implements IProcessedResultSet, IReadOnlyProcess
 		columnNames = new HashMap<Integer,String>(colCount);
 		for(int i = 1; i <= colCount; i++) {
 			nameToIndex.put(rsmd.getColumnName(i), i-1);
-			jdbcTypes.put(i, rsmd.getColumnType(i));
+			jdbcTypes.put(i-1, rsmd.getColumnType(i));
 			jdbcTypeNames.put(i-1, rsmd.getColumnTypeName(i));
 			jdbcClassNames.put(i-1, rsmd.getColumnClassName(i));
 			dbTypeNames.put(i-1, rsmd.getColumnTypeName(i));
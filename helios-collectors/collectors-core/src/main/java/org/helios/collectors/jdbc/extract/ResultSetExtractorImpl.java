@@ -51,6 +51,14 @@ import org.helios.helpers.XMLHelper;
  * <p><code>org.helios.collectors.jdbc.extract.ResultSetExtractorImpl</code></p>
  */
 public class ResultSetExtractorImpl implements IResultSetExtractor {
+	/** Numeric kind for a column that is not numeric */
+	protected static final byte NUMERIC_NONE = 0;
+	/** Numeric kind for a column read as a long */
+	protected static final byte NUMERIC_LONG = 1;
+	/** Numeric kind for a column read as a double */
+	protected static final byte NUMERIC_DOUBLE = 2;
+	/** Numeric kind for a column read as an exact BigDecimal */
+	protected static final byte NUMERIC_DECIMAL = 3;
 
 	/**
 	 * Creates a map of the name/values from a result set.
@@ -80,6 +88,82 @@ public class ResultSetExtractorImpl implements IResultSetExtractor {
 		return prset;
 	}
 	
+	/**
+	 * Creates a map of the name/values from a result set, retrieving numeric columns as <code>Number</code>s
+	 * directly from the driver and all other columns as strings.
+	 * Integral columns and <code>NUMERIC</code>/<code>DECIMAL</code> columns with a zero scale and a precision below 19 are read with <code>getLong</code>,
+	 * the remaining <code>NUMERIC</code>/<code>DECIMAL</code> columns with <code>getBigDecimal</code> so that they keep every digit when 
+	 * rendered into metric names and segments, and floating point columns with <code>getDouble</code>.
+	 * @param rset The result set to convert.
+	 * @param maxRows The maximum number of rows to read. < 1 means all rows.
+	 * @return A map of name/values for the result set keyed as follows:<code>Map<ROWID, MAP<COLID, VALUE>></code>
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public Map<Integer, Map<Integer, Object>> processNumericResultSet(ResultSet rset, int maxRows) throws SQLException, IOException {
+		Map<Integer, Map<Integer, Object>> prset = new TreeMap<Integer, Map<Integer, Object>>();
+		ResultSetMetaData rsmd = rset.getMetaData();
+		int columnCount = rsmd.getColumnCount();
+		byte[] numericKinds = new byte[columnCount+1];
+		for(int i = 1; i <= columnCount; i++) {
+			numericKinds[i] = getNumericKind(rsmd, i);
+		}
+		int rowCount = 0;
+		while(rset.next()) {
+			Map<Integer, Object> row = new HashMap<Integer, Object>(columnCount);
+			for(int i = 1; i <= columnCount; i++) {
+				Object val = null;
+				switch(numericKinds[i]) {
+					case NUMERIC_LONG:
+						long l = rset.getLong(i);
+						val = rset.wasNull() ? null : Long.valueOf(l);
+						break;
+					case NUMERIC_DOUBLE:
+						double d = rset.getDouble(i);
+						val = rset.wasNull() ? null : Double.valueOf(d);
+						break;
+					case NUMERIC_DECIMAL:
+						val = rset.getBigDecimal(i);
+						break;
+					default:
+						val = getStringValue(i, rset);
+				}
+				row.put(i-1, val);
+			}
+			prset.put(rowCount, row);
+			rowCount++;
+			if(rowCount==maxRows) break;
+		}
+		return prset;
+	}
+
+	/**
+	 * Determines how a column should be read for typed numeric extraction.
+	 * @param rsmd The result set meta data
+	 * @param columnIndex The column index
+	 * @return one of <code>NUMERIC_NONE</code>, <code>NUMERIC_LONG</code>, <code>NUMERIC_DOUBLE</code> or <code>NUMERIC_DECIMAL</code>.
+	 * @throws SQLException
+	 */
+	protected byte getNumericKind(ResultSetMetaData rsmd, int columnIndex) throws SQLException {
+		switch(rsmd.getColumnType(columnIndex)) {
+			case -6:		//TINYINT
+			case 5:			//SMALLINT
+			case 4:			//INTEGER
+			case -5:		//BIGINT
+				return NUMERIC_LONG;
+			case 6:			//FLOAT
+			case 7:			//REAL
+			case 8:			//DOUBLE
+				return NUMERIC_DOUBLE;
+			case 2:			//NUMERIC
+			case 3:			//DECIMAL
+				// unconstrained numbers (e.g. Oracle NUMBER) report a zero precision and may carry a fraction or more digits than a double holds
+				return (rsmd.getScale(columnIndex)==0 && rsmd.getPrecision(columnIndex)>0 && rsmd.getPrecision(columnIndex)<19) ? NUMERIC_LONG : NUMERIC_DECIMAL;
+			default:
+				return NUMERIC_NONE;
+		}
+	}
+
 	/**
 	 * Creates a map of the name/values from a result set.
 	 * @param rset The result set to convert.
@@ -149,6 +233,7 @@ public class ResultSetExtractorImpl implements IResultSetExtractor {
 				break;
 			case 8:			//DOUBLE
 				obj = rset.getDouble(columnIndex);
+				break;
 			case 2:			//NUMERIC
 			case 3:			//DECIMAL
 			case -5:		//BIGINT
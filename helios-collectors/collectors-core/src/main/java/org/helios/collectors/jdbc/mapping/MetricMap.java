@@ -24,9 +24,12 @@
  */
 package org.helios.collectors.jdbc.mapping;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -94,6 +97,8 @@ public class MetricMap {
 	protected volatile Formatter scopeFormatter = null;
 	/** The bind formatter */
 	protected volatile Formatter bindFormatter = null;
+	/** The metric type resolved at init when the type expression has no tokens */
+	protected MetricType fixedMetricType = null;
 	/** Flag to indicate if tracing is enabled (if not it is probably a pre) */
 	protected boolean tracerEnabled = true;	
 	/** A reference to the MBeanServer where the collector is registered */
@@ -158,6 +163,9 @@ public class MetricMap {
 		try { valueFormatter = new Formatter(delimeter, valueCol); 	} catch (Exception e) {throw new InvalidMetricMappingException("Failed to initialize MetricMapping [Value]", e);	}
 		try { segmentFormatter = new Formatter(delimeter, segment); } catch (Exception e) {throw new InvalidMetricMappingException("Failed to initialize MetricMapping [Segment]", e);	}
 		try { metricTypeFormatter = new Formatter(delimeter, type); 	} catch (Exception e) {throw new InvalidMetricMappingException("Failed to initialize MetricMapping [MetricType]", e);	}
+		if(metricTypeFormatter.isConstant()) {
+			try { fixedMetricType = MetricType.typeForCode(metricTypeFormatter.getValue(null, null)); } catch (Exception e) { fixedMetricType = null; }
+		}
 		if(scope!=null) {
 			try { scopeFormatter = new Formatter(delimeter, scope); 	} catch (Exception e) {throw new InvalidMetricMappingException("Failed to initialize MetricMapping [Scope]", e);	}
 		}
@@ -187,63 +195,43 @@ public class MetricMap {
 	 */
 	public void traceMetrics(IReadOnlyProcessedResultSet prs, Map<String, Object> connMetaData) {
 		if(!tracerEnabled) return;
-		MetricType metricType = MetricType.typeForCode(metricTypeFormatter.getValue(prs, connMetaData));
-//		Builder builder = tracer.trace(
-//				nameFormatter.getValue(prs, connMetaData),  // "Elapsed Time"
-//				valueFormatter.getValue(prs, connMetaData), // String: "7543287"
-//				metricType.name())  // "STICKY_DELTA_LONG_AVG" 
-//		.segment(prefix)  // ["Database"]
-//		.segment(segmentFormatter.getValues(prs, connMetaData))  // [ECS, Oracle, SQL, Statements, SELECT state,event_data from event where event_name=:1]
-//		.temporal(temporal);
+		MetricType metricType = fixedMetricType!=null ? fixedMetricType : MetricType.typeForCode(metricTypeFormatter.getValue(prs, connMetaData));
+		Number value = valueFormatter.getNumber(prs, connMetaData);
+		if(value==null) return;
+		String metricName = nameFormatter.getValue(prs, connMetaData);
+		String[] segments = segmentFormatter.getValues(prs, connMetaData);
 		Trace trace = null;		
 		if(metricType.isDelta()) {
 			if(metricType.isLong()) {
 				if(metricType.isSticky()) {
-					
-					trace = tracer.traceStickyDelta(
-							new Double(
-									valueFormatter.getValue(prs, connMetaData)
-							).longValue(), 
-							nameFormatter.getValue(prs, connMetaData), 
-							prefix, 
-							segmentFormatter.getValues(prs, connMetaData)
-					);
-					//log.info("DB Trace:\n\tRaw Value:[" + valueFormatter.getValue(prs, connMetaData) + "]\n\tTrace:" + trace);
+					trace = tracer.traceStickyDelta(value.longValue(), metricName, prefix, segments);
 				} else {
-					trace = tracer.traceDelta(
-							Long.parseLong(
-									valueFormatter.getValue(prs, connMetaData)
-							), 
-							nameFormatter.getValue(prs, connMetaData), 
-							prefix, 
-							segmentFormatter.getValues(prs, connMetaData)
-					);
+					trace = tracer.traceDelta(value.longValue(), metricName, prefix, segments);
 				}
 			} else if(metricType.isInt()) {
 				if(metricType.isSticky()) {
-					trace = tracer.traceStickyDelta(Integer.parseInt(valueFormatter.getValue(prs, connMetaData)), nameFormatter.getValue(prs, connMetaData), prefix, segmentFormatter.getValues(prs, connMetaData));
+					trace = tracer.traceStickyDelta(value.intValue(), metricName, prefix, segments);
 				} else {
-					trace = tracer.traceDelta(Integer.parseInt(valueFormatter.getValue(prs, connMetaData)), nameFormatter.getValue(prs, connMetaData), prefix, segmentFormatter.getValues(prs, connMetaData));
+					trace = tracer.traceDelta(value.intValue(), metricName, prefix, segments);
 				}				
 			}
 		} else {
 			if(metricType.isLong()) {
 				if(metricType.isSticky()) {
-					trace = tracer.traceSticky(Long.parseLong(valueFormatter.getValue(prs, connMetaData)), nameFormatter.getValue(prs, connMetaData), prefix, segmentFormatter.getValues(prs, connMetaData));
+					trace = tracer.traceSticky(value.longValue(), metricName, prefix, segments);
 				} else {
-					trace = tracer.trace(Long.parseLong(valueFormatter.getValue(prs, connMetaData)), nameFormatter.getValue(prs, connMetaData), prefix, segmentFormatter.getValues(prs, connMetaData));
+					trace = tracer.trace(value.longValue(), metricName, prefix, segments);
 				}
 			} else if(metricType.isInt()) {
 				if(metricType.isSticky()) {
-					trace = tracer.traceSticky(Integer.parseInt(valueFormatter.getValue(prs, connMetaData)), nameFormatter.getValue(prs, connMetaData), prefix, segmentFormatter.getValues(prs, connMetaData));
+					trace = tracer.traceSticky(value.intValue(), metricName, prefix, segments);
 				} else {
-					trace = tracer.trace(Integer.parseInt(valueFormatter.getValue(prs, connMetaData)), nameFormatter.getValue(prs, connMetaData), prefix, segmentFormatter.getValues(prs, connMetaData));
+					trace = tracer.trace(value.intValue(), metricName, prefix, segments);
 				}				
 			}			
 		}
-		//tracer.traceTrace(trace);
 		if(scope != null && trace!=null) {
-			scopeMap.put(trace.getFQN(), new ScopeState(trace.getMetricType(), true, nameFormatter.getValue(prs, connMetaData), segmentFormatter.getValues(prs, connMetaData)));
+			scopeMap.put(trace.getFQN(), new ScopeState(trace.getMetricType(), true, metricName, segments));
 		}
 	}
 	
@@ -447,6 +435,8 @@ public class MetricMap {
 		protected String colName = null;
 		/** The value type  */
 		protected String colType = null;
+		/** The lower cased value type code */
+		protected char typeCode = 0;
 		
 		/**
 		 * Creates a new ValueReader
@@ -467,6 +457,7 @@ public class MetricMap {
 			if(value==null || value.length()<1) throw new RuntimeException("Invalid value specification");
 			if(type==null || type.length()<1 || !validateType(type)) throw new RuntimeException("Invalid type specification");
 			colType = type;
+			typeCode = Character.toLowerCase(type.charAt(0));
 			if(colType.equalsIgnoreCase("m")) { // keep value as String
 				colName = value;
 			} else {  // might be a column number or name
@@ -480,36 +471,55 @@ public class MetricMap {
 		 * @return The extracted value.
 		 */
 		String getValue(IReadOnlyProcessedResultSet prs, Map<String, Object> connMetaData) {
-			Object result =  null;
-			switch ((int)colType.toCharArray()[0]) {
-			case (int)'q':
-				result = prs.getQueryName();
-				break;
-			case (int)'m':
-				result = connMetaData.get(colName);
-				break;				
-			case (int)'c':
-				result =  colName==null ? prs.getColumnName(colNum) : prs.getColumnName(colName); 
-				break;
-			case (int)'v':
-				result =  colName==null ? prs.get(colNum) : prs.get(colName); 
-				break;
-			case (int)'n':
-				result =  colName==null ? prs.getColumnTypeName(colNum) : prs.getColumnTypeName(colName); 
-				break;
-			case (int)'t':
-				result =  colName==null ? prs.getColumnType(colNum) : prs.getColumnType(colName); 
-				break;
-			case (int)'j':
-				result =  colName==null ? prs.getColumnClassName(colNum) : prs.getColumnClassName(colName); 
-				break;
-			case (int)'s':
-				result =  colName==null ? prs.getDbTypeName(colNum) : prs.getDbTypeName(colName); 
-				break;					
+			return render(getRawValue(prs, connMetaData));
+		}
+		
+		/**
+		 * Retrieves the configured/requested value from the result set or the metadata without rendering it.
+		 * @param prs The processed result set to extract from
+		 * @param connMetaData The connection meta-data set to extract from
+		 * @return The extracted value which may be null.
+		 */
+		Object getRawValue(IReadOnlyProcessedResultSet prs, Map<String, Object> connMetaData) {
+			switch (typeCode) {
+			case 'q':
+				return prs.getQueryName();
+			case 'm':
+				return connMetaData.get(colName);
+			case 'c':
+				return colName==null ? prs.getColumnName(colNum) : prs.getColumnName(colName); 
+			case 'v':
+				return colName==null ? prs.get(colNum) : prs.get(colName); 
+			case 'n':
+				return colName==null ? prs.getColumnTypeName(colNum) : prs.getColumnTypeName(colName); 
+			case 't':
+				return colName==null ? prs.getColumnType(colNum) : prs.getColumnType(colName); 
+			case 'j':
+				return colName==null ? prs.getColumnClassName(colNum) : prs.getColumnClassName(colName); 
+			case 's':
+				return colName==null ? prs.getDbTypeName(colNum) : prs.getDbTypeName(colName); 
 			default:
 				throw new RuntimeException("Unlikely but unrecognized token encountered in ValueReader [" + colType + "]");
 			}		
-			return result==null ? "" : result.toString();
+		}
+		
+		/**
+		 * Renders an extracted value. Typed numeric values render in plain notation so that they format the same as 
+		 * the driver's string value: <code>BigDecimal</code>s keep every digit and whole <code>Double</code>s render without a fraction.
+		 * @param value The value to render
+		 * @return the rendered value, or a blank string if the value is null.
+		 */
+		static String render(Object value) {
+			if(value==null) return "";
+			if(value instanceof BigDecimal) {
+				return ((BigDecimal)value).toPlainString();
+			}
+			if(value instanceof Double) {
+				double d = ((Double)value).doubleValue();
+				if(d==Math.rint(d) && Math.abs(d) < 1e15) return Long.toString((long)d);
+				if(!Double.isNaN(d) && !Double.isInfinite(d)) return BigDecimal.valueOf(d).toPlainString();
+			}
+			return value.toString();
 		}
 		
 		/**
@@ -560,6 +570,16 @@ public class MetricMap {
 		protected Map<String, ValueReader> valueReaders = new HashMap<String, ValueReader>();
 		/** flag indicating an empty segment */
 		protected boolean empty = false;
+		/** The compiled template: literal strings and value readers in template order */
+		protected Object[] parts = {};
+		/** The value reader when the template is a single token, otherwise null */
+		protected ValueReader direct = null;
+		/** The rendered value when the template has no tokens, otherwise null */
+		protected String constantValue = null;
+		/** The split rendered value when the template has no tokens, otherwise null */
+		protected String[] constantValues = null;
+		/** The compiled delimeter pattern */
+		protected Pattern delimPattern = null;
 		
 		/**
 		 * Creates a new Formatter instance.
@@ -572,15 +592,60 @@ public class MetricMap {
 			if(config==null||config.length()<1) {
 				empty = true;
 			} else {
+				delimPattern = Pattern.compile(Pattern.quote(delim));
+				List<Object> compiled = new ArrayList<Object>();
 				Matcher m = SEG_PATTERN.matcher(config);
+				int last = 0;
 				while(m.find()) {
 					String token = m.group(1);				
 					if(!valueReaders.containsKey(token)) {
 						valueReaders.put(token, new ValueReader(m.group(2), m.group(3)));
 					}
+					if(m.start()>last) compiled.add(config.substring(last, m.start()));
+					compiled.add(valueReaders.get(token));
+					last = m.end();
+				}
+				if(last<config.length()) compiled.add(config.substring(last));
+				parts = compiled.toArray();
+				if(valueReaders.isEmpty()) {
+					constantValue = config;
+					constantValues = delimPattern.split(config);
+				} else if(parts.length==1) {
+					direct = (ValueReader)parts[0];
 				}
 			}
 		}
+		
+		/**
+		 * Indicates if the template has no tokens and renders the same value for every row
+		 * @return true if the template is constant
+		 */
+		boolean isConstant() {
+			return empty || constantValue!=null;
+		}
+		
+		/**
+		 * Returns the formatted value as a number. When the template is a single token, numeric values 
+		 * extracted as primitives are returned directly without a round trip through a string.
+		 * @param prs The processed result set
+		 * @param connMetaData The connection meta-data map
+		 * @return The number or null if the value is null or blank.
+		 */
+		Number getNumber(IReadOnlyProcessedResultSet prs, Map<String, Object> connMetaData) {
+			if(empty) return null;
+			String s = null;
+			if(direct!=null) {
+				Object value = direct.getRawValue(prs, connMetaData);
+				if(value instanceof Number) return (Number)value;
+				if(value==null) return null;
+				s = value.toString().trim();
+			} else {
+				s = formatValue(prs, connMetaData).trim();
+			}
+			if(s.length()<1) return null;
+			if(s.indexOf('.')==-1 && s.indexOf('e')==-1 && s.indexOf('E')==-1) return Long.valueOf(s);
+			return Double.valueOf(s);
+		}
 		/**
 		 * Returns a multi valued formatted value
 		 * @param prs The processed result set
@@ -589,7 +654,8 @@ public class MetricMap {
 		 */
 		String[] getValues(IReadOnlyProcessedResultSet prs, Map<String, Object> connMetaData) {
 			if(empty) return emptySegment;
-			return formatValue(prs, connMetaData).split(Pattern.quote(delim));
+			if(constantValues!=null) return constantValues.clone();
+			return delimPattern.split(formatValue(prs, connMetaData));
 		}
 		/**
 		 * Returns a single valued formatted value
@@ -609,16 +675,21 @@ public class MetricMap {
 		 * @return The unsplit formatted string
 		 */
 		private String formatValue(IReadOnlyProcessedResultSet prs, Map<String, Object> connMetaData) {
-			String raw = new String(rawValue);
-			for(Map.Entry<String, ValueReader> vr: valueReaders.entrySet()) {
-				raw = raw.replace(vr.getKey(), clean(vr.getValue().getValue(prs, connMetaData)));
+			if(constantValue!=null) return constantValue;
+			StringBuilder b = new StringBuilder(rawValue.length() + 32);
+			for(Object part: parts) {
+				if(part instanceof ValueReader) {
+					b.append(clean(((ValueReader)part).getValue(prs, connMetaData)));
+				} else {
+					b.append((String)part);
+				}
 			}
-			return raw;
+			return b.toString();
 		}
 		
 		public static String clean(CharSequence s) {
 			if(s==null) return null;
-			return s.toString().replaceAll("/", "\\\\");
+			return s.toString().replace('/', '\\');
 		}
 		
 	}
@@ -0,0 +1,487 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.collectors.jmx;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.apache.log4j.Logger;
+import org.helios.helpers.ConfigurationHelper;
+import org.helios.helpers.JMXHelper;
+import org.helios.jmx.dynamic.annotations.JMXAttribute;
+import org.helios.jmx.dynamic.annotations.JMXManagedObject;
+import org.helios.jmx.dynamic.annotations.JMXOperation;
+import org.helios.jmx.dynamic.annotations.options.AttributeMutabilityOption;
+
+/**
+ * <p>Title: JMXCollectionPlanner</p>
+ * <p>Description: Plans the remote attribute reads for one collection of a {@link JMXCollector}. All the attributes requested for an ObjectName
+ * are merged into a single <code>getAttributes</code> call, wildcard ObjectName query results are cached between collections for a configurable refresh period, 
+ * and the planned reads are fanned out across pooled MBeanServerConnections on a thread pool shared by all planners.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.collectors.jmx.JMXCollectionPlanner</code></p>
+ */
+@JMXManagedObject(annotated=true, declared=true)
+public class JMXCollectionPlanner {
+	/** Static class logger */
+	protected static final Logger LOG = Logger.getLogger(JMXCollectionPlanner.class);
+	/** The connection factory providing pooled connections for the fan out */
+	protected final IMBeanServerConnectionFactory connectionFactory;
+	/** The planned attribute names keyed by ObjectName */
+	protected final Map<ObjectName, Set<String>> plan = new LinkedHashMap<ObjectName, Set<String>>();
+	/** Cached wildcard query results keyed by the query ObjectName */
+	protected final Map<ObjectName, CachedQuery> queryCache = new ConcurrentHashMap<ObjectName, CachedQuery>();
+	/** The period for which wildcard query results are cached (ms) */
+	protected long queryRefreshPeriod = 60000L;
+	/** The maximum number of concurrent remote read tasks per collection */
+	protected int maxConcurrency = 4;
+	/** The number of query cache hits */
+	protected final AtomicLong queryCacheHits = new AtomicLong(0L);
+	/** The number of remote queries issued */
+	protected final AtomicLong queryCount = new AtomicLong(0L);
+	/** The number of ObjectNames read in the last collection */
+	protected int lastPlanSize = 0;
+	/** The number of attributes read in the last collection */
+	protected int lastAttributeCount = 0;
+	/** The elapsed time of the last plan execution (ms) */
+	protected long lastExecuteTime = 0L;
+	/** The number of read tasks the last plan execution was split into */
+	protected int lastTaskCount = 0;
+	/** The number of ObjectNames that failed to read in the last plan execution */
+	protected int lastFailedReads = 0;
+	
+	/** The system property name for the size of the shared fan out thread pool */
+	public static final String FANOUT_THREADS_PROP = "org.helios.collectors.jmx.planner.threads";
+	/** The default size of the shared fan out thread pool */
+	public static final int DEFAULT_FANOUT_THREADS = Runtime.getRuntime().availableProcessors() * 4;
+	/** Serial number generator for fan out thread names */
+	private static final AtomicInteger serial = new AtomicInteger(0);
+	/** The fan out thread pool shared by all planners */
+	protected static final ExecutorService FANOUT_POOL = Executors.newFixedThreadPool(
+			ConfigurationHelper.getIntSystemThenEnvProperty(FANOUT_THREADS_PROP, DEFAULT_FANOUT_THREADS), 
+			new ThreadFactory(){
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "JMXCollectionPlannerThread#" + serial.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+	});
+	
+	/**
+	 * <p>Title: CachedQuery</p>
+	 * <p>Description: A timestamped wildcard query result</p> 
+	 */
+	protected static class CachedQuery {
+		/** The matched ObjectNames */
+		final Set<ObjectName> names;
+		/** The time the query was run */
+		final long timestamp = System.currentTimeMillis();
+		/**
+		 * Creates a new CachedQuery
+		 * @param names The matched ObjectNames
+		 */
+		CachedQuery(Set<ObjectName> names) {
+			this.names = Collections.unmodifiableSet(new LinkedHashSet<ObjectName>(names));
+		}
+	}
+	
+	/**
+	 * Creates a new JMXCollectionPlanner
+	 * @param connectionFactory The connection factory providing pooled connections for the fan out. May be null, in which case all reads use the primary connection.
+	 */
+	public JMXCollectionPlanner(IMBeanServerConnectionFactory connectionFactory) {
+		this.connectionFactory = connectionFactory;
+	}
+	
+	/**
+	 * Resolves the ObjectNames matching the passed ObjectName. Wildcard results are cached for the query refresh period.
+	 * @param objectName The ObjectName to resolve
+	 * @param connection The connection to query with on a cache miss
+	 * @return a set of matching ObjectNames
+	 * @throws IOException
+	 */
+	public Set<ObjectName> resolve(ObjectName objectName, MBeanServerConnection connection) throws IOException {
+		if(!objectName.isPattern()) {
+			return Collections.singleton(objectName);
+		}
+		CachedQuery cq = queryCache.get(objectName);
+		if(cq!=null && System.currentTimeMillis()-cq.timestamp < queryRefreshPeriod) {
+			queryCacheHits.incrementAndGet();
+			return cq.names;
+		}
+		queryCount.incrementAndGet();
+		cq = new CachedQuery(connection.queryNames(objectName, null));
+		queryCache.put(objectName, cq);
+		return cq.names;
+	}
+	
+	/**
+	 * Adds attribute names to be read from the passed ObjectName in the next execution
+	 * @param objectName The ObjectName to read from
+	 * @param attributeNames The attribute names to read
+	 */
+	public void request(ObjectName objectName, String...attributeNames) {
+		if(objectName==null || attributeNames==null || attributeNames.length<1) return;
+		Set<String> names = plan.get(objectName);
+		if(names==null) {
+			names = new LinkedHashSet<String>();
+			plan.put(objectName, names);
+		}
+		Collections.addAll(names, attributeNames);
+	}
+	
+	/**
+	 * Adds attribute names to be read from each of the passed ObjectNames in the next execution
+	 * @param objectNames The ObjectNames to read from
+	 * @param attributeNames The attribute names to read
+	 */
+	public void request(Collection<ObjectName> objectNames, String...attributeNames) {
+		for(ObjectName on: objectNames) {
+			request(on, attributeNames);
+		}
+	}
+	
+	/**
+	 * Executes the current plan, then clears it. ObjectNames that are no longer registered or that fail to read are omitted from the results.
+	 * @param connection The collector's primary connection, used by the calling thread and as the fallback when no pooled connection is available
+	 * @return a map of attribute values keyed by attribute name, keyed by ObjectName
+	 * @throws IOException thrown if every read task failed with an IOException
+	 */
+	public Map<ObjectName, Map<String, Object>> execute(final MBeanServerConnection connection) throws IOException {
+		long start = System.currentTimeMillis();
+		final Map<ObjectName, Map<String, Object>> results = new ConcurrentHashMap<ObjectName, Map<String, Object>>(plan.size());
+		List<Map.Entry<ObjectName, Set<String>>> entries = new ArrayList<Map.Entry<ObjectName, Set<String>>>(plan.entrySet());
+		int taskCount = Math.max(1, Math.min(maxConcurrency, entries.size()));
+		List<List<Map.Entry<ObjectName, Set<String>>>> tasks = new ArrayList<List<Map.Entry<ObjectName, Set<String>>>>(taskCount);
+		for(int i = 0; i < taskCount; i++) {
+			tasks.add(new ArrayList<Map.Entry<ObjectName, Set<String>>>());
+		}
+		int attributeCount = 0;
+		for(int i = 0; i < entries.size(); i++) {
+			tasks.get(i%taskCount).add(entries.get(i));
+			attributeCount += entries.get(i).getValue().size();
+		}
+		final AtomicInteger failedReads = new AtomicInteger(0);
+		List<Future<IOException>> futures = new ArrayList<Future<IOException>>(taskCount-1);
+		for(int i = 1; i < taskCount; i++) {
+			final List<Map.Entry<ObjectName, Set<String>>> task = tasks.get(i);
+			futures.add(FANOUT_POOL.submit(new Callable<IOException>(){
+				public IOException call() {
+					MBeanServerConnection pooled = borrow();
+					try {
+						return read(pooled==null ? connection : pooled, task, results, failedReads);
+					} finally {
+						if(pooled!=null) giveBack(pooled);
+					}
+				}
+			}));
+		}
+		IOException failure = read(connection, tasks.get(0), results, failedReads);
+		int failures = failure==null ? 0 : 1;
+		for(Future<IOException> f: futures) {
+			IOException iex = null;
+			try {
+				iex = f.get();
+			} catch (Exception e) {
+				iex = new IOException("Read task failed", e);
+			}
+			if(iex!=null) {
+				failures++;
+				if(failure==null) failure = iex;
+			}
+		}
+		plan.clear();
+		lastPlanSize = entries.size();
+		lastAttributeCount = attributeCount;
+		lastTaskCount = taskCount;
+		lastFailedReads = failedReads.get();
+		lastExecuteTime = System.currentTimeMillis()-start;
+		if(failures==taskCount && failure!=null && !entries.isEmpty()) {
+			throw failure;
+		}
+		return results;
+	}
+	
+	/**
+	 * Reads the attributes for a list of planned ObjectNames. A failed read is counted and the remaining reads in the task are still attempted.
+	 * @param connection The connection to read with
+	 * @param task The planned reads
+	 * @param results The map to write results into
+	 * @param failedReads The counter incremented for each ObjectName that fails to read
+	 * @return the first IOException encountered if no read in the task succeeded, otherwise null
+	 */
+	protected IOException read(MBeanServerConnection connection, List<Map.Entry<ObjectName, Set<String>>> task, Map<ObjectName, Map<String, Object>> results, AtomicInteger failedReads) {
+		IOException failure = null;
+		boolean anyRead = false;
+		for(Map.Entry<ObjectName, Set<String>> entry: task) {
+			try {
+				AttributeList attrs = connection.getAttributes(entry.getKey(), entry.getValue().toArray(new String[entry.getValue().size()]));
+				Map<String, Object> values = new HashMap<String, Object>(attrs.size());
+				for(Object o: attrs) {
+					Attribute attr = (Attribute)o;
+					values.put(attr.getName(), attr.getValue());
+				}
+				results.put(entry.getKey(), values);
+				anyRead = true;
+			} catch (IOException iex) {
+				failedReads.incrementAndGet();
+				if(failure==null) failure = iex;
+				if(LOG.isDebugEnabled()) LOG.debug("Failed to read attributes " + entry.getValue() + " from [" + entry.getKey() + "]", iex);
+			} catch (InstanceNotFoundException ine) {
+				// the MBean went away so any cached queries that matched it are stale
+				invalidate(entry.getKey());
+			} catch (Exception e) {
+				failedReads.incrementAndGet();
+				if(LOG.isDebugEnabled()) LOG.debug("Failed to read attributes " + entry.getValue() + " from [" + entry.getKey() + "]", e);
+			}
+		}
+		return anyRead ? null : failure;
+	}
+	
+	/**
+	 * Borrows a pooled connection from the connection factory
+	 * @return a pooled connection or null if one could not be acquired
+	 */
+	protected MBeanServerConnection borrow() {
+		if(connectionFactory==null) return null;
+		try {
+			return connectionFactory.getPooledConnection();
+		} catch (Exception e) {
+			if(LOG.isDebugEnabled()) LOG.debug("Failed to acquire pooled connection. Using primary connection.", e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Returns a pooled connection to the connection factory
+	 * @param connection the pooled connection
+	 */
+	protected void giveBack(MBeanServerConnection connection) {
+		try { connectionFactory.returnPooledConnection(connection); } catch (Exception e) {}
+	}
+	
+	/**
+	 * Builds the attribute map for a set of absolute or compound attribute names from the root attribute values read for one ObjectName.
+	 * Null values are omitted.
+	 * @param rootValues The root attribute values keyed by root attribute name
+	 * @param attributeNames The absolute or compound attribute names
+	 * @param delimeter The compound name delimeter
+	 * @return a map of values keyed by the requested attribute name
+	 */
+	public static Map<String, Object> explode(Map<String, Object> rootValues, Collection<String> attributeNames, String delimeter) {
+		Map<String, Object> exploded = new HashMap<String, Object>(attributeNames.size());
+		for(String name: attributeNames) {
+			Object value = null;
+			if(name.contains(delimeter)) {
+				Object root = rootValues.get(rootName(name, delimeter));
+				if(root instanceof CompositeData) {
+					try { value = JMXHelper.extractCompositeData((CompositeData)root, delimeter, name); } catch (Exception e) {}
+				}
+			} else {
+				value = rootValues.get(name);
+			}
+			if(value!=null) exploded.put(name, value);
+		}
+		return exploded;
+	}
+	
+	/**
+	 * Returns the root attribute names for a collection of absolute or compound attribute names
+	 * @param attributeNames The absolute or compound attribute names
+	 * @param delimeter The compound name delimeter
+	 * @return an array of de-duplicated root attribute names
+	 */
+	public static String[] rootNames(Collection<String> attributeNames, String delimeter) {
+		Set<String> roots = new LinkedHashSet<String>(attributeNames.size());
+		for(String name: attributeNames) {
+			roots.add(rootName(name, delimeter));
+		}
+		return roots.toArray(new String[roots.size()]);
+	}
+	
+	/**
+	 * Returns the root attribute name of an absolute or compound attribute name
+	 * @param name The absolute or compound attribute name
+	 * @param delimeter The compound name delimeter
+	 * @return the root attribute name
+	 */
+	protected static String rootName(String name, String delimeter) {
+		return name.contains(delimeter) ? name.split(Pattern.quote(delimeter))[0] : name;
+	}
+	
+	/**
+	 * Removes any cached query results that matched the passed ObjectName
+	 * @param objectName The ObjectName that is no longer registered
+	 */
+	protected void invalidate(ObjectName objectName) {
+		for(Map.Entry<ObjectName, CachedQuery> entry: queryCache.entrySet()) {
+			if(entry.getValue().names.contains(objectName)) {
+				queryCache.remove(entry.getKey());
+			}
+		}
+	}
+	
+	/**
+	 * Clears the query cache and the current plan
+	 */
+	@JMXOperation(name="invalidate", description="Clears the query cache")
+	public void invalidate() {
+		queryCache.clear();
+		plan.clear();
+	}
+
+	/**
+	 * Returns the period for which wildcard query results are cached (ms)
+	 * @return the query refresh period
+	 */
+	@JMXAttribute(name="QueryRefreshPeriod", description="The period for which wildcard query results are cached (ms)", mutability=AttributeMutabilityOption.READ_WRITE)
+	public long getQueryRefreshPeriod() {
+		return queryRefreshPeriod;
+	}
+
+	/**
+	 * Sets the period for which wildcard query results are cached (ms)
+	 * @param queryRefreshPeriod the query refresh period
+	 */
+	public void setQueryRefreshPeriod(long queryRefreshPeriod) {
+		this.queryRefreshPeriod = queryRefreshPeriod;
+	}
+
+	/**
+	 * Returns the maximum number of concurrent remote read tasks per collection
+	 * @return the maximum number of concurrent remote read tasks per collection
+	 */
+	@JMXAttribute(name="MaxConcurrency", description="The maximum number of concurrent remote read tasks per collection", mutability=AttributeMutabilityOption.READ_WRITE)
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	/**
+	 * Sets the maximum number of concurrent remote read tasks per collection
+	 * @param maxConcurrency the maximum number of concurrent remote read tasks per collection
+	 */
+	public void setMaxConcurrency(int maxConcurrency) {
+		if(maxConcurrency<1) throw new IllegalArgumentException("Invalid max concurrency [" + maxConcurrency + "]", new Throwable());
+		this.maxConcurrency = maxConcurrency;
+	}
+	
+	/**
+	 * Returns the number of wildcard query cache hits
+	 * @return the number of wildcard query cache hits
+	 */
+	@JMXAttribute(name="QueryCacheHits", description="The number of wildcard query cache hits", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getQueryCacheHits() {
+		return queryCacheHits.get();
+	}
+	
+	/**
+	 * Returns the number of remote wildcard queries issued
+	 * @return the number of remote wildcard queries issued
+	 */
+	@JMXAttribute(name="QueryCount", description="The number of remote wildcard queries issued", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getQueryCount() {
+		return queryCount.get();
+	}
+	
+	/**
+	 * Returns the number of cached wildcard queries
+	 * @return the number of cached wildcard queries
+	 */
+	@JMXAttribute(name="QueryCacheSize", description="The number of cached wildcard queries", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getQueryCacheSize() {
+		return queryCache.size();
+	}
+
+	/**
+	 * Returns the number of ObjectNames read in the last collection
+	 * @return the number of ObjectNames read in the last collection
+	 */
+	@JMXAttribute(name="LastPlanSize", description="The number of ObjectNames read in the last collection", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getLastPlanSize() {
+		return lastPlanSize;
+	}
+
+	/**
+	 * Returns the number of attributes read in the last collection
+	 * @return the number of attributes read in the last collection
+	 */
+	@JMXAttribute(name="LastAttributeCount", description="The number of attributes read in the last collection", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getLastAttributeCount() {
+		return lastAttributeCount;
+	}
+
+	/**
+	 * Returns the elapsed time of the last plan execution (ms)
+	 * @return the elapsed time of the last plan execution
+	 */
+	@JMXAttribute(name="LastExecuteTime", description="The elapsed time of the last plan execution (ms)", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getLastExecuteTime() {
+		return lastExecuteTime;
+	}
+
+	/**
+	 * Returns the number of read tasks the last plan execution was split into
+	 * @return the number of read tasks in the last plan execution
+	 */
+	@JMXAttribute(name="LastTaskCount", description="The number of read tasks the last plan execution was split into", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getLastTaskCount() {
+		return lastTaskCount;
+	}
+
+	/**
+	 * Returns the number of ObjectNames that failed to read in the last plan execution
+	 * @return the number of failed reads in the last plan execution
+	 */
+	@JMXAttribute(name="LastFailedReads", description="The number of ObjectNames that failed to read in the last plan execution", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getLastFailedReads() {
+		return lastFailedReads;
+	}
+}
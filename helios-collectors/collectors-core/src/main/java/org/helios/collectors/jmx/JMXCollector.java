@@ -29,10 +29,12 @@ import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryUsage;
 import java.lang.management.ThreadInfo;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -163,12 +165,26 @@ public class JMXCollector extends AbstractCollector {
 	public static final Object[] NULL_ARG = new Object[]{};	
 	protected static final String[] CLASS_LOADING_STATS = new String[]{"LoadedClassCount", "TotalLoadedClassCount", "UnloadedClassCount"};
 	protected static final String[] THREAD_STATS = new String[]{"ThreadCount", "DaemonThreadCount", "TotalStartedThreadCount", "PeakThreadCount"};	
+	protected static final String[] MEMORY_STATS = new String[]{"HeapMemoryUsage", "NonHeapMemoryUsage", "ObjectPendingFinalizationCount"};
+	protected static final String[] RUNTIME_STATS = new String[]{"StartTime", "InputArguments"};
+	protected static final String[] COMPILER_STATS = new String[]{"TotalCompilationTime"};
+	protected static final String[] GC_STATS = new String[]{"CollectionCount", "CollectionTime"};
+	protected static final String[] MEMORY_POOL_STATS = new String[]{"Type", "Usage"};
 
 	/** Thread State aggregator */
 	protected Map<Thread.State, Integer> threadStates = new HashMap<Thread.State, Integer>(12);	
 	
 	protected Context ctx = null;
 	
+	/** The planner that batches and fans out the remote attribute reads for each collection */
+	protected JMXCollectionPlanner planner = null;
+	/** The period for which wildcard ObjectName query results are cached (ms) */
+	protected long queryRefreshPeriod = 60000L;
+	/** The maximum number of concurrent remote read tasks per collection */
+	protected int collectionConcurrency = 4;
+	/** The MXBean attribute values read by the planner for the current collection, keyed by ObjectName */
+	protected Map<ObjectName, Map<String, Object>> mxBeanValues = new HashMap<ObjectName, Map<String, Object>>();
+	
 	
 	/**
 	 * The constructor for passing an instance of IMBeanServerConnectionFactory
@@ -249,8 +265,11 @@ public class JMXCollector extends AbstractCollector {
 		
 		boolean anySuccess = false;
 		boolean anyFailure = false;
-		for(JMXObject tr: jmxObjects) {
-			try {
+		// Plan all the reads for this collection so that each ObjectName is read once
+		Map<JMXObject, Set<ObjectName>> targets = new LinkedHashMap<JMXObject, Set<ObjectName>>(jmxObjects.size());
+		Map<ObjectName, Map<String, Object>> values = null;
+		try {
+			for(JMXObject tr: jmxObjects) {
 				List<JMXAttributeTrace> jmxAttributeTraces = tr.getTargetAttributeTraces();
 				if(anyAttributesToProcess(tr, jmxAttributeTraces)==false){
 					// There are no attribute defined to query for this target objectName
@@ -258,58 +277,66 @@ public class JMXCollector extends AbstractCollector {
 					anyFailure=true;
 					continue;
 				}
-				Iterator<ObjectName> mbeans = null;
-				Map<ObjectName, Map<String, Object>> mappedValues;
-				try{
-					mappedValues = JMXHelper.getMBeanAttributeMap(mBeanServerConnection, tr.targetObjectName, compoundNameDelimeter, tr.getAttributeNames());
-					mbeans = mappedValues.keySet().iterator();
-				} catch (Exception ioex){
-					// Error communicating with MBean Server
-					anyFailure=true;
-					mBeanServerConnection = null;
-					if(logErrors) 
-						log.error("Failed to read results from MBeanServer", ioex);
-					traceDefaultsForOffline();
-					collectionResult.setAnyException(ioex);
-					return determineStatus(anySuccess, anyFailure, collectionResult);
-				}
-				while(mbeans.hasNext()) {
-					ObjectName on = (ObjectName)mbeans.next();
-					if(tr.getAttributeNames().size()>0){
-						// get values for all attributes in one swipe for this MBean 
-						Map<String,Object> explodedResults = mappedValues.get(on);
-						if(explodedResults == null){
-							 // Error occured while processing attributes for this MBean
-							 // skip this one and proceed processing OTHER MBeans
-							 anyFailure=true;
-							 continue;
-						 }
-						
-						// Check whether this MBean has been processed before.  if yes, then used resolved 
-						// metric/segment/segmentPrefixElements instead of resolving tokens again
-						if(resolvedJMXObjects.containsKey(on.getCanonicalName())){
-							log.trace("Already have the key in cache: "+on.getCanonicalName());
-							JMXObject cachedObject = resolvedJMXObjects.get(on.getCanonicalName());
-							if(cachedObject!=null){
-								processCachedObject(on, cachedObject, explodedResults);
-								anySuccess=true;
-								cachedObject.setProcessed(true);
-								JMXObject tempObject = new JMXObject(cachedObject);
-								resolvedJMXObjects.put(on.getCanonicalName(),tempObject);
-							}
-						} else {
-							// Either a new MBean popped up as part of the returned results 
-							// or its the first poll of this JMXCollector
-							log.trace("**************** No entry in cache for key : "+on.getCanonicalName());
-							processNonCachedObject(on, tr, explodedResults,jmxAttributeTraces);
+				Set<ObjectName> names = planner.resolve(tr.targetObjectName, mBeanServerConnection);
+				planner.request(names, JMXCollectionPlanner.rootNames(tr.getAttributeNames(), compoundNameDelimeter));
+				targets.put(tr, names);
+			}
+			if(traceMXBeans) {
+				planMXBeans();
+			}
+			values = planner.execute(mBeanServerConnection);
+		} catch (Exception ioex){
+			// Error communicating with MBean Server
+			anyFailure=true;
+			mBeanServerConnection = null;
+			planner.invalidate();
+			if(logErrors) 
+				log.error("Failed to read results from MBeanServer", ioex);
+			traceDefaultsForOffline();
+			collectionResult.setAnyException(ioex);
+			return determineStatus(anySuccess, anyFailure, collectionResult);
+		}
+		mxBeanValues = values;
+		for(Entry<JMXObject, Set<ObjectName>> target: targets.entrySet()) {
+			JMXObject tr = target.getKey();
+			try {
+				List<JMXAttributeTrace> jmxAttributeTraces = tr.getTargetAttributeTraces();
+				for(ObjectName on: target.getValue()) {
+					Map<String, Object> rootValues = values.get(on);
+					if(rootValues==null) {
+						// Error occured while reading attributes for this MBean
+						// skip this one and proceed processing OTHER MBeans
+						anyFailure=true;
+						continue;
+					}
+					// get values for all attributes in one swipe for this MBean 
+					Map<String,Object> explodedResults = JMXCollectionPlanner.explode(rootValues, tr.getAttributeNames(), compoundNameDelimeter);
+					if(explodedResults.isEmpty()) continue;
+					
+					// Check whether this MBean has been processed before.  if yes, then used resolved 
+					// metric/segment/segmentPrefixElements instead of resolving tokens again
+					if(resolvedJMXObjects.containsKey(on.getCanonicalName())){
+						log.trace("Already have the key in cache: "+on.getCanonicalName());
+						JMXObject cachedObject = resolvedJMXObjects.get(on.getCanonicalName());
+						if(cachedObject!=null){
+							processCachedObject(on, cachedObject, explodedResults);
 							anySuccess=true;
-							// Mark Processing status to true - If this key already exist in the list, its status will be changed to true, if not
-							// it will be added to this list with status true.						
-							tr.setProcessed(true);
-							JMXObject tempObject = new JMXObject(tr);
+							cachedObject.setProcessed(true);
+							JMXObject tempObject = new JMXObject(cachedObject);
 							resolvedJMXObjects.put(on.getCanonicalName(),tempObject);
-							tr.clearResolvedAttributes();
 						}
+					} else {
+						// Either a new MBean popped up as part of the returned results 
+						// or its the first poll of this JMXCollector
+						log.trace("**************** No entry in cache for key : "+on.getCanonicalName());
+						processNonCachedObject(on, tr, explodedResults,jmxAttributeTraces);
+						anySuccess=true;
+						// Mark Processing status to true - If this key already exist in the list, its status will be changed to true, if not
+						// it will be added to this list with status true.						
+						tr.setProcessed(true);
+						JMXObject tempObject = new JMXObject(tr);
+						resolvedJMXObjects.put(on.getCanonicalName(),tempObject);
+						tr.clearResolvedAttributes();
 					}
 				}
 			} catch (Exception ex) {
@@ -397,6 +424,8 @@ public class JMXCollector extends AbstractCollector {
 		mbeanQueryAttempted = 0;
 		gCPolledCycles = 0;
 		runtimeCollected = false;
+		mxBeanValues = new HashMap<ObjectName, Map<String, Object>>();
+		if(planner!=null) planner.invalidate();
 		if(mxBeanSegment==null) {
 			mxBeanSegment = "MXBeans";
 		}
@@ -571,6 +600,60 @@ public class JMXCollector extends AbstractCollector {
 	}
 
 	
+	/**
+	 * Adds the reads for the already resolved MXBeans to the collection plan so they are fetched
+	 * with the same batched and fanned out <code>getAttributes</code> calls as the configured JMXObjects.
+	 * MXBeans that have not been resolved yet are read directly by the process methods. 
+	 */
+	protected void planMXBeans() {
+		ObjectName on = mxBeanObjectNames.get(ManagementFactory.MEMORY_MXBEAN_NAME);
+		if(on!=null && shouldBeCollected(on)) planner.request(on, MEMORY_STATS);
+		on = mxBeanObjectNames.get(ManagementFactory.RUNTIME_MXBEAN_NAME);
+		if(on!=null && !runtimeCollected && shouldBeCollected(on)) planner.request(on, RUNTIME_STATS);
+		on = mxBeanObjectNames.get(ManagementFactory.COMPILATION_MXBEAN_NAME);
+		if(on!=null && Boolean.TRUE.equals(supportsCompilerTime) && shouldBeCollected(on)) planner.request(on, COMPILER_STATS);
+		on = mxBeanObjectNames.get(ManagementFactory.CLASS_LOADING_MXBEAN_NAME);
+		if(on!=null && shouldBeCollected(on)) planner.request(on, CLASS_LOADING_STATS);
+		on = mxBeanObjectNames.get(ManagementFactory.THREAD_MXBEAN_NAME);
+		if(on!=null && shouldBeCollected(on)) planner.request(on, THREAD_STATS);
+		if(gcObjectNames!=null && gcMXBean!=null && shouldBeCollected(gcMXBean)) planner.request(gcObjectNames.values(), GC_STATS);
+		if(memoryPoolObjectNames!=null && memoryPoolMXBean!=null && shouldBeCollected(memoryPoolMXBean)) planner.request(memoryPoolObjectNames.values(), MEMORY_POOL_STATS);
+	}
+	
+	/**
+	 * Returns an MXBean attribute value, using the value read by the collection plan if available 
+	 * @param on The MXBean ObjectName
+	 * @param attributeName The attribute name
+	 * @return the attribute value
+	 * @throws Exception
+	 */
+	protected Object getMXAttribute(ObjectName on, String attributeName) throws Exception {
+		Map<String, Object> values = mxBeanValues.get(on);
+		if(values!=null && values.containsKey(attributeName)) {
+			return values.get(attributeName);
+		}
+		return mBeanServerConnection.getAttribute(on, attributeName);
+	}
+	
+	/**
+	 * Returns a list of MXBean attribute values, using the values read by the collection plan if available 
+	 * @param on The MXBean ObjectName
+	 * @param attributeNames The attribute names
+	 * @return the attribute values
+	 * @throws Exception
+	 */
+	protected AttributeList getMXAttributes(ObjectName on, String[] attributeNames) throws Exception {
+		Map<String, Object> values = mxBeanValues.get(on);
+		if(values!=null && values.keySet().containsAll(Arrays.asList(attributeNames))) {
+			AttributeList attrs = new AttributeList(attributeNames.length);
+			for(String name: attributeNames) {
+				attrs.add(new Attribute(name, values.get(name)));
+			}
+			return attrs;
+		}
+		return mBeanServerConnection.getAttributes(on, attributeNames);
+	}
+	
 	/**
 	 * Executes the default MXBean collection
 	 * @throws Exception
@@ -659,7 +742,7 @@ public class JMXCollector extends AbstractCollector {
 					mxBeanObjectNames.put(ManagementFactory.THREAD_MXBEAN_NAME, new ObjectName(beanSet.iterator().next().getCanonicalName()));
 			}
 			if(!shouldBeCollected(threadMXBean)) return;
-			AttributeList attrs = mBeanServerConnection.getAttributes(threadMXBean, THREAD_STATS);
+			AttributeList attrs = getMXAttributes(threadMXBean, THREAD_STATS);
 			activeThreads = (Integer)getValue(attrs, THREAD_STATS[0]);
 			daemonThreads = (Integer)getValue(attrs, THREAD_STATS[1]);
 			totalStartedThreads = (Long)getValue(attrs, THREAD_STATS[2]);
@@ -810,8 +893,8 @@ public class JMXCollector extends AbstractCollector {
 			if(!shouldBeCollected(memoryPoolMXBean)) return;
 			
 			for(Entry<String, ObjectName> entry: memoryPoolObjectNames.entrySet()) {
-				poolType = (String)mBeanServerConnection.getAttribute(entry.getValue(), "Type");
-				usage = (CompositeDataSupport)mBeanServerConnection.getAttribute(entry.getValue(), "Usage");
+				poolType = (String)getMXAttribute(entry.getValue(), "Type");
+				usage = (CompositeDataSupport)getMXAttribute(entry.getValue(), "Usage");
 				rootSegment = StringHelper.append(tracingNameSpace,false,mxBeanSegment,"Memory Pools", poolType, entry.getKey());
 				for(String key: (Set<String>)usage.getCompositeType().keySet()) {
 					tracer.trace((Long)usage.get(key),key,rootSegment);
@@ -882,8 +965,8 @@ public class JMXCollector extends AbstractCollector {
 			}
 			for(Entry<String, ObjectName> entry: gcObjectNames.entrySet()) {
 				rootSegment = StringHelper.append(tracingNameSpace,false,mxBeanSegment,"Garbage Collectors", entry.getKey());
-				collectionCount = (Long)mBeanServerConnection.getAttribute(entry.getValue(), "CollectionCount");
-				collectionTime = (Long)mBeanServerConnection.getAttribute(entry.getValue(), "CollectionTime");
+				collectionCount = (Long)getMXAttribute(entry.getValue(), "CollectionCount");
+				collectionTime = (Long)getMXAttribute(entry.getValue(), "CollectionTime");
 				currentTime = System.currentTimeMillis();
 				tracer.traceStickyDelta(collectionTime, "Collection Time (Delta)",rootSegment);
 				tracer.traceStickyDelta(collectionCount, "Collection Count (Delta)",rootSegment);
@@ -929,7 +1012,7 @@ public class JMXCollector extends AbstractCollector {
 			}
 			if(!shouldBeCollected(clMXBean)) return;
 			String rootSegment[] = StringHelper.append(tracingNameSpace,false,mxBeanSegment,"Class Loading");
-			stats = mBeanServerConnection.getAttributes(clMXBean, CLASS_LOADING_STATS);
+			stats = getMXAttributes(clMXBean, CLASS_LOADING_STATS);
 			for (int i=0;i<stats.size();i++){
 				Attribute attr = (Attribute)stats.get(i);
 				if("LoadedClassCount".equals(attr.getName())) {
@@ -970,7 +1053,7 @@ public class JMXCollector extends AbstractCollector {
 			}
 			if(!supportsCompilerTime) return;
 			String rootSegment[] = StringHelper.append(tracingNameSpace,false,mxBeanSegment,"JIT Compiler");
-			long totalComplilationTime = (Long)mBeanServerConnection.getAttribute(jitMXBean, "TotalCompilationTime");
+			long totalComplilationTime = (Long)getMXAttribute(jitMXBean, "TotalCompilationTime");
 			tracer.traceStickyDelta(totalComplilationTime, "Compile Time (Delta)", rootSegment);
 			tracer.traceSticky(totalComplilationTime, "Total Compile Time", rootSegment);
 		} catch (InstanceNotFoundException ine) {
@@ -1004,8 +1087,8 @@ public class JMXCollector extends AbstractCollector {
 				return;			
 			}
 			String[] rootSegment = StringHelper.append(tracingNameSpace,false,mxBeanSegment,"Runtime");
-			long startTime = (Long)mBeanServerConnection.getAttribute(runTimeMXBean, "StartTime");
-			String[] inputArguments = (String[])mBeanServerConnection.getAttribute(runTimeMXBean, "InputArguments");
+			long startTime = (Long)getMXAttribute(runTimeMXBean, "StartTime");
+			String[] inputArguments = (String[])getMXAttribute(runTimeMXBean, "InputArguments");
 			StringBuilder buff = new StringBuilder();
 			for(String s: inputArguments) {
 				buff.append(s).append("\n");
@@ -1043,7 +1126,7 @@ public class JMXCollector extends AbstractCollector {
 			}
 			if(!shouldBeCollected(memoryMXBean)) return;
 			
-			CompositeDataSupport heap = (CompositeDataSupport) mBeanServerConnection.getAttribute(memoryMXBean, "HeapMemoryUsage");
+			CompositeDataSupport heap = (CompositeDataSupport) getMXAttribute(memoryMXBean, "HeapMemoryUsage");
 			rootSegment = StringHelper.append(tracingNameSpace,false,mxBeanSegment,"Memory", "Heap Memory Usage");
 			for(String key: (Set<String>)heap.getCompositeType().keySet()) {
 				tracer.trace((Long)heap.get(key),key,rootSegment);
@@ -1051,7 +1134,7 @@ public class JMXCollector extends AbstractCollector {
 			getPercentUsedOfCommited(heap, rootSegment);
 			getPercentUsedOfCapacity(heap, rootSegment);
 			
-			CompositeDataSupport nonHeap = (CompositeDataSupport) mBeanServerConnection.getAttribute(memoryMXBean, "NonHeapMemoryUsage");
+			CompositeDataSupport nonHeap = (CompositeDataSupport) getMXAttribute(memoryMXBean, "NonHeapMemoryUsage");
 			rootSegment = StringHelper.append(tracingNameSpace,false,mxBeanSegment, "Memory", "Non Heap Memory Usage");
 			for(String key: (Set<String>)nonHeap.getCompositeType().keySet()) {
 				tracer.trace((Long)heap.get(key),key,rootSegment);
@@ -1060,7 +1143,7 @@ public class JMXCollector extends AbstractCollector {
 			getPercentUsedOfCapacity(nonHeap, rootSegment);
 			
 			rootSegment = StringHelper.append(tracingNameSpace,false,mxBeanSegment, "Memory");
-			tracer.trace((Integer)mBeanServerConnection.getAttribute(memoryMXBean, "ObjectPendingFinalizationCount"), "Objects Pending Finalization",rootSegment);
+			tracer.trace((Integer)getMXAttribute(memoryMXBean, "ObjectPendingFinalizationCount"), "Objects Pending Finalization",rootSegment);
 		} catch (InstanceNotFoundException ine) {
 			if(logErrors) { log.warn("MXBean Collector for bean collector " + this.getBeanName() + " could Not Locate MBean " + memoryMXBean); }												
 		} catch (IOException ioex){
@@ -1166,6 +1249,12 @@ public class JMXCollector extends AbstractCollector {
 	public void startCollector() throws CollectorStartException {
 		try{
 			initMBeanServerConnection(false);
+			if(planner==null) {
+				planner = new JMXCollectionPlanner(connectionFactory);
+				planner.setQueryRefreshPeriod(queryRefreshPeriod);
+				planner.setMaxConcurrency(collectionConcurrency);
+				reflectObject(planner);
+			}
 		}catch(Exception ex){
 			throw new CollectorStartException("An error occured while creating an MBean Server connection", ex);
 		}
@@ -1374,4 +1463,40 @@ public class JMXCollector extends AbstractCollector {
 		return virtualAgent;
 	}
 	
+	/**
+	 * Returns the period for which wildcard ObjectName query results are cached (ms).
+	 * Exposed in JMX through the reflected planner's QueryRefreshPeriod attribute.
+	 * @return the query refresh period
+	 */
+	public long getQueryRefreshPeriod() {
+		return queryRefreshPeriod;
+	}
+
+	/**
+	 * Sets the period for which wildcard ObjectName query results are cached (ms)
+	 * @param queryRefreshPeriod the query refresh period
+	 */
+	public void setQueryRefreshPeriod(long queryRefreshPeriod) {
+		this.queryRefreshPeriod = queryRefreshPeriod;
+		if(planner!=null) planner.setQueryRefreshPeriod(queryRefreshPeriod);
+	}
+
+	/**
+	 * Returns the maximum number of concurrent remote read tasks per collection
+	 * @return the maximum number of concurrent remote read tasks per collection
+	 */
+	@JMXAttribute(name="CollectionConcurrency", description="The maximum number of concurrent remote read tasks per collection", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getCollectionConcurrency() {
+		return collectionConcurrency;
+	}
+
+	/**
+	 * Sets the maximum number of concurrent remote read tasks per collection
+	 * @param collectionConcurrency the maximum number of concurrent remote read tasks per collection
+	 */
+	public void setCollectionConcurrency(int collectionConcurrency) {
+		this.collectionConcurrency = collectionConcurrency;
+		if(planner!=null) planner.setMaxConcurrency(collectionConcurrency);
+	}
+	
 }
@@ -0,0 +1,345 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ *
+ */
+package test.org.helios.collectors.execution;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.helios.collectors.AbstractCollector;
+import org.helios.collectors.CollectionResult;
+import org.helios.collectors.exceptions.CollectorStartException;
+import org.helios.collectors.execution.CollectionExecutor;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>Title: CollectionExecutorTestCase</p>
+ * <p>Description: Test case for the {@link CollectionExecutor}'s overlap skipping, concurrency limits, limit draining and deadline overruns.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>test.org.helios.collectors.execution.CollectionExecutorTestCase</code></p>
+ */
+
+public class CollectionExecutorTestCase {
+	/** The executor under test */
+	protected TestExecutor executor = null;
+	/** The number of test collections currently running */
+	protected final AtomicInteger running = new AtomicInteger(0);
+	/** The largest number of test collections seen running at once */
+	protected final AtomicInteger maxRunning = new AtomicInteger(0);
+
+	/**
+	 * Creates a dedicated executor for each test
+	 */
+	@Before
+	public void setUp() {
+		executor = new TestExecutor();
+		executor.setDefaultJitter(0L);
+	}
+
+	/**
+	 * Stops the executor's threads
+	 */
+	@After
+	public void tearDown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Submits a collector whose prior collection is still running and checks the second submission is skipped
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testOverlapSkipped() throws Exception {
+		TestCollector collector = new TestCollector("overlap", null);
+		Assert.assertTrue("First submission", executor.submit(collector));
+		Assert.assertTrue("Collection started", collector.started.await(5, TimeUnit.SECONDS));
+		Assert.assertFalse("Overlapping submission", executor.submit(collector));
+		Assert.assertEquals("Executor overlap skips", 1, executor.getOverlapSkipCount());
+		Assert.assertEquals("Collector overlap skips", 1, collector.getCollectionStats().getOverlapSkips());
+		collector.release.countDown();
+		awaitCompleted(1);
+		Assert.assertFalse("In flight after completion", collector.getCollectionStats().isInFlight());
+		Assert.assertEquals("Collections run", 1, collector.runs.get());
+	}
+
+	/**
+	 * Submits more collectors than the class limit allows and checks the excess waits and is drained as permits free up
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testClassLimit() throws Exception {
+		executor.setClassLimit(TestCollector.class.getName(), 2);
+		CountDownLatch release = new CountDownLatch(1);
+		TestCollector[] collectors = new TestCollector[5];
+		for(int i = 0; i < collectors.length; i++) {
+			collectors[i] = new TestCollector("class#" + i, "host" + i, release);
+			Assert.assertTrue("Submission #" + i, executor.submit(collectors[i]));
+		}
+		awaitTrue("Two running", new Condition() { public boolean isTrue() { return running.get()==2; } });
+		Assert.assertEquals("Waiting", 3, executor.getWaitingCount());
+		Assert.assertEquals("Deferrals", 3, executor.getConcurrencyDeferralCount());
+		release.countDown();
+		awaitCompleted(collectors.length);
+		Assert.assertEquals("Waiting after drain", 0, executor.getWaitingCount());
+		Assert.assertEquals("Max concurrent", 2, maxRunning.get());
+		for(TestCollector collector: collectors) {
+			Assert.assertEquals("Runs of " + collector.getBeanName(), 1, collector.runs.get());
+		}
+	}
+
+	/**
+	 * Checks a collection admitted by its class limit but denied by its host limit moves to the host queue,
+	 * and runs once the host limit frees up
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testDrainMovesToHostLimit() throws Exception {
+		executor.setClassLimit(TestCollector.class.getName(), 2);
+		executor.setHostLimit("h1", 1);
+		final TestCollector first = new TestCollector("first", "h1");
+		TestCollector other = new TestCollector("other", "h2");
+		final TestCollector second = new TestCollector("second", "h1");
+		executor.submit(first);
+		Assert.assertTrue("First started", first.started.await(5, TimeUnit.SECONDS));
+		executor.submit(other);
+		Assert.assertTrue("Other started", other.started.await(5, TimeUnit.SECONDS));
+		executor.submit(second);
+		awaitTrue("Second waits on the class limit", new Condition() { public boolean isTrue() {
+			return Arrays.asList(executor.getLimits()).contains("Class:" + TestCollector.class.getName() + " [active:2/2, waiting:1]"); } });
+
+		// the class permit frees up, but h1 is still busy
+		other.release.countDown();
+		awaitTrue("Second moved to the host limit", new Condition() { public boolean isTrue() {
+			return Arrays.asList(executor.getLimits()).contains("Host:h1 [active:1/1, waiting:1]"); } });
+		Assert.assertEquals("Second started", 1, second.started.getCount());
+		Assert.assertEquals("Waiting", 1, executor.getWaitingCount());
+
+		first.release.countDown();
+		Assert.assertTrue("Second started after first", second.started.await(5, TimeUnit.SECONDS));
+		second.release.countDown();
+		awaitCompleted(3);
+		Assert.assertEquals("Waiting after drain", 0, executor.getWaitingCount());
+		Assert.assertEquals("Deferrals", 1, executor.getConcurrencyDeferralCount());
+		Assert.assertEquals("Collector deferrals", 1, second.getCollectionStats().getDeferrals());
+	}
+
+	/**
+	 * Runs a collection past its deadline and checks it is interrupted and counted
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testDeadlineOverrun() throws Exception {
+		TestCollector collector = new TestCollector("overrun", null);
+		collector.setCollectDeadline(100L);
+		long start = System.currentTimeMillis();
+		executor.submit(collector);
+		awaitCompleted(1);
+		Assert.assertTrue("Interrupted", collector.interrupted);
+		Assert.assertTrue("Interrupted promptly", System.currentTimeMillis()-start < 5000L);
+		Assert.assertEquals("Executor overruns", 1, executor.getDeadlineOverrunCount());
+		Assert.assertEquals("Collector overruns", 1, collector.getCollectionStats().getDeadlineOverruns());
+		Assert.assertFalse("In flight after overrun", collector.getCollectionStats().isInFlight());
+	}
+
+	/**
+	 * Checks a collection completing inside its deadline is not counted as an overrun
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testNoOverrunWithinDeadline() throws Exception {
+		TestCollector collector = new TestCollector("quick", null);
+		collector.setCollectDeadline(5000L);
+		collector.release.countDown();
+		executor.submit(collector);
+		awaitCompleted(1);
+		Thread.sleep(50);
+		Assert.assertFalse("Interrupted", collector.interrupted);
+		Assert.assertEquals("Executor overruns", 0, executor.getDeadlineOverrunCount());
+	}
+
+	/**
+	 * Checks the effective deadline leaves a margin over the collector's own collection timeout
+	 */
+	@Test
+	public void testEffectiveDeadline() {
+		TestCollector collector = new TestCollector("deadline", null);
+		Assert.assertEquals("No deadline", 0L, collector.getEffectiveCollectDeadline());
+		collector.setCollectDeadline(1000L);
+		Assert.assertEquals("Configured deadline", 1000L, collector.getEffectiveCollectDeadline());
+		collector.internalTimeout = 30000L;
+		Assert.assertEquals("Raised deadline", 30000L + AbstractCollector.COLLECT_DEADLINE_MARGIN, collector.getEffectiveCollectDeadline());
+		collector.setCollectDeadline(60000L);
+		Assert.assertEquals("Longer configured deadline", 60000L, collector.getEffectiveCollectDeadline());
+		collector.setCollectDeadline(0L);
+		Assert.assertEquals("Deadline disabled", 0L, collector.getEffectiveCollectDeadline());
+	}
+
+	/**
+	 * Waits for the executor to complete the passed number of collections
+	 * @param count The expected completed count
+	 * @throws Exception thrown on any error
+	 */
+	protected void awaitCompleted(final long count) throws Exception {
+		awaitTrue("Completed " + count, new Condition() { public boolean isTrue() { return executor.getCompletedCount()>=count; } });
+	}
+
+	/**
+	 * Polls a condition for up to 5 seconds
+	 * @param message The failure message
+	 * @param condition The condition
+	 * @throws Exception thrown on any error
+	 */
+	protected static void awaitTrue(String message, Condition condition) throws Exception {
+		long end = System.currentTimeMillis() + 5000L;
+		while(!condition.isTrue()) {
+			if(System.currentTimeMillis() > end) Assert.fail(message);
+			Thread.sleep(10);
+		}
+	}
+
+	/**
+	 * <p>Title: Condition</p>
+	 * <p>Description: A polled test condition</p>
+	 */
+	protected static interface Condition {
+		/**
+		 * @return true when the condition is met
+		 */
+		boolean isTrue();
+	}
+
+	/**
+	 * <p>Title: TestExecutor</p>
+	 * <p>Description: A private executor instance that runs {@link TestCollector}s in place of the collector lifecycle.</p>
+	 */
+	protected class TestExecutor extends CollectionExecutor {
+		/**
+		 * Runs the test collection
+		 * @param collector The collector
+		 * @throws Exception thrown if the collection fails
+		 */
+		@Override
+		protected void collect(AbstractCollector collector) throws Exception {
+			((TestCollector)collector).runCollection();
+		}
+
+		/**
+		 * Stops the worker pool and timer
+		 */
+		void shutdown() {
+			workers.shutdownNow();
+			timer.shutdownNow();
+		}
+	}
+
+	/**
+	 * <p>Title: TestCollector</p>
+	 * <p>Description: A collector whose collection blocks until released or interrupted.</p>
+	 */
+	protected class TestCollector extends AbstractCollector {
+		/** The target host */
+		final String host;
+		/** Counted down when a collection starts */
+		final CountDownLatch started = new CountDownLatch(1);
+		/** Awaited by the collection */
+		final CountDownLatch release;
+		/** The number of collections run */
+		final AtomicInteger runs = new AtomicInteger(0);
+		/** Set when a collection was interrupted */
+		volatile boolean interrupted = false;
+		/** The collector's own collection timeout */
+		long internalTimeout = 0L;
+
+		/**
+		 * Creates a new TestCollector with its own release latch
+		 * @param name The bean name
+		 * @param host The target host
+		 */
+		TestCollector(String name, String host) {
+			this(name, host, new CountDownLatch(1));
+		}
+
+		/**
+		 * Creates a new TestCollector
+		 * @param name The bean name
+		 * @param host The target host
+		 * @param release The latch the collection waits on
+		 */
+		TestCollector(String name, String host, CountDownLatch release) {
+			this.host = host;
+			this.release = release;
+			setBeanName(name);
+			setCollectJitter(0L);
+		}
+
+		/**
+		 * Runs one collection
+		 */
+		void runCollection() {
+			runs.incrementAndGet();
+			int now = running.incrementAndGet();
+			int max;
+			while((max = maxRunning.get()) < now && !maxRunning.compareAndSet(max, now));
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			} finally {
+				running.decrementAndGet();
+			}
+		}
+
+		@Override
+		public String getTargetHost() {
+			return host;
+		}
+
+		@Override
+		protected long getInternalCollectTimeout() {
+			return internalTimeout;
+		}
+
+		@Override
+		public String getCollectorVersion() {
+			return "TestCollector";
+		}
+
+		@Override
+		public void startCollector() throws CollectorStartException {
+		}
+
+		@Override
+		public CollectionResult collectCallback() {
+			return new CollectionResult();
+		}
+	}
+}
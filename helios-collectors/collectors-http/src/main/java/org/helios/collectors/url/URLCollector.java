@@ -33,6 +33,7 @@ import java.net.URL;
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -52,6 +53,10 @@ import org.helios.collectors.CollectionResult;
 import org.helios.collectors.exceptions.CollectorException;
 import org.helios.collectors.exceptions.CollectorInitException;
 import org.helios.collectors.exceptions.CollectorStartException;
+import org.helios.collectors.url.probe.HttpProbe;
+import org.helios.collectors.url.probe.HttpProbeEngine;
+import org.helios.collectors.url.probe.HttpProbeListener;
+import org.helios.collectors.url.probe.HttpProbeResult;
 import org.helios.helpers.StringHelper;
 import org.helios.jmx.dynamic.annotations.JMXAttribute;
 import org.helios.jmx.dynamic.annotations.JMXManagedObject;
@@ -134,6 +139,24 @@ public class URLCollector extends SocketAbstractCollector {
 	protected String wsStyle = "REST";
 	/** Flag to indicate whether the current endpoint is web service or not*/
 	protected boolean isWebServiceEndpoint=false;
+	/** Indicates if checks are executed through the shared non-blocking {@link HttpProbeEngine} */
+	protected boolean asynchronous = true;
+	/** Timeout in milliseconds for a complete check when executed through the probe engine */
+	protected int readTimeout = 30000;
+	/** The probe definition when checks are executed through the probe engine */
+	protected HttpProbe probe = null;
+	/** The shared probe engine */
+	protected HttpProbeEngine probeEngine = null;
+	/** The most recently submitted probe */
+	protected final AtomicReference<HttpProbeResult> pendingProbe = new AtomicReference<HttpProbeResult>(null);
+	/** The outcome of the last completed probe, not yet reported by a collection */
+	protected final AtomicReference<CollectionResult> completedProbe = new AtomicReference<CollectionResult>(null);
+	/** Traces and records the outcome of each probe when the engine completes it */
+	protected final HttpProbeListener probeListener = new HttpProbeListener() {
+		public void onProbeComplete(HttpProbeResult result) {
+			completedProbe.set(probeCompleted(result));
+		}
+	};
 	/** URL collector version */
 	private static final String URL_COLLECTOR_VERSION="0.1";
 	
@@ -238,9 +261,42 @@ public class URLCollector extends SocketAbstractCollector {
 				throw new CollectorStartException("KeyStoreLocation and/or KeyStorePassphrase is missing for a secure URL of bean: " + this.getBeanName());
 			}
 		}
+		if(asynchronous && authType != AUTH_TYPE.CLIENT_CERT){
+			probe = createProbe();
+			probeEngine = HttpProbeEngine.getInstance();
+		}
 		log.trace("Object [ "+getObjectName()+" ]"+getState());
 	}
 	
+	/**
+	 * Creates the probe executed by the shared {@link HttpProbeEngine}. Client certificate endpoints keep using 
+	 * the per collector HttpClient since their key material is bound to a custom protocol registration.
+	 * @return the probe for this collector's endpoint
+	 * @throws CollectorStartException thrown if the probe cannot be created
+	 */
+	protected HttpProbe createProbe() throws CollectorStartException{
+		try{
+			HttpProbe p = new HttpProbe(this.url, isWebServiceEndpoint && wsStyle.equalsIgnoreCase("SOAP") ? "POST" : "GET");
+			p.setConnectTimeout(timeout);
+			p.setTimeout(readTimeout);
+			p.setSuccessPattern(successContentPattern);
+			p.setFailurePattern(failureContentPattern);
+			if(authType == AUTH_TYPE.BASIC){
+				p.setCredentials(userName, password);
+			}
+			configureProbe(p);
+			return p;
+		}catch(IllegalArgumentException iaex){
+			throw new CollectorStartException("Unable to create HTTP probe for URL [ "+this.url+" ] of bean: " + this.getBeanName(), iaex);
+		}
+	}
+	
+	/**
+	 * Hook for subclasses to add request content to the probe
+	 * @param p the probe being created
+	 */
+	protected void configureProbe(HttpProbe p){}
+	
 	private void initializeHttpMethod(String url) throws CollectorStartException{
 		try{
 			if(!isWebServiceEndpoint){
@@ -463,6 +519,16 @@ public class URLCollector extends SocketAbstractCollector {
 	public String getHost() {
 		return host;
 	}
+	
+	/**
+	 * Returns the endpoint host so concurrent collections against it are bounded by the CollectionExecutor
+	 * @return the target host
+	 * @see org.helios.collectors.AbstractCollector#getTargetHost()
+	 */
+	@Override
+	public String getTargetHost() {
+		return host;
+	}
 
 
 	/**
@@ -527,6 +593,10 @@ public class URLCollector extends SocketAbstractCollector {
 	 * @return CollectionResult Results of the scheduled URL Monitor
 	 */
 	public CollectionResult collectCallback(){
+		HttpProbe p = probe;
+		if(p!=null){
+			return probeCallback(p);
+		}
 		long startTime=System.currentTimeMillis();
 		int availability = 0;
 		int httpResponseCode=-1;
@@ -625,6 +695,107 @@ public class URLCollector extends SocketAbstractCollector {
 		return result;
 	}
 	
+	/**
+	 * Submits the check to the shared {@link HttpProbeEngine} without waiting for it. The engine performs the I/O on a 
+	 * pooled connection, reading the body only until the content patterns are decided, and traces the outcome through
+	 * {@link #probeListener} when the probe completes. Each collection reports the outcome of the probe completed since 
+	 * the previous collection, and does not submit a new probe while the previous one is still in flight.
+	 * @param p the probe to execute
+	 * @return CollectionResult Results of the last completed check, or {@link CollectionResult.Result#ALREADY_COLLECTING} if none completed since the previous collection
+	 */
+	protected CollectionResult probeCallback(HttpProbe p){
+		HttpProbeResult pending = pendingProbe.get();
+		if(pending==null || pending.isComplete()){
+			pendingProbe.set(probeEngine.execute(p, probeListener));
+		} else {
+			log.debug("HTTP probe of URL ["+this.url.toString()+"] is still in flight");
+		}
+		CollectionResult result = completedProbe.getAndSet(null);
+		if(result==null){
+			result = new CollectionResult();
+			result.setResultForLastCollection(CollectionResult.Result.ALREADY_COLLECTING);
+		}
+		return result;
+	}
+	
+	/**
+	 * Traces a completed probe and derives its collection result. Called on the probe engine's I/O thread.
+	 * @param probeResult the completed probe result
+	 * @return CollectionResult Results of the check
+	 */
+	protected CollectionResult probeCompleted(HttpProbeResult probeResult){
+		int availability = 0;
+		int httpResponseCode=-1;
+		CollectionResult result = new CollectionResult();
+		try{
+			if(probeResult.getFailure()!=null){
+				throw new CollectorException("HTTP probe of URL ["+this.url.toString()+"] failed: " + probeResult.getFailure().getMessage(), probeResult.getFailure());
+			}
+			httpResponseCode = probeResult.getStatusCode();
+			log.trace("HTTP Response Code returned by URL ["+this.url.toString()+"] is: "+httpResponseCode);
+			if(httpResponseCode != HttpStatus.SC_OK){
+				throw new CollectorException("HTTP Response Code returned by URL ["+this.url.toString()+"] is: "+httpResponseCode);
+			}
+			availability=1;
+			if(successContentPattern!=null || failureContentPattern!=null){
+				if(probeResult.getContentSize()>=0)
+					tracer.traceSticky(probeResult.getContentSize(), "Content Size", getTracingNameSpace());
+				tracer.traceSticky(probeResult.getBytesRead(), "Content Bytes Read", getTracingNameSpace());
+				if(probeResult.isFailureMatched())
+					availability = 0;
+				else if(successContentPattern!=null && !probeResult.isSuccessMatched())
+					availability = 0;
+			}
+			result.setResultForLastCollection(CollectionResult.Result.SUCCESSFUL);
+		} catch(Exception ex){
+			if(logErrors){
+				log.error(ex.getMessage(),ex);
+			}
+			result.setResultForLastCollection(CollectionResult.Result.FAILURE);
+			result.setAnyException(ex);
+			return result;
+		} finally{
+			try {
+				traceProbe(probeResult, availability, httpResponseCode);
+			}catch(Exception ex){
+				log.debug("Failed to trace probe result: " + ex.getMessage());
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Traces the availability, response code and timing breakdown of a probe
+	 * @param probeResult the probe result
+	 * @param availability the derived availability
+	 * @param httpResponseCode the response code or -1
+	 */
+	protected void traceProbe(HttpProbeResult probeResult, int availability, int httpResponseCode){
+		tracer.traceSticky(availability, defaultAvailabilityLabel, getTracingNameSpace());
+		tracer.trace(1, httpResponseCode+"", StringHelper.append(getTracingNameSpace(),true,"Response Codes"));
+		if(probeResult.getTotalTime()!=-1){
+			tracer.traceSticky(probeResult.getTotalTime(), "Elapsed Time", getTracingNameSpace());
+		}
+		if(probeResult.getDnsTime()!=-1){
+			tracer.traceSticky(probeResult.getDnsTime(), "DNS Lookup Time", getTracingNameSpace());
+		}
+		if(probeResult.getConnectTime()!=-1){
+			tracer.traceSticky(probeResult.getConnectTime(), "Connect Time", getTracingNameSpace());
+		}
+		if(probeResult.getTlsTime()!=-1){
+			tracer.traceSticky(probeResult.getTlsTime(), "TLS Handshake Time", getTracingNameSpace());
+		}
+		if(probeResult.getFirstByteTime()!=-1){
+			tracer.traceSticky(probeResult.getFirstByteTime(), "Time To First Byte", getTracingNameSpace());
+		}
+		if(successContentPattern != null){
+			tracer.traceSticky(probeResult.isSuccessMatched() ? 1 : 0, "Success Content Match", getTracingNameSpace());
+		}
+		if(failureContentPattern != null){
+			tracer.traceSticky(probeResult.isFailureMatched() ? 1 : 0, "Failure Content Match", getTracingNameSpace());
+		}
+	}
+	
 	/**
 	 * Parses response returned by endpoint
 	 * @param reader
@@ -653,6 +824,9 @@ public class URLCollector extends SocketAbstractCollector {
 	 * Unregisters any custom Protocol set for this instance
 	 */
 	public void stopCollector(){
+		probe = null;
+		pendingProbe.set(null);
+		completedProbe.set(null);
 		if(myProtocolPrefix!=null){
 			Protocol.unregisterProtocol(myProtocolPrefix);
 		}
@@ -663,6 +837,36 @@ public class URLCollector extends SocketAbstractCollector {
 		}
 	}
 
+	/**
+	 * @return true if checks are executed through the shared probe engine
+	 */
+	@JMXAttribute (name="Asynchronous", description="Indicates whether checks are executed through the shared non-blocking HTTP probe engine", mutability=AttributeMutabilityOption.READ_ONLY)
+	public boolean getAsynchronous() {
+		return asynchronous;
+	}
+
+	/**
+	 * @param asynchronous true to execute checks through the shared probe engine. Takes effect on the next start.
+	 */
+	public void setAsynchronous(boolean asynchronous) {
+		this.asynchronous = asynchronous;
+	}
+
+	/**
+	 * @return the readTimeout
+	 */
+	@JMXAttribute (name="ReadTimeout", description="Timeout in ms. for a complete check executed through the probe engine", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	/**
+	 * @param readTimeout the readTimeout to set
+	 */
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
 	/**
 	 * @return the wsStyle
 	 */
@@ -686,6 +890,8 @@ public class URLCollector extends SocketAbstractCollector {
 	    retValue.append("host = " + this.host + TAB);
 	    retValue.append("port = " + this.port + TAB);
 	    retValue.append("timeout = " + this.timeout + TAB);
+	    retValue.append("readTimeout = " + this.readTimeout + TAB);
+	    retValue.append("asynchronous = " + this.asynchronous + TAB);
 	    retValue.append("successContentMatch = " + this.successContentMatch + TAB);
 	    retValue.append("failureContentMatch = " + this.failureContentMatch + TAB);
 	    retValue.append("available = " + this.available + TAB);
@@ -0,0 +1,198 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.collectors.url.probe;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Title: ContentMatcher</p>
+ * <p>Description: Applies the success and failure patterns to a response body as it streams in. Each chunk is decoded and
+ * matched together with the trailing <code>overlap</code> characters of the previous chunks so that matches spanning chunk
+ * boundaries are found, without ever holding more than the overlap plus one chunk in memory. The matcher is decided as soon as
+ * the failure pattern matches or, when no failure pattern is defined, as soon as the success pattern matches.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.collectors.url.probe.ContentMatcher</code></p>
+ */
+
+public class ContentMatcher {
+	/** The success pattern */
+	protected final Pattern successPattern;
+	/** The failure pattern */
+	protected final Pattern failurePattern;
+	/** The number of trailing characters carried into the next match */
+	protected final int overlap;
+	/** The body decoder */
+	protected final CharsetDecoder decoder;
+	/** The decode buffer */
+	protected CharBuffer chars = CharBuffer.allocate(8192);
+	/** The match window */
+	protected final StringBuilder window = new StringBuilder();
+	/** Indicates if the success pattern matched */
+	protected boolean successMatched = false;
+	/** Indicates if the failure pattern matched */
+	protected boolean failureMatched = false;
+	/** The bytes of an incomplete character carried into the next chunk */
+	protected ByteBuffer carry = null;
+	
+	/** The default overlap */
+	public static final int DEFAULT_OVERLAP = 3000;
+	/** The default charset */
+	public static final Charset DEFAULT_CHARSET = Charset.forName("ISO-8859-1");
+	
+	/**
+	 * Creates a new ContentMatcher
+	 * @param successPattern The success pattern, or null
+	 * @param failurePattern The failure pattern, or null
+	 * @param contentType The response content type, used to determine the charset. May be null.
+	 * @param overlap The number of trailing characters carried into the next match
+	 */
+	public ContentMatcher(Pattern successPattern, Pattern failurePattern, String contentType, int overlap) {
+		this.successPattern = successPattern;
+		this.failurePattern = failurePattern;
+		this.overlap = overlap;
+		this.decoder = charset(contentType).newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+	
+	/**
+	 * Determines the charset declared in a content type
+	 * @param contentType The content type
+	 * @return the declared charset or the default
+	 */
+	static Charset charset(String contentType) {
+		if(contentType!=null) {
+			int index = contentType.toLowerCase().indexOf("charset=");
+			if(index!=-1) {
+				String name = contentType.substring(index + 8).trim();
+				int end = name.indexOf(';');
+				if(end!=-1) name = name.substring(0, end).trim();
+				if(name.startsWith("\"") && name.endsWith("\"") && name.length()>1) name = name.substring(1, name.length()-1);
+				try {
+					return Charset.forName(name);
+				} catch (Exception e) {}
+			}
+		}
+		return DEFAULT_CHARSET;
+	}
+	
+	/**
+	 * Feeds a chunk of body bytes to the matcher. The bytes of an incomplete multi-byte character at the end of the chunk
+	 * are carried into the next chunk. 
+	 * @param bytes The body bytes
+	 */
+	public void feed(ByteBuffer bytes) {
+		if(isDecided()) return;
+		ByteBuffer in = bytes;
+		if(carry!=null) {
+			in = ByteBuffer.allocate(carry.remaining() + bytes.remaining());
+			in.put(carry).put(bytes).flip();
+			carry = null;
+		}
+		decode(in, false);
+		if(in.hasRemaining()) {
+			carry = ByteBuffer.allocate(in.remaining());
+			carry.put(in).flip();
+		}
+	}
+	
+	/**
+	 * Signals the end of the body
+	 */
+	public void finish() {
+		if(isDecided()) return;
+		decode(carry==null ? ByteBuffer.allocate(0) : carry, true);
+		carry = null;
+		decoder.flush(chars);
+		drain();
+	}
+	
+	/**
+	 * Decodes the passed bytes into the window, matching after each filled decode buffer
+	 * @param in The bytes to decode
+	 * @param endOfInput true if these are the last bytes of the body
+	 */
+	protected void decode(ByteBuffer in, boolean endOfInput) {
+		while(true) {
+			CoderResult cr = decoder.decode(in, chars, endOfInput);
+			drain();
+			if(!cr.isOverflow() || isDecided()) break;
+		}
+	}
+	
+	/**
+	 * Moves decoded characters into the window and matches
+	 */
+	protected void drain() {
+		chars.flip();
+		window.append(chars);
+		chars.clear();
+		match();
+	}
+	
+	/**
+	 * Matches the window and trims it to the overlap
+	 */
+	protected void match() {
+		if(window.length()==0) return;
+		if(failurePattern!=null && !failureMatched && failurePattern.matcher(window).find()) failureMatched = true;
+		if(successPattern!=null && !successMatched && successPattern.matcher(window).find()) successMatched = true;
+		if(window.length()>overlap) window.delete(0, window.length()-overlap);
+	}
+	
+	/**
+	 * Indicates if the outcome of the content match can no longer change
+	 * @return true if the match is decided
+	 */
+	public boolean isDecided() {
+		if(failureMatched) return true;
+		if(failurePattern!=null) return false;
+		return successPattern==null || successMatched;
+	}
+
+	/**
+	 * Indicates if the success pattern matched
+	 * @return true if the success pattern matched
+	 */
+	public boolean isSuccessMatched() {
+		return successMatched;
+	}
+
+	/**
+	 * Indicates if the failure pattern matched
+	 * @return true if the failure pattern matched
+	 */
+	public boolean isFailureMatched() {
+		return failureMatched;
+	}
+}
@@ -0,0 +1,183 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.collectors.url.probe;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Title: DnsCache</p>
+ * <p>Description: A small time bounded cache of host name resolutions so that thousands of probes against a few hundred
+ * hosts do not each pay for a lookup. Failed lookups are cached for a shorter period so a resolver outage does not hammer 
+ * the name servers. Resolution itself is blocking and is performed by the engine on its resolver threads.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.collectors.url.probe.DnsCache</code></p>
+ */
+
+public class DnsCache {
+	/** The cached resolutions keyed by lower cased host name */
+	protected final ConcurrentHashMap<String, Entry> cache = new ConcurrentHashMap<String, Entry>();
+	/** The time to live of a resolution in ms. */
+	protected volatile long ttl = 60000L;
+	/** The time to live of a failed resolution in ms. */
+	protected volatile long negativeTtl = 10000L;
+	/** The number of cache hits */
+	protected final AtomicLong hits = new AtomicLong(0L);
+	/** The number of lookups */
+	protected final AtomicLong lookups = new AtomicLong(0L);
+	
+	/**
+	 * Returns the cached address for the passed host
+	 * @param host The host name
+	 * @return the address or null if the host is not cached or has expired
+	 * @throws UnknownHostException thrown if a cached lookup of the host failed
+	 */
+	public InetAddress getCached(String host) throws UnknownHostException {
+		Entry entry = cache.get(host.toLowerCase());
+		if(entry==null || entry.expires<System.currentTimeMillis()) return null;
+		hits.incrementAndGet();
+		if(entry.address==null) throw new UnknownHostException(host);
+		return entry.address;
+	}
+	
+	/**
+	 * Resolves the passed host and caches the outcome. This call blocks.
+	 * @param host The host name
+	 * @return the resolved address
+	 * @throws UnknownHostException thrown if the host cannot be resolved
+	 */
+	public InetAddress resolve(String host) throws UnknownHostException {
+		lookups.incrementAndGet();
+		try {
+			InetAddress address = InetAddress.getByName(host);
+			cache.put(host.toLowerCase(), new Entry(address, System.currentTimeMillis() + ttl));
+			return address;
+		} catch (UnknownHostException e) {
+			cache.put(host.toLowerCase(), new Entry(null, System.currentTimeMillis() + negativeTtl));
+			throw e;
+		}
+	}
+	
+	/**
+	 * Indicates if the passed host is an IP address literal which needs no resolution
+	 * @param host The host
+	 * @return true if the host is an IP literal
+	 */
+	public static boolean isLiteral(String host) {
+		if(host.indexOf(':')!=-1) return true;
+		for(int i = 0; i < host.length(); i++) {
+			char c = host.charAt(i);
+			if(c!='.' && (c<'0' || c>'9')) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Removes all cached resolutions
+	 */
+	public void clear() {
+		cache.clear();
+	}
+
+	/**
+	 * Returns the time to live of a resolution in ms.
+	 * @return the time to live
+	 */
+	public long getTtl() {
+		return ttl;
+	}
+
+	/**
+	 * Sets the time to live of a resolution in ms.
+	 * @param ttl the time to live
+	 */
+	public void setTtl(long ttl) {
+		this.ttl = ttl;
+	}
+
+	/**
+	 * Returns the time to live of a failed resolution in ms.
+	 * @return the negative time to live
+	 */
+	public long getNegativeTtl() {
+		return negativeTtl;
+	}
+
+	/**
+	 * Sets the time to live of a failed resolution in ms.
+	 * @param negativeTtl the negative time to live
+	 */
+	public void setNegativeTtl(long negativeTtl) {
+		this.negativeTtl = negativeTtl;
+	}
+	
+	/**
+	 * Returns the number of cache hits
+	 * @return the number of cache hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * Returns the number of lookups
+	 * @return the number of lookups
+	 */
+	public long getLookups() {
+		return lookups.get();
+	}
+	
+	/**
+	 * Returns the number of cached hosts
+	 * @return the number of cached hosts
+	 */
+	public int getSize() {
+		return cache.size();
+	}
+	
+	/**
+	 * <p>Title: Entry</p>
+	 * <p>Description: A cached resolution</p> 
+	 */
+	protected static class Entry {
+		/** The resolved address, null if the lookup failed */
+		final InetAddress address;
+		/** The expiry timestamp */
+		final long expires;
+		/**
+		 * Creates a new Entry
+		 * @param address The resolved address
+		 * @param expires The expiry timestamp
+		 */
+		Entry(InetAddress address, long expires) {
+			this.address = address;
+			this.expires = expires;
+		}
+	}
+}
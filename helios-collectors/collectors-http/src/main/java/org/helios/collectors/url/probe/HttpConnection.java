@@ -0,0 +1,400 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.collectors.url.probe;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLEngineResult.Status;
+
+/**
+ * <p>Title: HttpConnection</p>
+ * <p>Description: A non-blocking HTTP/1.1 client connection, optionally over TLS, driven by the {@link HttpProbeEngine}'s
+ * I/O thread. A connection executes one exchange at a time and, when the server allows it, is returned to its host pool
+ * for reuse by the next probe against the same host. All methods are called on the I/O thread only.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.collectors.url.probe.HttpConnection</code></p>
+ */
+
+class HttpConnection {
+	/** The owning engine */
+	final HttpProbeEngine engine;
+	/** The host pool this connection belongs to */
+	final HttpProbeEngine.HostPool pool;
+	/** The socket channel */
+	final SocketChannel channel;
+	/** The TLS engine, null for plain HTTP */
+	final SSLEngine ssl;
+	/** The selection key */
+	SelectionKey key = null;
+	/** Received TLS records */
+	ByteBuffer netIn = null;
+	/** TLS records to send */
+	ByteBuffer netOut = null;
+	/** Received plain text */
+	ByteBuffer appIn;
+	/** The request being sent */
+	ByteBuffer appOut = null;
+	/** The exchange being executed, null when idle */
+	HttpProbeResult exchange = null;
+	/** The response reader of the current exchange */
+	HttpResponseReader reader = null;
+	/** Indicates if the TLS handshake is in progress */
+	boolean handshaking = false;
+	/** The handshake start time in nanos */
+	long handshakeStart = 0L;
+	/** The time the connection went idle in ms. */
+	long idleSince = 0L;
+	/** Indicates if the connection is closed */
+	boolean closed = false;
+	
+	/** An empty buffer for handshake wraps */
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+	
+	/**
+	 * Creates a new HttpConnection
+	 * @param engine The owning engine
+	 * @param pool The host pool this connection belongs to
+	 * @param ssl The TLS engine, or null for plain HTTP
+	 * @throws IOException thrown if the channel cannot be opened
+	 */
+	HttpConnection(HttpProbeEngine engine, HttpProbeEngine.HostPool pool, SSLEngine ssl) throws IOException {
+		this.engine = engine;
+		this.pool = pool;
+		this.ssl = ssl;
+		channel = SocketChannel.open();
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		if(ssl!=null) {
+			netIn = ByteBuffer.allocate(ssl.getSession().getPacketBufferSize());
+			netOut = ByteBuffer.allocate(ssl.getSession().getPacketBufferSize());
+			appIn = ByteBuffer.allocate(ssl.getSession().getApplicationBufferSize());
+		} else {
+			appIn = ByteBuffer.allocate(16384);
+		}
+	}
+	
+	/**
+	 * Starts connecting for the passed exchange
+	 * @param r The exchange to execute once connected
+	 * @param address The address to connect to
+	 * @param selector The engine's selector
+	 * @throws IOException thrown if the connect fails immediately
+	 */
+	void connect(HttpProbeResult r, InetSocketAddress address, Selector selector) throws IOException {
+		exchange = r;
+		r.connection = this;
+		r.phaseStart = System.nanoTime();
+		boolean connected = channel.connect(address);
+		key = channel.register(selector, connected ? 0 : SelectionKey.OP_CONNECT, this);
+		if(connected) connected();
+	}
+	
+	/**
+	 * Starts an exchange on this idle pooled connection
+	 * @param r The exchange to execute
+	 * @throws IOException thrown if the request cannot be written
+	 */
+	void start(HttpProbeResult r) throws IOException {
+		exchange = r;
+		r.connection = this;
+		r.reused = true;
+		sendRequest();
+	}
+	
+	/**
+	 * Callback when the selector reports the channel connectable
+	 * @throws IOException thrown if the connect failed
+	 */
+	void onConnectable() throws IOException {
+		if(channel.finishConnect()) connected();
+	}
+	
+	/**
+	 * Records the connect and starts the handshake or the request
+	 * @throws IOException thrown on an I/O error
+	 */
+	protected void connected() throws IOException {
+		exchange.connectTime = HttpProbeResult.elapsedSince(exchange.phaseStart);
+		engine.connected(exchange);
+		if(ssl!=null) {
+			handshaking = true;
+			handshakeStart = System.nanoTime();
+			ssl.beginHandshake();
+			handshake();
+		} else {
+			sendRequest();
+		}
+	}
+	
+	/**
+	 * Callback when the selector reports the channel writable
+	 * @throws IOException thrown on an I/O error
+	 */
+	void onWritable() throws IOException {
+		if(handshaking) handshake();
+		else if(appOut!=null) flush();
+	}
+	
+	/**
+	 * Callback when the selector reports the channel readable
+	 * @throws IOException thrown on an I/O error or a malformed response
+	 */
+	void onReadable() throws IOException {
+		if(handshaking) {
+			handshake();
+			return;
+		}
+		if(exchange==null) {
+			// an idle connection that becomes readable has been closed by the server or is out of step
+			engine.discard(this);
+			return;
+		}
+		while(exchange!=null) {
+			int n = read();
+			boolean produced = appIn.position()>0;
+			if(produced) {
+				if(exchange.firstByteTime==-1L && exchange.requestSent!=-1L) exchange.firstByteTime = HttpProbeResult.elapsedSince(exchange.requestSent);
+				appIn.flip();
+				boolean complete = reader.feed(appIn);
+				boolean leftover = appIn.hasRemaining();
+				appIn.clear();
+				if(complete) {
+					finish(reader.isKeepAlive() && !leftover && n>=0);
+					return;
+				}
+				if(reader.isDecided() && !isDrainable()) {
+					finish(false);
+					return;
+				}
+			}
+			if(n<0) {
+				reader.eof();
+				finish(false);
+				return;
+			}
+			if(n==0 && !produced) return;
+		}
+	}
+	
+	/**
+	 * Indicates if the rest of a decided response is small enough to read so the connection can be reused
+	 * @return true if the remaining body should be drained
+	 */
+	protected boolean isDrainable() {
+		long remaining = reader.getRemainingBody();
+		return reader.isKeepAlive() && remaining>=0 && reader.getBodyBytes() + remaining <= engine.getDrainLimit();
+	}
+	
+	/**
+	 * Completes the current exchange
+	 * @param reusable true if the connection can be reused
+	 */
+	protected void finish(boolean reusable) {
+		HttpProbeResult r = exchange;
+		HttpResponseReader rr = reader;
+		exchange = null;
+		reader = null;
+		r.connection = null;
+		r.statusCode = rr.getStatusCode();
+		r.bytesRead = rr.getBodyBytes();
+		r.contentSize = rr.isDone() ? rr.getBodyBytes() : rr.getContentLength();
+		r.successMatched = rr.isSuccessMatched();
+		r.failureMatched = rr.isFailureMatched();
+		r.stoppedEarly = !rr.isDone();
+		engine.completed(this, r, rr, reusable);
+	}
+	
+	/**
+	 * Encodes and starts writing the request of the current exchange
+	 * @throws IOException thrown on an I/O error
+	 */
+	protected void sendRequest() throws IOException {
+		reader = new HttpResponseReader(exchange.probe.getSuccessPattern(), exchange.probe.getFailurePattern());
+		appOut = ByteBuffer.wrap(exchange.probe.encodeRequest(exchange.currentUrl, exchange.redirects>0));
+		exchange.requestSent = -1L;
+		flush();
+	}
+	
+	/**
+	 * Writes as much of the pending request as the socket accepts
+	 * @throws IOException thrown on an I/O error
+	 */
+	protected void flush() throws IOException {
+		if(ssl==null) {
+			channel.write(appOut);
+			if(appOut.hasRemaining()) {
+				key.interestOps(SelectionKey.OP_WRITE);
+				return;
+			}
+		} else {
+			while(true) {
+				if(netOut.position()==0) {
+					if(!appOut.hasRemaining()) break;
+					SSLEngineResult result = ssl.wrap(appOut, netOut);
+					if(result.getStatus()==Status.CLOSED) throw new IOException("TLS session closed");
+				}
+				if(!writeNet()) {
+					key.interestOps(SelectionKey.OP_WRITE);
+					return;
+				}
+			}
+		}
+		appOut = null;
+		exchange.requestSent = System.nanoTime();
+		key.interestOps(SelectionKey.OP_READ);
+	}
+	
+	/**
+	 * Writes pending TLS records
+	 * @return true if all pending records were written
+	 * @throws IOException thrown on an I/O error
+	 */
+	protected boolean writeNet() throws IOException {
+		netOut.flip();
+		channel.write(netOut);
+		boolean all = !netOut.hasRemaining();
+		netOut.compact();
+		return all;
+	}
+	
+	/**
+	 * Reads available plain text into <code>appIn</code>, unwrapping TLS records when required
+	 * @return the number of bytes read from the socket, or -1 on end of stream
+	 * @throws IOException thrown on an I/O error
+	 */
+	protected int read() throws IOException {
+		if(ssl==null) return channel.read(appIn);
+		int n = channel.read(netIn);
+		netIn.flip();
+		while(netIn.hasRemaining()) {
+			SSLEngineResult result = ssl.unwrap(netIn, appIn);
+			if(result.getStatus()==Status.BUFFER_UNDERFLOW) break;
+			if(result.getStatus()==Status.BUFFER_OVERFLOW) {
+				if(appIn.position()>0) break;
+				ByteBuffer larger = ByteBuffer.allocate(Math.max(appIn.capacity()*2, ssl.getSession().getApplicationBufferSize()));
+				appIn = larger;
+				continue;
+			}
+			if(result.getStatus()==Status.CLOSED) {
+				n = -1;
+				break;
+			}
+			// post handshake messages such as session tickets
+			if(result.getHandshakeStatus()==HandshakeStatus.NEED_TASK) runDelegatedTasks();
+			if(result.getHandshakeStatus()==HandshakeStatus.NEED_WRAP) {
+				ssl.wrap(EMPTY, netOut);
+				writeNet();
+			}
+			if(result.bytesConsumed()==0 && result.bytesProduced()==0) break;
+		}
+		netIn.compact();
+		return n;
+	}
+	
+	/**
+	 * Advances the TLS handshake as far as the socket allows, sending the request once it completes
+	 * @throws IOException thrown on an I/O error or a handshake failure
+	 */
+	protected void handshake() throws IOException {
+		while(true) {
+			if(netOut.position()>0 && !writeNet()) {
+				key.interestOps(SelectionKey.OP_WRITE);
+				return;
+			}
+			HandshakeStatus status = ssl.getHandshakeStatus();
+			if(status==HandshakeStatus.FINISHED || status==HandshakeStatus.NOT_HANDSHAKING) {
+				handshaking = false;
+				exchange.tlsTime = HttpProbeResult.elapsedSince(handshakeStart);
+				sendRequest();
+				return;
+			} else if(status==HandshakeStatus.NEED_TASK) {
+				runDelegatedTasks();
+			} else if(status==HandshakeStatus.NEED_WRAP) {
+				SSLEngineResult result = ssl.wrap(EMPTY, netOut);
+				if(result.getStatus()==Status.CLOSED) throw new IOException("TLS handshake closed by the peer");
+			} else {
+				netIn.flip();
+				SSLEngineResult result = ssl.unwrap(netIn, appIn);
+				netIn.compact();
+				if(result.getStatus()==Status.CLOSED) throw new IOException("TLS handshake closed by the peer");
+				if(result.getStatus()==Status.BUFFER_UNDERFLOW) {
+					int n = channel.read(netIn);
+					if(n<0) throw new IOException("Connection closed during the TLS handshake");
+					if(n==0) {
+						key.interestOps(SelectionKey.OP_READ);
+						return;
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Runs the TLS engine's delegated tasks inline. These are short certificate and key computations.
+	 */
+	protected void runDelegatedTasks() {
+		Runnable task = null;
+		while((task = ssl.getDelegatedTask())!=null) {
+			task.run();
+		}
+	}
+	
+	/**
+	 * Marks this connection idle
+	 */
+	void idle() {
+		idleSince = System.currentTimeMillis();
+		appIn.clear();
+		key.interestOps(SelectionKey.OP_READ);
+	}
+	
+	/**
+	 * Indicates if the response reader has received any bytes
+	 * @return true if any response bytes were received
+	 */
+	boolean isResponseStarted() {
+		return reader!=null && reader.isStarted();
+	}
+	
+	/**
+	 * Closes the connection
+	 */
+	void close() {
+		if(closed) return;
+		closed = true;
+		if(key!=null) key.cancel();
+		try { channel.close(); } catch (IOException e) {}
+	}
+}
@@ -0,0 +1,272 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.collectors.url.probe;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.util.regex.Pattern;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * <p>Title: HttpProbe</p>
+ * <p>Description: The definition of a synthetic HTTP check executed by the {@link HttpProbeEngine}: the URL, method,
+ * optional body and basic credentials, the timeouts, and the success and failure content patterns. A probe is
+ * immutable once submitted and can be executed any number of times, each execution yielding a new {@link HttpProbeResult}.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.collectors.url.probe.HttpProbe</code></p>
+ */
+
+public class HttpProbe {
+	/** The target URL */
+	protected final URL url;
+	/** The HTTP method, GET or POST */
+	protected final String method;
+	/** The request body for POSTs */
+	protected byte[] body = null;
+	/** The request body content type */
+	protected String contentType = null;
+	/** The preemptive basic authorization header value, only sent to the probe URL's origin */
+	protected String authorization = null;
+	/** The connect timeout in ms. */
+	protected int connectTimeout = 5000;
+	/** The overall timeout for an execution in ms. */
+	protected int timeout = 30000;
+	/** The pattern whose presence in the body marks the check as successful */
+	protected Pattern successPattern = null;
+	/** The pattern whose presence in the body marks the check as failed */
+	protected Pattern failurePattern = null;
+	/** The maximum number of redirects followed for GETs */
+	protected int maxRedirects = 5;
+	
+	/** The user agent sent with every request */
+	public static final String USER_AGENT = "Helios-HttpProbe/1.0";
+	
+	/**
+	 * Creates a new HttpProbe
+	 * @param url The target URL
+	 * @param method The HTTP method, GET or POST
+	 */
+	public HttpProbe(URL url, String method) {
+		if(url==null) throw new IllegalArgumentException("The passed URL was null", new Throwable());
+		String protocol = url.getProtocol();
+		if(!"http".equalsIgnoreCase(protocol) && !"https".equalsIgnoreCase(protocol)) throw new IllegalArgumentException("Unsupported protocol [" + protocol + "]", new Throwable());
+		this.url = url;
+		this.method = method==null ? "GET" : method.toUpperCase();
+		if(!"GET".equals(this.method) && !"POST".equals(this.method)) throw new IllegalArgumentException("Unsupported method [" + method + "]", new Throwable());
+	}
+	
+	/**
+	 * Encodes the request for the passed URL
+	 * @param target The URL to request, which differs from the probe's URL when following a redirect
+	 * @param get true to force a GET, as when following a redirect
+	 * @return the encoded request
+	 */
+	byte[] encodeRequest(URL target, boolean get) {
+		String path = target.getPath();
+		StringBuilder b = new StringBuilder(256);
+		b.append(get ? "GET" : method).append(' ').append(path==null || path.length()==0 ? "/" : path);
+		if(target.getQuery()!=null) b.append('?').append(target.getQuery());
+		b.append(" HTTP/1.1\r\nHost: ").append(target.getHost());
+		if(target.getPort()!=-1 && target.getPort()!=target.getDefaultPort()) b.append(':').append(target.getPort());
+		b.append("\r\nUser-Agent: ").append(USER_AGENT);
+		b.append("\r\nAccept: */*\r\nConnection: keep-alive\r\n");
+		if(authorization!=null && isSameOrigin(target)) b.append("Authorization: ").append(authorization).append("\r\n");
+		boolean withBody = !get && body!=null;
+		if(withBody) {
+			if(contentType!=null) b.append("Content-Type: ").append(contentType).append("\r\n");
+			b.append("Content-Length: ").append(body.length).append("\r\n");
+		} else if(!get && "POST".equals(method)) {
+			b.append("Content-Length: 0\r\n");
+		}
+		b.append("\r\n");
+		try {
+			byte[] head = b.toString().getBytes("ISO-8859-1");
+			if(!withBody) return head;
+			byte[] req = new byte[head.length + body.length];
+			System.arraycopy(head, 0, req, 0, head.length);
+			System.arraycopy(body, 0, req, head.length, body.length);
+			return req;
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Indicates if the passed URL has the same scheme, host and port as the probe URL.
+	 * Credentials are not sent to redirect targets on another origin.
+	 * @param target The URL to check
+	 * @return true if the URL is on the probe URL's origin
+	 */
+	boolean isSameOrigin(URL target) {
+		return url.getProtocol().equalsIgnoreCase(target.getProtocol())
+			&& url.getHost().equalsIgnoreCase(target.getHost())
+			&& port(url)==port(target);
+	}
+	
+	/**
+	 * Returns the effective port of a URL
+	 * @param u The URL
+	 * @return the explicit port or the protocol's default port
+	 */
+	protected static int port(URL u) {
+		return u.getPort()==-1 ? u.getDefaultPort() : u.getPort();
+	}
+	
+	/**
+	 * Returns the target URL
+	 * @return the target URL
+	 */
+	public URL getUrl() {
+		return url;
+	}
+
+	/**
+	 * Returns the HTTP method
+	 * @return the HTTP method
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * Sets the request body sent with POSTs
+	 * @param body the body
+	 * @param contentType the body's content type
+	 */
+	public void setBody(byte[] body, String contentType) {
+		this.body = body;
+		this.contentType = contentType;
+	}
+
+	/**
+	 * Sets the credentials sent preemptively as a basic authorization header.
+	 * They are sent to the probe URL and to redirects on the same origin only.
+	 * @param userName The user name
+	 * @param password The password
+	 */
+	public void setCredentials(String userName, String password) {
+		if(userName==null) {
+			authorization = null;
+			return;
+		}
+		try {
+			authorization = "Basic " + new String(Base64.encodeBase64((userName + ":" + (password==null ? "" : password)).getBytes("ISO-8859-1")), "ISO-8859-1");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Returns the connect timeout in ms.
+	 * @return the connect timeout
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * Sets the connect timeout in ms.
+	 * @param connectTimeout the connect timeout
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * Returns the overall timeout in ms.
+	 * @return the overall timeout
+	 */
+	public int getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Sets the overall timeout in ms.
+	 * @param timeout the overall timeout
+	 */
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Returns the success pattern
+	 * @return the success pattern or null
+	 */
+	public Pattern getSuccessPattern() {
+		return successPattern;
+	}
+
+	/**
+	 * Sets the success pattern
+	 * @param successPattern the success pattern
+	 */
+	public void setSuccessPattern(Pattern successPattern) {
+		this.successPattern = successPattern;
+	}
+
+	/**
+	 * Returns the failure pattern
+	 * @return the failure pattern or null
+	 */
+	public Pattern getFailurePattern() {
+		return failurePattern;
+	}
+
+	/**
+	 * Sets the failure pattern
+	 * @param failurePattern the failure pattern
+	 */
+	public void setFailurePattern(Pattern failurePattern) {
+		this.failurePattern = failurePattern;
+	}
+
+	/**
+	 * Returns the maximum number of redirects followed
+	 * @return the maximum number of redirects
+	 */
+	public int getMaxRedirects() {
+		return maxRedirects;
+	}
+
+	/**
+	 * Sets the maximum number of redirects followed for GETs
+	 * @param maxRedirects the maximum number of redirects
+	 */
+	public void setMaxRedirects(int maxRedirects) {
+		this.maxRedirects = Math.max(0, maxRedirects);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "HttpProbe [" + method + " " + url + "]";
+	}
+}
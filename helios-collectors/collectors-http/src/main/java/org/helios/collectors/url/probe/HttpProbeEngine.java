@@ -0,0 +1,810 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.collectors.url.probe;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.cert.X509Certificate;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>Title: HttpProbeEngine</p>
+ * <p>Description: A shared, non-blocking HTTP/1.1 client for synthetic URL checks. A single I/O thread multiplexes every
+ * probe's connection through one selector, so thousands of checks no longer each hold a thread for the duration of a 
+ * blocking request. Connections are kept alive and pooled per scheme, host and port, with a bound on the number of concurrent
+ * connections per host; host names are resolved on a small resolver pool through a {@link DnsCache}. Server certificates
+ * are not validated, in line with the self signed certificate support of the blocking collector.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.collectors.url.probe.HttpProbeEngine</code></p>
+ */
+
+public class HttpProbeEngine implements Runnable {
+	/** The shared engine */
+	private static volatile HttpProbeEngine instance = null;
+	/** The shared engine creation lock */
+	private static final Object lock = new Object();
+	
+	/** Instance logger */
+	protected final Logger log = Logger.getLogger(getClass());
+	/** The selector */
+	protected final Selector selector;
+	/** The I/O thread */
+	protected final Thread ioThread;
+	/** The resolver thread pool */
+	protected final ExecutorService resolver;
+	/** The SSL context for https probes */
+	protected final SSLContext sslContext;
+	/** The DNS cache */
+	protected final DnsCache dnsCache = new DnsCache();
+	/** Probes submitted by collector threads */
+	protected final ConcurrentLinkedQueue<HttpProbeResult> submitted = new ConcurrentLinkedQueue<HttpProbeResult>();
+	/** Tasks posted to the I/O thread, such as resolver completions */
+	protected final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	/** The host pools keyed by scheme, host and port. I/O thread only. */
+	protected final Map<String, HostPool> pools = new HashMap<String, HostPool>();
+	/** The probe deadlines. Superseded entries are discarded lazily. I/O thread only. */
+	protected final PriorityQueue<Deadline> deadlines = new PriorityQueue<Deadline>();
+	/** The run flag */
+	protected volatile boolean running = true;
+	/** The last idle connection sweep */
+	protected long lastSweep = System.currentTimeMillis();
+	
+	/** The maximum number of connections per host */
+	protected volatile int maxConnectionsPerHost = 8;
+	/** The time an idle connection is kept in ms. */
+	protected volatile long idleTimeout = 30000L;
+	/** The largest body read to the end after the content patterns are decided, so the connection can be reused */
+	protected volatile long drainLimit = 65536L;
+	
+	/** The number of probes executed */
+	protected final AtomicLong probes = new AtomicLong(0L);
+	/** The number of probes that timed out */
+	protected final AtomicLong timeouts = new AtomicLong(0L);
+	/** The number of probes that failed */
+	protected final AtomicLong failures = new AtomicLong(0L);
+	/** The number of connections opened */
+	protected final AtomicLong connectionsOpened = new AtomicLong(0L);
+	/** The number of exchanges executed on pooled connections */
+	protected final AtomicLong connectionsReused = new AtomicLong(0L);
+	/** The number of requests retried after a pooled connection turned out to be stale */
+	protected final AtomicLong staleRetries = new AtomicLong(0L);
+	/** The number of responses whose body was abandoned once the content patterns were decided */
+	protected final AtomicLong stoppedEarly = new AtomicLong(0L);
+	/** The number of open connections */
+	protected final AtomicInteger openConnections = new AtomicInteger(0);
+	
+	/** The number of resolver threads */
+	public static final int RESOLVER_THREADS = 4;
+	
+	/**
+	 * Returns the shared engine, starting it on first access
+	 * @return the shared engine
+	 */
+	public static HttpProbeEngine getInstance() {
+		if(instance==null) {
+			synchronized(lock) {
+				if(instance==null) {
+					try {
+						instance = new HttpProbeEngine();
+					} catch (IOException e) {
+						throw new RuntimeException("Failed to start the shared HTTP probe engine", e);
+					}
+				}
+			}
+		}
+		return instance;
+	}
+	
+	/**
+	 * Creates and starts a new HttpProbeEngine
+	 * @throws IOException thrown if the selector cannot be opened
+	 */
+	public HttpProbeEngine() throws IOException {
+		sslContext = createSSLContext();
+		selector = Selector.open();
+		final AtomicInteger serial = new AtomicInteger(0);
+		resolver = Executors.newFixedThreadPool(RESOLVER_THREADS, new ThreadFactory(){
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "HeliosHttpProbeResolver#" + serial.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		ioThread = new Thread(this, "HeliosHttpProbeEngine");
+		ioThread.setDaemon(true);
+		ioThread.start();
+		log.info("Started HTTP probe engine");
+	}
+	
+	/**
+	 * Creates an SSL context that accepts any server certificate
+	 * @return an SSL context
+	 */
+	protected static SSLContext createSSLContext() {
+		try {
+			SSLContext ctx = SSLContext.getInstance("TLS");
+			ctx.init(null, new TrustManager[]{new X509TrustManager(){
+				public void checkClientTrusted(X509Certificate[] chain, String authType) {}
+				public void checkServerTrusted(X509Certificate[] chain, String authType) {}
+				public X509Certificate[] getAcceptedIssuers() { return new X509Certificate[0]; }
+			}}, null);
+			return ctx;
+		} catch (Exception e) {
+			throw new RuntimeException("Failed to create the HTTP probe SSL context", e);
+		}
+	}
+	
+	/**
+	 * Executes a probe. Callable from any thread.
+	 * @param probe The probe to execute
+	 * @return the pending result
+	 */
+	public HttpProbeResult execute(HttpProbe probe) {
+		return execute(probe, null);
+	}
+	
+	/**
+	 * Executes a probe and notifies the passed listener on the I/O thread when it completes. Callable from any thread.
+	 * @param probe The probe to execute
+	 * @param listener The listener notified on completion, or null
+	 * @return the pending result
+	 */
+	public HttpProbeResult execute(HttpProbe probe, HttpProbeListener listener) {
+		if(probe==null) throw new IllegalArgumentException("The passed probe was null", new Throwable());
+		HttpProbeResult r = new HttpProbeResult(probe, listener);
+		probes.incrementAndGet();
+		if(!running) {
+			r.complete(new IllegalStateException("The HTTP probe engine is stopped", new Throwable()));
+			return r;
+		}
+		submitted.add(r);
+		if(Thread.currentThread()!=ioThread) selector.wakeup();
+		return r;
+	}
+	
+	/**
+	 * Posts a task to the I/O thread
+	 * @param task The task to run
+	 */
+	protected void post(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+	
+	/**
+	 * The I/O loop
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run() {
+		while(running) {
+			try {
+				drainSubmitted();
+				runTasks();
+				long now = System.nanoTime();
+				long wait = expire(now);
+				if(submitted.isEmpty() && tasks.isEmpty()) {
+					selector.select(wait);
+				} else {
+					selector.selectNow();
+				}
+				processSelected();
+				sweepIdle();
+			} catch (ClosedSelectorException e) {
+				break;
+			} catch (Throwable t) {
+				log.error("Unexpected exception in HTTP probe engine loop", t);
+			}
+		}
+	}
+	
+	/**
+	 * Starts submitted probes
+	 */
+	protected void drainSubmitted() {
+		HttpProbeResult r = null;
+		while((r = submitted.poll())!=null) {
+			setDeadline(r, r.startTime + TimeUnit.NANOSECONDS.convert(r.probe.getTimeout(), TimeUnit.MILLISECONDS));
+			begin(r);
+		}
+	}
+	
+	/**
+	 * Runs posted tasks
+	 */
+	protected void runTasks() {
+		Runnable task = null;
+		while((task = tasks.poll())!=null) {
+			try {
+				task.run();
+			} catch (Throwable t) {
+				log.error("Unexpected exception in HTTP probe engine task", t);
+			}
+		}
+	}
+	
+	/**
+	 * Dispatches the selected keys to their connections
+	 */
+	protected void processSelected() {
+		for(SelectionKey key: selector.selectedKeys()) {
+			HttpConnection c = (HttpConnection)key.attachment();
+			try {
+				if(c.closed || !key.isValid()) continue;
+				if(key.isConnectable()) {
+					c.onConnectable();
+				} else {
+					if(key.isWritable()) c.onWritable();
+					if(!c.closed && key.isValid() && key.isReadable()) c.onReadable();
+				}
+			} catch (Exception e) {
+				failed(c, e);
+			}
+		}
+		selector.selectedKeys().clear();
+	}
+	
+	/**
+	 * Sets the active deadline of a probe
+	 * @param r The probe
+	 * @param deadline The deadline in nanos
+	 */
+	protected void setDeadline(HttpProbeResult r, long deadline) {
+		r.deadline = deadline;
+		deadlines.add(new Deadline(r, deadline));
+	}
+	
+	/**
+	 * Resets a probe's deadline to its overall timeout once its connection is established. Called by connections.
+	 * @param r The probe
+	 */
+	void connected(HttpProbeResult r) {
+		setDeadline(r, r.startTime + TimeUnit.NANOSECONDS.convert(r.probe.getTimeout(), TimeUnit.MILLISECONDS));
+	}
+	
+	/**
+	 * Times out expired probes
+	 * @param now The current nano time
+	 * @return the ms. until the next deadline, capped at one second
+	 */
+	protected long expire(long now) {
+		Deadline d = null;
+		while((d = deadlines.peek())!=null) {
+			HttpProbeResult r = d.result;
+			if(r.done || d.when!=r.deadline) {
+				deadlines.poll();
+				continue;
+			}
+			if(d.when>now) {
+				return Math.max(1L, Math.min(1000L, TimeUnit.MILLISECONDS.convert(d.when-now, TimeUnit.NANOSECONDS)));
+			}
+			deadlines.poll();
+			r.timedOut = true;
+			timeouts.incrementAndGet();
+			HttpConnection c = r.connection;
+			boolean connecting = c!=null && !r.reused && r.connectTime==-1L;
+			if(c!=null) {
+				c.exchange = null;
+				closeConnection(c);
+			}
+			r.complete(new SocketTimeoutException(connecting ? 
+					"Timed out after " + r.probe.getConnectTimeout() + " ms. connecting to [" + r.currentUrl + "]" :
+					"Timed out after " + r.probe.getTimeout() + " ms. requesting [" + r.currentUrl + "]"));
+		}
+		return 1000L;
+	}
+	
+	/**
+	 * Starts or restarts a probe on a pooled or new connection, or queues it when its host is at the connection limit
+	 * @param r The probe
+	 */
+	protected void begin(HttpProbeResult r) {
+		URL u = r.currentUrl;
+		boolean secure = "https".equalsIgnoreCase(u.getProtocol());
+		int port = u.getPort()==-1 ? u.getDefaultPort() : u.getPort();
+		String key = (secure ? "https://" : "http://") + u.getHost().toLowerCase() + ":" + port;
+		HostPool pool = pools.get(key);
+		if(pool==null) {
+			pool = new HostPool(key, u.getHost(), port, secure);
+			pools.put(key, pool);
+		}
+		HttpConnection c = null;
+		while((c = pool.idle.pollLast())!=null) {
+			try {
+				c.start(r);
+				connectionsReused.incrementAndGet();
+				return;
+			} catch (IOException e) {
+				c.exchange = null;
+				r.connection = null;
+				r.reused = false;
+				closeConnection(c);
+			}
+		}
+		if(pool.open<maxConnectionsPerHost) {
+			open(pool, r);
+		} else {
+			pool.waiting.add(r);
+		}
+	}
+	
+	/**
+	 * Resolves the pool's host and opens a new connection for the passed probe
+	 * @param pool The host pool
+	 * @param r The probe
+	 */
+	protected void open(final HostPool pool, final HttpProbeResult r) {
+		pool.open++;
+		openConnections.incrementAndGet();
+		r.reused = false;
+		r.connectTime = -1L;
+		r.tlsTime = -1L;
+		try {
+			if(DnsCache.isLiteral(pool.host)) {
+				connect(pool, r, InetAddress.getByName(pool.host));
+				return;
+			}
+			long start = System.nanoTime();
+			InetAddress address = dnsCache.getCached(pool.host);
+			if(address!=null) {
+				r.dnsTime = HttpProbeResult.elapsedSince(start);
+				connect(pool, r, address);
+				return;
+			}
+		} catch (UnknownHostException e) {
+			release(pool);
+			fail(r, e);
+			return;
+		}
+		r.phaseStart = System.nanoTime();
+		resolver.execute(new Runnable(){
+			public void run() {
+				try {
+					final InetAddress address = dnsCache.resolve(pool.host);
+					post(new Runnable(){
+						public void run() {
+							r.dnsTime = HttpProbeResult.elapsedSince(r.phaseStart);
+							connect(pool, r, address);
+						}
+					});
+				} catch (final UnknownHostException e) {
+					post(new Runnable(){
+						public void run() {
+							release(pool);
+							fail(r, e);
+						}
+					});
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Connects a new connection for the passed probe
+	 * @param pool The host pool
+	 * @param r The probe
+	 * @param address The resolved address
+	 */
+	protected void connect(HostPool pool, HttpProbeResult r, InetAddress address) {
+		if(r.done || !running) {
+			release(pool);
+			return;
+		}
+		HttpConnection c = null;
+		try {
+			SSLEngine ssl = null;
+			if(pool.secure) {
+				ssl = sslContext.createSSLEngine(pool.host, pool.port);
+				ssl.setUseClientMode(true);
+			}
+			c = new HttpConnection(this, pool, ssl);
+			connectionsOpened.incrementAndGet();
+			long connectDeadline = System.nanoTime() + TimeUnit.NANOSECONDS.convert(r.probe.getConnectTimeout(), TimeUnit.MILLISECONDS);
+			if(connectDeadline<r.deadline) setDeadline(r, connectDeadline);
+			c.connect(r, new InetSocketAddress(address, pool.port), selector);
+		} catch (Exception e) {
+			if(c!=null) {
+				c.exchange = null;
+				closeConnection(c);
+			} else {
+				release(pool);
+			}
+			fail(r, e);
+		}
+	}
+	
+	/**
+	 * Handles the completion of an exchange. Called by connections.
+	 * @param c The connection
+	 * @param r The completed exchange
+	 * @param reader The exchange's response reader
+	 * @param reusable true if the connection can be reused
+	 */
+	void completed(HttpConnection c, HttpProbeResult r, HttpResponseReader reader, boolean reusable) {
+		if(reusable && running) {
+			c.idle();
+			c.pool.idle.add(c);
+			dispatch(c.pool);
+		} else {
+			closeConnection(c);
+		}
+		if(r.done) return;
+		int status = reader.getStatusCode();
+		String location = reader.getHeader("location");
+		if(location!=null && (status==301 || status==302 || status==303 || status==307 || status==308)
+				&& "GET".equals(r.probe.getMethod()) && r.redirects < r.probe.getMaxRedirects()) {
+			try {
+				// credentials only follow redirects on the probe URL's origin, see HttpProbe.encodeRequest
+				URL next = new URL(r.currentUrl, location);
+				String protocol = next.getProtocol();
+				if("http".equalsIgnoreCase(protocol) || "https".equalsIgnoreCase(protocol)) {
+					r.currentUrl = next;
+					r.redirects++;
+					r.firstByteTime = -1L;
+					begin(r);
+					return;
+				}
+			} catch (MalformedURLException e) {
+				// report the redirect response as is
+			}
+		}
+		if(r.stoppedEarly) stoppedEarly.incrementAndGet();
+		r.complete(null);
+	}
+	
+	/**
+	 * Handles an I/O failure on a connection, retrying the exchange once on a new connection when a pooled connection 
+	 * failed before any response was received
+	 * @param c The connection
+	 * @param e The failure
+	 */
+	protected void failed(HttpConnection c, Exception e) {
+		HttpProbeResult r = c.exchange;
+		boolean started = c.isResponseStarted();
+		c.exchange = null;
+		closeConnection(c);
+		if(r==null || r.done) return;
+		r.connection = null;
+		if(r.reused && !started && !r.retried) {
+			// the server dropped its idle connections, so the rest of the pool is likely stale as well
+			r.retried = true;
+			staleRetries.incrementAndGet();
+			HttpConnection idle = null;
+			while((idle = c.pool.idle.pollFirst())!=null) {
+				closeConnection(idle);
+			}
+			begin(r);
+		} else {
+			fail(r, e);
+		}
+	}
+	
+	/**
+	 * Closes an idle connection that was closed by the server or sent unsolicited data. Called by connections.
+	 * @param c The connection
+	 */
+	void discard(HttpConnection c) {
+		closeConnection(c);
+	}
+	
+	/**
+	 * Fails a probe
+	 * @param r The probe
+	 * @param t The failure cause
+	 */
+	protected void fail(HttpProbeResult r, Throwable t) {
+		if(r.done) return;
+		failures.incrementAndGet();
+		r.complete(t);
+	}
+	
+	/**
+	 * Closes a connection and releases its pool slot
+	 * @param c The connection
+	 */
+	protected void closeConnection(HttpConnection c) {
+		if(c.closed) return;
+		c.close();
+		c.pool.idle.remove(c);
+		release(c.pool);
+	}
+	
+	/**
+	 * Releases a connection slot of a pool and starts a waiting probe if there is one
+	 * @param pool The host pool
+	 */
+	protected void release(HostPool pool) {
+		pool.open--;
+		openConnections.decrementAndGet();
+		dispatch(pool);
+	}
+	
+	/**
+	 * Starts waiting probes of a pool while it has idle connections or free connection slots
+	 * @param pool The host pool
+	 */
+	protected void dispatch(HostPool pool) {
+		while(!pool.waiting.isEmpty() && (!pool.idle.isEmpty() || pool.open<maxConnectionsPerHost)) {
+			HttpProbeResult r = pool.waiting.poll();
+			if(!r.done) begin(r);
+		}
+	}
+	
+	/**
+	 * Closes connections idle for longer than the idle timeout and removes unused pools, at most once a second
+	 */
+	protected void sweepIdle() {
+		long now = System.currentTimeMillis();
+		if(now-lastSweep<1000L) return;
+		lastSweep = now;
+		for(Iterator<HostPool> iter = pools.values().iterator(); iter.hasNext();) {
+			HostPool pool = iter.next();
+			HttpConnection c = null;
+			while((c = pool.idle.peekFirst())!=null && now-c.idleSince>idleTimeout) {
+				closeConnection(c);
+			}
+			if(pool.open==0 && pool.waiting.isEmpty()) iter.remove();
+		}
+	}
+	
+	/**
+	 * Stops the engine. Pending probes are failed and all connections are closed.
+	 */
+	public void shutdown() {
+		running = false;
+		selector.wakeup();
+		try { ioThread.join(5000); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+		resolver.shutdownNow();
+		IllegalStateException ex = new IllegalStateException("The HTTP probe engine was stopped", new Throwable());
+		for(SelectionKey key: selector.keys()) {
+			((HttpConnection)key.attachment()).close();
+		}
+		try { selector.close(); } catch (IOException e) {}
+		Deadline d = null;
+		while((d = deadlines.poll())!=null) {
+			d.result.complete(ex);
+		}
+		HttpProbeResult r = null;
+		while((r = submitted.poll())!=null) {
+			r.complete(ex);
+		}
+		synchronized(lock) {
+			if(instance==this) instance = null;
+		}
+		log.info("Stopped HTTP probe engine");
+	}
+	
+	/**
+	 * Returns the DNS cache
+	 * @return the DNS cache
+	 */
+	public DnsCache getDnsCache() {
+		return dnsCache;
+	}
+
+	/**
+	 * Returns the maximum number of connections per host
+	 * @return the maximum number of connections per host
+	 */
+	public int getMaxConnectionsPerHost() {
+		return maxConnectionsPerHost;
+	}
+
+	/**
+	 * Sets the maximum number of connections per host
+	 * @param maxConnectionsPerHost the maximum number of connections per host
+	 */
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		if(maxConnectionsPerHost<1) throw new IllegalArgumentException("Invalid maximum connections per host [" + maxConnectionsPerHost + "]", new Throwable());
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	/**
+	 * Returns the time an idle connection is kept in ms.
+	 * @return the idle timeout
+	 */
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * Sets the time an idle connection is kept in ms.
+	 * @param idleTimeout the idle timeout
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Returns the largest body read to the end after the content patterns are decided
+	 * @return the drain limit in bytes
+	 */
+	public long getDrainLimit() {
+		return drainLimit;
+	}
+
+	/**
+	 * Sets the largest body read to the end after the content patterns are decided
+	 * @param drainLimit the drain limit in bytes
+	 */
+	public void setDrainLimit(long drainLimit) {
+		this.drainLimit = drainLimit;
+	}
+
+	/**
+	 * Returns the number of probes executed
+	 * @return the number of probes executed
+	 */
+	public long getProbes() {
+		return probes.get();
+	}
+
+	/**
+	 * Returns the number of probes that timed out
+	 * @return the number of timeouts
+	 */
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	/**
+	 * Returns the number of probes that failed
+	 * @return the number of failures
+	 */
+	public long getFailures() {
+		return failures.get();
+	}
+
+	/**
+	 * Returns the number of connections opened
+	 * @return the number of connections opened
+	 */
+	public long getConnectionsOpened() {
+		return connectionsOpened.get();
+	}
+
+	/**
+	 * Returns the number of exchanges executed on pooled connections
+	 * @return the number of reused connections
+	 */
+	public long getConnectionsReused() {
+		return connectionsReused.get();
+	}
+
+	/**
+	 * Returns the number of requests retried after a pooled connection turned out to be stale
+	 * @return the number of stale connection retries
+	 */
+	public long getStaleRetries() {
+		return staleRetries.get();
+	}
+
+	/**
+	 * Returns the number of responses whose body was abandoned once the content patterns were decided
+	 * @return the number of early stops
+	 */
+	public long getStoppedEarly() {
+		return stoppedEarly.get();
+	}
+
+	/**
+	 * Returns the number of open connections
+	 * @return the number of open connections
+	 */
+	public int getOpenConnections() {
+		return openConnections.get();
+	}
+	
+	/**
+	 * <p>Title: HostPool</p>
+	 * <p>Description: The connections to one scheme, host and port. I/O thread only.</p> 
+	 */
+	static class HostPool {
+		/** The pool key */
+		final String key;
+		/** The host */
+		final String host;
+		/** The port */
+		final int port;
+		/** Indicates if connections use TLS */
+		final boolean secure;
+		/** The number of open or opening connections */
+		int open = 0;
+		/** The idle connections, most recently used last */
+		final ArrayDeque<HttpConnection> idle = new ArrayDeque<HttpConnection>();
+		/** Probes waiting for a connection */
+		final ArrayDeque<HttpProbeResult> waiting = new ArrayDeque<HttpProbeResult>();
+		
+		/**
+		 * Creates a new HostPool
+		 * @param key The pool key
+		 * @param host The host
+		 * @param port The port
+		 * @param secure Indicates if connections use TLS
+		 */
+		HostPool(String key, String host, int port, boolean secure) {
+			this.key = key;
+			this.host = host;
+			this.port = port;
+			this.secure = secure;
+		}
+	}
+	
+	/**
+	 * <p>Title: Deadline</p>
+	 * <p>Description: A probe deadline entry</p> 
+	 */
+	static class Deadline implements Comparable<Deadline> {
+		/** The probe */
+		final HttpProbeResult result;
+		/** The deadline in nanos */
+		final long when;
+		
+		/**
+		 * Creates a new Deadline
+		 * @param result The probe
+		 * @param when The deadline in nanos
+		 */
+		Deadline(HttpProbeResult result, long when) {
+			this.result = result;
+			this.when = when;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		public int compareTo(Deadline other) {
+			return when<other.when ? -1 : when==other.when ? 0 : 1;
+		}
+	}
+}
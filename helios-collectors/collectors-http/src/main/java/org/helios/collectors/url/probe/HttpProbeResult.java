@@ -0,0 +1,320 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.collectors.url.probe;
+
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>Title: HttpProbeResult</p>
+ * <p>Description: The outcome of one execution of an {@link HttpProbe}. The result is populated by the engine's I/O thread
+ * and published to the submitting thread through a completion latch and, when one was supplied, an {@link HttpProbeListener}. All timings are reported in ms. and are -1 when the 
+ * corresponding phase did not take place, e.g. the TLS handshake for plain HTTP or the DNS lookup and connect when a pooled
+ * connection was reused.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.collectors.url.probe.HttpProbeResult</code></p>
+ */
+
+public class HttpProbeResult {
+	/** Static class logger */
+	protected static final Logger LOG = Logger.getLogger(HttpProbeResult.class);
+	/** The executed probe */
+	protected final HttpProbe probe;
+	/** The listener notified on completion, or null */
+	protected final HttpProbeListener listener;
+	/** The completion latch */
+	protected final CountDownLatch latch = new CountDownLatch(1);
+	/** The start time in nanos */
+	protected final long startTime = System.nanoTime();
+	
+	// ==== Fields below are only written by the engine's I/O thread before the latch is released ====
+	/** The URL currently being requested */
+	URL currentUrl;
+	/** The number of redirects followed */
+	int redirects = 0;
+	/** The active deadline in nanos */
+	long deadline;
+	/** Indicates if the current connection was taken from the pool */
+	boolean reused = false;
+	/** Indicates if the request was retried after a pooled connection turned out to be stale */
+	boolean retried = false;
+	/** Indicates if the result has been completed */
+	boolean done = false;
+	/** The connection executing the request */
+	HttpConnection connection = null;
+	/** The time the current phase started in nanos */
+	long phaseStart;
+	/** The time the request was fully written in nanos */
+	long requestSent = -1L;
+	
+	/** The HTTP status code */
+	protected volatile int statusCode = -1;
+	/** The full body size, or -1 if reading stopped early and the size was not declared */
+	protected volatile long contentSize = 0;
+	/** The number of body bytes read */
+	protected volatile long bytesRead = 0;
+	/** Indicates if the success pattern matched */
+	protected volatile boolean successMatched = false;
+	/** Indicates if the failure pattern matched */
+	protected volatile boolean failureMatched = false;
+	/** Indicates if reading stopped once the content patterns were decided */
+	protected volatile boolean stoppedEarly = false;
+	/** Indicates if the probe timed out */
+	protected volatile boolean timedOut = false;
+	/** The failure cause */
+	protected volatile Throwable failure = null;
+	/** The DNS lookup time in ms. */
+	protected volatile long dnsTime = -1L;
+	/** The TCP connect time in ms. */
+	protected volatile long connectTime = -1L;
+	/** The TLS handshake time in ms. */
+	protected volatile long tlsTime = -1L;
+	/** The time from the request being sent to the first response byte in ms. */
+	protected volatile long firstByteTime = -1L;
+	/** The total elapsed time in ms. */
+	protected volatile long totalTime = -1L;
+	
+	/**
+	 * Creates a new HttpProbeResult
+	 * @param probe The executed probe
+	 * @param listener The listener notified on completion, or null
+	 */
+	HttpProbeResult(HttpProbe probe, HttpProbeListener listener) {
+		this.probe = probe;
+		this.listener = listener;
+		this.currentUrl = probe.getUrl();
+	}
+	
+	/**
+	 * Completes this result, releases waiting threads and notifies the listener. Called on the I/O thread.
+	 * @param cause The failure cause or null if the exchange completed
+	 */
+	void complete(Throwable cause) {
+		if(done) return;
+		done = true;
+		failure = cause;
+		connection = null;
+		totalTime = elapsedSince(startTime);
+		latch.countDown();
+		if(listener!=null) {
+			try {
+				listener.onProbeComplete(this);
+			} catch (Throwable t) {
+				LOG.error("HTTP probe listener failed for [" + probe.getUrl() + "]", t);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the ms. elapsed since the passed nano time
+	 * @param nanoStart the start time in nanos
+	 * @return the elapsed time in ms.
+	 */
+	static long elapsedSince(long nanoStart) {
+		return TimeUnit.MILLISECONDS.convert(System.nanoTime()-nanoStart, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Waits for the probe to complete
+	 * @param timeout The maximum time to wait in ms.
+	 * @return true if the probe completed, false if the wait timed out
+	 */
+	public boolean await(long timeout) {
+		try {
+			return latch.await(timeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+	
+	/**
+	 * Indicates if the probe has completed
+	 * @return true if the probe has completed
+	 */
+	public boolean isComplete() {
+		return latch.getCount()==0;
+	}
+	
+	/**
+	 * Indicates if the probe received a response
+	 * @return true if a response was received
+	 */
+	public boolean isResponded() {
+		return isComplete() && failure==null && !timedOut;
+	}
+
+	/**
+	 * Returns the executed probe
+	 * @return the probe
+	 */
+	public HttpProbe getProbe() {
+		return probe;
+	}
+
+	/**
+	 * Returns the HTTP status code
+	 * @return the status code or -1 if no response was received
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * Returns the full body size. When reading stopped early this is the declared content length, 
+	 * or -1 for a chunked or close delimited body.
+	 * @return the content size or -1 if unknown
+	 */
+	public long getContentSize() {
+		return contentSize;
+	}
+
+	/**
+	 * Returns the number of body bytes read. When reading stopped early this is the number of bytes read until the
+	 * content patterns were decided.
+	 * @return the number of body bytes read
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * Indicates if the success pattern matched
+	 * @return true if the success pattern matched
+	 */
+	public boolean isSuccessMatched() {
+		return successMatched;
+	}
+
+	/**
+	 * Indicates if the failure pattern matched
+	 * @return true if the failure pattern matched
+	 */
+	public boolean isFailureMatched() {
+		return failureMatched;
+	}
+
+	/**
+	 * Indicates if reading stopped once the content patterns were decided
+	 * @return true if the body was not read to the end
+	 */
+	public boolean isStoppedEarly() {
+		return stoppedEarly;
+	}
+
+	/**
+	 * Indicates if the probe timed out
+	 * @return true if the probe timed out
+	 */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+	/**
+	 * Returns the failure cause
+	 * @return the failure cause or null
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Indicates if the final request went out on a pooled connection
+	 * @return true if a pooled connection was reused
+	 */
+	public boolean isReused() {
+		return reused;
+	}
+
+	/**
+	 * Returns the number of redirects followed
+	 * @return the number of redirects
+	 */
+	public int getRedirects() {
+		return redirects;
+	}
+
+	/**
+	 * Returns the DNS lookup time in ms.
+	 * @return the DNS lookup time or -1
+	 */
+	public long getDnsTime() {
+		return dnsTime;
+	}
+
+	/**
+	 * Returns the TCP connect time in ms.
+	 * @return the connect time or -1
+	 */
+	public long getConnectTime() {
+		return connectTime;
+	}
+
+	/**
+	 * Returns the TLS handshake time in ms.
+	 * @return the TLS handshake time or -1
+	 */
+	public long getTlsTime() {
+		return tlsTime;
+	}
+
+	/**
+	 * Returns the time from the request being sent to the first response byte in ms.
+	 * @return the time to first byte or -1
+	 */
+	public long getFirstByteTime() {
+		return firstByteTime;
+	}
+
+	/**
+	 * Returns the total elapsed time in ms.
+	 * @return the total elapsed time or -1 if the probe has not completed
+	 */
+	public long getTotalTime() {
+		return totalTime;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder b = new StringBuilder("HttpProbeResult [");
+		b.append(probe.getMethod()).append(" ").append(currentUrl);
+		b.append(", status:").append(statusCode);
+		b.append(", dns:").append(dnsTime).append(", connect:").append(connectTime).append(", tls:").append(tlsTime);
+		b.append(", firstByte:").append(firstByteTime).append(", total:").append(totalTime);
+		b.append(", size:").append(contentSize).append(", read:").append(bytesRead).append(", reused:").append(reused);
+		if(timedOut) b.append(", timed out");
+		if(failure!=null) b.append(", failure:").append(failure);
+		return b.append("]").toString();
+	}
+}
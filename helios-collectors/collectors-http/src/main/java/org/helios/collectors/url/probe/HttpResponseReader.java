@@ -0,0 +1,377 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.collectors.url.probe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Title: HttpResponseReader</p>
+ * <p>Description: Incremental HTTP/1.x response parser. Bytes are fed as they arrive and the reader tracks the status line,
+ * headers and body framing (content length, chunked or delimited by the connection closing). The body of a 200 response is
+ * streamed through a {@link ContentMatcher} when the probe defines content patterns.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.collectors.url.probe.HttpResponseReader</code></p>
+ */
+
+public class HttpResponseReader {
+	/** The success pattern */
+	protected final Pattern successPattern;
+	/** The failure pattern */
+	protected final Pattern failurePattern;
+	/** The current parse state */
+	protected int state = STATUS;
+	/** The line being accumulated */
+	protected final StringBuilder line = new StringBuilder(128);
+	/** The response HTTP version */
+	protected String version = null;
+	/** The response status code */
+	protected int statusCode = -1;
+	/** The response headers keyed by lower cased name */
+	protected final Map<String, String> headers = new HashMap<String, String>();
+	/** The number of header bytes read */
+	protected int headerBytes = 0;
+	/** The remaining bytes of the body or the current chunk */
+	protected long remaining = -1L;
+	/** The number of body bytes read */
+	protected long bodyBytes = 0L;
+	/** The declared content length of a length delimited body, or -1 */
+	protected long contentLength = -1L;
+	/** Indicates if the connection can be kept alive after the response */
+	protected boolean keepAlive = false;
+	/** Indicates if any bytes have been received */
+	protected boolean started = false;
+	/** The content matcher, created when the headers are complete */
+	protected ContentMatcher matcher = null;
+	
+	/** State: reading the status line */
+	public static final int STATUS = 0;
+	/** State: reading headers */
+	public static final int HEADERS = 1;
+	/** State: reading a content length delimited body */
+	public static final int BODY_LENGTH = 2;
+	/** State: reading a chunk size line */
+	public static final int CHUNK_SIZE = 3;
+	/** State: reading chunk data */
+	public static final int CHUNK_DATA = 4;
+	/** State: reading the CRLF after chunk data */
+	public static final int CHUNK_END = 5;
+	/** State: reading the chunked trailers */
+	public static final int TRAILERS = 6;
+	/** State: reading a body delimited by the connection closing */
+	public static final int BODY_CLOSE = 7;
+	/** State: the response is complete */
+	public static final int DONE = 8;
+	
+	/** The maximum length of a status, header or chunk size line */
+	public static final int MAX_LINE = 8192;
+	/** The maximum total size of the response headers */
+	public static final int MAX_HEADERS = 65536;
+	
+	/**
+	 * Creates a new HttpResponseReader
+	 * @param successPattern The success pattern, or null
+	 * @param failurePattern The failure pattern, or null
+	 */
+	public HttpResponseReader(Pattern successPattern, Pattern failurePattern) {
+		this.successPattern = successPattern;
+		this.failurePattern = failurePattern;
+	}
+	
+	/**
+	 * Feeds received bytes to the reader. Reading stops when the response completes, leaving any further bytes in the buffer.
+	 * @param in The received bytes
+	 * @return true if the response is complete
+	 * @throws IOException thrown if the response is malformed
+	 */
+	public boolean feed(ByteBuffer in) throws IOException {
+		if(in.hasRemaining()) started = true;
+		while(in.hasRemaining() && state!=DONE) {
+			switch(state) {
+				case BODY_LENGTH:
+				case CHUNK_DATA:
+					int n = (int)Math.min(remaining, in.remaining());
+					body(in, n);
+					remaining -= n;
+					if(remaining==0) state = state==BODY_LENGTH ? DONE : CHUNK_END;
+					break;
+				case BODY_CLOSE:
+					body(in, in.remaining());
+					break;
+				default:
+					if(!readLine(in)) return false;
+					String l = line.toString();
+					line.setLength(0);
+					handleLine(l);
+			}
+		}
+		if(state==DONE && matcher!=null) matcher.finish();
+		return state==DONE;
+	}
+	
+	/**
+	 * Signals that the connection closed
+	 * @throws IOException thrown if the response was not complete
+	 */
+	public void eof() throws IOException {
+		if(state==BODY_CLOSE) {
+			state = DONE;
+			if(matcher!=null) matcher.finish();
+		} else if(state!=DONE) {
+			throw new IOException("Connection closed before the response completed");
+		}
+	}
+	
+	/**
+	 * Accumulates bytes into the current line
+	 * @param in The received bytes
+	 * @return true if a complete line was read
+	 * @throws IOException thrown if the line is too long
+	 */
+	protected boolean readLine(ByteBuffer in) throws IOException {
+		while(in.hasRemaining()) {
+			char c = (char)(in.get() & 0xFF);
+			if(state<=HEADERS && ++headerBytes>MAX_HEADERS) throw new IOException("Response headers exceed " + MAX_HEADERS + " bytes");
+			if(c=='\n') {
+				int len = line.length();
+				if(len>0 && line.charAt(len-1)=='\r') line.setLength(len-1);
+				return true;
+			}
+			if(line.length()>=MAX_LINE) throw new IOException("Response line exceeds " + MAX_LINE + " bytes");
+			line.append(c);
+		}
+		return false;
+	}
+	
+	/**
+	 * Processes a complete line
+	 * @param l The line
+	 * @throws IOException thrown if the line is malformed
+	 */
+	protected void handleLine(String l) throws IOException {
+		switch(state) {
+			case STATUS:
+				if(l.length()==0) return;
+				String[] frags = l.split(" ", 3);
+				if(frags.length<2 || !frags[0].startsWith("HTTP/")) throw new IOException("Malformed status line [" + l + "]");
+				version = frags[0];
+				try {
+					statusCode = Integer.parseInt(frags[1]);
+				} catch (NumberFormatException e) {
+					throw new IOException("Malformed status line [" + l + "]");
+				}
+				state = HEADERS;
+				break;
+			case HEADERS:
+				if(l.length()==0) {
+					endOfHeaders();
+				} else {
+					int index = l.indexOf(':');
+					if(index>0) headers.put(l.substring(0, index).trim().toLowerCase(), l.substring(index+1).trim());
+				}
+				break;
+			case CHUNK_SIZE:
+				int end = l.indexOf(';');
+				String size = (end==-1 ? l : l.substring(0, end)).trim();
+				try {
+					remaining = Long.parseLong(size, 16);
+				} catch (NumberFormatException e) {
+					throw new IOException("Malformed chunk size [" + l + "]");
+				}
+				state = remaining==0 ? TRAILERS : CHUNK_DATA;
+				break;
+			case CHUNK_END:
+				if(l.length()!=0) throw new IOException("Malformed chunk terminator");
+				state = CHUNK_SIZE;
+				break;
+			case TRAILERS:
+				if(l.length()==0) state = DONE;
+				break;
+		}
+	}
+	
+	/**
+	 * Determines the body framing once the headers are complete
+	 */
+	protected void endOfHeaders() {
+		if(statusCode/100==1) {
+			// interim response, the final response follows
+			headers.clear();
+			statusCode = -1;
+			state = STATUS;
+			return;
+		}
+		String connection = headers.get("connection");
+		if("HTTP/1.0".equals(version)) {
+			keepAlive = connection!=null && "keep-alive".equalsIgnoreCase(connection);
+		} else {
+			keepAlive = connection==null || !"close".equalsIgnoreCase(connection);
+		}
+		if(statusCode==200 && (successPattern!=null || failurePattern!=null)) {
+			matcher = new ContentMatcher(successPattern, failurePattern, headers.get("content-type"), ContentMatcher.DEFAULT_OVERLAP);
+		}
+		String transferEncoding = headers.get("transfer-encoding");
+		String contentLengthHeader = headers.get("content-length");
+		if(statusCode==204 || statusCode==304) {
+			state = DONE;
+		} else if(transferEncoding!=null && transferEncoding.toLowerCase().indexOf("chunked")!=-1) {
+			state = CHUNK_SIZE;
+		} else if(contentLengthHeader!=null) {
+			try {
+				remaining = Long.parseLong(contentLengthHeader);
+			} catch (NumberFormatException e) {
+				remaining = -1L;
+			}
+			if(remaining<0) {
+				state = BODY_CLOSE;
+				keepAlive = false;
+			} else {
+				contentLength = remaining;
+				state = remaining==0 ? DONE : BODY_LENGTH;
+			}
+		} else {
+			state = BODY_CLOSE;
+			keepAlive = false;
+		}
+	}
+	
+	/**
+	 * Consumes body bytes
+	 * @param in The received bytes
+	 * @param n The number of body bytes at the buffer's position
+	 */
+	protected void body(ByteBuffer in, int n) {
+		if(matcher!=null && !matcher.isDecided()) {
+			ByteBuffer slice = in.duplicate();
+			slice.limit(slice.position() + n);
+			matcher.feed(slice);
+		}
+		in.position(in.position() + n);
+		bodyBytes += n;
+	}
+	
+	/**
+	 * Indicates if the headers have been read
+	 * @return true if the headers have been read
+	 */
+	public boolean isHeadersComplete() {
+		return state>HEADERS;
+	}
+	
+	/**
+	 * Indicates if the response is complete
+	 * @return true if the response is complete
+	 */
+	public boolean isDone() {
+		return state==DONE;
+	}
+	
+	/**
+	 * Indicates if the content patterns are decided. Responses without patterns, or with a status other than 200, are decided
+	 * as soon as the headers have been read.
+	 * @return true if reading further body bytes cannot change the outcome
+	 */
+	public boolean isDecided() {
+		return isHeadersComplete() && (matcher==null || matcher.isDecided());
+	}
+	
+	/**
+	 * Returns the number of body bytes still to be read when known 
+	 * @return the remaining body bytes or -1 if unknown
+	 */
+	public long getRemainingBody() {
+		return state==BODY_LENGTH ? remaining : state==DONE ? 0 : -1L;
+	}
+
+	/**
+	 * Indicates if any response bytes have been received
+	 * @return true if any response bytes have been received
+	 */
+	public boolean isStarted() {
+		return started;
+	}
+
+	/**
+	 * Returns the status code
+	 * @return the status code
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * Returns a response header
+	 * @param name The lower case header name
+	 * @return the header value or null
+	 */
+	public String getHeader(String name) {
+		return headers.get(name);
+	}
+
+	/**
+	 * Returns the number of body bytes read
+	 * @return the number of body bytes read
+	 */
+	public long getBodyBytes() {
+		return bodyBytes;
+	}
+
+	/**
+	 * Returns the declared content length
+	 * @return the content length of a length delimited body, or -1 for chunked and close delimited bodies
+	 */
+	public long getContentLength() {
+		return contentLength;
+	}
+
+	/**
+	 * Indicates if the connection can be kept alive
+	 * @return true if the connection can be kept alive
+	 */
+	public boolean isKeepAlive() {
+		return keepAlive;
+	}
+
+	/**
+	 * Indicates if the success pattern matched
+	 * @return true if the success pattern matched
+	 */
+	public boolean isSuccessMatched() {
+		return matcher!=null && matcher.isSuccessMatched();
+	}
+
+	/**
+	 * Indicates if the failure pattern matched
+	 * @return true if the failure pattern matched
+	 */
+	public boolean isFailureMatched() {
+		return matcher!=null && matcher.isFailureMatched();
+	}
+}
@@ -30,6 +30,7 @@ import org.apache.commons.httpclient.methods.RequestEntity;
 import org.apache.commons.httpclient.methods.StringRequestEntity;
 import org.helios.collectors.exceptions.CollectorStartException;
 import org.helios.collectors.url.URLCollector;
+import org.helios.collectors.url.probe.HttpProbe;
 import org.helios.jmx.dynamic.annotations.JMXAttribute;
 import org.helios.jmx.dynamic.annotations.JMXManagedObject;
 import org.helios.jmx.dynamic.annotations.options.AttributeMutabilityOption;
@@ -86,6 +87,20 @@ public class WebServiceCollector extends URLCollector {
 		}
 	}
 	
+	/**
+	 * Adds the SOAP request XML to the probe executed by the shared probe engine
+	 * @param p the probe being created
+	 */
+	protected void configureProbe(HttpProbe p){
+		if(getWsStyle()!=null && getWsStyle().equalsIgnoreCase("SOAP") && requestXML!=null){
+			try {
+				p.setBody(requestXML.getBytes("ISO-8859-1"), REQUEST_MIME_TYPE);
+			}catch(UnsupportedEncodingException uex){
+				throw new IllegalArgumentException("Failed to encode the request XML for collector bean: " + this.getBeanName(), uex);
+			}
+		}
+	}
+	
 	/**
 	 * @return String version of Helios WebServiceCollector
 	 */
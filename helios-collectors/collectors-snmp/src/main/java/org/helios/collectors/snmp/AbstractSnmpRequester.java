@@ -25,6 +25,7 @@
 
 package org.helios.collectors.snmp;
 
+import org.helios.collectors.snmp.engine.SnmpOperation;
 import org.opennms.protocols.snmp.SnmpPduRequest;
 
 /**
@@ -107,6 +108,29 @@ public abstract class AbstractSnmpRequester implements IHeliosSnmpRequester {
 		timeoutError = true;
 	}
 
+	/**
+	 * Clears the error and timeout indicators ahead of a new request
+	 */
+	protected	void	clearErrors() {
+		errorCode = 0;
+		error = false;
+		timeoutError = false;
+	}
+	
+	/**
+	 * Copies the outcome of a completed engine operation
+	 * onto the error and timeout indicators
+	 * @param op The completed operation
+	 */
+	protected	void	applyStatus(SnmpOperation op) {
+		if(op.isTimedOut())
+			setTimeoutError();
+		else if(op.getErrorStatus() != 0)
+			setError(op.getErrorStatus());
+		else if(op.getFailure() != null)
+			setError(-1);
+	}
+
 	/* (non-Javadoc)
 	 * @see org.helios.snmp.IHeliosSnmpRequester#getRequest()
 	 */
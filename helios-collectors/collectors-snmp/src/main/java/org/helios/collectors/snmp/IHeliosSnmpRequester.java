@@ -25,6 +25,9 @@
 
 package org.helios.collectors.snmp;
 
+import org.helios.collectors.snmp.engine.SnmpEngine;
+import org.helios.collectors.snmp.engine.SnmpOperation;
+import org.helios.collectors.snmp.engine.SnmpTarget;
 import org.opennms.protocols.snmp.SnmpPduPacket;
 import org.opennms.protocols.snmp.SnmpPduRequest;
 import org.opennms.protocols.snmp.SnmpSession;
@@ -121,4 +124,14 @@ public interface IHeliosSnmpRequester {
 	 * @return
 	 */
 	public	Object	executeRequest(SnmpSession session) throws Exception;
+	
+	/**
+	 * Starts the request on the shared non-blocking engine and
+	 * returns immediately. The results are applied to this requester
+	 * before the returned operation signals completion.
+	 * @param engine The engine to execute on
+	 * @param target The agent to execute against
+	 * @return the started operation
+	 */
+	public	SnmpOperation	executeRequest(SnmpEngine engine, SnmpTarget target);
 }
@@ -30,6 +30,11 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
+import org.helios.collectors.snmp.engine.SnmpBer;
+import org.helios.collectors.snmp.engine.SnmpEngine;
+import org.helios.collectors.snmp.engine.SnmpGetOperation;
+import org.helios.collectors.snmp.engine.SnmpOperation;
+import org.helios.collectors.snmp.engine.SnmpTarget;
 import org.helios.collectors.snmp.request.SnmpSingleValueRequest;
 import org.opennms.protocols.snmp.SnmpPduBulk;
 import org.opennms.protocols.snmp.SnmpPduPacket;
@@ -98,6 +103,34 @@ public class SnmpBulkGetRequester extends SnmpGetRequester {
 
 		return (success == true ? getRequestList(): null);
 	}
+	/**
+	 * Issues the scalar fetch as concurrent GETNEXT PDUs, the equivalent
+	 * of a GETBULK with no repetitions, and maps the varbinds back onto
+	 * the requests once they have all arrived
+	 * @see org.helios.collectors.snmp.SnmpGetRequester#executeRequest(org.helios.collectors.snmp.engine.SnmpEngine, org.helios.collectors.snmp.engine.SnmpTarget)
+	 */
+	@Override
+	public SnmpOperation executeRequest(SnmpEngine engine, SnmpTarget target) {
+		clearErrors();
+		getPsduBinding();
+		List<SnmpSingleValueRequest> requestList = getRequestList();
+		String[] oids = new String[requestList.size()];
+		for(int i = 0; i < oids.length; i++) {
+			oids[i] = requestList.get(i).getOid();
+		}
+		for(SnmpSingleValueRequest req:getResultList())
+			req.setResult(null);
+		return new SnmpGetOperation(target, SnmpBer.GETNEXT, oids) {
+			@Override
+			protected void completed() {
+				for(SnmpVarBind vb:getResults()) {
+					if(vb != null)
+						setResult(vb);
+				}
+				applyStatus(this);
+			}
+		}.start(engine);
+	}
 	/* (non-Javadoc)
 	 * @see org.helios.collectors.snmp.SnmpGetRequester#setResult(org.opennms.protocols.snmp.SnmpVarBind)
 	 */
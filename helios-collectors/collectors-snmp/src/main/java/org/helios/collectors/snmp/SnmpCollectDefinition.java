@@ -32,6 +32,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.apache.log4j.Logger;
+import org.helios.collectors.snmp.engine.SnmpEngine;
+import org.helios.collectors.snmp.engine.SnmpOperation;
+import org.helios.collectors.snmp.engine.SnmpTarget;
 import org.helios.collectors.snmp.request.AbstractSnmpRequest;
 import org.helios.collectors.snmp.request.SnmpComplexIndexedTableRequest;
 import org.helios.collectors.snmp.request.SnmpDefaultRenderer;
@@ -143,12 +146,55 @@ public class SnmpCollectDefinition implements java.io.Serializable{
 	 */
 	public	void	processFirstTime(SnmpSession session) throws Exception{
 		log.debug("Extending Table Processing");
+		if( simpleList != null && simpleList.size()>0) {
+			for(SnmpPackage ssp:simpleList)
+				ssp.getRequester.executeRequest(session);
+		}
+		if( complexList != null && complexList.size() > 0 ) {
+			for(SnmpPackage csp:complexList)
+				csp.walkRequester.executeRequest(session);
+		}
+		extendRequesters();
+	}
+	
+	/**
+	 * Fetches every table index through the engine concurrently,
+	 * waits for them all, then extends the requesters as above
+	 * @param engine The engine to execute on
+	 * @param target The agent to execute against
+	 * @param timeout The maximum time to wait for the indexes in ms.
+	 * @throws Exception
+	 */
+	public	void	processFirstTime(SnmpEngine engine, SnmpTarget target, long timeout) throws Exception{
+		log.debug("Extending Table Processing");
+		List<SnmpOperation> ops = new ArrayList<SnmpOperation>();
+		if( simpleList != null && simpleList.size()>0) {
+			for(SnmpPackage ssp:simpleList)
+				ops.add(ssp.getRequester.executeRequest(engine, target));
+		}
+		if( complexList != null && complexList.size() > 0 ) {
+			for(SnmpPackage csp:complexList)
+				ops.add(csp.walkRequester.executeRequest(engine, target));
+		}
+		long deadline = System.currentTimeMillis() + timeout;
+		for(SnmpOperation op:ops) {
+			if(!op.await(Math.max(1, deadline - System.currentTimeMillis())))
+				throw new Exception("Timed out fetching table indexes from ["+target+"]");
+		}
+		extendRequesters();
+	}
+	
+	/**
+	 * Resolves the fetched table indexes into concrete
+	 * requests and adds them to the collection requesters
+	 * @throws Exception
+	 */
+	protected	void	extendRequesters() throws Exception{
 		try {
 			if( simpleList != null && simpleList.size()>0) {
 				log.info("Processing Simple Table Indexes");
 				int	count=0;
 				for(SnmpPackage ssp:simpleList) {
-					ssp.getRequester.executeRequest(session);
 					String	val = ssp.getRequester.getRequestResults().get(0).getResultValue();
 					List<SnmpSingleValueRequest> lr =ssp.stableRequest.processFilters(val);
 					if(currentSnmpVersion == SnmpSMI.SNMPV1) {
@@ -178,7 +224,6 @@ public class SnmpCollectDefinition implements java.io.Serializable{
 				int	count = 0;
 				log.info("Processing Complex Table Indexes");
 				for(SnmpPackage csp:complexList) {
-					csp.walkRequester.executeRequest(session);
 					List<SnmpSingleValueRequest> lr=csp.ctableRequest.processFilters(csp.walkRequester);
 					if(currentSnmpVersion == SnmpSMI.SNMPV1) {
 						SnmpGetRequester gr = (SnmpGetRequester)oidList.get("BULKGET");
@@ -35,10 +35,15 @@ import org.apache.log4j.Logger;
 import org.helios.collectors.AbstractCollector;
 import org.helios.collectors.CollectionResult;
 import org.helios.collectors.exceptions.CollectorStartException;
+import org.helios.collectors.snmp.engine.SnmpEngine;
+import org.helios.collectors.snmp.engine.SnmpOperation;
+import org.helios.collectors.snmp.engine.SnmpTarget;
 import org.helios.collectors.snmp.request.AbstractSnmpRequest;
 import org.helios.collectors.snmp.request.SnmpDefaultRenderer;
 import org.helios.collectors.snmp.request.SnmpSingleValueRequest;
+import org.helios.jmx.dynamic.annotations.JMXAttribute;
 import org.helios.jmx.dynamic.annotations.JMXManagedObject;
+import org.helios.jmx.dynamic.annotations.options.AttributeMutabilityOption;
 import org.helios.ot.subtracer.VirtualTracer;
 import org.helios.ot.type.MetricType;
 import org.opennms.protocols.snmp.SnmpPeer;
@@ -89,6 +94,22 @@ public class SnmpCollector extends AbstractCollector {
 	/** SNMP Agent ping oid				*/
 	private		String			pingOid=null;
 	private		boolean			connected=false;
+	/** Execute requests through the shared non-blocking engine	*/
+	private		boolean			asynchronous=true;
+	/** Per attempt request timeout in ms.	*/
+	private		long			timeout=1000;
+	/** Retransmissions per request	*/
+	private		int				retries=1;
+	/** Maximum requests in flight against the agent	*/
+	private		int				maxInFlight=4;
+	/** Ceiling for the adaptive GETBULK max-repetitions	*/
+	private		int				maxRepetitions=64;
+	/** Maximum time to wait for all requests of a collection in ms.	*/
+	private		long			collectTimeout=30000;
+	/** The shared SNMP engine	*/
+	private		SnmpEngine		engine = null;
+	/** The engine's view of the agent	*/
+	private		SnmpTarget		target = null;
 	
 	/**	Helios Virtual Tracer for this particular host	*/
 	private	VirtualTracer vtracer = null;
@@ -132,7 +153,16 @@ public class SnmpCollector extends AbstractCollector {
 		
 		//	Establish session and peer
 		try {
-			session = new SnmpSession(getPeer());
+			if(asynchronous) {
+				engine = SnmpEngine.getInstance();
+				target = new SnmpTarget(ipAddress, port, snmpVersion, communityName);
+				target.setTimeout(timeout);
+				target.setRetries(retries);
+				target.setMaxInFlight(maxInFlight);
+				target.setMaxRepetitions(maxRepetitions);
+			}
+			else
+				session = new SnmpSession(getPeer());
 			String	vHost = getHostName();
 			String	vAgent=":"+Integer.toString(getPort())+"-SNMP";
 			log.info("Starting vTracer Using vHost ["+vHost+"] with vAgent ["+vAgent+"]");
@@ -149,7 +179,8 @@ public class SnmpCollector extends AbstractCollector {
 		// Test the connectivity of an agent with a single shot get
 		
 		if( performOneGet() == null) {
-			session.close();
+			if(session != null)
+				session.close();
 			log.error("Closing session due to startup failure");
 			throw new CollectorStartException("Unable to contact agent at ["
 					+getHostName()+"]");
@@ -171,8 +202,12 @@ public class SnmpCollector extends AbstractCollector {
 		if(connected == true) {
 			try {
 				if(log.isDebugEnabled())log.debug("Executing SNMP collect ... for "+getHostName());
-				for(IHeliosSnmpRequester req:walker.getRequesters())
+				if(asynchronous)
+					executeAsync();
+				else {
+					for(IHeliosSnmpRequester req:walker.getRequesters())
 						req.executeRequest(session);
+				}
 				log.info("["+getHostName()+"] completed collect scan in ["+(System.currentTimeMillis()-t1)+"] ms");
 				
 				if(log.isDebugEnabled())log.debug("Executing SNMP trace ...");
@@ -191,7 +226,10 @@ public class SnmpCollector extends AbstractCollector {
 				if( firstPass==false) {
 					try {
 						if(log.isDebugEnabled())log.debug("Executing SNMP first pass ... for "+getHostName());
-						walker.processFirstTime(session);
+						if(asynchronous)
+							walker.processFirstTime(engine, target, collectTimeout);
+						else
+							walker.processFirstTime(session);
 					}
 					catch (Exception e) {
 						e.printStackTrace();
@@ -214,6 +252,23 @@ public class SnmpCollector extends AbstractCollector {
 		return result;
 	}
 
+	/**
+	 * Starts every requester on the shared engine at once and waits
+	 * for them all, so a collection costs roughly the slowest walk
+	 * rather than the sum of every round trip
+	 * @throws Exception thrown if the requests do not all complete in time
+	 */
+	private	void	executeAsync() throws Exception {
+		List<SnmpOperation> ops = new ArrayList<SnmpOperation>();
+		for(IHeliosSnmpRequester req:walker.getRequesters())
+			ops.add(req.executeRequest(engine, target));
+		long	deadline = System.currentTimeMillis()+collectTimeout;
+		for(SnmpOperation op:ops) {
+			if(!op.await(Math.max(1, deadline-System.currentTimeMillis())))
+				throw new Exception("["+getHostName()+"] collection did not complete in ["+collectTimeout+"] ms");
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see org.helios.collectors.AbstractCollector#getCollectorVersion()
 	 */
@@ -237,6 +292,8 @@ public class SnmpCollector extends AbstractCollector {
 	 */
 	private	void	traceGets(SnmpGetRequester req) {
 		for(SnmpSingleValueRequest reqs:req.getRequestResults()) {
+			if(reqs.hasResult()==false)
+				continue;
 			MetricType	mt = reqs.getResultType();
 			String		val = reqs.getResultValue();
 			if(log.isDebugEnabled())log.debug(
@@ -266,7 +323,13 @@ public class SnmpCollector extends AbstractCollector {
 		oids.add(new SnmpSingleValueRequest(oid,new SnmpDefaultRenderer()));
 		IHeliosSnmpRequester req = new SnmpGetRequester(oids);
 		try {
-			result = req.executeRequest(session);
+			if(asynchronous) {
+				SnmpOperation op = req.executeRequest(engine, target);
+				if(op.await(timeout*(retries+1)+1000) && req.isError()==false && req.isTimeout()==false && oids.get(0).hasResult())
+					result = req.getResult();
+			}
+			else
+				result = req.executeRequest(session);
 		} catch (Exception e) {
 			e.printStackTrace();
 			result=null;
@@ -281,8 +344,8 @@ public class SnmpCollector extends AbstractCollector {
 	public SnmpPeer	getPeer() {
 		SnmpPeer	peer = new SnmpPeer(this.getIpAddress());
 		peer.setPort(this.getPort());
-		peer.setRetries(1);
-		peer.setTimeout(1000);
+		peer.setRetries(this.retries);
+		peer.setTimeout((int)this.timeout);
         peer.getParameters().setVersion(this.getSnmpVersion()); 
         peer.getParameters().setReadCommunity(this.getCommunityName()); 
 		return peer;
@@ -301,6 +364,16 @@ public class SnmpCollector extends AbstractCollector {
 	public String getHostName() {
 		return hostName;
 	}
+	
+	/**
+	 * Returns the agent host name so concurrent collections against it are bounded by the CollectionExecutor
+	 * @return the target host
+	 * @see org.helios.collectors.AbstractCollector#getTargetHost()
+	 */
+	@Override
+	public String getTargetHost() {
+		return hostName;
+	}
 
 	/**
 	 * @param hostName the hostName to set
@@ -372,5 +445,113 @@ public class SnmpCollector extends AbstractCollector {
 		this.pingOid = pingOid;
 	}
 
+	/**
+	 * @return true if requests run through the shared non-blocking engine
+	 */
+	@JMXAttribute (name="Asynchronous", description="Indicates if requests run through the shared non-blocking SNMP engine", mutability=AttributeMutabilityOption.READ_ONLY)
+	public boolean isAsynchronous() {
+		return asynchronous;
+	}
+
+	/**
+	 * @param asynchronous true to run requests through the shared non-blocking engine
+	 */
+	public void setAsynchronous(boolean asynchronous) {
+		this.asynchronous = asynchronous;
+	}
+
+	/**
+	 * @return the per attempt request timeout in ms.
+	 */
+	@JMXAttribute (name="Timeout", description="The per attempt SNMP request timeout in ms.", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * @param timeout the per attempt request timeout in ms.
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @return the number of retransmissions per request
+	 */
+	@JMXAttribute (name="Retries", description="The number of retransmissions per SNMP request", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getRetries() {
+		return retries;
+	}
+
+	/**
+	 * @param retries the number of retransmissions per request
+	 */
+	public void setRetries(int retries) {
+		this.retries = retries;
+	}
+
+	/**
+	 * @return the maximum number of requests in flight against the agent
+	 */
+	@JMXAttribute (name="MaxInFlight", description="The maximum number of SNMP requests in flight against the agent", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * @param maxInFlight the maximum number of requests in flight against the agent
+	 */
+	public void setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * @return the ceiling for the adaptive GETBULK max-repetitions
+	 */
+	@JMXAttribute (name="MaxRepetitions", description="The ceiling for the adaptive GETBULK max-repetitions", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getMaxRepetitions() {
+		return maxRepetitions;
+	}
+
+	/**
+	 * @param maxRepetitions the ceiling for the adaptive GETBULK max-repetitions
+	 */
+	public void setMaxRepetitions(int maxRepetitions) {
+		this.maxRepetitions = maxRepetitions;
+	}
+
+	/**
+	 * @return the current adaptive GETBULK max-repetitions
+	 */
+	@JMXAttribute (name="CurrentRepetitions", description="The current adaptive GETBULK max-repetitions for the agent", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getCurrentRepetitions() {
+		return target==null ? 0 : target.getRepetitions();
+	}
+
+	/**
+	 * @return the maximum time to wait for a collection in ms.
+	 */
+	@JMXAttribute (name="CollectTimeout", description="The maximum time to wait for all requests of a collection in ms.", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getCollectTimeout() {
+		return collectTimeout;
+	}
+
+	/**
+	 * @param collectTimeout the maximum time to wait for a collection in ms.
+	 */
+	public void setCollectTimeout(long collectTimeout) {
+		this.collectTimeout = collectTimeout;
+	}
+
+	/**
+	 * Returns the collection timeout so the CollectionExecutor's deadline leaves room for it
+	 * @return the maximum time to wait for a collection in ms.
+	 * @see org.helios.collectors.AbstractCollector#getInternalCollectTimeout()
+	 */
+	@Override
+	protected long getInternalCollectTimeout() {
+		return collectTimeout;
+	}
+
 
 }
@@ -29,7 +29,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.helios.collectors.snmp.engine.SnmpEngine;
+import org.helios.collectors.snmp.engine.SnmpOperation;
+import org.helios.collectors.snmp.engine.SnmpTarget;
+import org.helios.collectors.snmp.engine.SnmpWalkOperation;
 import org.helios.collectors.snmp.request.SnmpSingleValueRequest;
+import org.opennms.protocols.snmp.SnmpVarBind;
 
 /**
  * <p>Title: SnmpExtendedBulkRequester</p>
@@ -56,6 +61,39 @@ public class SnmpExtendedBulkRequester extends SnmpBulkGetRequester {
 		this.baseOids=prototype;
 	}
 
+	/**
+	 * Walks each table column concurrently with adaptive GETBULKs rather
+	 * than asking for the whole table in a single PDU, so large tables
+	 * are not lost to tooBig responses. Rows that were not resolved
+	 * when the table was first indexed are ignored.
+	 * @see org.helios.collectors.snmp.SnmpBulkGetRequester#executeRequest(org.helios.collectors.snmp.engine.SnmpEngine, org.helios.collectors.snmp.engine.SnmpTarget)
+	 */
+	@Override
+	public SnmpOperation executeRequest(SnmpEngine engine, SnmpTarget target) {
+		clearErrors();
+		getPsduBinding();
+		for(SnmpSingleValueRequest req:getResultList())
+			req.setResult(null);
+		String[] columns = new String[baseOids.size()];
+		for(int i = 0; i < columns.length; i++) {
+			columns[i] = baseOids.get(i).getOid();
+		}
+		return new SnmpWalkOperation(target, columns) {
+			@Override
+			protected void completed() {
+				Map<String, SnmpSingleValueRequest> map = getOidMap();
+				for(int i = 0; i < getColumnCount(); i++) {
+					for(SnmpVarBind vb:getResults(i)) {
+						SnmpSingleValueRequest req = map.get(vb.getName().toString());
+						if(req != null)
+							req.setResult(vb);
+					}
+				}
+				applyStatus(this);
+			}
+		}.start(engine);
+	}
+
 	/* (non-Javadoc)
 	 * @see org.helios.collectors.snmp.SnmpBulkGetRequester#getMaxRepitition()
 	 */
@@ -27,6 +27,11 @@ package org.helios.collectors.snmp;
 
 import java.util.List;
 import org.apache.log4j.Logger;
+import org.helios.collectors.snmp.engine.SnmpBer;
+import org.helios.collectors.snmp.engine.SnmpEngine;
+import org.helios.collectors.snmp.engine.SnmpGetOperation;
+import org.helios.collectors.snmp.engine.SnmpOperation;
+import org.helios.collectors.snmp.engine.SnmpTarget;
 import org.helios.collectors.snmp.request.SnmpSingleValueRequest;
 import org.opennms.protocols.snmp.SnmpPduPacket;
 import org.opennms.protocols.snmp.SnmpPduRequest;
@@ -124,6 +129,32 @@ public class SnmpGetRequester extends AbstractSnmpRequester {
 		return (success == true ? this.requests: null);
 	}
 	
+	/**
+	 * Issues all the GETs at once, packed into as few PDUs as the
+	 * target allows, instead of one round trip per OID
+	 * @see org.helios.collectors.snmp.IHeliosSnmpRequester#executeRequest(org.helios.collectors.snmp.engine.SnmpEngine, org.helios.collectors.snmp.engine.SnmpTarget)
+	 */
+	public SnmpOperation executeRequest(SnmpEngine engine, SnmpTarget target) {
+		clearErrors();
+		String[] oids = new String[this.requests.size()];
+		for(int i = 0; i < oids.length; i++) {
+			SnmpSingleValueRequest req = this.requests.get(i);
+			req.setResult(null);
+			oids[i] = req.getOid();
+		}
+		return new SnmpGetOperation(target, SnmpBer.GET, oids) {
+			@Override
+			protected void completed() {
+				SnmpVarBind[] results = getResults();
+				for(int i = 0; i < results.length; i++) {
+					if(results[i] != null)
+						requests.get(i).setResult(results[i]);
+				}
+				applyStatus(this);
+			}
+		}.start(engine);
+	}
+	
 	/* (non-Javadoc)
 	 * @see org.helios.collectors.snmp.IHeliosSnmpRequester#getResultCount()
 	 */
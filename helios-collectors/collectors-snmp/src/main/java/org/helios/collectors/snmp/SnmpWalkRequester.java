@@ -29,6 +29,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.log4j.Logger;
+import org.helios.collectors.snmp.engine.SnmpEngine;
+import org.helios.collectors.snmp.engine.SnmpOperation;
+import org.helios.collectors.snmp.engine.SnmpTarget;
+import org.helios.collectors.snmp.engine.SnmpWalkOperation;
 import org.opennms.protocols.snmp.SnmpObjectId;
 import org.opennms.protocols.snmp.SnmpPduPacket;
 import org.opennms.protocols.snmp.SnmpPduRequest;
@@ -100,6 +104,24 @@ public class SnmpWalkRequester extends AbstractSnmpRequester {
 		return this.results;
 	}
 
+	/**
+	 * Walks the subtree through the engine using GETBULK for v2c
+	 * agents, instead of parking the caller for every GETNEXT
+	 * @see org.helios.collectors.snmp.IHeliosSnmpRequester#executeRequest(org.helios.collectors.snmp.engine.SnmpEngine, org.helios.collectors.snmp.engine.SnmpTarget)
+	 */
+	public SnmpOperation executeRequest(SnmpEngine engine, SnmpTarget target) {
+		clearErrors();
+		results.clear();
+		return new SnmpWalkOperation(target, this.startOid) {
+			@Override
+			protected void completed() {
+				SnmpWalkRequester.this.results.addAll(getResults(0));
+				applyStatus(this);
+				log.info("Completed WALK of ["+startOid+"] in ["+getElapsed()+"] ms");
+			}
+		}.start(engine);
+	}
+
 	/* (non-Javadoc)
 	 * @see org.helios.collectors.snmp.IHeliosSnmpRequester#getResultCount()
 	 */
@@ -0,0 +1,556 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.collectors.snmp.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+
+import org.opennms.protocols.snmp.SnmpCounter32;
+import org.opennms.protocols.snmp.SnmpCounter64;
+import org.opennms.protocols.snmp.SnmpEndOfMibView;
+import org.opennms.protocols.snmp.SnmpGauge32;
+import org.opennms.protocols.snmp.SnmpIPAddress;
+import org.opennms.protocols.snmp.SnmpInt32;
+import org.opennms.protocols.snmp.SnmpNoSuchInstance;
+import org.opennms.protocols.snmp.SnmpNoSuchObject;
+import org.opennms.protocols.snmp.SnmpNull;
+import org.opennms.protocols.snmp.SnmpObjectId;
+import org.opennms.protocols.snmp.SnmpOctetString;
+import org.opennms.protocols.snmp.SnmpOpaque;
+import org.opennms.protocols.snmp.SnmpSyntax;
+import org.opennms.protocols.snmp.SnmpTimeTicks;
+import org.opennms.protocols.snmp.SnmpUInt32;
+import org.opennms.protocols.snmp.SnmpVarBind;
+
+/**
+ * <p>Title: SnmpBer</p>
+ * <p>Description: Minimal BER codec for SNMP v1 and v2c community messages. Encodes GET, GETNEXT and GETBULK
+ * requests into a single datagram payload and decodes response PDUs straight from the receive buffer into
+ * JoeSNMP {@link SnmpVarBind}s so the existing renderers and requesters can consume them unchanged.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.collectors.snmp.engine.SnmpBer</code></p>
+ */
+
+public class SnmpBer {
+	/** The GET PDU type */
+	public static final int GET = 0xA0;
+	/** The GETNEXT PDU type */
+	public static final int GETNEXT = 0xA1;
+	/** The RESPONSE PDU type */
+	public static final int RESPONSE = 0xA2;
+	/** The GETBULK PDU type */
+	public static final int GETBULK = 0xA5;
+	/** The REPORT PDU type */
+	public static final int REPORT = 0xA8;
+	
+	/** The error status for a response that would not fit in a single message */
+	public static final int ERR_TOO_BIG = 1;
+	/** The v1 error status for an unknown OID */
+	public static final int ERR_NO_SUCH_NAME = 2;
+	
+	/** BER tag for an integer */
+	protected static final int TAG_INTEGER = 0x02;
+	/** BER tag for an octet string */
+	protected static final int TAG_OCTET_STRING = 0x04;
+	/** BER tag for a null */
+	protected static final int TAG_NULL = 0x05;
+	/** BER tag for an object identifier */
+	protected static final int TAG_OID = 0x06;
+	/** BER tag for a sequence */
+	protected static final int TAG_SEQUENCE = 0x30;
+	/** SMI tag for an IP address */
+	protected static final int TAG_IPADDRESS = 0x40;
+	/** SMI tag for a 32 bit counter */
+	protected static final int TAG_COUNTER32 = 0x41;
+	/** SMI tag for a 32 bit gauge */
+	protected static final int TAG_GAUGE32 = 0x42;
+	/** SMI tag for time ticks */
+	protected static final int TAG_TIMETICKS = 0x43;
+	/** SMI tag for opaque data */
+	protected static final int TAG_OPAQUE = 0x44;
+	/** SMI tag for a 64 bit counter */
+	protected static final int TAG_COUNTER64 = 0x46;
+	/** SMI tag for an unsigned 32 bit integer */
+	protected static final int TAG_UINTEGER32 = 0x47;
+	/** v2 exception tag for noSuchObject */
+	protected static final int TAG_NO_SUCH_OBJECT = 0x80;
+	/** v2 exception tag for noSuchInstance */
+	protected static final int TAG_NO_SUCH_INSTANCE = 0x81;
+	/** v2 exception tag for endOfMibView */
+	protected static final int TAG_END_OF_MIB_VIEW = 0x82;
+	
+	/**
+	 * <p>Title: Response</p>
+	 * <p>Description: A decoded response PDU</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.collectors.snmp.engine.SnmpBer.Response</code></p>
+	 */
+	public static class Response {
+		/** The PDU type */
+		public final int pduType;
+		/** The request id the response correlates to */
+		public final int requestId;
+		/** The error status */
+		public final int errorStatus;
+		/** The one based index of the varbind the error refers to */
+		public final int errorIndex;
+		/** The returned varbinds */
+		public final SnmpVarBind[] varBinds;
+		
+		/**
+		 * Creates a new Response
+		 * @param pduType The PDU type
+		 * @param requestId The request id
+		 * @param errorStatus The error status
+		 * @param errorIndex The error index
+		 * @param varBinds The returned varbinds
+		 */
+		protected Response(int pduType, int requestId, int errorStatus, int errorIndex, SnmpVarBind[] varBinds) {
+			this.pduType = pduType;
+			this.requestId = requestId;
+			this.errorStatus = errorStatus;
+			this.errorIndex = errorIndex;
+			this.varBinds = varBinds;
+		}
+	}
+	
+	/**
+	 * Encodes a request message
+	 * @param version The SNMP version as the wire value (0 for v1, 1 for v2c)
+	 * @param community The community name bytes
+	 * @param pduType The PDU type, one of {@link #GET}, {@link #GETNEXT} or {@link #GETBULK}
+	 * @param requestId The request id
+	 * @param nonRepeaters The GETBULK non repeaters (ignored for other PDU types)
+	 * @param maxRepetitions The GETBULK max repetitions (ignored for other PDU types)
+	 * @param oids The OIDs to request, each as an array of arcs
+	 * @return the encoded message
+	 */
+	public static byte[] encodeRequest(int version, byte[] community, int pduType, int requestId, int nonRepeaters, int maxRepetitions, int[]... oids) {
+		ByteArrayOutputStream vbs = new ByteArrayOutputStream(oids.length * 24);
+		for(int[] oid: oids) {
+			byte[] name = encodeOid(oid);
+			writeHeader(vbs, TAG_SEQUENCE, name.length + 2 + lengthOfLength(name.length) + 1);
+			writeHeader(vbs, TAG_OID, name.length);
+			vbs.write(name, 0, name.length);
+			vbs.write(TAG_NULL);
+			vbs.write(0);
+		}
+		boolean bulk = pduType==GETBULK;
+		ByteArrayOutputStream pdu = new ByteArrayOutputStream(vbs.size() + 24);
+		writeInteger(pdu, requestId);
+		writeInteger(pdu, bulk ? nonRepeaters : 0);
+		writeInteger(pdu, bulk ? maxRepetitions : 0);
+		writeHeader(pdu, TAG_SEQUENCE, vbs.size());
+		pdu.write(vbs.toByteArray(), 0, vbs.size());
+		ByteArrayOutputStream msg = new ByteArrayOutputStream(pdu.size() + community.length + 16);
+		writeInteger(msg, version);
+		writeHeader(msg, TAG_OCTET_STRING, community.length);
+		msg.write(community, 0, community.length);
+		writeHeader(msg, pduType, pdu.size());
+		msg.write(pdu.toByteArray(), 0, pdu.size());
+		ByteArrayOutputStream out = new ByteArrayOutputStream(msg.size() + 6);
+		writeHeader(out, TAG_SEQUENCE, msg.size());
+		out.write(msg.toByteArray(), 0, msg.size());
+		return out.toByteArray();
+	}
+	
+	
+	/**
+	 * Decodes a message from the passed buffer
+	 * @param buf The buffer containing the datagram
+	 * @param offset The offset of the message in the buffer
+	 * @param length The length of the message
+	 * @return the decoded PDU
+	 * @throws IllegalArgumentException thrown if the message is malformed or truncated
+	 */
+	public static Response decode(byte[] buf, int offset, int length) {
+		try {
+			Reader r = new Reader(buf, offset, offset + length);
+			r.limit = r.enter(TAG_SEQUENCE);
+			r.readInteger(); // version
+			r.pos = r.enter(TAG_OCTET_STRING); // community
+			int pduType = r.tag();
+			r.length();
+			int requestId = r.readInteger();
+			int errorStatus = r.readInteger();
+			int errorIndex = r.readInteger();
+			int vbEnd = r.enter(TAG_SEQUENCE);
+			SnmpVarBind[] vbs = new SnmpVarBind[8];
+			int count = 0;
+			while(r.pos < vbEnd) {
+				int end = r.enter(TAG_SEQUENCE);
+				SnmpObjectId name = new SnmpObjectId(r.readOid());
+				SnmpSyntax value = r.readValue();
+				r.pos = end;
+				if(count==vbs.length) {
+					SnmpVarBind[] tmp = new SnmpVarBind[count*2];
+					System.arraycopy(vbs, 0, tmp, 0, count);
+					vbs = tmp;
+				}
+				vbs[count++] = new SnmpVarBind(name, value);
+			}
+			if(count!=vbs.length) {
+				SnmpVarBind[] tmp = new SnmpVarBind[count];
+				System.arraycopy(vbs, 0, tmp, 0, count);
+				vbs = tmp;
+			}
+			return new Response(pduType, requestId, errorStatus, errorIndex, vbs);
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Truncated SNMP message", e);
+		}
+	}
+	
+	/**
+	 * Parses a dotted OID string, with or without a leading dot, into its arcs
+	 * @param oid The OID string
+	 * @return the OID arcs
+	 */
+	public static int[] parseOid(String oid) {
+		if(oid==null) throw new IllegalArgumentException("The passed OID was null", new Throwable());
+		String s = oid.trim();
+		if(s.startsWith(".")) s = s.substring(1);
+		if(s.length()==0) throw new IllegalArgumentException("The passed OID was empty", new Throwable());
+		String[] frags = s.split("\\.");
+		int[] arcs = new int[frags.length];
+		try {
+			for(int i = 0; i < frags.length; i++) {
+				arcs[i] = (int)Long.parseLong(frags[i]);
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid OID [" + oid + "]", e);
+		}
+		return arcs;
+	}
+	
+	/**
+	 * Determines if the passed OID is strictly under the passed root
+	 * @param root The subtree root OID
+	 * @param oid The OID to test
+	 * @return true if <code>oid</code> is a descendant of <code>root</code>
+	 */
+	public static boolean isUnder(int[] root, int[] oid) {
+		if(oid.length <= root.length) return false;
+		for(int i = 0; i < root.length; i++) {
+			if(root[i]!=oid[i]) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Compares two OIDs in lexicographic order, treating each arc as unsigned
+	 * @param a The first OID
+	 * @param b The second OID
+	 * @return a negative number, zero or a positive number if <code>a</code> is less than, equal to or greater than <code>b</code>
+	 */
+	public static int compare(int[] a, int[] b) {
+		int n = Math.min(a.length, b.length);
+		for(int i = 0; i < n; i++) {
+			if(a[i]!=b[i]) {
+				return (a[i] & 0xFFFFFFFFL) < (b[i] & 0xFFFFFFFFL) ? -1 : 1;
+			}
+		}
+		return a.length - b.length;
+	}
+	
+	/**
+	 * Encodes the content octets of an OID
+	 * @param arcs The OID arcs
+	 * @return the encoded content octets
+	 */
+	protected static byte[] encodeOid(int[] arcs) {
+		if(arcs.length < 2) throw new IllegalArgumentException("An OID must have at least two arcs", new Throwable());
+		ByteArrayOutputStream out = new ByteArrayOutputStream(arcs.length + 4);
+		writeBase128(out, arcs[0] * 40L + (arcs[1] & 0xFFFFFFFFL));
+		for(int i = 2; i < arcs.length; i++) {
+			writeBase128(out, arcs[i] & 0xFFFFFFFFL);
+		}
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Writes a base 128 encoded sub identifier
+	 * @param out The output to write to
+	 * @param value The unsigned value to write
+	 */
+	protected static void writeBase128(ByteArrayOutputStream out, long value) {
+		int shift = 63 - Long.numberOfLeadingZeros(value | 1);
+		shift -= shift % 7;
+		for(; shift > 0; shift -= 7) {
+			out.write((int)((value >>> shift) & 0x7F) | 0x80);
+		}
+		out.write((int)(value & 0x7F));
+	}
+	
+	/**
+	 * Writes an integer TLV in minimal two's complement form
+	 * @param out The output to write to
+	 * @param value The value to write
+	 */
+	protected static void writeInteger(ByteArrayOutputStream out, int value) {
+		int len = 4;
+		while(len > 1) {
+			int top = value >> ((len-1)*8 - 1);
+			if(top!=0 && top!=-1) break;
+			len--;
+		}
+		writeHeader(out, TAG_INTEGER, len);
+		for(int i = len-1; i >= 0; i--) {
+			out.write((value >> (i*8)) & 0xFF);
+		}
+	}
+	
+	/**
+	 * Writes a tag and a definite length
+	 * @param out The output to write to
+	 * @param tag The tag
+	 * @param length The content length
+	 */
+	protected static void writeHeader(ByteArrayOutputStream out, int tag, int length) {
+		out.write(tag);
+		if(length < 0x80) {
+			out.write(length);
+		} else {
+			int n = lengthOfLength(length) - 1;
+			out.write(0x80 | n);
+			for(int i = n-1; i >= 0; i--) {
+				out.write((length >> (i*8)) & 0xFF);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of bytes needed to encode the passed definite length
+	 * @param length The content length
+	 * @return the number of length octets
+	 */
+	protected static int lengthOfLength(int length) {
+		if(length < 0x80) return 1;
+		if(length < 0x100) return 2;
+		if(length < 0x10000) return 3;
+		if(length < 0x1000000) return 4;
+		return 5;
+	}
+	
+	/**
+	 * <p>Title: Reader</p>
+	 * <p>Description: A bounds checked cursor over a received message</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.collectors.snmp.engine.SnmpBer.Reader</code></p>
+	 */
+	protected static class Reader {
+		/** The underlying buffer */
+		protected final byte[] buf;
+		/** The current position */
+		protected int pos;
+		/** The read limit */
+		protected int limit;
+		
+		/**
+		 * Creates a new Reader
+		 * @param buf The underlying buffer
+		 * @param pos The start position
+		 * @param limit The read limit
+		 */
+		protected Reader(byte[] buf, int pos, int limit) {
+			this.buf = buf;
+			this.pos = pos;
+			this.limit = limit;
+		}
+		
+		/**
+		 * Reads the next tag
+		 * @return the tag
+		 */
+		protected int tag() {
+			if(pos >= limit) throw new IllegalArgumentException("Truncated SNMP message", new Throwable());
+			return buf[pos++] & 0xFF;
+		}
+		
+		/**
+		 * Reads a definite length and validates it against the limit
+		 * @return the content length
+		 */
+		protected int length() {
+			int b = buf[pos++] & 0xFF;
+			int len = b;
+			if(b >= 0x80) {
+				int n = b & 0x7F;
+				if(n==0 || n > 4) throw new IllegalArgumentException("Unsupported BER length form [" + b + "]", new Throwable());
+				len = 0;
+				for(int i = 0; i < n; i++) {
+					len = (len << 8) | (buf[pos++] & 0xFF);
+				}
+			}
+			if(len < 0 || pos + len > limit) throw new IllegalArgumentException("BER length [" + len + "] overruns the message", new Throwable());
+			return len;
+		}
+		
+		/**
+		 * Reads a header with the expected tag and positions the cursor at the start of its content
+		 * @param expected The expected tag
+		 * @return the position of the end of the content
+		 */
+		protected int enter(int expected) {
+			int t = tag();
+			if(t!=expected) throw new IllegalArgumentException("Expected BER tag [" + expected + "] but found [" + t + "]", new Throwable());
+			int len = length();
+			return pos + len;
+		}
+		
+		/**
+		 * Reads an integer TLV
+		 * @return the integer value
+		 */
+		protected int readInteger() {
+			int end = enter(TAG_INTEGER);
+			return (int)readSigned(end);
+		}
+		
+		/**
+		 * Reads signed content octets up to the passed end
+		 * @param end The end of the content
+		 * @return the value
+		 */
+		protected long readSigned(int end) {
+			if(end==pos) return 0;
+			long v = buf[pos++];
+			while(pos < end) {
+				v = (v << 8) | (buf[pos++] & 0xFF);
+			}
+			return v;
+		}
+		
+		/**
+		 * Reads unsigned content octets up to the passed end
+		 * @param end The end of the content
+		 * @return the value
+		 */
+		protected long readUnsigned(int end) {
+			long v = 0;
+			while(pos < end) {
+				v = (v << 8) | (buf[pos++] & 0xFF);
+			}
+			return v;
+		}
+		
+		/**
+		 * Reads the content octets up to the passed end
+		 * @param end The end of the content
+		 * @return the content bytes
+		 */
+		protected byte[] readBytes(int end) {
+			byte[] b = new byte[end-pos];
+			System.arraycopy(buf, pos, b, 0, b.length);
+			pos = end;
+			return b;
+		}
+		
+		/**
+		 * Reads an OID TLV
+		 * @return the OID arcs
+		 */
+		protected int[] readOid() {
+			int end = enter(TAG_OID);
+			return readOidContent(end);
+		}
+		
+		/**
+		 * Reads OID content octets up to the passed end
+		 * @param end The end of the content
+		 * @return the OID arcs
+		 */
+		protected int[] readOidContent(int end) {
+			int[] arcs = new int[end - pos + 1];
+			int count = 0;
+			while(pos < end) {
+				long v = 0;
+				int b;
+				do {
+					b = buf[pos++] & 0xFF;
+					v = (v << 7) | (b & 0x7F);
+				} while((b & 0x80)!=0 && pos < end);
+				if(count==0) {
+					int first = v < 80 ? (int)(v / 40) : 2;
+					arcs[count++] = first;
+					arcs[count++] = (int)(v - first*40L);
+				} else {
+					arcs[count++] = (int)v;
+				}
+			}
+			int[] oid = new int[count];
+			System.arraycopy(arcs, 0, oid, 0, count);
+			return oid;
+		}
+		
+		/**
+		 * Reads a varbind value TLV
+		 * @return the JoeSNMP syntax for the value
+		 */
+		protected SnmpSyntax readValue() {
+			int t = tag();
+			int end = length() + pos;
+			switch(t) {
+				case TAG_INTEGER:
+					return new SnmpInt32((int)readSigned(end));
+				case TAG_OCTET_STRING:
+					return new SnmpOctetString(readBytes(end));
+				case TAG_OID:
+					return new SnmpObjectId(readOidContent(end));
+				case TAG_IPADDRESS:
+					return new SnmpIPAddress(readBytes(end));
+				case TAG_COUNTER32:
+					return new SnmpCounter32(readUnsigned(end));
+				case TAG_GAUGE32:
+					return new SnmpGauge32(readUnsigned(end));
+				case TAG_TIMETICKS:
+					return new SnmpTimeTicks(readUnsigned(end));
+				case TAG_OPAQUE:
+					return new SnmpOpaque(readBytes(end));
+				case TAG_COUNTER64:
+					return new SnmpCounter64(new BigInteger(1, readBytes(end)));
+				case TAG_UINTEGER32:
+					return new SnmpUInt32(readUnsigned(end));
+				case TAG_NO_SUCH_OBJECT:
+					pos = end;
+					return new SnmpNoSuchObject();
+				case TAG_NO_SUCH_INSTANCE:
+					pos = end;
+					return new SnmpNoSuchInstance();
+				case TAG_END_OF_MIB_VIEW:
+					pos = end;
+					return new SnmpEndOfMibView();
+				default:
+					pos = end;
+					return new SnmpNull();
+			}
+		}
+	}
+}
@@ -0,0 +1,499 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.collectors.snmp.engine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>Title: SnmpEngine</p>
+ * <p>Description: A shared non-blocking SNMP manager. One datagram channel multiplexes the requests for every
+ * {@link SnmpTarget} and a single I/O thread sends, correlates responses by request id, retransmits on timeout and
+ * hands decoded responses to the owning {@link SnmpOperation}. Each target is allowed a bounded number of requests
+ * in flight; the rest wait in the target's queue until a slot frees up, so one slow agent cannot monopolise the
+ * socket and a collector never parks a thread per request.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.collectors.snmp.engine.SnmpEngine</code></p>
+ */
+
+public class SnmpEngine implements Runnable {
+	/** The shared engine instance */
+	private static volatile SnmpEngine instance = null;
+	/** The shared engine instance lock */
+	private static final Object lock = new Object();
+	
+	/** The default socket receive buffer size */
+	public static final int DEFAULT_RECEIVE_BUFFER = 4 * 1024 * 1024;
+	
+	/** Instance logger */
+	protected final Logger log = Logger.getLogger(getClass());
+	/** The shared datagram channel */
+	protected final DatagramChannel channel;
+	/** The channel selector */
+	protected final Selector selector;
+	/** The channel's selection key */
+	protected final SelectionKey key;
+	/** The I/O thread */
+	protected final Thread ioThread;
+	/** The run flag */
+	protected volatile boolean running = true;
+	/** Requests submitted by operations, drained by the I/O thread */
+	protected final ConcurrentLinkedQueue<Request> submitted = new ConcurrentLinkedQueue<Request>();
+	/** In flight requests keyed by request id. I/O thread only. */
+	protected final Map<Integer, Request> pending = new HashMap<Integer, Request>(1024);
+	/** In flight requests ordered by deadline. Completed entries are discarded lazily. I/O thread only. */
+	protected final PriorityQueue<Request> deadlines = new PriorityQueue<Request>(1024);
+	/** Requests that could not be written because the socket send buffer was full. I/O thread only. */
+	protected final ArrayDeque<Request> backlog = new ArrayDeque<Request>();
+	/** The receive buffer */
+	protected final ByteBuffer receiveBuffer = ByteBuffer.allocate(65536);
+	/** The next request id. I/O thread only. */
+	protected int nextRequestId = new Random().nextInt(0x3FFFFFFF) + 1;
+	
+	/** The number of datagrams sent including retransmissions */
+	protected final AtomicLong sent = new AtomicLong(0L);
+	/** The number of datagrams received */
+	protected final AtomicLong received = new AtomicLong(0L);
+	/** The number of retransmissions */
+	protected final AtomicLong retransmits = new AtomicLong(0L);
+	/** The number of requests that exhausted their retries */
+	protected final AtomicLong timeouts = new AtomicLong(0L);
+	/** The number of responses that matched no in flight request */
+	protected final AtomicLong unmatched = new AtomicLong(0L);
+	/** The number of datagrams that could not be decoded */
+	protected final AtomicLong decodeErrors = new AtomicLong(0L);
+	/** The number of requests in flight */
+	protected volatile int inFlight = 0;
+	
+	/**
+	 * Returns the shared engine, starting it on first access
+	 * @return the shared engine
+	 */
+	public static SnmpEngine getInstance() {
+		if(instance==null) {
+			synchronized(lock) {
+				if(instance==null) {
+					try {
+						instance = new SnmpEngine(DEFAULT_RECEIVE_BUFFER);
+					} catch (IOException e) {
+						throw new RuntimeException("Failed to start the shared SNMP engine", e);
+					}
+				}
+			}
+		}
+		return instance;
+	}
+	
+	/**
+	 * Creates and starts a new SnmpEngine bound to an ephemeral port
+	 * @param receiveBufferSize The requested socket receive buffer size
+	 * @throws IOException thrown if the channel cannot be opened
+	 */
+	public SnmpEngine(int receiveBufferSize) throws IOException {
+		channel = DatagramChannel.open();
+		channel.socket().setReceiveBufferSize(receiveBufferSize);
+		channel.socket().bind(new InetSocketAddress(0));
+		channel.configureBlocking(false);
+		selector = Selector.open();
+		key = channel.register(selector, SelectionKey.OP_READ);
+		ioThread = new Thread(this, "HeliosSnmpEngine-" + channel.socket().getLocalPort());
+		ioThread.setDaemon(true);
+		ioThread.start();
+		log.info("Started SNMP engine on UDP port [" + channel.socket().getLocalPort() + "]");
+	}
+	
+	/**
+	 * Submits a request. Callable from any thread.
+	 * @param request The request to submit
+	 */
+	void submit(Request request) {
+		if(!running) {
+			request.operation.failed(request, new IllegalStateException("The SNMP engine is stopped", new Throwable()));
+			return;
+		}
+		submitted.add(request);
+		if(Thread.currentThread()!=ioThread) selector.wakeup();
+	}
+	
+	/**
+	 * The I/O loop
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run() {
+		while(running) {
+			try {
+				drainSubmitted();
+				flushBacklog();
+				long wait = expire(System.currentTimeMillis());
+				if(submitted.isEmpty()) {
+					selector.select(wait);
+				} else {
+					selector.selectNow();
+				}
+				selector.selectedKeys().clear();
+				receive();
+			} catch (ClosedSelectorException e) {
+				break;
+			} catch (Throwable t) {
+				log.error("Unexpected exception in SNMP engine loop", t);
+			}
+		}
+	}
+	
+	/**
+	 * Moves submitted requests onto their targets' queues and dispatches what the targets' in flight limits allow
+	 */
+	protected void drainSubmitted() {
+		Request r = null;
+		while((r = submitted.poll())!=null) {
+			r.target.waiting.add(r);
+			dispatch(r.target);
+		}
+	}
+	
+	/**
+	 * Sends waiting requests for the passed target while it has free in flight slots
+	 * @param target The target to dispatch for
+	 */
+	protected void dispatch(SnmpTarget target) {
+		while(target.inFlight < target.maxInFlight && !target.waiting.isEmpty()) {
+			Request r = target.waiting.poll();
+			target.inFlight++;
+			inFlight++;
+			do {
+				r.requestId = nextRequestId;
+				nextRequestId = nextRequestId==Integer.MAX_VALUE ? 1 : nextRequestId + 1;
+			} while(pending.containsKey(r.requestId));
+			r.packet = SnmpBer.encodeRequest(target.version, target.community, r.pduType, r.requestId, r.nonRepeaters, r.maxRepetitions, r.oids);
+			r.attemptsLeft = target.retries + 1;
+			pending.put(r.requestId, r);
+			transmit(r);
+		}
+	}
+	
+	/**
+	 * Sends or resends a request and arms its deadline
+	 * @param r The request to transmit
+	 */
+	protected void transmit(Request r) {
+		r.attemptsLeft--;
+		r.deadline = System.currentTimeMillis() + r.target.timeout;
+		deadlines.add(r);
+		if(!backlog.isEmpty() || !write(r)) {
+			backlog.add(r);
+			key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		}
+	}
+	
+	/**
+	 * Writes a request to the channel
+	 * @param r The request to write
+	 * @return false if the socket send buffer was full
+	 */
+	protected boolean write(Request r) {
+		try {
+			if(channel.send(ByteBuffer.wrap(r.packet), r.target.address)==0) return false;
+			sent.incrementAndGet();
+		} catch (IOException e) {
+			if(!r.done) {
+				complete(r);
+				r.operation.failed(r, e);
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Writes backlogged requests until the send buffer fills or the backlog empties
+	 */
+	protected void flushBacklog() {
+		if(backlog.isEmpty()) return;
+		Request r = null;
+		while((r = backlog.peek())!=null) {
+			if(!r.done && !write(r)) return;
+			backlog.poll();
+		}
+		key.interestOps(SelectionKey.OP_READ);
+	}
+	
+	/**
+	 * Retransmits or times out requests whose deadline has passed
+	 * @param now The current time
+	 * @return the number of ms. until the next deadline, or 0 if there is none
+	 */
+	protected long expire(long now) {
+		Request r = null;
+		while((r = deadlines.peek())!=null) {
+			if(r.done) {
+				deadlines.poll();
+				continue;
+			}
+			if(r.deadline > now) return r.deadline - now;
+			deadlines.poll();
+			if(r.attemptsLeft > 0) {
+				retransmits.incrementAndGet();
+				transmit(r);
+			} else {
+				timeouts.incrementAndGet();
+				complete(r);
+				r.operation.timeout(r);
+			}
+		}
+		return 0L;
+	}
+	
+	/**
+	 * Reads and dispatches every datagram available on the channel
+	 * @throws IOException thrown on a channel read failure
+	 */
+	protected void receive() throws IOException {
+		SocketAddress from = null;
+		while(true) {
+			receiveBuffer.clear();
+			from = channel.receive(receiveBuffer);
+			if(from==null) return;
+			received.incrementAndGet();
+			SnmpBer.Response response = null;
+			try {
+				response = SnmpBer.decode(receiveBuffer.array(), 0, receiveBuffer.position());
+			} catch (IllegalArgumentException e) {
+				decodeErrors.incrementAndGet();
+				if(log.isDebugEnabled()) log.debug("Discarding undecodable datagram from [" + from + "]:" + e.getMessage());
+				continue;
+			}
+			Request r = pending.get(response.requestId);
+			if(r==null || !r.target.address.equals(from) || response.pduType!=SnmpBer.RESPONSE) {
+				unmatched.incrementAndGet();
+				continue;
+			}
+			complete(r);
+			r.operation.response(r, response);
+		}
+	}
+	
+	/**
+	 * Retires an in flight request and frees its target slot
+	 * @param r The request to retire
+	 */
+	protected void complete(Request r) {
+		r.done = true;
+		pending.remove(r.requestId);
+		r.target.inFlight--;
+		inFlight--;
+		dispatch(r.target);
+	}
+	
+	/**
+	 * Stops the engine. In flight and waiting requests are failed.
+	 */
+	public void shutdown() {
+		running = false;
+		selector.wakeup();
+		try { ioThread.join(5000); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+		try { selector.close(); } catch (IOException e) {}
+		try { channel.close(); } catch (IOException e) {}
+		IllegalStateException ex = new IllegalStateException("The SNMP engine was stopped", new Throwable());
+		for(Request r: pending.values().toArray(new Request[pending.size()])) {
+			r.done = true;
+			r.operation.failed(r, ex);
+		}
+		pending.clear();
+		Request r = null;
+		while((r = submitted.poll())!=null) {
+			r.operation.failed(r, ex);
+		}
+		synchronized(lock) {
+			if(instance==this) instance = null;
+		}
+		log.info("Stopped SNMP engine");
+	}
+	
+	/**
+	 * Returns the local UDP port
+	 * @return the local UDP port
+	 */
+	public int getLocalPort() {
+		return channel.socket().getLocalPort();
+	}
+	
+	/**
+	 * Returns the number of datagrams sent including retransmissions
+	 * @return the number of datagrams sent
+	 */
+	public long getSent() {
+		return sent.get();
+	}
+	
+	/**
+	 * Returns the number of datagrams received
+	 * @return the number of datagrams received
+	 */
+	public long getReceived() {
+		return received.get();
+	}
+	
+	/**
+	 * Returns the number of retransmissions
+	 * @return the number of retransmissions
+	 */
+	public long getRetransmits() {
+		return retransmits.get();
+	}
+	
+	/**
+	 * Returns the number of requests that exhausted their retries
+	 * @return the number of timed out requests
+	 */
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+	
+	/**
+	 * Returns the number of responses that matched no in flight request
+	 * @return the number of unmatched responses
+	 */
+	public long getUnmatched() {
+		return unmatched.get();
+	}
+	
+	/**
+	 * Returns the number of datagrams that could not be decoded
+	 * @return the number of decode errors
+	 */
+	public long getDecodeErrors() {
+		return decodeErrors.get();
+	}
+	
+	/**
+	 * Returns the number of requests in flight
+	 * @return the number of requests in flight
+	 */
+	public int getInFlight() {
+		return inFlight;
+	}
+	
+	/**
+	 * <p>Title: Request</p>
+	 * <p>Description: One request PDU and its retransmission state</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.collectors.snmp.engine.SnmpEngine.Request</code></p>
+	 */
+	public static class Request implements Comparable<Request> {
+		/** The owning operation */
+		final SnmpOperation operation;
+		/** The target agent */
+		final SnmpTarget target;
+		/** The PDU type */
+		final int pduType;
+		/** The GETBULK non repeaters */
+		final int nonRepeaters;
+		/** The GETBULK max repetitions */
+		final int maxRepetitions;
+		/** The operation's attachment */
+		final Object attachment;
+		/** The requested OIDs */
+		final int[][] oids;
+		/** The assigned request id */
+		int requestId;
+		/** The encoded message */
+		byte[] packet;
+		/** The remaining attempts */
+		int attemptsLeft;
+		/** The current attempt's deadline */
+		long deadline;
+		/** Set when the request is answered, timed out or failed */
+		boolean done = false;
+		
+		/**
+		 * Creates a new Request
+		 * @param operation The owning operation
+		 * @param pduType The PDU type
+		 * @param nonRepeaters The GETBULK non repeaters
+		 * @param maxRepetitions The GETBULK max repetitions
+		 * @param attachment The operation's attachment
+		 * @param oids The requested OIDs
+		 */
+		Request(SnmpOperation operation, int pduType, int nonRepeaters, int maxRepetitions, Object attachment, int[]... oids) {
+			this.operation = operation;
+			this.target = operation.target;
+			this.pduType = pduType;
+			this.nonRepeaters = nonRepeaters;
+			this.maxRepetitions = maxRepetitions;
+			this.attachment = attachment;
+			this.oids = oids;
+		}
+		
+		/**
+		 * Returns the operation's attachment
+		 * @return the attachment
+		 */
+		public Object getAttachment() {
+			return attachment;
+		}
+		
+		/**
+		 * Returns the requested OIDs
+		 * @return the requested OIDs
+		 */
+		public int[][] getOids() {
+			return oids;
+		}
+		
+		/**
+		 * Returns the GETBULK max repetitions
+		 * @return the max repetitions
+		 */
+		public int getMaxRepetitions() {
+			return maxRepetitions;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		public int compareTo(Request other) {
+			return deadline < other.deadline ? -1 : (deadline==other.deadline ? 0 : 1);
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.collectors.snmp.engine;
+
+import org.opennms.protocols.snmp.SnmpEndOfMibView;
+import org.opennms.protocols.snmp.SnmpNoSuchInstance;
+import org.opennms.protocols.snmp.SnmpNoSuchObject;
+import org.opennms.protocols.snmp.SnmpSyntax;
+import org.opennms.protocols.snmp.SnmpVarBind;
+
+/**
+ * <p>Title: SnmpGetOperation</p>
+ * <p>Description: Fetches a set of scalar OIDs with GET or GETNEXT. The OIDs are packed into PDUs of at most
+ * {@link SnmpTarget#getMaxVarBinds()} varbinds which are all sent concurrently. A <b>tooBig</b> response splits the
+ * PDU in half and a v1 <b>noSuchName</b> drops the offending varbind and resends the rest, so one bad OID does not
+ * cost the whole batch.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.collectors.snmp.engine.SnmpGetOperation</code></p>
+ */
+
+public class SnmpGetOperation extends SnmpOperation {
+	/** The PDU type, GET or GETNEXT */
+	protected final int pduType;
+	/** The requested OIDs */
+	protected final int[][] oids;
+	/** The results, aligned with the requested OIDs. Null where the agent returned an exception value or an error. */
+	protected final SnmpVarBind[] results;
+	
+	/**
+	 * Creates a new SnmpGetOperation
+	 * @param target The target agent
+	 * @param pduType {@link SnmpBer#GET} or {@link SnmpBer#GETNEXT}
+	 * @param oids The OIDs to fetch
+	 */
+	public SnmpGetOperation(SnmpTarget target, int pduType, String... oids) {
+		super(target);
+		if(pduType!=SnmpBer.GET && pduType!=SnmpBer.GETNEXT) throw new IllegalArgumentException("Unsupported PDU type [" + pduType + "]", new Throwable());
+		this.pduType = pduType;
+		this.oids = new int[oids.length][];
+		for(int i = 0; i < oids.length; i++) {
+			this.oids[i] = SnmpBer.parseOid(oids[i]);
+		}
+		results = new SnmpVarBind[oids.length];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.collectors.snmp.engine.SnmpOperation#begin()
+	 */
+	@Override
+	protected void begin() {
+		int chunk = target.getMaxVarBinds();
+		for(int i = 0; i < oids.length; i += chunk) {
+			int[] indexes = new int[Math.min(chunk, oids.length - i)];
+			for(int j = 0; j < indexes.length; j++) {
+				indexes[j] = i + j;
+			}
+			request(indexes);
+		}
+	}
+	
+	/**
+	 * Sends a PDU for the passed OID indexes
+	 * @param indexes The indexes of the OIDs to request
+	 */
+	protected void request(int[] indexes) {
+		int[][] batch = new int[indexes.length][];
+		for(int i = 0; i < indexes.length; i++) {
+			batch[i] = oids[indexes[i]];
+		}
+		send(pduType, 0, 0, indexes, batch);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.collectors.snmp.engine.SnmpOperation#onResponse(org.helios.collectors.snmp.engine.SnmpEngine.Request, org.helios.collectors.snmp.engine.SnmpBer.Response)
+	 */
+	@Override
+	protected void onResponse(SnmpEngine.Request request, SnmpBer.Response response) {
+		int[] indexes = (int[])request.getAttachment();
+		if(response.errorStatus==0) {
+			int n = Math.min(indexes.length, response.varBinds.length);
+			for(int i = 0; i < n; i++) {
+				SnmpSyntax value = response.varBinds[i].getValue();
+				if(!(value instanceof SnmpNoSuchObject) && !(value instanceof SnmpNoSuchInstance) && !(value instanceof SnmpEndOfMibView)) {
+					results[indexes[i]] = response.varBinds[i];
+				}
+			}
+		} else if(response.errorStatus==SnmpBer.ERR_TOO_BIG && indexes.length > 1) {
+			int half = indexes.length/2;
+			int[] a = new int[half];
+			int[] b = new int[indexes.length - half];
+			System.arraycopy(indexes, 0, a, 0, a.length);
+			System.arraycopy(indexes, half, b, 0, b.length);
+			request(a);
+			request(b);
+		} else if(response.errorStatus==SnmpBer.ERR_NO_SUCH_NAME && indexes.length > 1 && response.errorIndex > 0 && response.errorIndex <= indexes.length) {
+			int[] rest = new int[indexes.length - 1];
+			int bad = response.errorIndex - 1;
+			System.arraycopy(indexes, 0, rest, 0, bad);
+			System.arraycopy(indexes, bad + 1, rest, bad, rest.length - bad);
+			request(rest);
+		} else if(response.errorStatus!=SnmpBer.ERR_NO_SUCH_NAME) {
+			errorStatus = response.errorStatus;
+		}
+	}
+	
+	/**
+	 * Returns the results, aligned with the requested OIDs
+	 * @return the results. Null entries were not returned by the agent.
+	 */
+	public SnmpVarBind[] getResults() {
+		return results;
+	}
+	
+	/**
+	 * Returns the result for the OID at the passed index
+	 * @param index The index of the requested OID
+	 * @return the result or null
+	 */
+	public SnmpVarBind getResult(int index) {
+		return results[index];
+	}
+}
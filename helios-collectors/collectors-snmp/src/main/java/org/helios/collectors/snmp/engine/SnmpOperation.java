@@ -0,0 +1,258 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.collectors.snmp.engine;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>Title: SnmpOperation</p>
+ * <p>Description: Base class for a unit of work against one {@link SnmpTarget} that is executed through the shared
+ * {@link SnmpEngine} as one or more concurrently outstanding requests. Subclasses issue their first requests in
+ * {@link #begin()} and may issue follow up requests from the response callbacks, which run on the engine's I/O
+ * thread and so must never block. The operation completes when no requests remain outstanding, at which point
+ * {@link #completed()} is invoked and any thread in {@link #await(long)} is released.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.collectors.snmp.engine.SnmpOperation</code></p>
+ */
+
+public abstract class SnmpOperation {
+	/** The target agent */
+	protected final SnmpTarget target;
+	/** The engine executing this operation */
+	protected SnmpEngine engine;
+	/** Instance logger */
+	protected final Logger log = Logger.getLogger(getClass());
+	/** The number of outstanding requests */
+	private final AtomicInteger outstanding = new AtomicInteger(0);
+	/** Released when the operation completes */
+	private final CountDownLatch latch = new CountDownLatch(1);
+	/** Indicates if any request exhausted its retries */
+	protected volatile boolean timedOut = false;
+	/** The last non zero error status reported by the agent */
+	protected volatile int errorStatus = 0;
+	/** The last transport or processing failure */
+	protected volatile Throwable failure = null;
+	/** The start time of the operation */
+	protected long startTime = 0L;
+	/** The elapsed time of the operation in ms. */
+	protected volatile long elapsed = -1L;
+	
+	/**
+	 * Creates a new SnmpOperation
+	 * @param target The target agent
+	 */
+	protected SnmpOperation(SnmpTarget target) {
+		if(target==null) throw new IllegalArgumentException("The passed target was null", new Throwable());
+		this.target = target;
+	}
+	
+	/**
+	 * Starts this operation on the passed engine
+	 * @param engine The engine to execute on
+	 * @return this operation
+	 */
+	public SnmpOperation start(SnmpEngine engine) {
+		if(engine==null) throw new IllegalArgumentException("The passed engine was null", new Throwable());
+		if(this.engine!=null) throw new IllegalStateException("Operation already started", new Throwable());
+		this.engine = engine;
+		startTime = System.currentTimeMillis();
+		outstanding.incrementAndGet();
+		try {
+			begin();
+		} catch (Throwable t) {
+			failure = t;
+		} finally {
+			release();
+		}
+		return this;
+	}
+	
+	/**
+	 * Issues the initial requests for this operation
+	 */
+	protected abstract void begin();
+	
+	/**
+	 * Callback on receipt of a response for one of this operation's requests. Runs on the engine's I/O thread.
+	 * @param request The request that was answered
+	 * @param response The decoded response
+	 */
+	protected abstract void onResponse(SnmpEngine.Request request, SnmpBer.Response response);
+	
+	/**
+	 * Callback when one of this operation's requests has exhausted its retries. Runs on the engine's I/O thread.
+	 * @param request The request that timed out
+	 */
+	protected void onTimeout(SnmpEngine.Request request) {
+		timedOut = true;
+	}
+	
+	/**
+	 * Callback when the operation completes, before waiting threads are released.
+	 * Runs on the engine's I/O thread unless no requests were issued.
+	 */
+	protected void completed() {
+		
+	}
+	
+	/**
+	 * Submits a request for this operation
+	 * @param pduType The PDU type
+	 * @param nonRepeaters The GETBULK non repeaters
+	 * @param maxRepetitions The GETBULK max repetitions
+	 * @param attachment An arbitrary object handed back with the response
+	 * @param oids The OIDs to request
+	 */
+	protected void send(int pduType, int nonRepeaters, int maxRepetitions, Object attachment, int[]... oids) {
+		outstanding.incrementAndGet();
+		engine.submit(new SnmpEngine.Request(this, pduType, nonRepeaters, maxRepetitions, attachment, oids));
+	}
+	
+	/**
+	 * Engine callback for a response
+	 * @param request The answered request
+	 * @param response The decoded response
+	 */
+	final void response(SnmpEngine.Request request, SnmpBer.Response response) {
+		try {
+			onResponse(request, response);
+		} catch (Throwable t) {
+			failure = t;
+			log.warn("Failed to process SNMP response from [" + target + "]", t);
+		} finally {
+			release();
+		}
+	}
+	
+	/**
+	 * Engine callback for a request that exhausted its retries
+	 * @param request The timed out request
+	 */
+	final void timeout(SnmpEngine.Request request) {
+		try {
+			onTimeout(request);
+		} finally {
+			release();
+		}
+	}
+	
+	/**
+	 * Engine callback for a request that could not be sent
+	 * @param request The failed request
+	 * @param t The cause of the failure
+	 */
+	final void failed(SnmpEngine.Request request, Throwable t) {
+		failure = t;
+		release();
+	}
+	
+	/**
+	 * Decrements the outstanding count and completes the operation when it reaches zero
+	 */
+	private void release() {
+		if(outstanding.decrementAndGet()==0) {
+			elapsed = System.currentTimeMillis() - startTime;
+			try {
+				completed();
+			} catch (Throwable t) {
+				log.warn("Completion callback failed for [" + target + "]", t);
+			} finally {
+				latch.countDown();
+			}
+		}
+	}
+	
+	/**
+	 * Waits for this operation to complete
+	 * @param timeout The maximum time to wait in ms.
+	 * @return true if the operation completed, false if the wait timed out
+	 * @throws InterruptedException thrown if the calling thread is interrupted
+	 */
+	public boolean await(long timeout) throws InterruptedException {
+		return latch.await(timeout, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Indicates if this operation has completed
+	 * @return true if this operation has completed
+	 */
+	public boolean isComplete() {
+		return latch.getCount()==0;
+	}
+	
+	/**
+	 * Indicates if the operation completed without timeouts, errors or failures
+	 * @return true if the operation was clean
+	 */
+	public boolean isSuccessful() {
+		return isComplete() && !timedOut && errorStatus==0 && failure==null;
+	}
+
+	/**
+	 * Indicates if any request exhausted its retries
+	 * @return true if any request timed out
+	 */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+	/**
+	 * Returns the last non zero error status reported by the agent
+	 * @return the error status
+	 */
+	public int getErrorStatus() {
+		return errorStatus;
+	}
+
+	/**
+	 * Returns the last transport or processing failure
+	 * @return the failure or null
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Returns the elapsed time of the operation in ms.
+	 * @return the elapsed time or -1 if the operation has not completed
+	 */
+	public long getElapsed() {
+		return elapsed;
+	}
+
+	/**
+	 * Returns the target agent
+	 * @return the target agent
+	 */
+	public SnmpTarget getTarget() {
+		return target;
+	}
+}
@@ -0,0 +1,250 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.collectors.snmp.engine;
+
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+
+/**
+ * <p>Title: SnmpTarget</p>
+ * <p>Description: An SNMP agent polled through the shared {@link SnmpEngine}. Carries the addressing, community,
+ * timeout and retry settings for the agent, bounds the number of requests the engine keeps in flight against it,
+ * and holds the adaptive GETBULK max-repetitions which is widened while responses come back whole and halved when the
+ * agent reports <b>tooBig</b> or stops answering. A <b>tooBig</b> also lowers the ceiling the max-repetitions may grow
+ * back to.</p>
+ * <p>The in-flight count and the queue of waiting requests are only touched by the engine's I/O thread.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.collectors.snmp.engine.SnmpTarget</code></p>
+ */
+
+public class SnmpTarget {
+	/** The agent's socket address */
+	protected final InetSocketAddress address;
+	/** The wire value of the SNMP version (0 for v1, 1 for v2c) */
+	protected final int version;
+	/** The community name bytes */
+	protected final byte[] community;
+	/** The per attempt timeout in ms. */
+	protected long timeout = 1000L;
+	/** The number of retransmissions after the first attempt times out */
+	protected int retries = 1;
+	/** The maximum number of requests in flight against the agent */
+	protected int maxInFlight = 4;
+	/** The maximum number of varbinds packed into one GET PDU */
+	protected int maxVarBinds = 24;
+	/** The floor for the adaptive max-repetitions */
+	protected int minRepetitions = 1;
+	/** The ceiling for the adaptive max-repetitions */
+	protected int maxRepetitions = 64;
+	/** The current adaptive max-repetitions */
+	protected volatile int repetitions = 16;
+	/** The largest max-repetitions the agent is known to answer without tooBig */
+	protected volatile int ceiling = 64;
+	
+	/** The number of requests currently in flight. Engine I/O thread only. */
+	int inFlight = 0;
+	/** Requests waiting for an in-flight slot. Engine I/O thread only. */
+	final ArrayDeque<SnmpEngine.Request> waiting = new ArrayDeque<SnmpEngine.Request>();
+	
+	/**
+	 * Creates a new SnmpTarget
+	 * @param address The agent's address
+	 * @param port The agent's port
+	 * @param version The wire value of the SNMP version (0 for v1, 1 for v2c)
+	 * @param community The community name
+	 */
+	public SnmpTarget(InetAddress address, int port, int version, String community) {
+		if(address==null) throw new IllegalArgumentException("The passed address was null", new Throwable());
+		if(version!=0 && version!=1) throw new IllegalArgumentException("Unsupported SNMP version [" + version + "]", new Throwable());
+		this.address = new InetSocketAddress(address, port);
+		this.version = version;
+		try {
+			this.community = (community==null ? "public" : community).getBytes("ISO-8859-1");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Indicates if GETBULK is available for this agent
+	 * @return true for v2c agents
+	 */
+	public boolean isBulkCapable() {
+		return version==1;
+	}
+	
+	/**
+	 * Widens the adaptive max-repetitions after a whole response
+	 */
+	void increaseRepetitions() {
+		int r = repetitions;
+		repetitions = Math.min(ceiling, r + Math.max(1, r/4));
+	}
+	
+	/**
+	 * Halves the adaptive max-repetitions after a timeout
+	 */
+	void decreaseRepetitions() {
+		repetitions = Math.max(minRepetitions, repetitions/2);
+	}
+	
+	/**
+	 * Halves the adaptive max-repetitions after a tooBig response and
+	 * lowers the ceiling below the size that failed so it is not retried
+	 * @param attempted The max-repetitions of the request that was too big
+	 */
+	void tooBig(int attempted) {
+		ceiling = Math.max(minRepetitions, Math.min(ceiling, attempted - 1));
+		repetitions = Math.max(minRepetitions, Math.min(ceiling, attempted/2));
+	}
+	
+	/**
+	 * Returns the agent's socket address
+	 * @return the agent's socket address
+	 */
+	public InetSocketAddress getAddress() {
+		return address;
+	}
+
+	/**
+	 * Returns the wire value of the SNMP version
+	 * @return the wire value of the SNMP version
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the per attempt timeout in ms.
+	 * @return the per attempt timeout
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Sets the per attempt timeout in ms.
+	 * @param timeout the per attempt timeout
+	 */
+	public void setTimeout(long timeout) {
+		if(timeout < 1) throw new IllegalArgumentException("Invalid timeout [" + timeout + "]", new Throwable());
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Returns the number of retransmissions
+	 * @return the number of retransmissions
+	 */
+	public int getRetries() {
+		return retries;
+	}
+
+	/**
+	 * Sets the number of retransmissions
+	 * @param retries the number of retransmissions
+	 */
+	public void setRetries(int retries) {
+		this.retries = Math.max(0, retries);
+	}
+
+	/**
+	 * Returns the maximum number of requests in flight against the agent
+	 * @return the maximum number of in flight requests
+	 */
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * Sets the maximum number of requests in flight against the agent
+	 * @param maxInFlight the maximum number of in flight requests
+	 */
+	public void setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = Math.max(1, maxInFlight);
+	}
+
+	/**
+	 * Returns the maximum number of varbinds packed into one GET PDU
+	 * @return the maximum number of varbinds per PDU
+	 */
+	public int getMaxVarBinds() {
+		return maxVarBinds;
+	}
+
+	/**
+	 * Sets the maximum number of varbinds packed into one GET PDU
+	 * @param maxVarBinds the maximum number of varbinds per PDU
+	 */
+	public void setMaxVarBinds(int maxVarBinds) {
+		this.maxVarBinds = Math.max(1, maxVarBinds);
+	}
+
+	/**
+	 * Returns the ceiling for the adaptive max-repetitions
+	 * @return the max-repetitions ceiling
+	 */
+	public int getMaxRepetitions() {
+		return maxRepetitions;
+	}
+
+	/**
+	 * Sets the ceiling for the adaptive max-repetitions
+	 * @param maxRepetitions the max-repetitions ceiling
+	 */
+	public void setMaxRepetitions(int maxRepetitions) {
+		this.maxRepetitions = Math.max(minRepetitions, maxRepetitions);
+		ceiling = this.maxRepetitions;
+		if(repetitions > this.maxRepetitions) repetitions = this.maxRepetitions;
+	}
+
+	/**
+	 * Returns the current adaptive max-repetitions
+	 * @return the current max-repetitions
+	 */
+	public int getRepetitions() {
+		return repetitions;
+	}
+
+	/**
+	 * Sets the starting max-repetitions
+	 * @param repetitions the starting max-repetitions
+	 */
+	public void setRepetitions(int repetitions) {
+		this.repetitions = Math.min(ceiling, Math.max(minRepetitions, repetitions));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "SnmpTarget [" + address + ", v" + (version==0 ? "1" : "2c") + "]";
+	}
+}
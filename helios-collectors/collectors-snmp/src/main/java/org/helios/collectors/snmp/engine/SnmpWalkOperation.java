@@ -0,0 +1,154 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.collectors.snmp.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opennms.protocols.snmp.SnmpEndOfMibView;
+import org.opennms.protocols.snmp.SnmpVarBind;
+
+/**
+ * <p>Title: SnmpWalkOperation</p>
+ * <p>Description: Walks one or more subtrees, typically the columns of a table. Each subtree is walked by its own
+ * cursor so the columns are fetched concurrently, bounded by the target's in flight limit. v2c agents are walked
+ * with GETBULK using the target's adaptive max-repetitions, v1 agents with GETNEXT. A cursor stops at the end of
+ * its subtree, at <b>endOfMibView</b>, or if the agent returns an OID that does not advance the walk.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.collectors.snmp.engine.SnmpWalkOperation</code></p>
+ */
+
+public class SnmpWalkOperation extends SnmpOperation {
+	/** The subtree roots */
+	protected final int[][] roots;
+	/** The varbinds collected for each subtree */
+	protected final List<SnmpVarBind>[] results;
+	/** Indicates if the target supports GETBULK */
+	protected final boolean bulk;
+	
+	/**
+	 * Creates a new SnmpWalkOperation
+	 * @param target The target agent
+	 * @param roots The subtree root OIDs to walk
+	 */
+	@SuppressWarnings("unchecked")
+	public SnmpWalkOperation(SnmpTarget target, String... roots) {
+		super(target);
+		this.roots = new int[roots.length][];
+		results = new List[roots.length];
+		for(int i = 0; i < roots.length; i++) {
+			this.roots[i] = SnmpBer.parseOid(roots[i]);
+			results[i] = new ArrayList<SnmpVarBind>();
+		}
+		bulk = target.isBulkCapable();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.collectors.snmp.engine.SnmpOperation#begin()
+	 */
+	@Override
+	protected void begin() {
+		for(int i = 0; i < roots.length; i++) {
+			next(i, roots[i]);
+		}
+	}
+	
+	/**
+	 * Requests the rows following the passed OID for the passed subtree
+	 * @param column The subtree index
+	 * @param from The OID to continue from
+	 */
+	protected void next(int column, int[] from) {
+		if(bulk) {
+			send(SnmpBer.GETBULK, 0, target.getRepetitions(), column, from);
+		} else {
+			send(SnmpBer.GETNEXT, 0, 0, column, from);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.collectors.snmp.engine.SnmpOperation#onResponse(org.helios.collectors.snmp.engine.SnmpEngine.Request, org.helios.collectors.snmp.engine.SnmpBer.Response)
+	 */
+	@Override
+	protected void onResponse(SnmpEngine.Request request, SnmpBer.Response response) {
+		int column = (Integer)request.getAttachment();
+		int[] last = request.getOids()[0];
+		if(response.errorStatus!=0) {
+			if(response.errorStatus==SnmpBer.ERR_TOO_BIG && bulk && request.getMaxRepetitions() > 1) {
+				target.tooBig(request.getMaxRepetitions());
+				next(column, last);
+			} else if(response.errorStatus!=SnmpBer.ERR_NO_SUCH_NAME) {
+				// noSuchName is how a v1 agent reports the end of the MIB
+				errorStatus = response.errorStatus;
+			}
+			return;
+		}
+		int[] root = roots[column];
+		for(SnmpVarBind vb: response.varBinds) {
+			int[] name = vb.getName().getIdentifiers();
+			if(vb.getValue() instanceof SnmpEndOfMibView || !SnmpBer.isUnder(root, name) || SnmpBer.compare(name, last) <= 0) {
+				return;
+			}
+			results[column].add(vb);
+			last = name;
+		}
+		if(response.varBinds.length==0) return;
+		if(bulk && response.varBinds.length >= request.getMaxRepetitions()) {
+			target.increaseRepetitions();
+		}
+		next(column, last);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.collectors.snmp.engine.SnmpOperation#onTimeout(org.helios.collectors.snmp.engine.SnmpEngine.Request)
+	 */
+	@Override
+	protected void onTimeout(SnmpEngine.Request request) {
+		super.onTimeout(request);
+		if(bulk) target.decreaseRepetitions();
+	}
+	
+	/**
+	 * Returns the varbinds collected for the subtree at the passed index
+	 * @param column The subtree index
+	 * @return the collected varbinds in walk order
+	 */
+	public List<SnmpVarBind> getResults(int column) {
+		return results[column];
+	}
+	
+	/**
+	 * Returns the number of subtrees walked
+	 * @return the number of subtrees
+	 */
+	public int getColumnCount() {
+		return roots.length;
+	}
+}
@@ -78,6 +78,10 @@ public abstract class AbstractSnmpRequest {
 	public	void	setResult(SnmpVarBind result) {
 		this.result=result;
 	}
+	
+	public	boolean	hasResult() {
+		return result != null;
+	}
 	public	String	extendOid(String prefix,String value) {
 		StringBuffer	sb=new StringBuffer(oid);
 		if(prefix != null) sb.append(prefix);
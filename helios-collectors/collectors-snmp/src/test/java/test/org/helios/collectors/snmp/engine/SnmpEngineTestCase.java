@@ -0,0 +1,582 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ *
+ */
+package test.org.helios.collectors.snmp.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.helios.collectors.snmp.engine.SnmpBer;
+import org.helios.collectors.snmp.engine.SnmpEngine;
+import org.helios.collectors.snmp.engine.SnmpGetOperation;
+import org.helios.collectors.snmp.engine.SnmpTarget;
+import org.helios.collectors.snmp.engine.SnmpWalkOperation;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.protocols.snmp.SnmpEndOfMibView;
+import org.opennms.protocols.snmp.SnmpVarBind;
+
+/**
+ * <p>Title: SnmpEngineTestCase</p>
+ * <p>Description: Test case for the SNMP engine's BER codec, retransmissions and adaptive max-repetitions, run against fake agents on loopback sockets.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>test.org.helios.collectors.snmp.engine.SnmpEngineTestCase</code></p>
+ */
+
+public class SnmpEngineTestCase {
+	/** ifInOctets */
+	static final int[] COL1 = {1,3,6,1,2,1,2,2,1,10};
+	/** ifOutOctets */
+	static final int[] COL2 = {1,3,6,1,2,1,2,2,1,16};
+	/** sysDescr.0 */
+	static final int[] SYSDESCR = {1,3,6,1,2,1,1,1,0};
+	/** The number of rows in each fake agent column */
+	static final int ROWS = 300;
+	/** The fake agent MIB in lexicographic order */
+	static final List<int[]> MIB = new ArrayList<int[]>();
+
+	static {
+		MIB.add(SYSDESCR);
+		for(int i = 1; i <= ROWS; i++) { MIB.add(concat(COL1, i)); }
+		for(int i = 1; i <= ROWS; i++) { MIB.add(concat(COL2, i)); }
+	}
+
+	/** The engine under test */
+	protected SnmpEngine engine = null;
+	/** The fake agents started by the current test */
+	protected final List<FakeAgent> agents = new ArrayList<FakeAgent>();
+
+	/**
+	 * Starts a dedicated engine for each test
+	 * @throws Exception thrown on any error
+	 */
+	@Before
+	public void setUp() throws Exception {
+		engine = new SnmpEngine(SnmpEngine.DEFAULT_RECEIVE_BUFFER);
+	}
+
+	/**
+	 * Stops the engine and the fake agents
+	 */
+	@After
+	public void tearDown() {
+		if(engine!=null) engine.shutdown();
+		for(FakeAgent agent: agents) {
+			agent.close();
+		}
+		agents.clear();
+	}
+
+	/**
+	 * Checks a GET request against the well known wire bytes for sysDescr.0
+	 */
+	@Test
+	public void testEncodeKnownRequest() {
+		byte[] expected = bytes(
+			0x30, 0x26, 0x02, 0x01, 0x01, 0x04, 0x06, 'p', 'u', 'b', 'l', 'i', 'c',
+			0xA0, 0x19, 0x02, 0x01, 0x01, 0x02, 0x01, 0x00, 0x02, 0x01, 0x00,
+			0x30, 0x0E, 0x30, 0x0C, 0x06, 0x08, 0x2B, 0x06, 0x01, 0x02, 0x01, 0x01, 0x01, 0x00, 0x05, 0x00);
+		byte[] actual = SnmpBer.encodeRequest(1, "public".getBytes(), SnmpBer.GET, 1, 0, 0, SnmpBer.parseOid("1.3.6.1.2.1.1.1.0"));
+		Assert.assertTrue("Encoded bytes " + Arrays.toString(actual), Arrays.equals(expected, actual));
+	}
+
+	/**
+	 * Encodes requests with boundary request ids and multi-byte OID arcs and decodes them back
+	 */
+	@Test
+	public void testRequestRoundTrip() {
+		int[][] oids = {
+			SnmpBer.parseOid("1.3.6.1.2.1.1.1.0"),
+			SnmpBer.parseOid(".1.3.6.1.4.1.2021.4294967295.128.16383.16384"),
+			SnmpBer.parseOid("2.999.3")
+		};
+		for(int requestId: new int[]{0, 1, 127, 128, 255, 256, -1, -128, -129, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+			byte[] request = SnmpBer.encodeRequest(1, "public".getBytes(), SnmpBer.GETBULK, requestId, 0, 25, oids);
+			SnmpBer.Response decoded = SnmpBer.decode(request, 0, request.length);
+			Assert.assertEquals("PDU type", SnmpBer.GETBULK, decoded.pduType);
+			Assert.assertEquals("Request id", requestId, decoded.requestId);
+			Assert.assertEquals("Non repeaters", 0, decoded.errorStatus);
+			Assert.assertEquals("Max repetitions", 25, decoded.errorIndex);
+			Assert.assertEquals("VarBind count", oids.length, decoded.varBinds.length);
+			for(int i = 0; i < oids.length; i++) {
+				Assert.assertTrue("OID #" + i, Arrays.equals(oids[i], decoded.varBinds[i].getName().getIdentifiers()));
+			}
+		}
+	}
+
+	/**
+	 * Decodes a response carrying unsigned, 64 bit, string and exception values
+	 */
+	@Test
+	public void testDecodeResponseValues() {
+		List<byte[]> vbs = new ArrayList<byte[]>();
+		vbs.add(varBind(COL1, 0x41, bytes(0x00, 0xFF, 0xFF, 0xFF, 0xFF)));
+		vbs.add(varBind(COL2, 0x46, bytes(0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00)));
+		vbs.add(varBind(SYSDESCR, 0x04, "Fake Agent".getBytes()));
+		vbs.add(varBind(COL1, 0x82, new byte[0]));
+		byte[] response = response(1, 42, 0, 0, vbs);
+		SnmpBer.Response decoded = SnmpBer.decode(response, 0, response.length);
+		Assert.assertEquals("PDU type", SnmpBer.RESPONSE, decoded.pduType);
+		Assert.assertEquals("Request id", 42, decoded.requestId);
+		Assert.assertEquals("VarBind count", 4, decoded.varBinds.length);
+		Assert.assertEquals("Counter32", "4294967295", decoded.varBinds[0].getValue().toString());
+		Assert.assertEquals("Counter64", BigInteger.ONE.shiftLeft(64).toString(), decoded.varBinds[1].getValue().toString());
+		Assert.assertEquals("OctetString", "Fake Agent", decoded.varBinds[2].getValue().toString());
+		Assert.assertTrue("EndOfMibView", decoded.varBinds[3].getValue() instanceof SnmpEndOfMibView);
+	}
+
+	/**
+	 * Validates OID parsing, ordering and subtree checks
+	 */
+	@Test
+	public void testParseAndCompare() {
+		Assert.assertTrue("Leading dot", Arrays.equals(SnmpBer.parseOid("1.3.6.1"), SnmpBer.parseOid(".1.3.6.1")));
+		Assert.assertTrue("Shorter prefix first", SnmpBer.compare(COL1, concat(COL1, 1)) < 0);
+		Assert.assertTrue("Numeric arc order", SnmpBer.compare(concat(COL1, 2), concat(COL1, 10)) < 0);
+		Assert.assertTrue("Column order", SnmpBer.compare(concat(COL1, ROWS), concat(COL2, 1)) < 0);
+		Assert.assertEquals("Equal", 0, SnmpBer.compare(concat(COL1, 7), concat(COL1, 7)));
+		Assert.assertTrue("Under root", SnmpBer.isUnder(COL1, concat(COL1, 1)));
+		Assert.assertFalse("Next column", SnmpBer.isUnder(COL1, concat(COL2, 1)));
+	}
+
+	/**
+	 * Walks an agent that drops every third datagram and checks the walk still completes through retransmission
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testRetransmitsLostRequests() throws Exception {
+		FakeAgent agent = startAgent(false, 3, 64);
+		SnmpTarget target = target(agent, 1);
+		target.setTimeout(100);
+		target.setRetries(5);
+		SnmpWalkOperation walk = (SnmpWalkOperation)new SnmpWalkOperation(target, "1.3.6.1.2.1.2.2.1.10", ".1.3.6.1.2.1.2.2.1.16").start(engine);
+		Assert.assertTrue("Walk completed", walk.await(20000));
+		Assert.assertFalse("Walk timed out", walk.isTimedOut());
+		assertColumns(walk);
+		Assert.assertTrue("Retransmits", engine.getRetransmits() > 0);
+	}
+
+	/**
+	 * Walks a v2c agent that answers tooBig above 40 repetitions and checks the target settles at or below the agent's limit
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testAdaptiveMaxRepetitions() throws Exception {
+		FakeAgent agent = startAgent(false, 0, 40);
+		SnmpTarget target = target(agent, 1);
+		target.setMaxRepetitions(64);
+		int initial = target.getRepetitions();
+		SnmpWalkOperation walk = (SnmpWalkOperation)new SnmpWalkOperation(target, "1.3.6.1.2.1.2.2.1.10", ".1.3.6.1.2.1.2.2.1.16").start(engine);
+		Assert.assertTrue("Walk completed", walk.await(20000));
+		assertColumns(walk);
+		Assert.assertTrue("Repetitions grew past " + initial, agent.maxServed.get() > initial);
+		Assert.assertTrue("Agent answered tooBig", agent.tooBigs.get() > 0);
+		Assert.assertTrue("Repetitions " + target.getRepetitions() + " within agent limit", target.getRepetitions() <= 40);
+
+		// a second walk should not need to rediscover the limit
+		int tooBigs = agent.tooBigs.get();
+		walk = (SnmpWalkOperation)new SnmpWalkOperation(target, "1.3.6.1.2.1.2.2.1.10").start(engine);
+		Assert.assertTrue("Second walk completed", walk.await(20000));
+		Assert.assertEquals("Second walk rows", ROWS, walk.getResults(0).size());
+		Assert.assertEquals("TooBig on second walk", tooBigs, agent.tooBigs.get());
+	}
+
+	/**
+	 * Issues a GET with one unknown OID against a v1 agent and checks the remaining OIDs are still answered
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testVersion1NoSuchName() throws Exception {
+		FakeAgent agent = startAgent(true, 0, 0);
+		SnmpTarget target = target(agent, 0);
+		Assert.assertFalse("v1 bulk capable", target.isBulkCapable());
+		String[] oids = new String[60];
+		for(int i = 0; i < oids.length; i++) {
+			oids[i] = i==30 ? "1.3.6.1.2.1.99.0" : "1.3.6.1.2.1.2.2.1.10." + (i+1);
+		}
+		SnmpGetOperation get = (SnmpGetOperation)new SnmpGetOperation(target, SnmpBer.GET, oids).start(engine);
+		Assert.assertTrue("Get completed", get.await(20000));
+		for(int i = 0; i < oids.length; i++) {
+			SnmpVarBind vb = get.getResult(i);
+			if(i==30) {
+				Assert.assertNull("Unknown OID", vb);
+			} else {
+				Assert.assertNotNull("OID #" + i, vb);
+				Assert.assertEquals("Value #" + i, String.valueOf(value(vb.getName().getIdentifiers())), vb.getValue().toString());
+			}
+		}
+		SnmpWalkOperation walk = (SnmpWalkOperation)new SnmpWalkOperation(target, "1.3.6.1.2.1.2.2.1.16").start(engine);
+		Assert.assertTrue("Walk completed", walk.await(20000));
+		Assert.assertEquals("Last column walked to the end of the MIB", ROWS, walk.getResults(0).size());
+	}
+
+	/**
+	 * Walks an agent that never answers and checks the operation times out after its retries
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testDeadAgentTimesOut() throws Exception {
+		DatagramSocket dead = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+		try {
+			SnmpTarget target = new SnmpTarget(InetAddress.getByName("127.0.0.1"), dead.getLocalPort(), 1, "public");
+			target.setTimeout(100);
+			target.setRetries(1);
+			SnmpWalkOperation walk = (SnmpWalkOperation)new SnmpWalkOperation(target, "1.3.6.1.2.1.2").start(engine);
+			Assert.assertTrue("Walk completed", walk.await(5000));
+			Assert.assertTrue("Walk timed out", walk.isTimedOut());
+			Assert.assertEquals("Timeouts", 1, engine.getTimeouts());
+			Assert.assertEquals("Retransmits", 1, engine.getRetransmits());
+		} finally {
+			dead.close();
+		}
+	}
+
+	/**
+	 * Asserts both columns of a walk hold every row in order with the expected values
+	 * @param walk the completed walk
+	 */
+	protected void assertColumns(SnmpWalkOperation walk) {
+		for(int c = 0; c < 2; c++) {
+			List<SnmpVarBind> rows = walk.getResults(c);
+			Assert.assertEquals("Column #" + c + " rows", ROWS, rows.size());
+			for(int i = 0; i < ROWS; i++) {
+				int[] oid = rows.get(i).getName().getIdentifiers();
+				Assert.assertEquals("Column #" + c + " row order", i+1, oid[oid.length-1]);
+				Assert.assertEquals("Column #" + c + " value", String.valueOf(value(oid)), rows.get(i).getValue().toString());
+			}
+		}
+	}
+
+	/**
+	 * Starts a fake agent
+	 * @param version1 true for a v1 agent
+	 * @param dropEvery drop every n-th datagram, or 0 to drop none
+	 * @param bulkLimit the largest max-repetitions answered without tooBig
+	 * @return the started agent
+	 * @throws Exception thrown on any error
+	 */
+	protected FakeAgent startAgent(boolean version1, int dropEvery, int bulkLimit) throws Exception {
+		FakeAgent agent = new FakeAgent(version1, dropEvery, bulkLimit);
+		agents.add(agent);
+		agent.start();
+		return agent;
+	}
+
+	/**
+	 * Creates a target for a fake agent
+	 * @param agent the agent
+	 * @param version the wire version
+	 * @return the target
+	 * @throws Exception thrown on any error
+	 */
+	protected static SnmpTarget target(FakeAgent agent, int version) throws Exception {
+		SnmpTarget target = new SnmpTarget(InetAddress.getByName("127.0.0.1"), agent.socket.getLocalPort(), version, "public");
+		target.setTimeout(200);
+		target.setRetries(3);
+		return target;
+	}
+
+	/**
+	 * The fake agent's value for an OID
+	 * @param oid the OID
+	 * @return the value
+	 */
+	static int value(int[] oid) {
+		return oid[oid.length-1]*7 + oid[oid.length-2];
+	}
+
+	/**
+	 * Appends an arc to an OID
+	 * @param oid the OID
+	 * @param arc the arc to append
+	 * @return the new OID
+	 */
+	static int[] concat(int[] oid, int arc) {
+		int[] result = new int[oid.length+1];
+		System.arraycopy(oid, 0, result, 0, oid.length);
+		result[oid.length] = arc;
+		return result;
+	}
+
+	/**
+	 * Returns the first MIB OID after the passed OID
+	 * @param oid the OID
+	 * @return the next OID or null at the end of the MIB
+	 */
+	static int[] next(int[] oid) {
+		for(int[] candidate: MIB) {
+			if(SnmpBer.compare(candidate, oid) > 0) return candidate;
+		}
+		return null;
+	}
+
+	/**
+	 * Determines if an OID exists in the MIB
+	 * @param oid the OID
+	 * @return true if it exists
+	 */
+	static boolean exists(int[] oid) {
+		for(int[] candidate: MIB) {
+			if(Arrays.equals(candidate, oid)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Converts ints to bytes
+	 * @param values the unsigned byte values
+	 * @return the bytes
+	 */
+	static byte[] bytes(int... values) {
+		byte[] b = new byte[values.length];
+		for(int i = 0; i < values.length; i++) b[i] = (byte)values[i];
+		return b;
+	}
+
+	/**
+	 * Writes a TLV. Kept independent of the engine's own encoder so the decoder is checked against a second implementation.
+	 * @param out the output
+	 * @param tag the tag
+	 * @param content the content
+	 */
+	static void tlv(ByteArrayOutputStream out, int tag, byte[] content) {
+		out.write(tag);
+		int length = content.length;
+		if(length < 0x80) {
+			out.write(length);
+		} else if(length < 0x100) {
+			out.write(0x81);
+			out.write(length);
+		} else {
+			out.write(0x82);
+			out.write(length >> 8);
+			out.write(length & 0xFF);
+		}
+		out.write(content, 0, content.length);
+	}
+
+	/**
+	 * Writes a minimal two's complement INTEGER
+	 * @param out the output
+	 * @param value the value
+	 */
+	static void integer(ByteArrayOutputStream out, int value) {
+		byte[] full = BigInteger.valueOf(value).toByteArray();
+		tlv(out, 0x02, full);
+	}
+
+	/**
+	 * Encodes OID content
+	 * @param oid the OID
+	 * @return the content bytes
+	 */
+	static byte[] oid(int[] oid) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(oid[0]*40 + oid[1]);
+		for(int i = 2; i < oid.length; i++) {
+			long arc = oid[i] & 0xFFFFFFFFL;
+			int shift = 28;
+			while(shift > 0 && (arc >> shift)==0) shift -= 7;
+			for(; shift > 0; shift -= 7) out.write((int)((arc >> shift) & 0x7F) | 0x80);
+			out.write((int)(arc & 0x7F));
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Encodes a varbind
+	 * @param name the OID
+	 * @param tag the value tag
+	 * @param value the value content
+	 * @return the varbind bytes
+	 */
+	static byte[] varBind(int[] name, int tag, byte[] value) {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		tlv(content, 0x06, oid(name));
+		tlv(content, tag, value);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		tlv(out, 0x30, content.toByteArray());
+		return out.toByteArray();
+	}
+
+	/**
+	 * Encodes the fake agent's varbind for an OID
+	 * @param name the OID
+	 * @param found true if the OID exists, false for endOfMibView
+	 * @return the varbind bytes
+	 */
+	static byte[] agentVarBind(int[] name, boolean found) {
+		if(!found) return varBind(name, 0x82, new byte[0]);
+		if(Arrays.equals(name, SYSDESCR)) return varBind(name, 0x04, "Fake Agent".getBytes());
+		int v = value(name);
+		return varBind(name, 0x41, bytes(0, 0, (v >> 8) & 0xFF, v & 0xFF));
+	}
+
+	/**
+	 * Encodes a response message
+	 * @param version the wire version
+	 * @param requestId the request id
+	 * @param errorStatus the error status
+	 * @param errorIndex the error index
+	 * @param vbs the encoded varbinds
+	 * @return the message bytes
+	 */
+	static byte[] response(int version, int requestId, int errorStatus, int errorIndex, List<byte[]> vbs) {
+		ByteArrayOutputStream list = new ByteArrayOutputStream();
+		for(byte[] vb: vbs) list.write(vb, 0, vb.length);
+		ByteArrayOutputStream pdu = new ByteArrayOutputStream();
+		integer(pdu, requestId);
+		integer(pdu, errorStatus);
+		integer(pdu, errorIndex);
+		tlv(pdu, 0x30, list.toByteArray());
+		ByteArrayOutputStream message = new ByteArrayOutputStream();
+		integer(message, version);
+		tlv(message, 0x04, "public".getBytes());
+		tlv(message, SnmpBer.RESPONSE, pdu.toByteArray());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		tlv(out, 0x30, message.toByteArray());
+		return out.toByteArray();
+	}
+
+	/**
+	 * <p>Title: FakeAgent</p>
+	 * <p>Description: A loopback UDP agent serving {@link SnmpEngineTestCase#MIB} with optional loss and a GETBULK size limit.</p>
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>test.org.helios.collectors.snmp.engine.SnmpEngineTestCase.FakeAgent</code></p>
+	 */
+	static class FakeAgent extends Thread {
+		/** The agent socket */
+		final DatagramSocket socket;
+		/** True for a v1 agent */
+		final boolean version1;
+		/** Drop every n-th datagram, or 0 to drop none */
+		final int dropEvery;
+		/** The largest max-repetitions answered without tooBig */
+		final int bulkLimit;
+		/** The number of tooBig responses sent */
+		final AtomicInteger tooBigs = new AtomicInteger();
+		/** The largest max-repetitions served */
+		final AtomicInteger maxServed = new AtomicInteger();
+
+		/**
+		 * Creates a new FakeAgent
+		 * @param version1 true for a v1 agent
+		 * @param dropEvery drop every n-th datagram, or 0 to drop none
+		 * @param bulkLimit the largest max-repetitions answered without tooBig
+		 * @throws Exception thrown on any error
+		 */
+		FakeAgent(boolean version1, int dropEvery, int bulkLimit) throws Exception {
+			super("FakeSnmpAgent");
+			setDaemon(true);
+			this.socket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+			this.version1 = version1;
+			this.dropEvery = dropEvery;
+			this.bulkLimit = bulkLimit;
+		}
+
+		/**
+		 * Stops the agent
+		 */
+		void close() {
+			socket.close();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Thread#run()
+		 */
+		public void run() {
+			byte[] buf = new byte[65536];
+			int received = 0;
+			try {
+				while(true) {
+					DatagramPacket packet = new DatagramPacket(buf, buf.length);
+					socket.receive(packet);
+					received++;
+					if(dropEvery > 0 && received % dropEvery == 0) continue;
+					byte[] reply = answer(SnmpBer.decode(buf, 0, packet.getLength()));
+					socket.send(new DatagramPacket(reply, reply.length, packet.getSocketAddress()));
+				}
+			} catch (Exception e) {
+				if(!socket.isClosed()) e.printStackTrace(System.err);
+			}
+		}
+
+		/**
+		 * Builds the response to a request
+		 * @param request the decoded request
+		 * @return the response bytes
+		 */
+		byte[] answer(SnmpBer.Response request) {
+			List<byte[]> out = new ArrayList<byte[]>();
+			int errorStatus = 0, errorIndex = 0;
+			if(request.pduType==SnmpBer.GETBULK) {
+				int reps = request.errorIndex;
+				if(reps > bulkLimit) {
+					tooBigs.incrementAndGet();
+					errorStatus = SnmpBer.ERR_TOO_BIG;
+				} else {
+					int served;
+					while((served = maxServed.get()) < reps && !maxServed.compareAndSet(served, reps));
+					int[] current = request.varBinds[0].getName().getIdentifiers();
+					for(int r = 0; r < reps; r++) {
+						int[] nx = next(current);
+						if(nx==null) {
+							out.add(agentVarBind(current, false));
+							break;
+						}
+						out.add(agentVarBind(nx, true));
+						current = nx;
+					}
+				}
+			} else {
+				for(int i = 0; i < request.varBinds.length; i++) {
+					int[] name = request.varBinds[i].getName().getIdentifiers();
+					int[] found = request.pduType==SnmpBer.GETNEXT ? next(name) : (exists(name) ? name : null);
+					if(found==null && version1) {
+						errorStatus = SnmpBer.ERR_NO_SUCH_NAME;
+						errorIndex = i+1;
+						out.clear();
+						break;
+					}
+					out.add(agentVarBind(found==null ? name : found, found!=null));
+				}
+			}
+			return response(version1 ? 0 : 1, request.requestId, errorStatus, errorIndex, out);
+		}
+	}
+}
@@ -0,0 +1,51 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.esper.engine;
+
+import com.espertech.esper.client.EPServiceProvider;
+import com.espertech.esper.client.EPStatement;
+import com.espertech.esper.client.EventBean;
+
+/**
+ * <p>Title: BatchUpdateListener</p>
+ * <p>Description: Optionally implemented by a {@link ListenerRegistration} that can process statement results in batches.
+ * When a listener is delivered to through a {@link BatchedListenerDispatcher}, all the updates accumulated since the previous delivery
+ * are passed in one call instead of one <code>update</code> call per statement result.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.esper.engine.BatchUpdateListener</code></p>
+ */
+
+public interface BatchUpdateListener {
+	/**
+	 * Delivers a batch of statement results. The arrays are index aligned, one entry per statement update.
+	 * @param newEvents The new events of each update
+	 * @param oldEvents The old events of each update
+	 * @param statements The statement that produced each update
+	 * @param provider The esper service provider
+	 */
+	public void updateBatch(EventBean[][] newEvents, EventBean[][] oldEvents, EPStatement[] statements, EPServiceProvider provider);
+}
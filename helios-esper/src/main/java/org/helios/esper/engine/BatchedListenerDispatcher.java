@@ -0,0 +1,268 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.esper.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.helios.threads.ThreadFactoryBuilder;
+
+import com.espertech.esper.client.EPServiceProvider;
+import com.espertech.esper.client.EPStatement;
+import com.espertech.esper.client.EventBean;
+import com.espertech.esper.client.StatementAwareUpdateListener;
+
+/**
+ * <p>Title: BatchedListenerDispatcher</p>
+ * <p>Description: Decouples a {@link ListenerRegistration} from the engine's ingest threads. Statement results are placed on a bounded queue 
+ * and delivered to the wrapped listener by a dedicated thread, in batches if the listener implements {@link BatchUpdateListener}. 
+ * When the queue is full the publishing ingest thread waits for space, so a slow listener slows down ingest rather than losing results.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.esper.engine.BatchedListenerDispatcher</code></p>
+ */
+
+public class BatchedListenerDispatcher implements StatementAwareUpdateListener {
+	/** The wrapped listener */
+	protected final ListenerRegistration listener;
+	/** The queue of pending updates */
+	protected final ArrayBlockingQueue<Update> queue;
+	/** The maximum number of updates delivered in one batch */
+	protected final int batchSize;
+	/** The delivery thread */
+	protected final Thread deliveryThread;
+	/** Indicates if the dispatcher is running */
+	protected volatile boolean running = false;
+	/** The number of delivered updates */
+	protected final AtomicLong delivered = new AtomicLong(0L);
+	/** The number of delivered batches */
+	protected final AtomicLong batches = new AtomicLong(0L);
+	/** The number of updates that waited for queue space */
+	protected final AtomicLong backpressureWaits = new AtomicLong(0L);
+	/** The number of updates the listener failed to process */
+	protected final AtomicLong errors = new AtomicLong(0L);
+	/** Instance logger */
+	protected final Logger log = Logger.getLogger(getClass());
+	
+	/** The default capacity of the update queue */
+	public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+	
+	/**
+	 * Creates a new BatchedListenerDispatcher
+	 * @param listener The listener to deliver to
+	 * @param queueCapacity The capacity of the update queue
+	 * @param batchSize The maximum number of updates delivered in one batch
+	 */
+	public BatchedListenerDispatcher(ListenerRegistration listener, int queueCapacity, int batchSize) {
+		if(listener==null) throw new IllegalArgumentException("The passed listener was null", new Throwable());
+		if(queueCapacity<1) throw new IllegalArgumentException("Invalid queue capacity [" + queueCapacity + "]", new Throwable());
+		if(batchSize<1) throw new IllegalArgumentException("Invalid batch size [" + batchSize + "]", new Throwable());
+		this.listener = listener;
+		this.batchSize = batchSize;
+		queue = new ArrayBlockingQueue<Update>(queueCapacity);
+		ThreadFactory threadFactory = ThreadFactoryBuilder.newBuilder()
+			.setThreadGroupNamePrefix("ListenerDispatch ThreadGroup")
+			.setThreadNamePrefix("ListenerDispatch [" + listener.getName() + "] Thread")
+			.setDaemonThreads(true)
+			.build();
+		deliveryThread = threadFactory.newThread(new Runnable(){
+			public void run() {
+				deliver();
+			}
+		});
+	}
+	
+	/**
+	 * Starts the delivery thread
+	 */
+	public void start() {
+		running = true;
+		deliveryThread.start();
+	}
+	
+	/**
+	 * Stops the delivery thread once the queued updates have been delivered
+	 */
+	public void stop() {
+		running = false;
+		try {
+			deliveryThread.join(5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Enqueues a statement update for delivery, waiting for queue space if the queue is full.
+	 * @param newEvents The new events
+	 * @param oldEvents The old events
+	 * @param statement The statement that produced the update
+	 * @param provider The esper service provider
+	 */
+	@Override
+	public void update(EventBean[] newEvents, EventBean[] oldEvents, EPStatement statement, EPServiceProvider provider) {
+		Update update = new Update(newEvents, oldEvents, statement, provider);
+		if(queue.offer(update)) return;
+		backpressureWaits.incrementAndGet();
+		try {
+			queue.put(update);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			errors.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * The delivery thread loop
+	 */
+	protected void deliver() {
+		List<Update> drained = new ArrayList<Update>(batchSize);
+		BatchUpdateListener batchListener = (listener instanceof BatchUpdateListener) ? (BatchUpdateListener)listener : null;
+		while(running || !queue.isEmpty()) {
+			try {
+				Update first = queue.poll(1000, TimeUnit.MILLISECONDS);
+				if(first==null) continue;
+				drained.add(first);
+			} catch (InterruptedException e) {
+				if(!running) break;
+				continue;
+			}
+			queue.drainTo(drained, batchSize-1);
+			int size = drained.size();
+			if(batchListener!=null) {
+				EventBean[][] newEvents = new EventBean[size][];
+				EventBean[][] oldEvents = new EventBean[size][];
+				EPStatement[] statements = new EPStatement[size];
+				for(int i = 0; i < size; i++) {
+					Update u = drained.get(i);
+					newEvents[i] = u.newEvents;
+					oldEvents[i] = u.oldEvents;
+					statements[i] = u.statement;
+				}
+				try {
+					batchListener.updateBatch(newEvents, oldEvents, statements, drained.get(0).provider);
+				} catch (Exception e) {
+					errors.addAndGet(size);
+					log.warn("Listener [" + listener.getName() + "] failed to process batch of [" + size + "] updates", e);
+				}
+			} else {
+				for(Update u: drained) {
+					try {
+						listener.update(u.newEvents, u.oldEvents, u.statement, u.provider);
+					} catch (Exception e) {
+						errors.incrementAndGet();
+						if(log.isDebugEnabled()) log.debug("Listener [" + listener.getName() + "] failed to process update", e);
+					}
+				}
+			}
+			drained.clear();
+			delivered.addAndGet(size);
+			batches.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Returns the wrapped listener
+	 * @return the wrapped listener
+	 */
+	public ListenerRegistration getListener() {
+		return listener;
+	}
+	
+	/**
+	 * Returns the number of updates waiting for delivery
+	 * @return the queue depth
+	 */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+	
+	/**
+	 * Returns the number of delivered updates
+	 * @return the number of delivered updates
+	 */
+	public long getDelivered() {
+		return delivered.get();
+	}
+	
+	/**
+	 * Returns the number of delivered batches
+	 * @return the number of delivered batches
+	 */
+	public long getBatches() {
+		return batches.get();
+	}
+	
+	/**
+	 * Returns the number of updates that waited for queue space
+	 * @return the number of backpressure waits
+	 */
+	public long getBackpressureWaits() {
+		return backpressureWaits.get();
+	}
+	
+	/**
+	 * Returns the number of updates the listener failed to process
+	 * @return the number of errors
+	 */
+	public long getErrors() {
+		return errors.get();
+	}
+	
+	/**
+	 * <p>Title: Update</p>
+	 * <p>Description: A queued statement update</p> 
+	 */
+	protected static class Update {
+		/** The new events */
+		final EventBean[] newEvents;
+		/** The old events */
+		final EventBean[] oldEvents;
+		/** The statement that produced the update */
+		final EPStatement statement;
+		/** The esper service provider */
+		final EPServiceProvider provider;
+		
+		/**
+		 * Creates a new Update
+		 * @param newEvents The new events
+		 * @param oldEvents The old events
+		 * @param statement The statement that produced the update
+		 * @param provider The esper service provider
+		 */
+		Update(EventBean[] newEvents, EventBean[] oldEvents, EPStatement statement, EPServiceProvider provider) {
+			this.newEvents = newEvents;
+			this.oldEvents = oldEvents;
+			this.statement = statement;
+			this.provider = provider;
+		}
+	}
+}
@@ -24,8 +24,10 @@
  */
 package org.helios.esper.engine;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
@@ -51,7 +53,7 @@ import org.helios.jmx.dynamic.annotations.JMXOperation;
 import org.helios.jmx.dynamic.annotations.JMXParameter;
 import org.helios.jmx.dynamic.annotations.options.AttributeMutabilityOption;
 import org.helios.spring.container.HeliosApplicationContext;
-import org.helios.threads.DroppedThreadPoolTaskCounter;
+import org.helios.threads.BlockingRejectionHandler;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanNameAware;
 import org.springframework.context.ApplicationContext;
@@ -67,6 +69,7 @@ import com.espertech.esper.client.EPStatement;
 import com.espertech.esper.client.EPStatementState;
 import com.espertech.esper.client.EPStatementStateListener;
 import com.espertech.esper.client.EventSender;
+import com.espertech.esper.client.StatementAwareUpdateListener;
 import com.espertech.esper.core.service.EPRuntimeImpl;
 import com.espertech.esper.core.service.EPStatementImpl;
 
@@ -114,6 +117,20 @@ public class Engine implements ApplicationContextAware, BeanNameAware, EPService
 	protected ExecutorService notificationThreadPool = null;
 	/** The counter for saturation dropped outboud notifications */
 	protected final AtomicLong notificationDrops = new AtomicLong(0L);
+	/** The number of event ingest threads. Zero sends events into the engine on the caller's thread */
+	protected int ingestThreads = EventIngestStage.DEFAULT_THREADS;
+	/** The maximum number of queued event batches an ingest thread drains per pass */
+	protected int ingestBatchSize = EventIngestStage.DEFAULT_BATCH_SIZE;
+	/** The capacity of each ingest partition queue, in batches */
+	protected int ingestQueueCapacity = EventIngestStage.DEFAULT_QUEUE_CAPACITY;
+	/** The capacity of each listener's update queue. Zero delivers updates to listeners on the ingest threads */
+	protected int listenerQueueCapacity = BatchedListenerDispatcher.DEFAULT_QUEUE_CAPACITY;
+	/** The event partition key extractor */
+	protected EventPartitioner partitioner = new FullNameEventPartitioner();
+	/** The partitioned event ingest stage */
+	protected EventIngestStage ingestStage = null;
+	/** The batching listener dispatchers */
+	protected final List<BatchedListenerDispatcher> dispatchers = new ArrayList<BatchedListenerDispatcher>();
 	
 
 	/** The default Helios Esper Engine JMX ObjectName */
@@ -185,7 +202,8 @@ public class Engine implements ApplicationContextAware, BeanNameAware, EPService
 	}
 	
 	/**
-	 * Injects an aray of events.
+	 * Injects an aray of events. If the ingest stage is enabled, the events are partitioned across the ingest threads 
+	 * and the call only waits if the target partition queues are full. Otherwise the events are sent on the caller's thread.
 	 * @param events
 	 */
 	public void injectEvents(Object...events) {
@@ -193,8 +211,12 @@ public class Engine implements ApplicationContextAware, BeanNameAware, EPService
 			if(!isEventTypeRegistered(events[0].getClass())) {
 				configuration.addEventType(events[0].getClass());
 			}
-			for(Object o: events) {
-				esperRuntime.sendEvent(o);
+			if(ingestStage!=null) {
+				ingestStage.submit(events);
+			} else {
+				for(Object o: events) {
+					esperRuntime.sendEvent(o);
+				}
 			}
 		}
 	}
@@ -203,6 +225,15 @@ public class Engine implements ApplicationContextAware, BeanNameAware, EPService
 	 * Stops the helios esper engine
 	 */
 	public void stop() {
+		if(ingestStage!=null) {
+			log.info("\n\t====\n\tStopping Event Ingest\n\t====\n");
+			ingestStage.stop();
+			ingestStage = null;
+		}
+		for(BatchedListenerDispatcher dispatcher: dispatchers) {
+			dispatcher.stop();
+		}
+		dispatchers.clear();
 		try {
 			log.info("\n\t====\n\tStopping all Esper Statements\n\t====\n");
 			esperAdmin.stopAllStatements();
@@ -262,7 +293,7 @@ public class Engine implements ApplicationContextAware, BeanNameAware, EPService
 				notificationThreadPool = new ThreadPoolExecutor(2, 5, 15000, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(500, true));
 			}
 			if(notificationThreadPool instanceof ThreadPoolExecutor) {
-				((ThreadPoolExecutor)notificationThreadPool).setRejectedExecutionHandler(new DroppedThreadPoolTaskCounter(this.notificationDrops));
+				((ThreadPoolExecutor)notificationThreadPool).setRejectedExecutionHandler(new BlockingRejectionHandler(this.notificationDrops));
 			}
 
 			
@@ -275,10 +306,17 @@ public class Engine implements ApplicationContextAware, BeanNameAware, EPService
 			}
 			for(ListenerRegistration listener: listeners) {
 				int i = 0;
+				StatementAwareUpdateListener target = listener;
+				if(listenerQueueCapacity>0) {
+					BatchedListenerDispatcher dispatcher = new BatchedListenerDispatcher(listener, listenerQueueCapacity, ingestBatchSize);
+					dispatcher.start();
+					dispatchers.add(dispatcher);
+					target = dispatcher;
+				}
 				for(String stName: listener.getTargetStatements()) {
 					EPStatement st = compiledStatements.get(stName);
 					if(st!=null) {
-						st.addListener(listener);
+						st.addListener(target);
 						i++;
 					} else {
 						log.warn("Listener Requested Non-Existent Statement:" + stName);
@@ -286,6 +324,10 @@ public class Engine implements ApplicationContextAware, BeanNameAware, EPService
 				}
 				log.info("Registered Listener [" +listener.getName() + "] for [" + i + "] Statements.");
 			}		
+			if(ingestThreads>0) {
+				ingestStage = new EventIngestStage(beanName, esperRuntime, partitioner, ingestThreads, ingestBatchSize, ingestQueueCapacity);
+				ingestStage.start();
+			}
 			try {
 				ManagedObjectDynamicMBean modb = new ManagedObjectDynamicMBean("Helios Core Metric Engine", this); 
 				JMXHelperExtended.getHeliosMBeanServer().registerMBean(modb, objectName);
@@ -623,4 +665,164 @@ public class Engine implements ApplicationContextAware, BeanNameAware, EPService
 	public void resetNotificationDrops() {
 		notificationDrops.set(0L);
 	}
+
+	/**
+	 * Returns the number of event ingest threads
+	 * @return the number of event ingest threads
+	 */
+	@JMXAttribute (name="IngestThreads", description="The number of event ingest threads", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getIngestThreads() {
+		return ingestThreads;
+	}
+
+	/**
+	 * Sets the number of event ingest threads. Zero sends events into the engine on the caller's thread.
+	 * @param ingestThreads the number of event ingest threads
+	 */
+	public void setIngestThreads(int ingestThreads) {
+		if(ingestThreads<0) throw new IllegalArgumentException("Invalid ingest thread count [" + ingestThreads + "]", new Throwable());
+		this.ingestThreads = ingestThreads;
+	}
+
+	/**
+	 * Returns the maximum number of queued batches drained per ingest or listener delivery pass
+	 * @return the ingest batch size
+	 */
+	@JMXAttribute (name="IngestBatchSize", description="The maximum number of queued batches drained per ingest pass", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getIngestBatchSize() {
+		return ingestBatchSize;
+	}
+
+	/**
+	 * Sets the maximum number of queued batches drained per ingest or listener delivery pass
+	 * @param ingestBatchSize the ingest batch size
+	 */
+	public void setIngestBatchSize(int ingestBatchSize) {
+		if(ingestBatchSize<1) throw new IllegalArgumentException("Invalid ingest batch size [" + ingestBatchSize + "]", new Throwable());
+		this.ingestBatchSize = ingestBatchSize;
+	}
+
+	/**
+	 * Returns the capacity of each ingest partition queue, in batches
+	 * @return the ingest queue capacity
+	 */
+	@JMXAttribute (name="IngestQueueCapacity", description="The capacity of each ingest partition queue", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getIngestQueueCapacity() {
+		return ingestQueueCapacity;
+	}
+
+	/**
+	 * Sets the capacity of each ingest partition queue, in batches
+	 * @param ingestQueueCapacity the ingest queue capacity
+	 */
+	public void setIngestQueueCapacity(int ingestQueueCapacity) {
+		if(ingestQueueCapacity<1) throw new IllegalArgumentException("Invalid ingest queue capacity [" + ingestQueueCapacity + "]", new Throwable());
+		this.ingestQueueCapacity = ingestQueueCapacity;
+	}
+
+	/**
+	 * Returns the capacity of each listener's update queue
+	 * @return the listener queue capacity
+	 */
+	@JMXAttribute (name="ListenerQueueCapacity", description="The capacity of each listener's update queue", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getListenerQueueCapacity() {
+		return listenerQueueCapacity;
+	}
+
+	/**
+	 * Sets the capacity of each listener's update queue. Zero delivers updates to listeners on the ingest threads.
+	 * @param listenerQueueCapacity the listener queue capacity
+	 */
+	public void setListenerQueueCapacity(int listenerQueueCapacity) {
+		if(listenerQueueCapacity<0) throw new IllegalArgumentException("Invalid listener queue capacity [" + listenerQueueCapacity + "]", new Throwable());
+		this.listenerQueueCapacity = listenerQueueCapacity;
+	}
+
+	/**
+	 * Returns the event partition key extractor
+	 * @return the event partitioner
+	 */
+	public EventPartitioner getPartitioner() {
+		return partitioner;
+	}
+
+	/**
+	 * Sets the event partition key extractor
+	 * @param partitioner the event partitioner
+	 */
+	public void setPartitioner(EventPartitioner partitioner) {
+		if(partitioner==null) throw new IllegalArgumentException("The passed partitioner was null", new Throwable());
+		this.partitioner = partitioner;
+	}
+
+	/**
+	 * Returns the number of events submitted to the ingest stage
+	 * @return the number of submitted events
+	 */
+	@JMXAttribute (name="IngestSubmitted", description="The number of events submitted to the ingest stage", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getIngestSubmitted() {
+		return ingestStage==null ? 0L : ingestStage.getSubmitted();
+	}
+
+	/**
+	 * Returns the number of events the ingest stage sent into the engine
+	 * @return the number of sent events
+	 */
+	@JMXAttribute (name="IngestSent", description="The number of events the ingest stage sent into the engine", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getIngestSent() {
+		return ingestStage==null ? 0L : ingestStage.getSent();
+	}
+
+	/**
+	 * Returns the number of event batches waiting in the ingest partition queues
+	 * @return the ingest queue depth
+	 */
+	@JMXAttribute (name="IngestQueueDepth", description="The number of event batches waiting in the ingest partition queues", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getIngestQueueDepth() {
+		return ingestStage==null ? 0 : ingestStage.getQueueDepth();
+	}
+
+	/**
+	 * Returns the number of event submissions that waited for ingest queue space
+	 * @return the number of ingest backpressure waits
+	 */
+	@JMXAttribute (name="IngestBackpressureWaits", description="The number of event submissions that waited for ingest queue space", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getIngestBackpressureWaits() {
+		return ingestStage==null ? 0L : ingestStage.getBackpressureWaits();
+	}
+
+	/**
+	 * Returns the number of events the engine failed to process in the ingest stage
+	 * @return the number of ingest errors
+	 */
+	@JMXAttribute (name="IngestErrors", description="The number of events the engine failed to process in the ingest stage", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getIngestErrors() {
+		return ingestStage==null ? 0L : ingestStage.getErrors();
+	}
+
+	/**
+	 * Returns the number of statement updates waiting for delivery to listeners
+	 * @return the listener queue depth
+	 */
+	@JMXAttribute (name="ListenerQueueDepth", description="The number of statement updates waiting for delivery to listeners", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getListenerQueueDepth() {
+		int depth = 0;
+		for(BatchedListenerDispatcher dispatcher: dispatchers) {
+			depth += dispatcher.getQueueDepth();
+		}
+		return depth;
+	}
+
+	/**
+	 * Returns the number of statement updates that waited for listener queue space
+	 * @return the number of listener backpressure waits
+	 */
+	@JMXAttribute (name="ListenerBackpressureWaits", description="The number of statement updates that waited for listener queue space", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getListenerBackpressureWaits() {
+		long waits = 0L;
+		for(BatchedListenerDispatcher dispatcher: dispatchers) {
+			waits += dispatcher.getBackpressureWaits();
+		}
+		return waits;
+	}
 }
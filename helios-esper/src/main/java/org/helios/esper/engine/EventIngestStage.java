@@ -0,0 +1,333 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.esper.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.helios.threads.ThreadFactoryBuilder;
+
+import com.espertech.esper.client.EPRuntime;
+
+/**
+ * <p>Title: EventIngestStage</p>
+ * <p>Description: A partitioned, batching ingest stage in front of an esper runtime. Submitted events are split by the partition key 
+ * extracted by an {@link EventPartitioner} across a fixed number of ingest threads, so events for the same metric are always sent 
+ * into the engine by the same thread in submission order while different metrics are evaluated in parallel.</p>
+ * <p>Each submission is grouped per partition and enqueued as one batch, and each ingest thread drains up to <code>batchSize</code> 
+ * queued batches per pass. The partition queues are bounded and a submitter that finds its partition queue full waits for space, 
+ * so a saturated engine slows down its producers instead of dropping events.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.esper.engine.EventIngestStage</code></p>
+ */
+
+public class EventIngestStage {
+	/** The esper runtime events are sent into */
+	protected final EPRuntime runtime;
+	/** The partition key extractor */
+	protected final EventPartitioner partitioner;
+	/** The partition queues of event batches */
+	protected final ArrayBlockingQueue<Object[]>[] queues;
+	/** The ingest threads, one per partition */
+	protected final Thread[] threads;
+	/** The maximum number of queued batches an ingest thread drains per pass */
+	protected final int batchSize;
+	/** Indicates if the stage is running */
+	protected volatile boolean running = false;
+	/** Distributes unkeyed events across the partitions */
+	protected final AtomicInteger roundRobin = new AtomicInteger(0);
+	/** The number of submitted events */
+	protected final AtomicLong submitted = new AtomicLong(0L);
+	/** The number of events sent into the engine */
+	protected final AtomicLong sent = new AtomicLong(0L);
+	/** The number of drain passes by the ingest threads */
+	protected final AtomicLong passes = new AtomicLong(0L);
+	/** The number of submissions that waited for partition queue space */
+	protected final AtomicLong backpressureWaits = new AtomicLong(0L);
+	/** The number of events the engine failed to process */
+	protected final AtomicLong errors = new AtomicLong(0L);
+	/** Instance logger */
+	protected final Logger log = Logger.getLogger(getClass());
+	
+	/** The default number of ingest threads */
+	public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+	/** The default maximum number of queued batches drained per pass */
+	public static final int DEFAULT_BATCH_SIZE = 64;
+	/** The default capacity of each partition queue, in batches */
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+	/**
+	 * Creates a new EventIngestStage
+	 * @param name The name of the stage, used to name the ingest threads
+	 * @param runtime The esper runtime events are sent into
+	 * @param partitioner The partition key extractor
+	 * @param threadCount The number of ingest threads
+	 * @param batchSize The maximum number of queued batches an ingest thread drains per pass
+	 * @param queueCapacity The capacity of each partition queue, in batches
+	 */
+	@SuppressWarnings("unchecked")
+	public EventIngestStage(String name, EPRuntime runtime, EventPartitioner partitioner, int threadCount, int batchSize, int queueCapacity) {
+		if(runtime==null) throw new IllegalArgumentException("The passed runtime was null", new Throwable());
+		if(partitioner==null) throw new IllegalArgumentException("The passed partitioner was null", new Throwable());
+		if(threadCount<1) throw new IllegalArgumentException("Invalid thread count [" + threadCount + "]", new Throwable());
+		if(batchSize<1) throw new IllegalArgumentException("Invalid batch size [" + batchSize + "]", new Throwable());
+		if(queueCapacity<1) throw new IllegalArgumentException("Invalid queue capacity [" + queueCapacity + "]", new Throwable());
+		this.runtime = runtime;
+		this.partitioner = partitioner;
+		this.batchSize = batchSize;
+		queues = new ArrayBlockingQueue[threadCount];
+		threads = new Thread[threadCount];
+		ThreadFactory threadFactory = ThreadFactoryBuilder.newBuilder()
+			.setThreadGroupNamePrefix(name + " EventIngest ThreadGroup")
+			.setThreadNamePrefix(name + " EventIngest Thread")
+			.setDaemonThreads(true)
+			.build();
+		for(int i = 0; i < threadCount; i++) {
+			final ArrayBlockingQueue<Object[]> queue = new ArrayBlockingQueue<Object[]>(queueCapacity);
+			queues[i] = queue;
+			threads[i] = threadFactory.newThread(new Runnable(){
+				public void run() {
+					ingest(queue);
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Starts the ingest threads
+	 */
+	public void start() {
+		running = true;
+		for(Thread thread: threads) {
+			thread.start();
+		}
+		log.info("Started EventIngestStage with [" + threads.length + "] ingest threads");
+	}
+	
+	/**
+	 * Stops the ingest threads once the queued events have been sent into the engine
+	 */
+	public void stop() {
+		running = false;
+		for(Thread thread: threads) {
+			try {
+				thread.join(5000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		log.info("Stopped EventIngestStage");
+	}
+	
+	/**
+	 * Submits events to be sent into the engine. Waits if a target partition queue is full.
+	 * @param events The events to submit
+	 */
+	public void submit(Object...events) {
+		if(events==null || events.length==0) return;
+		if(!running) throw new IllegalStateException("The EventIngestStage is not running", new Throwable());
+		int partitionCount = queues.length;
+		if(events.length==1 || partitionCount==1) {
+			if(partitionCount==1) {
+				enqueue(0, events);
+			} else {
+				enqueue(partition(events[0]), events);
+			}
+			submitted.addAndGet(events.length);
+			return;
+		}
+		int[] partitions = new int[events.length];
+		int[] counts = new int[partitionCount];
+		for(int i = 0; i < events.length; i++) {
+			int p = partition(events[i]);
+			partitions[i] = p;
+			counts[p]++;
+		}
+		Object[][] batches = new Object[partitionCount][];
+		for(int p = 0; p < partitionCount; p++) {
+			if(counts[p]>0) batches[p] = new Object[counts[p]];
+			counts[p] = 0;
+		}
+		for(int i = 0; i < events.length; i++) {
+			int p = partitions[i];
+			batches[p][counts[p]++] = events[i];
+		}
+		for(int p = 0; p < partitionCount; p++) {
+			if(batches[p]!=null) enqueue(p, batches[p]);
+		}
+		submitted.addAndGet(events.length);
+	}
+	
+	/**
+	 * Determines the partition of the passed event
+	 * @param event The event
+	 * @return the partition index
+	 */
+	protected int partition(Object event) {
+		Object key = partitioner.getPartitionKey(event);
+		if(key==null) {
+			return (roundRobin.getAndIncrement() & Integer.MAX_VALUE) % queues.length;
+		}
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return (h & Integer.MAX_VALUE) % queues.length;
+	}
+	
+	/**
+	 * Enqueues a batch on a partition queue, waiting for space if the queue is full
+	 * @param partition The partition index
+	 * @param batch The batch of events
+	 */
+	protected void enqueue(int partition, Object[] batch) {
+		ArrayBlockingQueue<Object[]> queue = queues[partition];
+		if(queue.offer(batch)) return;
+		backpressureWaits.incrementAndGet();
+		try {
+			queue.put(batch);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for ingest queue space", e);
+		}
+	}
+	
+	/**
+	 * The ingest thread loop. Drains batches from the passed queue and sends their events into the engine.
+	 * @param queue The partition queue
+	 */
+	protected void ingest(ArrayBlockingQueue<Object[]> queue) {
+		List<Object[]> drained = new ArrayList<Object[]>(batchSize);
+		while(running || !queue.isEmpty()) {
+			try {
+				Object[] first = queue.poll(1000, TimeUnit.MILLISECONDS);
+				if(first==null) continue;
+				drained.add(first);
+			} catch (InterruptedException e) {
+				if(!running) break;
+				continue;
+			}
+			queue.drainTo(drained, batchSize-1);
+			int count = 0;
+			for(Object[] batch: drained) {
+				for(Object event: batch) {
+					try {
+						runtime.sendEvent(event);
+						count++;
+					} catch (Exception e) {
+						errors.incrementAndGet();
+						if(log.isDebugEnabled()) log.debug("Failed to process event [" + event + "]", e);
+					}
+				}
+			}
+			drained.clear();
+			sent.addAndGet(count);
+			passes.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Returns the number of ingest threads
+	 * @return the number of ingest threads
+	 */
+	public int getThreadCount() {
+		return threads.length;
+	}
+	
+	/**
+	 * Returns the maximum number of queued batches an ingest thread drains per pass
+	 * @return the batch size
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+	
+	/**
+	 * Returns the total number of batches waiting in the partition queues
+	 * @return the queue depth
+	 */
+	public int getQueueDepth() {
+		int depth = 0;
+		for(ArrayBlockingQueue<Object[]> queue: queues) {
+			depth += queue.size();
+		}
+		return depth;
+	}
+	
+	/**
+	 * Returns the number of submitted events
+	 * @return the number of submitted events
+	 */
+	public long getSubmitted() {
+		return submitted.get();
+	}
+	
+	/**
+	 * Returns the number of events sent into the engine
+	 * @return the number of events sent into the engine
+	 */
+	public long getSent() {
+		return sent.get();
+	}
+	
+	/**
+	 * Returns the number of drain passes by the ingest threads
+	 * @return the number of drain passes
+	 */
+	public long getPasses() {
+		return passes.get();
+	}
+	
+	/**
+	 * Returns the number of submissions that waited for partition queue space
+	 * @return the number of backpressure waits
+	 */
+	public long getBackpressureWaits() {
+		return backpressureWaits.get();
+	}
+	
+	/**
+	 * Returns the number of events the engine failed to process
+	 * @return the number of errors
+	 */
+	public long getErrors() {
+		return errors.get();
+	}
+	
+	/**
+	 * Indicates if the stage is running
+	 * @return true if the stage is running
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+}
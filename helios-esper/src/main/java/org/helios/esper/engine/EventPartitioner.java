@@ -0,0 +1,44 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.esper.engine;
+
+/**
+ * <p>Title: EventPartitioner</p>
+ * <p>Description: Defines a strategy for extracting the key an event is partitioned on by the {@link EventIngestStage}.
+ * Events with equal keys are always sent into the engine by the same ingest thread, in the order they were submitted.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.esper.engine.EventPartitioner</code></p>
+ */
+
+public interface EventPartitioner {
+	/**
+	 * Returns the partition key for the passed event
+	 * @param event The event to partition
+	 * @return the partition key or null if the event can be sent by any ingest thread
+	 */
+	public Object getPartitionKey(Object event);
+}
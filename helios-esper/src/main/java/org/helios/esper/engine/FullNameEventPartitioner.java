@@ -0,0 +1,109 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.esper.engine;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.helios.ot.generic.IGenericMetric;
+
+/**
+ * <p>Title: FullNameEventPartitioner</p>
+ * <p>Description: The default {@link EventPartitioner} which partitions metric events on their fully qualified metric name.
+ * Generic metrics are keyed by their full name and other events, such as closed traces, by the value of a public no arg 
+ * <code>getFQN</code> or <code>getFullName</code> method. The method lookup is cached per event class.
+ * Events of classes with neither method are not keyed.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.esper.engine.FullNameEventPartitioner</code></p>
+ */
+
+public class FullNameEventPartitioner implements EventPartitioner {
+	/** The name accessor methods keyed by event class */
+	protected final Map<Class<?>, Method> accessors = new ConcurrentHashMap<Class<?>, Method>();
+	
+	/** The names of the methods tried as the full name accessor, in order */
+	public static final String[] ACCESSOR_NAMES = {"getFQN", "getFullName"};
+	/** Placeholder accessor for event classes with no full name accessor */
+	private static final Method NO_ACCESSOR = noAccessor();
+
+	/**
+	 * Returns the fully qualified metric name of the passed event
+	 * @param event The event to partition
+	 * @return the fully qualified metric name or null if the event has none
+	 */
+	public Object getPartitionKey(Object event) {
+		if(event==null) return null;
+		if(event instanceof IGenericMetric) {
+			return ((IGenericMetric)event).getFullName();
+		}
+		Class<?> clazz = event.getClass();
+		Method accessor = accessors.get(clazz);
+		if(accessor==null) {
+			accessor = findAccessor(clazz);
+			accessors.put(clazz, accessor);
+		}
+		if(accessor==NO_ACCESSOR) return null;
+		try {
+			return accessor.invoke(event);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Finds the full name accessor for the passed class
+	 * @param clazz The event class
+	 * @return the accessor method or {@link #NO_ACCESSOR}
+	 */
+	protected static Method findAccessor(Class<?> clazz) {
+		for(String name: ACCESSOR_NAMES) {
+			try {
+				Method method = clazz.getMethod(name);
+				if(!method.getReturnType().equals(Void.TYPE)) {
+					method.setAccessible(true);
+					return method;
+				}
+			} catch (NoSuchMethodException e) {
+			} catch (SecurityException e) {
+			}
+		}
+		return NO_ACCESSOR;
+	}
+	
+	/**
+	 * Returns the placeholder accessor
+	 * @return the placeholder accessor
+	 */
+	private static Method noAccessor() {
+		try {
+			return Object.class.getMethod("hashCode");
+		} catch (Exception e) {
+			throw new RuntimeException("Failed to resolve placeholder accessor", e);
+		}
+	}
+}
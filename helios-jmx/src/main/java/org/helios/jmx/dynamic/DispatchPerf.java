@@ -0,0 +1,196 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jmx.dynamic;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.helios.jmx.dynamic.annotations.JMXAttribute;
+import org.helios.jmx.dynamic.annotations.JMXManagedObject;
+import org.helios.jmx.dynamic.annotations.JMXOperation;
+import org.helios.jmx.dynamic.annotations.JMXParameter;
+import org.helios.jmx.dynamic.annotations.options.AttributeMutabilityOption;
+
+/**
+ * <p>Title: DispatchPerf</p>
+ * <p>Description: Compares reflective and generated attribute and operation dispatch through {@link ManagedObjectDynamicMBean}
+ * as seen by an MBeanServer client, and measures MBean construction and registration time for the first instance of a class, 
+ * which computes the class's metadata and dispatcher, against subsequent instances which reuse them.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.jmx.dynamic.DispatchPerf</code></p>
+ */
+
+public class DispatchPerf {
+	/** The attributes read by the bulk read test */
+	static final String[] ATTRIBUTES = new String[]{"Count", "Name", "Rate", "Enabled"};
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) throws Exception {
+		log("DispatchPerf Test\nPID:" + ManagementFactory.getRuntimeMXBean().getName().split("@")[0]);
+		MBeanServer server = MBeanServerFactory.newMBeanServer("DispatchPerf");
+		int loops = 2000000; // 2,000,000
+		long start = System.nanoTime();
+		register(server, 0);
+		log("First instance construction and registration:" + ((System.nanoTime()-start)/1000) + " us.");
+		int instances = 1000;
+		start = System.nanoTime();
+		for(int i = 1; i <= instances; i++) {
+			register(server, i);
+		}
+		log("Average subsequent instance construction and registration:" + ((System.nanoTime()-start)/1000/instances) + " us.");
+		ManagedClassInfo.setGeneratedDispatch(false);
+		ObjectName reflective = register(server, -1);
+		ManagedClassInfo.setGeneratedDispatch(true);
+		ObjectName generated = register(server, -2);
+		for(int i = 0; i < 3; i++) {
+			run("Reflective", server, reflective, loops);
+			run("Generated", server, generated, loops);
+		}
+		log("Generated invokers for [" + PerfBean.class.getSimpleName() + "]:" + ManagedClassInfo.getInstance(PerfBean.class).getGeneratedInvokerCount());
+	}
+	
+	/**
+	 * Runs the dispatch tests against the passed MBean
+	 * @param name The test name
+	 * @param server The MBeanServer
+	 * @param on The ObjectName of the MBean to test
+	 * @param loops The number of calls in each test
+	 * @throws Exception thrown on any JMX error
+	 */
+	public static void run(String name, MBeanServer server, ObjectName on, int loops) throws Exception {
+		long sum = 0;
+		long start = System.nanoTime();
+		for(int i = 0; i < loops; i++) {
+			sum += (Long)server.getAttribute(on, "Count");
+		}
+		long getElapsed = System.nanoTime()-start;
+		start = System.nanoTime();
+		for(int i = 0; i < loops; i++) {
+			sum += server.getAttributes(on, ATTRIBUTES).size();
+		}
+		long getsElapsed = System.nanoTime()-start;
+		Object[] params = new Object[]{1L};
+		String[] signature = new String[]{long.class.getName()};
+		start = System.nanoTime();
+		for(int i = 0; i < loops; i++) {
+			sum += (Long)server.invoke(on, "add", params, signature);
+		}
+		long invokeElapsed = System.nanoTime()-start;
+		log(name + " getAttribute:" + (getElapsed/loops) + " ns, getAttributes(" + ATTRIBUTES.length + "):" + (getsElapsed/loops) + " ns, invoke:" + (invokeElapsed/loops) + " ns. (" + sum + ")");
+	}
+	
+	/**
+	 * Creates and registers a PerfBean
+	 * @param server The MBeanServer to register in
+	 * @param id The bean id
+	 * @return the ObjectName of the registered bean
+	 * @throws Exception thrown on any JMX error
+	 */
+	public static ObjectName register(MBeanServer server, int id) throws Exception {
+		ObjectName on = new ObjectName("org.helios.jmx:service=DispatchPerf,id=" + id);
+		server.registerMBean(new PerfBean(), on);
+		return on;
+	}
+	
+	public static void log(Object msg) {
+		System.out.println(msg);
+	}
+	
+	/**
+	 * <p>Title: PerfBean</p>
+	 * <p>Description: A managed object with a typical mix of attributes and an operation</p> 
+	 */
+	@JMXManagedObject(annotated=true, declared=true)
+	public static class PerfBean extends ManagedObjectDynamicMBean {
+		/**  */
+		private static final long serialVersionUID = 4170519656476474498L;
+		/** The count */
+		protected long count = 0L;
+		/** The enabled flag */
+		protected boolean enabled = true;
+		
+		/**
+		 * Returns the count
+		 * @return the count
+		 */
+		@JMXAttribute(name="Count", description="The count", mutability=AttributeMutabilityOption.READ_ONLY)
+		public long getCount() {
+			return count;
+		}
+		
+		/**
+		 * Returns the name
+		 * @return the name
+		 */
+		@JMXAttribute(name="Name", description="The name", mutability=AttributeMutabilityOption.READ_ONLY)
+		public String getName() {
+			return "PerfBean";
+		}
+		
+		/**
+		 * Returns the rate
+		 * @return the rate
+		 */
+		@JMXAttribute(name="Rate", description="The rate", mutability=AttributeMutabilityOption.READ_ONLY)
+		public double getRate() {
+			return count/2d;
+		}
+		
+		/**
+		 * Returns the enabled flag
+		 * @return the enabled flag
+		 */
+		@JMXAttribute(name="Enabled", description="The enabled flag", mutability=AttributeMutabilityOption.READ_WRITE)
+		public boolean getEnabled() {
+			return enabled;
+		}
+		
+		/**
+		 * Sets the enabled flag
+		 * @param enabled the enabled flag
+		 */
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+		
+		/**
+		 * Adds to the count
+		 * @param delta The amount to add
+		 * @return the new count
+		 */
+		@JMXOperation(name="add", description="Adds to the count")
+		public long add(@JMXParameter(name="delta", description="The amount to add") long delta) {
+			count += delta;
+			return count;
+		}
+	}
+}
@@ -0,0 +1,253 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jmx.dynamic;
+
+import java.lang.annotation.Annotation;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.MBeanParameterInfo;
+
+import org.helios.helpers.ConfigurationHelper;
+import org.helios.jmx.dynamic.annotations.JMXManagedObject;
+import org.helios.jmx.dynamic.annotations.JMXNotifications;
+import org.helios.jmx.dynamic.annotations.JMXParameter;
+import org.helios.jmx.dynamic.dispatch.MethodDispatcherFactory;
+import org.helios.jmx.dynamic.dispatch.MethodInvoker;
+
+/**
+ * <p>Title: ManagedClassInfo</p>
+ * <p>Description: The per class reflection metadata used by {@link ManagedObjectDynamicMBean} to expose managed objects, 
+ * computed once per class rather than on each <code>reflectObject</code>, and the class's method invokers. 
+ * The invokers call through a generated {@link org.helios.jmx.dynamic.dispatch.MethodDispatcher} which is created the 
+ * first time an invoker is requested.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.jmx.dynamic.ManagedClassInfo</code></p>
+ */
+
+public class ManagedClassInfo {
+	/** The class */
+	protected final Class<?> clazz;
+	/** Indicates if the class or a super class is annotated with {@link JMXManagedObject} */
+	protected final boolean managedObject;
+	/** The class's notifications annotation, or null if it has none */
+	protected final JMXNotifications notifications;
+	/** The class's declared methods */
+	protected final Method[] declaredMethods;
+	/** The class's public methods */
+	protected final Method[] publicMethods;
+	/** The operation parameter infos keyed by method */
+	protected final Map<Method, MBeanParameterInfo[]> parameterInfos = new ConcurrentHashMap<Method, MBeanParameterInfo[]>();
+	/** The invokers keyed by method */
+	protected final Map<Method, MethodInvoker> invokers = new ConcurrentHashMap<Method, MethodInvoker>();
+	/** Indicates if the class's dispatcher has been generated */
+	protected volatile boolean dispatcherCreated = false;
+	
+	/** The cache of class infos, weakly keyed by class and softly referencing the info (which references the class) so cached classes can still be unloaded */
+	protected static final Map<Class<?>, SoftReference<ManagedClassInfo>> classInfos = Collections.synchronizedMap(new WeakHashMap<Class<?>, SoftReference<ManagedClassInfo>>());
+	/** Indicates if invokers should use generated dispatchers */
+	protected static volatile boolean generatedDispatch;
+	
+	/** The system property or environmental variable that can be set to false to disable generated dispatchers */
+	public static final String GENERATED_DISPATCH_PROP = "org.helios.jmx.dynamic.generated";
+	
+	static {
+		generatedDispatch = !"false".equalsIgnoreCase(ConfigurationHelper.getEnvThenSystemProperty(GENERATED_DISPATCH_PROP, "true").trim());
+	}
+	
+	/**
+	 * Returns the ManagedClassInfo for the passed class
+	 * @param clazz The class
+	 * @return the ManagedClassInfo
+	 */
+	public static ManagedClassInfo getInstance(Class<?> clazz) {
+		if(clazz==null) throw new IllegalArgumentException("The passed class was null", new Throwable());
+		synchronized(classInfos) {
+			SoftReference<ManagedClassInfo> ref = classInfos.get(clazz);
+			ManagedClassInfo info = ref==null ? null : ref.get();
+			if(info==null) {
+				info = new ManagedClassInfo(clazz);
+				classInfos.put(clazz, new SoftReference<ManagedClassInfo>(info));
+			}
+			return info;
+		}
+	}
+	
+	/**
+	 * Creates a new ManagedClassInfo
+	 * @param clazz The class
+	 */
+	protected ManagedClassInfo(Class<?> clazz) {
+		this.clazz = clazz;
+		managedObject = ManagedObjectDynamicMBean.isAnnotatedWith(clazz, JMXManagedObject.class);
+		notifications = ManagedObjectDynamicMBean.isAnnotatedWith(clazz, JMXNotifications.class) ? 
+				(JMXNotifications)ManagedObjectDynamicMBean.getAnnotationFrom(clazz, JMXNotifications.class) : null;
+		declaredMethods = clazz.getDeclaredMethods();
+		publicMethods = clazz.getMethods();
+	}
+	
+	/**
+	 * Returns the invoker for the passed method
+	 * @param method A method callable on instances of this class
+	 * @return the invoker
+	 */
+	public MethodInvoker getInvoker(Method method) {
+		if(method==null) throw new IllegalArgumentException("The passed method was null", new Throwable());
+		if(generatedDispatch && !dispatcherCreated) {
+			createDispatcher();
+		}
+		MethodInvoker invoker = invokers.get(method);
+		if(invoker==null || (!generatedDispatch && invoker.isGenerated())) {
+			invoker = MethodInvoker.reflective(method);
+			if(generatedDispatch) invokers.put(method, invoker);
+		}
+		return invoker;
+	}
+	
+	/**
+	 * Generates the dispatcher for this class's public and non private declared methods
+	 */
+	protected synchronized void createDispatcher() {
+		if(dispatcherCreated) return;
+		Set<Method> candidates = new LinkedHashSet<Method>();
+		for(Method m: declaredMethods) {
+			if(!Modifier.isPrivate(m.getModifiers())) candidates.add(m);
+		}
+		for(Method m: publicMethods) {
+			if(!Object.class.equals(m.getDeclaringClass())) candidates.add(m);
+		}
+		invokers.putAll(MethodDispatcherFactory.createInvokers(clazz, candidates));
+		dispatcherCreated = true;
+	}
+	
+	/**
+	 * Returns the operation parameter infos for the passed method, built from its {@link JMXParameter} annotations.
+	 * The returned array is shared and must not be modified.
+	 * @param method The method
+	 * @return the parameter infos
+	 */
+	public MBeanParameterInfo[] getParameterInfos(Method method) {
+		MBeanParameterInfo[] pInfos = parameterInfos.get(method);
+		if(pInfos==null) {
+			Class<?>[] paramTypes = method.getParameterTypes();
+			Annotation[][] paramAnns = method.getParameterAnnotations();
+			pInfos = new MBeanParameterInfo[paramTypes.length];
+			for(int i = 0; i < paramTypes.length; i++) {
+				JMXParameter jmxParam = null;
+				for(Annotation ann: paramAnns[i]) {
+					if(ann instanceof JMXParameter) jmxParam = (JMXParameter)ann;
+				}
+				if(jmxParam==null) {
+					pInfos[i] = new MBeanParameterInfo("p" + i, paramTypes[i].getName(), JMXParameter.DEFAULT_DESCRIPTION);
+				} else {
+					pInfos[i] = new MBeanParameterInfo(jmxParam.name(), paramTypes[i].getName(), jmxParam.description());
+				}
+			}
+			parameterInfos.put(method, pInfos);
+		}
+		return pInfos;
+	}
+	
+	/**
+	 * Returns the class's declared methods or public methods. The returned array is shared and must not be modified.
+	 * @param declared true for the declared methods, false for the public methods
+	 * @return an array of methods
+	 */
+	public Method[] getMethods(boolean declared) {
+		return declared ? declaredMethods : publicMethods;
+	}
+	
+	/**
+	 * Indicates if the class or a super class is annotated with {@link JMXManagedObject}
+	 * @return true if the class is a managed object
+	 */
+	public boolean isManagedObject() {
+		return managedObject;
+	}
+
+	/**
+	 * Returns the class's notifications annotation
+	 * @return the notifications annotation or null if the class has none
+	 */
+	public JMXNotifications getNotifications() {
+		return notifications;
+	}
+	
+	/**
+	 * Returns the class
+	 * @return the class
+	 */
+	public Class<?> getManagedClass() {
+		return clazz;
+	}
+	
+	/**
+	 * Returns the number of this class's methods with generated invokers
+	 * @return the number of generated invokers
+	 */
+	public int getGeneratedInvokerCount() {
+		int cnt = 0;
+		for(MethodInvoker invoker: invokers.values()) {
+			if(invoker.isGenerated()) cnt++;
+		}
+		return cnt;
+	}
+	
+	/**
+	 * Indicates if invokers use generated dispatchers
+	 * @return true if invokers use generated dispatchers, false if they use reflection
+	 */
+	public static boolean isGeneratedDispatch() {
+		return generatedDispatch;
+	}
+	
+	/**
+	 * Sets if invokers use generated dispatchers. Applies to invokers requested after the change.
+	 * @param generatedDispatch true to use generated dispatchers, false to use reflection
+	 */
+	public static void setGeneratedDispatch(boolean generatedDispatch) {
+		ManagedClassInfo.generatedDispatch = generatedDispatch;
+	}
+	
+	/**
+	 * Returns the classes with cached infos
+	 * @return a set of classes
+	 */
+	public static Set<Class<?>> getCachedClasses() {
+		synchronized(classInfos) {
+			return Collections.unmodifiableSet(new HashSet<Class<?>>(classInfos.keySet()));
+		}
+	}
+}
@@ -436,14 +436,15 @@ public class ManagedObjectDynamicMBean extends NotificationBroadcasterSupport im
 		}
 		BeanInfo beanInfo = null;
 		Class clazz = object.getClass();
+		ManagedClassInfo classInfo = ManagedClassInfo.getInstance(clazz);
 		try {
-			if(isAnnotatedWith(clazz,JMXManagedObject.class)) {			
+			if(classInfo.isManagedObject()) {			
 				reflectAnnotatedObjectAttributes(object);
 				reflectAnnotatedOperations(object);	
 				reflectAnnotatedFields(object);
 			} else {				
 				beanInfo = java.beans.Introspector.getBeanInfo(clazz);
-				reflectUnAnnotatedAttributeMethods(object, beanInfo, arrayToSet(clazz.getMethods()), false);
+				reflectUnAnnotatedAttributeMethods(object, beanInfo, arrayToSet(classInfo.getMethods(false)), false);
 				reflectUnAnnotatedOperations(object, beanInfo, false);
 			}
 		} catch (java.beans.IntrospectionException e) {
@@ -453,8 +454,8 @@ public class ManagedObjectDynamicMBean extends NotificationBroadcasterSupport im
 //			if(clazz.isAnnotationPresent(JMXNotifications.class)) {	
 //				reflectNotifications(object, (JMXNotifications)clazz.getAnnotation(JMXNotifications.class));
 //			}
-			if(isAnnotatedWith(clazz, JMXNotifications.class)) {
-				reflectNotifications(object, (JMXNotifications)getAnnotationFrom(clazz,JMXNotifications.class));				
+			if(classInfo.getNotifications()!=null) {
+				reflectNotifications(object, classInfo.getNotifications());				
 			}
 		} catch (Exception e) {
 			throw new RuntimeException("Failed to introspect JMXNotifications on object of class [" + clazz.getName() + "]", e);
@@ -571,11 +572,7 @@ public class ManagedObjectDynamicMBean extends NotificationBroadcasterSupport im
 		annotated = jmo.annotated();
 		
 		// Process attributes/methods
-		if(declared) {
-			methods = arrayToSet(clazz.getDeclaredMethods());
-		} else {
-			methods = arrayToSet(clazz.getMethods());
-		}
+		methods = arrayToSet(ManagedClassInfo.getInstance(clazz).getMethods(declared));
 		// If un-annotated methods should be exposed,
 		// acquire a BeanDescriptor.
 		if(!annotated) {
@@ -1096,11 +1093,7 @@ public class ManagedObjectDynamicMBean extends NotificationBroadcasterSupport im
 		Set<Method> methods = new HashSet<Method>();
 		Set<Method> attributeMethods = new HashSet<Method>();
 		PropertyDescriptor[] propertyDescriptors = beanInfo.getPropertyDescriptors(); 
-		if(declared) {
-			methods = arrayToSet(object.getClass().getDeclaredMethods());
-		} else {
-			methods = arrayToSet(object.getClass().getMethods());
-		}
+		methods = arrayToSet(ManagedClassInfo.getInstance(object.getClass()).getMethods(declared));
 		for(PropertyDescriptor pd: propertyDescriptors) {
 			if(pd.getReadMethod()!=null) attributeMethods.add(pd.getReadMethod());
 			if(pd.getWriteMethod()!=null) attributeMethods.add(pd.getWriteMethod());
@@ -1134,11 +1127,7 @@ public class ManagedObjectDynamicMBean extends NotificationBroadcasterSupport im
 		JMXOperation jmxOper = null;
 		String operName = null;
 		String operDesc = null;
-		if(jmxObj.declared()) {
-			methods = arrayToSet(clazz.getDeclaredMethods());
-		} else {
-			methods = arrayToSet(clazz.getMethods());
-		}
+		methods = arrayToSet(ManagedClassInfo.getInstance(clazz).getMethods(jmxObj.declared()));
 		for(Method m: methods) {
 			if(!m.isAnnotationPresent(JMXOperation.class)) {
 				continue;
@@ -1186,26 +1175,12 @@ public class ManagedObjectDynamicMBean extends NotificationBroadcasterSupport im
 	
 	/**
 	 * Generates an array of <code>MBeanParameterInfo</code>s from the passed method.
+	 * The infos are built once per method and cached in the declaring class's {@link ManagedClassInfo}.
 	 * @param method
 	 * @return
 	 */
 	protected MBeanParameterInfo[] generateParamInfo(Method method) {
-		MBeanParameterInfo[] pInfos = new MBeanParameterInfo[method.getParameterTypes().length];		
-		Map<Integer, JMXParameter> paramAnns = getJMXParameters(method);
-		int index = 0;
-		JMXParameter jmxParam = null;
-		MBeanParameterInfo pInfo = null;
-		for(Class clazz: method.getParameterTypes()) {
-			jmxParam = paramAnns.get(index);
-			if(jmxParam==null) {
-				pInfo = new MBeanParameterInfo("p" + index, clazz.getName(), JMXParameter.DEFAULT_DESCRIPTION);
-			} else {
-				pInfo = new MBeanParameterInfo(jmxParam.name(), clazz.getName(), jmxParam.description());
-			}
-			pInfos[index] = pInfo;
-			index++;
-		}
-		return pInfos;
+		return ManagedClassInfo.getInstance(method.getDeclaringClass()).getParameterInfos(method);
 	}
 	
 	/**
@@ -1300,12 +1275,15 @@ public class ManagedObjectDynamicMBean extends NotificationBroadcasterSupport im
 	 */
 
 	public AttributeList getAttributes(String[] attributes) {
-		AttributeList list = new AttributeList();		
+		AttributeList list = new AttributeList(attributes.length);		
 		for(String s: attributes) {
+			AttributeContainer ac = this.attributes.get(s);
+			if(ac==null) continue;
 			try {
-				Object o = getAttribute(s);
-				list.add(new Attribute(s, o));
-			} catch (Exception e) {}
+				list.add(new Attribute(s, ac.getAttributeValue()));
+			} catch (Exception e) {
+				// attributes that cannot be read are omitted from the list per the DynamicMBean contract
+			}
 		}		
 		return list;		
 	}
@@ -35,6 +35,7 @@ import javax.management.ReflectionException;
 
 import org.helios.jmx.dynamic.AccessorPair;
 import org.helios.jmx.dynamic.annotations.options.AttributeMutabilityOption;
+import org.helios.jmx.dynamic.dispatch.MethodInvoker;
 
 /**
  * <p>Title: AttributeContainer</p>
@@ -54,6 +55,10 @@ public class AttributeContainer extends MBeanContainer implements Comparable<Att
 	protected Method targetSetterMethod = null;
 	/**	 The method for getting the attribute in the managed object. */
 	protected Method targetGetterMethod = null;
+	/**	The invoker for the setter method, created on first use */
+	protected transient MethodInvoker setterInvoker = null;
+	/**	The invoker for the getter method, created on first use */
+	protected transient MethodInvoker getterInvoker = null;
 	/** Indicates if the attribute should be read only after the first access */
 	protected boolean writeOnce = false;
 	/** The attributes mutability */
@@ -118,7 +123,8 @@ public class AttributeContainer extends MBeanContainer implements Comparable<Att
 				if(writeOnce && writen) {
 					throw new AttributeNotFoundException("The attribute " + attributeName + " is WRITE_ONCE and has already been writen.");
 				}
-				targetSetterMethod.invoke(targetObject, newValue);
+				if(setterInvoker==null) setterInvoker = getInvoker(targetSetterMethod);
+				setterInvoker.invoke(targetObject, newValue);
 				if(writeOnce) {
 					tripWriteOnce();
 				}
@@ -139,7 +145,8 @@ public class AttributeContainer extends MBeanContainer implements Comparable<Att
 	public Object getAttributeValue()  throws AttributeNotFoundException, ReflectionException {
 		if(targetGetterMethod != null) {
 			try {
-				return targetGetterMethod.invoke(targetObject, NO_ARGS);
+				if(getterInvoker==null) getterInvoker = getInvoker(targetGetterMethod);
+				return getterInvoker.invoke(targetObject, NO_ARGS);
 			} catch (Exception e) {
 				throw new ReflectionException(e, "Failed to call getter [" + targetGetterMethod.getName() + "] for attribute " + attributeName);
 			}			
@@ -177,6 +184,7 @@ public class AttributeContainer extends MBeanContainer implements Comparable<Att
 	 */
 	public void setTargetGetterMethod(Method targetGetterMethod) {
 		this.targetGetterMethod = targetGetterMethod;
+		getterInvoker = null;
 	}
 
 	/**
@@ -191,6 +199,8 @@ public class AttributeContainer extends MBeanContainer implements Comparable<Att
 	 */
 	public void setTargetObject(Object targetObject) {
 		this.targetObject = targetObject;
+		getterInvoker = null;
+		setterInvoker = null;
 	}
 
 	/**
@@ -205,6 +215,7 @@ public class AttributeContainer extends MBeanContainer implements Comparable<Att
 	 */
 	public void setTargetSetterMethod(Method targetSetterMethod) {
 		this.targetSetterMethod = targetSetterMethod;
+		setterInvoker = null;
 	}
 
 	/**
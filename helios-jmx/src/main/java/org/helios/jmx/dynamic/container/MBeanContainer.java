@@ -24,6 +24,11 @@
  */
 package org.helios.jmx.dynamic.container;
 
+import java.lang.reflect.Method;
+
+import org.helios.jmx.dynamic.ManagedClassInfo;
+import org.helios.jmx.dynamic.dispatch.MethodInvoker;
+
 /**
  * <p>Title: MBeanContainer</p>
  * <p>Description: A container for managing a dynamic MBean's exposed operations, attributes etc.</p> 
@@ -34,5 +39,18 @@ package org.helios.jmx.dynamic.container;
 public abstract class MBeanContainer {
 	/**	The managed object the container is proxying for */
 	protected Object targetObject = null;
+	
+	/**
+	 * Returns the invoker for the passed method of the managed object.
+	 * Methods that cannot be called on the managed object are invoked reflectively.
+	 * @param method The method
+	 * @return the invoker
+	 */
+	protected MethodInvoker getInvoker(Method method) {
+		if(targetObject!=null && method.getDeclaringClass().isInstance(targetObject)) {
+			return ManagedClassInfo.getInstance(targetObject.getClass()).getInvoker(method);
+		}
+		return MethodInvoker.reflective(method);
+	}
 
 }
@@ -30,6 +30,8 @@ import java.lang.reflect.Method;
 
 import javax.management.MBeanOperationInfo;
 
+import org.helios.jmx.dynamic.dispatch.MethodInvoker;
+
 /**
  * <p>Title: OperationContainer</p>
  * <p>Description: A managed container for a dynamic MBean's operations.</p> 
@@ -46,6 +48,8 @@ public class OperationContainer extends MBeanContainer implements Serializable {
 	protected MBeanOperationInfo operInfo = null;
 	/**	The actual method that backs the JMX operation. */
 	protected Method targetMethod = null;
+	/**	The invoker for the target method, created on first use */
+	protected transient MethodInvoker invoker = null;
 	/**	Indicates if the method will be handled by the asynch request thread pool. */
 	protected boolean asynch = false;
 	
@@ -84,7 +88,8 @@ public class OperationContainer extends MBeanContainer implements Serializable {
 	 * @throws InvocationTargetException
 	 */
 	public Object invokeOperation(Object...args) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException {
-		return targetMethod.invoke(targetObject, args);
+		if(invoker==null) invoker = getInvoker(targetMethod);
+		return invoker.invoke(targetObject, args);
 	}
 
 	/**
@@ -127,6 +132,7 @@ public class OperationContainer extends MBeanContainer implements Serializable {
 	 */
 	public void setTargetMethod(Method targetMethod) {
 		this.targetMethod = targetMethod;
+		invoker = null;
 	}
 
 	/**
@@ -141,6 +147,7 @@ public class OperationContainer extends MBeanContainer implements Serializable {
 	 */
 	public void setTargetObject(Object targetObject) {
 		this.targetObject = targetObject;
+		invoker = null;
 	}
 	
 	
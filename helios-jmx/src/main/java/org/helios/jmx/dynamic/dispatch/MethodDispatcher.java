@@ -0,0 +1,47 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jmx.dynamic.dispatch;
+
+/**
+ * <p>Title: MethodDispatcher</p>
+ * <p>Description: Implemented by the classes generated by {@link MethodDispatcherFactory} to invoke the methods of one managed 
+ * class with direct calls. Each dispatchable method is assigned an index and the generated implementation switches on it.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.jmx.dynamic.dispatch.MethodDispatcher</code></p>
+ */
+
+public interface MethodDispatcher {
+	/**
+	 * Invokes the indexed method
+	 * @param index The index of the method
+	 * @param target The object to invoke against. Ignored for static methods.
+	 * @param args The arguments to the method. Primitives are passed boxed.
+	 * @return the return value of the method, boxed if primitive, or null if the method is void
+	 * @throws Throwable Any exception thrown by the method, unwrapped 
+	 */
+	public Object dispatch(int index, Object target, Object[] args) throws Throwable;
+}
@@ -0,0 +1,295 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jmx.dynamic.dispatch;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>Title: MethodDispatcherFactory</p>
+ * <p>Description: Bytecode generates a {@link MethodDispatcher} for a managed class. The generated class has one 
+ * <code>dispatch</code> method that switches on the method index and makes a direct, statically typed call, 
+ * unboxing the arguments and boxing the return value. The class is defined in the managed class's class loader and package 
+ * so package protected and protected methods can be called. Methods the generated class cannot legally call, such as private 
+ * methods or methods of inaccessible types, are left to reflection.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.jmx.dynamic.dispatch.MethodDispatcherFactory</code></p>
+ */
+
+public class MethodDispatcherFactory {
+	/** A serial number factory for generated class names */
+	protected static final AtomicLong serial = new AtomicLong(0L);
+	/** The number of dispatchers generated */
+	protected static final AtomicLong generated = new AtomicLong(0L);
+	/** The number of dispatcher generations that failed */
+	protected static final AtomicLong failed = new AtomicLong(0L);
+	/** Static class logger */
+	protected static final Logger LOG = Logger.getLogger(MethodDispatcherFactory.class);
+	/** The maximum number of methods in one dispatcher, which keeps the generated method well under the JVM's method size limit */
+	public static final int MAX_METHODS = 512;
+	/** The suffix of generated class names */
+	public static final String CLASS_SUFFIX = "$$HeliosDispatcher";
+	/** The package for dispatchers that cannot be defined in the managed class's package */
+	public static final String DEFAULT_PACKAGE = MethodDispatcher.class.getPackage().getName() + ".generated";
+	/** The boxed type used to unbox each primitive argument */
+	protected static final Map<Class<?>, String> UNBOXING = new HashMap<Class<?>, String>();
+	
+	static {
+		UNBOXING.put(boolean.class, "((java.lang.Boolean)$3[%s]).booleanValue()");
+		UNBOXING.put(char.class, "((java.lang.Character)$3[%s]).charValue()");
+		UNBOXING.put(byte.class, "((java.lang.Number)$3[%s]).byteValue()");
+		UNBOXING.put(short.class, "((java.lang.Number)$3[%s]).shortValue()");
+		UNBOXING.put(int.class, "((java.lang.Number)$3[%s]).intValue()");
+		UNBOXING.put(long.class, "((java.lang.Number)$3[%s]).longValue()");
+		UNBOXING.put(float.class, "((java.lang.Number)$3[%s]).floatValue()");
+		UNBOXING.put(double.class, "((java.lang.Number)$3[%s]).doubleValue()");
+	}
+	
+	/**
+	 * Generates a dispatcher for the passed class and returns invokers for each of the passed methods the dispatcher can call.
+	 * @param clazz The managed class
+	 * @param methods The candidate methods, which must be callable on instances of the managed class
+	 * @return a map of invokers keyed by method. Methods that cannot be dispatched, or all methods if generation fails, are absent.
+	 */
+	public static Map<Method, MethodInvoker> createInvokers(Class<?> clazz, Collection<Method> methods) {
+		if(clazz==null) throw new IllegalArgumentException("The passed class was null", new Throwable());
+		if(methods==null || methods.isEmpty()) return Collections.emptyMap();
+		ClassLoader loader = definingLoader(clazz);
+		if(loader==null) return Collections.emptyMap();
+		String packageName = loader==clazz.getClassLoader() ? packageOf(clazz) : DEFAULT_PACKAGE;
+		List<Method> dispatchable = new ArrayList<Method>();
+		for(Method m: methods) {
+			if(dispatchable.size()==MAX_METHODS) break;
+			if(isDispatchable(m, loader, packageName)) dispatchable.add(m);
+		}
+		if(dispatchable.isEmpty()) return Collections.emptyMap();
+		try {
+			MethodDispatcher dispatcher = generate(clazz, dispatchable, loader, packageName);
+			Map<Method, MethodInvoker> invokers = new HashMap<Method, MethodInvoker>(dispatchable.size());
+			for(int i = 0; i < dispatchable.size(); i++) {
+				invokers.put(dispatchable.get(i), new MethodInvoker(dispatchable.get(i), dispatcher, i));
+			}
+			generated.incrementAndGet();
+			return invokers;
+		} catch (Throwable t) {
+			failed.incrementAndGet();
+			LOG.warn("Failed to generate dispatcher for [" + clazz.getName() + "]. Falling back to reflection:" + t);
+			if(LOG.isDebugEnabled()) LOG.debug("Dispatcher generation failure for [" + clazz.getName() + "]", t);
+			return Collections.emptyMap();
+		}
+	}
+	
+	/**
+	 * Generates and instantiates the dispatcher class
+	 * @param clazz The managed class
+	 * @param methods The dispatchable methods in index order
+	 * @param loader The class loader to define the dispatcher in
+	 * @param packageName The package of the dispatcher
+	 * @return the dispatcher
+	 * @throws Exception Thrown on any failure to compile, define or instantiate the dispatcher
+	 */
+	protected static MethodDispatcher generate(Class<?> clazz, List<Method> methods, ClassLoader loader, String packageName) throws Exception {
+		ClassPool classPool = new ClassPool(true);
+		classPool.appendClassPath(new LoaderClassPath(loader));
+		classPool.appendClassPath(new ClassClassPath(clazz));
+		classPool.appendClassPath(new ClassClassPath(MethodDispatcher.class));
+		String className = (packageName.length()==0 ? "" : packageName + ".") + clazz.getSimpleName() + CLASS_SUFFIX + serial.incrementAndGet();
+		CtClass ctClass = classPool.makeClass(className);
+		try {
+			ctClass.addInterface(classPool.get(MethodDispatcher.class.getName()));
+			ctClass.addConstructor(CtNewConstructor.defaultConstructor(ctClass));
+			StringBuilder b = new StringBuilder("public Object dispatch(int index, Object target, Object[] args) throws Throwable {\n\tswitch($1) {\n");
+			for(int i = 0; i < methods.size(); i++) {
+				b.append("\t\tcase ").append(i).append(": ");
+				appendCall(b, methods.get(i));
+			}
+			b.append("\t\tdefault: throw new java.lang.IllegalArgumentException(\"Invalid method index \" + $1);\n\t}\n}");
+			ctClass.addMethod(CtNewMethod.make(b.toString(), ctClass));
+			Class<?> dispatcherClass = ctClass.toClass(loader, clazz.getProtectionDomain());
+			return (MethodDispatcher)dispatcherClass.newInstance();
+		} finally {
+			ctClass.detach();
+		}
+	}
+	
+	/**
+	 * Appends the call to the passed method to the dispatch source
+	 * @param b The dispatch source buffer
+	 * @param m The method to call
+	 */
+	protected static void appendCall(StringBuilder b, Method m) {
+		boolean isVoid = void.class.equals(m.getReturnType());
+		b.append(isVoid ? "" : "return ($w)");
+		if(Modifier.isStatic(m.getModifiers())) {
+			b.append(sourceName(m.getDeclaringClass()));
+		} else {
+			b.append("((").append(sourceName(m.getDeclaringClass())).append(")$2)");
+		}
+		b.append(".").append(m.getName()).append("(");
+		Class<?>[] params = m.getParameterTypes();
+		for(int i = 0; i < params.length; i++) {
+			if(i>0) b.append(", ");
+			if(params[i].isPrimitive()) {
+				b.append(String.format(UNBOXING.get(params[i]), i));
+			} else {
+				b.append("(").append(sourceName(params[i])).append(")$3[").append(i).append("]");
+			}
+		}
+		b.append(");");
+		if(isVoid) b.append(" return null;");
+		b.append("\n");
+	}
+	
+	/**
+	 * Determines the class loader to define the passed class's dispatcher in. The dispatcher must be able to see both the 
+	 * managed class and {@link MethodDispatcher}. Classes in the <code>java</code> packages, or loaded by the boot class loader, 
+	 * get dispatchers in this package's loader.
+	 * @param clazz The managed class
+	 * @return the class loader or null if no loader can see both classes
+	 */
+	protected static ClassLoader definingLoader(Class<?> clazz) {
+		ClassLoader loader = clazz.getClassLoader();
+		if(loader!=null && !clazz.getName().startsWith("java.") && sees(loader, MethodDispatcher.class)) {
+			return loader;
+		}
+		loader = MethodDispatcher.class.getClassLoader();
+		return sees(loader, clazz) ? loader : null;
+	}
+	
+	/**
+	 * Determines if the passed class loader resolves the passed class to the same class
+	 * @param loader The class loader
+	 * @param clazz The class
+	 * @return true if the class is visible
+	 */
+	protected static boolean sees(ClassLoader loader, Class<?> clazz) {
+		try {
+			return Class.forName(clazz.getName(), false, loader)==clazz;
+		} catch (Throwable t) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Determines if a class defined in the passed loader and package can legally call the passed method
+	 * @param m The method
+	 * @param loader The loader the dispatcher will be defined in
+	 * @param packageName The package the dispatcher will be defined in
+	 * @return true if the method can be dispatched
+	 */
+	protected static boolean isDispatchable(Method m, ClassLoader loader, String packageName) {
+		int mod = m.getModifiers();
+		if(Modifier.isPrivate(mod) || m.isBridge() || m.isSynthetic()) return false;
+		Class<?> declaring = m.getDeclaringClass();
+		if(!isAccessible(declaring, loader, packageName)) return false;
+		if(!Modifier.isPublic(mod) && !samePackage(declaring, loader, packageName)) return false;
+		for(Class<?> param: m.getParameterTypes()) {
+			if(!isAccessible(param, loader, packageName)) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Determines if the passed type can be named by a class defined in the passed loader and package
+	 * @param type The type
+	 * @param loader The loader the dispatcher will be defined in
+	 * @param packageName The package the dispatcher will be defined in
+	 * @return true if the type is accessible
+	 */
+	protected static boolean isAccessible(Class<?> type, ClassLoader loader, String packageName) {
+		while(type.isArray()) type = type.getComponentType();
+		if(type.isPrimitive()) return true;
+		int mod = type.getModifiers();
+		// a protected member class is public in its class file
+		if(Modifier.isPublic(mod) || (type.isMemberClass() && Modifier.isProtected(mod))) return sees(loader, type);
+		return samePackage(type, loader, packageName);
+	}
+	
+	/**
+	 * Determines if the passed class is in the same runtime package as the dispatcher
+	 * @param clazz The class
+	 * @param loader The loader the dispatcher will be defined in
+	 * @param packageName The package the dispatcher will be defined in
+	 * @return true if the class is in the same runtime package
+	 */
+	protected static boolean samePackage(Class<?> clazz, ClassLoader loader, String packageName) {
+		return clazz.getClassLoader()==loader && packageOf(clazz).equals(packageName);
+	}
+	
+	/**
+	 * Returns the package name of the passed class
+	 * @param clazz The class
+	 * @return the package name, which is blank for the default package
+	 */
+	protected static String packageOf(Class<?> clazz) {
+		String name = clazz.getName();
+		int index = name.lastIndexOf('.');
+		return index==-1 ? "" : name.substring(0, index);
+	}
+	
+	/**
+	 * Returns the name of the passed type as it appears in source
+	 * @param type The type
+	 * @return the source name
+	 */
+	protected static String sourceName(Class<?> type) {
+		if(type.isArray()) return sourceName(type.getComponentType()) + "[]";
+		return type.getName();
+	}
+	
+	/**
+	 * Returns the number of dispatchers generated
+	 * @return the number of dispatchers generated
+	 */
+	public static long getGeneratedCount() {
+		return generated.get();
+	}
+	
+	/**
+	 * Returns the number of dispatcher generations that failed
+	 * @return the number of failed generations
+	 */
+	public static long getFailedCount() {
+		return failed.get();
+	}
+}
@@ -0,0 +1,137 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jmx.dynamic.dispatch;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * <p>Title: MethodInvoker</p>
+ * <p>Description: Invokes one method of a managed object, through a generated {@link MethodDispatcher} when one could be 
+ * generated for the method, or through reflection otherwise. Both paths report failures the way 
+ * <code>Method.invoke</code> does, so callers are not aware of which is used.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.jmx.dynamic.dispatch.MethodInvoker</code></p>
+ */
+
+public final class MethodInvoker {
+	/** The invoked method */
+	private final Method method;
+	/** The generated dispatcher, null for reflective invocation */
+	private final MethodDispatcher dispatcher;
+	/** The method's index in the dispatcher */
+	private final int index;
+	/** The number of parameters the method takes */
+	private final int paramCount;
+	/** Flags the primitive parameters, which may not be passed null */
+	private final boolean[] primitives;
+	/** Indicates if the method is static */
+	private final boolean staticMethod;
+	/**	Empty object array */
+	private static final Object[] NO_ARGS = {};
+	
+	/**
+	 * Creates a new MethodInvoker
+	 * @param method The invoked method
+	 * @param dispatcher The generated dispatcher, or null for reflective invocation
+	 * @param index The method's index in the dispatcher
+	 */
+	MethodInvoker(Method method, MethodDispatcher dispatcher, int index) {
+		this.method = method;
+		this.dispatcher = dispatcher;
+		this.index = index;
+		staticMethod = Modifier.isStatic(method.getModifiers());
+		Class<?>[] params = method.getParameterTypes();
+		paramCount = params.length;
+		primitives = new boolean[paramCount];
+		for(int i = 0; i < paramCount; i++) {
+			primitives[i] = params[i].isPrimitive();
+		}
+	}
+	
+	/**
+	 * Creates a MethodInvoker that always invokes through reflection
+	 * @param method The invoked method
+	 * @return a reflective MethodInvoker
+	 */
+	public static MethodInvoker reflective(Method method) {
+		if(method==null) throw new IllegalArgumentException("The passed method was null", new Throwable());
+		return new MethodInvoker(method, null, -1);
+	}
+	
+	/**
+	 * Invokes the method
+	 * @param target The object to invoke against. Ignored for static methods.
+	 * @param args The arguments to the method
+	 * @return the return value of the method
+	 * @throws IllegalAccessException Thrown if reflective access to the method is denied
+	 * @throws IllegalArgumentException Thrown if the arguments do not match the method's parameters
+	 * @throws InvocationTargetException Wraps any exception thrown by the method
+	 */
+	public Object invoke(Object target, Object...args) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+		if(dispatcher==null) {
+			return method.invoke(target, args);
+		}
+		if(target==null && !staticMethod) throw new NullPointerException();
+		if(args==null) args = NO_ARGS;
+		if(args.length!=paramCount) throw new IllegalArgumentException("wrong number of arguments");
+		for(int i = 0; i < paramCount; i++) {
+			if(primitives[i] && args[i]==null) throw new IllegalArgumentException("null passed for primitive parameter " + i);
+		}
+		try {
+			return dispatcher.dispatch(index, target, args);
+		} catch (Throwable t) {
+			throw new InvocationTargetException(t);
+		}
+	}
+	
+	/**
+	 * Returns the invoked method
+	 * @return the invoked method
+	 */
+	public Method getMethod() {
+		return method;
+	}
+	
+	/**
+	 * Indicates if the method is invoked through a generated dispatcher
+	 * @return true if the method is invoked through a generated dispatcher, false if by reflection
+	 */
+	public boolean isGenerated() {
+		return dispatcher!=null;
+	}
+	
+	/**
+	 * Constructs a <code>String</code> with key attributes in name = value format.
+	 * @return a <code>String</code> representation of this object.
+	 */
+	@Override
+	public String toString() {
+		return "MethodInvoker [" + method.getDeclaringClass().getName() + "." + method.getName() + (dispatcher==null ? ", reflective]" : ", generated#" + index + "]");
+	}
+}
@@ -24,13 +24,9 @@
  */
 package org.helios.jmxenabled.counters;
 
-import gnu.trove.list.array.TDoubleArrayList;
-
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Random;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Level;
@@ -52,8 +48,10 @@ import org.helios.jmx.opentypes.annotations.XCompositeType;
  */
 @XCompositeType(description="Rolling double accumulator")
 public class DoubleRollingCounter extends RollingCounter {
-	/** The underlying double values counter */
-	protected final TDoubleArrayList tDouble;
+	/** The ring buffer holding the counter values */
+	protected final LongRingBuffer ring;
+	/** The raw bits of the value returned as the last value of an empty counter */
+	protected static final long NO_VALUE = Double.doubleToRawLongBits(-1D);
 	
 	
 	/**
@@ -86,7 +84,7 @@ public class DoubleRollingCounter extends RollingCounter {
 	 */
 	public DoubleRollingCounter(String name, int capacity, long readTimeout, long writeTimeout) {
 		super(name, capacity, readTimeout, writeTimeout);
-		tDouble = new TDoubleArrayList(capacity);
+		ring = new LongRingBuffer(capacity);
 	}
 	
 	/**
@@ -99,7 +97,7 @@ public class DoubleRollingCounter extends RollingCounter {
 	 */
 	public DoubleRollingCounter(String name, int capacity, long readTimeout, long writeTimeout, final Map<String, RollingCounter> registerGroup) {
 		super(name, capacity, readTimeout, writeTimeout, registerGroup);
-		tDouble = new TDoubleArrayList(capacity);
+		ring = new LongRingBuffer(capacity);
 	}
 	
 	/**
@@ -117,22 +115,23 @@ public class DoubleRollingCounter extends RollingCounter {
 	 */
 	@JMXOperation(name="put", description="Puts a new value at the head of the counter")
 	public void put(@JMXParameter(name="value", description="The double value to put into the counter") double value) {
-		boolean acquiredLock = false;
-		try {
-			acquiredLock = writeLock.tryLock(writeTimeout, TimeUnit.MILLISECONDS);
-			if(acquiredLock) {
-				tDouble.insert(0, value);
-				int newSize = currentSize.incrementAndGet();
-				if(newSize>size) {
-					tDouble.remove(newSize-1);
-					currentSize.decrementAndGet();
-				}
-			}
-		} catch (Exception e) {
-			LOG.error("double value put error [" + value + "]", e);
-		} finally {
-			if(acquiredLock) try { writeLock.unlock(); } catch (Exception e) {}
+		ring.append(Double.doubleToRawLongBits(value));
+		if(currentSize.get()<size) {
+			currentSize.set(ring.size());
+		}
+	}
+	
+	/**
+	 * Converts ring buffer raw long bits to doubles
+	 * @param bits the raw long bits
+	 * @return an array of doubles
+	 */
+	protected static double[] toDoubles(long[] bits) {
+		double[] values = new double[bits.length];
+		for(int i = 0; i < bits.length; i++) {
+			values[i] = Double.longBitsToDouble(bits[i]);
 		}
+		return values;
 	}
 	
 	/**
@@ -150,19 +149,7 @@ public class DoubleRollingCounter extends RollingCounter {
 	@JMXAttribute(name="{f:name}Contents", description="Returns a copy of the internal contents of the counter", mutability=AttributeMutabilityOption.READ_ONLY)
 	@XCompositeAttribute
 	public double[] getContents() {
-		boolean acquiredLock = false;
-		try {
-			acquiredLock = readLock.tryLock(readTimeout, TimeUnit.MILLISECONDS);
-			if(acquiredLock) {
-				return tDouble.toArray();
-			} else {
-				throw new TimeoutException("Failed to acquire readLock within [" + readTimeout + "] ms.");
-			}
-		} catch (Exception e) {
-			throw new RuntimeException("Failed to render the counter", e);
-		} finally {
-			if(acquiredLock) try { readLock.unlock(); } catch (Exception e) {}
-		}			
+		return toDoubles(ring.snapshot());
 	}
 	
 	/**
@@ -189,20 +176,8 @@ public class DoubleRollingCounter extends RollingCounter {
 	 */
 	@JMXOperation(name="reset", description="Resets the rolling counter")
 	public void reset() {
-		boolean acquiredLock = false;
-		try {
-			acquiredLock = writeLock.tryLock(writeTimeout, TimeUnit.MILLISECONDS);
-			if(acquiredLock) {
-				tDouble.reset();
-				currentSize.set(0);
-			} else {
-				throw new TimeoutException("Failed to acquire writeLock within [" + writeTimeout + "] ms.");
-			}
-		} catch (Exception e) {
-			throw new RuntimeException("Failed to reset the counter", e);
-		} finally {
-			if(acquiredLock) try { writeLock.unlock(); } catch (Exception e) {}
-		}			
+		ring.reset();
+		currentSize.set(0);
 	}
 	
 	
@@ -214,20 +189,7 @@ public class DoubleRollingCounter extends RollingCounter {
 	@JMXAttribute(name="{f:name}RangeMaximum", description="The maximum value in the history counter", mutability=AttributeMutabilityOption.READ_ONLY)
 	@XCompositeAttribute
 	public double getRangeMax() {
-		boolean acquiredLock = false;
-		try {
-			acquiredLock = readLock.tryLock(readTimeout, TimeUnit.MILLISECONDS);
-			if(acquiredLock) {
-				return tDouble.max();
-			} else {
-				throw new TimeoutException("Failed to acquire readLock within [" + readTimeout + "] ms.");
-			}
-		} catch (Exception e) {
-			throw new RuntimeException("Failed to acquire the counter range max", e);
-		} finally {
-			if(acquiredLock) try { readLock.unlock(); } catch (Exception e) {}
-		}			
-		
+		return ring.maxDouble(0D);
 	}
 	
 	/**
@@ -237,20 +199,7 @@ public class DoubleRollingCounter extends RollingCounter {
 	@JMXAttribute(name="{f:name}RangeMinimum", description="The minimum value in the history counter", mutability=AttributeMutabilityOption.READ_ONLY)
 	@XCompositeAttribute
 	public double getRangeMin() {
-		boolean acquiredLock = false;
-		try {
-			acquiredLock = readLock.tryLock(readTimeout, TimeUnit.MILLISECONDS);
-			if(acquiredLock) {
-				return tDouble.min();
-			} else {
-				throw new TimeoutException("Failed to acquire readLock within [" + readTimeout + "] ms.");
-			}
-		} catch (Exception e) {
-			throw new RuntimeException("Failed to acquire the counter range min", e);
-		} finally {
-			if(acquiredLock) try { readLock.unlock(); } catch (Exception e) {}
-		}			
-		
+		return ring.minDouble(0D);
 	}
 	
 	
@@ -262,12 +211,7 @@ public class DoubleRollingCounter extends RollingCounter {
 	@JMXAttribute(name="{f:name}LastValue", description="Returns the last value inserted into the counter", mutability=AttributeMutabilityOption.READ_ONLY)
 	@XCompositeAttribute
 	public double getLastValue() {
-		if(currentSize.get()<1) {
-			return -1;
-		} else {
-			double[] values = getContents();
-			return values.length<1 ? -1 : values[0];
-		}
+		return Double.longBitsToDouble(ring.last(NO_VALUE));
 	}
 	
 	/**
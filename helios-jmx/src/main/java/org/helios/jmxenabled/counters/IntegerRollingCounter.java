@@ -24,15 +24,9 @@
  */
 package org.helios.jmxenabled.counters;
 
-
-
-import gnu.trove.list.array.TIntArrayList;
-
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Random;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Level;
@@ -54,8 +48,8 @@ import org.helios.jmx.opentypes.annotations.XCompositeType;
  */
 @XCompositeType(description="Rolling integer accumulator")
 public class IntegerRollingCounter extends RollingCounter {
-	/** The underlying int values counter */
-	protected final TIntArrayList tInteger;
+	/** The ring buffer holding the counter values */
+	protected final LongRingBuffer ring;
 	
 	/**
 	 * Creates a new IntegerRollingCounter with the default read and write timeouts.
@@ -87,7 +81,7 @@ public class IntegerRollingCounter extends RollingCounter {
 	 */
 	public IntegerRollingCounter(String name, int capacity, long readTimeout, long writeTimeout) {
 		super(name, capacity, readTimeout, writeTimeout);
-		tInteger = new TIntArrayList(capacity);
+		ring = new LongRingBuffer(capacity);
 	}
 	
 	/**
@@ -100,7 +94,7 @@ public class IntegerRollingCounter extends RollingCounter {
 	 */
 	public IntegerRollingCounter(String name, int capacity, long readTimeout, long writeTimeout, final Map<String, RollingCounter> registerGroup) {
 		super(name, capacity, readTimeout, writeTimeout, registerGroup);
-		tInteger = new TIntArrayList(capacity);
+		ring = new LongRingBuffer(capacity);
 	}
 	
 	/**
@@ -117,22 +111,23 @@ public class IntegerRollingCounter extends RollingCounter {
 	 */
 	@JMXOperation(name="put", description="Puts a new value at the head of the counter")
 	public void put(@JMXParameter(name="value", description="The int value to put into the counter") int value) {
-		boolean acquiredLock = false;
-		try {
-			acquiredLock = writeLock.tryLock(writeTimeout, TimeUnit.MILLISECONDS);
-			if(acquiredLock) {
-				tInteger.insert(0, value);
-				int newSize = currentSize.incrementAndGet();
-				if(newSize>size) {
-					tInteger.remove(newSize-1);
-					currentSize.decrementAndGet();
-				}
-			}
-		} catch (Exception e) {
-			LOG.error("int value put error [" + value + "]", e);
-		} finally {
-			if(acquiredLock) try { writeLock.unlock(); } catch (Exception e) {}
+		ring.append(value);
+		if(currentSize.get()<size) {
+			currentSize.set(ring.size());
+		}
+	}
+	
+	/**
+	 * Narrows ring buffer longs to ints
+	 * @param longs the ring buffer values
+	 * @return an array of ints
+	 */
+	protected static int[] toInts(long[] longs) {
+		int[] values = new int[longs.length];
+		for(int i = 0; i < longs.length; i++) {
+			values[i] = (int)longs[i];
 		}
+		return values;
 	}
 	
 	/**
@@ -150,19 +145,7 @@ public class IntegerRollingCounter extends RollingCounter {
 	@JMXAttribute(name="{f:name}Contents", description="Returns a copy of the internal contents of the counter", mutability=AttributeMutabilityOption.READ_ONLY)
 	@XCompositeAttribute
 	public int[] getContents() {
-		boolean acquiredLock = false;
-		try {
-			acquiredLock = readLock.tryLock(readTimeout, TimeUnit.MILLISECONDS);
-			if(acquiredLock) {
-				return tInteger.toArray();
-			} else {
-				throw new TimeoutException("Failed to acquire readLock within [" + readTimeout + "] ms.");
-			}
-		} catch (Exception e) {
-			throw new RuntimeException("Failed to render the counter", e);
-		} finally {
-			if(acquiredLock) try { readLock.unlock(); } catch (Exception e) {}
-		}			
+		return toInts(ring.snapshot());
 	}
 	
 	/**
@@ -189,20 +172,8 @@ public class IntegerRollingCounter extends RollingCounter {
 	 */
 	@JMXOperation(name="reset", description="Resets the rolling counter")
 	public void reset() {
-		boolean acquiredLock = false;
-		try {
-			acquiredLock = writeLock.tryLock(writeTimeout, TimeUnit.MILLISECONDS);
-			if(acquiredLock) {
-				tInteger.reset();
-				currentSize.set(0);
-			} else {
-				throw new TimeoutException("Failed to acquire writeLock within [" + writeTimeout + "] ms.");
-			}
-		} catch (Exception e) {
-			throw new RuntimeException("Failed to reset the counter", e);
-		} finally {
-			if(acquiredLock) try { writeLock.unlock(); } catch (Exception e) {}
-		}			
+		ring.reset();
+		currentSize.set(0);
 	}
 	
 	
@@ -215,20 +186,7 @@ public class IntegerRollingCounter extends RollingCounter {
 	@JMXAttribute(name="{f:name}RangeMaximum", description="The maximum value in the history counter", mutability=AttributeMutabilityOption.READ_ONLY)
 	@XCompositeAttribute
 	public int getRangeMax() {
-		boolean acquiredLock = false;
-		try {
-			acquiredLock = readLock.tryLock(readTimeout, TimeUnit.MILLISECONDS);
-			if(acquiredLock) {
-				return tInteger.max();
-			} else {
-				throw new TimeoutException("Failed to acquire readLock within [" + readTimeout + "] ms.");
-			}
-		} catch (Exception e) {
-			throw new RuntimeException("Failed to acquire the counter range max", e);
-		} finally {
-			if(acquiredLock) try { readLock.unlock(); } catch (Exception e) {}
-		}			
-		
+		return (int)ring.max(0L);
 	}
 	
 	/**
@@ -238,20 +196,7 @@ public class IntegerRollingCounter extends RollingCounter {
 	@JMXAttribute(name="{f:name}RangeMinimum", description="The minimum value in the history counter", mutability=AttributeMutabilityOption.READ_ONLY)
 	@XCompositeAttribute
 	public int getRangeMin() {
-		boolean acquiredLock = false;
-		try {
-			acquiredLock = readLock.tryLock(readTimeout, TimeUnit.MILLISECONDS);
-			if(acquiredLock) {
-				return tInteger.min();
-			} else {
-				throw new TimeoutException("Failed to acquire readLock within [" + readTimeout + "] ms.");
-			}
-		} catch (Exception e) {
-			throw new RuntimeException("Failed to acquire the counter range min", e);
-		} finally {
-			if(acquiredLock) try { readLock.unlock(); } catch (Exception e) {}
-		}			
-		
+		return (int)ring.min(0L);
 	}
 	
 	
@@ -263,12 +208,7 @@ public class IntegerRollingCounter extends RollingCounter {
 	@JMXAttribute(name="{f:name}LastValue", description="Returns the last value inserted into the counter", mutability=AttributeMutabilityOption.READ_ONLY)
 	@XCompositeAttribute
 	public int getLastValue() {
-		if(currentSize.get()<1) {
-			return -1;
-		} else {
-			int[] values = getContents();
-			return values.length<1 ? -1 : values[0];
-		}
+		return (int)ring.last(-1);
 	}
 	
 	/**
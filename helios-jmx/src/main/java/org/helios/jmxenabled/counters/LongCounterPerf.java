@@ -27,10 +27,14 @@ package org.helios.jmxenabled.counters;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>Title: LongCounterPerf</p>
- * <p>Description: </p> 
+ * <p>Description: Compares the put throughput of the ring buffer backed {@link LongRollingCounter} against the 
+ * array shifting {@link LongRollingCASCounter}, with a single writer and with contending writers, and measures
+ * snapshot reads of the ring buffer counter while writers are active.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * @version $LastChangedRevision$
@@ -45,47 +49,56 @@ public class LongCounterPerf {
 	public static void main(String[] args) {
 		log("LongCounterPerf Test");
 		warmup();
-		long loops = 10000000; // 100,000,000
+		long loops = 10000000; // 10,000,000
 		int size = 20;
-		int threadCount = 5;
+		for(int threadCount: new int[]{1, 5}) {
+			run(new LongRollingCounter("Ring", size), threadCount, loops);
+			run(new LongRollingCASCounter("Shift", size), threadCount, loops);
+		}
+		final LongRollingCounter ring = new LongRollingCounter("Ring", size);
+		final AtomicLong reads = new AtomicLong(0L);
+		final AtomicBoolean writing = new AtomicBoolean(true);
+		Thread reader = new Thread() {
+			public void run() {
+				long sum = 0;
+				while(writing.get()) {
+					sum += ring.getAverage();
+					reads.incrementAndGet();
+				}
+				log("Reader checksum:" + sum);
+			}
+		};
+		reader.setDaemon(true);
+		reader.start();
+		long elapsed = run(ring, 1, loops);
+		writing.set(false);
+		log("Snapshot reads during single writer run:" + reads.get() + " (" + (reads.get()*1000/Math.max(1, elapsed)) + "/s)");
+	}
+	
+	/**
+	 * Runs a put throughput test
+	 * @param counter The counter to test
+	 * @param threadCount The number of writer threads
+	 * @param loops The number of puts per writer thread
+	 * @return the elapsed time in ms.
+	 */
+	public static long run(IRollingCounter counter, int threadCount, long loops) {
 		Set<Thread> counters = new HashSet<Thread>(threadCount);
 		CountDownLatch startLatch = new CountDownLatch(1);
 		CountDownLatch endLatch = new CountDownLatch(threadCount);
-		
-		
-		IRollingCounter counter = new LongRollingCounter("CAS", size); 
-		
 		for(int i = 0; i < threadCount; i++) {
 			Thread thread = new CounterPutter(loops, startLatch, endLatch, counter);
 			counters.add(thread);
 			thread.start();
 		}
-		
-		log("Starting [" + counter.getClass().getSimpleName() + "] Test");
+		log("Starting [" + counter.getClass().getSimpleName() + "] Test with [" + threadCount + "] writers");
 		long start = System.currentTimeMillis();
 		startLatch.countDown();
 		try { endLatch.await(); } catch (Exception e) { e.printStackTrace(System.err); }
 		long elapsed = System.currentTimeMillis()-start;
-		log(counter.getClass().getSimpleName() + " Elapsed Time:" + elapsed + " ms.");
-
-		
-		
-		counters.clear();
-		startLatch = new CountDownLatch(1);
-		endLatch = new CountDownLatch(threadCount);
-		counter = new LongRollingCASCounter("Lock", size); 
-		for(int i = 0; i < threadCount; i++) {
-			Thread thread = new CounterPutter(loops, startLatch, endLatch, counter);
-			counters.add(thread);
-			thread.start();
-		}
-		log("Starting [" + counter.getClass().getSimpleName() + "] Test");
-		start = System.currentTimeMillis();
-		startLatch.countDown();
-		try { endLatch.await(); } catch (Exception e) { e.printStackTrace(System.err); }
-		elapsed = System.currentTimeMillis()-start;
-		log(counter.getClass().getSimpleName() + " Elapsed Time:" + elapsed + " ms.");
-		
+		long puts = loops * threadCount;
+		log(counter.getClass().getSimpleName() + " Elapsed Time:" + elapsed + " ms. (" + (puts*1000/Math.max(1, elapsed)) + " puts/s)");
+		return elapsed;
 	}
 	
 	public static void log(Object msg) {
@@ -93,7 +106,7 @@ public class LongCounterPerf {
 	}
 	
 	public static void warmup() {
-		long loops = 100000; // 100,000,000
+		long loops = 100000; // 100,000
 		LongRollingCASCounter counter = new LongRollingCASCounter("20", 20); 
 		LongRollingCounter counter2 = new LongRollingCounter("20", 20);
 		for(long i = 0; i < loops; i++) {
@@ -101,6 +114,7 @@ public class LongCounterPerf {
 		}
 		for(long i = 0; i < loops; i++) {
 			counter2.put(i);
+			counter2.getAverage();
 		}
 	}
 
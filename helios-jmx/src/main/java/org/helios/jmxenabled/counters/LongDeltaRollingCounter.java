@@ -27,8 +27,6 @@ package org.helios.jmxenabled.counters;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Random;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -122,31 +120,11 @@ public class LongDeltaRollingCounter extends LongRollingCounter {
 	@Override
 	@JMXOperation(name="put", description="Puts a new value at the head of the counter")
 	public void put(@JMXParameter(name="value", description="The long value to put into the counter")long value) {		
-		boolean acquiredLock = false;
-		try {
-			acquiredLock = writeLock.tryLock(writeTimeout, TimeUnit.MILLISECONDS);
-			if(acquiredLock) {							
-				Long baseline = deltaState.getAndSet(value);
-				if(currentSize.get()<1) {					
-					if(baseline==null) {						
-						return;
-					}
-					value = value-baseline.longValue();					
-				} else {
-					value = value-baseline.longValue();
-				}				
-				tLong.insert(0, value);
-				int newSize = currentSize.incrementAndGet();
-				if(newSize>size) {
-					tLong.remove(newSize-1);
-					currentSize.decrementAndGet();
-				}
-			}
-		} catch (Exception e) {
-			LOG.error("long value put error [" + value + "]", e);
-		} finally {
-			if(acquiredLock) try { writeLock.unlock(); } catch (Exception e) {}
+		Long baseline = deltaState.getAndSet(value);
+		if(baseline==null) {
+			return;
 		}
+		super.put(value-baseline.longValue());
 	}
 	
 	/**
@@ -155,22 +133,8 @@ public class LongDeltaRollingCounter extends LongRollingCounter {
 	@Override
 	@JMXOperation(name="reset", description="Resets the rolling counter")
 	public void reset() {
-		boolean acquiredLock = false;
-		try {
-			acquiredLock = writeLock.tryLock(writeTimeout, TimeUnit.MILLISECONDS);
-			if(acquiredLock) {
-				super.reset();
-				deltaState.set(null);
-			} else {
-				throw new TimeoutException("Failed to acquire writeLock within [" + writeTimeout + "] ms.");
-			}
-		} catch (Exception e) {
-			throw new RuntimeException("Failed to reset the counter", e);
-		} finally {
-			if(acquiredLock) try { writeLock.unlock(); } catch (Exception e) {}
-		}			
-
-		
+		super.reset();
+		deltaState.set(null);
 	}
 	
 	public static void main(String[] args) {
@@ -0,0 +1,235 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jmxenabled.counters;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Title: LongRingBuffer</p>
+ * <p>Description: A fixed capacity ring of primitive long values backing the rolling counters.
+ * Appends claim a sequence with a single atomic increment and then claim the slot with a CAS on its sequence number, so two
+ * appends a full lap apart never write the same slot at once. An append that finds its slot already holding a newer sequence has
+ * been lapped and its value, which is already outside the ring's window, is dropped. Reads take a snapshot of the
+ * most recent values without locking, validating each slot against its sequence number so that a slot being overwritten
+ * by a concurrent append is skipped rather than returned torn. Ints and doubles are stored in their long or raw long bit forms.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.jmxenabled.counters.LongRingBuffer</code></p>
+ */
+public class LongRingBuffer {
+	/** The ring capacity */
+	protected final int capacity;
+	/** The slot values */
+	protected final AtomicLongArray values;
+	/** The sequence number of the value in each slot, {@link #EMPTY} or {@link #WRITING} */
+	protected final AtomicLongArray sequences;
+	/** The next sequence number to be claimed */
+	protected final AtomicLong next = new AtomicLong(0L);
+	/** The lowest sequence number visible to readers, advanced on reset */
+	protected volatile long floor = 0L;
+	
+	/** The sequence of a slot that has never been written */
+	public static final long EMPTY = -1L;
+	/** The sequence of a slot that an append has claimed and is writing */
+	public static final long WRITING = -2L;
+	
+	/**
+	 * Creates a new LongRingBuffer
+	 * @param capacity The number of values retained
+	 */
+	public LongRingBuffer(int capacity) {
+		if(capacity<1) throw new IllegalArgumentException("Invalid ring capacity [" + capacity + "]", new Throwable());
+		this.capacity = capacity;
+		values = new AtomicLongArray(capacity);
+		sequences = new AtomicLongArray(capacity);
+		for(int i = 0; i < capacity; i++) {
+			sequences.set(i, EMPTY);
+		}
+	}
+	
+	/**
+	 * Appends a value as the most recent entry, overwriting the oldest if the ring is full
+	 * @param value The value to append
+	 */
+	public void append(long value) {
+		long seq = next.getAndIncrement();
+		int index = (int)(seq % capacity);
+		for(;;) {
+			long current = sequences.get(index);
+			if(current==WRITING) {
+				// an append a lap behind or ahead is mid write
+				Thread.yield();
+				continue;
+			}
+			// lapped: the slot already holds a newer value
+			if(current>seq) return;
+			// claiming the slot also invalidates it so readers cannot pair the old sequence with the new value
+			if(sequences.compareAndSet(index, current, WRITING)) break;
+		}
+		values.lazySet(index, value);
+		sequences.set(index, seq);
+	}
+	
+	/**
+	 * Returns the number of values currently retained
+	 * @return the number of values currently retained
+	 */
+	public int size() {
+		long count = next.get() - floor;
+		return count > capacity ? capacity : (int)count;
+	}
+	
+	/**
+	 * Returns the ring capacity
+	 * @return the ring capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * Returns a snapshot of up to the most recent <code>lastN</code> values, most recent first
+	 * @param lastN The maximum number of values to return
+	 * @return an array of values, most recent first
+	 */
+	public long[] snapshot(int lastN) {
+		long high = next.get();
+		long low = Math.max(floor, high - Math.min(lastN, capacity));
+		if(high<=low) return new long[0];
+		long[] snapshot = new long[(int)(high-low)];
+		int count = 0;
+		for(long seq = high-1; seq >= low; seq--) {
+			int index = (int)(seq % capacity);
+			if(sequences.get(index)!=seq) continue;
+			long value = values.get(index);
+			if(sequences.get(index)!=seq) continue;
+			snapshot[count++] = value;
+		}
+		if(count==snapshot.length) return snapshot;
+		long[] trimmed = new long[count];
+		System.arraycopy(snapshot, 0, trimmed, 0, count);
+		return trimmed;
+	}
+	
+	/**
+	 * Returns a snapshot of all the retained values, most recent first
+	 * @return an array of values, most recent first
+	 */
+	public long[] snapshot() {
+		return snapshot(capacity);
+	}
+	
+	/**
+	 * Returns the most recent value
+	 * @param defaultValue The value to return if the ring is empty
+	 * @return the most recent value or the default
+	 */
+	public long last(long defaultValue) {
+		long high = next.get();
+		long low = Math.max(floor, high - capacity);
+		// skip over any slots claimed but not yet published by a concurrent append
+		for(long seq = high-1; seq >= low; seq--) {
+			int index = (int)(seq % capacity);
+			if(sequences.get(index)!=seq) continue;
+			long value = values.get(index);
+			if(sequences.get(index)==seq) return value;
+		}
+		return defaultValue;
+	}
+	
+	/**
+	 * Returns the maximum of the retained values, scanning the slots in place
+	 * @param defaultValue The value to return if the ring is empty
+	 * @return the maximum value or the default
+	 */
+	public long max(long defaultValue) {
+		return scan(true, false, defaultValue);
+	}
+	
+	/**
+	 * Returns the minimum of the retained values, scanning the slots in place
+	 * @param defaultValue The value to return if the ring is empty
+	 * @return the minimum value or the default
+	 */
+	public long min(long defaultValue) {
+		return scan(false, false, defaultValue);
+	}
+	
+	/**
+	 * Returns the maximum of the retained values interpreted as raw double bits, scanning the slots in place
+	 * @param defaultValue The value to return if the ring is empty
+	 * @return the maximum value or the default
+	 */
+	public double maxDouble(double defaultValue) {
+		return Double.longBitsToDouble(scan(true, true, Double.doubleToRawLongBits(defaultValue)));
+	}
+	
+	/**
+	 * Returns the minimum of the retained values interpreted as raw double bits, scanning the slots in place
+	 * @param defaultValue The value to return if the ring is empty
+	 * @return the minimum value or the default
+	 */
+	public double minDouble(double defaultValue) {
+		return Double.longBitsToDouble(scan(false, true, Double.doubleToRawLongBits(defaultValue)));
+	}
+	
+	/**
+	 * Scans the retained values for the maximum or minimum without copying them
+	 * @param max true for the maximum, false for the minimum
+	 * @param doubles true to compare the values as raw double bits
+	 * @param defaultValue The raw value to return if the ring is empty
+	 * @return the raw extreme value or the default
+	 */
+	protected long scan(boolean max, boolean doubles, long defaultValue) {
+		long high = next.get();
+		long low = Math.max(floor, high - capacity);
+		boolean found = false;
+		long extreme = defaultValue;
+		for(long seq = high-1; seq >= low; seq--) {
+			int index = (int)(seq % capacity);
+			if(sequences.get(index)!=seq) continue;
+			long value = values.get(index);
+			if(sequences.get(index)!=seq) continue;
+			if(!found) {
+				extreme = value;
+				found = true;
+				continue;
+			}
+			boolean greater = doubles ? Double.longBitsToDouble(value) > Double.longBitsToDouble(extreme) : value > extreme;
+			boolean less = doubles ? Double.longBitsToDouble(value) < Double.longBitsToDouble(extreme) : value < extreme;
+			if(max ? greater : less) extreme = value;
+		}
+		return extreme;
+	}
+	
+	/**
+	 * Discards all the retained values. Values appended concurrently with a reset may or may not be retained.
+	 */
+	public void reset() {
+		floor = next.get();
+	}
+}
@@ -24,15 +24,9 @@
  */
 package org.helios.jmxenabled.counters;
 
-
-
-import gnu.trove.list.array.TLongArrayList;
-
 import java.lang.management.ManagementFactory;
 import java.util.Arrays;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 import javax.management.ObjectName;
 
@@ -62,8 +56,8 @@ import org.helios.jmx.opentypes.tabular.ConcurrentTabularData;
 public class LongRollingCounter extends RollingCounter implements IRollingCounter {
 	/**  */
 	private static final long serialVersionUID = -7250206330548277469L;
-	/** The underlying long values counter */
-	protected final TLongArrayList tLong;
+	/** The ring buffer holding the counter values */
+	protected final LongRingBuffer ring;
 	
 	/**
 	 * Creates a new LongRollingCounter with the default read and write timeouts.
@@ -95,7 +89,7 @@ public class LongRollingCounter extends RollingCounter implements IRollingCounte
 	 */
 	public LongRollingCounter(String name, int capacity, long readTimeout, long writeTimeout) {
 		super(name, capacity, readTimeout, writeTimeout);
-		tLong = new TLongArrayList(capacity);
+		ring = new LongRingBuffer(capacity);
 	}
 	
 	/**
@@ -108,7 +102,7 @@ public class LongRollingCounter extends RollingCounter implements IRollingCounte
 	 */
 	public LongRollingCounter(String name, int capacity, long readTimeout, long writeTimeout, final Map<String, RollingCounter> registerGroup) {
 		super(name, capacity, readTimeout, writeTimeout, registerGroup);
-		tLong = new TLongArrayList(capacity);
+		ring = new LongRingBuffer(capacity);
 	}
 	
 	/**
@@ -127,21 +121,9 @@ public class LongRollingCounter extends RollingCounter implements IRollingCounte
 	 */
 	@JMXOperation(name="put", description="Puts a new value at the head of the counter")
 	public void put(@JMXParameter(name="value", description="The long value to put into the counter") long value) {
-		boolean acquiredLock = false;
-		try {
-			acquiredLock = writeLock.tryLock(writeTimeout, TimeUnit.MILLISECONDS);
-			if(acquiredLock) {
-				tLong.insert(0, value);
-				int newSize = currentSize.incrementAndGet();
-				if(newSize>size) {
-					tLong.remove(newSize-1);
-					currentSize.decrementAndGet();
-				}
-			}
-		} catch (Exception e) {
-			LOG.error("long value put error [" + value + "]", e);
-		} finally {
-			if(acquiredLock) try { writeLock.unlock(); } catch (Exception e) {}
+		ring.append(value);
+		if(currentSize.get()<size) {
+			currentSize.set(ring.size());
 		}
 	}
 	
@@ -160,18 +142,7 @@ public class LongRollingCounter extends RollingCounter implements IRollingCounte
 	@JMXAttribute(name="{f:name}Contents", description="Returns a copy of the internal contents of the counter", mutability=AttributeMutabilityOption.READ_ONLY)
 	@XCompositeAttribute
 	public long[] getContents() {
-		boolean acquiredLock = false;
-		try {
-			acquiredLock = readLock.tryLock(readTimeout, TimeUnit.MILLISECONDS);
-			if(acquiredLock) {
-				return tLong.toArray();
-			}
-			throw new TimeoutException("Failed to acquire readLock within [" + readTimeout + "] ms.");
-		} catch (Exception e) {
-			throw new RuntimeException("Failed to render the counter", e);
-		} finally {
-			if(acquiredLock) try { readLock.unlock(); } catch (Exception e) {}
-		}			
+		return ring.snapshot();
 	}
 	
 	/**
@@ -198,20 +169,8 @@ public class LongRollingCounter extends RollingCounter implements IRollingCounte
 	 */
 	@JMXOperation(name="reset", description="Resets the rolling counter")
 	public void reset() {
-		boolean acquiredLock = false;
-		try {
-			acquiredLock = writeLock.tryLock(writeTimeout, TimeUnit.MILLISECONDS);
-			if(acquiredLock) {
-				tLong.reset();
-				currentSize.set(0);
-			} else {
-				throw new TimeoutException("Failed to acquire writeLock within [" + writeTimeout + "] ms.");
-			}
-		} catch (Exception e) {
-			throw new RuntimeException("Failed to reset the counter", e);
-		} finally {
-			if(acquiredLock) try { writeLock.unlock(); } catch (Exception e) {}
-		}			
+		ring.reset();
+		currentSize.set(0);
 	}
 	
 	
@@ -223,21 +182,7 @@ public class LongRollingCounter extends RollingCounter implements IRollingCounte
 	@JMXAttribute(name="{f:name}RangeMaximum", description="The maximum value in the history counter", mutability=AttributeMutabilityOption.READ_ONLY)
 	@XCompositeAttribute
 	public long getRangeMax() {
-		boolean acquiredLock = false;
-		try {
-			acquiredLock = readLock.tryLock(readTimeout, TimeUnit.MILLISECONDS);
-			if(acquiredLock) {
-				if(tLong.isEmpty()) return 0;
-				return tLong.max();
-			} else {
-				throw new TimeoutException("Failed to acquire readLock within [" + readTimeout + "] ms.");
-			}
-		} catch (Exception e) {
-			throw new RuntimeException("Failed to acquire the counter range max", e);
-		} finally {
-			if(acquiredLock) try { readLock.unlock(); } catch (Exception e) {}
-		}			
-		
+		return ring.max(0L);
 	}
 	
 	/**
@@ -247,21 +192,7 @@ public class LongRollingCounter extends RollingCounter implements IRollingCounte
 	@JMXAttribute(name="{f:name}RangeMinimum", description="The minimum value in the history counter", mutability=AttributeMutabilityOption.READ_ONLY)
 	@XCompositeAttribute
 	public long getRangeMin() {
-		boolean acquiredLock = false;
-		try {
-			acquiredLock = readLock.tryLock(readTimeout, TimeUnit.MILLISECONDS);
-			if(acquiredLock) {
-				if(tLong.isEmpty()) return 0;
-				return tLong.min();
-			} else {
-				throw new TimeoutException("Failed to acquire readLock within [" + readTimeout + "] ms.");
-			}
-		} catch (Exception e) {
-			throw new RuntimeException("Failed to acquire the counter range min", e);
-		} finally {
-			if(acquiredLock) try { readLock.unlock(); } catch (Exception e) {}
-		}			
-		
+		return ring.min(0L);
 	}
 	
 	
@@ -274,12 +205,7 @@ public class LongRollingCounter extends RollingCounter implements IRollingCounte
 	 */
 	@JMXAttribute(name="{f:name}LastValue", description="Returns the last value inserted into the counter", mutability=AttributeMutabilityOption.READ_ONLY)
 	public long getLastValue() {
-		if(currentSize.get()<1) {
-			return -1;
-		} else {
-			long[] values = getContents();
-			return values.length<1 ? -1 : values[0];
-		}
+		return ring.last(-1);
 	}
 	
 	/**
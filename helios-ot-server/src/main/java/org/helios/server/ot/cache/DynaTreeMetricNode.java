@@ -0,0 +1,112 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.server.ot.cache;
+
+import java.io.Serializable;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * <p>Title: DynaTreeMetricNode</p>
+ * <p>Description: Custom representation of a metric tree node intended for exposing nodes for a Dynatree</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.server.ot.cache.DynaTreeMetricNode</code></p>
+ */
+@XmlRootElement(name="dynatreeNode")
+@XmlAccessorType(XmlAccessType.FIELD)	
+public class DynaTreeMetricNode implements Serializable {
+	/**  */
+	private static final long serialVersionUID = -2371283406626263617L;
+	/** The node title */
+	@XmlElement
+	public final String title;
+	/** The node key as the fully qualified node name, also referred to as the path */
+	@XmlElement
+	public final String key;
+	/** Same as the node key */
+	@XmlElement
+	public final String tooltip;
+	/** Constant. Nodes always load lazilly */
+	@XmlElement
+	public final boolean isLazy = true;
+	/** Indicates if this is a folder (or a node) */
+	@XmlElement
+	public final boolean isFolder;
+	/** Metric Id nodes and folders containing nodes have the check box enabled */
+	@XmlElement
+	public final boolean hideCheckbox;
+
+	/**
+	 * Creates a new DynaTreeMetricNode
+	 * @param title The node title 
+	 * @param key The node key as the fully qualified node name, also referred to as the path
+	 * @param isFolder Indicates if this is a folder (or a node)
+	 * @param hideCheckbox Metric Id nodes and folders containing nodes have the check box enabled
+	 */
+	public DynaTreeMetricNode(String title, String key,	boolean isFolder, boolean hideCheckbox) {
+		super();
+		this.title = title;
+		this.key = key;
+		this.tooltip = key;
+		this.isFolder = isFolder;
+		this.hideCheckbox = hideCheckbox;
+	}
+
+	/**
+	 * Mandatory but unused parameterless DynaTreeMetricNode ctor
+	 */
+	public DynaTreeMetricNode() {			
+		this.title = null;
+		this.key = null;
+		this.tooltip = null;
+		this.isFolder = false;
+		this.hideCheckbox = false;
+	}
+
+	/**
+	 * Constructs a <code>String</code> with key attributes in name = value format.
+	 * @return a <code>String</code> representation of this object.
+	 */
+	@Override
+	public String toString() {
+	    final String TAB = "\n\t";
+	    StringBuilder retValue = new StringBuilder("DynaTreeMetricNode [")
+	        .append(TAB).append("title = ").append(this.title)
+	        .append(TAB).append("key = ").append(this.key)
+	        .append(TAB).append("tooltip = ").append(this.tooltip)
+	        .append(TAB).append("isLazy = ").append(this.isLazy)
+	        .append(TAB).append("isFolder = ").append(this.isFolder)
+	        .append(TAB).append("hideCheckbox = ").append(this.hideCheckbox)
+	        .append("\n]");    
+	    return retValue.toString();
+	}
+	
+	
+}
@@ -32,8 +32,6 @@ import org.apache.camel.Message;
 import org.apache.camel.Processor;
 import org.apache.log4j.Logger;
 import org.helios.ot.trace.ClosedTrace;
-import org.helios.ot.trace.Trace;
-import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
@@ -46,7 +44,7 @@ import org.springframework.beans.factory.annotation.Qualifier;
  * <p><code>org.helios.server.ot.cache.MetaCacheProcessor</code></p>
  */
 
-public class MetaCacheProcessor implements Processor, InitializingBean  {
+public class MetaCacheProcessor implements Processor  {
 	/** The metric cache */
 	@Autowired(required=true)
 	@Qualifier("metricNameCache")	
@@ -57,14 +55,11 @@ public class MetaCacheProcessor implements Processor, InitializingBean  {
 	@Qualifier("lastMetricCache")	
 	protected Cache lastMetricCache;
 	
-	/** The metric tree cache */
+	/** The metric tree */
 	@Autowired(required=true)
-	@Qualifier("metricTreeCache")	
-	protected Cache metricTreeCache;
+	@Qualifier("metricTree")	
+	protected MetricTree metricTree;
 	
-	
-	/** The root entry */
-	protected MetricTreeEntry rootEntry;
 	/** Instance logger */
 	protected final Logger log = Logger.getLogger(getClass());
 	
@@ -87,70 +82,17 @@ public class MetaCacheProcessor implements Processor, InitializingBean  {
 	
 
 	/**
-	 * Caches the metric name if it is not in the cache
+	 * Caches the metric name and adds it to the metric tree if it is not in the cache
 	 * @param trace The trace
 	 */
 	protected void processMetricName(ClosedTrace trace) {
 		lastMetricCache.put(new Element(trace.getFQN(), trace));
 		Element elem = metricNameCache.get(trace.getFQN());
 		if(elem==null) {
-			//putHierarchy(trace);
 			elem = new Element(trace.getFQN(), trace.getMetricId());
 			if(log.isDebugEnabled()) log.debug("Processing New Element:[" + trace.getFQN() + "]");
 			metricNameCache.put(elem);
-			MetricTreeEntry currentEntry = rootEntry;
-			String[] segments = trace.getFQN().split("/");
-			StringBuilder keyPref = new StringBuilder();
-			String lastSegment = null;
-			for(String segment: segments) {
-				lastSegment = segment;
-				if(keyPref.length()==0) {
-					keyPref.append(segment);
-				} else {
-					keyPref.append(KEY_DELIM).append(segment);
-				}
-				currentEntry.addSubKey(segment, keyPref);
-				currentEntry = MetricTreeEntry.getOrCreate(keyPref, getParentKey(keyPref), null, metricTreeCache);
-			}			
-			currentEntry.setMetricId(trace.getMetricId());
-			Element parentElement = metricTreeCache.get(currentEntry.getParentKey());
-			MetricTreeEntry mte = (MetricTreeEntry)parentElement.getValue();
-			mte.addNode(lastSegment, trace.getMetricId());
-			metricTreeCache.put(parentElement);			
-		}
-		//MetricTreeEntry entry = MetricTreeEntry.getOrCreate(trace.getFQN(), getParentKey(trace.getFQN()), trace.getMetricId(), metricTreeCache);
-		
-	}
-	
-	/**
-	 * Adds the trace hierarchy to the cache
-	 * @param trace The trace with the name to add
-	 */
-	protected void putHierarchy(ClosedTrace trace) {
-		String[] segments = trace.getFQN().split(KEY_DELIM);
-		int nameSize = trace.getFQN().length();
-		int segSize = segments.length;
-		StringBuilder nodeName = new StringBuilder(nameSize);
-		StringBuilder parentNodeName = new StringBuilder(nameSize);
-		MetricTreeEntry parentEntry = MetricTreeEntry.getOrCreate(segments[0], KEY_DELIM, null, metricTreeCache);
-		
-		parentNodeName.append(segments[0]);
-		nodeName.append(segments[0]);
-		if(rootEntry==null) rootEntry = MetricTreeEntry.getOrCreate("/", "", null, metricTreeCache);
-		rootEntry.addSubKey(nodeName, nodeName);
-		MetricTreeEntry currentEntry = null;
-		for(int i = 1; i < segSize; i++) {
-			nodeName.append(KEY_DELIM).append(segments[i]);
-			if(i==(segSize-1)) {
-				currentEntry = MetricTreeEntry.getOrCreate(nodeName, parentNodeName, trace.getMetricId(), metricTreeCache);
-				parentEntry.addNode(segments[i], trace.getMetricId());
-				currentEntry.addSubKey(segments[i], nodeName);
-			} else {
-				currentEntry = MetricTreeEntry.getOrCreate(nodeName, parentNodeName, null, metricTreeCache);
-				parentEntry.addSubKey(segments[i], nodeName);
-			}
-			parentEntry = currentEntry;
-			parentNodeName.append(KEY_DELIM).append(segments[i]);
+			metricTree.add(trace.getFQN(), trace.getMetricId());
 		}
 	}
 	
@@ -181,16 +123,4 @@ public class MetaCacheProcessor implements Processor, InitializingBean  {
 		return b.toString();
 	}
 
-	
-	
-	/**
-	 * {@inheritDoc}
-	 * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
-	 */
-	@Override
-	public void afterPropertiesSet() throws Exception {
-		rootEntry = MetricTreeEntry.getOrCreate("/", "", null, metricTreeCache);
-	}
-	
-
 }
@@ -24,16 +24,7 @@
  */
 package org.helios.server.ot.cache;
 
-import java.util.HashSet;
-import java.util.Set;
-
-import net.sf.ehcache.Cache;
-import net.sf.ehcache.search.Query;
-import net.sf.ehcache.search.Result;
-import net.sf.ehcache.search.Results;
-
 import org.helios.ot.trace.MetricId;
-import org.helios.server.ot.jms.pubsub.PatternMatchesTo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
@@ -48,39 +39,24 @@ import org.springframework.beans.factory.annotation.Qualifier;
 
 public class MetricNameLookup {
 
-	/** The metric cache */
+	/** The metric tree */
 	@Autowired(required=true)
-	@Qualifier("metricNameCache")	
-	protected Cache metricCache;
+	@Qualifier("metricTree")	
+	protected MetricTree metricTree;
 
 	/** Empty result constant */
 	public static final MetricId[] EMPTY_RESULTS = new MetricId[0];
 	
 	/**
-	 * Returns MetricIds from the metric name cache where the FQN matches the passed expression
+	 * Returns MetricIds from the metric tree where the FQN matches the passed expression.
+	 * The expression is matched ignoring case, where <b><code>*</code></b> matches any characters and <b><code>?</code></b> matches any one character.
 	 * @param expression The expression to match to MetricId FQNs
 	 * @return An array of matching MetricIds
 	 */
 	public MetricId[] search(String expression) {
 		if(expression==null) return EMPTY_RESULTS;
-		Set<MetricId> ids = new HashSet<MetricId>();
-		Results results = null;
-		try {
-			results = metricCache.createQuery()
-			//.addCriteria(new PatternMatchesTo("fqn", expression))
-			.addCriteria(Query.KEY.ilike(expression))
-			.includeValues().execute();
-			if(results.size()<1) return EMPTY_RESULTS;
-			for(Result r: results.all()) {
-				ids.add((MetricId)r.getValue());
-			}
-			
-		} finally {
-			if(results!=null) results.discard();
-		}
-		
-		
-		return ids.toArray(new MetricId[ids.size()]);
+		MetricId[] ids = metricTree.search(expression);
+		return ids.length==0 ? EMPTY_RESULTS : ids;
 	}
 	
 	
@@ -0,0 +1,462 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.server.ot.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import org.helios.ot.trace.MetricId;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * <p>Title: MetricTree</p>
+ * <p>Description: A concurrent segment trie of metric names backing the browsable metric tree and metric name searches.</p>
+ * <p>Each node holds only its interned name segment, its parent, its children and its {@link MetricId} if it is a metric, 
+ * so full paths are built on demand rather than stored per node. Children are held in a sorted array which is replaced by 
+ * compare-and-set on insert, and upgraded to a concurrent map once a node has more than {@link #MAX_ARRAY_CHILDREN} children, 
+ * so inserts never lock and readers never block.</p>
+ * <p>Searches use the same case insensitive <b><code>*</code></b> and <b><code>?</code></b> wildcards as the former cache key search,
+ * matched against the full metric name, but only descend into branches whose path can still match.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.server.ot.cache.MetricTree</code></p>
+ */
+@ManagedResource(objectName="org.helios.server.ot.cache:service=MetricTree")
+public class MetricTree {
+	/** The root node */
+	protected final Node root = new Node(null, "");
+	/** The interned segment dictionary */
+	protected final ConcurrentHashMap<String, String> segments = new ConcurrentHashMap<String, String>();
+	/** The number of nodes in the tree, excluding the root */
+	protected final AtomicInteger nodeCount = new AtomicInteger(0);
+	/** The number of metric nodes in the tree */
+	protected final AtomicInteger metricCount = new AtomicInteger(0);
+	
+	/** The metric name segment delimiter */
+	public static final char DELIM = '/';
+	/** The path of the root node */
+	public static final String ROOT_KEY = "/";
+	/** The number of children above which a node's children are held in a map */
+	public static final int MAX_ARRAY_CHILDREN = 16;
+	/** The multi character wildcard */
+	public static final char MULTI_WILDCARD = '*';
+	/** The single character wildcard */
+	public static final char SINGLE_WILDCARD = '?';
+	/** Empty node array constant */
+	protected static final Node[] EMPTY_NODES = new Node[0];
+	/** Empty result constant */
+	protected static final MetricId[] EMPTY_RESULTS = new MetricId[0];
+	
+	/**
+	 * Adds a metric to the tree, creating any missing intermediate nodes
+	 * @param fqn The metric fully qualified name
+	 * @param metricId The metric id
+	 * @return true if the metric was not already in the tree
+	 */
+	public boolean add(String fqn, MetricId metricId) {
+		if(fqn==null) throw new IllegalArgumentException("The passed fqn was null", new Throwable());
+		if(metricId==null) throw new IllegalArgumentException("The passed metricId was null", new Throwable());
+		Node node = root;
+		int start = 0;
+		final int length = fqn.length();
+		while(start <= length) {
+			int end = fqn.indexOf(DELIM, start);
+			if(end==-1) end = length;
+			node = node.getOrAddChild(fqn.substring(start, end), this);
+			start = end + 1;
+		}
+		if(node.metricId==null) {
+			synchronized(node) {
+				if(node.metricId==null) {
+					node.metricId = metricId;
+					metricCount.incrementAndGet();
+					if(node.parent!=null) node.parent.metricChildren = true;
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Finds the node for the passed path
+	 * @param path The slash delimited path. Null, empty or <b><code>/</code></b> returns the root.
+	 * @return the node or null if there is no node at the passed path
+	 */
+	public Node find(CharSequence path) {
+		if(path==null) return root;
+		String p = path.toString();
+		if(p.length()==0 || ROOT_KEY.equals(p)) return root;
+		Node node = root;
+		int start = 0;
+		final int length = p.length();
+		while(start <= length && node!=null) {
+			int end = p.indexOf(DELIM, start);
+			if(end==-1) end = length;
+			node = node.getChild(p.substring(start, end));
+			start = end + 1;
+		}
+		return node;
+	}
+	
+	/**
+	 * Returns the child nodes of the node at the passed path as DynaTreeMetricNodes, sorted by title
+	 * @param path The slash delimited path
+	 * @return an array of DynaTreeMetricNodes or null if there is no node at the passed path
+	 */
+	public DynaTreeMetricNode[] getDynaTreeNodes(CharSequence path) {
+		Node node = find(path);
+		if(node==null) return null;
+		Node[] children = node.getChildren();
+		Arrays.sort(children, NODE_COMPARATOR);
+		DynaTreeMetricNode[] nodes = new DynaTreeMetricNode[children.length];
+		for(int i = 0; i < children.length; i++) {
+			Node child = children[i];
+			nodes[i] = new DynaTreeMetricNode(
+					child.segment,										// the relative key
+					child.getKey(),										// the full key
+					child.children!=null,								// indicates if the child has children
+					!(child.metricId!=null || child.metricChildren)		// metrics and folders with metrics have the check box enabled
+			);
+		}
+		return nodes;
+	}
+	
+	/**
+	 * Returns the MetricIds of the metrics whose fully qualified name matches the passed expression, ignoring case.
+	 * A <b><code>*</code></b> matches any sequence of characters, including the delimiter, and a <b><code>?</code></b> matches any single character.
+	 * @param expression The expression to match
+	 * @return An array of matching MetricIds
+	 */
+	public MetricId[] search(String expression) {
+		if(expression==null) return EMPTY_RESULTS;
+		char[] pattern = expression.toLowerCase().toCharArray();
+		boolean[] states = closure(pattern, new boolean[pattern.length + 1], 0);
+		List<MetricId> results = new ArrayList<MetricId>();
+		for(Node child: root.getChildren()) {
+			search(child, pattern, step(pattern, states, child.segment), results);
+		}
+		return results.toArray(new MetricId[results.size()]);
+	}
+	
+	/**
+	 * Recursively matches a node and its descendants
+	 * @param node The node to match
+	 * @param pattern The lower case pattern
+	 * @param states The pattern positions reachable after matching the node's full key
+	 * @param results The matched metric ids
+	 */
+	protected void search(Node node, char[] pattern, boolean[] states, List<MetricId> results) {
+		if(states==null) return;
+		MetricId metricId = node.metricId;
+		if(metricId!=null && states[pattern.length]) results.add(metricId);
+		if(node.children==null) return;
+		boolean[] delimited = step(pattern, states, DELIM);
+		if(delimited==null) return;
+		for(Node child: node.getChildren()) {
+			search(child, pattern, step(pattern, delimited, child.segment), results);
+		}
+	}
+	
+	/**
+	 * Advances the pattern positions over a name segment
+	 * @param pattern The lower case pattern
+	 * @param states The current pattern positions
+	 * @param segment The segment to advance over
+	 * @return the new pattern positions or null if none are reachable
+	 */
+	protected static boolean[] step(char[] pattern, boolean[] states, String segment) {
+		boolean[] current = states;
+		final int length = segment.length();
+		for(int i = 0; i < length && current!=null; i++) {
+			current = step(pattern, current, Character.toLowerCase(segment.charAt(i)));
+		}
+		return current;
+	}
+	
+	/**
+	 * Advances the pattern positions over one character
+	 * @param pattern The lower case pattern
+	 * @param states The current pattern positions
+	 * @param c The lower case character to advance over
+	 * @return the new pattern positions or null if none are reachable
+	 */
+	protected static boolean[] step(char[] pattern, boolean[] states, char c) {
+		boolean[] next = null;
+		for(int i = 0; i < pattern.length; i++) {
+			if(!states[i]) continue;
+			char p = pattern[i];
+			if(p==MULTI_WILDCARD) {
+				if(next==null) next = new boolean[states.length];
+				closure(pattern, next, i);
+			} else if(p==SINGLE_WILDCARD || p==c) {
+				if(next==null) next = new boolean[states.length];
+				closure(pattern, next, i+1);
+			}
+		}
+		return next;
+	}
+	
+	/**
+	 * Marks a pattern position, and every position reachable from it by skipping multi character wildcards, as reachable
+	 * @param pattern The pattern
+	 * @param states The pattern positions to mark
+	 * @param position The position to mark
+	 * @return the marked pattern positions
+	 */
+	protected static boolean[] closure(char[] pattern, boolean[] states, int position) {
+		states[position] = true;
+		while(position < pattern.length && pattern[position]==MULTI_WILDCARD) {
+			states[++position] = true;
+		}
+		return states;
+	}
+	
+	/**
+	 * Returns the interned instance of the passed segment
+	 * @param segment The segment
+	 * @return the interned segment
+	 */
+	protected String intern(String segment) {
+		String existing = segments.putIfAbsent(segment, segment);
+		return existing==null ? segment : existing;
+	}
+	
+	/**
+	 * Returns the number of nodes in the tree
+	 * @return the number of nodes in the tree
+	 */
+	@ManagedAttribute(description="The number of nodes in the metric tree")
+	public int getNodeCount() {
+		return nodeCount.get();
+	}
+	
+	/**
+	 * Returns the number of metrics in the tree
+	 * @return the number of metrics in the tree
+	 */
+	@ManagedAttribute(description="The number of metrics in the metric tree")
+	public int getMetricCount() {
+		return metricCount.get();
+	}
+	
+	/**
+	 * Returns the number of distinct interned name segments
+	 * @return the number of distinct name segments
+	 */
+	@ManagedAttribute(description="The number of distinct interned name segments")
+	public int getSegmentCount() {
+		return segments.size();
+	}
+	
+	/** Orders nodes by segment, ignoring case */
+	protected static final Comparator<Node> NODE_COMPARATOR = new Comparator<Node>() {
+		public int compare(Node n1, Node n2) {
+			return String.CASE_INSENSITIVE_ORDER.compare(n1.segment, n2.segment);
+		}
+	};
+	
+	/**
+	 * <p>Title: Node</p>
+	 * <p>Description: A metric tree node</p> 
+	 */
+	public static class Node {
+		/** The interned name segment */
+		protected final String segment;
+		/** The parent node */
+		protected final Node parent;
+		/** The children: null, a segment sorted <code>Node[]</code>, or a <code>ConcurrentHashMap&lt;String, Node&gt;</code> */
+		protected volatile Object children = null;
+		/** The metric id if this node is a metric */
+		protected volatile MetricId metricId = null;
+		/** Indicates that at least one child is a metric */
+		protected volatile boolean metricChildren = false;
+		
+		/** The children updater */
+		protected static final AtomicReferenceFieldUpdater<Node, Object> CHILDREN = AtomicReferenceFieldUpdater.newUpdater(Node.class, Object.class, "children");
+		
+		/**
+		 * Creates a new Node
+		 * @param parent The parent node
+		 * @param segment The interned name segment
+		 */
+		protected Node(Node parent, String segment) {
+			this.parent = parent;
+			this.segment = segment;
+		}
+		
+		/**
+		 * Returns the named child
+		 * @param name The child segment
+		 * @return the child node or null if it does not exist
+		 */
+		@SuppressWarnings("unchecked")
+		public Node getChild(String name) {
+			Object c = children;
+			if(c==null) return null;
+			if(c instanceof Node[]) {
+				Node[] nodes = (Node[])c;
+				int index = indexOf(nodes, name);
+				return index < 0 ? null : nodes[index];
+			}
+			return ((ConcurrentHashMap<String, Node>)c).get(name);
+		}
+		
+		/**
+		 * Returns the named child, adding it if it does not exist
+		 * @param name The child segment
+		 * @param tree The owning tree
+		 * @return the child node
+		 */
+		@SuppressWarnings("unchecked")
+		protected Node getOrAddChild(String name, MetricTree tree) {
+			Node created = null;
+			for(;;) {
+				Object c = children;
+				if(c instanceof ConcurrentHashMap) {
+					ConcurrentHashMap<String, Node> map = (ConcurrentHashMap<String, Node>)c;
+					Node existing = map.get(name);
+					if(existing!=null) return existing;
+					if(created==null) created = new Node(this, tree.intern(name));
+					existing = map.putIfAbsent(created.segment, created);
+					if(existing!=null) return existing;
+					tree.nodeCount.incrementAndGet();
+					return created;
+				}
+				Node[] nodes = c==null ? EMPTY_NODES : (Node[])c;
+				int index = indexOf(nodes, name);
+				if(index >= 0) return nodes[index];
+				if(created==null) created = new Node(this, tree.intern(name));
+				Object replacement;
+				if(nodes.length >= MAX_ARRAY_CHILDREN) {
+					ConcurrentHashMap<String, Node> map = new ConcurrentHashMap<String, Node>(nodes.length * 4);
+					for(Node node: nodes) map.put(node.segment, node);
+					map.put(created.segment, created);
+					replacement = map;
+				} else {
+					int insert = -(index + 1);
+					Node[] grown = new Node[nodes.length + 1];
+					System.arraycopy(nodes, 0, grown, 0, insert);
+					grown[insert] = created;
+					System.arraycopy(nodes, insert, grown, insert + 1, nodes.length - insert);
+					replacement = grown;
+				}
+				if(CHILDREN.compareAndSet(this, c, replacement)) {
+					tree.nodeCount.incrementAndGet();
+					return created;
+				}
+			}
+		}
+		
+		/**
+		 * Binary searches a segment sorted node array
+		 * @param nodes The nodes to search
+		 * @param name The segment to find
+		 * @return the index of the node, or <code>(-(insertion point) - 1)</code> if not found
+		 */
+		protected static int indexOf(Node[] nodes, String name) {
+			int low = 0, high = nodes.length - 1;
+			while(low <= high) {
+				int mid = (low + high) >>> 1;
+				int cmp = nodes[mid].segment.compareTo(name);
+				if(cmp < 0) low = mid + 1;
+				else if(cmp > 0) high = mid - 1;
+				else return mid;
+			}
+			return -(low + 1);
+		}
+		
+		/**
+		 * Returns a snapshot of this node's children
+		 * @return a snapshot of this node's children
+		 */
+		@SuppressWarnings("unchecked")
+		public Node[] getChildren() {
+			Object c = children;
+			if(c==null) return EMPTY_NODES;
+			if(c instanceof Node[]) return ((Node[])c).clone();
+			return ((ConcurrentHashMap<String, Node>)c).values().toArray(EMPTY_NODES);
+		}
+		
+		/**
+		 * Returns the full slash delimited key of this node
+		 * @return the full key
+		 */
+		public String getKey() {
+			if(parent==null) return ROOT_KEY;
+			int length = -1;
+			for(Node node = this; node.parent!=null; node = node.parent) {
+				length += node.segment.length() + 1;
+			}
+			char[] key = new char[length];
+			int position = length;
+			for(Node node = this; node.parent!=null; node = node.parent) {
+				position -= node.segment.length();
+				node.segment.getChars(0, node.segment.length(), key, position);
+				if(position > 0) key[--position] = DELIM;
+			}
+			return new String(key);
+		}
+		
+		/**
+		 * Returns the node name segment
+		 * @return the node name segment
+		 */
+		public String getSegment() {
+			return segment;
+		}
+		
+		/**
+		 * Returns the metric id of this node
+		 * @return the metric id or null if this node is not a metric
+		 */
+		public MetricId getMetricId() {
+			return metricId;
+		}
+		
+		/**
+		 * Indicates if this node has children
+		 * @return true if this node has children
+		 */
+		public boolean hasChildren() {
+			return children!=null;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Object#toString()
+		 */
+		public String toString() {
+			return "MetricTree.Node [" + getKey() + "]";
+		}
+	}
+}
@@ -72,6 +72,10 @@ public class SubListener implements Processor {
 	@Autowired(required=true)
 	@Qualifier("consumerCache")	
 	protected Cache consumerCache;
+	/** The subscription matching index */
+	@Autowired(required=true)
+	@Qualifier("subIndex")	
+	protected SubscriptionIndex subIndex;
 	
 	/** The consumer tabular type */
 	protected final TabularType consumerType = getConsumerEntryType();
@@ -94,11 +98,12 @@ public class SubListener implements Processor {
 			String subPattern = sp.getPatternValue();
 			Element element = subCache.get(subPattern);			
 			if(element!=null) {
-				((SubscriptionPattern)element.getObjectValue()).incr();
+				sp = ((SubscriptionPattern)element.getObjectValue()).incr();
 			} else {
 				sp.incr();
 				subCache.put(sp.getElement());
 			}
+			subIndex.add(sp.getTopic());
 			consumerCache.put(new Element(ci.getConsumerId().toString(), subPattern));
 			log.info("Processing Sub Start on [" + subPattern + "]  ConsumerId: [" + ci.getConsumerId().toString() + "]" );
 		} else if (bc instanceof RemoveInfo) {
@@ -115,6 +120,7 @@ public class SubListener implements Processor {
 				Element subElement = subCache.get(subPattern);			
 				if(subElement!=null) {
 					SubscriptionPattern sp = ((SubscriptionPattern)subElement.getObjectValue()).decr();
+					subIndex.remove(sp.getTopic());
 					if(sp.getSubCount()<1) {
 						log.info("Sub Pattern [" + subPattern + "] ticked to zero and removed");
 						subCache.remove(subPattern);
@@ -0,0 +1,326 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.server.ot.jms.pubsub;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * <p>Title: SubscriptionIndex</p>
+ * <p>Description: A segment trie of the metric tree subscription topics, used to decide if any subscriber is interested in a metric without
+ * scanning every subscription pattern. Topics are split on <b><code>.</code></b> and support the ActiveMQ wildcards, <b><code>*</code></b>
+ * which matches exactly one segment and <b><code>&gt;</code></b> which matches one or more trailing segments. Metric FQNs are split on
+ * <b><code>/</code></b> and <b><code>.</code></b> since that is how they are mapped to a topic name when they are republished.</p>
+ * <p>Match results are cached per FQN. The cache is discarded whenever a subscription is added or removed.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.server.ot.jms.pubsub.SubscriptionIndex</code></p>
+ */
+@ManagedResource(objectName="org.helios.server.ot.jms.pubsub:service=SubscriptionIndex")
+public class SubscriptionIndex {
+	/** The root node of the trie */
+	protected final Node root = new Node();
+	/** The match result cache keyed by FQN. Replaced, not cleared, when the subscriptions change. */
+	protected volatile Map<String, Boolean> matchCache = new ConcurrentHashMap<String, Boolean>(1024);
+	/** The maximum number of entries in the match cache */
+	protected int maxCacheSize = DEFAULT_MAX_CACHE_SIZE;
+	/** The number of subscriptions in the index */
+	protected final AtomicInteger subscriptionCount = new AtomicInteger(0);
+	/** The number of match requests */
+	protected final AtomicLong matchCount = new AtomicLong(0L);
+	/** The number of match requests served from the cache */
+	protected final AtomicLong cacheHitCount = new AtomicLong(0L);
+	/** The number of times the match cache was discarded */
+	protected final AtomicLong invalidationCount = new AtomicLong(0L);
+
+	/** The default maximum number of entries in the match cache */
+	public static final int DEFAULT_MAX_CACHE_SIZE = 100000;
+	/** The single segment wildcard */
+	public static final String SINGLE_WILDCARD = "*";
+	/** The trailing multi segment wildcard */
+	public static final String MULTI_WILDCARD = ">";
+
+	/**
+	 * Adds a subscription to the index
+	 * @param topic The subscribed topic, with or without the {@link SubscriptionPattern#TOPIC_PREFIX}
+	 */
+	public void add(String topic) {
+		String[] segments = topicSegments(topic);
+		synchronized(root) {
+			Node node = root;
+			for(int i = 0; i < segments.length; i++) {
+				if(MULTI_WILDCARD.equals(segments[i]) && i==segments.length-1) {
+					node.multiCount++;
+					node = null;
+					break;
+				}
+				Node child = node.children.get(segments[i]);
+				if(child==null) {
+					child = new Node();
+					node.children.put(segments[i], child);
+				}
+				node = child;
+			}
+			if(node!=null) node.terminalCount++;
+			subscriptionCount.incrementAndGet();
+			invalidate();
+		}
+	}
+
+	/**
+	 * Removes a subscription from the index
+	 * @param topic The subscribed topic, with or without the {@link SubscriptionPattern#TOPIC_PREFIX}
+	 * @return true if the subscription was found and removed
+	 */
+	public boolean remove(String topic) {
+		String[] segments = topicSegments(topic);
+		synchronized(root) {
+			Node[] path = new Node[segments.length+1];
+			path[0] = root;
+			Node node = root;
+			boolean multi = false;
+			int depth = 0;
+			for(; depth < segments.length; depth++) {
+				if(MULTI_WILDCARD.equals(segments[depth]) && depth==segments.length-1) {
+					multi = true;
+					break;
+				}
+				node = node.children.get(segments[depth]);
+				if(node==null) return false;
+				path[depth+1] = node;
+			}
+			if(multi) {
+				if(node.multiCount<1) return false;
+				node.multiCount--;
+			} else {
+				if(node.terminalCount<1) return false;
+				node.terminalCount--;
+			}
+			// prune the nodes left without subscriptions
+			for(int i = depth; i > 0 && path[i].isEmpty(); i--) {
+				path[i-1].children.remove(segments[i-1]);
+			}
+			subscriptionCount.decrementAndGet();
+			invalidate();
+			return true;
+		}
+	}
+
+	/**
+	 * Determines if any subscription matches the passed metric FQN
+	 * @param fqn The metric fully qualified name
+	 * @return true if at least one subscription matches
+	 */
+	public boolean matches(String fqn) {
+		matchCount.incrementAndGet();
+		final Map<String, Boolean> cache = matchCache;
+		Boolean match = cache.get(fqn);
+		if(match!=null) {
+			cacheHitCount.incrementAndGet();
+			return match;
+		}
+		match = subscriptionCount.get()>0 && match(root, fqnSegments(fqn), 0);
+		if(cache.size()<maxCacheSize) {
+			cache.put(fqn, match);
+		}
+		return match;
+	}
+
+	/**
+	 * Recursively matches the segments from the passed index against the passed node
+	 * @param node The node to match from
+	 * @param segments The metric segments
+	 * @param index The index of the next segment to match
+	 * @return true if a subscription matched
+	 */
+	protected static boolean match(Node node, String[] segments, int index) {
+		if(index==segments.length) return node.terminalCount>0;
+		if(node.multiCount>0) return true;
+		Node child = node.children.get(segments[index]);
+		if(child!=null && match(child, segments, index+1)) return true;
+		child = node.children.get(SINGLE_WILDCARD);
+		return child!=null && match(child, segments, index+1);
+	}
+
+	/**
+	 * Discards the match cache
+	 */
+	protected void invalidate() {
+		matchCache = new ConcurrentHashMap<String, Boolean>(1024);
+		invalidationCount.incrementAndGet();
+	}
+
+	/**
+	 * Splits a subscription topic into segments
+	 * @param topic The topic
+	 * @return the topic segments
+	 */
+	protected static String[] topicSegments(String topic) {
+		if(topic==null) throw new IllegalArgumentException("The passed topic was null", new Throwable());
+		if(topic.startsWith(SubscriptionPattern.TOPIC_PREFIX)) {
+			topic = topic.substring(SubscriptionPattern.TOPIC_PREFIX.length());
+		}
+		return split(topic, '.', '.');
+	}
+
+	/**
+	 * Splits a metric FQN into segments
+	 * @param fqn The metric FQN
+	 * @return the metric segments
+	 */
+	protected static String[] fqnSegments(String fqn) {
+		return split(fqn, '/', '.');
+	}
+
+	/**
+	 * Splits a string on either of the passed delimiters
+	 * @param value The string to split
+	 * @param d1 The first delimiter
+	 * @param d2 The second delimiter
+	 * @return the split segments
+	 */
+	protected static String[] split(String value, char d1, char d2) {
+		List<String> segments = new ArrayList<String>(8);
+		int start = 0;
+		final int length = value.length();
+		for(int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if(c==d1 || c==d2) {
+				segments.add(value.substring(start, i));
+				start = i+1;
+			}
+		}
+		segments.add(value.substring(start));
+		return segments.toArray(new String[segments.size()]);
+	}
+
+	/**
+	 * Returns the number of subscriptions in the index
+	 * @return the number of subscriptions in the index
+	 */
+	@ManagedAttribute(description="The number of subscriptions in the index")
+	public int getSubscriptionCount() {
+		return subscriptionCount.get();
+	}
+
+	/**
+	 * Returns the number of match requests
+	 * @return the number of match requests
+	 */
+	@ManagedAttribute(description="The number of match requests")
+	public long getMatchCount() {
+		return matchCount.get();
+	}
+
+	/**
+	 * Returns the number of match requests served from the cache
+	 * @return the number of match requests served from the cache
+	 */
+	@ManagedAttribute(description="The number of match requests served from the cache")
+	public long getCacheHitCount() {
+		return cacheHitCount.get();
+	}
+
+	/**
+	 * Returns the number of FQNs in the match cache
+	 * @return the number of FQNs in the match cache
+	 */
+	@ManagedAttribute(description="The number of FQNs in the match cache")
+	public int getCacheSize() {
+		return matchCache.size();
+	}
+
+	/**
+	 * Returns the number of times the match cache was discarded
+	 * @return the number of times the match cache was discarded
+	 */
+	@ManagedAttribute(description="The number of times the match cache was discarded")
+	public long getInvalidationCount() {
+		return invalidationCount.get();
+	}
+
+	/**
+	 * Returns the maximum number of entries in the match cache
+	 * @return the maximum number of entries in the match cache
+	 */
+	@ManagedAttribute(description="The maximum number of entries in the match cache")
+	public int getMaxCacheSize() {
+		return maxCacheSize;
+	}
+
+	/**
+	 * Sets the maximum number of entries in the match cache
+	 * @param maxCacheSize the maximum number of entries in the match cache
+	 */
+	@ManagedAttribute(description="The maximum number of entries in the match cache")
+	public void setMaxCacheSize(int maxCacheSize) {
+		this.maxCacheSize = maxCacheSize;
+	}
+
+	/**
+	 * Resets the match counters
+	 */
+	@ManagedOperation(description="Resets the match counters")
+	public void resetCounters() {
+		matchCount.set(0L);
+		cacheHitCount.set(0L);
+		invalidationCount.set(0L);
+	}
+
+	/**
+	 * <p>Title: Node</p>
+	 * <p>Description: A node in the subscription trie. Children are keyed by segment, with the single segment wildcard stored as a regular child.
+	 * Counters are only modified while holding the root lock.</p>
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.server.ot.jms.pubsub.SubscriptionIndex.Node</code></p>
+	 */
+	protected static class Node {
+		/** The child nodes keyed by segment */
+		protected final Map<String, Node> children = new ConcurrentHashMap<String, Node>(4);
+		/** The number of subscriptions ending at this node */
+		protected volatile int terminalCount = 0;
+		/** The number of subscriptions ending at this node with a trailing multi segment wildcard */
+		protected volatile int multiCount = 0;
+
+		/**
+		 * Indicates if this node has no subscriptions and no children
+		 * @return true if this node can be pruned
+		 */
+		protected boolean isEmpty() {
+			return terminalCount==0 && multiCount==0 && children.isEmpty();
+		}
+	}
+}
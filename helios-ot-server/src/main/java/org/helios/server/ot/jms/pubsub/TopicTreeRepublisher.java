@@ -56,6 +56,10 @@ public class TopicTreeRepublisher implements Processor, CamelContextAware {
 	@Autowired(required=true)
 	@Qualifier("subCache")
 	protected Cache subCache;
+	/** The subscription matching index */
+	@Autowired(required=true)
+	@Qualifier("subIndex")
+	protected SubscriptionIndex subIndex;
 	
 	/** The camel context */
 	protected CamelContext camelContext = null;
@@ -108,12 +112,7 @@ public class TopicTreeRepublisher implements Processor, CamelContextAware {
 	public void send(Exchange exchange) {
 		Message msg = exchange.getIn();
 		ClosedTrace trace = msg.getBody(ClosedTrace.class);
-		int matches = subCache.createQuery()
-		.addCriteria(new PatternMatchesTo("pattern", trace.getFQN()))
-		.maxResults(1)
-		.includeKeys()
-		.execute().size();
-		if(matches > 0) {
+		if(subIndex.matches(trace.getFQN())) {
 			msg.setBody(trace);
 			msg.setHeaders(trace.getTraceMap());					
 			template.asyncSend(getEndpoint(String.format("%s:%s.%s", providerPrefix, destinationPrefix, trace.getFQN()).replace('/', '.')), exchange);
@@ -189,6 +188,24 @@ public class TopicTreeRepublisher implements Processor, CamelContextAware {
 		return subCache.getSize();
 	}
 
+	/**
+	 * Returns the number of subscriptions in the subscription index
+	 * @return the number of indexed subscriptions
+	 */
+	@ManagedAttribute(description="The number of subscriptions in the subscription index")
+	public int getIndexedSubscriptionCount() {
+		return subIndex.getSubscriptionCount();
+	}
+	
+	/**
+	 * Returns the number of subscription matches served from the index's match cache
+	 * @return the number of cached subscription matches
+	 */
+	@ManagedAttribute(description="The number of subscription matches served from the index's match cache")
+	public long getIndexCacheHitCount() {
+		return subIndex.getCacheHitCount();
+	}
+	
 	/**
 	 * Returns the pattern cache average search time in ms.
 	 * @return the pattern cache average search time in ms.
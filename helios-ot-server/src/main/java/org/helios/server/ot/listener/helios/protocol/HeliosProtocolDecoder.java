@@ -0,0 +1,126 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.server.ot.listener.helios.protocol;
+
+import java.io.StreamCorruptedException;
+
+import org.helios.ot.agent.impl.netty.codec.HeliosProtocolEncoder;
+import org.helios.ot.agent.protocol.impl.HeliosProtocolInvocation;
+import org.helios.ot.trace.Trace;
+import org.helios.ot.trace.TraceWireCodec;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelLocal;
+import org.jboss.netty.handler.codec.serialization.ObjectDecoder;
+
+/**
+ * <p>Title: HeliosProtocolDecoder</p>
+ * <p>Description: Helios protocol decoder which decodes both the serialized object frames written by all agents and the binary trace frames
+ * written by agents whose {@link HeliosProtocolEncoder} negotiated the binary codec. The frame type is determined from the first byte,
+ * and the metric dictionary for binary frames is kept per channel.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.server.ot.listener.helios.protocol.HeliosProtocolDecoder</code></p>
+ */
+
+public class HeliosProtocolDecoder extends ObjectDecoder {
+	/** The maximum binary frame size in bytes */
+	protected final int maxFrameSize;
+	/** The trace codec for each channel */
+	protected final ChannelLocal<TraceWireCodec> codecs = new ChannelLocal<TraceWireCodec>();
+
+	/** The default maximum frame size in bytes */
+	public static final int DEFAULT_MAX_FRAME_SIZE = 1048576;
+
+	/**
+	 * Creates a new HeliosProtocolDecoder with the default maximum frame size
+	 */
+	public HeliosProtocolDecoder() {
+		this(DEFAULT_MAX_FRAME_SIZE);
+	}
+
+	/**
+	 * Creates a new HeliosProtocolDecoder
+	 * @param maxFrameSize The maximum size of a serialized object or binary frame in bytes
+	 */
+	public HeliosProtocolDecoder(int maxFrameSize) {
+		super(maxFrameSize);
+		this.maxFrameSize = maxFrameSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.handler.codec.serialization.ObjectDecoder#decode(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.Channel, org.jboss.netty.buffer.ChannelBuffer)
+	 */
+	@Override
+	protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+		if(buffer.readableBytes()<1) return null;
+		final int start = buffer.readerIndex();
+		if(buffer.getUnsignedByte(start)!=HeliosProtocolEncoder.BINARY_FRAME_MAGIC) {
+			return super.decode(ctx, channel, buffer);
+		}
+		if(buffer.readableBytes()<HeliosProtocolEncoder.BINARY_FRAME_HEADER) return null;
+		final int frameSize = buffer.getInt(start + 1);
+		if(frameSize<=0 || frameSize>maxFrameSize) {
+			throw new StreamCorruptedException("Invalid binary frame size [" + frameSize + "]. Max is [" + maxFrameSize + "]");
+		}
+		if(buffer.readableBytes()<HeliosProtocolEncoder.BINARY_FRAME_HEADER + frameSize) return null;
+		buffer.skipBytes(HeliosProtocolEncoder.BINARY_FRAME_HEADER);
+		try {
+			ChannelBufferInputStream in = new ChannelBufferInputStream(buffer, frameSize);
+			int op = in.readUnsignedByte();
+			long requestId = TraceWireCodec.readVarLong(in);
+			Trace[] traces = getCodec(channel).decode(in, in.available());
+			return new HeliosProtocolInvocation(op, requestId, traces);
+		} finally {
+			buffer.readerIndex(start + HeliosProtocolEncoder.BINARY_FRAME_HEADER + frameSize);
+		}
+	}
+
+	/**
+	 * Returns the trace codec for the passed channel, creating it if this is the channel's first binary frame
+	 * @param channel The channel
+	 * @return the channel's trace codec
+	 */
+	protected TraceWireCodec getCodec(Channel channel) {
+		TraceWireCodec codec = codecs.get(channel);
+		if(codec==null) {
+			codec = new TraceWireCodec();
+			TraceWireCodec existing = codecs.setIfAbsent(channel, codec);
+			if(existing!=null) return existing;
+			channel.getCloseFuture().addListener(new ChannelFutureListener() {
+				public void operationComplete(ChannelFuture future) throws Exception {
+					codecs.remove(future.getChannel());
+				}
+			});
+		}
+		return codec;
+	}
+}
@@ -45,6 +45,7 @@ import org.helios.jmx.dynamic.annotations.JMXAttribute;
 import org.helios.jmx.dynamic.annotations.JMXManagedObject;
 import org.helios.jmx.dynamic.annotations.options.AttributeMutabilityOption;
 import org.helios.jmxenabled.logging.LoggerControl;
+import org.helios.ot.agent.impl.netty.codec.HeliosProtocolEncoder;
 import org.helios.ot.agent.protocol.impl.ClientProtocolOperation;
 import org.helios.ot.agent.protocol.impl.HeliosProtocolInvocation;
 import org.helios.ot.agent.protocol.impl.HeliosProtocolResponse;
@@ -151,9 +152,15 @@ public class HeliosProtocolServerInvoker extends ManagedObjectDynamicMBean imple
 			b.append("\n\t\tInitiating Endpoint Key:").append(exchange.getFromEndpoint().getEndpointKey());
 			b.append("\n\t\tInitiating Endpoint URI:").append(exchange.getFromEndpoint().getEndpointUri());
 
-			
+			String sessionId = exchange.getFromRouteId() + ":" + channelId;
+			if(agentId.length>2 && HeliosProtocolEncoder.BINARY_CODEC_CAPABILITY.equals(agentId[2])) {
+				// The agent offered the binary trace codec which the HeliosProtocolDecoder accepts
+				b.append("\n\t\tCodec:").append(agentId[2]);
+				exchange.getOut().setBody(HeliosProtocolResponse.newInstance(ClientProtocolOperation.CONNECT, requestId, new String[]{sessionId, agentId[2]}));
+			} else {
+				exchange.getOut().setBody(HeliosProtocolResponse.newInstance(ClientProtocolOperation.CONNECT, requestId, sessionId));
+			}
 			log.info(b);
-			exchange.getOut().setBody(HeliosProtocolResponse.newInstance(ClientProtocolOperation.CONNECT, requestId, (exchange.getFromRouteId() + ":" + channelId)));
 		}
 	}
 	
@@ -98,6 +98,17 @@ public enum OutputFormat implements OutputFormatNames {
 	public void writeOut(OutputStream out, OutputSizeHandler sizeHandler, Set<byte[]> items) throws IOException {
 		writer.write(out, sizeHandler, items);
 	}
+	
+	/**
+	 * Writes an array of byte array represented items to the passed output stream
+	 * @param out The output stream
+	 * @param sizeHandler The optional size handler
+	 * @param items An array of items to write
+	 * @throws IOException thrown on any io exception
+	 */
+	public void writeOut(OutputStream out, OutputSizeHandler sizeHandler, byte[][] items) throws IOException {
+		writer.write(out, sizeHandler, items);
+	}
 
 	/**
 	 * The mime type of the output
@@ -157,6 +168,15 @@ public enum OutputFormat implements OutputFormatNames {
 		 */
 		public abstract void write(OutputStream out, OutputSizeHandler sizeHandler, Set<byte[]> items) throws IOException;
 		
+		/**
+		 * Aggregates and writes out an array of byte arrays using the OutputFormat specific delimeters.
+		 * @param out The output stream to write to
+		 * @param sizeHandler The output size handler  (ignored if null)
+		 * @param items An array of byte array item representations to write
+		 * @throws IOException Thrown if an IOException occurs
+		 */
+		public abstract void write(OutputStream out, OutputSizeHandler sizeHandler, byte[][] items) throws IOException;
+		
 		/**
 		 * The output stream write implementation
 		 * @param out The output stream
@@ -171,15 +191,30 @@ public enum OutputFormat implements OutputFormatNames {
 		 * @throws IOException Thrown on any IO exceptions
 		 */
 		protected void writeImpl(OutputStream out, OutputSizeHandler sizeHandler, Set<byte[]> items, byte[] starter, byte[] ender, byte[] startDelimiter, byte[] endDelimiter,  int starterEnderSize, int delimiterSize) throws IOException {
+			writeImpl(out, sizeHandler, items.toArray(new byte[items.size()][]), starter, ender, startDelimiter, endDelimiter, starterEnderSize, delimiterSize);
+		}
+		
+		/**
+		 * The output stream write implementation
+		 * @param out The output stream
+		 * @param sizeHandler The optional size handler
+		 * @param items An array of byte arrays to write
+		 * @param starter The format starter
+		 * @param ender The format ender
+		 * @param startDelimiter The format item start delimiter
+		 * @param endDelimiter The format item end delimiter
+		 * @param starterEnderSize The size of the starter and ender
+		 * @param delimiterSize The size of a delimiter pair
+		 * @throws IOException Thrown on any IO exceptions
+		 */
+		protected void writeImpl(OutputStream out, OutputSizeHandler sizeHandler, byte[][] items, byte[] starter, byte[] ender, byte[] startDelimiter, byte[] endDelimiter,  int starterEnderSize, int delimiterSize) throws IOException {
 			if(!(out instanceof BufferedOutputStream)) {
 				out = new BufferedOutputStream(out);
 			}
 			int size = starterEnderSize;
-			int cnt = 0;
-			
+			int cnt = items.length;
 			for(byte[] bytes: items) {
 				size += bytes.length;
-				cnt++;
 			}
 			int lastItem = cnt-1;
 			if(cnt>1) {
@@ -189,15 +224,12 @@ public enum OutputFormat implements OutputFormatNames {
 				sizeHandler.writeSize(size);
 			}
 			out.write(starter);
-			int itemIndex = 0;
-			
-			for(byte[] item: items) {
+			for(int itemIndex = 0; itemIndex < cnt; itemIndex++) {
 				out.write(startDelimiter);
-				out.write(item);
+				out.write(items[itemIndex]);
 				if(itemIndex!=lastItem) {
 					out.write(endDelimiter);
 				}
-				itemIndex++;
 			}
 			out.write(ender);			
 			out.flush();
@@ -237,6 +269,15 @@ public enum OutputFormat implements OutputFormatNames {
 			writeImpl(out, sizeHandler, items, STARTER, ENDER, SDELIM, EDELIM, SIZE, DSIZE);
 		}
 		
+		/**
+		 * {@inheritDoc}
+		 * @see org.helios.server.ot.session.OutputFormat.FormatWriter#write(java.io.OutputStream, org.helios.server.ot.session.OutputFormat.OutputSizeHandler, byte[][])
+		 */
+		@Override
+		public void write(OutputStream out, OutputSizeHandler sizeHandler, byte[][] items) throws IOException {
+			writeImpl(out, sizeHandler, items, STARTER, ENDER, SDELIM, EDELIM, SIZE, DSIZE);
+		}
+		
 	}
 	
 	/**
@@ -271,6 +312,15 @@ public enum OutputFormat implements OutputFormatNames {
 			writeImpl(out, sizeHandler, items, STARTER, ENDER, SDELIM, EDELIM, SIZE, DSIZE);
 		}
 		
+		/**
+		 * {@inheritDoc}
+		 * @see org.helios.server.ot.session.OutputFormat.FormatWriter#write(java.io.OutputStream, org.helios.server.ot.session.OutputFormat.OutputSizeHandler, byte[][])
+		 */
+		@Override
+		public void write(OutputStream out, OutputSizeHandler sizeHandler, byte[][] items) throws IOException {
+			writeImpl(out, sizeHandler, items, STARTER, ENDER, SDELIM, EDELIM, SIZE, DSIZE);
+		}
+		
 	}
 	
 	/**
@@ -305,6 +355,15 @@ public enum OutputFormat implements OutputFormatNames {
 			writeImpl(out, sizeHandler, items, STARTER, ENDER, SDELIM, EDELIM, SIZE, DSIZE);
 		}
 		
+		/**
+		 * {@inheritDoc}
+		 * @see org.helios.server.ot.session.OutputFormat.FormatWriter#write(java.io.OutputStream, org.helios.server.ot.session.OutputFormat.OutputSizeHandler, byte[][])
+		 */
+		@Override
+		public void write(OutputStream out, OutputSizeHandler sizeHandler, byte[][] items) throws IOException {
+			writeImpl(out, sizeHandler, items, STARTER, ENDER, SDELIM, EDELIM, SIZE, DSIZE);
+		}
+		
 	}
 	
 	/**
@@ -339,6 +398,15 @@ public enum OutputFormat implements OutputFormatNames {
 			writeImpl(out, sizeHandler, items, STARTER, ENDER, SDELIM, EDELIM, SIZE, DSIZE);
 		}
 		
+		/**
+		 * {@inheritDoc}
+		 * @see org.helios.server.ot.session.OutputFormat.FormatWriter#write(java.io.OutputStream, org.helios.server.ot.session.OutputFormat.OutputSizeHandler, byte[][])
+		 */
+		@Override
+		public void write(OutputStream out, OutputSizeHandler sizeHandler, byte[][] items) throws IOException {
+			writeImpl(out, sizeHandler, items, STARTER, ENDER, SDELIM, EDELIM, SIZE, DSIZE);
+		}
+		
 	}
 	
 	
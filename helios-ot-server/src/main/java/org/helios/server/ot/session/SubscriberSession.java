@@ -199,6 +199,15 @@ public class SubscriberSession extends ManagedObjectDynamicMBean implements Appl
 		return subscriptionRouteManager.getOutputProcessor().poll(atATime, timeout);
 	}	
 	
+	/**
+	 * Polls for marshalled frame delivery
+	 * @param atATime The maximum number of frames to deliver at a time
+	 * @return A [possibly empty] array of marshalled frames
+	 */
+	public byte[][] pollFrames(int atATime) {
+		return subscriptionRouteManager.pollFrames(atATime);
+	}
+	
 	/**
 	 * Registers a continuation that the processor will resume when a new item is published
 	 * @param continuation a jetty continuation
@@ -64,6 +64,11 @@ public interface SubscriptionOutputProcessor<T> extends Processor {
 		public Set poll(int atATime, long timeout) {
 			return Collections.EMPTY_SET;
 		}
+		
+		@Override
+		public byte[][] pollFrames(int atATime) {
+			return new byte[0][];
+		}
 
 		@Override
 		public void terminate() {
@@ -114,5 +119,12 @@ public interface SubscriptionOutputProcessor<T> extends Processor {
 	 */
 	public Set<T> poll(int atATime, long timeout);
 	
+	/**
+	 * Removes and returns marshalled frames for delivery in the order they were queued, without copying them into an intermediate set 
+	 * @param atATime The maximum number of frames to retrieve. If < 1, retrieves all pending frames.
+	 * @return A [possibly empty] array of marshalled frames
+	 */
+	public byte[][] pollFrames(int atATime);
+	
 	
 }
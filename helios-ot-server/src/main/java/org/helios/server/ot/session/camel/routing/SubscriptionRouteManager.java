@@ -158,6 +158,15 @@ public class SubscriptionRouteManager implements ApplicationContextAware, CamelC
 		return outputProcessor.poll(atATime, timeout);
 	}
 	
+	/**
+	 * Polls for marshalled frame delivery
+	 * @param atATime The maximum number of frames to deliver at a time
+	 * @return A [possibly empty] array of marshalled frames
+	 */
+	public byte[][] pollFrames(int atATime) {
+		return outputProcessor.pollFrames(atATime);
+	}
+	
 	/**
 	 * Registers a continuation that the processor will resume when a new item is published
 	 * @param continuation a jetty continuation
@@ -56,6 +56,7 @@ import org.helios.server.ot.session.camel.routing.AbstractSubscriberRoute;
 import org.helios.server.ot.session.camel.routing.SubscriptionOutputProcessor;
 import org.helios.server.ot.session.camel.routing.annotations.SubRoute;
 import org.helios.server.ot.session.camel.routing.annotations.SubRouteConfig;
+import org.helios.server.ot.session.camel.routing.http.SharedFrameMarshaller;
 import org.helios.server.ot.session.camel.routing.http.TraceAggregationStrategy;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -72,7 +73,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 @SubRoute(typeKey="metric-feed", configuration={
 		@SubRouteConfig(name="mask", type=String.class),
 		@SubRouteConfig(name="completionSize", type=int.class, defaultValue="10"),
-		@SubRouteConfig(name="completionTimeout", type=long.class, defaultValue="5000")
+		@SubRouteConfig(name="completionTimeout", type=long.class, defaultValue="5000"),
+		@SubRouteConfig(name="conflate", type=boolean.class, defaultValue="true")
 })
 public class ClosedMetricSubscriberFeed<T> extends AbstractSubscriberRoute<String> implements InitializingBean, ExceptionListener { 
 	/** A map of JMS session/subscriber pairs keyed by the topic they're listening on messages for */
@@ -85,6 +87,8 @@ public class ClosedMetricSubscriberFeed<T> extends AbstractSubscriberRoute<Strin
 	/** The ActiveMQ Component that provides the connection factory */
 	@Autowired(required=true)
 	protected ActiveMQComponent activeMq = null;
+	/** Indicates if traces are marshalled once into shared single trace frames and conflated by the output processor, rather than aggregated and marshalled per session */
+	protected boolean conflate = true;
 	
 	/**
 	 * Creates a new ClosedMetricSubscriberFeed
@@ -104,6 +108,23 @@ public class ClosedMetricSubscriberFeed<T> extends AbstractSubscriberRoute<Strin
 		return listeners.size();
 	}
 	
+	/**
+	 * Indicates if traces are marshalled into shared single trace frames and conflated by the output processor
+	 * @return true if traces are conflated, false if they are aggregated
+	 */
+	@JMXAttribute(name="Conflate", description="Indicates if traces are marshalled into shared single trace frames and conflated by the output processor", mutability=AttributeMutabilityOption.READ_ONLY)
+	public boolean isConflate() {
+		return conflate;
+	}
+
+	/**
+	 * Sets the conflation mode. Must be set before the route is configured.
+	 * @param conflate true to marshall shared single trace frames and conflate them, false to aggregate
+	 */
+	public void setConflate(boolean conflate) {
+		this.conflate = conflate;
+	}
+	
 	/**
 	 * Returns the topic names that this route is subscribed to 
 	 * @return the topic names that this route is subscribed to 
@@ -314,24 +335,31 @@ public class ClosedMetricSubscriberFeed<T> extends AbstractSubscriberRoute<Strin
 	 */
 	@Override
 	public void configure() throws Exception {
-		from("direct:" + routeId)   
-		.routeId(routeId)
-		.process(new Processor(){
-			public void process(Exchange exchange) throws Exception {			
-				Message in = exchange.getIn();
-				ClosedTrace trace = in.getBody(ClosedTrace.class);
-				in.setBody(new HashSet<ClosedTrace>(Arrays.asList(trace)));
-				in.setHeader("aggrId", routeId);
-				in.setHeader("typeKey", typeKey);
-			}
-		})
-		.aggregate(header("aggrId"), new TraceAggregationStrategy<ClosedTrace>())
-			.completionSize(completionSize)
-			.completionTimeout(completionTimeout)
-		.marshal(outputProcessor.getOutputFormat().getBeanName())
-		.process(outputProcessor)		
-		.setId(routeId + "-OutputProcessor" );
-        
+		if(conflate) {
+			from("direct:" + routeId)
+			.routeId(routeId)
+			.process(new SharedFrameMarshaller(outputProcessor.getOutputFormat(), typeKey))
+			.process(outputProcessor)
+			.setId(routeId + "-OutputProcessor" );
+		} else {
+			from("direct:" + routeId)   
+			.routeId(routeId)
+			.process(new Processor(){
+				public void process(Exchange exchange) throws Exception {			
+					Message in = exchange.getIn();
+					ClosedTrace trace = in.getBody(ClosedTrace.class);
+					in.setBody(new HashSet<ClosedTrace>(Arrays.asList(trace)));
+					in.setHeader("aggrId", routeId);
+					in.setHeader("typeKey", typeKey);
+				}
+			})
+			.aggregate(header("aggrId"), new TraceAggregationStrategy<ClosedTrace>())
+				.completionSize(completionSize)
+				.completionTimeout(completionTimeout)
+			.marshal(outputProcessor.getOutputFormat().getBeanName())
+			.process(outputProcessor)		
+			.setId(routeId + "-OutputProcessor" );
+		}
 		
 		endpoint = this.endpoint("direct:" + routeId);
 		log.info("Created Processor [" + routeId + "]");
@@ -356,6 +384,7 @@ public class ClosedMetricSubscriberFeed<T> extends AbstractSubscriberRoute<Strin
 	        .append(TAB).append("createdTimestamp = ").append(this.createdTimestamp)
 	        .append(TAB).append("completionSize = ").append(this.completionSize)
 	        .append(TAB).append("completionTimeout = ").append(this.completionTimeout)
+	        .append(TAB).append("conflate = ").append(this.conflate)
 	        .append("\n]");    
 	    return retValue.toString();
 	}
@@ -24,24 +24,19 @@
  */
 package org.helios.server.ot.session.camel.routing.http;
 
-import java.io.ByteArrayOutputStream;
-import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
-
 import org.apache.camel.CamelContext;
 import org.apache.camel.CamelContextAware;
 import org.apache.camel.Exchange;
 import org.apache.log4j.Logger;
 import org.eclipse.jetty.continuation.Continuation;
-import org.eclipse.jetty.continuation.ContinuationSupport;
 import org.helios.jmx.dynamic.annotations.JMXAttribute;
 import org.helios.jmx.dynamic.annotations.JMXManagedObject;
 import org.helios.jmx.dynamic.annotations.JMXOperation;
@@ -51,7 +46,9 @@ import org.helios.server.ot.session.camel.routing.SubscriptionOutputProcessor;
 
 /**
  * <p>Title: PollingHttpSubscriptionProcessor</p>
- * <p>Description: Processor responsible for delivering a message to an output queue where it will be pulled by a REST call</p> 
+ * <p>Description: Processor responsible for delivering a message to an output queue where it will be pulled by a REST call.
+ * Messages carrying a {@link SharedFrameMarshaller#HEADER_CONFLATION_KEY} header are conflated, so between polls the queue holds only the 
+ * latest frame for each key in the order the key was first queued. Messages without the header are queued individually.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * @version $LastChangedRevision$
@@ -66,10 +63,14 @@ public class PollingHttpSubscriptionProcessor<T> implements SubscriptionOutputPr
 	protected final OutputFormat outputFormat;
 	/** The size of the delivery queue. Defaults to 100 */
 	protected int queueSize = 100;
-	/** The delivery queue */
-	protected BlockingQueue<byte[]> deliveryQueue;
+	/** The delivery queue of pending frames keyed by conflation key. Guarded by its own monitor */
+	protected final LinkedHashMap<Object, byte[]> deliveryQueue = new LinkedHashMap<Object, byte[]>();
+	/** Serial number factory for keying frames that are not conflated */
+	protected final AtomicLong frameSerial = new AtomicLong(0L);
 	/** The drop counter */
 	protected final AtomicLong dropCount = new AtomicLong(0L);
+	/** The conflation counter */
+	protected final AtomicLong conflatedCount = new AtomicLong(0L);
 	/** The delivery counter */
 	protected final AtomicLong deliveryCount = new AtomicLong(0L);
 	/** The camel context */
@@ -81,6 +82,8 @@ public class PollingHttpSubscriptionProcessor<T> implements SubscriptionOutputPr
 	/** The current sessionContinuation */
 	protected final AtomicReference<Continuation> sessionContinuation = new AtomicReference<Continuation>(null);
 	
+	/** An empty frame array */
+	public static final byte[][] EMPTY_FRAMES = new byte[0][];
 	
 	/**
 	 * Creates a new PollingHttpSubscriptionProcessor
@@ -106,42 +109,42 @@ public class PollingHttpSubscriptionProcessor<T> implements SubscriptionOutputPr
 	 * @param atATime The number of elements to retrieve
 	 * @return A set of delivery elements
 	 */
+	@SuppressWarnings("unchecked")
 	public Set<T> poll(int atATime) {
-		Set<byte[]> results = new HashSet<byte[]>();
-		if(atATime<1) {
-			deliveryQueue.drainTo(results);
-		} else {
-			deliveryQueue.drainTo(results, atATime);
-		}
-		deliveryCount.addAndGet(results.size());
-		return (Set<T>) results;
+		return (Set<T>) new HashSet<byte[]>(Arrays.asList(pollFrames(atATime)));
 	}
 
 	/**
 	 * Retrieves subscription elements for delivery
 	 * @param atATime The maximum number of elements to retrieve
 	 * @param timeout The period of time (ms.) to wait for results before the request times out and returns an empty result.
-	 * @param request The http request
+	 * @return A set of delivery elements
 	 */
 	public Set<T> poll(int atATime, long timeout) {
-		Set<byte[]> results = new HashSet<byte[]>();
-		if(!deliveryQueue.isEmpty()) {
-			
-			if(atATime<1) {
-				deliveryQueue.drainTo(results);
-			} else {
-				deliveryQueue.drainTo(results, atATime);
+		return poll(atATime);
+	}
+	
+	/**
+	 * Removes and returns the pending frames in the order they were first queued
+	 * @param atATime The maximum number of frames to retrieve. If < 1, retrieves all pending frames.
+	 * @return A [possibly empty] array of marshalled frames
+	 */
+	public byte[][] pollFrames(int atATime) {
+		byte[][] frames = null;
+		synchronized(deliveryQueue) {
+			int size = deliveryQueue.size();
+			if(size==0) return EMPTY_FRAMES;
+			if(atATime>0 && atATime<size) size = atATime;
+			frames = new byte[size][];
+			Iterator<byte[]> iter = deliveryQueue.values().iterator();
+			for(int i = 0; i < size; i++) {
+				frames[i] = iter.next();
+				iter.remove();
 			}
-			deliveryCount.addAndGet(results.size());			
 		}
-		return (Set<T>) results;
+		deliveryCount.addAndGet(frames.length);
+		return frames;
 	}
-
-
-
-	
-	
-	
 	
 	/**
 	 * {@inheritDoc}
@@ -149,24 +152,23 @@ public class PollingHttpSubscriptionProcessor<T> implements SubscriptionOutputPr
 	 */
 	@Override
 	public void process(Exchange exchange) throws Exception {
-		byte[] items = exchange.getIn().getBody(byte[].class);
-//		Continuation cont = sessionContinuation.get();
-//		if(cont!=null && cont.isSuspended()) {
-//			cont.setAttribute("items", items);
-//			cont.resume();
-//			writeResponse((HttpServletResponse)cont.getServletResponse(), items);
-//			cont.complete();
-//			log.info("Item processing found suspended continuation. Delivered 1 item");
-//			sessionContinuation.set(null);
-//			return;
-//		}		
-		if(!deliveryQueue.offer(items)) {
-			dropCount.incrementAndGet();
-		} 
+		byte[] frame = exchange.getIn().getBody(byte[].class);
+		Object key = exchange.getIn().getHeader(SharedFrameMarshaller.HEADER_CONFLATION_KEY);
+		if(key==null) key = frameSerial.incrementAndGet();
+		synchronized(deliveryQueue) {
+			if(deliveryQueue.containsKey(key)) {
+				deliveryQueue.put(key, frame);
+				conflatedCount.incrementAndGet();
+			} else if(deliveryQueue.size()>=queueSize) {
+				dropCount.incrementAndGet();
+				return;
+			} else {
+				deliveryQueue.put(key, frame);
+			}
+		}
 		Continuation cont = sessionContinuation.get();
 		if(cont!=null && cont.isSuspended()) {
 			cont.resume();
-//			log.info("Resumed Continuation");
 			sessionContinuation.set(null);
 		}
 	}
@@ -187,16 +189,18 @@ public class PollingHttpSubscriptionProcessor<T> implements SubscriptionOutputPr
 	 */
 	@JMXAttribute(name="QueueSize", description="The number of items in the delivery queue", mutability=AttributeMutabilityOption.READ_ONLY)
 	public int getQueueSize() {
-		return deliveryQueue.size();
+		synchronized(deliveryQueue) {
+			return deliveryQueue.size();
+		}
 	}
 	
 	/**
 	 * Returns the remaining capacity of the delivery queue
 	 * @return the number of items in the delivery queue
 	 */
-	@JMXAttribute(name="QueueSize", description="The remaining capacity of the delivery queue", mutability=AttributeMutabilityOption.READ_ONLY)
+	@JMXAttribute(name="QueueCapacity", description="The remaining capacity of the delivery queue", mutability=AttributeMutabilityOption.READ_ONLY)
 	public int getQueueCapacity() {
-		return deliveryQueue.remainingCapacity();
+		return queueSize - getQueueSize();
 	}
 	
 	/**
@@ -249,18 +253,19 @@ public class PollingHttpSubscriptionProcessor<T> implements SubscriptionOutputPr
 	 */
 	@JMXOperation(name="clearDeliveryQueue", description="Clears the delivery queue")
 	public void clearDeliveryQueue() {
-		deliveryQueue.clear();
+		synchronized(deliveryQueue) {
+			deliveryQueue.clear();
+		}
 	}
 	
 
 	/**
-	 * Sets the queue size and builds the delivery queue
+	 * Sets the maximum number of distinct frames in the delivery queue
 	 * @param queueSize the queueSize to set
 	 */
 	public void setQueueLimit(int queueSize) {
-		if(deliveryQueue!=null) throw new IllegalStateException("The delivery queue has already been created", new Throwable());
+		if(queueSize<1) throw new IllegalArgumentException("Invalid queue limit [" + queueSize + "]", new Throwable());
 		this.queueSize = queueSize;
-		deliveryQueue = new ArrayBlockingQueue<byte[]>(this.queueSize);
 	}
 
 	/**
@@ -297,6 +302,33 @@ public class PollingHttpSubscriptionProcessor<T> implements SubscriptionOutputPr
 		return dropCount.get();
 	}
 	
+	/**
+	 * The number of queued frames replaced by a later frame with the same conflation key before being delivered
+	 * @return the conflated Count
+	 */
+	@JMXAttribute(name="ConflatedCount", description="The number of queued frames replaced by a later frame for the same key", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getConflatedCount() {
+		return conflatedCount.get();
+	}
+	
+	/**
+	 * The total number of frames marshalled by the shared frame marshaller across all sessions
+	 * @return the number of frames marshalled
+	 */
+	@JMXAttribute(name="SharedMarshallCount", description="The total number of frames marshalled by the shared frame marshaller across all sessions", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getSharedMarshallCount() {
+		return SharedFrameMarshaller.getMarshallCount();
+	}
+	
+	/**
+	 * The total number of frames served from the shared frame cache across all sessions
+	 * @return the number of shared frames
+	 */
+	@JMXAttribute(name="SharedFrameCount", description="The total number of frames served from the shared frame cache across all sessions", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getSharedFrameCount() {
+		return SharedFrameMarshaller.getSharedCount();
+	}
+	
 
 	/**
 	 * Returns the Camel Context
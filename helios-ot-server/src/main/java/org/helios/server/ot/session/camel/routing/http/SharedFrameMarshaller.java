@@ -0,0 +1,268 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.server.ot.session.camel.routing.http;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.camel.spi.DataFormat;
+import org.helios.helpers.ConfigurationHelper;
+import org.helios.ot.trace.ClosedTrace;
+import org.helios.server.ot.session.OutputFormat;
+import org.helios.server.ot.session.camel.routing.ISubscriberRoute;
+
+/**
+ * <p>Title: SharedFrameMarshaller</p>
+ * <p>Description: Camel processor that marshalls a single closed trace into a delivery frame for a subscriber session. 
+ * Frames are cached across all sessions, so a trace routed to any number of sessions subscribed with the same output format
+ * and sub feed key is only marshalled once. The processor also sets the {@link #HEADER_CONFLATION_KEY} header so the
+ * output processor can keep only the latest frame per metric between polls.</p> 
+ * <p>Frames are the same shape as those produced by {@link TraceAggregationStrategy}, a map of type keys to a map of sub feed keys
+ * to a set of traces, with one trace per frame.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.server.ot.session.camel.routing.http.SharedFrameMarshaller</code></p>
+ */
+
+public class SharedFrameMarshaller implements Processor {
+	/** The output format frames are marshalled in */
+	protected final OutputFormat outputFormat;
+	/** The type key of the feed the frames are marshalled for */
+	protected final String typeKey;
+	/** The resolved data format */
+	protected volatile DataFormat dataFormat = null;
+	
+	/** The exchange header containing the conflation key of a marshalled frame */
+	public static final String HEADER_CONFLATION_KEY = "conflationKey";
+	/** The system property or environment variable name defining the number of frames cached per generation */
+	public static final String FRAME_CACHE_SIZE_PROP = "org.helios.server.ot.frames.cache.size";
+	/** The default number of frames cached per generation */
+	public static final int DEFAULT_FRAME_CACHE_SIZE = 10000;
+	/** The number of frames cached per generation */
+	protected static final int FRAME_CACHE_SIZE = ConfigurationHelper.getIntSystemThenEnvProperty(FRAME_CACHE_SIZE_PROP, DEFAULT_FRAME_CACHE_SIZE);
+	
+	/** The current generation of cached frames */
+	private static final AtomicReference<Map<FrameKey, byte[]>> currentFrames = new AtomicReference<Map<FrameKey, byte[]>>(new ConcurrentHashMap<FrameKey, byte[]>(1024));
+	/** The prior generation of cached frames */
+	private static volatile Map<FrameKey, byte[]> priorFrames = Collections.emptyMap();
+	/** The number of frames marshalled */
+	private static final AtomicLong marshallCount = new AtomicLong(0L);
+	/** The number of frames served from the cache */
+	private static final AtomicLong sharedCount = new AtomicLong(0L);
+	
+	/**
+	 * Creates a new SharedFrameMarshaller
+	 * @param outputFormat The output format frames are marshalled in
+	 * @param typeKey The type key of the feed the frames are marshalled for
+	 */
+	public SharedFrameMarshaller(OutputFormat outputFormat, String typeKey) {
+		if(outputFormat==null) throw new IllegalArgumentException("The passed outputFormat was null", new Throwable());
+		this.outputFormat = outputFormat;
+		this.typeKey = typeKey;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.apache.camel.Processor#process(org.apache.camel.Exchange)
+	 */
+	@Override
+	public void process(Exchange exchange) throws Exception {
+		Message in = exchange.getIn();
+		ClosedTrace trace = in.getBody(ClosedTrace.class);
+		String subFeedKey = in.getHeader(ISubscriberRoute.HEADER_SUB_FEED_KEY, String.class);
+		FrameKey key = new FrameKey(outputFormat, typeKey, subFeedKey, trace);
+		byte[] frame = getFrame(key);
+		if(frame==null) {
+			frame = marshall(exchange, trace, subFeedKey);
+			putFrame(key, frame);
+			marshallCount.incrementAndGet();
+		} else {
+			sharedCount.incrementAndGet();
+		}
+		in.setBody(frame);
+		in.setHeader(HEADER_CONFLATION_KEY, subFeedKey==null ? trace.getFQN() : subFeedKey + ":" + trace.getFQN());
+	}
+	
+	/**
+	 * Marshalls a single trace frame
+	 * @param exchange The current exchange
+	 * @param trace The trace to marshall
+	 * @param subFeedKey The sub feed key of the subscription the trace was delivered for
+	 * @return the marshalled frame
+	 * @throws Exception thrown on any marshalling error
+	 */
+	protected byte[] marshall(Exchange exchange, ClosedTrace trace, String subFeedKey) throws Exception {
+		DataFormat df = dataFormat;
+		if(df==null) {
+			df = exchange.getContext().resolveDataFormat(outputFormat.getBeanName());
+			if(df==null) throw new IllegalStateException("No data format registered for [" + outputFormat.getBeanName() + "]", new Throwable());
+			dataFormat = df;
+		}
+		Set<ClosedTrace> traces = new HashSet<ClosedTrace>(1);
+		traces.add(trace);
+		Map<String, Set<ClosedTrace>> subFeedMap = new HashMap<String, Set<ClosedTrace>>(1);
+		subFeedMap.put(subFeedKey, traces);
+		Map<String, Map<String, Set<ClosedTrace>>> body = new HashMap<String, Map<String, Set<ClosedTrace>>>(1);
+		body.put(typeKey, subFeedMap);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(512);
+		df.marshal(exchange, body, baos);
+		return baos.toByteArray();
+	}
+	
+	/**
+	 * Looks up a cached frame, promoting frames found in the prior generation
+	 * @param key The frame key
+	 * @return the cached frame or null if one was not found
+	 */
+	private static byte[] getFrame(FrameKey key) {
+		byte[] frame = currentFrames.get().get(key);
+		if(frame==null) {
+			frame = priorFrames.get(key);
+			if(frame!=null) {
+				putFrame(key, frame);
+			}
+		}
+		return frame;
+	}
+	
+	/**
+	 * Caches a frame, rolling the generations when the current generation is full
+	 * @param key The frame key
+	 * @param frame The marshalled frame
+	 */
+	private static void putFrame(FrameKey key, byte[] frame) {
+		Map<FrameKey, byte[]> current = currentFrames.get();
+		if(current.size()>=FRAME_CACHE_SIZE) {
+			Map<FrameKey, byte[]> next = new ConcurrentHashMap<FrameKey, byte[]>(1024);
+			if(currentFrames.compareAndSet(current, next)) {
+				priorFrames = current;
+			}
+			current = currentFrames.get();
+		}
+		current.put(key, frame);
+	}
+	
+	/**
+	 * Returns the total number of frames marshalled
+	 * @return the total number of frames marshalled
+	 */
+	public static long getMarshallCount() {
+		return marshallCount.get();
+	}
+	
+	/**
+	 * Returns the total number of frames served from the shared cache instead of being marshalled
+	 * @return the total number of shared frames
+	 */
+	public static long getSharedCount() {
+		return sharedCount.get();
+	}
+	
+	/**
+	 * Returns the number of frames in the current cache generation
+	 * @return the number of cached frames
+	 */
+	public static int getCachedFrameCount() {
+		return currentFrames.get().size();
+	}
+	
+	/**
+	 * <p>Title: FrameKey</p>
+	 * <p>Description: The cache key of a marshalled frame. Closed traces are equal when their metric id and start timestamp are,
+	 * so separately deserialized copies of the same trace resolve to the same frame.</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.server.ot.session.camel.routing.http.SharedFrameMarshaller.FrameKey</code></p>
+	 */
+	private static final class FrameKey {
+		/** The output format */
+		private final OutputFormat outputFormat;
+		/** The type key */
+		private final String typeKey;
+		/** The sub feed key */
+		private final String subFeedKey;
+		/** The trace */
+		private final ClosedTrace trace;
+		/** The precomputed hash code */
+		private final int hashCode;
+		
+		/**
+		 * Creates a new FrameKey
+		 * @param outputFormat The output format
+		 * @param typeKey The type key
+		 * @param subFeedKey The sub feed key
+		 * @param trace The trace
+		 */
+		FrameKey(OutputFormat outputFormat, String typeKey, String subFeedKey, ClosedTrace trace) {
+			this.outputFormat = outputFormat;
+			this.typeKey = typeKey;
+			this.subFeedKey = subFeedKey;
+			this.trace = trace;
+			int h = outputFormat.hashCode();
+			h = 31 * h + (typeKey==null ? 0 : typeKey.hashCode());
+			h = 31 * h + (subFeedKey==null ? 0 : subFeedKey.hashCode());
+			h = 31 * h + trace.hashCode();
+			hashCode = h;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if(this==obj) return true;
+			if(!(obj instanceof FrameKey)) return false;
+			FrameKey other = (FrameKey)obj;
+			return hashCode==other.hashCode
+				&& outputFormat==other.outputFormat
+				&& (typeKey==null ? other.typeKey==null : typeKey.equals(other.typeKey))
+				&& (subFeedKey==null ? other.subFeedKey==null : subFeedKey.equals(other.subFeedKey))
+				&& trace.equals(other.trace);
+		}
+	}
+
+}
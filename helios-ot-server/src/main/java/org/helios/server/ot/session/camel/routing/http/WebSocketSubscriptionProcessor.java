@@ -206,6 +206,16 @@ public class WebSocketSubscriptionProcessor<T> extends WebSocketHandler implemen
 	public Set<T> poll(int atATime) {
 		throw new UnsupportedOperationException("[" + getClass().getName() + "] is not a polling processor", new Throwable());
 	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>Throws an {@link UnsupportedOperationException}
+	 * @see org.helios.server.ot.session.camel.routing.SubscriptionOutputProcessor#pollFrames(int)
+	 */
+	@Override
+	public byte[][] pollFrames(int atATime) {
+		throw new UnsupportedOperationException("[" + getClass().getName() + "] is not a polling processor", new Throwable());
+	}
 
 
 
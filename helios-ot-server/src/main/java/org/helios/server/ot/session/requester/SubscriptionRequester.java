@@ -55,7 +55,6 @@ import javax.ws.rs.ext.ContextResolver;
 import javax.xml.bind.JAXBContext;
 
 import net.sf.ehcache.Cache;
-import net.sf.ehcache.Element;
 import net.sf.ehcache.search.Result;
 import net.sf.ehcache.search.Results;
 
@@ -68,9 +67,9 @@ import org.helios.helpers.Banner;
 import org.helios.helpers.JMXHelper;
 import org.helios.ot.trace.ClosedTrace;
 import org.helios.ot.trace.MetricId;
+import org.helios.server.ot.cache.DynaTreeMetricNode;
 import org.helios.server.ot.cache.MetricNameLookup;
-import org.helios.server.ot.cache.MetricTreeEntry;
-import org.helios.server.ot.cache.MetricTreeEntry.DynaTreeMetricNode;
+import org.helios.server.ot.cache.MetricTree;
 import org.helios.server.ot.jms.pubsub.RegExMatch;
 import org.helios.server.ot.session.OutputFormat;
 import org.helios.server.ot.session.OutputFormat.OutputSizeHandler;
@@ -123,10 +122,10 @@ public class SubscriptionRequester implements ApplicationContextAware, CamelCont
 	@Qualifier("MetricLookup")
 	protected MetricNameLookup metricNameLookup = null;
 	
-	/** The metric tree cache */
+	/** The metric tree */
 	@Autowired(required=true)
-	@Qualifier("metricTreeCache")	
-	protected Cache metricTreeCache;
+	@Qualifier("metricTree")	
+	protected MetricTree metricTree;
 	
 	/** The last metric cache */
 	@Autowired(required=true)
@@ -421,12 +420,12 @@ public class SubscriptionRequester implements ApplicationContextAware, CamelCont
 //				log.info(String.format("[Initial]  Response Type [%s]  Is Wrapped [%s]", response.getClass().getName(), continuation.isResponseWrapped()));
 //			}
 			SubscriberSession subSess = SubscriberSession.getInstance(sessionId);
-			Set<byte[]> items = (Set<byte[]>)subSess.poll(atATime, timeout);
+			byte[][] items = subSess.pollFrames(atATime);
 			OutputFormat outputFormat = subSess.getOutputFormat();
-			if(!items.isEmpty()) {
+			if(items.length>0) {
 				response.setContentType(outputFormat.getMimeType());
 				response.setStatus(200);
-				response.setHeader("batchcount", "" + items.size());
+				response.setHeader("batchcount", "" + items.length);
 				OutputStream os = response.getOutputStream();
 				outputFormat.writeOut(os, new OutputSizeHandler(){
 					public void writeSize(int size) {
@@ -521,21 +520,16 @@ public class SubscriptionRequester implements ApplicationContextAware, CamelCont
 	}
 
 	/**
-	 * Returns the MetricTreeEntry for the passed metric tree path
+	 * Returns the child nodes of the passed metric tree path
 	 * @param path The MetricTree path
-	 * @return a MetricTreeEntry or null if one was not found for the passed path
+	 * @return the child nodes or null if the path was not found
 	 */
 	@GET
 	@Produces(value=MediaType.APPLICATION_JSON)
 	@Path("/metrictree/{path}")
 	public DynaTreeMetricNode[] getMetricTree(@PathParam("path") String path) {
 		if(path==null) throw new IllegalArgumentException("Passed path was null", new Throwable());
-		Element element = metricTreeCache.get(path);
-		if(element==null) return null;
-		MetricTreeEntry me = (MetricTreeEntry)element.getValue();
-		if(me==null) return null;
-		DynaTreeMetricNode[] nodes = me.getDynaTreeNodes();
-		return me.getDynaTreeNodes();
+		return metricTree.getDynaTreeNodes(path);
 	}
 	
 	
@@ -0,0 +1,178 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.server.ot.tsdb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>Title: BitStream</p>
+ * <p>Description: A growable, append only bit stream used by the time-series chunk encoder, and a reader for the encoded bits.
+ * Bits are packed most significant first into 64 bit words.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.server.ot.tsdb.BitStream</code></p>
+ */
+public class BitStream {
+	/** The packed bits */
+	protected long[] words;
+	/** The number of bits written */
+	protected long bitCount = 0;
+	
+	/**
+	 * Creates a new BitStream
+	 * @param initialWords The initial capacity in 64 bit words
+	 */
+	public BitStream(int initialWords) {
+		words = new long[Math.max(1, initialWords)];
+	}
+	
+	/**
+	 * Writes a single bit
+	 * @param bit true for 1, false for 0
+	 */
+	public void writeBit(boolean bit) {
+		ensure(1);
+		if(bit) {
+			int word = (int)(bitCount >>> 6);
+			words[word] |= (1L << (63 - (int)(bitCount & 63)));
+		}
+		bitCount++;
+	}
+	
+	/**
+	 * Writes the low order <code>bits</code> bits of the passed value
+	 * @param value The value to write
+	 * @param bits The number of bits to write (0 to 64)
+	 */
+	public void writeBits(long value, int bits) {
+		if(bits==0) return;
+		ensure(bits);
+		if(bits<64) value &= (1L << bits) - 1;
+		int word = (int)(bitCount >>> 6);
+		int free = 64 - (int)(bitCount & 63);
+		if(bits <= free) {
+			words[word] |= value << (free - bits);
+		} else {
+			int spill = bits - free;
+			words[word] |= value >>> spill;
+			words[word+1] |= value << (64 - spill);
+		}
+		bitCount += bits;
+	}
+	
+	/**
+	 * Returns the number of bits written
+	 * @return the number of bits written
+	 */
+	public long getBitCount() {
+		return bitCount;
+	}
+	
+	/**
+	 * Returns the number of bytes required to hold the written bits
+	 * @return the number of bytes required to hold the written bits
+	 */
+	public int getByteCount() {
+		return (int)((bitCount + 7) >>> 3);
+	}
+	
+	/**
+	 * Writes the bits into the passed buffer, padded to a whole byte
+	 * @param buffer The buffer to write to
+	 */
+	public void writeTo(ByteBuffer buffer) {
+		int bytes = getByteCount();
+		for(int i = 0; i < bytes; i++) {
+			buffer.put((byte)(words[i >>> 3] >>> (56 - ((i & 7) << 3))));
+		}
+	}
+	
+	/**
+	 * Grows the word array if required to hold the passed number of additional bits
+	 * @param bits the number of additional bits
+	 */
+	protected void ensure(int bits) {
+		long required = ((bitCount + bits + 63) >>> 6);
+		if(required > words.length) {
+			long[] grown = new long[Math.max(words.length * 2, (int)required)];
+			System.arraycopy(words, 0, grown, 0, words.length);
+			words = grown;
+		}
+	}
+	
+	/**
+	 * <p>Title: Reader</p>
+	 * <p>Description: Reads bits written by a BitStream from a byte buffer</p> 
+	 */
+	public static class Reader {
+		/** The buffer to read from */
+		protected final ByteBuffer buffer;
+		/** The absolute buffer position of the first bit */
+		protected final int base;
+		/** The number of bits read */
+		protected long position = 0;
+		
+		/**
+		 * Creates a new Reader starting at the buffer's current position
+		 * @param buffer The buffer to read from
+		 */
+		public Reader(ByteBuffer buffer) {
+			this.buffer = buffer;
+			this.base = buffer.position();
+		}
+		
+		/**
+		 * Reads a single bit
+		 * @return true for 1, false for 0
+		 */
+		public boolean readBit() {
+			int b = buffer.get(base + (int)(position >>> 3));
+			boolean bit = ((b >>> (7 - (int)(position & 7))) & 1) == 1;
+			position++;
+			return bit;
+		}
+		
+		/**
+		 * Reads the passed number of bits into the low order bits of a long
+		 * @param bits The number of bits to read (0 to 64)
+		 * @return the read value
+		 */
+		public long readBits(int bits) {
+			long value = 0;
+			while(bits > 0) {
+				int offset = (int)(position & 7);
+				int available = 8 - offset;
+				int take = Math.min(available, bits);
+				int b = buffer.get(base + (int)(position >>> 3)) & 0xFF;
+				long chunk = (b >>> (available - take)) & ((1 << take) - 1);
+				value = (value << take) | chunk;
+				position += take;
+				bits -= take;
+			}
+			return value;
+		}
+	}
+}
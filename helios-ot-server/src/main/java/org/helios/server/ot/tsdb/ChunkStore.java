@@ -0,0 +1,682 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.server.ot.tsdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>Title: ChunkStore</p>
+ * <p>Description: Windowed storage of compressed, multi column points keyed by series id.</p>
+ * <p>Points for the current time window are appended into an in-memory set of {@link GorillaChunk}s per series (the head block),
+ * one chunk per column. Once the wall clock or the appended timestamps move past the window end, the head block is rolled and, 
+ * after a grace period for late arrivals, sealed into an immutable, memory mapped {@link TimeSegment} file. Segments older than 
+ * the retention period are deleted. A series entry in a segment is the column chunks serialized back to back.</p>
+ * <p>The store does not run its own thread. The owner calls {@link #tick(long)} periodically.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.server.ot.tsdb.ChunkStore</code></p>
+ */
+public class ChunkStore {
+	/** Instance logger */
+	protected final Logger log = Logger.getLogger(getClass());
+	/** The store name */
+	protected final String name;
+	/** The directory the segments are written to */
+	protected final File directory;
+	/** The number of value columns per point */
+	protected final int columns;
+	/** The size of a head block and segment window in ms. */
+	protected final long windowSize;
+	/** The sealed segments keyed by window start */
+	protected final ConcurrentSkipListMap<Long, TimeSegment> segments = new ConcurrentSkipListMap<Long, TimeSegment>();
+	/** The current head block */
+	protected volatile Head head = null;
+	/** The prior head block, still accepting late points until it is sealed */
+	protected volatile Head previous = null;
+	/** The segment retention in ms. */
+	protected volatile long retention;
+	/** The time a rolled head block remains open for late points in ms. */
+	protected volatile long sealDelay;
+	
+	/** The number of appended points */
+	protected final AtomicLong appendedPoints = new AtomicLong(0L);
+	/** The number of points dropped because they were late or out of order */
+	protected final AtomicLong droppedPoints = new AtomicLong(0L);
+	/** The number of sealed segments written */
+	protected final AtomicLong sealedSegments = new AtomicLong(0L);
+	/** The elapsed time of the last seal in ms. */
+	protected volatile long lastSealTime = 0L;
+	
+	/**
+	 * Creates a new ChunkStore
+	 * @param name The store name
+	 * @param directory The directory the segments are written to
+	 * @param columns The number of value columns per point
+	 * @param windowSize The size of a head block and segment window in ms.
+	 * @param retention The segment retention in ms.
+	 * @param sealDelay The time a rolled head block remains open for late points in ms.
+	 */
+	public ChunkStore(String name, File directory, int columns, long windowSize, long retention, long sealDelay) {
+		if(columns < 1) throw new IllegalArgumentException("Invalid column count [" + columns + "]", new Throwable());
+		if(windowSize < 1) throw new IllegalArgumentException("Invalid window size [" + windowSize + "]", new Throwable());
+		this.name = name;
+		this.directory = directory;
+		this.columns = columns;
+		this.windowSize = windowSize;
+		this.retention = retention;
+		this.sealDelay = sealDelay;
+	}
+	
+	/**
+	 * Opens the store, mapping existing segments and starting a head block for the current window
+	 * @throws IOException thrown if the directory cannot be created
+	 */
+	public void open() throws IOException {
+		if(!directory.exists() && !directory.mkdirs()) {
+			throw new IOException("Failed to create time-series directory [" + directory + "]");
+		}
+		File[] files = directory.listFiles();
+		if(files!=null) {
+			for(File file: files) {
+				String fileName = file.getName();
+				if(fileName.startsWith(TimeSegment.FILE_PREFIX) && fileName.endsWith(TimeSegment.FILE_EXTENSION)) {
+					try {
+						TimeSegment segment = new TimeSegment(file);
+						segments.put(segment.getWindowStart(), segment);
+					} catch (Exception e) {
+						log.warn("Skipping unreadable segment [" + file + "]:" + e);
+					}
+				} else if(fileName.endsWith(".tmp")) {
+					file.delete();
+				}
+			}
+		}
+		head = newHead(windowStart(System.currentTimeMillis()));
+	}
+	
+	/**
+	 * Closes the store, sealing the open head blocks
+	 */
+	public void close() {
+		Head prior = previous;
+		if(prior!=null) seal(prior);
+		Head current = head;
+		if(current!=null) seal(current);
+	}
+	
+	/**
+	 * Appends a point to a series
+	 * @param seriesId The series id
+	 * @param timestamp The point timestamp
+	 * @param values The point values, one per column
+	 * @return true if the point was appended, false if it was dropped
+	 */
+	public boolean append(int seriesId, long timestamp, double... values) {
+		Head target = head;
+		if(timestamp >= target.windowEnd) {
+			// a point more than one window ahead of the wall clock is a clock problem, not a roll
+			if(timestamp - System.currentTimeMillis() > windowSize) {
+				droppedPoints.incrementAndGet();
+				return false;
+			}
+			target = roll(windowStart(timestamp));
+		} else if(timestamp < target.windowStart) {
+			target = previous;
+			if(target==null || timestamp < target.windowStart) {
+				droppedPoints.incrementAndGet();
+				return false;
+			}
+		}
+		if(target.append(seriesId, timestamp, values)) {
+			appendedPoints.incrementAndGet();
+			return true;
+		}
+		droppedPoints.incrementAndGet();
+		return false;
+	}
+	
+	/**
+	 * Rolls idle head blocks, seals the previous head block once its grace period expires and deletes expired segments
+	 * @param now The current time
+	 */
+	public void tick(long now) {
+		if(now - sealDelay >= head.windowEnd) {
+			roll(windowStart(now));
+		}
+		Head prior = previous;
+		if(prior!=null && now - prior.rolledAt >= sealDelay) {
+			seal(prior);
+		}
+		expire(now);
+	}
+	
+	/**
+	 * Seals the rolled head block immediately without waiting for the late point grace period
+	 */
+	public void flush() {
+		Head prior = previous;
+		if(prior!=null) seal(prior);
+	}
+	
+	/**
+	 * Reads the points of a series within a time range in ascending timestamp order
+	 * @param seriesId The series id
+	 * @param start The inclusive range start
+	 * @param end The inclusive range end
+	 * @param visitor The point visitor
+	 */
+	public void read(int seriesId, long start, long end, ColumnVisitor visitor) {
+		double[] values = new double[columns];
+		for(List<Object> window: sources(start, end).values()) {
+			ByteBuffer chunk = null;
+			for(Object source: window) {
+				ByteBuffer sourceChunk;
+				if(source instanceof TimeSegment) {
+					sourceChunk = ((TimeSegment)source).getChunk(seriesId);
+				} else {
+					sourceChunk = ((Head)source).getChunk(seriesId);
+				}
+				if(sourceChunk==null) continue;
+				chunk = chunk==null ? sourceChunk : merge(chunk, sourceChunk);
+			}
+			if(chunk==null) continue;
+			GorillaChunk.Decoder[] decoders = decoders(chunk);
+			while(decoders[0].next()) {
+				for(int i = 1; i < columns; i++) decoders[i].next();
+				long timestamp = decoders[0].getTimestamp();
+				if(timestamp < start) continue;
+				if(timestamp > end) return;
+				for(int i = 0; i < columns; i++) values[i] = decoders[i].getValue();
+				if(!visitor.point(timestamp, values)) return;
+			}
+		}
+	}
+	
+	/**
+	 * Creates a decoder for each column chunk of a serialized series entry
+	 * @param chunk The serialized series entry
+	 * @return the column decoders
+	 */
+	protected GorillaChunk.Decoder[] decoders(ByteBuffer chunk) {
+		GorillaChunk.Decoder[] decoders = new GorillaChunk.Decoder[columns];
+		ByteBuffer buff = chunk.duplicate();
+		for(int i = 0; i < columns; i++) {
+			decoders[i] = new GorillaChunk.Decoder(buff);
+			buff.position(buff.position() + decoders[i].getSerializedSize());
+		}
+		return decoders;
+	}
+	
+	/**
+	 * Returns the segments and head blocks overlapping the passed range in window order.
+	 * A window that was partially sealed before a restart has both a segment and a live head block, and both are returned.
+	 * A head block is omitted once the segment for its window is the one it was sealed into.
+	 * @param start The inclusive range start
+	 * @param end The inclusive range end
+	 * @return the sources of each window keyed by window start
+	 */
+	protected NavigableMap<Long, List<Object>> sources(long start, long end) {
+		NavigableMap<Long, List<Object>> sources = new TreeMap<Long, List<Object>>();
+		Head[] blocks = {previous, head};
+		for(TimeSegment segment: segments.values()) {
+			if(segment.overlaps(start, end)) {
+				List<Object> window = new ArrayList<Object>(2);
+				window.add(segment);
+				sources.put(segment.getWindowStart(), window);
+			}
+		}
+		for(Head block: blocks) {
+			if(block==null || block.windowStart > end || block.windowEnd <= start) continue;
+			List<Object> window = sources.get(block.windowStart);
+			if(window==null) {
+				window = new ArrayList<Object>(1);
+				sources.put(block.windowStart, window);
+			} else if(window.get(0)==block.sealedInto) {
+				// the segment already holds the block's points
+				continue;
+			}
+			window.add(block);
+		}
+		return sources;
+	}
+	
+	/**
+	 * Rolls the head block forward to the passed window. The current head becomes the previous head and any older
+	 * previous head is sealed immediately.
+	 * @param windowStart The start of the new head window
+	 * @return the head block covering the passed window
+	 */
+	protected Head roll(long windowStart) {
+		Head toSeal = null;
+		Head current;
+		synchronized(this) {
+			current = head;
+			if(current.windowStart >= windowStart) return current;
+			toSeal = previous;
+			previous = current;
+			current.rolledAt = System.currentTimeMillis();
+			current = newHead(windowStart);
+			head = current;
+		}
+		if(toSeal!=null) seal(toSeal);
+		return current;
+	}
+	
+	/**
+	 * Seals a head block into a segment file
+	 * @param block The head block to seal
+	 */
+	protected void seal(Head block) {
+		block.lock.writeLock().lock();
+		try {
+			if(block.sealed) return;
+			block.sealed = true;
+		} finally {
+			block.lock.writeLock().unlock();
+		}
+		if(block.chunks.isEmpty()) {
+			clearPrevious(block);
+			return;
+		}
+		long start = System.currentTimeMillis();
+		TreeMap<Integer, byte[]> chunks = new TreeMap<Integer, byte[]>();
+		TimeSegment existing = segments.get(block.windowStart);
+		if(existing==null) {
+			for(Map.Entry<Integer, GorillaChunk[]> entry: block.chunks.entrySet()) {
+				chunks.put(entry.getKey(), serialize(entry.getValue()));
+			}
+		} else {
+			// the window was partially sealed before a restart so the segment is rewritten with both sets of points
+			for(int seriesId: existing.getSeriesIds()) {
+				chunks.put(seriesId, null);
+			}
+			for(Integer seriesId: block.chunks.keySet()) {
+				chunks.put(seriesId, null);
+			}
+			for(Map.Entry<Integer, byte[]> entry: chunks.entrySet()) {
+				ByteBuffer prior = existing.getChunk(entry.getKey());
+				GorillaChunk[] current = block.chunks.get(entry.getKey());
+				if(current==null) {
+					entry.setValue(serialize(prior));
+				} else if(prior==null) {
+					entry.setValue(serialize(current));
+				} else {
+					entry.setValue(serialize(merge(prior, ByteBuffer.wrap(serialize(current)))));
+				}
+			}
+		}
+		try {
+			File file = TimeSegment.write(directory, block.windowStart, block.windowEnd, chunks);
+			TimeSegment segment = new TimeSegment(file);
+			// flag the block before publishing the segment so a reader never sees the segment without also skipping the block
+			block.sealedInto = segment;
+			segments.put(block.windowStart, segment);
+			sealedSegments.incrementAndGet();
+		} catch (Exception e) {
+			log.error("Failed to seal [" + name + "] window [" + block.windowStart + "]. Points will be lost.", e);
+		}
+		clearPrevious(block);
+		lastSealTime = System.currentTimeMillis() - start;
+		if(log.isDebugEnabled()) log.debug("Sealed [" + chunks.size() + "] series for [" + name + "] window [" + block.windowStart + "] in [" + lastSealTime + "] ms.");
+	}
+	
+	/**
+	 * Merges the points of two serialized series entries in ascending timestamp order
+	 * @param first The first serialized series entry. Points with equal timestamps are taken from this entry first.
+	 * @param second The second serialized series entry
+	 * @return the merged serialized series entry
+	 */
+	protected ByteBuffer merge(ByteBuffer first, ByteBuffer second) {
+		GorillaChunk[] merged = newChunks();
+		GorillaChunk.Decoder[] a = decoders(first);
+		GorillaChunk.Decoder[] b = decoders(second);
+		boolean hasA = advance(a), hasB = advance(b);
+		while(hasA || hasB) {
+			boolean takeA = !hasB || (hasA && a[0].getTimestamp() <= b[0].getTimestamp());
+			GorillaChunk.Decoder[] next = takeA ? a : b;
+			for(int i = 0; i < columns; i++) {
+				merged[i].append(next[i].getTimestamp(), next[i].getValue());
+			}
+			if(takeA) hasA = advance(a); 
+			else hasB = advance(b);
+		}
+		return ByteBuffer.wrap(serialize(merged));
+	}
+	
+	/**
+	 * Advances every column decoder of a series entry to its next point
+	 * @param decoders The column decoders
+	 * @return true if there was a next point, false if the entry is exhausted
+	 */
+	protected boolean advance(GorillaChunk.Decoder[] decoders) {
+		if(!decoders[0].next()) return false;
+		for(int i = 1; i < columns; i++) decoders[i].next();
+		return true;
+	}
+	
+	/**
+	 * Serializes a series' column chunks back to back
+	 * @param chunks The column chunks
+	 * @return the serialized series entry
+	 */
+	protected static byte[] serialize(GorillaChunk[] chunks) {
+		int size = 0;
+		for(GorillaChunk chunk: chunks) size += chunk.getSerializedSize();
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		for(GorillaChunk chunk: chunks) chunk.writeTo(buffer);
+		return buffer.array();
+	}
+	
+	/**
+	 * Copies a serialized series entry into a new byte array
+	 * @param chunk The serialized series entry
+	 * @return the serialized series entry bytes
+	 */
+	protected static byte[] serialize(ByteBuffer chunk) {
+		ByteBuffer buff = chunk.duplicate();
+		byte[] bytes = new byte[buff.remaining()];
+		buff.get(bytes);
+		return bytes;
+	}
+	
+	/**
+	 * Clears the previous head reference if it is the passed block
+	 * @param block The sealed block
+	 */
+	protected synchronized void clearPrevious(Head block) {
+		if(previous==block) previous = null;
+	}
+	
+	/**
+	 * Deletes segments whose window ended before the retention period
+	 * @param now The current time
+	 */
+	protected void expire(long now) {
+		long cutoff = now - retention;
+		while(!segments.isEmpty()) {
+			Map.Entry<Long, TimeSegment> entry = segments.firstEntry();
+			if(entry.getValue().getWindowEnd() > cutoff) break;
+			segments.remove(entry.getKey());
+			if(!entry.getValue().delete()) {
+				log.warn("Failed to delete expired segment [" + entry.getValue().getFile() + "]");
+			}
+		}
+	}
+	
+	/**
+	 * Creates a new head block
+	 * @param windowStart The window start
+	 * @return the new head block
+	 */
+	protected Head newHead(long windowStart) {
+		return new Head(windowStart, windowStart + windowSize);
+	}
+	
+	/**
+	 * Creates a new set of empty column chunks
+	 * @return a new set of empty column chunks
+	 */
+	protected GorillaChunk[] newChunks() {
+		GorillaChunk[] chunks = new GorillaChunk[columns];
+		for(int i = 0; i < columns; i++) chunks[i] = new GorillaChunk();
+		return chunks;
+	}
+	
+	/**
+	 * Returns the start of the window containing the passed timestamp
+	 * @param timestamp The timestamp
+	 * @return the window start
+	 */
+	protected long windowStart(long timestamp) {
+		return timestamp - (timestamp % windowSize);
+	}
+	
+	/**
+	 * Determines if the retention period of this store reaches back to the passed time
+	 * @param timestamp The timestamp to test
+	 * @param now The current time
+	 * @return true if points at the passed timestamp are within retention
+	 */
+	public boolean covers(long timestamp, long now) {
+		return timestamp >= now - retention;
+	}
+	
+	/**
+	 * Returns the number of sealed segments on disk
+	 * @return the number of sealed segments on disk
+	 */
+	public int getSegmentCount() {
+		return segments.size();
+	}
+	
+	/**
+	 * Returns the total size of the sealed segments in bytes
+	 * @return the total size of the sealed segments in bytes
+	 */
+	public long getSegmentBytes() {
+		long total = 0;
+		for(TimeSegment segment: segments.values()) {
+			total += segment.getSize();
+		}
+		return total;
+	}
+	
+	/**
+	 * Returns the number of points in the open head blocks
+	 * @return the number of points in the open head blocks
+	 */
+	public long getHeadPointCount() {
+		long total = 0;
+		for(Head block: new Head[]{previous, head}) {
+			if(block!=null) total += block.points.get();
+		}
+		return total;
+	}
+	
+	/**
+	 * Returns the number of appended points
+	 * @return the number of appended points
+	 */
+	public long getAppendedPoints() {
+		return appendedPoints.get();
+	}
+	
+	/**
+	 * Returns the number of points dropped because they were late or out of order
+	 * @return the number of dropped points
+	 */
+	public long getDroppedPoints() {
+		return droppedPoints.get();
+	}
+	
+	/**
+	 * Returns the number of segments sealed since open
+	 * @return the number of segments sealed since open
+	 */
+	public long getSealedSegments() {
+		return sealedSegments.get();
+	}
+	
+	/**
+	 * Returns the elapsed time of the last seal in ms.
+	 * @return the elapsed time of the last seal in ms.
+	 */
+	public long getLastSealTime() {
+		return lastSealTime;
+	}
+	
+	/**
+	 * Returns the store name
+	 * @return the store name
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Returns the window size in ms.
+	 * @return the window size in ms.
+	 */
+	public long getWindowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * Returns the segment retention in ms.
+	 * @return the segment retention in ms.
+	 */
+	public long getRetention() {
+		return retention;
+	}
+
+	/**
+	 * Sets the segment retention in ms.
+	 * @param retention the segment retention in ms.
+	 */
+	public void setRetention(long retention) {
+		this.retention = retention;
+	}
+
+	/**
+	 * Returns the time a rolled head block accepts late points in ms.
+	 * @return the seal delay in ms.
+	 */
+	public long getSealDelay() {
+		return sealDelay;
+	}
+
+	/**
+	 * Sets the time a rolled head block accepts late points in ms.
+	 * @param sealDelay the seal delay in ms.
+	 */
+	public void setSealDelay(long sealDelay) {
+		this.sealDelay = sealDelay;
+	}
+	
+	/**
+	 * <p>Title: ColumnVisitor</p>
+	 * <p>Description: Callback for points read from the store</p> 
+	 */
+	public static interface ColumnVisitor {
+		/**
+		 * Callback for one point
+		 * @param timestamp The point timestamp
+		 * @param values The point values, one per column. The array is reused across callbacks.
+		 * @return true to continue reading, false to stop
+		 */
+		public boolean point(long timestamp, double[] values);
+	}
+	
+	/**
+	 * <p>Title: Head</p>
+	 * <p>Description: An open, in-memory block of column chunks for one window. Appends take the read lock so that sealing,
+	 * which takes the write lock, waits for in flight appends and rejects any that follow.</p> 
+	 */
+	protected class Head {
+		/** The inclusive window start */
+		protected final long windowStart;
+		/** The exclusive window end */
+		protected final long windowEnd;
+		/** The column chunks keyed by series id */
+		protected final ConcurrentHashMap<Integer, GorillaChunk[]> chunks = new ConcurrentHashMap<Integer, GorillaChunk[]>();
+		/** The number of points in the block */
+		protected final AtomicLong points = new AtomicLong(0L);
+		/** The append/seal lock */
+		protected final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		/** Indicates the block has been sealed */
+		protected volatile boolean sealed = false;
+		/** The time the block was rolled out of the head position */
+		protected volatile long rolledAt = Long.MAX_VALUE;
+		/** The segment the block was sealed into, or null if it has not been written */
+		protected volatile TimeSegment sealedInto = null;
+		
+		/**
+		 * Creates a new Head
+		 * @param windowStart The inclusive window start
+		 * @param windowEnd The exclusive window end
+		 */
+		protected Head(long windowStart, long windowEnd) {
+			this.windowStart = windowStart;
+			this.windowEnd = windowEnd;
+		}
+		
+		/**
+		 * Appends a point to the series chunks
+		 * @param seriesId The series id
+		 * @param timestamp The point timestamp
+		 * @param values The point values, one per column
+		 * @return true if appended, false if the block is sealed or the point is out of order
+		 */
+		protected boolean append(int seriesId, long timestamp, double[] values) {
+			if(!lock.readLock().tryLock()) return false;
+			try {
+				if(sealed) return false;
+				GorillaChunk[] series = chunks.get(seriesId);
+				if(series==null) {
+					series = newChunks();
+					GorillaChunk[] existing = chunks.putIfAbsent(seriesId, series);
+					if(existing!=null) series = existing;
+				}
+				synchronized(series) {
+					if(series[0].getCount() > 0 && timestamp < series[0].getLastTimestamp()) return false;
+					for(int i = 0; i < columns; i++) {
+						series[i].append(timestamp, values[i]);
+					}
+				}
+				points.incrementAndGet();
+				return true;
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+		
+		/**
+		 * Returns a snapshot of the serialized column chunks for the passed series
+		 * @param seriesId The series id
+		 * @return the serialized series entry or null if the series has no points in this block
+		 */
+		protected ByteBuffer getChunk(int seriesId) {
+			GorillaChunk[] series = chunks.get(seriesId);
+			if(series==null) return null;
+			synchronized(series) {
+				return ByteBuffer.wrap(serialize(series));
+			}
+		}
+	}
+}
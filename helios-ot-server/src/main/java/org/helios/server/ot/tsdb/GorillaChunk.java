@@ -0,0 +1,348 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.server.ot.tsdb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>Title: GorillaChunk</p>
+ * <p>Description: An append only, compressed block of (timestamp, value) points for a single series.
+ * Timestamps are encoded as bucketed delta-of-deltas and values as the XOR of the IEEE 754 bits against the prior value, 
+ * so regular sample periods cost one bit per timestamp and unchanged or slowly changing values a few bits per value.
+ * Points must be appended in ascending timestamp order. Instances are not thread safe.</p> 
+ * <p>Serialized layout: <b><code>[int count][long firstTimestamp][long firstValueBits][int bitByteCount][bits...]</code></b></p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.server.ot.tsdb.GorillaChunk</code></p>
+ */
+public class GorillaChunk {
+	/** The encoded bits following the first point */
+	protected final BitStream bits;
+	/** The number of points in the chunk */
+	protected int count = 0;
+	/** The timestamp of the first point */
+	protected long firstTimestamp = 0;
+	/** The value bits of the first point */
+	protected long firstValue = 0;
+	/** The timestamp of the last point */
+	protected long lastTimestamp = 0;
+	/** The last timestamp delta */
+	protected long lastDelta = 0;
+	/** The value bits of the last point */
+	protected long lastValue = 0;
+	/** The leading zero count of the last stored XOR window */
+	protected int lastLeading = Integer.MAX_VALUE;
+	/** The trailing zero count of the last stored XOR window */
+	protected int lastTrailing = 0;
+	
+	/** The size of the fixed chunk header in bytes */
+	public static final int HEADER_SIZE = 4 + 8 + 8 + 4;
+	
+	/**
+	 * Creates a new GorillaChunk
+	 */
+	public GorillaChunk() {
+		bits = new BitStream(16);
+	}
+	
+	/**
+	 * Appends a point to the chunk
+	 * @param timestamp The timestamp of the point which must be greater than or equal to the last appended timestamp
+	 * @param value The value of the point
+	 * @return true if the point was appended, false if it was out of order
+	 */
+	public boolean append(long timestamp, double value) {
+		long valueBits = Double.doubleToRawLongBits(value);
+		if(count==0) {
+			firstTimestamp = timestamp;
+			firstValue = valueBits;
+			lastTimestamp = timestamp;
+			lastValue = valueBits;
+			count++;
+			return true;
+		}
+		if(timestamp < lastTimestamp) return false;
+		long delta = timestamp - lastTimestamp;
+		writeTimestamp(delta - lastDelta);
+		writeValue(valueBits ^ lastValue);
+		lastDelta = delta;
+		lastTimestamp = timestamp;
+		lastValue = valueBits;
+		count++;
+		return true;
+	}
+	
+	/**
+	 * Writes a delta-of-delta into one of five buckets
+	 * @param dod The delta-of-delta
+	 */
+	protected void writeTimestamp(long dod) {
+		if(dod==0) {
+			bits.writeBit(false);
+		} else if(dod >= -63 && dod <= 64) {
+			bits.writeBits(0x2, 2);
+			bits.writeBits(dod, 7);
+		} else if(dod >= -255 && dod <= 256) {
+			bits.writeBits(0x6, 3);
+			bits.writeBits(dod, 9);
+		} else if(dod >= -2047 && dod <= 2048) {
+			bits.writeBits(0xE, 4);
+			bits.writeBits(dod, 12);
+		} else {
+			bits.writeBits(0xF, 4);
+			bits.writeBits(dod, 64);
+		}
+	}
+	
+	/**
+	 * Writes an XORed value, reusing the prior meaningful bit window when it fits
+	 * @param xor The XOR of the value bits against the prior value bits
+	 */
+	protected void writeValue(long xor) {
+		if(xor==0) {
+			bits.writeBit(false);
+			return;
+		}
+		bits.writeBit(true);
+		int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+		int trailing = Long.numberOfTrailingZeros(xor);
+		if(lastLeading != Integer.MAX_VALUE && leading >= lastLeading && trailing >= lastTrailing) {
+			bits.writeBit(false);
+			bits.writeBits(xor >>> lastTrailing, 64 - lastLeading - lastTrailing);
+		} else {
+			int significant = 64 - leading - trailing;
+			bits.writeBit(true);
+			bits.writeBits(leading, 5);
+			// 64 significant bits is stored as 0 since it can never be a valid length
+			bits.writeBits(significant, 6);
+			bits.writeBits(xor >>> trailing, significant);
+			lastLeading = leading;
+			lastTrailing = trailing;
+		}
+	}
+	
+	/**
+	 * Returns the number of points in the chunk
+	 * @return the number of points in the chunk
+	 */
+	public int getCount() {
+		return count;
+	}
+	
+	/**
+	 * Returns the timestamp of the first point
+	 * @return the timestamp of the first point
+	 */
+	public long getFirstTimestamp() {
+		return firstTimestamp;
+	}
+
+	/**
+	 * Returns the timestamp of the last point
+	 * @return the timestamp of the last point
+	 */
+	public long getLastTimestamp() {
+		return lastTimestamp;
+	}
+	
+	/**
+	 * Returns the serialized size of the chunk in bytes
+	 * @return the serialized size of the chunk in bytes
+	 */
+	public int getSerializedSize() {
+		return HEADER_SIZE + bits.getByteCount();
+	}
+	
+	/**
+	 * Serializes the chunk into a new byte array
+	 * @return the serialized chunk
+	 */
+	public byte[] toBytes() {
+		ByteBuffer buffer = ByteBuffer.allocate(getSerializedSize());
+		writeTo(buffer);
+		return buffer.array();
+	}
+	
+	/**
+	 * Serializes the chunk into the passed buffer
+	 * @param buffer The buffer to write to
+	 */
+	public void writeTo(ByteBuffer buffer) {
+		buffer.putInt(count);
+		buffer.putLong(firstTimestamp);
+		buffer.putLong(firstValue);
+		buffer.putInt(bits.getByteCount());
+		bits.writeTo(buffer);
+	}
+	
+	/**
+	 * Decodes a serialized chunk, passing each point to the visitor
+	 * @param buffer A buffer positioned at the start of a serialized chunk. The position is not modified.
+	 * @param visitor The point visitor
+	 * @return the number of points decoded
+	 */
+	public static int decode(ByteBuffer buffer, PointVisitor visitor) {
+		Decoder decoder = new Decoder(buffer);
+		int decoded = 0;
+		while(decoder.next()) {
+			decoded++;
+			if(!visitor.point(decoder.getTimestamp(), decoder.getValue())) break;
+		}
+		return decoded;
+	}
+	
+	/**
+	 * Reads a bucketed delta-of-delta
+	 * @param reader The bit reader
+	 * @return the delta-of-delta
+	 */
+	protected static long readDeltaOfDelta(BitStream.Reader reader) {
+		if(!reader.readBit()) return 0;
+		if(!reader.readBit()) return signed(reader.readBits(7), 7);
+		if(!reader.readBit()) return signed(reader.readBits(9), 9);
+		if(!reader.readBit()) return signed(reader.readBits(12), 12);
+		return reader.readBits(64);
+	}
+	
+	/**
+	 * Sign extends the low order bits of a value. 
+	 * The bucket ranges are biased by one (e.g. -63 to 64) so the top bit pattern is read as positive.
+	 * @param value The raw bits
+	 * @param bits The number of bits
+	 * @return the signed value
+	 */
+	protected static long signed(long value, int bits) {
+		long max = 1L << (bits - 1);
+		return value > max ? value - (1L << bits) : value;
+	}
+	
+	/**
+	 * <p>Title: Decoder</p>
+	 * <p>Description: A forward only cursor over the points of a serialized chunk</p> 
+	 */
+	public static class Decoder {
+		/** The bit reader */
+		protected final BitStream.Reader reader;
+		/** The number of points in the chunk */
+		protected final int count;
+		/** The serialized size of the chunk */
+		protected final int serializedSize;
+		/** The number of points read */
+		protected int index = 0;
+		/** The current timestamp */
+		protected long timestamp;
+		/** The current value bits */
+		protected long value;
+		/** The current timestamp delta */
+		protected long delta = 0;
+		/** The leading zero count of the current XOR window */
+		protected int leading = 0;
+		/** The trailing zero count of the current XOR window */
+		protected int trailing = 0;
+		
+		/**
+		 * Creates a new Decoder
+		 * @param buffer A buffer positioned at the start of a serialized chunk. The position is not modified.
+		 */
+		public Decoder(ByteBuffer buffer) {
+			ByteBuffer buff = buffer.duplicate();
+			count = buff.getInt();
+			timestamp = buff.getLong();
+			value = buff.getLong();
+			serializedSize = HEADER_SIZE + buff.getInt();
+			reader = new BitStream.Reader(buff);
+		}
+		
+		/**
+		 * Advances to the next point
+		 * @return true if there was a next point, false if the chunk is exhausted
+		 */
+		public boolean next() {
+			if(index >= count) return false;
+			if(index > 0) {
+				delta += readDeltaOfDelta(reader);
+				timestamp += delta;
+				if(reader.readBit()) {
+					if(reader.readBit()) {
+						leading = (int)reader.readBits(5);
+						int significant = (int)reader.readBits(6);
+						if(significant==0) significant = 64;
+						trailing = 64 - leading - significant;
+					}
+					value ^= reader.readBits(64 - leading - trailing) << trailing;
+				}
+			}
+			index++;
+			return true;
+		}
+		
+		/**
+		 * Returns the current point timestamp
+		 * @return the current point timestamp
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+		
+		/**
+		 * Returns the current point value
+		 * @return the current point value
+		 */
+		public double getValue() {
+			return Double.longBitsToDouble(value);
+		}
+		
+		/**
+		 * Returns the number of points in the chunk
+		 * @return the number of points in the chunk
+		 */
+		public int getCount() {
+			return count;
+		}
+		
+		/**
+		 * Returns the serialized size of the chunk in bytes
+		 * @return the serialized size of the chunk in bytes
+		 */
+		public int getSerializedSize() {
+			return serializedSize;
+		}
+	}
+	
+	/**
+	 * <p>Title: PointVisitor</p>
+	 * <p>Description: Callback for decoded chunk points</p> 
+	 */
+	public static interface PointVisitor {
+		/**
+		 * Callback for one decoded point
+		 * @param timestamp The point timestamp
+		 * @param value The point value
+		 * @return true to continue decoding, false to stop
+		 */
+		public boolean point(long timestamp, double value);
+	}
+}
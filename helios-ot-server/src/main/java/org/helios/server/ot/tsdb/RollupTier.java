@@ -0,0 +1,314 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.server.ot.tsdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Title: RollupTier</p>
+ * <p>Description: A downsampled tier of the time-series store. Incoming points, or the min/max/avg/count of interval traces,
+ * are merged into one open bucket per series of the tier's resolution. When a bucket closes, its min, max, count weighted 
+ * average and total count are appended as one point to a four column {@link ChunkStore} with the tier's own retention.</p>
+ * <p>A bucket closes when a point for a later bucket arrives, or once the wall clock passes the bucket end plus the close delay.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.server.ot.tsdb.RollupTier</code></p>
+ */
+public class RollupTier {
+	/** The tier name */
+	protected final String name;
+	/** The bucket resolution in ms. */
+	protected final long resolution;
+	/** The time after a bucket's end that it is closed if no later point has arrived, in ms. */
+	protected final long closeDelay;
+	/** The closed bucket store */
+	protected final ChunkStore store;
+	/** The open buckets keyed by series id */
+	protected final ConcurrentHashMap<Integer, Bucket> buckets = new ConcurrentHashMap<Integer, Bucket>();
+	/** The number of closed buckets */
+	protected final AtomicLong closedBuckets = new AtomicLong(0L);
+	/** The number of updates dropped because their bucket had already closed */
+	protected final AtomicLong lateUpdates = new AtomicLong(0L);
+	
+	/** The min column index */
+	public static final int MIN = 0;
+	/** The max column index */
+	public static final int MAX = 1;
+	/** The count weighted average column index */
+	public static final int AVG = 2;
+	/** The count column index */
+	public static final int COUNT = 3;
+	/** The number of columns */
+	public static final int COLUMNS = 4;
+	/** The maximum segment window for a tier (1 day) */
+	public static final long MAX_WINDOW = 24 * 60 * 60 * 1000L;
+	/** The target number of buckets per series in a segment window */
+	public static final int BUCKETS_PER_WINDOW = 720;
+	
+	/**
+	 * Creates a new RollupTier
+	 * @param name The tier name
+	 * @param resolution The bucket resolution in ms.
+	 * @param retention The tier retention in ms.
+	 * @param directory The directory the tier segments are written to
+	 * @param closeDelay The time after a bucket's end that it is closed if no later point has arrived, in ms.
+	 */
+	public RollupTier(String name, long resolution, long retention, File directory, long closeDelay) {
+		if(resolution < 1000) throw new IllegalArgumentException("The rollup resolution must be at least one second [" + resolution + "]", new Throwable());
+		this.name = name;
+		this.resolution = resolution;
+		this.closeDelay = closeDelay;
+		// windows are a whole number of buckets so a bucket never straddles two segments
+		long window = Math.min(resolution * BUCKETS_PER_WINDOW, Math.max(MAX_WINDOW, resolution));
+		window -= window % resolution;
+		// a rolled window stays open long enough to receive its last bucket when that bucket closes on the wall clock
+		store = new ChunkStore(name, directory, COLUMNS, window, retention, closeDelay * 2);
+	}
+	
+	/**
+	 * Opens the tier store
+	 * @throws IOException thrown if the tier directory cannot be created
+	 */
+	public void open() throws IOException {
+		store.open();
+	}
+	
+	/**
+	 * Closes every open bucket and then closes the tier store
+	 */
+	public void close() {
+		for(Map.Entry<Integer, Bucket> entry: buckets.entrySet()) {
+			Bucket bucket = entry.getValue();
+			synchronized(bucket) {
+				closeBucket(entry.getKey(), bucket);
+			}
+		}
+		store.close();
+	}
+	
+	/**
+	 * Merges an observation into the series' open bucket
+	 * @param seriesId The series id
+	 * @param timestamp The observation timestamp
+	 * @param min The observation minimum
+	 * @param max The observation maximum
+	 * @param avg The observation average
+	 * @param count The number of samples the observation summarizes
+	 * @return true if merged, false if the observation's bucket has already closed
+	 */
+	public boolean update(int seriesId, long timestamp, double min, double max, double avg, long count) {
+		long bucketStart = timestamp - (timestamp % resolution);
+		Bucket bucket = buckets.get(seriesId);
+		if(bucket==null) {
+			bucket = new Bucket(bucketStart);
+			Bucket existing = buckets.putIfAbsent(seriesId, bucket);
+			if(existing!=null) bucket = existing;
+		}
+		synchronized(bucket) {
+			if(bucketStart > bucket.start) {
+				closeBucket(seriesId, bucket);
+				bucket.start = bucketStart;
+			} else if(bucketStart < bucket.start || bucket.closed) {
+				lateUpdates.incrementAndGet();
+				return false;
+			}
+			bucket.merge(min, max, avg, count);
+		}
+		return true;
+	}
+	
+	/**
+	 * Closes buckets whose end has passed by the close delay, then ticks the tier store
+	 * @param now The current time
+	 */
+	public void tick(long now) {
+		for(Map.Entry<Integer, Bucket> entry: buckets.entrySet()) {
+			Bucket bucket = entry.getValue();
+			if(bucket.weight > 0 && now >= bucket.start + resolution + closeDelay) {
+				synchronized(bucket) {
+					if(now >= bucket.start + resolution + closeDelay) closeBucket(entry.getKey(), bucket);
+				}
+			}
+		}
+		store.tick(now);
+	}
+	
+	/**
+	 * Appends a bucket to the tier store and resets it. The caller must hold the bucket's monitor.
+	 * @param seriesId The series id
+	 * @param bucket The bucket to close
+	 */
+	protected void closeBucket(int seriesId, Bucket bucket) {
+		if(bucket.weight > 0) {
+			store.append(seriesId, bucket.start, bucket.min, bucket.max, bucket.weightedSum / bucket.weight, bucket.count);
+			closedBuckets.incrementAndGet();
+		}
+		bucket.reset();
+		bucket.closed = true;
+	}
+	
+	/**
+	 * Reads the closed buckets and the open bucket of a series within a time range in ascending timestamp order.
+	 * Values are passed in the order min, max, avg, count.
+	 * @param seriesId The series id
+	 * @param start The inclusive range start
+	 * @param end The inclusive range end
+	 * @param visitor The point visitor
+	 */
+	public void read(int seriesId, long start, long end, final ChunkStore.ColumnVisitor visitor) {
+		final boolean[] stopped = new boolean[]{false};
+		store.read(seriesId, start, end, new ChunkStore.ColumnVisitor() {
+			public boolean point(long timestamp, double[] values) {
+				if(!visitor.point(timestamp, values)) stopped[0] = true;
+				return !stopped[0];
+			}
+		});
+		if(stopped[0]) return;
+		Bucket bucket = buckets.get(seriesId);
+		if(bucket==null) return;
+		long timestamp;
+		double[] values = new double[COLUMNS];
+		synchronized(bucket) {
+			if(bucket.weight==0 || bucket.start < start || bucket.start > end) return;
+			timestamp = bucket.start;
+			values[MIN] = bucket.min;
+			values[MAX] = bucket.max;
+			values[AVG] = bucket.weightedSum / bucket.weight;
+			values[COUNT] = bucket.count;
+		}
+		visitor.point(timestamp, values);
+	}
+
+	/**
+	 * Returns the tier name
+	 * @return the tier name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the bucket resolution in ms.
+	 * @return the bucket resolution in ms.
+	 */
+	public long getResolution() {
+		return resolution;
+	}
+	
+	/**
+	 * Returns the closed bucket store
+	 * @return the closed bucket store
+	 */
+	public ChunkStore getStore() {
+		return store;
+	}
+	
+	/**
+	 * Returns the number of closed buckets
+	 * @return the number of closed buckets
+	 */
+	public long getClosedBuckets() {
+		return closedBuckets.get();
+	}
+	
+	/**
+	 * Returns the number of updates dropped because their bucket had already closed
+	 * @return the number of late updates
+	 */
+	public long getLateUpdates() {
+		return lateUpdates.get();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "RollupTier [" + name + ", resolution:" + resolution + ", retention:" + store.getRetention() + "]";
+	}
+	
+	/**
+	 * <p>Title: Bucket</p>
+	 * <p>Description: The open aggregation of one series for one bucket period</p> 
+	 */
+	protected static class Bucket {
+		/** The bucket start */
+		protected long start;
+		/** The minimum */
+		protected double min;
+		/** The maximum */
+		protected double max;
+		/** The sum of averages times their weights */
+		protected double weightedSum;
+		/** The sum of weights. An observation with a zero count is weighted as one. */
+		protected long weight;
+		/** The total sample count */
+		protected long count;
+		/** Indicates the bucket was closed and has not received a later observation */
+		protected boolean closed = false;
+		
+		/**
+		 * Creates a new Bucket
+		 * @param start The bucket start
+		 */
+		protected Bucket(long start) {
+			this.start = start;
+			reset();
+		}
+		
+		/**
+		 * Merges an observation into the bucket
+		 * @param min The observation minimum
+		 * @param max The observation maximum
+		 * @param avg The observation average
+		 * @param count The number of samples the observation summarizes
+		 */
+		protected void merge(double min, double max, double avg, long count) {
+			long w = count > 0 ? count : 1;
+			if(min < this.min) this.min = min;
+			if(max > this.max) this.max = max;
+			weightedSum += avg * w;
+			weight += w;
+			this.count += count;
+			closed = false;
+		}
+		
+		/**
+		 * Resets the aggregation
+		 */
+		protected void reset() {
+			min = Double.POSITIVE_INFINITY;
+			max = Double.NEGATIVE_INFINITY;
+			weightedSum = 0;
+			weight = 0;
+			count = 0;
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.server.ot.tsdb;
+
+/**
+ * <p>Title: RollupTimeSeries</p>
+ * <p>Description: A time series read from a rollup tier. The values are the count weighted averages of each bucket,
+ * with the bucket minimums, maximums and sample counts in parallel arrays.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.server.ot.tsdb.RollupTimeSeries</code></p>
+ */
+public class RollupTimeSeries extends TimeSeries {
+	/**  */
+	private static final long serialVersionUID = 5127724135097236120L;
+	/** The name of the tier the series was read from */
+	protected final String tier;
+	/** The bucket resolution in ms. */
+	protected final long resolution;
+	/** The bucket minimums */
+	protected final double[] mins;
+	/** The bucket maximums */
+	protected final double[] maxes;
+	/** The bucket sample counts */
+	protected final long[] counts;
+	
+	/**
+	 * Creates a new RollupTimeSeries
+	 * @param fqn The metric fully qualified name
+	 * @param tier The name of the tier the series was read from
+	 * @param resolution The bucket resolution in ms.
+	 * @param timestamps The bucket start timestamps
+	 * @param mins The bucket minimums
+	 * @param maxes The bucket maximums
+	 * @param avgs The bucket count weighted averages
+	 * @param counts The bucket sample counts
+	 */
+	public RollupTimeSeries(String fqn, String tier, long resolution, long[] timestamps, double[] mins, double[] maxes, double[] avgs, long[] counts) {
+		super(fqn, timestamps, avgs);
+		this.tier = tier;
+		this.resolution = resolution;
+		this.mins = mins;
+		this.maxes = maxes;
+		this.counts = counts;
+	}
+
+	/**
+	 * Returns the name of the tier the series was read from
+	 * @return the tier name
+	 */
+	public String getTier() {
+		return tier;
+	}
+
+	/**
+	 * Returns the bucket resolution in ms.
+	 * @return the bucket resolution in ms.
+	 */
+	public long getResolution() {
+		return resolution;
+	}
+
+	/**
+	 * Returns the bucket minimums
+	 * @return the bucket minimums
+	 */
+	public double[] getMins() {
+		return mins;
+	}
+
+	/**
+	 * Returns the bucket maximums
+	 * @return the bucket maximums
+	 */
+	public double[] getMaxes() {
+		return maxes;
+	}
+
+	/**
+	 * Returns the bucket sample counts
+	 * @return the bucket sample counts
+	 */
+	public long[] getCounts() {
+		return counts;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.server.ot.tsdb.TimeSeries#toString()
+	 */
+	public String toString() {
+		return super.toString() + " tier:" + tier;
+	}
+}
@@ -0,0 +1,307 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.server.ot.tsdb;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * <p>Title: TimeSegment</p>
+ * <p>Description: An immutable, memory mapped file holding the sealed {@link GorillaChunk}s of every series for one time window.
+ * The series index is sorted by series id and binary searched in place, so an open segment costs no heap beyond this instance.</p>
+ * <p>File layout: <b><code>[int magic][int version][long windowStart][long windowEnd][int entryCount]
+ * [entryCount * (int seriesId, int offset, int length)][chunks...]</code></b></p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.server.ot.tsdb.TimeSegment</code></p>
+ */
+public class TimeSegment {
+	/** The segment file */
+	protected final File file;
+	/** The mapped segment content */
+	protected final MappedByteBuffer buffer;
+	/** The inclusive start of the segment window */
+	protected final long windowStart;
+	/** The exclusive end of the segment window */
+	protected final long windowEnd;
+	/** The number of series in the segment */
+	protected final int entryCount;
+	
+	/** The segment file magic */
+	public static final int MAGIC = 0x48545344;
+	/** The segment file format version */
+	public static final int VERSION = 1;
+	/** The size of the segment header */
+	public static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+	/** The size of one index entry */
+	public static final int ENTRY_SIZE = 4 + 4 + 4;
+	/** The segment file name prefix */
+	public static final String FILE_PREFIX = "tsdb-";
+	/** The segment file name extension */
+	public static final String FILE_EXTENSION = ".seg";
+	
+	/** The <b><code>Files.move(Path, Path, CopyOption...)</code></b> method, or null if java.nio.file is not available */
+	private static final Method MOVE;
+	/** The <b><code>File.toPath()</code></b> method, or null if java.nio.file is not available */
+	private static final Method TO_PATH;
+	/** The <b><code>ATOMIC_MOVE, REPLACE_EXISTING</code></b> copy options, or null if java.nio.file is not available */
+	private static final Object MOVE_OPTIONS;
+	
+	static {
+		Method move = null, toPath = null;
+		Object options = null;
+		try {
+			Class<?> pathClass = Class.forName("java.nio.file.Path");
+			Class<?> optionClass = Class.forName("java.nio.file.CopyOption");
+			Class<?> standardOptions = Class.forName("java.nio.file.StandardCopyOption");
+			options = Array.newInstance(optionClass, 2);
+			Array.set(options, 0, standardOptions.getField("ATOMIC_MOVE").get(null));
+			Array.set(options, 1, standardOptions.getField("REPLACE_EXISTING").get(null));
+			move = Class.forName("java.nio.file.Files").getMethod("move", pathClass, pathClass, options.getClass());
+			toPath = File.class.getMethod("toPath");
+		} catch (Throwable t) {
+			move = null; toPath = null; options = null;
+		}
+		MOVE = move;
+		TO_PATH = toPath;
+		MOVE_OPTIONS = options;
+	}
+	
+	/**
+	 * Opens and maps an existing segment file
+	 * @param file The segment file
+	 * @throws IOException thrown if the file cannot be read or is not a valid segment
+	 */
+	public TimeSegment(File file) throws IOException {
+		this.file = file;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			try { raf.close(); } catch (Exception e) {}
+		}
+		if(buffer.capacity() < HEADER_SIZE || buffer.getInt(0)!=MAGIC) {
+			throw new IOException("The file [" + file + "] is not a time segment");
+		}
+		if(buffer.getInt(4)!=VERSION) {
+			throw new IOException("The file [" + file + "] has unsupported version [" + buffer.getInt(4) + "]");
+		}
+		windowStart = buffer.getLong(8);
+		windowEnd = buffer.getLong(16);
+		entryCount = buffer.getInt(24);
+	}
+	
+	/**
+	 * Writes a new segment file. The file is written under a temporary name, synced to disk and then atomically moved over the target, 
+	 * so a crash leaves either the previous segment or the complete new one.
+	 * @param directory The directory to write the segment into
+	 * @param windowStart The inclusive start of the segment window
+	 * @param windowEnd The exclusive end of the segment window
+	 * @param chunks The chunks to write keyed by series id
+	 * @return the written file
+	 * @throws IOException thrown on any IO error
+	 */
+	public static File write(File directory, long windowStart, long windowEnd, SortedMap<Integer, byte[]> chunks) throws IOException {
+		File target = new File(directory, fileName(windowStart));
+		File tmp = new File(directory, fileName(windowStart) + ".tmp");
+		FileOutputStream fos = new FileOutputStream(tmp);
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(fos, 65536));
+		try {
+			dos.writeInt(MAGIC);
+			dos.writeInt(VERSION);
+			dos.writeLong(windowStart);
+			dos.writeLong(windowEnd);
+			dos.writeInt(chunks.size());
+			int offset = HEADER_SIZE + (chunks.size() * ENTRY_SIZE);
+			for(Map.Entry<Integer, byte[]> entry: chunks.entrySet()) {
+				dos.writeInt(entry.getKey());
+				dos.writeInt(offset);
+				dos.writeInt(entry.getValue().length);
+				offset += entry.getValue().length;
+			}
+			for(byte[] chunk: chunks.values()) {
+				dos.write(chunk);
+			}
+			dos.flush();
+			fos.getFD().sync();
+		} finally {
+			try { dos.close(); } catch (Exception e) {}
+		}
+		replace(tmp, target);
+		return target;
+	}
+	
+	/**
+	 * Atomically replaces the target file with the source file. Uses an atomic <b><code>Files.move</code></b> where available, 
+	 * otherwise a rename, which replaces the target atomically on POSIX file systems.
+	 * @param source The file to move
+	 * @param target The file to replace
+	 * @throws IOException thrown if the move fails
+	 */
+	protected static void replace(File source, File target) throws IOException {
+		if(MOVE!=null) {
+			try {
+				MOVE.invoke(null, TO_PATH.invoke(source), TO_PATH.invoke(target), MOVE_OPTIONS);
+				return;
+			} catch (InvocationTargetException ite) {
+				Throwable cause = ite.getCause();
+				if(cause instanceof IOException) throw (IOException)cause;
+				throw new IOException("Failed to move segment [" + source + "] to [" + target + "]", cause);
+			} catch (IllegalAccessException iae) {
+				throw new IOException("Failed to move segment [" + source + "] to [" + target + "]", iae);
+			}
+		}
+		if(!source.renameTo(target)) {
+			throw new IOException("Failed to rename segment [" + source + "] to [" + target + "]");
+		}
+	}
+	
+	/**
+	 * Returns the segment file name for the passed window start
+	 * @param windowStart The window start
+	 * @return the segment file name
+	 */
+	public static String fileName(long windowStart) {
+		return FILE_PREFIX + windowStart + FILE_EXTENSION;
+	}
+	
+	/**
+	 * Returns a read only view of the chunk for the passed series id
+	 * @param seriesId The series id
+	 * @return a buffer positioned at the chunk, or null if the series has no data in this segment
+	 */
+	public ByteBuffer getChunk(int seriesId) {
+		int low = 0, high = entryCount - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			int pos = HEADER_SIZE + (mid * ENTRY_SIZE);
+			int id = buffer.getInt(pos);
+			if(id < seriesId) {
+				low = mid + 1;
+			} else if(id > seriesId) {
+				high = mid - 1;
+			} else {
+				ByteBuffer chunk = buffer.duplicate();
+				int offset = buffer.getInt(pos + 4);
+				chunk.limit(offset + buffer.getInt(pos + 8));
+				chunk.position(offset);
+				return chunk.slice();
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the ids of the series in this segment in ascending order
+	 * @return the series ids
+	 */
+	public int[] getSeriesIds() {
+		int[] ids = new int[entryCount];
+		for(int i = 0; i < entryCount; i++) {
+			ids[i] = buffer.getInt(HEADER_SIZE + (i * ENTRY_SIZE));
+		}
+		return ids;
+	}
+	
+	/**
+	 * Determines if this segment overlaps the passed time range
+	 * @param start The inclusive range start
+	 * @param end The inclusive range end
+	 * @return true if the segment overlaps the range
+	 */
+	public boolean overlaps(long start, long end) {
+		return windowStart <= end && windowEnd > start;
+	}
+	
+	/**
+	 * Deletes the segment file. The mapping remains valid until this instance is collected.
+	 * @return true if the file was deleted
+	 */
+	public boolean delete() {
+		return file.delete();
+	}
+
+	/**
+	 * Returns the segment file
+	 * @return the segment file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the inclusive start of the segment window
+	 * @return the inclusive start of the segment window
+	 */
+	public long getWindowStart() {
+		return windowStart;
+	}
+
+	/**
+	 * Returns the exclusive end of the segment window
+	 * @return the exclusive end of the segment window
+	 */
+	public long getWindowEnd() {
+		return windowEnd;
+	}
+
+	/**
+	 * Returns the number of series in the segment
+	 * @return the number of series in the segment
+	 */
+	public int getEntryCount() {
+		return entryCount;
+	}
+	
+	/**
+	 * Returns the size of the segment in bytes
+	 * @return the size of the segment in bytes
+	 */
+	public int getSize() {
+		return buffer.capacity();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "TimeSegment [" + file.getName() + ", series:" + entryCount + ", bytes:" + buffer.capacity() + "]";
+	}
+}
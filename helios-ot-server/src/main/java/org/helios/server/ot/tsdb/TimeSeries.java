@@ -0,0 +1,104 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.server.ot.tsdb;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * <p>Title: TimeSeries</p>
+ * <p>Description: The result of a time-series store query for one metric: parallel arrays of timestamps and values.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.server.ot.tsdb.TimeSeries</code></p>
+ */
+public class TimeSeries implements Serializable {
+	/**  */
+	private static final long serialVersionUID = -3816377245312893541L;
+	/** The metric fully qualified name */
+	protected final String fqn;
+	/** The point timestamps */
+	protected final long[] timestamps;
+	/** The point values */
+	protected final double[] values;
+	
+	/**
+	 * Creates a new TimeSeries
+	 * @param fqn The metric fully qualified name
+	 * @param timestamps The point timestamps
+	 * @param values The point values
+	 */
+	public TimeSeries(String fqn, long[] timestamps, double[] values) {
+		if(timestamps.length!=values.length) throw new IllegalArgumentException("Timestamp and value counts differ [" + timestamps.length + "/" + values.length + "]", new Throwable());
+		this.fqn = fqn;
+		this.timestamps = timestamps;
+		this.values = values;
+	}
+
+	/**
+	 * Returns the metric fully qualified name
+	 * @return the metric fully qualified name
+	 */
+	public String getFqn() {
+		return fqn;
+	}
+
+	/**
+	 * Returns the point timestamps
+	 * @return the point timestamps
+	 */
+	public long[] getTimestamps() {
+		return timestamps;
+	}
+
+	/**
+	 * Returns the point values
+	 * @return the point values
+	 */
+	public double[] getValues() {
+		return values;
+	}
+	
+	/**
+	 * Returns the number of points
+	 * @return the number of points
+	 */
+	public int size() {
+		return timestamps.length;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		StringBuilder b = new StringBuilder("TimeSeries [").append(fqn).append("] points:").append(timestamps.length);
+		if(timestamps.length > 0) {
+			b.append(" from:").append(new Date(timestamps[0])).append(" to:").append(new Date(timestamps[timestamps.length-1]));
+		}
+		return b.toString();
+	}
+}
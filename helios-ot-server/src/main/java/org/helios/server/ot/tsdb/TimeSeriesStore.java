@@ -0,0 +1,1036 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.server.ot.tsdb;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.log4j.Logger;
+import org.helios.ot.trace.ClosedIntervalTrace;
+import org.helios.ot.trace.ClosedMinMaxAvgTrace;
+import org.helios.ot.trace.ClosedTrace;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * <p>Title: TimeSeriesStore</p>
+ * <p>Description: An embedded, compressed time-series store for the numeric values of incoming closed traces.</p>
+ * <p>Raw points are appended to a single column {@link ChunkStore} which keeps the current time window in memory and seals 
+ * past windows into memory mapped segment files. Each point is also merged into the configured {@link RollupTier}s 
+ * (by default 1m, 5m, 1h and 1d), which preserve the min, max and count of interval traces and recompute count weighted 
+ * averages, each with its own retention. Series ids are assigned once and persisted in an append only dictionary file so 
+ * they remain stable across restarts.</p>
+ * <p>Queries take a metric name pattern using the same wildcards as subscriptions: <b><code>*</code></b> matches exactly 
+ * one name segment and a trailing <b><code>&gt;</code></b> matches one or more. The coarsest tier that still satisfies the 
+ * requested step (or, with no step, keeps the result near {@link #getMaxQueryPoints()} points) and whose retention covers 
+ * the range start is read, falling back to raw points.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.server.ot.tsdb.TimeSeriesStore</code></p>
+ */
+@ManagedResource(objectName="org.helios.server.ot.tsdb:service=TimeSeriesStore")
+public class TimeSeriesStore implements Processor, Runnable {
+	/** Instance logger */
+	protected final Logger log = Logger.getLogger(getClass());
+	/** The series keyed by metric FQN */
+	protected final Map<String, Series> seriesByName = new ConcurrentHashMap<String, Series>();
+	/** The series keyed by series id */
+	protected final Map<Integer, Series> seriesById = new ConcurrentHashMap<Integer, Series>();
+	/** The series id serial */
+	protected final AtomicInteger seriesSerial = new AtomicInteger(0);
+	/** The raw point store */
+	protected ChunkStore raw = null;
+	/** The rollup tiers in ascending resolution order */
+	protected List<RollupTier> tiers = Collections.emptyList();
+	/** The series dictionary file, opened for append */
+	protected FileOutputStream dictionary = null;
+	/** The length of the series dictionary up to the last complete and synced entry */
+	protected long dictionaryLength = 0L;
+	/** The flusher thread */
+	protected Thread flusherThread = null;
+	/** The running flag */
+	protected volatile boolean running = false;
+	
+	/** The directory the segments and dictionary are written to */
+	protected File dataDirectory = new File(System.getProperty("user.home") + File.separator + ".helios" + File.separator + "tsdb");
+	/** The size of a raw head block and segment window in ms. */
+	protected long windowSize = DEFAULT_WINDOW_SIZE;
+	/** The raw segment retention in ms. */
+	protected long retention = DEFAULT_RETENTION;
+	/** The time a rolled head block, or an ended rollup bucket, remains open for late points in ms. */
+	protected long sealDelay = DEFAULT_SEAL_DELAY;
+	/** The maximum number of series that will be tracked */
+	protected int maxSeries = DEFAULT_MAX_SERIES;
+	/** The rollup tier definitions */
+	protected String rollups = DEFAULT_ROLLUPS;
+	/** The target maximum number of points per series returned by a query with no step */
+	protected int maxQueryPoints = DEFAULT_MAX_QUERY_POINTS;
+	
+	/** The number of traces skipped because they had no numeric value */
+	protected final AtomicLong skippedTraces = new AtomicLong(0L);
+	/** The number of points dropped because the series limit was reached */
+	protected final AtomicLong rejectedPoints = new AtomicLong(0L);
+	
+	/** The default window size (2 hours) */
+	public static final long DEFAULT_WINDOW_SIZE = 2 * 60 * 60 * 1000L;
+	/** The default retention (21 days) */
+	public static final long DEFAULT_RETENTION = 21 * 24 * 60 * 60 * 1000L;
+	/** The default seal delay (1 minute) */
+	public static final long DEFAULT_SEAL_DELAY = 60 * 1000L;
+	/** The default maximum number of series */
+	public static final int DEFAULT_MAX_SERIES = 500000;
+	/** The default rollup tiers as comma separated <b><code>resolution=retention</code></b> pairs */
+	public static final String DEFAULT_ROLLUPS = "1m=30d,5m=90d,1h=365d,1d=1825d";
+	/** The default target maximum number of points per series returned by a query with no step */
+	public static final int DEFAULT_MAX_QUERY_POINTS = 1000;
+	/** The name used to request raw points from {@link #query(String, long, long, long, String)} */
+	public static final String RAW = "raw";
+	/** The series dictionary file name */
+	public static final String DICTIONARY_FILE = "series.dict";
+	/** The rollup tier directory prefix */
+	public static final String ROLLUP_PREFIX = "rollup-";
+	/** The metric name segment delimiter */
+	public static final String DELIM = "/";
+	/** The single segment wildcard */
+	public static final String SINGLE_WILDCARD = "*";
+	/** The trailing multi segment wildcard */
+	public static final String MULTI_WILDCARD = ">";
+	
+	/**
+	 * Starts the store, loading the series dictionary and opening the raw store and rollup tiers
+	 * @throws IOException thrown if the data directory cannot be read or written
+	 */
+	public void start() throws IOException {
+		if(!dataDirectory.exists() && !dataDirectory.mkdirs()) {
+			throw new IOException("Failed to create time-series directory [" + dataDirectory + "]");
+		}
+		loadDictionary();
+		raw = new ChunkStore(RAW, dataDirectory, 1, windowSize, retention, sealDelay);
+		raw.open();
+		List<RollupTier> rollupTiers = parseRollups(rollups);
+		for(RollupTier tier: rollupTiers) {
+			tier.open();
+		}
+		tiers = rollupTiers;
+		File dictionaryFile = new File(dataDirectory, DICTIONARY_FILE);
+		dictionary = new FileOutputStream(dictionaryFile, true);
+		dictionaryLength = dictionaryFile.length();
+		running = true;
+		flusherThread = new Thread(this, getClass().getSimpleName() + "FlusherThread");
+		flusherThread.setDaemon(true);
+		flusherThread.start();
+		log.info("Started TimeSeriesStore in [" + dataDirectory + "] with [" + seriesById.size() + "] series, [" + raw.getSegmentCount() + "] segments and tiers " + tiers);
+	}
+	
+	/**
+	 * Stops the store, sealing the open head blocks and rollup buckets
+	 */
+	public void stop() {
+		running = false;
+		if(flusherThread!=null) {
+			flusherThread.interrupt();
+			try { flusherThread.join(5000); } catch (InterruptedException e) {}
+		}
+		if(raw!=null) raw.close();
+		for(RollupTier tier: tiers) {
+			tier.close();
+		}
+		synchronized(this) {
+			if(dictionary!=null) {
+				try { dictionary.close(); } catch (Exception e) {}
+				dictionary = null;
+			}
+		}
+		log.info("Stopped TimeSeriesStore");
+	}
+	
+	/**
+	 * Parses rollup tier definitions
+	 * @param definitions Comma separated <b><code>resolution=retention</code></b> pairs, e.g. <b><code>1m=30d,1h=365d</code></b>
+	 * @return the rollup tiers in ascending resolution order
+	 */
+	protected List<RollupTier> parseRollups(String definitions) {
+		List<RollupTier> rollupTiers = new ArrayList<RollupTier>();
+		if(definitions==null || definitions.trim().length()==0) return rollupTiers;
+		for(String definition: definitions.split(",")) {
+			String[] pair = definition.trim().split("=");
+			if(pair.length!=2) throw new IllegalArgumentException("Invalid rollup definition [" + definition + "]", new Throwable());
+			String name = pair[0].trim();
+			rollupTiers.add(new RollupTier(name, parseDuration(name), parseDuration(pair[1]), new File(dataDirectory, ROLLUP_PREFIX + name), sealDelay));
+		}
+		Collections.sort(rollupTiers, new Comparator<RollupTier>() {
+			public int compare(RollupTier t1, RollupTier t2) {
+				return t1.getResolution() < t2.getResolution() ? -1 : t1.getResolution()==t2.getResolution() ? 0 : 1;
+			}
+		});
+		return rollupTiers;
+	}
+	
+	/**
+	 * Parses a duration with an optional unit suffix of <b><code>ms, s, m, h</code></b> or <b><code>d</code></b>. No suffix is ms.
+	 * @param duration The duration to parse
+	 * @return the duration in ms.
+	 */
+	protected static long parseDuration(String duration) {
+		String d = duration.trim().toLowerCase();
+		try {
+			if(d.endsWith("ms")) return Long.parseLong(d.substring(0, d.length()-2).trim());
+			long multiplier;
+			switch(d.charAt(d.length()-1)) {
+				case 's': multiplier = 1000L; break;
+				case 'm': multiplier = 60 * 1000L; break;
+				case 'h': multiplier = 60 * 60 * 1000L; break;
+				case 'd': multiplier = 24 * 60 * 60 * 1000L; break;
+				default: return Long.parseLong(d);
+			}
+			return Long.parseLong(d.substring(0, d.length()-1).trim()) * multiplier;
+		} catch (NumberFormatException nfe) {
+			throw new IllegalArgumentException("Invalid duration [" + duration + "]", nfe);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>Appends the numeric value of incoming closed traces</p>
+	 * @see org.apache.camel.Processor#process(org.apache.camel.Exchange)
+	 */
+	@Override
+	public void process(Exchange exchange) throws Exception {
+		if(exchange!=null) {
+			Message msg = exchange.getIn();
+			ClosedTrace trace = msg.getBody(ClosedTrace.class);
+			if(trace!=null) append(trace);
+		}
+	}
+	
+	/**
+	 * Appends the numeric value of a closed trace. Interval traces contribute their min, max, average and count to the rollup tiers.
+	 * @param trace The trace to append
+	 * @return true if the raw point was appended
+	 */
+	public boolean append(ClosedTrace trace) {
+		Object value = trace.getValue();
+		if(!(value instanceof Number)) {
+			skippedTraces.incrementAndGet();
+			return false;
+		}
+		double v = ((Number)value).doubleValue();
+		double min = v, max = v, avg = v;
+		long count = 1;
+		if(trace instanceof ClosedMinMaxAvgTrace) {
+			ClosedMinMaxAvgTrace mma = (ClosedMinMaxAvgTrace)trace;
+			min = mma.getMin();
+			max = mma.getMax();
+			avg = mma.getAvg();
+			count = mma.getCount();
+		} else if(trace instanceof ClosedIntervalTrace) {
+			count = ((ClosedIntervalTrace)trace).getCount();
+		}
+		return append(trace.getFQN(), trace.getStartTimestamp(), v, min, max, avg, count);
+	}
+	
+	/**
+	 * Appends a single sample to the named series
+	 * @param fqn The metric fully qualified name
+	 * @param timestamp The point timestamp
+	 * @param value The point value
+	 * @return true if the raw point was appended, false if it was dropped
+	 */
+	public boolean append(String fqn, long timestamp, double value) {
+		return append(fqn, timestamp, value, value, value, value, 1);
+	}
+	
+	/**
+	 * Appends a raw point to the named series and merges its summary into the rollup tiers
+	 * @param fqn The metric fully qualified name
+	 * @param timestamp The point timestamp
+	 * @param value The raw point value
+	 * @param min The minimum for the rollup tiers
+	 * @param max The maximum for the rollup tiers
+	 * @param avg The average for the rollup tiers
+	 * @param count The number of samples the point summarizes
+	 * @return true if the raw point was appended, false if it was dropped
+	 */
+	protected boolean append(String fqn, long timestamp, double value, double min, double max, double avg, long count) {
+		if(!running) return false;
+		Series series = getSeries(fqn);
+		if(series==null) {
+			rejectedPoints.incrementAndGet();
+			return false;
+		}
+		for(RollupTier tier: tiers) {
+			tier.update(series.id, timestamp, min, max, avg, count);
+		}
+		return raw.append(series.id, timestamp, value);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>The flusher loop: ticks the raw store and the rollup tiers once a second.</p>
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run() {
+		while(running) {
+			try {
+				Thread.sleep(1000);
+				long now = System.currentTimeMillis();
+				raw.tick(now);
+				for(RollupTier tier: tiers) {
+					tier.tick(now);
+				}
+			} catch (InterruptedException ie) {
+				if(!running) break;
+			} catch (Exception e) {
+				log.error("TimeSeriesStore flusher error", e);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the series for the passed FQN, registering and persisting a new series id if required.
+	 * A new series id is only assigned once its dictionary entry has been synced to disk.
+	 * @param fqn The metric FQN
+	 * @return the series or null if the maximum number of series has been reached or the new series could not be persisted
+	 */
+	protected Series getSeries(String fqn) {
+		Series series = seriesByName.get(fqn);
+		if(series==null) {
+			synchronized(this) {
+				series = seriesByName.get(fqn);
+				if(series==null) {
+					if(seriesById.size() >= maxSeries) return null;
+					series = new Series(seriesSerial.get()+1, fqn);
+					try {
+						appendDictionary(series);
+					} catch (Exception e) {
+						log.error("Failed to persist series [" + fqn + "]", e);
+						return null;
+					}
+					seriesSerial.set(series.id);
+					seriesById.put(series.id, series);
+					seriesByName.put(fqn, series);
+				}
+			}
+		}
+		return series;
+	}
+	
+	/**
+	 * Appends a series entry to the dictionary and syncs it to disk. The entry is encoded before anything is written, and a 
+	 * failed write is truncated back to the last complete entry so the dictionary never holds a partial entry.
+	 * Called while holding this store's lock.
+	 * @param series The series to persist
+	 * @throws IOException thrown if the entry cannot be encoded, written or synced
+	 */
+	protected void appendDictionary(Series series) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(6 + series.fqn.length());
+		DataOutputStream entry = new DataOutputStream(baos);
+		entry.writeInt(series.id);
+		entry.writeUTF(series.fqn);
+		try {
+			baos.writeTo(dictionary);
+			dictionary.getFD().sync();
+			dictionaryLength += baos.size();
+		} catch (IOException ioe) {
+			try {
+				dictionary.getChannel().truncate(dictionaryLength);
+			} catch (Exception e) {
+				log.warn("Failed to truncate series dictionary to [" + dictionaryLength + "] bytes", e);
+			}
+			throw ioe;
+		}
+	}
+	
+	/**
+	 * Loads the persisted series dictionary. A truncated final entry, left by a crash mid append, is cut off so that 
+	 * new entries are appended after the last complete one.
+	 * @throws IOException thrown on any IO error other than a truncated final entry
+	 */
+	protected void loadDictionary() throws IOException {
+		File file = new File(dataDirectory, DICTIONARY_FILE);
+		if(!file.exists()) return;
+		long goodOffset = 0L;
+		DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			while(true) {
+				int id = dis.readInt();
+				String fqn = dis.readUTF();
+				Series series = new Series(id, fqn);
+				seriesById.put(id, series);
+				seriesByName.put(fqn, series);
+				if(id > seriesSerial.get()) seriesSerial.set(id);
+				goodOffset += 4 + 2 + utfLength(fqn);
+			}
+		} catch (EOFException eof) {
+			// end of dictionary
+		} finally {
+			try { dis.close(); } catch (Exception e) {}
+		}
+		long length = file.length();
+		if(goodOffset < length) {
+			log.warn("Truncating [" + (length-goodOffset) + "] bytes of partial entry from series dictionary [" + file + "]");
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.setLength(goodOffset);
+				raf.getFD().sync();
+			} finally {
+				try { raf.close(); } catch (Exception e) {}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of bytes {@link DataOutputStream#writeUTF(String)} writes for the passed string, excluding the length prefix
+	 * @param str The string to measure
+	 * @return the modified UTF-8 length of the string
+	 */
+	protected static int utfLength(String str) {
+		int length = 0;
+		for(int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			if(c >= 0x0001 && c <= 0x007F) length++;
+			else if(c > 0x07FF) length += 3;
+			else length += 2;
+		}
+		return length;
+	}
+	
+	/**
+	 * Queries the store for all series matching the passed pattern, reading from the tier selected for the range and step
+	 * @param pattern The metric name pattern
+	 * @param start The inclusive start of the time range
+	 * @param end The inclusive end of the time range
+	 * @param step The step in ms. to aggregate points into. Zero or less selects a tier by the range alone and returns its points as stored.
+	 * @return a list of matching time series, omitting series with no points in the range. 
+	 * Series read from a rollup tier are {@link RollupTimeSeries}.
+	 */
+	public List<TimeSeries> query(String pattern, long start, long end, long step) {
+		return query(pattern, start, end, step, selectTier(start, end, step, System.currentTimeMillis()));
+	}
+	
+	/**
+	 * Queries a specific tier for all series matching the passed pattern
+	 * @param pattern The metric name pattern
+	 * @param start The inclusive start of the time range
+	 * @param end The inclusive end of the time range
+	 * @param step The step in ms. to aggregate points into. Zero or less returns the points as stored.
+	 * @param tierName The rollup tier name or {@link #RAW} for raw points
+	 * @return a list of matching time series, omitting series with no points in the range
+	 */
+	public List<TimeSeries> query(String pattern, long start, long end, long step, String tierName) {
+		if(RAW.equals(tierName)) return query(pattern, start, end, step, (RollupTier)null);
+		for(RollupTier tier: tiers) {
+			if(tier.getName().equals(tierName)) return query(pattern, start, end, step, tier);
+		}
+		throw new IllegalArgumentException("No rollup tier named [" + tierName + "]", new Throwable());
+	}
+	
+	/**
+	 * Queries the raw store or a rollup tier for all series matching the passed pattern
+	 * @param pattern The metric name pattern
+	 * @param start The inclusive start of the time range
+	 * @param end The inclusive end of the time range
+	 * @param step The step in ms. to aggregate points into. Zero or less returns the points as stored.
+	 * @param tier The rollup tier to read, or null for raw points
+	 * @return a list of matching time series, omitting series with no points in the range
+	 */
+	protected List<TimeSeries> query(String pattern, long start, long end, long step, RollupTier tier) {
+		if(pattern==null) throw new IllegalArgumentException("The passed pattern was null", new Throwable());
+		if(end < start) throw new IllegalArgumentException("The query end [" + end + "] is before the start [" + start + "]", new Throwable());
+		if(!running) throw new IllegalStateException("The TimeSeriesStore is not running");
+		String[] patternSegments = pattern.split(DELIM);
+		List<TimeSeries> results = new ArrayList<TimeSeries>();
+		for(Series series: seriesById.values()) {
+			if(!matches(patternSegments, series.fqn.split(DELIM))) continue;
+			if(tier==null) {
+				PointCollector collector = new PointCollector(start, end, step);
+				raw.read(series.id, start, end, collector);
+				if(collector.size() > 0) results.add(collector.toTimeSeries(series.fqn));
+			} else {
+				RollupCollector collector = new RollupCollector(start, step > tier.getResolution() ? step : 0);
+				tier.read(series.id, start, end, collector);
+				if(collector.size() > 0) results.add(collector.toTimeSeries(series.fqn, tier));
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Selects the tier to read for a query. The coarsest tier whose resolution does not exceed the target resolution 
+	 * (the step, or the range divided by the maximum query points) and whose retention covers the range start is selected.
+	 * If no tier qualifies, raw points are read unless they no longer cover the range start, 
+	 * in which case the finest tier that does is read.
+	 * @param start The inclusive start of the time range
+	 * @param end The inclusive end of the time range
+	 * @param step The requested step in ms. 
+	 * @param now The current time
+	 * @return the selected tier or null for raw points
+	 */
+	protected RollupTier selectTier(long start, long end, long step, long now) {
+		long target = step > 0 ? step : (end - start) / Math.max(1, maxQueryPoints);
+		RollupTier selected = null;
+		for(RollupTier tier: tiers) {
+			if(tier.getResolution() <= target && tier.getStore().covers(start, now)) selected = tier;
+		}
+		if(selected==null && !raw.covers(start, now)) {
+			for(RollupTier tier: tiers) {
+				selected = tier;
+				if(tier.getStore().covers(start, now)) break;
+			}
+		}
+		return selected;
+	}
+	
+	/**
+	 * Matches metric name segments against pattern segments
+	 * @param pattern The pattern segments
+	 * @param name The metric name segments
+	 * @return true if the name matches the pattern
+	 */
+	protected static boolean matches(String[] pattern, String[] name) {
+		for(int i = 0; i < pattern.length; i++) {
+			if(MULTI_WILDCARD.equals(pattern[i]) && i==pattern.length-1) {
+				return name.length > i;
+			}
+			if(i >= name.length) return false;
+			if(!SINGLE_WILDCARD.equals(pattern[i]) && !pattern[i].equals(name[i])) return false;
+		}
+		return pattern.length==name.length;
+	}
+	
+	/**
+	 * Seals the rolled raw and rollup head blocks immediately without waiting for the late point grace period
+	 */
+	@ManagedOperation(description="Seals the rolled head blocks immediately without waiting for the late point grace period")
+	public void flush() {
+		raw.flush();
+		for(RollupTier tier: tiers) {
+			tier.getStore().flush();
+		}
+	}
+	
+	/**
+	 * Returns a summary of each rollup tier
+	 * @return a summary of each rollup tier
+	 */
+	@ManagedAttribute(description="A summary of each rollup tier")
+	public String[] getTierSummaries() {
+		String[] summaries = new String[tiers.size()];
+		int i = 0;
+		for(RollupTier tier: tiers) {
+			ChunkStore store = tier.getStore();
+			summaries[i++] = tier.getName() + ": resolution=" + tier.getResolution() + "ms, retention=" + store.getRetention() 
+				+ "ms, segments=" + store.getSegmentCount() + ", bytes=" + store.getSegmentBytes() 
+				+ ", closedBuckets=" + tier.getClosedBuckets() + ", lateUpdates=" + tier.getLateUpdates() + ", dropped=" + store.getDroppedPoints();
+		}
+		return summaries;
+	}
+	
+	/**
+	 * Returns the number of tracked series
+	 * @return the number of tracked series
+	 */
+	@ManagedAttribute(description="The number of tracked series")
+	public int getSeriesCount() {
+		return seriesById.size();
+	}
+	
+	/**
+	 * Returns the number of sealed raw segments on disk
+	 * @return the number of sealed raw segments on disk
+	 */
+	@ManagedAttribute(description="The number of sealed raw segments on disk")
+	public int getSegmentCount() {
+		return raw==null ? 0 : raw.getSegmentCount();
+	}
+	
+	/**
+	 * Returns the total size of the sealed raw and rollup segments in bytes
+	 * @return the total size of the sealed segments in bytes
+	 */
+	@ManagedAttribute(description="The total size of the sealed raw and rollup segments in bytes")
+	public long getSegmentBytes() {
+		if(raw==null) return 0;
+		long total = raw.getSegmentBytes();
+		for(RollupTier tier: tiers) {
+			total += tier.getStore().getSegmentBytes();
+		}
+		return total;
+	}
+	
+	/**
+	 * Returns the number of points in the open raw head blocks
+	 * @return the number of points in the open raw head blocks
+	 */
+	@ManagedAttribute(description="The number of points in the open raw head blocks")
+	public long getHeadPointCount() {
+		return raw==null ? 0 : raw.getHeadPointCount();
+	}
+	
+	/**
+	 * Returns the number of appended raw points
+	 * @return the number of appended raw points
+	 */
+	@ManagedAttribute(description="The number of appended raw points")
+	public long getAppendedPoints() {
+		return raw==null ? 0 : raw.getAppendedPoints();
+	}
+	
+	/**
+	 * Returns the number of raw points dropped because they were late, out of order or over the series limit
+	 * @return the number of dropped raw points
+	 */
+	@ManagedAttribute(description="The number of raw points dropped because they were late, out of order or over the series limit")
+	public long getDroppedPoints() {
+		return rejectedPoints.get() + (raw==null ? 0 : raw.getDroppedPoints());
+	}
+	
+	/**
+	 * Returns the number of traces skipped because they had no numeric value
+	 * @return the number of skipped traces
+	 */
+	@ManagedAttribute(description="The number of traces skipped because they had no numeric value")
+	public long getSkippedTraces() {
+		return skippedTraces.get();
+	}
+	
+	/**
+	 * Returns the number of raw segments sealed since start
+	 * @return the number of raw segments sealed since start
+	 */
+	@ManagedAttribute(description="The number of raw segments sealed since start")
+	public long getSealedSegments() {
+		return raw==null ? 0 : raw.getSealedSegments();
+	}
+	
+	/**
+	 * Returns the elapsed time of the last raw seal in ms.
+	 * @return the elapsed time of the last raw seal in ms.
+	 */
+	@ManagedAttribute(description="The elapsed time of the last raw seal in ms.")
+	public long getLastSealTime() {
+		return raw==null ? 0 : raw.getLastSealTime();
+	}
+
+	/**
+	 * Returns the data directory
+	 * @return the data directory
+	 */
+	@ManagedAttribute(description="The directory the segments and dictionary are written to")
+	public String getDataDirectory() {
+		return dataDirectory.getAbsolutePath();
+	}
+
+	/**
+	 * Sets the data directory. Must be set before start.
+	 * @param dataDirectory the data directory
+	 */
+	public void setDataDirectory(String dataDirectory) {
+		this.dataDirectory = new File(dataDirectory);
+	}
+
+	/**
+	 * Returns the raw window size in ms.
+	 * @return the raw window size in ms.
+	 */
+	@ManagedAttribute(description="The size of a raw head block and segment window in ms.")
+	public long getWindowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * Sets the raw window size in ms. Must be set before start.
+	 * @param windowSize the raw window size in ms.
+	 */
+	public void setWindowSize(long windowSize) {
+		if(windowSize < 60000) throw new IllegalArgumentException("The window size must be at least one minute [" + windowSize + "]", new Throwable());
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * Returns the raw segment retention in ms.
+	 * @return the raw segment retention in ms.
+	 */
+	@ManagedAttribute(description="The raw segment retention in ms.")
+	public long getRetention() {
+		return retention;
+	}
+
+	/**
+	 * Sets the raw segment retention in ms.
+	 * @param retention the raw segment retention in ms.
+	 */
+	@ManagedAttribute(description="The raw segment retention in ms.")
+	public void setRetention(long retention) {
+		this.retention = retention;
+		if(raw!=null) raw.setRetention(retention);
+	}
+
+	/**
+	 * Returns the time a rolled head block, or an ended rollup bucket, accepts late points in ms.
+	 * @return the seal delay in ms.
+	 */
+	@ManagedAttribute(description="The time a rolled head block accepts late points in ms.")
+	public long getSealDelay() {
+		return sealDelay;
+	}
+
+	/**
+	 * Sets the time a rolled head block, or an ended rollup bucket, accepts late points in ms. Must be set before start.
+	 * @param sealDelay the seal delay in ms.
+	 */
+	public void setSealDelay(long sealDelay) {
+		this.sealDelay = sealDelay;
+	}
+
+	/**
+	 * Returns the maximum number of tracked series
+	 * @return the maximum number of tracked series
+	 */
+	@ManagedAttribute(description="The maximum number of tracked series")
+	public int getMaxSeries() {
+		return maxSeries;
+	}
+
+	/**
+	 * Sets the maximum number of tracked series
+	 * @param maxSeries the maximum number of tracked series
+	 */
+	@ManagedAttribute(description="The maximum number of tracked series")
+	public void setMaxSeries(int maxSeries) {
+		this.maxSeries = maxSeries;
+	}
+	
+	/**
+	 * Returns the rollup tier definitions
+	 * @return the rollup tier definitions
+	 */
+	@ManagedAttribute(description="The rollup tier definitions as comma separated resolution=retention pairs")
+	public String getRollups() {
+		return rollups;
+	}
+
+	/**
+	 * Sets the rollup tier definitions as comma separated <b><code>resolution=retention</code></b> pairs,
+	 * e.g. <b><code>1m=30d,5m=90d,1h=365d,1d=1825d</code></b>. An empty value disables rollups. Must be set before start.
+	 * @param rollups the rollup tier definitions
+	 */
+	public void setRollups(String rollups) {
+		this.rollups = rollups;
+	}
+
+	/**
+	 * Returns the target maximum number of points per series returned by a query with no step
+	 * @return the target maximum number of query points
+	 */
+	@ManagedAttribute(description="The target maximum number of points per series returned by a query with no step")
+	public int getMaxQueryPoints() {
+		return maxQueryPoints;
+	}
+
+	/**
+	 * Sets the target maximum number of points per series returned by a query with no step
+	 * @param maxQueryPoints the target maximum number of query points
+	 */
+	@ManagedAttribute(description="The target maximum number of points per series returned by a query with no step")
+	public void setMaxQueryPoints(int maxQueryPoints) {
+		this.maxQueryPoints = maxQueryPoints;
+	}
+	
+	/**
+	 * <p>Title: Series</p>
+	 * <p>Description: A registered series</p> 
+	 */
+	protected static class Series {
+		/** The stable series id */
+		protected final int id;
+		/** The metric FQN */
+		protected final String fqn;
+		
+		/**
+		 * Creates a new Series
+		 * @param id The stable series id
+		 * @param fqn The metric FQN
+		 */
+		protected Series(int id, String fqn) {
+			this.id = id;
+			this.fqn = fqn;
+		}
+	}
+	
+	/**
+	 * <p>Title: PointCollector</p>
+	 * <p>Description: Collects raw points within a time range, optionally averaging them into fixed steps.
+	 * Points must be visited in ascending timestamp order.</p> 
+	 */
+	protected static class PointCollector implements ChunkStore.ColumnVisitor {
+		/** The inclusive range start */
+		protected final long start;
+		/** The inclusive range end */
+		protected final long end;
+		/** The step size, zero or less for raw points */
+		protected final long step;
+		/** The collected timestamps */
+		protected long[] timestamps = new long[64];
+		/** The collected values */
+		protected double[] values = new double[64];
+		/** The number of collected points */
+		protected int size = 0;
+		/** The start of the current step bucket */
+		protected long bucket = Long.MIN_VALUE;
+		/** The sum of the current step bucket */
+		protected double sum = 0;
+		/** The point count of the current step bucket */
+		protected int count = 0;
+		
+		/**
+		 * Creates a new PointCollector
+		 * @param start The inclusive range start
+		 * @param end The inclusive range end
+		 * @param step The step size, zero or less for raw points
+		 */
+		protected PointCollector(long start, long end, long step) {
+			this.start = start;
+			this.end = end;
+			this.step = step;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see org.helios.server.ot.tsdb.ChunkStore.ColumnVisitor#point(long, double[])
+		 */
+		public boolean point(long timestamp, double[] values) {
+			double value = values[0];
+			if(timestamp < start) return true;
+			if(timestamp > end) return false;
+			if(step <= 0) {
+				add(timestamp, value);
+				return true;
+			}
+			long b = start + (((timestamp - start) / step) * step);
+			if(b!=bucket) {
+				if(count > 0) add(bucket, sum / count);
+				bucket = b;
+				sum = 0;
+				count = 0;
+			}
+			sum += value;
+			count++;
+			return true;
+		}
+		
+		/**
+		 * Adds a point to the result arrays
+		 * @param timestamp The timestamp
+		 * @param value The value
+		 */
+		protected void add(long timestamp, double value) {
+			if(size==timestamps.length) {
+				long[] t = new long[size * 2];
+				double[] v = new double[size * 2];
+				System.arraycopy(timestamps, 0, t, 0, size);
+				System.arraycopy(values, 0, v, 0, size);
+				timestamps = t;
+				values = v;
+			}
+			timestamps[size] = timestamp;
+			values[size] = value;
+			size++;
+		}
+		
+		/**
+		 * Returns the number of collected points, including a pending step bucket
+		 * @return the number of collected points
+		 */
+		protected int size() {
+			return size + (count > 0 ? 1 : 0);
+		}
+		
+		/**
+		 * Completes any pending step bucket and returns the collected points
+		 * @param fqn The metric FQN
+		 * @return the collected time series
+		 */
+		protected TimeSeries toTimeSeries(String fqn) {
+			if(count > 0) {
+				add(bucket, sum / count);
+				count = 0;
+			}
+			long[] t = new long[size];
+			double[] v = new double[size];
+			System.arraycopy(timestamps, 0, t, 0, size);
+			System.arraycopy(values, 0, v, 0, size);
+			return new TimeSeries(fqn, t, v);
+		}
+	}
+	
+	/**
+	 * <p>Title: RollupCollector</p>
+	 * <p>Description: Collects rollup tier buckets within a time range, optionally merging them into wider steps.
+	 * Buckets must be visited in ascending timestamp order.</p> 
+	 */
+	protected static class RollupCollector implements ChunkStore.ColumnVisitor {
+		/** The inclusive range start */
+		protected final long start;
+		/** The step size, zero or less for the tier's own buckets */
+		protected final long step;
+		/** The collected timestamps */
+		protected long[] timestamps = new long[64];
+		/** The collected minimums */
+		protected double[] mins = new double[64];
+		/** The collected maximums */
+		protected double[] maxes = new double[64];
+		/** The collected averages */
+		protected double[] avgs = new double[64];
+		/** The collected counts */
+		protected long[] counts = new long[64];
+		/** The number of collected buckets */
+		protected int size = 0;
+		/** The start of the current step */
+		protected long bucket = Long.MIN_VALUE;
+		/** The pending step minimum */
+		protected double min;
+		/** The pending step maximum */
+		protected double max;
+		/** The pending step sum of averages times their weights */
+		protected double weightedSum;
+		/** The pending step sum of weights */
+		protected long weight = 0;
+		/** The pending step count */
+		protected long count;
+		
+		/**
+		 * Creates a new RollupCollector
+		 * @param start The inclusive range start
+		 * @param step The step size, zero or less for the tier's own buckets
+		 */
+		protected RollupCollector(long start, long step) {
+			this.start = start;
+			this.step = step;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see org.helios.server.ot.tsdb.ChunkStore.ColumnVisitor#point(long, double[])
+		 */
+		public boolean point(long timestamp, double[] values) {
+			long c = (long)values[RollupTier.COUNT];
+			if(step <= 0) {
+				add(timestamp, values[RollupTier.MIN], values[RollupTier.MAX], values[RollupTier.AVG], c);
+				return true;
+			}
+			long b = start + (((timestamp - start) / step) * step);
+			if(b!=bucket) {
+				if(weight > 0) add(bucket, min, max, weightedSum / weight, count);
+				bucket = b;
+				min = Double.POSITIVE_INFINITY;
+				max = Double.NEGATIVE_INFINITY;
+				weightedSum = 0;
+				weight = 0;
+				count = 0;
+			}
+			long w = c > 0 ? c : 1;
+			if(values[RollupTier.MIN] < min) min = values[RollupTier.MIN];
+			if(values[RollupTier.MAX] > max) max = values[RollupTier.MAX];
+			weightedSum += values[RollupTier.AVG] * w;
+			weight += w;
+			count += c;
+			return true;
+		}
+		
+		/**
+		 * Adds a bucket to the result arrays
+		 * @param timestamp The bucket timestamp
+		 * @param bmin The bucket minimum
+		 * @param bmax The bucket maximum
+		 * @param bavg The bucket average
+		 * @param bcount The bucket count
+		 */
+		protected void add(long timestamp, double bmin, double bmax, double bavg, long bcount) {
+			if(size==timestamps.length) {
+				int capacity = size * 2;
+				long[] t = new long[capacity]; System.arraycopy(timestamps, 0, t, 0, size); timestamps = t;
+				double[] mi = new double[capacity]; System.arraycopy(mins, 0, mi, 0, size); mins = mi;
+				double[] mx = new double[capacity]; System.arraycopy(maxes, 0, mx, 0, size); maxes = mx;
+				double[] av = new double[capacity]; System.arraycopy(avgs, 0, av, 0, size); avgs = av;
+				long[] co = new long[capacity]; System.arraycopy(counts, 0, co, 0, size); counts = co;
+			}
+			timestamps[size] = timestamp;
+			mins[size] = bmin;
+			maxes[size] = bmax;
+			avgs[size] = bavg;
+			counts[size] = bcount;
+			size++;
+		}
+		
+		/**
+		 * Returns the number of collected buckets, including a pending step
+		 * @return the number of collected buckets
+		 */
+		protected int size() {
+			return size + (weight > 0 ? 1 : 0);
+		}
+		
+		/**
+		 * Completes any pending step and returns the collected buckets
+		 * @param fqn The metric FQN
+		 * @param tier The tier the buckets were read from
+		 * @return the collected rollup time series
+		 */
+		protected RollupTimeSeries toTimeSeries(String fqn, RollupTier tier) {
+			if(weight > 0) {
+				add(bucket, min, max, weightedSum / weight, count);
+				weight = 0;
+			}
+			long[] t = new long[size]; System.arraycopy(timestamps, 0, t, 0, size);
+			double[] mi = new double[size]; System.arraycopy(mins, 0, mi, 0, size);
+			double[] mx = new double[size]; System.arraycopy(maxes, 0, mx, 0, size);
+			double[] av = new double[size]; System.arraycopy(avgs, 0, av, 0, size);
+			long[] co = new long[size]; System.arraycopy(counts, 0, co, 0, size);
+			return new RollupTimeSeries(fqn, tier.getName(), step > 0 ? step : tier.getResolution(), t, mi, mx, av, co);
+		}
+	}
+}
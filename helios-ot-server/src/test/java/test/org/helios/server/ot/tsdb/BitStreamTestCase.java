@@ -0,0 +1,125 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.org.helios.server.ot.tsdb;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.helios.server.ot.tsdb.BitStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>Title: BitStreamTestCase</p>
+ * <p>Description: Test case to validate that bits written by a {@link BitStream} read back unchanged, including writes that span words.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>test.org.helios.server.ot.tsdb.BitStreamTestCase</code></p>
+ */
+
+public class BitStreamTestCase {
+	
+	/**
+	 * Writes single bits and checks the byte count and read back
+	 */
+	@Test
+	public void testSingleBits() {
+		BitStream bits = new BitStream(1);
+		boolean[] pattern = {true, false, true, true, false, false, true, false, true, true};
+		for(boolean bit: pattern) {
+			bits.writeBit(bit);
+		}
+		Assert.assertEquals("Bit count", pattern.length, bits.getBitCount());
+		Assert.assertEquals("Byte count", 2, bits.getByteCount());
+		BitStream.Reader reader = new BitStream.Reader(toBuffer(bits));
+		for(int i = 0; i < pattern.length; i++) {
+			Assert.assertEquals("Bit #" + i, pattern[i], reader.readBit());
+		}
+	}
+	
+	/**
+	 * Writes random width values, growing the stream from a single word, and checks they read back unchanged
+	 */
+	@Test
+	public void testRandomWidthRoundTrip() {
+		Random random = new Random(42);
+		int count = 5000;
+		long[] values = new long[count];
+		int[] widths = new int[count];
+		BitStream bits = new BitStream(1);
+		long expectedBits = 0;
+		for(int i = 0; i < count; i++) {
+			widths[i] = random.nextInt(65);
+			values[i] = widths[i]==64 ? random.nextLong() : random.nextLong() & ((1L << widths[i]) - 1);
+			bits.writeBits(values[i], widths[i]);
+			expectedBits += widths[i];
+		}
+		Assert.assertEquals("Bit count", expectedBits, bits.getBitCount());
+		BitStream.Reader reader = new BitStream.Reader(toBuffer(bits));
+		for(int i = 0; i < count; i++) {
+			Assert.assertEquals("Value #" + i + " of width " + widths[i], values[i], reader.readBits(widths[i]));
+		}
+	}
+	
+	/**
+	 * Checks that only the low order bits of a value are written
+	 */
+	@Test
+	public void testHighBitsMasked() {
+		BitStream bits = new BitStream(1);
+		bits.writeBits(-1L, 3);
+		bits.writeBits(0L, 5);
+		BitStream.Reader reader = new BitStream.Reader(toBuffer(bits));
+		Assert.assertEquals("Masked value", 7L, reader.readBits(3));
+		Assert.assertEquals("Following value", 0L, reader.readBits(5));
+	}
+	
+	/**
+	 * Checks that a reader starts at the buffer's position
+	 */
+	@Test
+	public void testReaderOffset() {
+		BitStream bits = new BitStream(1);
+		bits.writeBits(0xABCDL, 16);
+		ByteBuffer buffer = ByteBuffer.allocate(3 + bits.getByteCount());
+		buffer.put(new byte[]{1, 2, 3});
+		bits.writeTo(buffer);
+		buffer.position(3);
+		Assert.assertEquals("Offset value", 0xABCDL, new BitStream.Reader(buffer).readBits(16));
+	}
+	
+	/**
+	 * Writes the stream into a new buffer positioned at zero
+	 * @param bits The stream to write
+	 * @return the buffer
+	 */
+	protected static ByteBuffer toBuffer(BitStream bits) {
+		ByteBuffer buffer = ByteBuffer.allocate(bits.getByteCount());
+		bits.writeTo(buffer);
+		buffer.flip();
+		return buffer;
+	}
+}
@@ -0,0 +1,166 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.org.helios.server.ot.tsdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.helios.server.ot.tsdb.ChunkStore;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>Title: ChunkStoreTestCase</p>
+ * <p>Description: Test case to validate that a {@link ChunkStore} window partially sealed before a restart is read from both
+ * its segment and its live head block, and is merged when sealed again.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>test.org.helios.server.ot.tsdb.ChunkStoreTestCase</code></p>
+ */
+
+public class ChunkStoreTestCase {
+	/** The window size used by the tests, large enough that the current window does not roll during a test */
+	public static final long WINDOW_SIZE = 365 * 24 * 60 * 60 * 1000L;
+	/** The series id used by the tests */
+	public static final int SERIES = 7;
+	/** The segment directory for the current test */
+	protected File directory = null;
+	/** The start of the current window */
+	protected long windowStart = 0L;
+	
+	/**
+	 * Creates an empty segment directory
+	 */
+	@Before
+	public void setUp() {
+		directory = new File(System.getProperty("java.io.tmpdir"), "helios-chunkstore-test-" + System.nanoTime());
+		long now = System.currentTimeMillis();
+		windowStart = now - (now % WINDOW_SIZE);
+	}
+	
+	/**
+	 * Deletes the segment directory
+	 */
+	@After
+	public void tearDown() {
+		File[] files = directory.listFiles();
+		if(files!=null) {
+			for(File f: files) f.delete();
+		}
+		directory.delete();
+	}
+	
+	/**
+	 * Seals part of the current window, restarts the store, appends more points to the same window and checks they are all read in order
+	 * @throws IOException
+	 */
+	@Test
+	public void testSealedWindowMergedWithHead() throws IOException {
+		ChunkStore store = newStore();
+		append(store, 0, 2, 4, 6);
+		store.close();
+		Assert.assertEquals("Sealed segments", 1, store.getSealedSegments());
+		
+		store = newStore();
+		Assert.assertEquals("Mapped segments", 1, store.getSegmentCount());
+		append(store, 1, 5, 8, 9);
+		Assert.assertEquals("Merged read", points(0, 1, 2, 4, 5, 6, 8, 9), read(store));
+		store.close();
+		
+		store = newStore();
+		Assert.assertEquals("Mapped segments", 1, store.getSegmentCount());
+		Assert.assertEquals("Read after merged seal", points(0, 1, 2, 4, 5, 6, 8, 9), read(store));
+		store.close();
+	}
+	
+	/**
+	 * Checks that a sealed head is not read twice once its segment is published
+	 * @throws IOException
+	 */
+	@Test
+	public void testNoDuplicatesAfterSeal() throws IOException {
+		ChunkStore store = newStore();
+		append(store, 3, 4);
+		Assert.assertEquals("Head read", points(3, 4), read(store));
+		store.close();
+		Assert.assertEquals("Read after seal", points(3, 4), read(store));
+	}
+	
+	/**
+	 * Creates and opens a new store on the test directory
+	 * @return the opened store
+	 * @throws IOException
+	 */
+	protected ChunkStore newStore() throws IOException {
+		ChunkStore store = new ChunkStore("test", directory, 2, WINDOW_SIZE, WINDOW_SIZE * 10, 60000L);
+		store.open();
+		return store;
+	}
+	
+	/**
+	 * Appends points at the passed offsets from the window start, with the offset as the first column and its square as the second
+	 * @param store The store to append to
+	 * @param offsets The point offsets in ms.
+	 */
+	protected void append(ChunkStore store, long... offsets) {
+		for(long offset: offsets) {
+			Assert.assertTrue("Appended offset " + offset, store.append(SERIES, windowStart + offset, offset, offset * offset));
+		}
+	}
+	
+	/**
+	 * Reads every point of the test series as <b><code>offset:value:value</code></b> strings
+	 * @param store The store to read from
+	 * @return the read points
+	 */
+	protected List<String> read(ChunkStore store) {
+		final List<String> points = new ArrayList<String>();
+		store.read(SERIES, windowStart, windowStart + WINDOW_SIZE - 1, new ChunkStore.ColumnVisitor() {
+			public boolean point(long timestamp, double[] values) {
+				points.add((timestamp - windowStart) + ":" + (long)values[0] + ":" + (long)values[1]);
+				return true;
+			}
+		});
+		return points;
+	}
+	
+	/**
+	 * Builds the expected points for the passed offsets
+	 * @param offsets The point offsets
+	 * @return the expected <b><code>offset:value:value</code></b> strings
+	 */
+	protected static List<String> points(long... offsets) {
+		List<String> points = new ArrayList<String>();
+		for(long offset: offsets) {
+			points.add(offset + ":" + offset + ":" + (offset * offset));
+		}
+		return points;
+	}
+}
@@ -0,0 +1,131 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.org.helios.server.ot.tsdb;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.helios.server.ot.tsdb.GorillaChunk;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>Title: GorillaChunkTestCase</p>
+ * <p>Description: Test case to validate that points appended to a {@link GorillaChunk} decode unchanged from its serialized form.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>test.org.helios.server.ot.tsdb.GorillaChunkTestCase</code></p>
+ */
+
+public class GorillaChunkTestCase {
+	
+	/**
+	 * Round trips points with every delta-of-delta bucket and a mix of repeated, close and unrelated values
+	 */
+	@Test
+	public void testRoundTrip() {
+		Random random = new Random(7);
+		int count = 2000;
+		long[] timestamps = new long[count];
+		double[] values = new double[count];
+		long ts = 1300000000000L;
+		long[] jitters = {0, 0, 15, -40, 200, -250, 1500, -2000, 100000, 5000000};
+		GorillaChunk chunk = new GorillaChunk();
+		for(int i = 0; i < count; i++) {
+			ts += 15000 + Math.max(-15000, jitters[random.nextInt(jitters.length)]);
+			timestamps[i] = ts;
+			switch(i % 4) {
+				case 0: values[i] = i > 0 ? values[i-1] : 1.5; break;
+				case 1: values[i] = values[i-1] + 0.25; break;
+				case 2: values[i] = random.nextDouble() * 1000000; break;
+				default: values[i] = -random.nextInt(100);
+			}
+			Assert.assertTrue("Appended point #" + i, chunk.append(timestamps[i], values[i]));
+		}
+		Assert.assertEquals("Count", count, chunk.getCount());
+		Assert.assertEquals("First timestamp", timestamps[0], chunk.getFirstTimestamp());
+		Assert.assertEquals("Last timestamp", timestamps[count-1], chunk.getLastTimestamp());
+		byte[] bytes = chunk.toBytes();
+		Assert.assertEquals("Serialized size", chunk.getSerializedSize(), bytes.length);
+		GorillaChunk.Decoder decoder = new GorillaChunk.Decoder(ByteBuffer.wrap(bytes));
+		Assert.assertEquals("Decoded count", count, decoder.getCount());
+		Assert.assertEquals("Decoded size", bytes.length, decoder.getSerializedSize());
+		for(int i = 0; i < count; i++) {
+			Assert.assertTrue("Has point #" + i, decoder.next());
+			Assert.assertEquals("Timestamp #" + i, timestamps[i], decoder.getTimestamp());
+			Assert.assertEquals("Value #" + i, Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(decoder.getValue()));
+		}
+		Assert.assertFalse("Exhausted", decoder.next());
+	}
+	
+	/**
+	 * Checks that out of order points are rejected and equal timestamps accepted
+	 */
+	@Test
+	public void testOutOfOrder() {
+		GorillaChunk chunk = new GorillaChunk();
+		Assert.assertTrue(chunk.append(1000L, 1));
+		Assert.assertTrue(chunk.append(2000L, 2));
+		Assert.assertFalse("Out of order point", chunk.append(1500L, 3));
+		Assert.assertTrue("Equal timestamp", chunk.append(2000L, 4));
+		Assert.assertEquals("Count", 3, chunk.getCount());
+	}
+	
+	/**
+	 * Checks that decoding from a buffer position visits the points, honours an early stop and leaves the position unchanged
+	 */
+	@Test
+	public void testDecodeVisitor() {
+		GorillaChunk chunk = new GorillaChunk();
+		for(int i = 0; i < 10; i++) {
+			chunk.append(i * 1000L, i);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(5 + chunk.getSerializedSize());
+		buffer.position(5);
+		chunk.writeTo(buffer);
+		buffer.position(5);
+		final double[] sum = new double[1];
+		int decoded = GorillaChunk.decode(buffer, new GorillaChunk.PointVisitor() {
+			public boolean point(long timestamp, double value) {
+				sum[0] += value;
+				return value < 4;
+			}
+		});
+		Assert.assertEquals("Decoded count", 5, decoded);
+		Assert.assertEquals("Visited sum", 10D, sum[0], 0D);
+		Assert.assertEquals("Buffer position", 5, buffer.position());
+	}
+	
+	/**
+	 * Checks that an empty chunk round trips
+	 */
+	@Test
+	public void testEmpty() {
+		GorillaChunk.Decoder decoder = new GorillaChunk.Decoder(ByteBuffer.wrap(new GorillaChunk().toBytes()));
+		Assert.assertEquals("Count", 0, decoder.getCount());
+		Assert.assertFalse("No points", decoder.next());
+	}
+}
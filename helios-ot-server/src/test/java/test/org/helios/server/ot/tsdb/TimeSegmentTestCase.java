@@ -0,0 +1,158 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.org.helios.server.ot.tsdb;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.helios.server.ot.tsdb.GorillaChunk;
+import org.helios.server.ot.tsdb.TimeSegment;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>Title: TimeSegmentTestCase</p>
+ * <p>Description: Test case to validate writing, replacing and reopening {@link TimeSegment} files.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>test.org.helios.server.ot.tsdb.TimeSegmentTestCase</code></p>
+ */
+
+public class TimeSegmentTestCase {
+	/** The segment directory for the current test */
+	protected File directory = null;
+	
+	/**
+	 * Creates an empty segment directory
+	 */
+	@Before
+	public void setUp() {
+		directory = new File(System.getProperty("java.io.tmpdir"), "helios-tsdb-test-" + System.nanoTime());
+		Assert.assertTrue("Created directory", directory.mkdirs());
+	}
+	
+	/**
+	 * Deletes the segment directory
+	 */
+	@After
+	public void tearDown() {
+		File[] files = directory.listFiles();
+		if(files!=null) {
+			for(File f: files) f.delete();
+		}
+		directory.delete();
+	}
+	
+	/**
+	 * Writes a segment and reads every series' chunk back from the mapped file
+	 * @throws IOException
+	 */
+	@Test
+	public void testWriteAndOpen() throws IOException {
+		SortedMap<Integer, byte[]> chunks = new TreeMap<Integer, byte[]>();
+		for(int id = 1; id <= 50; id += 3) {
+			chunks.put(id, chunk(id, 20));
+		}
+		File file = TimeSegment.write(directory, 0L, 60000L, chunks);
+		Assert.assertEquals("File name", TimeSegment.fileName(0L), file.getName());
+		Assert.assertFalse("Temp file removed", new File(directory, file.getName() + ".tmp").exists());
+		TimeSegment segment = new TimeSegment(file);
+		Assert.assertEquals("Window start", 0L, segment.getWindowStart());
+		Assert.assertEquals("Window end", 60000L, segment.getWindowEnd());
+		Assert.assertEquals("Entry count", chunks.size(), segment.getEntryCount());
+		Assert.assertTrue("Overlaps", segment.overlaps(59999L, 70000L));
+		Assert.assertFalse("Does not overlap", segment.overlaps(60000L, 70000L));
+		int i = 0;
+		for(Integer id: chunks.keySet()) {
+			Assert.assertEquals("Series id #" + i, id.intValue(), segment.getSeriesIds()[i++]);
+			ByteBuffer chunk = segment.getChunk(id);
+			Assert.assertNotNull("Chunk for series " + id, chunk);
+			byte[] read = new byte[chunk.remaining()];
+			chunk.get(read);
+			Assert.assertArrayEquals("Chunk bytes for series " + id, chunks.get(id), read);
+			GorillaChunk.Decoder decoder = new GorillaChunk.Decoder(segment.getChunk(id));
+			Assert.assertTrue(decoder.next());
+			Assert.assertEquals("First value for series " + id, id.doubleValue(), decoder.getValue(), 0D);
+		}
+		Assert.assertNull("Missing series", segment.getChunk(2));
+		Assert.assertNull("Missing series past the end", segment.getChunk(1000));
+	}
+	
+	/**
+	 * Rewrites an existing segment and checks the new content replaces the old one
+	 * @throws IOException
+	 */
+	@Test
+	public void testReplaceExisting() throws IOException {
+		SortedMap<Integer, byte[]> first = new TreeMap<Integer, byte[]>();
+		first.put(1, chunk(1, 5));
+		TimeSegment.write(directory, 60000L, 120000L, first);
+		SortedMap<Integer, byte[]> second = new TreeMap<Integer, byte[]>();
+		second.put(1, chunk(1, 10));
+		second.put(2, chunk(2, 10));
+		File file = TimeSegment.write(directory, 60000L, 120000L, second);
+		TimeSegment segment = new TimeSegment(file);
+		Assert.assertEquals("Entry count", 2, segment.getEntryCount());
+		Assert.assertEquals("Replaced point count", 10, new GorillaChunk.Decoder(segment.getChunk(1)).getCount());
+		Assert.assertEquals("Segment files", 1, directory.listFiles().length);
+	}
+	
+	/**
+	 * Checks that a file that is not a segment, such as a stale partial write, is rejected on open
+	 * @throws IOException
+	 */
+	@Test(expected=IOException.class)
+	public void testRejectInvalidFile() throws IOException {
+		File file = new File(directory, TimeSegment.fileName(0L));
+		FileOutputStream fos = new FileOutputStream(file);
+		try {
+			fos.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+		} finally {
+			fos.close();
+		}
+		new TimeSegment(file);
+	}
+	
+	/**
+	 * Creates a serialized chunk
+	 * @param seriesId The series id, used as the first value
+	 * @param points The number of points
+	 * @return the serialized chunk
+	 */
+	protected static byte[] chunk(int seriesId, int points) {
+		GorillaChunk chunk = new GorillaChunk();
+		for(int i = 0; i < points; i++) {
+			chunk.append(i * 1000L, seriesId + i);
+		}
+		return chunk.toBytes();
+	}
+}
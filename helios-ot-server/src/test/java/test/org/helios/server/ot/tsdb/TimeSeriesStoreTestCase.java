@@ -0,0 +1,188 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.org.helios.server.ot.tsdb;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.helios.server.ot.tsdb.TimeSeriesStore;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>Title: TimeSeriesStoreTestCase</p>
+ * <p>Description: Test case to validate that the {@link TimeSeriesStore} series dictionary survives a restart and recovers from a truncated final entry.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>test.org.helios.server.ot.tsdb.TimeSeriesStoreTestCase</code></p>
+ */
+
+public class TimeSeriesStoreTestCase {
+	/** The data directory for the current test */
+	protected File directory = null;
+	/** The store for the current test */
+	protected TestStore store = null;
+	
+	/**
+	 * <p>Title: TestStore</p>
+	 * <p>Description: Exposes series registration</p> 
+	 */
+	protected static class TestStore extends TimeSeriesStore {
+		/**
+		 * Registers the passed series
+		 * @param fqn The metric FQN
+		 * @return true if the series is registered
+		 */
+		public boolean register(String fqn) {
+			return getSeries(fqn)!=null;
+		}
+	}
+	
+	/**
+	 * Creates an empty data directory
+	 */
+	@Before
+	public void setUp() {
+		directory = new File(System.getProperty("java.io.tmpdir"), "helios-tsdb-dict-test-" + System.nanoTime());
+		Assert.assertTrue("Created directory", directory.mkdirs());
+	}
+	
+	/**
+	 * Stops the store and deletes the data directory
+	 */
+	@After
+	public void tearDown() {
+		if(store!=null) store.stop();
+		delete(directory);
+	}
+	
+	/**
+	 * Registers series, restarts the store and checks they are reloaded with the same ids
+	 * @throws IOException
+	 */
+	@Test
+	public void testDictionaryRoundTrip() throws IOException {
+		startStore();
+		Assert.assertTrue(store.register("host/agent/cpu"));
+		Assert.assertTrue(store.register("host/agent/mem"));
+		Assert.assertTrue("Existing series", store.register("host/agent/cpu"));
+		Assert.assertEquals("Series count", 2, store.getSeriesCount());
+		store.stop();
+		startStore();
+		Assert.assertEquals("Reloaded series count", 2, store.getSeriesCount());
+		Assert.assertTrue(store.register("host/agent/disk\u00e9"));
+		store.stop();
+		store = null;
+		Assert.assertEquals("Dictionary entries", Arrays.asList("1=host/agent/cpu", "2=host/agent/mem", "3=host/agent/disk\u00e9"), readDictionary());
+	}
+	
+	/**
+	 * Writes a dictionary ending in a partial entry and checks it is truncated on start so new entries are readable
+	 * @throws IOException
+	 */
+	@Test
+	public void testTruncatedDictionaryRecovery() throws IOException {
+		File file = new File(directory, TimeSeriesStore.DICTIONARY_FILE);
+		DataOutputStream dos = new DataOutputStream(new FileOutputStream(file));
+		try {
+			dos.writeInt(1);
+			dos.writeUTF("host/agent/cpu");
+			dos.writeInt(2);
+			dos.writeUTF("host/agent/mem\u00e9");
+		} finally {
+			dos.close();
+		}
+		long goodLength = file.length();
+		dos = new DataOutputStream(new FileOutputStream(file, true));
+		try {
+			dos.writeInt(3);
+			dos.writeShort(20);
+			dos.write(new byte[]{'h', 'o', 's'});
+		} finally {
+			dos.close();
+		}
+		startStore();
+		Assert.assertEquals("Recovered series count", 2, store.getSeriesCount());
+		Assert.assertEquals("Truncated length", goodLength, file.length());
+		Assert.assertTrue(store.register("host/agent/disk"));
+		store.stop();
+		store = null;
+		Assert.assertEquals("Dictionary entries", Arrays.asList("1=host/agent/cpu", "2=host/agent/mem\u00e9", "3=host/agent/disk"), readDictionary());
+	}
+	
+	/**
+	 * Starts a new store on the test data directory with no rollup tiers
+	 * @throws IOException
+	 */
+	protected void startStore() throws IOException {
+		store = new TestStore();
+		store.setDataDirectory(directory.getAbsolutePath());
+		store.setRollups("");
+		store.start();
+	}
+	
+	/**
+	 * Reads the raw dictionary entries
+	 * @return a list of <b><code>id=fqn</code></b> entries
+	 * @throws IOException
+	 */
+	protected List<String> readDictionary() throws IOException {
+		List<String> entries = new ArrayList<String>();
+		DataInputStream dis = new DataInputStream(new FileInputStream(new File(directory, TimeSeriesStore.DICTIONARY_FILE)));
+		try {
+			while(true) {
+				int id = dis.readInt();
+				entries.add(id + "=" + dis.readUTF());
+			}
+		} catch (EOFException eof) {
+			return entries;
+		} finally {
+			dis.close();
+		}
+	}
+	
+	/**
+	 * Recursively deletes a file or directory
+	 * @param file The file to delete
+	 */
+	protected static void delete(File file) {
+		File[] files = file.listFiles();
+		if(files!=null) {
+			for(File f: files) delete(f);
+		}
+		file.delete();
+	}
+}
@@ -81,6 +81,8 @@ public class Configuration {
 	public static final String CONFIG_RECEIVE_BUFFER = CONNECTION_PREFIX + "receiveBufferSize";
 	/** System props and environment config name for socket send buffer size */
 	public static final String CONFIG_SEND_BUFFER = CONNECTION_PREFIX + "sendBufferSize";
+	/** System props and environment config name for offering the binary trace codec to the server */
+	public static final String CONFIG_BINARY_CODEC = CONNECTION_PREFIX + "binaryCodec";
 	
 
 	
@@ -42,6 +42,7 @@ import org.helios.ot.agent.AbstractHeliosOTClientImpl;
 import org.helios.ot.agent.Configuration;
 import org.helios.ot.agent.HeliosOTClient;
 import org.helios.ot.agent.HeliosOTClientEventListener;
+import org.helios.ot.agent.impl.netty.codec.HeliosProtocolEncoder;
 import org.helios.ot.agent.impl.netty.handler.HeliosProtocolHandler;
 import org.helios.ot.agent.impl.netty.handler.listeners.ConnectionOpenedEventListener;
 import org.helios.ot.agent.impl.netty.handler.listeners.ConnectionResponseListener;
@@ -113,6 +114,8 @@ public abstract class AbstractNettyHeliosOTClient extends AbstractHeliosOTClient
 	protected SynchronousInvocationListener synchronousInvocationListener;
 	/** The logging channel handler for enabling debug of the events occuring in the pipeline */
 	protected WrappedLoggingHandler loggingHandler; 
+	/** Indicates if the binary trace codec is offered to the server */
+	protected boolean binaryCodec = DEFAULT_BINARY_CODEC;
 	/** The instrumentation */
 	protected final ConnectorChannelInstrumentation instrumentation = new ConnectorChannelInstrumentation();
 	/** The channel close listener */
@@ -176,6 +179,11 @@ public abstract class AbstractNettyHeliosOTClient extends AbstractHeliosOTClient
 	/** The default receive buffer size */
 	public static final int DEFAULT_RECEIVE_BUFFER = 8192;
 	
+	/** The configuration name for offering the binary trace codec to the server */
+	public static final String CONFIG_BINARY_CODEC = "binaryCodec";
+	/** The default binary trace codec option */
+	public static final boolean DEFAULT_BINARY_CODEC = true;
+	
 	/** The configuration name for the send buffer size */
 	public static final String CONFIG_SEND_BUFFER = "sendBufferSize";
 	/** The default send buffer size */
@@ -240,6 +248,7 @@ public abstract class AbstractNettyHeliosOTClient extends AbstractHeliosOTClient
 		bootstrapOptions.put(CONFIG_TRAFFIC_CLASS, Configuration.getIntConfigurationOption(CONFIG_TRAFFIC_CLASS, Configuration.CONFIG_TRAFFIC_CLASS,  DEFAULT_TRAFFIC_CLASS, uriParameters));
 		bootstrapOptions.put(CONFIG_RECEIVE_BUFFER, Configuration.getLongConfigurationOption(CONFIG_RECEIVE_BUFFER, Configuration.CONFIG_RECEIVE_BUFFER,  DEFAULT_RECEIVE_BUFFER, uriParameters));
 		bootstrapOptions.put(CONFIG_SEND_BUFFER, Configuration.getLongConfigurationOption(CONFIG_SEND_BUFFER, Configuration.CONFIG_SEND_BUFFER,  DEFAULT_SEND_BUFFER, uriParameters));
+		binaryCodec = Configuration.getBooleanConfigurationOption(CONFIG_BINARY_CODEC, Configuration.CONFIG_BINARY_CODEC,  DEFAULT_BINARY_CODEC, uriParameters);
 		synchronousInvocationListener = new SynchronousInvocationListener(operationTimeout);
 		protocolHandler.addResponseListener(synchronousInvocationListener);
 		protocolHandler.addRequestListener(synchronousInvocationListener);
@@ -363,6 +372,28 @@ public abstract class AbstractNettyHeliosOTClient extends AbstractHeliosOTClient
 		return Collections.unmodifiableMap(map);
 	}
 	
+	/**
+	 * Indicates if trace submissions on the current connection are binary encoded
+	 * @return true if trace submissions are binary encoded, false if they are object serialized
+	 */
+	@JMXAttribute(name="BinaryCodecEnabled", description="Indicates if trace submissions on the current connection are binary encoded", mutability=AttributeMutabilityOption.READ_ONLY)
+	public boolean isBinaryCodecEnabled() {
+		if(pipeline==null) return false;
+		HeliosProtocolEncoder encoder = pipeline.get(HeliosProtocolEncoder.class);
+		return encoder!=null && encoder.isBinaryEnabled();
+	}
+	
+	/**
+	 * Returns the number of bytes sent in binary encoded trace frames on the current connection
+	 * @return the number of bytes sent in binary encoded trace frames
+	 */
+	@JMXAttribute(name="BinaryCodecBytes", description="The number of bytes sent in binary encoded trace frames on the current connection", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getBinaryCodecBytes() {
+		if(pipeline==null) return 0L;
+		HeliosProtocolEncoder encoder = pipeline.get(HeliosProtocolEncoder.class);
+		return encoder==null ? 0L : encoder.getBinaryBytes();
+	}
+	
 //	/**
 //	 * Indicates if the logging handler is enabled anywhere in the pipeline
 //	 * @return true if the logging handler is enabled anywhere in the pipeline, false otherwise
@@ -0,0 +1,180 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.ot.agent.impl.netty.codec;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.helios.ot.agent.protocol.impl.ClientProtocolOperation;
+import org.helios.ot.agent.protocol.impl.HeliosProtocolInvocation;
+import org.helios.ot.trace.Trace;
+import org.helios.ot.trace.TraceWireCodec;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.serialization.ObjectEncoder;
+
+/**
+ * <p>Title: HeliosProtocolEncoder</p>
+ * <p>Description: Helios protocol encoder which writes trace submissions in the compact {@link TraceWireCodec} format once the server
+ * has accepted the binary codec in the connect handshake. All other invocations, and all trace submissions to servers that did not accept
+ * the binary codec, are written as serialized objects by the standard {@link ObjectEncoder}.</p>
+ * <p>A binary frame is the {@link #BINARY_FRAME_MAGIC} byte, a 4 byte length of the rest of the frame, the op code byte, the varint request id
+ * and the encoded traces. Object frames start with a 4 byte length whose first byte is always zero, so a decoder can tell the two apart from the
+ * first byte. An encoder instance holds the metric dictionary for one connection and must not be shared between pipelines.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.ot.agent.impl.netty.codec.HeliosProtocolEncoder</code></p>
+ */
+
+public class HeliosProtocolEncoder extends ObjectEncoder {
+	/** The trace codec for this connection */
+	protected final TraceWireCodec codec = new TraceWireCodec();
+	/** Indicates if the binary codec is offered to the server in the connect handshake */
+	protected final boolean binaryOffered;
+	/** Indicates if the server accepted the binary codec */
+	protected volatile boolean binaryEnabled = false;
+	/** The number of binary encoded trace frames */
+	protected final AtomicLong binaryFrames = new AtomicLong(0L);
+	/** The number of bytes written in binary encoded trace frames */
+	protected final AtomicLong binaryBytes = new AtomicLong(0L);
+
+	/** The first byte of a binary frame */
+	public static final int BINARY_FRAME_MAGIC = 0xB7;
+	/** The binary frame header size in bytes, up to and including the frame length */
+	public static final int BINARY_FRAME_HEADER = 5;
+	/** The codec capability offered by the agent in the connect handshake and echoed back by a server that accepts it */
+	public static final String BINARY_CODEC_CAPABILITY = "codec:binary/1";
+
+	/**
+	 * Creates a new HeliosProtocolEncoder
+	 * @param binaryOffered true if the binary codec should be offered to the server
+	 */
+	public HeliosProtocolEncoder(boolean binaryOffered) {
+		this.binaryOffered = binaryOffered;
+	}
+
+	/**
+	 * Synchronized so that frames are written to the channel in the order they are encoded, since the codec dictionary depends on it.
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.handler.codec.oneone.OneToOneEncoder#handleDownstream(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelEvent)
+	 */
+	@Override
+	public synchronized void handleDownstream(ChannelHandlerContext ctx, ChannelEvent evt) throws Exception {
+		super.handleDownstream(ctx, evt);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.handler.codec.serialization.ObjectEncoder#encode(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.Channel, java.lang.Object)
+	 */
+	@Override
+	protected Object encode(ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
+		if(binaryEnabled && msg instanceof HeliosProtocolInvocation) {
+			HeliosProtocolInvocation hpi = (HeliosProtocolInvocation)msg;
+			if(hpi.getOp()==ClientProtocolOperation.TRACE.getOperationCode() && hpi.getPayload() instanceof Trace[]) {
+				return encodeTraces(hpi.getOp(), hpi.getRequestId(), (Trace[])hpi.getPayload());
+			}
+		}
+		return super.encode(ctx, channel, msg);
+	}
+
+	/**
+	 * Encodes a trace submission into a binary frame
+	 * @param op The op code
+	 * @param requestId The request id
+	 * @param traces The traces to encode
+	 * @return the encoded frame
+	 * @throws Exception thrown on any error encoding the traces
+	 */
+	protected ChannelBuffer encodeTraces(int op, long requestId, Trace[] traces) throws Exception {
+		ChannelBufferOutputStream out = new ChannelBufferOutputStream(ChannelBuffers.dynamicBuffer(traces.length * 16 + 16));
+		ChannelBuffer buffer = out.buffer();
+		buffer.writeByte(BINARY_FRAME_MAGIC);
+		buffer.writeInt(0);
+		out.writeByte(op);
+		TraceWireCodec.writeVarLong(out, requestId);
+		codec.encode(traces, out);
+		buffer.setInt(1, buffer.writerIndex() - BINARY_FRAME_HEADER);
+		binaryFrames.incrementAndGet();
+		binaryBytes.addAndGet(buffer.readableBytes());
+		return buffer;
+	}
+
+	/**
+	 * Indicates if the binary codec is offered to the server in the connect handshake
+	 * @return true if the binary codec is offered
+	 */
+	public boolean isBinaryOffered() {
+		return binaryOffered;
+	}
+
+	/**
+	 * Indicates if trace submissions are being binary encoded
+	 * @return true if trace submissions are being binary encoded
+	 */
+	public boolean isBinaryEnabled() {
+		return binaryEnabled;
+	}
+
+	/**
+	 * Enables binary encoding of trace submissions if it was offered
+	 * @param capability The capability returned by the server in the connect handshake
+	 * @return true if binary encoding was enabled
+	 */
+	public boolean acceptCapability(String capability) {
+		if(binaryOffered && BINARY_CODEC_CAPABILITY.equals(capability)) {
+			binaryEnabled = true;
+		}
+		return binaryEnabled;
+	}
+
+	/**
+	 * Returns the number of binary encoded trace frames
+	 * @return the number of binary encoded trace frames
+	 */
+	public long getBinaryFrames() {
+		return binaryFrames.get();
+	}
+
+	/**
+	 * Returns the number of bytes written in binary encoded trace frames
+	 * @return the number of bytes written in binary encoded trace frames
+	 */
+	public long getBinaryBytes() {
+		return binaryBytes.get();
+	}
+
+	/**
+	 * Returns the number of metrics in this connection's dictionary
+	 * @return the number of metrics in this connection's dictionary
+	 */
+	public int getDictionarySize() {
+		return codec.getEncodeDictionarySize();
+	}
+}
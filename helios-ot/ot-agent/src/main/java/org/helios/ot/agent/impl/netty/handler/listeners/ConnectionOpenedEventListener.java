@@ -25,6 +25,7 @@
 package org.helios.ot.agent.impl.netty.handler.listeners;
 
 import org.apache.log4j.Logger;
+import org.helios.ot.agent.impl.netty.codec.HeliosProtocolEncoder;
 import org.helios.ot.agent.impl.netty.handler.FilteringChannelStateChangeListener;
 import org.helios.ot.agent.protocol.impl.ClientProtocolOperation;
 import org.helios.ot.agent.protocol.impl.HeliosProtocolInvocation;
@@ -59,7 +60,7 @@ public class ConnectionOpenedEventListener implements FilteringChannelStateChang
 		e.getFuture().addListener(new ChannelFutureListener(){
 			public void operationComplete(ChannelFuture future) throws Exception {
 				if(future.isDone() && future.isSuccess()) {
-					ctx.sendDownstream(new DownstreamMessageEvent(ctx.getChannel(), Channels.future(channel), HeliosProtocolInvocation.newInstance(ClientProtocolOperation.CONNECT, new String[]{MetricId.getHostname(), MetricId.getApplicationId()}), channel.getRemoteAddress()));
+					ctx.sendDownstream(new DownstreamMessageEvent(ctx.getChannel(), Channels.future(channel), HeliosProtocolInvocation.newInstance(ClientProtocolOperation.CONNECT, getAgentId(ctx)), channel.getRemoteAddress()));
 				} 
 			}
 		});
@@ -81,6 +82,20 @@ public class ConnectionOpenedEventListener implements FilteringChannelStateChang
 		//channel.write(HeliosProtocolInvocation.newInstance(ClientProtocolOperation.CONNECT, new String[]{MetricId.getHostname(), MetricId.getApplicationId()}));
 	}
 
+	/**
+	 * Builds the connect handshake payload. The host and agent names are followed by the binary codec capability
+	 * if the pipeline's encoder offers it. Servers that do not support it ignore the extra element.
+	 * @param ctx The channel handler context
+	 * @return the connect handshake payload
+	 */
+	protected String[] getAgentId(ChannelHandlerContext ctx) {
+		HeliosProtocolEncoder encoder = ctx.getPipeline().get(HeliosProtocolEncoder.class);
+		if(encoder!=null && encoder.isBinaryOffered()) {
+			return new String[]{MetricId.getHostname(), MetricId.getApplicationId(), HeliosProtocolEncoder.BINARY_CODEC_CAPABILITY};
+		}
+		return new String[]{MetricId.getHostname(), MetricId.getApplicationId()};
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * @see org.helios.ot.agent.impl.netty.handler.FilteringChannelStateChangeListener#isStateChangeEnabled(boolean, org.jboss.netty.channel.ChannelState)
@@ -27,6 +27,7 @@ package org.helios.ot.agent.impl.netty.handler.listeners;
 import org.apache.log4j.Logger;
 import org.helios.helpers.Banner;
 import org.helios.ot.agent.AbstractHeliosOTClientImpl;
+import org.helios.ot.agent.impl.netty.codec.HeliosProtocolEncoder;
 import org.helios.ot.agent.impl.netty.handler.FilteringInvocationResponseListener;
 import org.helios.ot.agent.protocol.impl.ClientProtocolOperation;
 import org.helios.ot.agent.protocol.impl.HeliosProtocolResponse;
@@ -61,8 +62,21 @@ public class ConnectionResponseListener implements FilteringInvocationResponseLi
 	 */
 	@Override
 	public void onInvocationResponse(HeliosProtocolResponse response, ChannelHandlerContext ctx, MessageEvent message) {
-		String sessionId = (String)response.getPayload();		
-		log.info(Banner.banner("*", 2, 6, "Connection Handshake Repsonse", "Session ID:" + sessionId));
+		Object payload = response.getPayload();
+		String sessionId;
+		String codec = "object";
+		if(payload instanceof String[]) {
+			// {sessionId, accepted capability} from servers that support the binary codec
+			String[] handshake = (String[])payload;
+			sessionId = handshake[0];
+			HeliosProtocolEncoder encoder = ctx.getPipeline().get(HeliosProtocolEncoder.class);
+			if(handshake.length>1 && encoder!=null && encoder.acceptCapability(handshake[1])) {
+				codec = handshake[1];
+			}
+		} else {
+			sessionId = (String)payload;
+		}
+		log.info(Banner.banner("*", 2, 6, "Connection Handshake Repsonse", "Session ID:" + sessionId, "Codec:" + codec));
 		theClient.postConnectHandshake(sessionId);
 	}
 
@@ -32,6 +32,7 @@ import org.helios.jmx.dynamic.annotations.JMXManagedObject;
 import org.helios.jmx.dynamic.annotations.options.AttributeMutabilityOption;
 import org.helios.jmxenabled.threads.ExecutorBuilder;
 import org.helios.ot.agent.impl.netty.AbstractNettyHeliosOTClient;
+import org.helios.ot.agent.impl.netty.codec.HeliosProtocolEncoder;
 import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
@@ -41,7 +42,6 @@ import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.socket.SocketChannel;
 import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
 import org.jboss.netty.handler.codec.serialization.ObjectDecoder;
-import org.jboss.netty.handler.codec.serialization.ObjectEncoder;
 import org.jboss.netty.handler.logging.LoggingHandler;
 import org.jboss.netty.logging.InternalLogLevel;
 
@@ -122,7 +122,7 @@ public class TCPNettyHeliosOTClient extends AbstractNettyHeliosOTClient {
 	          public ChannelPipeline getPipeline() throws Exception {
 	              return Channels.pipeline(
 	            		  instrumentation, 
-	                      new ObjectEncoder(),
+	                      new HeliosProtocolEncoder(binaryCodec),
 	                      new ObjectDecoder(),	                      
 	                      protocolHandler
 	                      );
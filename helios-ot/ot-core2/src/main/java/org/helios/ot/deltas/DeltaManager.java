@@ -24,52 +24,74 @@
  */
 package org.helios.ot.deltas;
 
-import gnu.trove.map.hash.TObjectLongHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.ObjectName;
 
 import org.apache.log4j.Logger;
 import org.helios.helpers.JMXHelper;
 import org.helios.helpers.SystemEnvironmentHelper;
+import org.helios.jmx.dynamic.ManagedObjectDynamicMBean;
+import org.helios.jmx.dynamic.annotations.JMXAttribute;
+import org.helios.jmx.dynamic.annotations.JMXManagedObject;
+import org.helios.jmx.dynamic.annotations.JMXOperation;
+import org.helios.jmx.dynamic.annotations.options.AttributeMutabilityOption;
 import org.helios.ot.type.MetricType;
 
 /**
  * <p>Title: DeltaManager</p>
  * <p>Description: A utility class for managing deltas.</p> 
+ * <p>Delta state is held in a striped concurrent map with one {@link DeltaState} per metric name. The value in state is updated with a compare-and-set
+ * of a primitive long, so concurrent deltas for different metrics never block each other, concurrent deltas for the same metric retry rather than lock
+ * and no object is allocated per delta.</p>
  * <p>Company: Helios Development Group</p>
  * @author Whitehead (whitehead.nicholas@gmail.com)
  * @version $LastChangedRevision$
  * $HeadURL$
  * $Id$
  */
-public class DeltaManager {
+@JMXManagedObject(declared=false, annotated=true)
+public class DeltaManager extends ManagedObjectDynamicMBean {
+	/**  */
+	private static final long serialVersionUID = -2905823401926178416L;
 	/** The delta manager singleton */
 	protected volatile static DeltaManager deltaManager = null;
-	/** The container for tracking deltas */
-	protected final TObjectLongHashMap<java.lang.String> longDeltas;
-	/** The container for tracking the last served delta */
-	protected final TObjectLongHashMap<java.lang.String> lastServedDeltas;
+	/** The delta states keyed by metric name */
+	protected final ConcurrentHashMap<String, DeltaState> deltaStates;
+	/** The number of compare-and-set retries caused by concurrent deltas on the same metric */
+	protected final AtomicLong casRetries = new AtomicLong(0L);
+	/** The number of monotonic sequence breakages */
+	protected final AtomicLong brokenMonotonics = new AtomicLong(0L);
 	
 	/** The configured default delta type for this JVM instance */
 	static DeltaType deltaType = null;
 	/** The class logger */
 	protected static Logger LOG = Logger.getLogger(DeltaManager.class);
 	/** The DeltaManager JMX ObjectName */
-	public static final ObjectName objectName = JMXHelper.objectName("org.helios.tracing:service=DeltaManager");
+	public static final ObjectName OBJECT_NAME = JMXHelper.objectName("org.helios.tracing:service=DeltaManager");
 	
 	
 	/** The name of the system property to override the configured initial capacity of the delta container */
 	protected static final String DELTA_CAPACITY = "helios.opentrace.deltas.initialcapacity";
 	/** The name of the system property to override the configured load capacity of the delta container */
 	protected static final String DELTA_LOAD_FACTOR = "helios.opentrace.deltas.loadfactor";
+	/** The name of the system property to override the configured number of stripes of the delta container */
+	protected static final String DELTA_CONCURRENCY = "helios.opentrace.deltas.concurrency";
 	/** The name of the system property to override the configured default delta type of the delta container */
 	protected static final String DELTA_TYPE = "helios.opentrace.deltas.type";
 	/** The default initial capacity of the delta container */
 	protected static final int DELTA_CAPACITY_DEFAULT = 100;	
 	/** The default load factor of the delta container */
 	protected static final float DELTA_LOAD_FACTOR_DEFAULT = 0.5F;
+	/** The default number of stripes of the delta container */
+	protected static final int DELTA_CONCURRENCY_DEFAULT = Runtime.getRuntime().availableProcessors() * 4;
 	/** The default delta type of the delta container */
 	public static final DeltaType DEFAULT_DELTA_TYPE = DeltaType.REBASE;
+	/** The sentinel value marking a delta state with no value in state or no served delta */
+	protected static final long NONE = Long.MIN_VALUE;
 
 	
 	/**
@@ -78,11 +100,20 @@ public class DeltaManager {
 	private DeltaManager() {
 		int initialDeltaCapacity = DELTA_CAPACITY_DEFAULT;
 		float initialDeltaLoadFactor = DELTA_LOAD_FACTOR_DEFAULT;
+		int concurrency = DELTA_CONCURRENCY_DEFAULT;
 		try { initialDeltaCapacity = Integer.parseInt(SystemEnvironmentHelper.getEnvThenSystemProperty(DELTA_CAPACITY)); } catch (Exception e) {}
 		try { initialDeltaLoadFactor = Float.parseFloat(SystemEnvironmentHelper.getEnvThenSystemProperty(DELTA_LOAD_FACTOR)); } catch (Exception e) {}
+		try { concurrency = Integer.parseInt(SystemEnvironmentHelper.getEnvThenSystemProperty(DELTA_CONCURRENCY)); } catch (Exception e) {}
 		try { deltaType = DeltaType.valueOf(SystemEnvironmentHelper.getEnvThenSystemProperty(DELTA_TYPE, DEFAULT_DELTA_TYPE.name())); } catch (Exception e) {}
-		longDeltas = new TObjectLongHashMap<java.lang.String>(initialDeltaCapacity, initialDeltaLoadFactor);
-		lastServedDeltas = new TObjectLongHashMap<java.lang.String>(initialDeltaCapacity, initialDeltaLoadFactor);
+		deltaStates = new ConcurrentHashMap<String, DeltaState>(initialDeltaCapacity, initialDeltaLoadFactor, concurrency);
+		try {
+			this.reflectObject(this);
+			if(!JMXHelper.getHeliosMBeanServer().isRegistered(OBJECT_NAME)) {
+				JMXHelper.getHeliosMBeanServer().registerMBean(this, OBJECT_NAME);
+			}
+		} catch (Exception e) {
+			LOG.warn("Failed to register the DeltaManager management interface. Continuing without");
+		}
 	}
 	
 	/**
@@ -105,7 +136,7 @@ public class DeltaManager {
 	 * @param type
 	 * @return
 	 */
-	public synchronized Number delta(String name, Number value, MetricType type) {
+	public Number delta(String name, Number value, MetricType type) {
 		return delta(name, value, type, deltaType);
 	}
 	
@@ -117,81 +148,137 @@ public class DeltaManager {
 	 * @param dt
 	 * @return
 	 */
-	public synchronized Number delta(String name, Number value, MetricType type, DeltaType dt) {
-		Number number = null;
+	public Number delta(String name, Number value, MetricType type, DeltaType dt) {
 		if(name==null || value==null || type==null || dt==null) throw new RuntimeException("Null parameter passed");
 		if(!type.isDelta()) throw new RuntimeException("Metric Type [" + type.getName() + "] is not delta");
-		long inValue = value.longValue();
-		if(longDeltas.containsKey(name)) {
-			long state = longDeltas.get(name);
-			longDeltas.put(name, inValue);
-			if(inValue < state) {
-				number = processBrokenMonotonic(name, inValue, state, dt, type);
+		final long inValue = value.longValue();
+		final DeltaState ds = getDeltaState(name);
+		long number;
+		boolean served;
+		boolean broken;
+		for(;;) {
+			final long current = ds.get();
+			broken = false;
+			if(current==NONE) {
+				served = false;
+				number = 0L;
+			} else if(inValue < current) {
+				broken = true;
+				number = processBrokenMonotonic(inValue, current, ds.served, dt);
+				served = number!=NONE;
 			} else {
-				number = inValue - state;				
+				number = inValue - current;
+				served = true;
 			}
-		} else {
-			longDeltas.put(name, inValue);
+			if(ds.compareAndSet(current, inValue)) break;
+			casRetries.incrementAndGet();
 		}
-		if(number==null) return null;
-		lastServedDeltas.put(name, number.longValue());
+		if(broken) brokenMonotonics.incrementAndGet();
+		if(!served) return null;
+		ds.served = number;
 		if(type.isInt()) {			
-			return number.intValue();
+			return (int)number;
 		} else {			
-			return number.longValue();
+			return number;
 		}
 	}
 	
+	/**
+	 * Returns the delta state for the passed name, creating it if it does not exist
+	 * @param name The metric name
+	 * @return the delta state
+	 */
+	protected DeltaState getDeltaState(String name) {
+		DeltaState ds = deltaStates.get(name);
+		if(ds==null) {
+			ds = new DeltaState();
+			DeltaState prior = deltaStates.putIfAbsent(name, ds);
+			if(prior!=null) ds = prior;
+		}
+		return ds;
+	}
+	
 	/**
 	 * Retrieves the value in state for the passed name.
 	 * @param name The name to retrieve state for.
 	 * @return The number in state or null.
 	 */
-	public synchronized Long getState(String name) {
-		if(longDeltas.containsKey(name)) {
-			return longDeltas.get(name);
-		} else {
-			return null;
-		}
+	public Long getState(String name) {
+		DeltaState ds = deltaStates.get(name);
+		if(ds==null) return null;
+		long state = ds.get();
+		return state==NONE ? null : state;
 	}
 	
 	/**
 	 * Returns the number of entries in state.
 	 * @return the number of entries in state.
 	 */
-	public synchronized int getStateSize() {		
-		return longDeltas.size();
+	@JMXAttribute(name="StateSize", description="The number of entries in state", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getStateSize() {
+		int size = 0;
+		for(DeltaState ds: deltaStates.values()) {
+			if(ds.get()!=NONE) size++;
+		}
+		return size;
+	}
+	
+	/**
+	 * Returns the number of compare-and-set retries caused by concurrent deltas on the same metric
+	 * @return the number of compare-and-set retries
+	 */
+	@JMXAttribute(name="ContentionCount", description="The number of compare-and-set retries caused by concurrent deltas on the same metric", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getContentionCount() {
+		return casRetries.get();
+	}
+	
+	/**
+	 * Returns the number of monotonic sequence breakages
+	 * @return the number of monotonic sequence breakages
+	 */
+	@JMXAttribute(name="BrokenMonotonicCount", description="The number of monotonic sequence breakages", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getBrokenMonotonicCount() {
+		return brokenMonotonics.get();
+	}
+	
+	/**
+	 * Returns the default delta type
+	 * @return the default delta type
+	 */
+	@JMXAttribute(name="DeltaType", description="The default delta type", mutability=AttributeMutabilityOption.READ_ONLY)
+	public String getDeltaType() {
+		return deltaType==null ? DEFAULT_DELTA_TYPE.name() : deltaType.name();
 	}
 	
 	/**
 	 * Returns a formatted string displaying the names and values in state.
 	 * @return a formatted string displaying the names and values in state.
 	 */
-	public synchronized String dumpState() {
+	@JMXOperation(name="dumpState", description="Returns a formatted string displaying the names and values in state")
+	public String dumpState() {
 		StringBuilder b = new StringBuilder("DeltaManager States:");
-		for(Object key: longDeltas.keys()) {
-			b.append("\n\t").append(key).append(":").append(longDeltas.get(key.toString()));
+		for(Map.Entry<String, DeltaState> entry: new TreeMap<String, DeltaState>(deltaStates).entrySet()) {
+			long state = entry.getValue().get();
+			if(state!=NONE) {
+				b.append("\n\t").append(entry.getKey()).append(":").append(state);
+			}
 		}
 		return b.toString();
 	}
 	
 	/**
 	 * Calculates the return value for the delta request in accordance with the deltaType.
-	 * @param name
-	 * @param newValue
-	 * @param state
-	 * @param type
-	 * @return
+	 * @param newValue The new value
+	 * @param current The value in state
+	 * @param served The last served delta or {@link #NONE}
+	 * @param dt The delta type
+	 * @return the delta to serve or {@link #NONE} if the delta should be suppressed
 	 */
-	protected Long processBrokenMonotonic(String name, long newValue, long state, DeltaType dt, MetricType type) {
-		longDeltas.put(name, newValue);
+	protected long processBrokenMonotonic(long newValue, long current, long served, DeltaType dt) {
 		if(dt.equals(DeltaType.REBASE)) {
-			if(lastServedDeltas.containsKey(name)) {
-				return lastServedDeltas.get(name);				
-			}
-			return null;
+			return served;
 		} 
-		long d = newValue - state;
+		long d = newValue - current;
 		if(dt.equals(DeltaType.RELATIVE)) {
 			return d;
 		} else {
@@ -202,17 +289,46 @@ public class DeltaManager {
 	/**
 	 * Clears all deltas in state.
 	 */
-	public synchronized void reset() {
-		longDeltas.clear();
+	@JMXOperation(name="reset", description="Clears all deltas in state")
+	public void reset() {
+		for(DeltaState ds: deltaStates.values()) {
+			ds.set(NONE);
+		}
 	}
 	
 	/**
 	 * Clears the named delta scope
 	 * @param name The name of the metric delta to reset
 	 */
-	public synchronized void reset(String name) {
+	public void reset(String name) {
 		if(name==null) throw new IllegalArgumentException("The passed name was null", new Throwable());
-		lastServedDeltas.remove(name);
-		longDeltas.remove(name);
+		DeltaState ds = deltaStates.get(name);
+		if(ds!=null) {
+			ds.set(NONE);
+			ds.served = NONE;
+		}
+	}
+	
+	/**
+	 * <p>Title: DeltaState</p>
+	 * <p>Description: The compare-and-set updated value in state of one metric, {@link #NONE} when there is no value in state.
+	 * The last served delta is written after the value in state is swapped and is only used to rebase broken monotonic sequences.</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.ot.deltas.DeltaManager.DeltaState</code></p>
+	 */
+	protected static class DeltaState extends AtomicLong {
+		/**  */
+		private static final long serialVersionUID = 4408934218532375766L;
+		/** The last served delta or {@link #NONE} */
+		protected volatile long served = NONE;
+
+		/**
+		 * Creates a new empty DeltaState
+		 */
+		protected DeltaState() {
+			super(NONE);
+		}
 	}
 }
@@ -0,0 +1,119 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.ot.trace;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import org.helios.ot.trace.types.interval.HistogramIntervalTraceValue;
+import org.helios.ot.trace.types.interval.LogHistogram;
+
+/**
+ * <p>Title: ClosedHistogramTrace</p>
+ * <p>Description: A closed histogram interval trace which reports the configured quantiles of the interval in addition to the min/max/avg.
+ * The raw histogram travels with the closed trace's interval value so closed histogram traces can be merged across agents and intervals.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.ot.trace.ClosedHistogramTrace</code></p>
+ */
+@XmlRootElement(name="closedTrace")
+public class ClosedHistogramTrace extends ClosedMinMaxAvgTrace {
+	/** The reported quantiles */
+	@XmlElement(name="quantiles")
+	protected double[] quantiles;
+	/** The values at each of the reported quantiles */
+	@XmlElement(name="quantileValues")
+	protected long[] quantileValues;
+
+	/**
+	 * Creates a new ClosedHistogramTrace. For externalization only
+	 */
+	public ClosedHistogramTrace() {
+		
+	}
+	
+	/**
+	 * Creates a new ClosedHistogramTrace
+	 * @param trace An IntervalTrace trace with a histogram interval value
+	 */
+	@SuppressWarnings("unchecked")
+	protected ClosedHistogramTrace(IntervalTrace trace) {
+		super(nvl(trace));
+		HistogramIntervalTraceValue<?> histogramValue = (HistogramIntervalTraceValue<?>)trace.getIntervalTraceValue();
+		quantiles = histogramValue.getQuantiles();
+		quantileValues = histogramValue.getQuantileValues();
+	}
+	
+	/**
+	 * Returns the reported quantiles
+	 * @return the reported quantiles
+	 */
+	public double[] getQuantiles() {
+		return quantiles;
+	}
+	
+	/**
+	 * Returns the values at each of the reported quantiles
+	 * @return the values at each of the reported quantiles
+	 */
+	public long[] getQuantileValues() {
+		return quantileValues;
+	}
+	
+	/**
+	 * Returns the value at the passed quantile, computed from the interval's histogram
+	 * @param quantile The quantile between 0 and 1
+	 * @return the value at the passed quantile
+	 */
+	public long getValueAtQuantile(double quantile) {
+		return getHistogram().getValueAtQuantile(quantile);
+	}
+	
+	/**
+	 * Returns the interval's histogram
+	 * @return the interval's histogram
+	 */
+	public LogHistogram getHistogram() {
+		return ((HistogramIntervalTraceValue<?>)traceValue).getHistogram();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>The quantile values are recomputed from the externalized interval value</p>
+	 * @see java.io.Externalizable#readExternal(java.io.ObjectInput)
+	 */
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		super.readExternal(in);
+		HistogramIntervalTraceValue<?> histogramValue = (HistogramIntervalTraceValue<?>)traceValue;
+		quantiles = histogramValue.getQuantiles();
+		quantileValues = histogramValue.getQuantileValues();
+	}
+
+}
@@ -44,6 +44,7 @@ import javax.xml.bind.annotation.XmlTransient;
 
 import org.helios.ot.trace.types.ITraceValue;
 import org.helios.ot.trace.types.TraceValueType;
+import org.helios.ot.trace.types.interval.HistogramIntervalTraceValue;
 import org.helios.ot.type.MetricType;
 
 //import com.thoughtworks.xstream.annotations.XStreamAlias;
@@ -135,6 +136,9 @@ public class ClosedTrace implements Externalizable {
 	 */
 	public static ClosedTrace newClosedTrace(Trace trace) {
 		if(nvl(trace).isInterval()) {
+			if(trace.getTraceValue() instanceof HistogramIntervalTraceValue) {
+				return new ClosedHistogramTrace((IntervalTrace)trace);
+			}
 			if(trace.getTraceValue().getTraceValueType().isMinMaxAvg()) {
 				return new ClosedMinMaxAvgTrace((IntervalTrace)trace);
 			}
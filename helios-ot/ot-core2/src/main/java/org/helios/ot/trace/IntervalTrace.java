@@ -32,6 +32,7 @@ import java.io.ObjectOutput;
 import javax.xml.bind.annotation.XmlRootElement;
 
 import org.helios.ot.trace.types.ITraceValue;
+import org.helios.ot.trace.types.interval.AbstractNumericIntervalTraceValue;
 import org.helios.ot.trace.types.interval.IIntervalTraceValue;
 import org.helios.ot.type.MetricType;
 
@@ -122,6 +123,39 @@ public class IntervalTrace<I extends IIntervalTraceValue<T>, T extends ITraceVal
 	}
 	
 	
+	/**
+	 * Creates a new interval trace for accumulating pre-aggregated samples for the passed metric id.
+	 * @param metricId The metric id of the interval trace
+	 * @param startTime The start time of the current interval
+	 * @return a new interval trace
+	 */
+	@SuppressWarnings("unchecked")
+	public static IntervalTrace<?, IIntervalTraceValue<?>> intervalTrace(MetricId metricId, long startTime) {
+		if(metricId==null) throw new IllegalArgumentException("The passed metricId was null", new Throwable());
+		IntervalTrace<?, IIntervalTraceValue<?>> intervalTrace = new IntervalTrace();
+		intervalTrace.metricId = metricId;
+		intervalTrace.timeStamp = startTime;
+		return intervalTrace;
+	}
+	
+	/**
+	 * Aggregates a pre-accumulated block of numeric samples into this interval trace
+	 * @param sampleCount The number of samples in the block
+	 * @param sampleTotal The sum of the samples in the block
+	 * @param sampleMin The minimum sample in the block
+	 * @param sampleMax The maximum sample in the block
+	 */
+	@SuppressWarnings("unchecked")
+	public void applyAggregate(long sampleCount, double sampleTotal, long sampleMin, long sampleMax) {
+		if(intervalTraceValue==null) {
+			intervalTraceValue = (I)this.metricId.type.intervalTraceValue();
+		}
+		if(!(intervalTraceValue instanceof AbstractNumericIntervalTraceValue)) {
+			throw new IllegalStateException("The metric type [" + metricId.type + "] does not support aggregated samples", new Throwable());
+		}
+		((AbstractNumericIntervalTraceValue<?>)intervalTraceValue).applyAggregate(sampleCount, sampleTotal, sampleMin, sampleMax);
+	}
+	
 	/**
 	 * Aggregates a trace instance into this interval trace
 	 * @param trace The trace to apply
@@ -43,7 +43,6 @@ import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlType;
 
-import org.helios.containers.counters.IntegerCircularCounter;
 import org.helios.helpers.ConfigurationHelper;
 import org.helios.helpers.ExternalizationHelper;
 import org.helios.helpers.StringHelper;
@@ -91,6 +90,12 @@ public class MetricId implements Serializable , Externalizable {
 	/** The local metric serial number */
 	//@XStreamOmitField
 	protected transient int serial;
+	/** The dense id assigned by the registry, or -1 if this metric id is not registered */
+	protected transient volatile int id = -1;
+	/** The last time this metric id was resolved from the registry, at a granularity of {@link MetricIdRegistry#TOUCH_GRANULARITY} */
+	protected transient volatile long lastTouched;
+	/** Indicates if this metric id is held for the life of the JVM and must never be evicted by the registry */
+	protected transient volatile boolean pinned = false;
 	/** This metric's mod */
 	//@XStreamOmitField
 	protected transient int metricMod = -1;
@@ -142,16 +147,13 @@ public class MetricId implements Serializable , Externalizable {
 	
 	
 	
-	/** Metric Id Cache */
-	private static final Map<String, MetricId> ids = new ConcurrentHashMap<String, MetricId>(1024);
+	/** Metric Id Registry */
+	private static final MetricIdRegistry registry = new MetricIdRegistry();
 	/** Global Id Keyed Metric Id Cache */
 	private static final Map<Long, MetricId> globalAssignedMetrics = new ConcurrentHashMap<Long, MetricId>(1024);
 	
 	/** The open trace mod size */
 	public static final AtomicInteger modSize = new AtomicInteger(-1);
-	/** Mod counter */
-	private static volatile transient IntegerCircularCounter modCounter;
-	
 	/** The system property or env-var that designates the mod size for this VM. */
 	public static final String MOD_PROP = "org.helios.ot.mod";
 	
@@ -182,7 +184,7 @@ public class MetricId implements Serializable , Externalizable {
 	}
 	
 	public static void assignGlobalId(CharSequence fullName, long globalId) {
-		MetricId id = ids.get(fullName.toString());
+		MetricId id = registry.get(fullName);
 		if(id!=null) {
 			id.globalId.set(globalId);
 			globalAssignedMetrics.put(globalId, id);
@@ -211,24 +213,15 @@ public class MetricId implements Serializable , Externalizable {
 	 * @return the metric Id.
 	 */
 	public static MetricId getInstance(MetricType type, CharSequence fullName) {
-		if(modCounter==null) {
-			getMod();
-			modCounter = new IntegerCircularCounter(mod);
-		}
-		if(fullName==null) throw new IllegalArgumentException("Full name was null");		
-		String name = fullName.toString().intern();
-		MetricId id = ids.get(name);
-		if(id==null) {
-			synchronized(ids) {
-				ids.get(name);
-				if(id==null) {
-					if(type==null) throw new IllegalArgumentException("Metric type was null");
-					id = new MetricId(modCounter.nextCounter(), type, name);
-					ids.put(name, id);
-				}
-			}
-		}
-		return id;
+		return registry.getInstance(type, fullName);
+	}
+	
+	/**
+	 * Returns the registry of local metric ids
+	 * @return the metric id registry
+	 */
+	public static MetricIdRegistry getRegistry() {
+		return registry;
 	}
 	
 	/**
@@ -238,17 +231,77 @@ public class MetricId implements Serializable , Externalizable {
 	public int getMetricMod() {
 		return metricMod;
 	}
+	
+	/**
+	 * Returns the dense id assigned by the registry. Dense ids run from zero to the registry's table length 
+	 * and may be used as array indexes. An evicted id may be reassigned to another metric.
+	 * @return the dense id, or -1 if this metric id is not registered
+	 */
+	public int getId() {
+		return id;
+	}
+	
+	/**
+	 * Records a resolution of this metric id from the registry
+	 */
+	void touch() {
+		long now = System.currentTimeMillis();
+		if(now - lastTouched > MetricIdRegistry.TOUCH_GRANULARITY) {
+			lastTouched = now;
+		}
+	}
+	
+	/**
+	 * Pins this metric id so the registry never evicts it and never reassigns its dense id. 
+	 * Called by holders that cache the metric id instead of resolving it from the registry on each use, such as metric handles.
+	 */
+	public void pin() {
+		pinned = true;
+	}
+	
+	/**
+	 * Indicates if this metric id is pinned and will never be evicted by the registry
+	 * @return true if this metric id is pinned
+	 */
+	public boolean isPinned() {
+		return pinned;
+	}
+	
+	/**
+	 * Called by the registry when this metric id is evicted
+	 */
+	void evicted() {
+		id = -1;
+		long gid = globalId.get();
+		if(gid>0) globalAssignedMetrics.remove(gid);
+	}
+
+	/**
+	 * Creates an unregistered MetricId for a metric decoded from a remote agent
+	 * @param type The metric type
+	 * @param fullName The fully qualified metric name
+	 * @return a new MetricId
+	 */
+	static MetricId remote(MetricType type, String fullName) {
+		MetricId metricId = new MetricId(-1, type, fullName);
+		metricId.metricMod = -1;
+		return metricId;
+	}
 
 	/**
 	 * Creates a new MetricId
-	 * @param mod The designated local mod
+	 * @param id The dense id assigned by the registry, or -1 for an unregistered metric id
 	 * @param type The metric type
 	 * @param fullName The metric name
 	 */
-	private MetricId(int mod, MetricType type, String fullName) {
-		this.metricMod = mod;
-		String[] fragments = fullName.toString().split("/");
+	MetricId(int id, MetricType type, String fullName) {
+		String[] fragments = split(fullName);
 		if(fragments.length < 3) throw new IllegalArgumentException("Invalid Full Name [" + fullName + "]");
+		this.id = id;
+		int m = getMod();
+		// unregistered metric ids are spread across the mods by name
+		this.metricMod = m<1 ? 0 : id<0 ? (fullName.hashCode() & Integer.MAX_VALUE) % m : id % m;
+		this.lastTouched = System.currentTimeMillis();
 		this.type = type;
 		this.serial = generateSerial(fullName);
 		hostName = fragments[0];
@@ -260,13 +313,38 @@ public class MetricId implements Serializable , Externalizable {
 		}			
 	}
 	
+	/**
+	 * Splits a full name into its segments with the same semantics as <code>String.split("/")</code>, without the regex overhead.
+	 * @param fullName The full name to split
+	 * @return the name segments
+	 */
+	static String[] split(String fullName) {
+		int count = 1;
+		int end = fullName.length();
+		// trailing empty segments are dropped
+		while(end > 0 && fullName.charAt(end-1)=='/') end--;
+		if(end==0) return fullName.length()==0 ? new String[]{""} : new String[0];
+		for(int i = 0; i < end; i++) {
+			if(fullName.charAt(i)=='/') count++;
+		}
+		String[] fragments = new String[count];
+		int start = 0, f = 0;
+		for(int i = 0; i < end; i++) {
+			if(fullName.charAt(i)=='/') {
+				fragments[f++] = fullName.substring(start, i);
+				start = i + 1;
+			}
+		}
+		fragments[f] = fullName.substring(start, end);
+		return fragments;
+	}
+	
 	/**
 	 * Resets the MetricId repository and configuration.
 	 */
 	public static void reset() {
-		modCounter  =  null;
 		modSize.set(-1);
-		ids.clear();
+		registry.clear();
 		globalAssignedMetrics.clear();		
 	}
 	
@@ -0,0 +1,326 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.ot.trace;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.helios.helpers.ConfigurationHelper;
+import org.helios.ot.type.MetricType;
+
+/**
+ * <p>Title: MetricIdRegistry</p>
+ * <p>Description: The registry of local {@link MetricId}s. Each registered metric is assigned a dense integer id between zero and the 
+ * registry capacity so accumulators, codecs and delta trackers can keep per metric state in arrays indexed by {@link MetricId#getId()}.</p>
+ * <p>Names are resolved with a single lookup in a striped concurrent map. A miss allocates an id from the free list or the id counter and
+ * publishes the new metric with a <code>putIfAbsent</code>, so concurrent first uses of a name always resolve to the same instance. The id
+ * table is held in lazily allocated chunks so an idle registry with a large capacity costs little.</p>
+ * <p>When the capacity is exhausted, a single thread sweeps the registry and evicts metrics that have not been resolved for the idle timeout,
+ * returning their ids to the free list, while other threads needing an id wait for the sweep. Evicted metric ids report an id of <code>-1</code>.
+ * Metric ids pinned by holders that cache them, such as metric handles, are never evicted.
+ * If nothing can be evicted, the metric is returned unregistered with an id of <code>-1</code> and counted as an overflow.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.ot.trace.MetricIdRegistry</code></p>
+ */
+
+public class MetricIdRegistry {
+	/** The registered metric ids keyed by full name */
+	protected final ConcurrentHashMap<String, MetricId> names;
+	/** The id table chunks */
+	protected volatile AtomicReferenceArray<AtomicReferenceArray<MetricId>> chunks;
+	/** The next never assigned id */
+	protected final AtomicInteger nextId = new AtomicInteger(0);
+	/** The ids released by eviction */
+	protected final ConcurrentLinkedQueue<Integer> freeIds = new ConcurrentLinkedQueue<Integer>();
+	/** The maximum number of registered metric ids */
+	protected final int capacity;
+	/** The period of no resolution after which a metric id may be evicted in ms. */
+	protected final long idleTimeout;
+	/** Guards the eviction sweep so only one thread sweeps at a time */
+	protected final AtomicBoolean sweeping = new AtomicBoolean(false);
+	/** The earliest time the next sweep may start */
+	protected volatile long nextSweep = 0L;
+	/** The number of evicted metric ids */
+	protected final AtomicLong evictions = new AtomicLong(0L);
+	/** The number of metric ids returned unregistered because the registry was full */
+	protected final AtomicLong overflows = new AtomicLong(0L);
+	
+	/** The system property or environment variable name defining the registry capacity */
+	public static final String CAPACITY_PROP = "org.helios.ot.metricid.capacity";
+	/** The system property or environment variable name defining the idle timeout in ms. */
+	public static final String IDLE_TIMEOUT_PROP = "org.helios.ot.metricid.idle";
+	/** The default registry capacity */
+	public static final int DEFAULT_CAPACITY = 1 << 20;
+	/** The default idle timeout in ms. */
+	public static final long DEFAULT_IDLE_TIMEOUT = 900000L;
+	/** The log2 of the number of ids in each chunk of the id table */
+	public static final int CHUNK_SHIFT = 12;
+	/** The number of ids in each chunk of the id table */
+	public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	/** The minimum period between sweeps that evict nothing in ms. */
+	public static final long SWEEP_BACKOFF = 1000L;
+	/** The granularity of a metric id's last resolution time in ms. */
+	public static final long TOUCH_GRANULARITY = 1000L;
+	
+	/**
+	 * Creates a new MetricIdRegistry with the configured capacity and idle timeout
+	 */
+	public MetricIdRegistry() {
+		this(ConfigurationHelper.getIntSystemThenEnvProperty(CAPACITY_PROP, DEFAULT_CAPACITY), 
+				ConfigurationHelper.getLongSystemThenEnvProperty(IDLE_TIMEOUT_PROP, DEFAULT_IDLE_TIMEOUT));
+	}
+	
+	/**
+	 * Creates a new MetricIdRegistry
+	 * @param capacity The maximum number of registered metric ids
+	 * @param idleTimeout The period of no resolution after which a metric id may be evicted in ms.
+	 */
+	public MetricIdRegistry(int capacity, long idleTimeout) {
+		if(capacity<1) throw new IllegalArgumentException("Invalid capacity [" + capacity + "]", new Throwable());
+		if(idleTimeout<0) throw new IllegalArgumentException("Invalid idle timeout [" + idleTimeout + "]", new Throwable());
+		this.capacity = capacity;
+		this.idleTimeout = idleTimeout;
+		names = new ConcurrentHashMap<String, MetricId>(Math.min(capacity, 1024), 0.75f, Math.max(16, Runtime.getRuntime().availableProcessors()*4));
+		chunks = new AtomicReferenceArray<AtomicReferenceArray<MetricId>>(((capacity-1) >> CHUNK_SHIFT) + 1);
+	}
+	
+	/**
+	 * Returns the metric id for the passed name, registering it if it is not registered
+	 * @param type The metric type, used if the metric is not registered
+	 * @param fullName The fully qualified metric name
+	 * @return the metric id
+	 */
+	public MetricId getInstance(MetricType type, CharSequence fullName) {
+		if(fullName==null) throw new IllegalArgumentException("Full name was null", new Throwable());
+		String name = fullName.toString();
+		MetricId metricId = names.get(name);
+		if(metricId!=null) {
+			metricId.touch();
+			return metricId;
+		}
+		if(type==null) throw new IllegalArgumentException("Metric type was null", new Throwable());
+		int id = allocate();
+		if(id<0) {
+			overflows.incrementAndGet();
+			return new MetricId(-1, type, name);
+		}
+		MetricId created = new MetricId(id, type, name);
+		metricId = names.putIfAbsent(name, created);
+		if(metricId!=null) {
+			// lost the race to another thread registering the same name
+			freeIds.offer(id);
+			metricId.touch();
+			return metricId;
+		}
+		AtomicReferenceArray<MetricId> chunk = chunk(id);
+		chunk.set(id & (CHUNK_SIZE-1), created);
+		if(created.getId()<0) {
+			// evicted by a sweep before the table slot was set
+			chunk.compareAndSet(id & (CHUNK_SIZE-1), created, null);
+		}
+		return created;
+	}
+	
+	/**
+	 * Returns the registered metric id for the passed name without registering it
+	 * @param fullName The fully qualified metric name
+	 * @return the metric id or null if the name is not registered
+	 */
+	public MetricId get(CharSequence fullName) {
+		if(fullName==null) throw new IllegalArgumentException("Full name was null", new Throwable());
+		return names.get(fullName.toString());
+	}
+	
+	/**
+	 * Returns the registered metric id for the passed id
+	 * @param id The dense id
+	 * @return the metric id or null if the id is not assigned
+	 */
+	public MetricId get(int id) {
+		if(id<0 || id>=nextId.get()) return null;
+		AtomicReferenceArray<MetricId> chunk = chunks.get(id >> CHUNK_SHIFT);
+		return chunk==null ? null : chunk.get(id & (CHUNK_SIZE-1));
+	}
+	
+	/**
+	 * Returns a snapshot of the id table. The array is indexed by id and unassigned ids are null.
+	 * @return a snapshot of the id table
+	 */
+	public MetricId[] snapshot() {
+		int length = nextId.get();
+		MetricId[] table = new MetricId[length];
+		AtomicReferenceArray<AtomicReferenceArray<MetricId>> current = chunks;
+		for(int id = 0; id < length; id++) {
+			AtomicReferenceArray<MetricId> chunk = current.get(id >> CHUNK_SHIFT);
+			if(chunk!=null) table[id] = chunk.get(id & (CHUNK_SIZE-1));
+		}
+		return table;
+	}
+	
+	/**
+	 * Evicts the unpinned metric ids that have not been resolved for the idle timeout
+	 * @return the number of evicted metric ids, or zero if another thread is sweeping
+	 */
+	public int sweep() {
+		if(!sweeping.compareAndSet(false, true)) return 0;
+		try {
+			long now = System.currentTimeMillis();
+			int evicted = 0;
+			for(Map.Entry<String, MetricId> entry: names.entrySet()) {
+				MetricId metricId = entry.getValue();
+				if(metricId.pinned || now - metricId.lastTouched < idleTimeout) continue;
+				if(names.remove(entry.getKey(), metricId)) {
+					int id = metricId.getId();
+					chunk(id).compareAndSet(id & (CHUNK_SIZE-1), metricId, null);
+					metricId.evicted();
+					freeIds.offer(id);
+					evicted++;
+				}
+			}
+			evictions.addAndGet(evicted);
+			nextSweep = evicted==0 ? now + SWEEP_BACKOFF : 0L;
+			return evicted;
+		} finally {
+			sweeping.set(false);
+		}
+	}
+	
+	/**
+	 * Unregisters all metric ids and resets the id counter
+	 */
+	public void clear() {
+		names.clear();
+		freeIds.clear();
+		chunks = new AtomicReferenceArray<AtomicReferenceArray<MetricId>>(chunks.length());
+		nextId.set(0);
+		nextSweep = 0L;
+	}
+	
+	/**
+	 * Allocates an id from the free list, or the id counter, sweeping idle metric ids if the capacity is exhausted
+	 * @return the allocated id or -1 if the registry is full
+	 */
+	protected int allocate() {
+		Integer free = freeIds.poll();
+		if(free!=null) return free;
+		while(true) {
+			int id = nextId.get();
+			if(id >= capacity) break;
+			if(nextId.compareAndSet(id, id+1)) return id;
+		}
+		if(System.currentTimeMillis() >= nextSweep) {
+			if(sweep()==0) {
+				// another thread may be sweeping, so wait for the ids it frees
+				while(sweeping.get()) Thread.yield();
+			}
+			free = freeIds.poll();
+			if(free!=null) return free;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Returns the id table chunk for the passed id, allocating it if necessary
+	 * @param id The dense id
+	 * @return the id table chunk
+	 */
+	protected AtomicReferenceArray<MetricId> chunk(int id) {
+		AtomicReferenceArray<AtomicReferenceArray<MetricId>> current = chunks;
+		int index = id >> CHUNK_SHIFT;
+		AtomicReferenceArray<MetricId> chunk = current.get(index);
+		if(chunk==null) {
+			current.compareAndSet(index, null, new AtomicReferenceArray<MetricId>(CHUNK_SIZE));
+			chunk = current.get(index);
+		}
+		return chunk;
+	}
+	
+	/**
+	 * Returns the number of registered metric ids
+	 * @return the number of registered metric ids
+	 */
+	public int size() {
+		return names.size();
+	}
+	
+	/**
+	 * Returns the maximum number of registered metric ids
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * Returns the highest assigned id plus one, which is the length of an array able to hold every id
+	 * @return the id table length
+	 */
+	public int getTableLength() {
+		return nextId.get();
+	}
+	
+	/**
+	 * Returns the idle timeout in ms.
+	 * @return the idle timeout
+	 */
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+	
+	/**
+	 * Returns the number of evicted metric ids
+	 * @return the number of evicted metric ids
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+	
+	/**
+	 * Returns the number of metric ids returned unregistered because the registry was full
+	 * @return the number of overflows
+	 */
+	public long getOverflows() {
+		return overflows.get();
+	}
+	
+	/**
+	 * Constructs a <code>String</code> with key attributes in name = value format.
+	 * @return a <code>String</code> representation of this object.
+	 */
+	public String toString() {
+		return new StringBuilder("MetricIdRegistry [size=").append(size())
+			.append(", capacity=").append(capacity)
+			.append(", evictions=").append(evictions.get())
+			.append(", overflows=").append(overflows.get())
+			.append("]").toString();
+	}
+}
@@ -0,0 +1,207 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.ot.trace;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.helios.ot.type.MetricType;
+
+/**
+ * <p>Title: MetricIdRegistryPerf</p>
+ * <p>Description: Measures first use registration and repeat resolution costs of the {@link MetricIdRegistry} with 500,000 distinct metrics
+ * on 32 threads, against the interned, <code>split</code> parsing map the registry replaced, and the cost of registering through a 
+ * registry half the size of the metric set with idle eviction.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.ot.trace.MetricIdRegistryPerf</code></p>
+ */
+
+public class MetricIdRegistryPerf {
+	/** The number of distinct metrics */
+	public static final int METRICS = 500000;
+	/** The number of threads */
+	public static final int THREADS = 32;
+	/** The number of times each thread resolves every metric in its slice */
+	public static final int ROUNDS = 4;
+	
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		log("MetricIdRegistryPerf Test");
+		final String[] names = new String[METRICS];
+		for(int i = 0; i < METRICS; i++) {
+			names[i] = "host" + (i%7) + "/agent" + (i%3) + "/Namespace" + (i%101) + "/Segment" + (i%1009) + "/Metric" + i;
+		}
+		for(int i = 0; i < 3; i++) {
+			runRegistry(names, 4, false);
+			runLegacy(names, 4, false);
+		}
+		runRegistry(names, THREADS, true);
+		runLegacy(names, THREADS, true);
+		runEviction(names, THREADS);
+	}
+	
+	/**
+	 * Registers and then repeatedly resolves the passed names through a registry
+	 * @param names The metric names
+	 * @param threadCount The number of threads
+	 * @param report If true, the timings are logged
+	 */
+	public static void runRegistry(final String[] names, int threadCount, boolean report) {
+		final MetricIdRegistry registry = new MetricIdRegistry(names.length, Long.MAX_VALUE);
+		final int perThread = names.length/threadCount;
+		long registerNanos = phase(threadCount, new Phase(){
+			public void run(int thread) {
+				for(int i = 0; i < perThread; i++) {
+					registry.getInstance(MetricType.LONG_AVG, names[(thread*perThread + i) % names.length]);
+				}
+			}
+		});
+		long resolveNanos = phase(threadCount, new Phase(){
+			public void run(int thread) {
+				for(int r = 0; r < ROUNDS; r++) {
+					for(int i = 0; i < perThread; i++) {
+						registry.getInstance(MetricType.LONG_AVG, names[((thread+r)*perThread + i) % names.length]);
+					}
+				}
+			}
+		});
+		if(report) {
+			long ops = (long)perThread*threadCount;
+			MetricId[] table = registry.snapshot();
+			int duplicates = 0;
+			for(int i = 0; i < table.length; i++) {
+				if(table[i]==null || table[i].getId()!=i) duplicates++;
+			}
+			log("Registry [" + threadCount + "] threads, [" + registry.size() + "] metrics, [" + table.length + "] ids, [" + duplicates + "] unmatched ids: register " 
+					+ (registerNanos/ops) + " ns/op, resolve " + (resolveNanos/(ops*ROUNDS)) + " ns/op");
+		}
+	}
+	
+	/**
+	 * Registers and then repeatedly resolves the passed names through an interned name map which parses names with <code>split</code>
+	 * @param names The metric names
+	 * @param threadCount The number of threads
+	 * @param report If true, the timings are logged
+	 */
+	public static void runLegacy(final String[] names, int threadCount, boolean report) {
+		final Map<String, String[]> ids = new ConcurrentHashMap<String, String[]>(1024);
+		final int perThread = names.length/threadCount;
+		Phase resolver = new Phase(){
+			public void run(int thread) {
+				for(int i = 0; i < perThread; i++) {
+					String name = names[(thread*perThread + i) % names.length].intern();
+					String[] id = ids.get(name);
+					if(id==null) {
+						synchronized(ids) {
+							id = ids.get(name);
+							if(id==null) {
+								ids.put(name, name.split("/"));
+							}
+						}
+					}
+				}
+			}
+		};
+		long registerNanos = phase(threadCount, resolver);
+		long resolveNanos = 0;
+		for(int r = 0; r < ROUNDS; r++) {
+			resolveNanos += phase(threadCount, resolver);
+		}
+		if(report) {
+			long ops = (long)perThread*threadCount;
+			log("Legacy [" + threadCount + "] threads, [" + ids.size() + "] metrics: register " + (registerNanos/ops) + " ns/op, resolve " + (resolveNanos/(ops*ROUNDS)) + " ns/op");
+		}
+	}
+	
+	/**
+	 * Registers the passed names through a registry half their size which evicts immediately idle metrics
+	 * @param names The metric names
+	 * @param threadCount The number of threads
+	 */
+	public static void runEviction(final String[] names, int threadCount) {
+		final MetricIdRegistry registry = new MetricIdRegistry(names.length/2, 0L);
+		final int perThread = names.length/threadCount;
+		long nanos = phase(threadCount, new Phase(){
+			public void run(int thread) {
+				for(int i = 0; i < perThread; i++) {
+					registry.getInstance(MetricType.LONG_AVG, names[thread*perThread + i]);
+				}
+			}
+		});
+		long ops = (long)perThread*threadCount;
+		log("Eviction [" + threadCount + "] threads, capacity [" + registry.getCapacity() + "]: register " + (nanos/ops) + " ns/op, " + registry);
+	}
+	
+	/**
+	 * Runs a test phase on the passed number of threads
+	 * @param threadCount The number of threads
+	 * @param phase The phase to run
+	 * @return the elapsed time in ns.
+	 */
+	public static long phase(int threadCount, final Phase phase) {
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		final CountDownLatch endLatch = new CountDownLatch(threadCount);
+		for(int i = 0; i < threadCount; i++) {
+			final int thread = i;
+			new Thread() {
+				public void run() {
+					try {
+						startLatch.await();
+						phase.run(thread);
+					} catch (Exception e) {
+						e.printStackTrace(System.err);
+					} finally {
+						endLatch.countDown();
+					}
+				}
+			}.start();
+		}
+		long start = System.nanoTime();
+		startLatch.countDown();
+		try { endLatch.await(); } catch (Exception e) { e.printStackTrace(System.err); }
+		return System.nanoTime()-start;
+	}
+	
+	public static void log(Object msg) {
+		System.out.println(msg);
+	}
+	
+	/**
+	 * <p>Title: Phase</p>
+	 * <p>Description: A unit of work run on each test thread</p> 
+	 */
+	static interface Phase {
+		/**
+		 * Runs the phase
+		 * @param thread The test thread index
+		 */
+		public void run(int thread);
+	}
+}
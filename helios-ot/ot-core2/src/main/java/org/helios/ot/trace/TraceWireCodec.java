@@ -0,0 +1,585 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.ot.trace;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.helios.ot.trace.types.ByteArrayTraceValue;
+import org.helios.ot.trace.types.ITraceValue;
+import org.helios.ot.trace.types.IncidentTraceValue;
+import org.helios.ot.trace.types.IntTraceValue;
+import org.helios.ot.trace.types.LongTraceValue;
+import org.helios.ot.trace.types.StringTraceValue;
+import org.helios.ot.trace.types.StringsTraceValue;
+import org.helios.ot.trace.types.TimestampTraceValue;
+import org.helios.ot.trace.types.interval.ByteArrayIntervalTraceValue;
+import org.helios.ot.trace.types.interval.DistinctStringIntervalTraceValue;
+import org.helios.ot.trace.types.interval.HistogramIntervalTraceValue;
+import org.helios.ot.trace.types.interval.IIntervalTraceValue;
+import org.helios.ot.trace.types.interval.IncidentIntervalTraceValue;
+import org.helios.ot.trace.types.interval.IntIntervalTraceValue;
+import org.helios.ot.trace.types.interval.LongIntervalTraceValue;
+import org.helios.ot.trace.types.interval.StringIntervalTraceValue;
+import org.helios.ot.trace.types.interval.StringsIntervalTraceValue;
+import org.helios.ot.trace.types.interval.TimestampIntervalTraceValue;
+import org.helios.ot.trace.types.interval.TopKStringIntervalTraceValue;
+import org.helios.ot.type.MetricType;
+
+/**
+ * <p>Title: TraceWireCodec</p>
+ * <p>Description: A compact binary codec for arrays of traces sent over a single connection.</p>
+ * <p>Each side of a connection holds one instance which maintains a metric dictionary, so a metric's type and fully qualified name are
+ * sent once per connection and referenced by a varint id afterwards. Ints and longs (including the values written by the trace values'
+ * own <code>writeExternal</code>) are written as zigzag varints, timestamps are written as deltas and the known trace value classes are
+ * written with a one byte tag instead of a class descriptor.</p>
+ * <p>The encoding side must encode frames in the order they are written to the connection. A frame that fails to encode does not
+ * change the dictionary.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.ot.trace.TraceWireCodec</code></p>
+ */
+@SuppressWarnings("unchecked")
+public class TraceWireCodec {
+	/** Encoder side dictionary of metric ids to dictionary ids */
+	protected final Map<MetricId, Integer> encodeDictionary = new IdentityHashMap<MetricId, Integer>(1024);
+	/** Decoder side dictionary of dictionary ids to metric ids */
+	protected final List<MetricId> decodeDictionary = new ArrayList<MetricId>(1024);
+	/** The maximum number of entries in the dictionary */
+	protected final int maxDictionarySize;
+	/** Indicates if decoded metric ids are resolved through the local metric id registry rather than created unregistered */
+	protected final boolean localMetrics;
+
+	/** The default maximum number of entries in the dictionary */
+	public static final int DEFAULT_MAX_DICTIONARY_SIZE = 1 << 20;
+	/** The minimum number of bytes an encoded trace occupies: a metric reference, the flags and at least one byte of value */
+	public static final int MIN_ENCODED_TRACE_SIZE = 3;
+	/** The initial trace array capacity when decoding from an input of unknown length */
+	protected static final int INITIAL_DECODE_CAPACITY = 256;
+	/** The initial byte array capacity when reading a length prefixed value from an input of unknown length */
+	protected static final int INITIAL_READ_CAPACITY = 4096;
+
+	/** Metric reference code for a metric definition that is assigned the next dictionary id */
+	protected static final int REF_DEFINE = 0;
+	/** Metric reference code for a metric definition that is not added to the full dictionary */
+	protected static final int REF_INLINE = 1;
+	/** The offset added to dictionary ids in metric references */
+	protected static final int REF_OFFSET = 2;
+
+	/** Trace flag for a temporal trace */
+	protected static final int FLAG_TEMPORAL = 1;
+	/** Trace flag for an urgent trace */
+	protected static final int FLAG_URGENT = 2;
+	/** Trace flag for an interval trace */
+	protected static final int FLAG_INTERVAL = 4;
+	/** Trace flag for a trace subclass that is java serialized */
+	protected static final int FLAG_SERIALIZED = 8;
+
+	/** Object tag for a null */
+	protected static final int TAG_NULL = 0;
+	/** Object tag for a string */
+	protected static final int TAG_STRING = 0x7E;
+	/** Object tag for a java serialized object */
+	protected static final int TAG_SERIALIZED = 0x7F;
+	/** The trace value classes written with a tag. The tag is the index + 1. Append only. */
+	protected static final Class<?>[] TAGGED_CLASSES = new Class<?>[]{
+		IntTraceValue.class, LongTraceValue.class, StringTraceValue.class, StringsTraceValue.class,
+		IncidentTraceValue.class, TimestampTraceValue.class, ByteArrayTraceValue.class,
+		IntIntervalTraceValue.class, LongIntervalTraceValue.class, StringIntervalTraceValue.class, StringsIntervalTraceValue.class,
+		IncidentIntervalTraceValue.class, TimestampIntervalTraceValue.class, ByteArrayIntervalTraceValue.class,
+		HistogramIntervalTraceValue.class, DistinctStringIntervalTraceValue.class, TopKStringIntervalTraceValue.class
+	};
+
+	/**
+	 * Creates a new TraceWireCodec with the default maximum dictionary size
+	 */
+	public TraceWireCodec() {
+		this(DEFAULT_MAX_DICTIONARY_SIZE);
+	}
+
+	/**
+	 * Creates a new TraceWireCodec
+	 * @param maxDictionarySize The maximum number of entries in the dictionary. Metrics beyond this are sent with their full definition.
+	 */
+	public TraceWireCodec(int maxDictionarySize) {
+		this(maxDictionarySize, false);
+	}
+
+	/**
+	 * Creates a new TraceWireCodec
+	 * @param maxDictionarySize The maximum number of entries in the dictionary. Metrics beyond this are sent with their full definition.
+	 * @param localMetrics true if the traces are decoded in the same VM that encoded them, so decoded metric ids should be resolved through the local registry
+	 */
+	public TraceWireCodec(int maxDictionarySize, boolean localMetrics) {
+		if(maxDictionarySize<0) throw new IllegalArgumentException("Invalid dictionary size [" + maxDictionarySize + "]", new Throwable());
+		this.maxDictionarySize = maxDictionarySize;
+		this.localMetrics = localMetrics;
+	}
+
+	/**
+	 * Encodes an array of traces
+	 * @param traces The traces to encode
+	 * @param out The output to write to
+	 * @throws IOException thrown on any error writing the traces
+	 */
+	public void encode(Trace[] traces, DataOutput out) throws IOException {
+		final WireOutput wout = new WireOutput(out);
+		final int dictionaryMark = encodeDictionary.size();
+		List<MetricId> defined = null;
+		try {
+			writeVarLong(out, traces.length);
+			long priorTimestamp = 0L;
+			for(Trace trace: traces) {
+				MetricId metricId = trace.metricId;
+				Integer id = encodeDictionary.get(metricId);
+				if(id!=null) {
+					writeVarLong(out, id + REF_OFFSET);
+				} else {
+					if(encodeDictionary.size() < maxDictionarySize) {
+						writeVarLong(out, REF_DEFINE);
+						encodeDictionary.put(metricId, encodeDictionary.size());
+						if(defined==null) defined = new ArrayList<MetricId>();
+						defined.add(metricId);
+					} else {
+						writeVarLong(out, REF_INLINE);
+					}
+					writeVarLong(out, metricId.getType().getCode());
+					wout.writeUTF(metricId.getFQN());
+				}
+				int flags = 0;
+				if(trace.temporal) flags |= FLAG_TEMPORAL;
+				if(trace.urgent) flags |= FLAG_URGENT;
+				Class<?> clazz = trace.getClass();
+				if(clazz==IntervalTrace.class) flags |= FLAG_INTERVAL;
+				else if(clazz!=Trace.class) flags |= FLAG_SERIALIZED;
+				out.writeByte(flags);
+				if((flags & FLAG_SERIALIZED)!=0) {
+					wout.writeSerialized(trace);
+					continue;
+				}
+				writeVarLong(out, zigzag(trace.timeStamp - priorTimestamp));
+				priorTimestamp = trace.timeStamp;
+				wout.writeObject(trace.traceValue);
+				if((flags & FLAG_INTERVAL)!=0) {
+					IntervalTrace it = (IntervalTrace)trace;
+					wout.writeObject(it.intervalTraceValue);
+					writeVarLong(out, zigzag(it.endTimeStamp - it.timeStamp));
+					writeVarLong(out, zigzag(it.flushCount));
+				}
+			}
+		} catch (IOException ioe) {
+			if(defined!=null) {
+				for(MetricId metricId: defined) {
+					encodeDictionary.remove(metricId);
+				}
+			}
+			assert encodeDictionary.size()==dictionaryMark;
+			throw ioe;
+		}
+	}
+
+	/**
+	 * Decodes an array of traces from an input of unknown length. 
+	 * The trace array grows as traces are read, so a corrupt trace count fails on the end of the input rather than on allocation.
+	 * @param in The input to read from
+	 * @return the decoded traces
+	 * @throws IOException thrown on any error reading the traces
+	 */
+	public Trace[] decode(DataInput in) throws IOException {
+		return decode(in, -1);
+	}
+	
+	/**
+	 * Decodes an array of traces from a frame of known length
+	 * @param in The input to read from
+	 * @param frameBytes The number of bytes remaining in the frame, including the trace count, or -1 if unknown
+	 * @return the decoded traces
+	 * @throws IOException thrown on any error reading the traces or if the trace count cannot fit in the frame
+	 */
+	public Trace[] decode(DataInput in, int frameBytes) throws IOException {
+		final WireInput win = new WireInput(in, frameBytes);
+		final long wireCount = readVarLong(in);
+		if(wireCount<0 || wireCount>Integer.MAX_VALUE) throw new StreamCorruptedException("Invalid trace count [" + wireCount + "]");
+		final int count = (int)wireCount;
+		if(frameBytes>=0 && count > frameBytes/MIN_ENCODED_TRACE_SIZE) {
+			throw new StreamCorruptedException("Trace count [" + count + "] cannot fit in a frame of [" + frameBytes + "] bytes");
+		}
+		Trace[] traces = new Trace[frameBytes>=0 ? count : Math.min(count, INITIAL_DECODE_CAPACITY)];
+		long priorTimestamp = 0L;
+		for(int i = 0; i < count; i++) {
+			long ref = readVarLong(in);
+			MetricId metricId;
+			if(ref>=REF_OFFSET) {
+				long id = ref - REF_OFFSET;
+				if(id>=decodeDictionary.size()) throw new StreamCorruptedException("Unknown dictionary id [" + id + "]");
+				metricId = decodeDictionary.get((int)id);
+				// the dictionary caches the metric id, so record the use the registry would otherwise not see
+				if(localMetrics) metricId.touch();
+			} else if(ref==REF_DEFINE || ref==REF_INLINE) {
+				MetricType type = readMetricType(in);
+				String fullName = win.readUTF();
+				metricId = localMetrics ? MetricId.getInstance(type, fullName) : MetricId.remote(type, fullName);
+				if(ref==REF_DEFINE) decodeDictionary.add(metricId);
+			} else {
+				throw new StreamCorruptedException("Invalid metric reference [" + ref + "]");
+			}
+			int flags = in.readUnsignedByte();
+			if((flags & FLAG_SERIALIZED)!=0) {
+				if(i==traces.length) traces = Arrays.copyOf(traces, Math.min(count, traces.length*2));
+				traces[i] = (Trace)win.readSerialized();
+				continue;
+			}
+			Trace trace = (flags & FLAG_INTERVAL)!=0 ? new IntervalTrace() : new Trace();
+			trace.metricId = metricId;
+			trace.temporal = (flags & FLAG_TEMPORAL)!=0;
+			trace.urgent = (flags & FLAG_URGENT)!=0;
+			trace.timeStamp = priorTimestamp + unzigzag(readVarLong(in));
+			priorTimestamp = trace.timeStamp;
+			trace.traceValue = (ITraceValue)win.readObject();
+			if((flags & FLAG_INTERVAL)!=0) {
+				IntervalTrace it = (IntervalTrace)trace;
+				it.intervalTraceValue = (IIntervalTraceValue)win.readObject();
+				it.endTimeStamp = it.timeStamp + unzigzag(readVarLong(in));
+				it.flushCount = unzigzag(readVarLong(in));
+			}
+			if(i==traces.length) traces = Arrays.copyOf(traces, Math.min(count, traces.length*2));
+			traces[i] = trace;
+		}
+		return traces;
+	}
+
+	/**
+	 * Reads a metric type code
+	 * @param in The input to read from
+	 * @return the metric type
+	 * @throws IOException thrown on any error reading the code or if the code is not a valid metric type code
+	 */
+	protected static MetricType readMetricType(DataInput in) throws IOException {
+		long code = readVarLong(in);
+		if(code>=0 && code<=Integer.MAX_VALUE) {
+			try {
+				return MetricType.typeForCode((int)code);
+			} catch (RuntimeException re) {
+				/* Not a valid code, rejected below */
+			}
+		}
+		throw new StreamCorruptedException("Invalid metric type code [" + code + "]");
+	}
+
+	/**
+	 * Returns the number of metrics in the encoding dictionary
+	 * @return the number of metrics in the encoding dictionary
+	 */
+	public int getEncodeDictionarySize() {
+		return encodeDictionary.size();
+	}
+
+	/**
+	 * Returns the number of metrics in the decoding dictionary
+	 * @return the number of metrics in the decoding dictionary
+	 */
+	public int getDecodeDictionarySize() {
+		return decodeDictionary.size();
+	}
+
+	/**
+	 * ZigZag encodes a signed long so small negative values encode to small varints
+	 * @param value The value to encode
+	 * @return the zigzag encoded value
+	 */
+	public static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	/**
+	 * Decodes a zigzag encoded long
+	 * @param value The zigzag encoded value
+	 * @return the decoded value
+	 */
+	public static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Writes an unsigned varint
+	 * @param out The output to write to
+	 * @param value The value to write
+	 * @throws IOException thrown on any error writing the value
+	 */
+	public static void writeVarLong(DataOutput out, long value) throws IOException {
+		while((value & ~0x7FL)!=0L) {
+			out.writeByte((int)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int)value);
+	}
+
+	/**
+	 * Reads an unsigned varint
+	 * @param in The input to read from
+	 * @return the read value
+	 * @throws IOException thrown on any error reading the value
+	 */
+	public static long readVarLong(DataInput in) throws IOException {
+		long value = 0L;
+		for(int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long)(b & 0x7F) << shift;
+			if((b & 0x80)==0) return value;
+		}
+		throw new StreamCorruptedException("Malformed varint");
+	}
+
+	/**
+	 * Returns the tag for the passed class
+	 * @param clazz The class to get the tag for
+	 * @return the tag or -1 if the class is not tagged
+	 */
+	protected static int tagFor(Class<?> clazz) {
+		for(int i = 0; i < TAGGED_CLASSES.length; i++) {
+			if(TAGGED_CLASSES[i]==clazz) return i+1;
+		}
+		return -1;
+	}
+
+	/**
+	 * <p>Title: WireOutput</p>
+	 * <p>Description: An ObjectOutput that writes ints and longs as zigzag varints and tagged trace values without class descriptors</p>
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.ot.trace.TraceWireCodec.WireOutput</code></p>
+	 */
+	protected static class WireOutput implements ObjectOutput {
+		/** The underlying output */
+		protected final DataOutput out;
+
+		/**
+		 * Creates a new WireOutput
+		 * @param out The underlying output
+		 */
+		protected WireOutput(DataOutput out) {
+			this.out = out;
+		}
+
+		public void writeObject(Object obj) throws IOException {
+			if(obj==null) {
+				out.writeByte(TAG_NULL);
+			} else if(obj instanceof String) {
+				out.writeByte(TAG_STRING);
+				writeUTF((String)obj);
+			} else {
+				int tag = tagFor(obj.getClass());
+				if(tag>0) {
+					out.writeByte(tag);
+					((Externalizable)obj).writeExternal(this);
+				} else {
+					writeSerialized(obj);
+				}
+			}
+		}
+
+		/**
+		 * Writes the passed object using java serialization
+		 * @param obj The object to write
+		 * @throws IOException thrown on any error writing the object
+		 */
+		protected void writeSerialized(Object obj) throws IOException {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+			ObjectOutputStream oos = new ObjectOutputStream(baos);
+			oos.writeObject(obj);
+			oos.close();
+			out.writeByte(TAG_SERIALIZED);
+			writeVarLong(out, baos.size());
+			out.write(baos.toByteArray());
+		}
+
+		public void writeInt(int v) throws IOException {
+			writeVarLong(out, zigzag(v));
+		}
+
+		public void writeLong(long v) throws IOException {
+			writeVarLong(out, zigzag(v));
+		}
+
+		public void writeUTF(String s) throws IOException {
+			byte[] bytes = s.getBytes("UTF-8");
+			writeVarLong(out, bytes.length);
+			out.write(bytes);
+		}
+
+		public void writeBoolean(boolean v) throws IOException { out.writeBoolean(v); }
+		public void writeByte(int v) throws IOException { out.writeByte(v); }
+		public void writeShort(int v) throws IOException { out.writeShort(v); }
+		public void writeChar(int v) throws IOException { out.writeChar(v); }
+		public void writeFloat(float v) throws IOException { out.writeFloat(v); }
+		public void writeDouble(double v) throws IOException { out.writeDouble(v); }
+		public void writeBytes(String s) throws IOException { out.writeBytes(s); }
+		public void writeChars(String s) throws IOException { out.writeChars(s); }
+		public void write(int b) throws IOException { out.write(b); }
+		public void write(byte[] b) throws IOException { out.write(b); }
+		public void write(byte[] b, int off, int len) throws IOException { out.write(b, off, len); }
+		public void flush() throws IOException { }
+		public void close() throws IOException { }
+	}
+
+	/**
+	 * <p>Title: WireInput</p>
+	 * <p>Description: The ObjectInput counterpart of {@link WireOutput}</p>
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.ot.trace.TraceWireCodec.WireInput</code></p>
+	 */
+	protected static class WireInput implements ObjectInput {
+		/** The underlying input */
+		protected final DataInput in;
+		/** The number of bytes in the frame being read, or -1 if unknown */
+		protected final int frameBytes;
+
+		/**
+		 * Creates a new WireInput
+		 * @param in The underlying input
+		 * @param frameBytes The number of bytes in the frame being read, or -1 if unknown
+		 */
+		protected WireInput(DataInput in, int frameBytes) {
+			this.in = in;
+			this.frameBytes = frameBytes;
+		}
+
+		/**
+		 * Reads a length prefixed byte array. The length is rejected if it cannot fit in the frame. When the frame length is unknown
+		 * the array grows as bytes are read, so a corrupt length fails on the end of the input rather than on allocation.
+		 * @return the read bytes
+		 * @throws IOException thrown on any error reading the bytes or if the length is invalid
+		 */
+		protected byte[] readLengthPrefixed() throws IOException {
+			long length = readVarLong(in);
+			if(length<0 || length>Integer.MAX_VALUE || (frameBytes>=0 && length>frameBytes)) {
+				throw new StreamCorruptedException("Invalid length [" + length + "]" + (frameBytes>=0 ? " for a frame of [" + frameBytes + "] bytes" : ""));
+			}
+			final int len = (int)length;
+			byte[] bytes = new byte[frameBytes>=0 ? len : Math.min(len, INITIAL_READ_CAPACITY)];
+			int read = 0;
+			while(true) {
+				in.readFully(bytes, read, bytes.length - read);
+				read = bytes.length;
+				if(read==len) return bytes;
+				bytes = Arrays.copyOf(bytes, (int)Math.min(len, read*2L));
+			}
+		}
+
+		public Object readObject() throws IOException {
+			int tag = in.readUnsignedByte();
+			if(tag==TAG_NULL) return null;
+			if(tag==TAG_STRING) return readUTF();
+			if(tag==TAG_SERIALIZED) return readSerializedBody();
+			if(tag<1 || tag>TAGGED_CLASSES.length) throw new StreamCorruptedException("Unknown object tag [" + tag + "]");
+			try {
+				Externalizable ext = (Externalizable)TAGGED_CLASSES[tag-1].newInstance();
+				ext.readExternal(this);
+				return ext;
+			} catch (IOException ioe) {
+				throw ioe;
+			} catch (Exception e) {
+				throw new IOException("Failed to read tagged object [" + TAGGED_CLASSES[tag-1].getName() + "]", e);
+			}
+		}
+
+		/**
+		 * Reads a java serialized object written by {@link WireOutput#writeSerialized(Object)}
+		 * @return the read object
+		 * @throws IOException thrown on any error reading the object
+		 */
+		protected Object readSerialized() throws IOException {
+			int tag = in.readUnsignedByte();
+			if(tag!=TAG_SERIALIZED) throw new StreamCorruptedException("Expected serialized object tag but read [" + tag + "]");
+			return readSerializedBody();
+		}
+
+		/**
+		 * Reads the length prefixed body of a java serialized object
+		 * @return the read object
+		 * @throws IOException thrown on any error reading the object
+		 */
+		protected Object readSerializedBody() throws IOException {
+			byte[] bytes = readLengthPrefixed();
+			ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+			try {
+				return ois.readObject();
+			} catch (ClassNotFoundException cne) {
+				throw new IOException("Failed to read serialized object", cne);
+			} finally {
+				ois.close();
+			}
+		}
+
+		public int readInt() throws IOException {
+			return (int)unzigzag(readVarLong(in));
+		}
+
+		public long readLong() throws IOException {
+			return unzigzag(readVarLong(in));
+		}
+
+		public String readUTF() throws IOException {
+			return new String(readLengthPrefixed(), "UTF-8");
+		}
+
+		public boolean readBoolean() throws IOException { return in.readBoolean(); }
+		public byte readByte() throws IOException { return in.readByte(); }
+		public int readUnsignedByte() throws IOException { return in.readUnsignedByte(); }
+		public short readShort() throws IOException { return in.readShort(); }
+		public int readUnsignedShort() throws IOException { return in.readUnsignedShort(); }
+		public char readChar() throws IOException { return in.readChar(); }
+		public float readFloat() throws IOException { return in.readFloat(); }
+		public double readDouble() throws IOException { return in.readDouble(); }
+		public String readLine() throws IOException { return in.readLine(); }
+		public void readFully(byte[] b) throws IOException { in.readFully(b); }
+		public void readFully(byte[] b, int off, int len) throws IOException { in.readFully(b, off, len); }
+		public int skipBytes(int n) throws IOException { return in.skipBytes(n); }
+		public int read() throws IOException { return in.readUnsignedByte(); }
+		public int read(byte[] b) throws IOException { in.readFully(b); return b.length; }
+		public int read(byte[] b, int off, int len) throws IOException { in.readFully(b, off, len); return len; }
+		public long skip(long n) throws IOException { return in.skipBytes((int)n); }
+		public int available() throws IOException { return 0; }
+		public void close() throws IOException { }
+	}
+}
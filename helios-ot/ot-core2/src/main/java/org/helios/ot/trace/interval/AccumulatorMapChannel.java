@@ -25,11 +25,12 @@
 package org.helios.ot.trace.interval;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.apache.log4j.Logger;
 import org.helios.ot.subtracer.pipeline.Phase;
@@ -40,7 +41,9 @@ import org.helios.time.SystemClock;
 
 /**
  * <p>Title: AccumulatorMapChannel</p>
- * <p>Description: Manages one stacks of AccumulatorMaps. It is either <i>OffLine</i> which is being flushed and reset or <i>OnLine</i> which has active submission processors applying traces.</p> 
+ * <p>Description: Manages the per mod accumulator map generations. Each mod has one <i>OnLine</i> generation which the mod's submission processor applies traces to.
+ * At the end of an interval, the flush thread swaps in a fresh generation and drains the retired one once the submission processor has left it,
+ * so submitters never block or get interrupted on a flush boundary.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * @version $LastChangedRevision$
@@ -48,10 +51,14 @@ import org.helios.time.SystemClock;
  */
 
 public class AccumulatorMapChannel {
-	/** An alternating map stack */
-	protected final Map<String, IntervalTrace>[] accumulatorMap;
-	/** The concurrency count of submission processors */
-	protected final AtomicInteger concurrency = new AtomicInteger(0);
+	/** The online accumulator map generation for each mod */
+	protected final AtomicReferenceArray<ConcurrentHashMap<String, IntervalTrace>> accumulatorMap;
+	/** The apply sequence entered by each mod's submission processor */
+	protected final AtomicLongArray applyEntries;
+	/** The apply sequence last exited by each mod's submission processor */
+	protected final AtomicLongArray applyExits;
+	/** The accumulator map size */
+	protected final int accMapSize;
 	/** Instance logger */
 	protected final Logger log = Logger.getLogger(getClass());
 
@@ -62,42 +69,54 @@ public class AccumulatorMapChannel {
 	 * @param mod The OpenTrace mod
 	 * @param accMapSize The accumulator map size
 	 */
-	@SuppressWarnings("unchecked")
 	public AccumulatorMapChannel(int mod, int accMapSize) {
-		accumulatorMap = new HashMap[mod];
+		this.accMapSize = accMapSize;
+		accumulatorMap = new AtomicReferenceArray<ConcurrentHashMap<String, IntervalTrace>>(mod);
+		applyEntries = new AtomicLongArray(mod);
+		applyExits = new AtomicLongArray(mod);
 		for(int i = 0; i < mod; i++) {
-			accumulatorMap[i] = new HashMap<String, IntervalTrace>(accMapSize);
+			accumulatorMap.set(i, newGeneration());
 		}
 	}
 	
+	/**
+	 * Creates a new empty accumulator map generation
+	 * @return a new accumulator map generation
+	 */
+	protected ConcurrentHashMap<String, IntervalTrace> newGeneration() {
+		return new ConcurrentHashMap<String, IntervalTrace>(accMapSize, 0.75f, 2);
+	}
+	
 	/**
 	 * Clears all registered interval traces from the accumulator map channel
 	 */
 	public void resetMapChannel() {
-		for(Map<String, IntervalTrace> accMap: accumulatorMap) {
-			accMap.clear();
+		for(int i = 0; i < accumulatorMap.length(); i++) {
+			accumulatorMap.get(i).clear();
 		}
 	}
 	
 	
 	/**
-	 * Applies the passed collection of traces to the accumulator map for the passed mod
+	 * Applies the passed collection of traces to the online accumulator map generation for the passed mod.
+	 * Only the submission processor assigned to the mod calls this.
 	 * @param mod The mod of the map to apply to
 	 * @param traces The collection of traces to apply
 	 */
 	@SuppressWarnings("unchecked")
 	public void apply(int mod, Collection<Trace> traces) {
 		if(traces==null || traces.isEmpty()) return;
-		concurrency.incrementAndGet();		
+		final long seq = applyEntries.incrementAndGet(mod);
 		try {
-			Map<String, IntervalTrace> map = accumulatorMap[mod];
+			ConcurrentHashMap<String, IntervalTrace> map = accumulatorMap.get(mod);
 			long currentTime = SystemClock.currentClock().getTime();
 			for(Trace trace: traces) {
 				String fqn = trace.getFQN();
 				IntervalTrace intervalTrace =  map.get(fqn);
 				if(intervalTrace==null) {
 					intervalTrace = IntervalTrace.intervalTrace(trace, currentTime);
-					map.put(fqn, intervalTrace);					
+					IntervalTrace carried = map.putIfAbsent(fqn, intervalTrace);
+					if(carried!=null) intervalTrace = carried;
 				}
 				intervalTrace.apply(trace);
 				if(trace.hasAnyPhaseTriggers() && trace.hasTriggersFor(Phase.APPLIED)) {
@@ -105,40 +124,69 @@ public class AccumulatorMapChannel {
 				}
 			}
 		} finally {
-			concurrency.decrementAndGet();
+			applyExits.lazySet(mod, seq);
 		}
 	}
 	
 	/**
-	 * Closes the current interval and returns a set of the closed interval traces
-	 * @param mod The mod of the map to close
+	 * Swaps a fresh generation in for the passed mod and returns the retired one.
+	 * The retired generation may still be in use by an apply that started before the swap, so callers must {@link #awaitRetired(int)} before reading it. 
+	 * @param mod The mod to swap
+	 * @return the retired generation
+	 */
+	public Map<String, IntervalTrace> swap(int mod) {
+		return accumulatorMap.getAndSet(mod, newGeneration());
+	}
+	
+	/**
+	 * Waits until the submission processor for the passed mod has exited any apply that may have read the generation retired by {@link #swap(int)}.
+	 * Applies started after the swap are working against the new generation and are not waited on, so the wait is bounded by one reader batch.
+	 * @param mod The mod to wait on
+	 */
+	public void awaitRetired(int mod) {
+		final long entered = applyEntries.get(mod);
+		while(applyExits.get(mod) < entered) {
+			Thread.yield();
+		}
+	}
+	
+	/**
+	 * Closes the interval held in a retired generation and returns a set of the closed interval traces.
+	 * The reset interval traces are carried forward into the mod's online generation unless a submission has already created one for the same metric,
+	 * so metrics with no activity in the next interval are still flushed.
+	 * @param mod The mod of the retired generation
+	 * @param retired The retired generation returned from {@link #swap(int)}
 	 * @param intervalEndTimestamp The end timestamp of this interval and the start of the next one
 	 * @return A collection of closed interval traces
 	 */
 	@SuppressWarnings("unchecked")
-	public Collection<IntervalTrace> cloneReset(int mod, long intervalEndTimestamp) {		
-		Map<String, IntervalTrace> map = accumulatorMap[mod];
-		Set<IntervalTrace> closed = new HashSet<IntervalTrace>(map.size());
+	public Collection<IntervalTrace> cloneReset(int mod, Map<String, IntervalTrace> retired, long intervalEndTimestamp) {		
+		ConcurrentHashMap<String, IntervalTrace> online = accumulatorMap.get(mod);
+		Set<IntervalTrace> closed = new HashSet<IntervalTrace>(retired.size());
 		IntervalAccumulator ia = IntervalAccumulator.getInstance(); 
-		for(IntervalTrace it: map.values()) {
-			//log.info("Flushing interval trace [" + it.getFQN() + "/" + System.identityHashCode(it) + "]");
-			//if(log.isTraceEnabled()) log.trace(it);
+		for(Map.Entry<String, IntervalTrace> entry: retired.entrySet()) {
+			IntervalTrace it = entry.getValue();
 			IntervalTrace closedInterval = it.cloneReset(intervalEndTimestamp);
 			if(closedInterval.hasAnyPhaseTriggers() && closedInterval.hasTriggersFor(Phase.FLUSHED)) {
 				closedInterval.runPhaseTriggers(Phase.FLUSHED);
 			}			
 			try { ia.fireFlushIntervalTraceEvent(closedInterval); } catch (Exception e) {e.printStackTrace(System.err);}
 			closed.add(closedInterval);
+			online.putIfAbsent(entry.getKey(), it);
 		}
 		return closed;
 	}
 	
 	/**
-	 * Returns the number of submission threads currently processing in this channel
-	 * @return the number of submission threads currently processing in this channel
+	 * Returns the number of submission threads currently applying traces in this channel
+	 * @return the number of submission threads currently applying traces in this channel
 	 */
 	public int getConcurrency() {
-		return concurrency.get();
+		int busy = 0;
+		for(int i = 0; i < applyEntries.length(); i++) {
+			if(applyExits.get(i) < applyEntries.get(i)) busy++;
+		}
+		return busy;
 	}
 
 }
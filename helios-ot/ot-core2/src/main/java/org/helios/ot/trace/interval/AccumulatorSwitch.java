@@ -25,12 +25,10 @@
 package org.helios.ot.trace.interval;
 
 import java.util.Collection;
-import java.util.concurrent.CountDownLatch;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.log4j.Logger;
 import org.helios.ot.subtracer.pipeline.Phase;
@@ -42,7 +40,8 @@ import org.helios.time.SystemClock;
 
 /**
  * <p>Title: AccumulatorSwitch</p>
- * <p>Description: The main entry point for {@link SubmissionProcessor}s to apply traces to intervals in the current {@link AccumulatorMapChannel}.</p> 
+ * <p>Description: The main entry point for {@link SubmissionProcessor}s to apply traces to intervals in the current {@link AccumulatorMapChannel}.
+ * On a flush signal, the switch retires each mod's accumulator map generation and drains it on the flush thread while the submission processors keep applying to the new generation.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * @version $LastChangedRevision$
@@ -50,18 +49,6 @@ import org.helios.time.SystemClock;
  */
 
 public class AccumulatorSwitch {
-	/** Switch control that determines if submission processors are in submit or flush mode */
-	protected final AtomicBoolean accSwitch = new AtomicBoolean(true);
-	/** A countdown latch, counted down by submission processors as they finish processing flush signals */
-	protected AtomicReference<CountDownLatch> submissionProcessorLatch = new AtomicReference<CountDownLatch>(null);
-	/** A countdown latch, counted down by the accumulator switch when the flush is complete that the submission processors wait on once they complete their flush */
-	protected AtomicReference<CountDownLatch> flushCompleteLatch = new AtomicReference<CountDownLatch>(null);
-//	/** The flush set that submission processors flush their cloned IntervalTraces into */
-//	protected final Set<IntervalTrace>[] intervalTraces;
-	/** The thread pool containing the submission processor threads */
-	protected final ThreadGroup submissionProcessors;
-	/** The current flush period timestamp */
-	protected volatile long flushTimestamp = 0L;
 	/** The switched channel */
 	protected final AccumulatorMapChannel channel;
 	/** Instance logger */
@@ -72,22 +59,20 @@ public class AccumulatorSwitch {
 	protected final int mod;
 	/** The group flush counter */
 	protected final AtomicLong flushCounter = new AtomicLong(0L);
+	/** The elapsed time of the last generation swap in ns. */
+	protected final AtomicLong lastSwapTime = new AtomicLong(0L);
+	/** The elapsed time of the last retired generation drain in ns. */
+	protected final AtomicLong lastDrainTime = new AtomicLong(0L);
 	
 	/**
 	 * Creates a new AccumulatorSwitch
 	 * @param mod The OpenTrace Mod
 	 * @param accMapSize The channel map size
-	 * @param submissionProcessors The submission processor thread group
 	 */
-	public AccumulatorSwitch(int mod, int accMapSize, ThreadGroup submissionProcessors) {
+	public AccumulatorSwitch(int mod, int accMapSize) {
 		this.accMapSize = accMapSize;
 		this.mod = mod;
-		this.submissionProcessors = submissionProcessors;
 		channel = new AccumulatorMapChannel(mod, accMapSize);
-//		intervalTraces = new HashSet[mod];
-//		for(int i = 0; i < mod; i++) {
-//			intervalTraces[i] =  new HashSet<IntervalTrace>(512);
-//		}
 	}
 	
 	/**
@@ -100,36 +85,27 @@ public class AccumulatorSwitch {
 	}
 	
 	/**
-	 * Informs the submission processor if it should be processing submissions or flushing
-	 * @return true if it should be processing submissions, false if it should flushing
+	 * Drains a retired accumulator map generation, committing the closed interval traces to the tracer manager.
+	 * @param mod The mod of the retired generation
+	 * @param retired The retired generation
+	 * @param flushTimestamp The end timestamp of the interval
 	 */
-	boolean processSubmissions() {
-		return accSwitch.get();
-	}
-	
-	/**
-	 * The submission processors wait on this after they flush
-	 * @param mod The mod of the thread waiting
-	 */
-	void waitForFlushComplete(int mod) {
-		try {
-			flushCompleteLatch.get().await();
-		} catch (InterruptedException ie) {
-			log.error("SubmissionProcessor#" + mod + " Interrupted Waiting on FlushComplete Latch", ie);
-			// TODO: What do we do here ? 
-		}
+	@SuppressWarnings("unchecked")
+	protected void flush(int mod, Map<String, IntervalTrace> retired, long flushTimestamp) {
+		if(retired.isEmpty()) return;
+		SystemClock.startTimer();
+		Collection<IntervalTrace> flushed = channel.cloneReset(mod, retired, flushTimestamp);
+		final int metricCount = flushed.size();
+		commit(flushed);
+		if(log.isTraceEnabled()) log.trace("Mod#" + mod + " Flushed [" + metricCount + "] traces in " + SystemClock.endTimer());
 	}
 	
-	
 	/**
-	 * The submission processor threads call a flush on their interval traces here.
-	 * @param mod The mod of the interval traces to flush
+	 * Commits a collection of closed interval traces to the tracer manager
+	 * @param flushed The closed interval traces
 	 */
 	@SuppressWarnings("unchecked")
-	void flush(int mod) {
-		SystemClock.startTimer();
-		Collection<IntervalTrace> flushed = channel.cloneReset(mod, flushTimestamp);
-		final int metricCount = flushed.size();
+	protected void commit(Collection<IntervalTrace> flushed) {
 		TraceCollection tc = TracerManager3.getInstance().getNextTraceCollectionSlot();
 		if(tc!=null) {
 			tc.load(flushed);
@@ -140,8 +116,6 @@ public class AccumulatorSwitch {
 				it.runPhaseTriggers(Phase.ATTACHED);
 			}
 		}
-		if(log.isTraceEnabled()) log.trace("Submission Processor#" + mod + " Flushed [" + metricCount + "] traces in " + SystemClock.endTimer());
-		submissionProcessorLatch.get().countDown();
 	}
 	
 	/**
@@ -152,76 +126,66 @@ public class AccumulatorSwitch {
 	}
 	
 	/**
-	 * When a submission processor has nothing to accumulate on a flush signal, it will call this instead of flush(mod).
-	 * Since there is no work, there's no point in firing off an empty trace collection,
-	 * BUT, WE NEED TO DROP THE LATCH.
-	 * @param mod
+	 * Returns the elapsed time of the last generation swap in ns.
+	 * @return the elapsed time of the last generation swap
+	 */
+	public long getLastSwapTime() {
+		return lastSwapTime.get();
+	}
+
+	/**
+	 * Returns the elapsed time of the last retired generation drain in ns.
+	 * @return the elapsed time of the last retired generation drain
 	 */
-	void nullFlush(int mod) {
-		submissionProcessorLatch.get().countDown();
+	public long getLastDrainTime() {
+		return lastDrainTime.get();
 	}
 	
 	private final AtomicInteger concurrency = new AtomicInteger(0);
 	
 	/**
-	 * Issues a channel switch at the end of an interval
+	 * Issues a channel switch at the end of an interval.
+	 * A fresh generation is swapped in for every mod first so the next interval starts at the same instant for all mods,
+	 * then each retired generation is drained once its submission processor has left it.
 	 * @param intervalEndTimestamp The end timestamp of this interval and the start of the next one
 	 */	
+	@SuppressWarnings("unchecked")
 	void switchChannel(long intervalEndTimestamp) {
 		int threads = concurrency.incrementAndGet();
 		if(threads>1) {
 			log.error("\n\t! ! ! ! ! ! !\n\tMultiple Threads in SwitchChannel:" + threads  + "\n\t! ! ! ! ! ! !");
 		}
-		submissionProcessorLatch.set(new CountDownLatch(mod));
-		flushCompleteLatch.set(new CountDownLatch(1));
-		// Switch the submission processors to flush mode
-		accSwitch.set(false);
-		// Set the current flush period
-		flushTimestamp = SystemClock.time();
-		// Interrupt the submission processors in case they're waiting on a trace
-		submissionProcessors.interrupt();
 		try {
+			final long flushTimestamp = SystemClock.time();
 			long start = System.nanoTime();
-			// Waits for submission processors to complete their flush
-			submissionProcessorLatch.get().await();
+			Map<String, IntervalTrace>[] retired = new Map[mod];
+			for(int i = 0; i < mod; i++) {
+				retired[i] = channel.swap(i);
+			}
 			long elapsed = System.nanoTime()-start;
-			// Switch the submission processors back to submit mode
-			accSwitch.set(true);
-			// the flush is complete so drop the flush complete latch and let the submission processors continue
-			flushCompleteLatch.get().countDown();
-			if(log.isDebugEnabled()) log.debug("Submission Processors Flushed interval traces in [" + elapsed + "] ns. [" + TimeUnit.MILLISECONDS.convert(elapsed, TimeUnit.NANOSECONDS) + "] ms.");
-			int i = 0;
-			SystemClock.startTimer();
-			// This needs to go in a seperate thread.
-//			IntervalAccumulator ia = IntervalAccumulator.getInstance(); 
-//			for(Set<IntervalTrace> traceSet: intervalTraces) {
-//				for(IntervalTrace trace: traceSet) {
-//					i++;
-//					try { JMXMetric.publish(trace); } catch (Exception e) {e.printStackTrace(System.err);}
-//					try { ia.fireFlushIntervalTraceEvent(trace); } catch (Exception e) {e.printStackTrace(System.err);}
-//				}
-//			}
-//			ElapsedTime et = SystemClock.endTimer();
-//			log.info("Updated [" + i + "] OpenMetricTypes in " + et);
-			
-		} catch (InterruptedException ie) {
-			log.error("FlushProcessor Interrupted Waiting on SubmissionProcessor Latch", ie);
-			// TODO: What do we do here ? 			
+			lastSwapTime.set(elapsed);
+			if(log.isDebugEnabled()) log.debug("Swapped accumulator map generations in [" + elapsed + "] ns.");
+			start = System.nanoTime();
+			for(int i = 0; i < mod; i++) {
+				channel.awaitRetired(i);
+				try {
+					flush(i, retired[i], flushTimestamp);
+				} catch (Exception e) {
+					log.error("Failed to flush retired generation for Mod#" + i, e);
+				}
+			}
+			try {
+				Collection<IntervalTrace> handled = MetricHandle.flushAll(flushTimestamp);
+				if(!handled.isEmpty()) commit(handled);
+			} catch (Exception e) {
+				log.error("Failed to flush metric handles", e);
+			}
+			elapsed = System.nanoTime()-start;
+			lastDrainTime.set(elapsed);
+			flushCounter.incrementAndGet();
+			if(log.isDebugEnabled()) log.debug("Drained retired generations in [" + elapsed + "] ns. [" + TimeUnit.MILLISECONDS.convert(elapsed, TimeUnit.NANOSECONDS) + "] ms.");
 		} finally {
 			concurrency.decrementAndGet();
 		}
-		
-//		AccumulatorMapChannel closingChannel = channels[accSwitch.get() ? 0 : 1];
-//		accSwitch.set(!accSwitch.get());
-//		long start = System.nanoTime();
-//		while(closingChannel.getConcurrency()>0) {
-//			Thread.yield();
-//		}
-//		long elapsed = System.nanoTime() - start;
-//		log.info("AccSwitch Waited [" + elapsed + "] ns. for closing channel zero concurrency");
-//		Set<IntervalTrace> intervalTraces = new HashSet<IntervalTrace>(mod*accMapSize);
-//		for(int i = 0; i < mod; i++) {
-//			intervalTraces.addAll(closingChannel.cloneReset(i, intervalEndTimestamp));
-//		}
 	}
 }
@@ -310,7 +310,7 @@ public class IntervalAccumulator extends ManagedObjectDynamicMBean implements In
 			.setPoolObjectName(SCHED_OBJECT_NAME)  // EXEC_OBJECT_NAME,  SCHED_OBJECT_NAME 
 			.setJmxDomains("DefaultDomain")
 			.build();
-		accSwitch = new AccumulatorSwitch(mod, accumulatorMapSize, executor.getThreadGroup());
+		accSwitch = new AccumulatorSwitch(mod, accumulatorMapSize);
 		flushProcessor = new FlushProcessor(accSwitch, this);
 		try {
 			
@@ -810,6 +810,24 @@ public class IntervalAccumulator extends ManagedObjectDynamicMBean implements In
 		return intervalDropCounter.get();
 	}
 	
+	/**
+	 * Returns the elapsed time of the last accumulator map generation swap in ns.
+	 * @return the elapsed time of the last generation swap
+	 */
+	@JMXAttribute(name="LastGenerationSwapTime", description="The elapsed time of the last accumulator map generation swap in ns.", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getLastGenerationSwapTime() {
+		return accSwitch.getLastSwapTime();
+	}
+	
+	/**
+	 * Returns the elapsed time of the last retired generation drain in ns.
+	 * @return the elapsed time of the last retired generation drain
+	 */
+	@JMXAttribute(name="LastGenerationDrainTime", description="The elapsed time of the last retired accumulator map generation drain in ns.", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getLastGenerationDrainTime() {
+		return accSwitch.getLastDrainTime();
+	}
+	
 	/**
 	 * Returns the total number of submission drops since the last reset
 	 * @return the total number of submission drops since the last reset
@@ -0,0 +1,249 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ *
+ */
+package org.helios.ot.trace.interval;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.helios.ot.trace.IntervalTrace;
+import org.helios.ot.trace.MetricId;
+import org.helios.ot.type.MetricType;
+import org.helios.time.SystemClock;
+
+/**
+ * <p>Title: MetricHandle</p>
+ * <p>Description: A pre-bound handle to a numeric interval metric. The metric name and {@link MetricId} are resolved once when the handle is acquired
+ * and each subsequent {@link #trace(long)} records into a primitive slot, so no names, builders or traces are created per call.
+ * The slots are drained into a closed {@link IntervalTrace} by the {@link AccumulatorSwitch} at the end of each interval.</p>
+ * <p>Handles support the averaging, sticky and incident metric types. Histogram types need every sample and are not supported. A metric should be traced either through a handle or through the regular tracer methods, not both.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.ot.trace.interval.MetricHandle</code></p>
+ */
+
+public class MetricHandle {
+	/** The handle registry keyed by metric id */
+	private static final Map<MetricId, MetricHandle> handles = new ConcurrentHashMap<MetricId, MetricHandle>(128);
+	/** Static class logger */
+	protected static final Logger log = Logger.getLogger(MetricHandle.class);
+
+	/** The bound metric id */
+	protected final MetricId metricId;
+	/** The interval trace the drained slots are aggregated into. Only accessed by the flush thread. */
+	protected final IntervalTrace<?, ?> intervalTrace;
+	/** The two alternating sample slots */
+	protected final Slot[] slots = new Slot[]{new Slot(), new Slot()};
+	/** The slot currently being recorded into */
+	protected volatile Slot current = slots[0];
+
+	/**
+	 * Returns the handle for the passed metric type and fully qualified metric name, creating it if it does not exist
+	 * @param type The metric type
+	 * @param fullName The fully qualified metric name
+	 * @return the metric handle
+	 */
+	public static MetricHandle getInstance(MetricType type, CharSequence fullName) {
+		if(type==null) throw new IllegalArgumentException("Metric type was null", new Throwable());
+		if(type.isDelta() || type.isHistogram() || !(type.isMinMaxAvg() || type.isIncident())) {
+			throw new IllegalArgumentException("The metric type [" + type + "] is not supported by metric handles", new Throwable());
+		}
+		MetricId metricId = MetricId.getInstance(type, fullName);
+		if(metricId.getType()!=type) {
+			throw new IllegalArgumentException("The metric [" + fullName + "] is already registered as [" + metricId.getType() + "]", new Throwable());
+		}
+		MetricHandle handle = handles.get(metricId);
+		if(handle==null) {
+			synchronized(handles) {
+				handle = handles.get(metricId);
+				if(handle==null) {
+					handle = new MetricHandle(metricId);
+					handles.put(metricId, handle);
+				}
+			}
+		}
+		return handle;
+	}
+
+	/**
+	 * Drains all registered handles, closing the current interval for each
+	 * @param intervalEndTimestamp The end timestamp of this interval and the start of the next one
+	 * @return a collection of the closed interval traces
+	 */
+	@SuppressWarnings("unchecked")
+	static Collection<IntervalTrace> flushAll(long intervalEndTimestamp) {
+		if(handles.isEmpty()) return Collections.emptySet();
+		List<IntervalTrace> closed = new ArrayList<IntervalTrace>(handles.size());
+		for(MetricHandle handle: handles.values()) {
+			IntervalTrace it = handle.flush(intervalEndTimestamp);
+			if(it!=null) closed.add(it);
+		}
+		return closed;
+	}
+
+	/**
+	 * Returns the number of registered metric handles
+	 * @return the number of registered metric handles
+	 */
+	public static int getHandleCount() {
+		return handles.size();
+	}
+
+	/**
+	 * Creates a new MetricHandle. The metric id is pinned since the handle holds it for the life of the JVM 
+	 * without resolving it from the registry again.
+	 * @param metricId The bound metric id
+	 */
+	private MetricHandle(MetricId metricId) {
+		this.metricId = metricId;
+		metricId.pin();
+		intervalTrace = IntervalTrace.intervalTrace(metricId, SystemClock.time());
+	}
+
+	/**
+	 * Records a sample
+	 * @param value The sample value. For incident types, the number of incidents.
+	 */
+	public void trace(long value) {
+		for(;;) {
+			final Slot slot = current;
+			slot.writers.incrementAndGet();
+			if(slot==current) {
+				slot.record(value);
+				slot.writers.decrementAndGet();
+				return;
+			}
+			// the slot was retired after we read it, so retry against the new one
+			slot.writers.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Records a sample
+	 * @param value The sample value. For incident types, the number of incidents.
+	 */
+	public void trace(int value) {
+		trace((long)value);
+	}
+
+	/**
+	 * Records one incident
+	 */
+	public void trace() {
+		trace(1L);
+	}
+
+	/**
+	 * Returns the bound metric id
+	 * @return the bound metric id
+	 */
+	public MetricId getMetricId() {
+		return metricId;
+	}
+
+	/**
+	 * Retires the current slot, aggregates it into the interval trace and closes the interval.
+	 * Only called by the flush thread.
+	 * @param intervalEndTimestamp The end timestamp of this interval and the start of the next one
+	 * @return the closed interval trace or null if this handle has never recorded a sample
+	 */
+	@SuppressWarnings("unchecked")
+	IntervalTrace flush(long intervalEndTimestamp) {
+		final Slot retired = current;
+		current = retired==slots[0] ? slots[1] : slots[0];
+		while(retired.writers.get()>0) {
+			Thread.yield();
+		}
+		final long count = retired.count.get();
+		if(count>0) {
+			intervalTrace.applyAggregate(count, retired.total.get(), retired.min.get(), retired.max.get());
+		}
+		retired.reset();
+		if(intervalTrace.getIntervalTraceValue()==null) return null;
+		IntervalTrace closed = intervalTrace.cloneReset(intervalEndTimestamp);
+		try {
+			IntervalAccumulator.getInstance().fireFlushIntervalTraceEvent(closed);
+		} catch (Exception e) {
+			log.warn("Failed to fire flush event for [" + metricId + "]", e);
+		}
+		return closed;
+	}
+
+	/**
+	 * <p>Title: Slot</p>
+	 * <p>Description: A primitive sample accumulator</p>
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.ot.trace.interval.MetricHandle.Slot</code></p>
+	 */
+	protected static class Slot {
+		/** The number of threads currently recording into this slot */
+		protected final AtomicInteger writers = new AtomicInteger(0);
+		/** The sample count */
+		protected final AtomicLong count = new AtomicLong(0L);
+		/** The sample total */
+		protected final AtomicLong total = new AtomicLong(0L);
+		/** The minimum sample */
+		protected final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+		/** The maximum sample */
+		protected final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+		/**
+		 * Records a sample into this slot
+		 * @param value The sample value
+		 */
+		void record(long value) {
+			count.incrementAndGet();
+			total.addAndGet(value);
+			long m = min.get();
+			while(value<m && !min.compareAndSet(m, value)) {
+				m = min.get();
+			}
+			m = max.get();
+			while(value>m && !max.compareAndSet(m, value)) {
+				m = max.get();
+			}
+		}
+
+		/**
+		 * Resets this slot
+		 */
+		void reset() {
+			count.set(0L);
+			total.set(0L);
+			min.set(Long.MAX_VALUE);
+			max.set(Long.MIN_VALUE);
+		}
+	}
+
+}
@@ -26,10 +26,8 @@ package org.helios.ot.trace.interval;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 
 import org.apache.log4j.Logger;
 import org.helios.ot.trace.Trace;
@@ -94,58 +92,30 @@ public class SubmissionProcessor implements Runnable {
 	/**
 	 * Submission processing loop. The sequence is:<ol>
 	 * 		<li>Read a batch of traces off the submission queue</li>
-	 * 		<li>Acquire the submission lock</li>
-	 * 		<li>Apply the batch of traces to the accumulator map</li>
-	 * 		<li>Release the submission lock</li>
+	 * 		<li>Apply the batch of traces to the online accumulator map generation</li>
 	 *  </ol>
+	 *  Flushes are handled by the {@link AccumulatorSwitch} swapping generations underneath this loop, so it never pauses on an interval boundary.
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public void run() {
 		processorThread = Thread.currentThread();
 		if(log.isDebugEnabled()) log.debug("SubmissionProcessor Started Processing");
-		boolean intervalHasAction = false;
 		while(run.get()) {
 			try {					
-				if(accSwitch.processSubmissions()) {
-					// We're in SUBMIT mode					
-					List<Trace> batch = new ArrayList<Trace>(readerBatchSize);
-					int traceCount = 1;
-					Trace trace = queue.take();
-					batch.add(trace);					
-					while(traceCount<readerBatchSize) {
-						trace = queue.poll();
-						if(trace==null) break;
-						batch.add(trace);
-						traceCount++;
-					}
-					if(log.isTraceEnabled()) log.trace("Acquired [" + traceCount + "] Traces to Apply");
-					if(traceCount > 0) {
-						intervalHasAction = true;
-						accSwitch.apply(mod, batch);
-					}									
-				} else {
-					// We're in FLUSH mode
-//					if(intervalHasAction) {
-//						accSwitch.flush(mod);						
-//					} else {
-//						accSwitch.nullFlush(mod);
-//					}
-					// ===============================================
-					// It seems wasteful to ALWAYS flush items even
-					// when we know there was no action in this mod.
-					// This is a future optimization where some endpoint
-					// will account for missing interval traces and 
-					// assume they are zero-action traces.
-					// ===============================================
-					accSwitch.flush(mod);
-					accSwitch.waitForFlushComplete(mod);
-					intervalHasAction = false;
-					
+				List<Trace> batch = new ArrayList<Trace>(readerBatchSize);
+				int traceCount = 1;
+				Trace trace = queue.take();
+				batch.add(trace);					
+				while(traceCount<readerBatchSize) {
+					trace = queue.poll();
+					if(trace==null) break;
+					batch.add(trace);
+					traceCount++;
 				}
+				if(log.isTraceEnabled()) log.trace("Acquired [" + traceCount + "] Traces to Apply");
+				accSwitch.apply(mod, batch);
 			} catch (InterruptedException ie) {				
 				if(run.get()) {
-					//if(log.isDebugEnabled()) log.debug("SubmissionProcessor Interrupted");
 					// Reset the interrupted state
 					Thread.interrupted();
 				}
@@ -30,6 +30,8 @@ import java.io.InputStream;
 import org.helios.helpers.ExternalizationHelper;
 import org.helios.helpers.StringHelper;
 import org.helios.ot.trace.types.interval.ByteArrayIntervalTraceValue;
+import org.helios.ot.trace.types.interval.DistinctStringIntervalTraceValue;
+import org.helios.ot.trace.types.interval.HistogramIntervalTraceValue;
 import org.helios.ot.trace.types.interval.IIntervalTraceValue;
 import org.helios.ot.trace.types.interval.IncidentIntervalTraceValue;
 import org.helios.ot.trace.types.interval.IntIntervalTraceValue;
@@ -37,6 +39,7 @@ import org.helios.ot.trace.types.interval.LongIntervalTraceValue;
 import org.helios.ot.trace.types.interval.StringIntervalTraceValue;
 import org.helios.ot.trace.types.interval.StringsIntervalTraceValue;
 import org.helios.ot.trace.types.interval.TimestampIntervalTraceValue;
+import org.helios.ot.trace.types.interval.TopKStringIntervalTraceValue;
 
 /**
  * <p>Title: ITraceValueFactory</p>
@@ -83,7 +86,15 @@ public interface ITraceValueFactory<T extends ITraceValue> {
 		}		
 	}
 	
-	
+	/**
+	 * <p>Title: HistogramTraceValueFactory</p>
+	 * <p>Description:A TraceValue factory associated to a Histogram TraceValueType. Single values are longs and intervals record a histogram.</p> 
+	 */
+	public static class HistogramTraceValueFactory<T extends LongTraceValue> extends LongTraceValueFactory<T> {
+		public HistogramIntervalTraceValue<T> createIntervalTraceValue(T...traces) {
+			return new HistogramIntervalTraceValue<T>(traces);
+		}		
+	}
 	
 	
 	/**
@@ -210,6 +221,48 @@ public interface ITraceValueFactory<T extends ITraceValue> {
 		}		
 	}
 	
+	/**
+	 * <p>Title: DistinctStringTraceValueFactory</p>
+	 * <p>Description: TraceValue factory for a distinct count of strings. Single values are strings and intervals estimate the distinct count.</p> 
+	 */
+	public static class DistinctStringTraceValueFactory<T extends StringTraceValue> implements ITraceValueFactory<T> {
+		public Class<? extends ITraceValue> getTraceValueClass() {
+			return StringTraceValue.class;
+		}		
+		public StringTraceValue createTraceValue(Object val) {
+			if(val==null) throw new IllegalArgumentException("Passed value was null", new Throwable());
+			return new StringTraceValue(val.toString());
+		}
+		public StringTraceValue createTraceValue(Number val) {
+			if(val==null) throw new IllegalArgumentException("Passed value was null", new Throwable());
+			return new StringTraceValue(val.toString());
+		}
+		public DistinctStringIntervalTraceValue<T> createIntervalTraceValue(T... traces) {
+			return new DistinctStringIntervalTraceValue<T>(traces);
+		}		
+	}
+	
+	/**
+	 * <p>Title: TopKStringTraceValueFactory</p>
+	 * <p>Description: TraceValue factory for the most frequent strings. Single values are strings and intervals track the heavy hitters.</p> 
+	 */
+	public static class TopKStringTraceValueFactory<T extends StringTraceValue> implements ITraceValueFactory<T> {
+		public Class<? extends ITraceValue> getTraceValueClass() {
+			return StringTraceValue.class;
+		}		
+		public StringTraceValue createTraceValue(Object val) {
+			if(val==null) throw new IllegalArgumentException("Passed value was null", new Throwable());
+			return new StringTraceValue(val.toString());
+		}
+		public StringTraceValue createTraceValue(Number val) {
+			if(val==null) throw new IllegalArgumentException("Passed value was null", new Throwable());
+			return new StringTraceValue(val.toString());
+		}
+		public TopKStringIntervalTraceValue<T> createIntervalTraceValue(T... traces) {
+			return new TopKStringIntervalTraceValue<T>(traces);
+		}		
+	}
+	
 	/**
 	 * <p>Title: ByteArrayTraceValueFactory</p>
 	 * <p>Description: TraceValue factory for ByteArrays</p> 
@@ -27,12 +27,15 @@ package org.helios.ot.trace.types;
 import gnu.trove.map.hash.TIntObjectHashMap;
 
 import org.helios.ot.trace.types.ITraceValueFactory.ByteArrayTraceValueFactory;
+import org.helios.ot.trace.types.ITraceValueFactory.DistinctStringTraceValueFactory;
+import org.helios.ot.trace.types.ITraceValueFactory.HistogramTraceValueFactory;
 import org.helios.ot.trace.types.ITraceValueFactory.IncidentTraceValueFactory;
 import org.helios.ot.trace.types.ITraceValueFactory.IntTraceValueFactory;
 import org.helios.ot.trace.types.ITraceValueFactory.LongTraceValueFactory;
 import org.helios.ot.trace.types.ITraceValueFactory.StringTraceValueFactory;
 import org.helios.ot.trace.types.ITraceValueFactory.StringsTraceValueFactory;
 import org.helios.ot.trace.types.ITraceValueFactory.TimestampTraceValueFactory;
+import org.helios.ot.trace.types.ITraceValueFactory.TopKStringTraceValueFactory;
 
 /**
  * <p>Title: TraceValueType</p>
@@ -63,7 +66,10 @@ public enum TraceValueType  {
 	INTERVAL_STRINGS_TYPE(true, false, String[].class, STRINGS_TYPE.factory),
 	INTERVAL_INCIDENT_TYPE(true, false, long.class, INCIDENT_TYPE.factory),
 	INTERVAL_TIMESTAMP_TYPE(true, true, long.class, TIMESTAMP_TYPE.factory),
-	INTERVAL_BYTES_TYPE(true, false, byte[].class, BYTES_TYPE.factory);
+	INTERVAL_BYTES_TYPE(true, false, byte[].class, BYTES_TYPE.factory),
+	INTERVAL_HISTOGRAM_TYPE(true, true, long.class, new HistogramTraceValueFactory<LongTraceValue>()),
+	INTERVAL_DISTINCT_TYPE(true, false, long.class, new DistinctStringTraceValueFactory<StringTraceValue>()),
+	INTERVAL_TOPK_TYPE(true, false, String[].class, new TopKStringTraceValueFactory<StringTraceValue>());
 
 	
 	public Class<? extends ITraceValueFactory> getTraceValueClass() {
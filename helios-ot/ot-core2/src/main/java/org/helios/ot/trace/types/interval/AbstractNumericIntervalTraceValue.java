@@ -134,6 +134,21 @@ public abstract class AbstractNumericIntervalTraceValue<T extends INumericTraceV
 		davg = _avg();
 	}
 	
+	/**
+	 * Aggregates a pre-accumulated block of samples into this interval trace value.
+	 * Used by {@link org.helios.ot.trace.interval.MetricHandle}s which accumulate primitives outside of the trace pipeline.
+	 * @param sampleCount The number of samples in the block. The interval count saturates at <code>Integer.MAX_VALUE</code>.
+	 * @param sampleTotal The sum of the samples in the block
+	 * @param sampleMin The minimum sample in the block
+	 * @param sampleMax The maximum sample in the block
+	 */
+	public void applyAggregate(long sampleCount, double sampleTotal, long sampleMin, long sampleMax) {
+		if(sampleCount<1) return;
+		count = (int)Math.min(Integer.MAX_VALUE, count + sampleCount);
+		total += sampleTotal;
+		davg = _avg();
+	}
+	
 	/**
 	 * Returns the average value as a double
 	 * @return the average value as a double
@@ -0,0 +1,168 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.ot.trace.types.interval;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import org.helios.ot.trace.types.StringTraceValue;
+import org.helios.ot.trace.types.TraceValueType;
+import org.helios.ot.type.MetricType;
+
+/**
+ * <p>Title: DistinctStringIntervalTraceValue</p>
+ * <p>Description: Trace value for an interval of strings which reports the estimated number of distinct strings traced during the interval.
+ * The strings themselves are not retained. They are offered to a fixed size {@link HyperLogLog} which travels with the closed interval
+ * so that intervals from different agents or periods can be merged with {@link #merge(DistinctStringIntervalTraceValue)}.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.ot.trace.types.interval.DistinctStringIntervalTraceValue</code></p>
+ */
+public class DistinctStringIntervalTraceValue<T extends StringTraceValue> extends AbstractIntervalTraceValue<T> {
+	/** The distinct count estimator for the interval */
+	protected HyperLogLog sketch;
+
+	/**
+	 * Creates a new DistinctStringIntervalTraceValue 
+	 */
+	public DistinctStringIntervalTraceValue() {
+		super(TraceValueType.INTERVAL_DISTINCT_TYPE);
+		sketch = new HyperLogLog();
+	}
+	
+	/**
+	 * Creates a new DistinctStringIntervalTraceValue 
+	 * @param traces The initial traces to apply to this interval
+	 */
+	public DistinctStringIntervalTraceValue(T...traces) {
+		super(TraceValueType.INTERVAL_DISTINCT_TYPE);
+		sketch = new HyperLogLog();
+		if(traces!=null) {
+			for(T trace: traces) {
+				apply(trace);
+			}
+		}
+	}
+	
+	/**
+	 * Copy Constructor which hands the passed estimator to the new instance
+	 * @param distinctStringIntervalTraceValue The interval trace to clone from
+	 * @param sketch The estimator for the new instance
+	 */
+	protected DistinctStringIntervalTraceValue(DistinctStringIntervalTraceValue<T> distinctStringIntervalTraceValue, HyperLogLog sketch) {
+		super(distinctStringIntervalTraceValue);
+		this.sketch = sketch;
+	}
+
+	/**
+	 * Returns the estimated number of distinct strings traced during this interval
+	 * @return the estimated distinct count
+	 */
+	@Override
+	public Long getValue() {
+		return sketch.cardinality();
+	}
+
+	/**
+	 * Aggregates the passed ITraceValue into this interval trace value
+	 * @param value The ITraceValue to apply
+	 */
+	@Override
+	public void apply(T value) {		
+		super.apply(value);
+		sketch.offer(value.getValue());
+	}
+	
+	/**
+	 * Merges the passed interval trace value into this one. 
+	 * Used to combine distinct counts from different agents or periods.
+	 * @param other The interval trace value to merge into this one
+	 */
+	public void merge(DistinctStringIntervalTraceValue<?> other) {
+		if(other==null) throw new IllegalArgumentException("The passed DistinctStringIntervalTraceValue was null", new Throwable());
+		count += other.count;
+		sketch.merge(other.sketch);
+	}
+	
+	/**
+	 * Clones the state of this interval trace value and then resets it's state for the next interval.
+	 * The clone takes over this instance's estimator and this instance starts the next interval with an empty one.
+	 * @param metricType The metric type of the owning trace passed so that the interval value 
+	 * can execute the reset with the correct semantics.
+	 * @return A clone of this object prior to reset.
+	 */
+	public DistinctStringIntervalTraceValue<T> cloneReset(MetricType metricType) {
+		if(metricType==null) throw new IllegalArgumentException("Passed MetricType was null", new Throwable());		
+		DistinctStringIntervalTraceValue<T> clone = new DistinctStringIntervalTraceValue<T>(this, sketch);
+		sketch = sketch.newEmpty();
+		super.cloneReset(metricType);
+		return clone;
+	}
+	
+	/**
+	 * Returns the interval's distinct count estimator
+	 * @return the interval's distinct count estimator
+	 */
+	public HyperLogLog getSketch() {
+		return sketch;
+	}
+	
+	/**
+	 * Reads the state of this object in from the Object input stream
+	 * @param in the stream to read data from in order to restore the object 
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		super.readExternal(in);
+		sketch.readExternal(in);
+	}
+
+	/**
+	 * Writes this object out to the Object output stream
+	 * @param out the stream to write the object to 
+	 * @throws IOException
+	 */
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		super.writeExternal(out);
+		sketch.writeExternal(out);
+	}
+	
+	/**
+	 * Constructs a <code>String</code> with key attributes in name = value format.
+	 * @return a <code>String</code> representation of this object.
+	 */
+	public String toString() {	    
+	    return new StringBuilder("\n\tDistinctStringIntervalTraceValue [")
+	        .append(TAB).append("distinct = ").append(getValue())
+	        .append(TAB).append("cnt = ").append(this.count)
+	        .append("\n\t]").toString();
+	}
+	
+}
@@ -0,0 +1,225 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.ot.trace.types.interval;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Arrays;
+
+import org.helios.helpers.ConfigurationHelper;
+import org.helios.ot.trace.types.LongTraceValue;
+import org.helios.ot.trace.types.TraceValueType;
+import org.helios.ot.type.MetricType;
+
+/**
+ * <p>Title: HistogramIntervalTraceValue</p>
+ * <p>Description: Trace value for an interval of long traces which, in addition to the min/max/avg, records the distribution of
+ * the interval's values in a {@link LogHistogram} so that the closed interval can report quantiles such as the p95 and p99.</p>
+ * <p>The quantiles reported are configured through the system property or environment variable {@link #QUANTILES_PROP} as a 
+ * comma separated list of fractions (e.g. <code>0.99</code>) or percentiles (e.g. <code>99.9</code>). The raw histogram is carried
+ * with the closed interval so that intervals from different agents or periods can be merged with {@link #merge(HistogramIntervalTraceValue)}.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.ot.trace.types.interval.HistogramIntervalTraceValue</code></p>
+ */
+public class HistogramIntervalTraceValue<T extends LongTraceValue> extends LongIntervalTraceValue<T> {
+	/** The histogram of the interval's values */
+	protected LogHistogram histogram;
+	
+	/** The system property or environment variable name defining the reported quantiles */
+	public static final String QUANTILES_PROP = "org.helios.ot.histogram.quantiles";
+	/** The default reported quantiles */
+	public static final String DEFAULT_QUANTILES = "0.5,0.9,0.95,0.99,0.999";
+	/** The configured reported quantiles */
+	private static final double[] QUANTILES = parseQuantiles(ConfigurationHelper.getSystemThenEnvProperty(QUANTILES_PROP, DEFAULT_QUANTILES));
+	
+	/**
+	 * Copy Constructor which hands the passed histogram to the new instance
+	 * @param histogramIntervalTraceValue a <code>HistogramIntervalTraceValue</code> object
+	 * @param histogram The histogram for the new instance
+	 */
+	protected HistogramIntervalTraceValue(HistogramIntervalTraceValue<T> histogramIntervalTraceValue, LogHistogram histogram) {
+		super(histogramIntervalTraceValue);
+		this.histogram = histogram;
+	}
+	
+	/**
+	 * Creates a new HistogramIntervalTraceValue
+	 * @param traces The initial traces to apply
+	 */
+	public HistogramIntervalTraceValue(T...traces) {
+		super(TraceValueType.INTERVAL_HISTOGRAM_TYPE);
+		histogram = new LogHistogram();
+		if(traces!=null) {
+			for(T trace: traces) {
+				apply(trace);
+			}
+		}		
+	}
+	
+	/**
+	 * Creates a new HistogramIntervalTraceValue
+	 */
+	public HistogramIntervalTraceValue() {
+		super(TraceValueType.INTERVAL_HISTOGRAM_TYPE);
+		histogram = new LogHistogram();
+	}
+	
+	/**
+	 * Aggregates the passed ITraceValue into this interval trace value
+	 * @param value The ITraceValue to apply
+	 */
+	@Override
+	public void apply(T value) {
+		super.apply(value);
+		histogram.recordValue(value.getLongValue());
+	}
+	
+	/**
+	 * Merges the passed interval trace value into this one. 
+	 * Used to combine histogram intervals from different agents or periods.
+	 * @param other The interval trace value to merge into this one
+	 */
+	public void merge(HistogramIntervalTraceValue<?> other) {
+		if(other==null) throw new IllegalArgumentException("The passed HistogramIntervalTraceValue was null", new Throwable());
+		applyAggregate(other.count, other.total, other.min, other.max);
+		histogram.add(other.histogram);
+	}
+	
+	/**
+	 * Clones the state of this interval trace value and then resets it's state for the next interval.
+	 * The clone takes over this instance's histogram and this instance starts the next interval with an empty one.
+	 * @param metricType The metric type of the owning trace passed so that the interval value 
+	 * can execute the reset with the correct semantics.
+	 * @return A clone of this object prior to reset.
+	 */
+	@Override
+	public HistogramIntervalTraceValue<T> cloneReset(MetricType metricType) {
+		if(metricType==null) throw new IllegalArgumentException("Passed MetricType was null", new Throwable());
+		HistogramIntervalTraceValue<T> clone = new HistogramIntervalTraceValue<T>(this, histogram);
+		histogram = histogram.newEmpty();
+		reset(metricType);
+		return clone;
+	}
+	
+	/**
+	 * Returns the value at the passed quantile
+	 * @param quantile The quantile between 0 and 1
+	 * @return the value at the passed quantile
+	 */
+	public long getValueAtQuantile(double quantile) {
+		return histogram.getValueAtQuantile(quantile);
+	}
+	
+	/**
+	 * Returns the configured reported quantiles
+	 * @return the reported quantiles
+	 */
+	public double[] getQuantiles() {
+		return QUANTILES.clone();
+	}
+	
+	/**
+	 * Returns the values at each of the configured reported quantiles
+	 * @return the values at each of the reported quantiles
+	 */
+	public long[] getQuantileValues() {
+		return histogram.getValuesAtQuantiles(QUANTILES);
+	}
+	
+	/**
+	 * Returns the interval's histogram
+	 * @return the histogram
+	 */
+	public LogHistogram getHistogram() {
+		return histogram;
+	}
+	
+	/**
+	 * Parses a comma separated list of quantiles. Values greater than 1 are treated as percentiles.
+	 * @param quantiles The comma separated list of quantiles
+	 * @return a sorted array of quantiles between 0 and 1
+	 */
+	public static double[] parseQuantiles(String quantiles) {
+		try {
+			String[] frags = quantiles.split(",");
+			double[] values = new double[frags.length];
+			for(int i = 0; i < frags.length; i++) {
+				double d = Double.parseDouble(frags[i].trim());
+				if(d>1D) d = d/100D;
+				if(d<=0D || d>1D) throw new IllegalArgumentException("Invalid quantile [" + frags[i] + "]", new Throwable());
+				values[i] = d;
+			}
+			Arrays.sort(values);
+			return values;
+		} catch (Exception e) {
+			if(DEFAULT_QUANTILES.equals(quantiles)) throw new RuntimeException("Failed to parse default quantiles", e);
+			return parseQuantiles(DEFAULT_QUANTILES);
+		}
+	}
+	
+	/**
+	 * Reads the state of this object in from the Object input stream
+	 * @param in the stream to read data from in order to restore the object 
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		super.readExternal(in);
+		histogram.readExternal(in);
+	}
+
+	/**
+	 * Writes this object out to the Object output stream
+	 * @param out the stream to write the object to 
+	 * @throws IOException
+	 */
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		super.writeExternal(out);
+		histogram.writeExternal(out);
+	}
+	
+	/**
+	 * Constructs a <code>String</code> with key attributes in name = value format.
+	 * @return a <code>String</code> representation of this object.
+	 */
+	public String toString() {	    
+	    StringBuilder retValue = new StringBuilder("\n\tHistogramIntervalTraceValue [")
+	        .append(TAB).append("min = ").append(this.min)
+	        .append(TAB).append("max = ").append(this.max)
+	        .append(TAB).append("avg = ").append(getAvg())
+	        .append(TAB).append("cnt = ").append(this.count);
+	    long[] values = getQuantileValues();
+	    for(int i = 0; i < QUANTILES.length; i++) {
+	    	retValue.append(TAB).append("p").append(QUANTILES[i]*100D).append(" = ").append(values[i]);
+	    }
+	    return retValue.append("\n\t]").toString();
+	}
+
+}
@@ -0,0 +1,314 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.ot.trace.types.interval;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Arrays;
+
+import org.helios.helpers.ConfigurationHelper;
+
+/**
+ * <p>Title: HyperLogLog</p>
+ * <p>Description: A fixed memory, mergeable, distinct count estimator for strings. Each offered string is hashed to 64 bits, the leading
+ * <code>precision</code> bits select a register and the register keeps the longest run of leading zeros seen in the remaining bits.
+ * The standard error of the estimate is roughly <code>1.04/sqrt(2^precision)</code>, so the default precision of 12 uses 4KB of registers
+ * and estimates to within about 1.6%.</p>
+ * <p>Instances are not thread safe. They are expected to be offered to by the single accumulator thread that owns the interval.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.ot.trace.types.interval.HyperLogLog</code></p>
+ */
+
+public class HyperLogLog implements Externalizable {
+	/** The number of hash bits used to select a register */
+	protected int precision;
+	/** The registers */
+	protected byte[] registers;
+	
+	/** The system property or environment variable name defining the default precision */
+	public static final String PRECISION_PROP = "org.helios.ot.sketch.hll.precision";
+	/** The default precision */
+	public static final int DEFAULT_PRECISION = 12;
+	/** The lowest supported precision */
+	public static final int MIN_PRECISION = 4;
+	/** The highest supported precision */
+	public static final int MAX_PRECISION = 16;
+	/** The configured default precision */
+	public static final int PRECISION = ConfigurationHelper.getIntSystemThenEnvProperty(PRECISION_PROP, DEFAULT_PRECISION);
+	
+	/**
+	 * Creates a new HyperLogLog with the configured default precision
+	 */
+	public HyperLogLog() {
+		this(PRECISION);
+	}
+	
+	/**
+	 * Creates a new HyperLogLog
+	 * @param precision The number of hash bits used to select a register. Must be between 4 and 16.
+	 */
+	public HyperLogLog(int precision) {
+		init(precision);
+	}
+	
+	/**
+	 * Copy Constructor
+	 * @param hyperLogLog a <code>HyperLogLog</code> object
+	 */
+	public HyperLogLog(HyperLogLog hyperLogLog) {
+		precision = hyperLogLog.precision;
+		registers = hyperLogLog.registers.clone();
+	}
+	
+	/**
+	 * Validates the precision and allocates the registers
+	 * @param precision The number of hash bits used to select a register
+	 */
+	protected void init(int precision) {
+		if(precision<MIN_PRECISION || precision>MAX_PRECISION) throw new IllegalArgumentException("Invalid precision [" + precision + "]", new Throwable());
+		this.precision = precision;
+		if(registers==null || registers.length != (1 << precision)) {
+			registers = new byte[1 << precision];
+		} else {
+			Arrays.fill(registers, (byte)0);
+		}
+	}
+	
+	/**
+	 * Creates a new empty HyperLogLog with the same precision as this one
+	 * @return a new empty HyperLogLog
+	 */
+	public HyperLogLog newEmpty() {
+		return new HyperLogLog(precision);
+	}
+	
+	/**
+	 * Offers a string to the estimator. Nulls are ignored.
+	 * @param value The string to offer
+	 */
+	public void offer(CharSequence value) {
+		if(value==null) return;
+		offerHash(hash(value));
+	}
+	
+	/**
+	 * Offers a 64 bit hash to the estimator
+	 * @param hash The well mixed hash of the value
+	 */
+	public void offerHash(long hash) {
+		int index = (int)(hash >>> (64 - precision));
+		// the guard bit caps the rank at 65 - precision when the remaining bits are all zero
+		long remaining = (hash << precision) | (1L << (precision - 1));
+		byte rank = (byte)(Long.numberOfLeadingZeros(remaining) + 1);
+		if(rank > registers[index]) {
+			registers[index] = rank;
+		}
+	}
+	
+	/**
+	 * Returns the estimated number of distinct strings offered
+	 * @return the estimated distinct count
+	 */
+	public long cardinality() {
+		int m = registers.length;
+		double sum = 0D;
+		int zeros = 0;
+		for(int i = 0; i < m; i++) {
+			sum += Math.scalb(1D, -registers[i]);
+			if(registers[i]==0) zeros++;
+		}
+		double estimate = alpha(m) * m * m / sum;
+		if(estimate <= 2.5D * m && zeros > 0) {
+			// small range correction by linear counting
+			estimate = m * Math.log((double)m / zeros);
+		}
+		return Math.round(estimate);
+	}
+	
+	/**
+	 * Merges the passed estimator into this one so that this estimator reflects the union of the offered strings.
+	 * An estimator with a higher precision is folded down into this estimator's precision.
+	 * @param other The estimator to merge
+	 */
+	public void merge(HyperLogLog other) {
+		if(other==null) throw new IllegalArgumentException("The passed HyperLogLog was null", new Throwable());
+		if(other.precision < precision) throw new IllegalArgumentException("Cannot merge a HyperLogLog with precision [" + other.precision + "] into one with precision [" + precision + "]", new Throwable());
+		if(other.precision == precision) {
+			for(int i = 0; i < registers.length; i++) {
+				if(other.registers[i] > registers[i]) registers[i] = other.registers[i];
+			}
+			return;
+		}
+		int shift = other.precision - precision;
+		int lowMask = (1 << shift) - 1;
+		for(int i = 0; i < other.registers.length; i++) {
+			int otherRank = other.registers[i];
+			if(otherRank==0) continue;
+			// the dropped low index bits become the leading bits of the remaining hash
+			int dropped = i & lowMask;
+			int rank = dropped==0 ? shift + otherRank : shift - (32 - Integer.numberOfLeadingZeros(dropped)) + 1;
+			int index = i >>> shift;
+			if(rank > registers[index]) registers[index] = (byte)rank;
+		}
+	}
+	
+	/**
+	 * Clears all the registers
+	 */
+	public void reset() {
+		Arrays.fill(registers, (byte)0);
+	}
+	
+	/**
+	 * Determines if no strings have been offered
+	 * @return true if all the registers are empty
+	 */
+	public boolean isEmpty() {
+		for(int i = 0; i < registers.length; i++) {
+			if(registers[i]!=0) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns the precision
+	 * @return the precision
+	 */
+	public int getPrecision() {
+		return precision;
+	}
+	
+	/**
+	 * Returns the standard error of the estimate for this precision
+	 * @return the relative standard error
+	 */
+	public double getStandardError() {
+		return 1.04D / Math.sqrt(registers.length);
+	}
+	
+	/**
+	 * Returns the bias correction constant for the passed number of registers
+	 * @param m The number of registers
+	 * @return the bias correction constant
+	 */
+	protected static double alpha(int m) {
+		switch(m) {
+			case 16: return 0.673D;
+			case 32: return 0.697D;
+			case 64: return 0.709D;
+			default: return 0.7213D / (1D + 1.079D / m);
+		}
+	}
+	
+	/**
+	 * Computes a well mixed 64 bit hash of the passed string: an FNV-1a pass over the characters followed by the Murmur3 finalizer. 
+	 * @param value The string to hash
+	 * @return the 64 bit hash
+	 */
+	public static long hash(CharSequence value) {
+		long h = 0xcbf29ce484222325L;
+		for(int i = 0, len = value.length(); i < len; i++) {
+			h ^= value.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.io.Externalizable#readExternal(java.io.ObjectInput)
+	 */
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		init(in.readInt());
+		int entries = in.readInt();
+		if(isSparse(entries, registers.length)) {
+			int index = -1;
+			for(int i = 0; i < entries; i++) {
+				index += in.readUnsignedShort() + 1;
+				registers[index] = in.readByte();
+			}
+		} else {
+			in.readFully(registers);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>Mostly empty registers are written as index gap / rank pairs.</p>
+	 * @see java.io.Externalizable#writeExternal(java.io.ObjectOutput)
+	 */
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeInt(precision);
+		int entries = 0;
+		for(int i = 0; i < registers.length; i++) {
+			if(registers[i]!=0) entries++;
+		}
+		out.writeInt(entries);
+		if(isSparse(entries, registers.length)) {
+			int last = -1;
+			for(int i = 0; i < registers.length; i++) {
+				if(registers[i]!=0) {
+					out.writeShort(i - last - 1);
+					out.writeByte(registers[i]);
+					last = i;
+				}
+			}
+		} else {
+			out.write(registers);
+		}
+	}
+	
+	/**
+	 * Determines if the registers should be externalized as sparse pairs
+	 * @param entries The number of non empty registers
+	 * @param length The number of registers
+	 * @return true if sparse pairs are smaller than the dense registers
+	 */
+	private static boolean isSparse(int entries, int length) {
+		return entries * 3 < length;
+	}
+	
+	/**
+	 * Constructs a <code>String</code> with key attributes in name = value format.
+	 * @return a <code>String</code> representation of this object.
+	 */
+	public String toString() {
+		return new StringBuilder("HyperLogLog [precision=").append(precision)
+			.append(", cardinality=").append(cardinality())
+			.append("]").toString();
+	}
+
+}
@@ -93,6 +93,21 @@ public class IntIntervalTraceValue<T extends IntTraceValue> extends AbstractNume
 		super.apply(value);
 	}
 	
+	/**
+	 * Aggregates a pre-accumulated block of samples into this interval trace value
+	 * @param sampleCount The number of samples in the block
+	 * @param sampleTotal The sum of the samples in the block
+	 * @param sampleMin The minimum sample in the block
+	 * @param sampleMax The maximum sample in the block
+	 */
+	@Override
+	public void applyAggregate(long sampleCount, double sampleTotal, long sampleMin, long sampleMax) {
+		if(sampleCount<1) return;
+		if(this.count==0 || sampleMax>max) max = (int)sampleMax;
+		if(this.count==0 || sampleMin<min) min = (int)sampleMin;
+		super.applyAggregate(sampleCount, sampleTotal, sampleMin, sampleMax);
+	}
+	
 	/**
 	 * Clones the state of this interval trace value and then resets it's state for the next interval
 	 * @param metricType The metric type of the owning trace passed so that the interval value 
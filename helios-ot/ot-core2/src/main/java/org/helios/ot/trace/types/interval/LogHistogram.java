@@ -0,0 +1,473 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.ot.trace.types.interval;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Arrays;
+
+import org.helios.helpers.ConfigurationHelper;
+
+/**
+ * <p>Title: LogHistogram</p>
+ * <p>Description: A fixed memory, mergeable, log bucketed histogram of non-negative long values in the style of an HDR histogram.
+ * Values are recorded into exponentially sized buckets, each divided into linear sub buckets, so any recorded value can be
+ * reported back to within the configured number of significant decimal digits. The counts array is sized once at construction 
+ * and recording a value is a constant time index calculation and increment which does not allocate.</p>
+ * <p>Values below zero are recorded as zero and values above the highest trackable value are recorded as the highest trackable value.
+ * Instances are not thread safe. They are expected to be recorded into by the single accumulator thread that owns the interval.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.ot.trace.types.interval.LogHistogram</code></p>
+ */
+
+public class LogHistogram implements Externalizable {
+	/** The number of significant decimal digits the histogram resolves values to */
+	protected int significantDigits;
+	/** The highest value the histogram can track */
+	protected long highestTrackableValue;
+	/** The bucket counts */
+	protected long[] counts;
+	/** The total number of recorded values */
+	protected long totalCount = 0;
+	/** The lowest recorded value */
+	protected long minValue = Long.MAX_VALUE;
+	/** The highest recorded value */
+	protected long maxValue = 0;
+	
+	/** The log2 of the number of sub buckets in the lower half of each bucket */
+	protected int subBucketHalfCountMagnitude;
+	/** The number of sub buckets in the lower half of each bucket */
+	protected int subBucketHalfCount;
+	/** The number of sub buckets in each bucket */
+	protected int subBucketCount;
+	/** The mask of a value's sub bucket bits in the first bucket */
+	protected long subBucketMask;
+	/** The leading zero count offset used to compute the bucket index of a value */
+	protected int leadingZeroCountBase;
+	/** The number of buckets */
+	protected int bucketCount;
+	
+	/** The system property or environment variable name defining the default number of significant digits */
+	public static final String DIGITS_PROP = "org.helios.ot.histogram.digits";
+	/** The system property or environment variable name defining the default highest trackable value */
+	public static final String MAX_VALUE_PROP = "org.helios.ot.histogram.max";
+	/** The default number of significant digits */
+	public static final int DEFAULT_DIGITS = 2;
+	/** The default highest trackable value. The full long range costs about 1KB of counts per log2 bucket at 2 significant digits, 
+	 * so values are never clamped unless a lower maximum is configured. */
+	public static final long DEFAULT_MAX_VALUE = Long.MAX_VALUE;
+	/** The configured default number of significant digits */
+	public static final int DIGITS = ConfigurationHelper.getIntSystemThenEnvProperty(DIGITS_PROP, DEFAULT_DIGITS);
+	/** The configured default highest trackable value */
+	public static final long MAX_VALUE = ConfigurationHelper.getLongSystemThenEnvProperty(MAX_VALUE_PROP, DEFAULT_MAX_VALUE);
+	
+	/**
+	 * Creates a new LogHistogram with the configured default number of significant digits and highest trackable value
+	 */
+	public LogHistogram() {
+		this(DIGITS, MAX_VALUE);
+	}
+	
+	/**
+	 * Creates a new LogHistogram
+	 * @param significantDigits The number of significant decimal digits values are resolved to. Must be between 1 and 5.
+	 * @param highestTrackableValue The highest value the histogram can track. Must be 2 or more.
+	 */
+	public LogHistogram(int significantDigits, long highestTrackableValue) {
+		init(significantDigits, highestTrackableValue);
+	}
+	
+	/**
+	 * Copy Constructor
+	 * @param histogram a <code>LogHistogram</code> object
+	 */
+	public LogHistogram(LogHistogram histogram) {
+		init(histogram.significantDigits, histogram.highestTrackableValue);
+		System.arraycopy(histogram.counts, 0, counts, 0, counts.length);
+		totalCount = histogram.totalCount;
+		minValue = histogram.minValue;
+		maxValue = histogram.maxValue;
+	}
+	
+	/**
+	 * Computes the bucket layout and allocates the counts
+	 * @param significantDigits The number of significant decimal digits values are resolved to
+	 * @param highestTrackableValue The highest value the histogram can track
+	 */
+	protected void init(int significantDigits, long highestTrackableValue) {
+		if(significantDigits<1 || significantDigits>5) throw new IllegalArgumentException("Invalid number of significant digits [" + significantDigits + "]", new Throwable());
+		if(highestTrackableValue<2) throw new IllegalArgumentException("Invalid highest trackable value [" + highestTrackableValue + "]", new Throwable());
+		this.significantDigits = significantDigits;
+		this.highestTrackableValue = highestTrackableValue;
+		long largestValueWithSingleUnitResolution = 2 * (long)Math.pow(10, significantDigits);
+		int subBucketCountMagnitude = (int)Math.ceil(Math.log(largestValueWithSingleUnitResolution)/Math.log(2));
+		subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+		subBucketCount = 1 << subBucketCountMagnitude;
+		subBucketHalfCount = subBucketCount >> 1;
+		subBucketMask = subBucketCount - 1;
+		leadingZeroCountBase = 64 - subBucketHalfCountMagnitude - 1;
+		long smallestUntrackableValue = subBucketCount;
+		int buckets = 1;
+		while(smallestUntrackableValue <= highestTrackableValue) {
+			if(smallestUntrackableValue > (Long.MAX_VALUE >> 1)) {
+				buckets++;
+				break;
+			}
+			smallestUntrackableValue <<= 1;
+			buckets++;
+		}
+		bucketCount = buckets;
+		int length = (bucketCount + 1) * subBucketHalfCount;
+		if(counts==null || counts.length!=length) {
+			counts = new long[length];
+		} else {
+			Arrays.fill(counts, 0L);
+		}
+	}
+	
+	/**
+	 * Returns a new empty histogram with the same layout as this one
+	 * @return a new empty histogram
+	 */
+	public LogHistogram newEmpty() {
+		return new LogHistogram(significantDigits, highestTrackableValue);
+	}
+	
+	/**
+	 * Records a value
+	 * @param value The value to record
+	 */
+	public void recordValue(long value) {
+		recordValue(value, 1L);
+	}
+	
+	/**
+	 * Records a value a number of times
+	 * @param value The value to record
+	 * @param count The number of times to record the value
+	 */
+	public void recordValue(long value, long count) {
+		if(value<0) value = 0;
+		else if(value>highestTrackableValue) value = highestTrackableValue;
+		counts[countsIndex(value)] += count;
+		totalCount += count;
+		if(value<minValue) minValue = value;
+		if(value>maxValue) maxValue = value;
+	}
+	
+	/**
+	 * Adds the counts of the passed histogram to this histogram.
+	 * Histograms with the same layout are merged bucket by bucket. Otherwise each of the passed histogram's buckets 
+	 * is recorded at the median of its equivalent value range.
+	 * @param other The histogram to merge into this one
+	 */
+	public void add(LogHistogram other) {
+		if(other==null) throw new IllegalArgumentException("The passed histogram was null", new Throwable());
+		if(other.totalCount==0) return;
+		if(isSameLayout(other)) {
+			long[] otherCounts = other.counts;
+			for(int i = 0; i < otherCounts.length; i++) {
+				counts[i] += otherCounts[i];
+			}
+			totalCount += other.totalCount;
+			long otherMin = Math.min(other.minValue, highestTrackableValue);
+			long otherMax = Math.min(other.maxValue, highestTrackableValue);
+			if(otherMin<minValue) minValue = otherMin;
+			if(otherMax>maxValue) maxValue = otherMax;
+		} else {
+			for(int i = 0; i < other.counts.length; i++) {
+				long c = other.counts[i];
+				if(c!=0) {
+					recordValue(other.medianEquivalentValueAtIndex(i), c);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Determines if the passed histogram has the same bucket layout as this one
+	 * @param other The histogram to compare to
+	 * @return true if the histograms can be merged bucket by bucket
+	 */
+	public boolean isSameLayout(LogHistogram other) {
+		return other.significantDigits==significantDigits && other.highestTrackableValue==highestTrackableValue;
+	}
+	
+	/**
+	 * Clears all recorded values
+	 */
+	public void reset() {
+		Arrays.fill(counts, 0L);
+		totalCount = 0;
+		minValue = Long.MAX_VALUE;
+		maxValue = 0;
+	}
+	
+	/**
+	 * Returns the value at the passed quantile. The returned value is the highest value equivalent to the recorded values 
+	 * at the quantile, capped at the highest recorded value.
+	 * @param quantile The quantile between 0 and 1. e.g. 0.99 for the 99th percentile.
+	 * @return the value at the quantile or 0 if no values have been recorded
+	 */
+	public long getValueAtQuantile(double quantile) {
+		if(totalCount==0) return 0;
+		if(quantile<=0D) return minValue;
+		if(quantile>1D) quantile = 1D;
+		long target = (long)Math.ceil(quantile * totalCount);
+		if(target<1) target = 1;
+		long running = 0;
+		for(int i = 0; i < counts.length; i++) {
+			running += counts[i];
+			if(running>=target) {
+				return Math.min(highestEquivalentValueAtIndex(i), maxValue);
+			}
+		}
+		return maxValue;
+	}
+	
+	/**
+	 * Returns the values at each of the passed quantiles
+	 * @param quantiles The quantiles between 0 and 1 in ascending order
+	 * @return an array of the values at each of the quantiles
+	 */
+	public long[] getValuesAtQuantiles(double...quantiles) {
+		long[] values = new long[quantiles.length];
+		if(totalCount==0) return values;
+		int q = 0;
+		while(q<quantiles.length && quantiles[q]<=0D) {
+			values[q++] = minValue;
+		}
+		long running = 0;
+		for(int i = 0; i < counts.length && q < quantiles.length; i++) {
+			running += counts[i];
+			while(q<quantiles.length && running>=Math.max(1L, (long)Math.ceil(Math.min(quantiles[q], 1D) * totalCount))) {
+				values[q++] = Math.min(highestEquivalentValueAtIndex(i), maxValue);
+			}
+		}
+		while(q<quantiles.length) {
+			values[q++] = maxValue;
+		}
+		return values;
+	}
+	
+	/**
+	 * Returns the mean of the recorded values, computed from the bucket medians
+	 * @return the mean of the recorded values
+	 */
+	public double getMean() {
+		if(totalCount==0) return 0D;
+		double total = 0D;
+		for(int i = 0; i < counts.length; i++) {
+			if(counts[i]!=0) {
+				total += (double)counts[i] * medianEquivalentValueAtIndex(i);
+			}
+		}
+		return total / totalCount;
+	}
+	
+	/**
+	 * Computes the counts index of a value
+	 * @param value A value between 0 and the highest trackable value
+	 * @return the counts index
+	 */
+	protected int countsIndex(long value) {
+		int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+		int subBucketIndex = (int)(value >>> bucketIndex);
+		return ((bucketIndex + 1) << subBucketHalfCountMagnitude) + (subBucketIndex - subBucketHalfCount);
+	}
+	
+	/**
+	 * Returns the bucket index of a counts index
+	 * @param index The counts index
+	 * @return the bucket index
+	 */
+	protected int bucketIndexAtIndex(int index) {
+		int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+		return bucketIndex < 0 ? 0 : bucketIndex;
+	}
+	
+	/**
+	 * Returns the lowest value that is recorded at the passed counts index
+	 * @param index The counts index
+	 * @return the lowest equivalent value
+	 */
+	public long getValueAtIndex(int index) {
+		int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+		int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+		if(bucketIndex<0) {
+			subBucketIndex -= subBucketHalfCount;
+			bucketIndex = 0;
+		}
+		return ((long)subBucketIndex) << bucketIndex;
+	}
+	
+	/**
+	 * Returns the highest value that is recorded at the passed counts index
+	 * @param index The counts index
+	 * @return the highest equivalent value
+	 */
+	protected long highestEquivalentValueAtIndex(int index) {
+		return getValueAtIndex(index) + (1L << bucketIndexAtIndex(index)) - 1;
+	}
+	
+	/**
+	 * Returns the value in the middle of the range of values recorded at the passed counts index
+	 * @param index The counts index
+	 * @return the median equivalent value
+	 */
+	protected long medianEquivalentValueAtIndex(int index) {
+		return getValueAtIndex(index) + ((1L << bucketIndexAtIndex(index)) >> 1);
+	}
+	
+	/**
+	 * Returns the count recorded at the passed counts index
+	 * @param index The counts index
+	 * @return the count at the index
+	 */
+	public long getCountAtIndex(int index) {
+		return counts[index];
+	}
+	
+	/**
+	 * Returns the number of counts indexes
+	 * @return the length of the counts
+	 */
+	public int getCountsLength() {
+		return counts.length;
+	}
+	
+	/**
+	 * Returns a copy of the raw bucket counts
+	 * @return a copy of the bucket counts
+	 */
+	public long[] getCounts() {
+		return counts.clone();
+	}
+
+	/**
+	 * Returns the number of significant decimal digits the histogram resolves values to
+	 * @return the number of significant digits
+	 */
+	public int getSignificantDigits() {
+		return significantDigits;
+	}
+
+	/**
+	 * Returns the highest value the histogram can track
+	 * @return the highest trackable value
+	 */
+	public long getHighestTrackableValue() {
+		return highestTrackableValue;
+	}
+
+	/**
+	 * Returns the total number of recorded values
+	 * @return the total count
+	 */
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * Returns the lowest recorded value
+	 * @return the lowest recorded value or 0 if no values have been recorded
+	 */
+	public long getMinValue() {
+		return totalCount==0 ? 0 : minValue;
+	}
+
+	/**
+	 * Returns the highest recorded value
+	 * @return the highest recorded value
+	 */
+	public long getMaxValue() {
+		return maxValue;
+	}
+
+	/**
+	 * Reads the state of this object in from the Object input stream
+	 * @param in the stream to read data from in order to restore the object 
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		init(in.readInt(), in.readLong());
+		totalCount = in.readLong();
+		minValue = in.readLong();
+		maxValue = in.readLong();
+		int entries = in.readInt();
+		int index = -1;
+		for(int i = 0; i < entries; i++) {
+			index += in.readInt();
+			counts[index] = in.readLong();
+		}
+	}
+
+	/**
+	 * Writes this object out to the Object output stream. Only non-zero counts are written, each prefixed with the distance from the prior one.
+	 * @param out the stream to write the object to 
+	 * @throws IOException
+	 */
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeInt(significantDigits);
+		out.writeLong(highestTrackableValue);
+		out.writeLong(totalCount);
+		out.writeLong(minValue);
+		out.writeLong(maxValue);
+		int entries = 0;
+		for(int i = 0; i < counts.length; i++) {
+			if(counts[i]!=0) entries++;
+		}
+		out.writeInt(entries);
+		int last = -1;
+		for(int i = 0; i < counts.length; i++) {
+			if(counts[i]!=0) {
+				out.writeInt(i - last);
+				out.writeLong(counts[i]);
+				last = i;
+			}
+		}
+	}
+	
+	/**
+	 * Constructs a <code>String</code> with key attributes in name = value format.
+	 * @return a <code>String</code> representation of this object.
+	 */
+	public String toString() {
+		return new StringBuilder("LogHistogram [digits=").append(significantDigits)
+			.append(", max=").append(highestTrackableValue)
+			.append(", count=").append(totalCount)
+			.append(", p50=").append(getValueAtQuantile(0.5D))
+			.append(", p99=").append(getValueAtQuantile(0.99D))
+			.append("]").toString();
+	}
+
+}
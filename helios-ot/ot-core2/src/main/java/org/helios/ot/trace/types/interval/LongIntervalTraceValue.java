@@ -75,6 +75,21 @@ public class LongIntervalTraceValue<T extends LongTraceValue> extends AbstractNu
 	}	
 	
 	
+	/**
+	 * Aggregates a pre-accumulated block of samples into this interval trace value
+	 * @param sampleCount The number of samples in the block
+	 * @param sampleTotal The sum of the samples in the block
+	 * @param sampleMin The minimum sample in the block
+	 * @param sampleMax The maximum sample in the block
+	 */
+	@Override
+	public void applyAggregate(long sampleCount, double sampleTotal, long sampleMin, long sampleMax) {
+		if(sampleCount<1) return;
+		if(this.count==0 || sampleMax>max) max = sampleMax;
+		if(this.count==0 || sampleMin<min) min = sampleMin;
+		super.applyAggregate(sampleCount, sampleTotal, sampleMin, sampleMax);
+	}
+	
 	/**
 	 * Clones the state of this interval trace value and then resets it's state for the next interval
 	 * @param metricType The metric type of the owning trace passed so that the interval value 
@@ -84,13 +99,22 @@ public class LongIntervalTraceValue<T extends LongTraceValue> extends AbstractNu
 	public LongIntervalTraceValue<T> cloneReset(MetricType metricType) {
 		if(metricType==null) throw new IllegalArgumentException("Passed MetricType was null", new Throwable());		
 		LongIntervalTraceValue<T> clone = new LongIntervalTraceValue<T>(this);
+		reset(metricType);
+		return clone;
+	}	
+	
+	/**
+	 * Resets the state of this interval trace value for the next interval
+	 * @param metricType The metric type of the owning trace passed so that the interval value 
+	 * can execute the reset with the correct semantics.
+	 */
+	protected void reset(MetricType metricType) {
 		super.cloneReset(metricType);
 		if(!metricType.isSticky()) {
 			max = 0;
 			min = 0;
 		}
-		return clone;
-	}	
+	}
 
 	/**
 	 * Creates a new LongIntervalTraceValue
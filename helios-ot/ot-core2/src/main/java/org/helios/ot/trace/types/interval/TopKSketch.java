@@ -0,0 +1,432 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.ot.trace.types.interval;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.helios.helpers.ConfigurationHelper;
+
+/**
+ * <p>Title: TopKSketch</p>
+ * <p>Description: A bounded memory, mergeable, heavy hitter tracker for strings using the Space-Saving algorithm. At most <code>capacity</code>
+ * strings are monitored. When an unmonitored string arrives and the sketch is full, it replaces the monitored string with the lowest count
+ * and inherits that count as its error. Any string whose true count exceeds <code>total/capacity</code> is guaranteed to be monitored, and each
+ * monitored count overestimates the true count by at most its error.</p>
+ * <p>The monitored strings are kept in a hash map and an indexed min heap on count, so offering a string is a hash lookup and a heap sift.
+ * Strings longer than {@link #MAX_ITEM_LENGTH} are truncated. Instances are not thread safe. They are expected to be offered to by the 
+ * single accumulator thread that owns the interval.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.ot.trace.types.interval.TopKSketch</code></p>
+ */
+
+public class TopKSketch implements Externalizable {
+	/** The maximum number of monitored strings */
+	protected int capacity;
+	/** The monitored entries keyed by string */
+	protected final Map<String, Entry> entries = new HashMap<String, Entry>();
+	/** The monitored entries as a min heap on count */
+	protected Entry[] heap;
+	/** The number of monitored entries */
+	protected int size = 0;
+	/** The total of all the offered counts */
+	protected long total = 0;
+	
+	/** The system property or environment variable name defining the default capacity */
+	public static final String CAPACITY_PROP = "org.helios.ot.sketch.topk.capacity";
+	/** The default capacity */
+	public static final int DEFAULT_CAPACITY = 100;
+	/** The configured default capacity */
+	public static final int CAPACITY = ConfigurationHelper.getIntSystemThenEnvProperty(CAPACITY_PROP, DEFAULT_CAPACITY);
+	/** The maximum length of a monitored string */
+	public static final int MAX_ITEM_LENGTH = 1024;
+	/** An empty entry array */
+	public static final Entry[] EMPTY_ENTRIES = new Entry[0];
+	
+	/** Orders entries by descending count and then by string */
+	protected static final Comparator<Entry> DESCENDING_COUNT = new Comparator<Entry>() {
+		public int compare(Entry e1, Entry e2) {
+			if(e1.count != e2.count) return e1.count > e2.count ? -1 : 1;
+			return e1.item.compareTo(e2.item);
+		}
+	};
+	
+	/**
+	 * Creates a new TopKSketch with the configured default capacity
+	 */
+	public TopKSketch() {
+		this(CAPACITY);
+	}
+	
+	/**
+	 * Creates a new TopKSketch
+	 * @param capacity The maximum number of monitored strings. Must be 1 or more.
+	 */
+	public TopKSketch(int capacity) {
+		init(capacity);
+	}
+	
+	/**
+	 * Copy Constructor
+	 * @param topKSketch a <code>TopKSketch</code> object
+	 */
+	public TopKSketch(TopKSketch topKSketch) {
+		init(topKSketch.capacity);
+		for(int i = 0; i < topKSketch.size; i++) {
+			Entry e = topKSketch.heap[i];
+			insert(new Entry(e.item, e.count, e.error));
+		}
+		total = topKSketch.total;
+	}
+	
+	/**
+	 * Validates the capacity and allocates the heap
+	 * @param capacity The maximum number of monitored strings
+	 */
+	protected void init(int capacity) {
+		if(capacity<1) throw new IllegalArgumentException("Invalid capacity [" + capacity + "]", new Throwable());
+		this.capacity = capacity;
+		heap = new Entry[capacity];
+		entries.clear();
+		size = 0;
+		total = 0;
+	}
+	
+	/**
+	 * Creates a new empty TopKSketch with the same capacity as this one
+	 * @return a new empty TopKSketch
+	 */
+	public TopKSketch newEmpty() {
+		return new TopKSketch(capacity);
+	}
+	
+	/**
+	 * Offers a single occurence of a string to the sketch. Nulls are ignored.
+	 * @param item The string to offer
+	 */
+	public void offer(String item) {
+		offer(item, 1);
+	}
+	
+	/**
+	 * Offers a weighted occurence of a string to the sketch. Nulls are ignored.
+	 * @param item The string to offer
+	 * @param weight The weight of the occurence. Must be 1 or more.
+	 */
+	public void offer(String item, long weight) {
+		if(item==null) return;
+		if(weight<1) throw new IllegalArgumentException("Invalid weight [" + weight + "]", new Throwable());
+		if(item.length() > MAX_ITEM_LENGTH) item = item.substring(0, MAX_ITEM_LENGTH);
+		total += weight;
+		Entry e = entries.get(item);
+		if(e!=null) {
+			e.count += weight;
+			siftDown(e.index);
+		} else if(size < capacity) {
+			insert(new Entry(item, weight, 0));
+		} else {
+			// evict the minimum and let the new string inherit its count as error
+			e = heap[0];
+			entries.remove(e.item);
+			e.item = item;
+			e.error = e.count;
+			e.count += weight;
+			entries.put(item, e);
+			siftDown(0);
+		}
+	}
+	
+	/**
+	 * Merges the passed sketch into this one so that this sketch reflects the combined stream. 
+	 * Strings not monitored by a full sketch are charged that sketch's minimum count as both count and error
+	 * so the merged counts remain upper bounds.
+	 * @param other The sketch to merge
+	 */
+	public void merge(TopKSketch other) {
+		if(other==null) throw new IllegalArgumentException("The passed TopKSketch was null", new Throwable());
+		long thisMin = size < capacity ? 0 : heap[0].count;
+		long otherMin = other.size < other.capacity ? 0 : other.heap[0].count;
+		Map<String, Entry> combined = new HashMap<String, Entry>(size + other.size);
+		for(int i = 0; i < size; i++) {
+			Entry e = heap[i];
+			Entry o = other.entries.get(e.item);
+			if(o!=null) {
+				combined.put(e.item, new Entry(e.item, e.count + o.count, e.error + o.error));
+			} else {
+				combined.put(e.item, new Entry(e.item, e.count + otherMin, e.error + otherMin));
+			}
+		}
+		for(int i = 0; i < other.size; i++) {
+			Entry o = other.heap[i];
+			if(!combined.containsKey(o.item)) {
+				combined.put(o.item, new Entry(o.item, o.count + thisMin, o.error + thisMin));
+			}
+		}
+		Entry[] merged = combined.values().toArray(new Entry[combined.size()]);
+		Arrays.sort(merged, DESCENDING_COUNT);
+		long mergedTotal = total + other.total;
+		init(capacity);
+		for(int i = 0; i < merged.length && i < capacity; i++) {
+			insert(merged[i]);
+		}
+		total = mergedTotal;
+	}
+	
+	/**
+	 * Returns the monitored entries with the highest counts, highest first
+	 * @param k The maximum number of entries to return
+	 * @return an array of at most k entries
+	 */
+	public Entry[] getTop(int k) {
+		if(size==0 || k<1) return EMPTY_ENTRIES;
+		Entry[] sorted = new Entry[size];
+		for(int i = 0; i < size; i++) {
+			Entry e = heap[i];
+			sorted[i] = new Entry(e.item, e.count, e.error);
+		}
+		Arrays.sort(sorted, DESCENDING_COUNT);
+		return k < size ? Arrays.copyOf(sorted, k) : sorted;
+	}
+	
+	/**
+	 * Returns the estimated count of the passed string
+	 * @param item The string
+	 * @return the estimated count, or zero if the string is not monitored
+	 */
+	public long getCount(String item) {
+		Entry e = entries.get(item);
+		return e==null ? 0 : e.count;
+	}
+	
+	/**
+	 * Clears the sketch
+	 */
+	public void reset() {
+		Arrays.fill(heap, 0, size, null);
+		entries.clear();
+		size = 0;
+		total = 0;
+	}
+	
+	/**
+	 * Returns the maximum number of monitored strings
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * Returns the number of monitored strings
+	 * @return the number of monitored strings
+	 */
+	public int getSize() {
+		return size;
+	}
+	
+	/**
+	 * Returns the total of all the offered counts
+	 * @return the total of all the offered counts
+	 */
+	public long getTotal() {
+		return total;
+	}
+	
+	/**
+	 * Adds a new entry to the heap
+	 * @param e The entry to add
+	 */
+	protected void insert(Entry e) {
+		e.index = size;
+		heap[size++] = e;
+		entries.put(e.item, e);
+		siftUp(e.index);
+	}
+	
+	/**
+	 * Moves the entry at the passed heap index up until its parent's count is not greater
+	 * @param index The heap index
+	 */
+	protected void siftUp(int index) {
+		Entry e = heap[index];
+		while(index > 0) {
+			int parent = (index - 1) >>> 1;
+			Entry p = heap[parent];
+			if(p.count <= e.count) break;
+			heap[index] = p;
+			p.index = index;
+			index = parent;
+		}
+		heap[index] = e;
+		e.index = index;
+	}
+	
+	/**
+	 * Moves the entry at the passed heap index down until neither child's count is lower
+	 * @param index The heap index
+	 */
+	protected void siftDown(int index) {
+		Entry e = heap[index];
+		int half = size >>> 1;
+		while(index < half) {
+			int child = (index << 1) + 1;
+			Entry c = heap[child];
+			int right = child + 1;
+			if(right < size && heap[right].count < c.count) {
+				child = right;
+				c = heap[child];
+			}
+			if(e.count <= c.count) break;
+			heap[index] = c;
+			c.index = index;
+			index = child;
+		}
+		heap[index] = e;
+		e.index = index;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.io.Externalizable#readExternal(java.io.ObjectInput)
+	 */
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		init(in.readInt());
+		int count = in.readInt();
+		for(int i = 0; i < count; i++) {
+			insert(new Entry(in.readUTF(), in.readLong(), in.readLong()));
+		}
+		total = in.readLong();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.io.Externalizable#writeExternal(java.io.ObjectOutput)
+	 */
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeInt(capacity);
+		out.writeInt(size);
+		for(int i = 0; i < size; i++) {
+			Entry e = heap[i];
+			out.writeUTF(e.item);
+			out.writeLong(e.count);
+			out.writeLong(e.error);
+		}
+		out.writeLong(total);
+	}
+	
+	/**
+	 * Constructs a <code>String</code> with key attributes in name = value format.
+	 * @return a <code>String</code> representation of this object.
+	 */
+	public String toString() {
+		return new StringBuilder("TopKSketch [capacity=").append(capacity)
+			.append(", size=").append(size)
+			.append(", total=").append(total)
+			.append(", top=").append(Arrays.toString(getTop(5)))
+			.append("]").toString();
+	}
+	
+	/**
+	 * <p>Title: Entry</p>
+	 * <p>Description: A monitored string with its estimated count and the maximum overestimation of that count</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.ot.trace.types.interval.TopKSketch.Entry</code></p>
+	 */
+	public static class Entry {
+		/** The monitored string */
+		protected String item;
+		/** The estimated count */
+		protected long count;
+		/** The maximum overestimation of the count */
+		protected long error;
+		/** The heap index */
+		protected int index;
+		
+		/**
+		 * Creates a new Entry
+		 * @param item The monitored string
+		 * @param count The estimated count
+		 * @param error The maximum overestimation of the count
+		 */
+		protected Entry(String item, long count, long error) {
+			this.item = item;
+			this.count = count;
+			this.error = error;
+		}
+		
+		/**
+		 * Returns the monitored string
+		 * @return the monitored string
+		 */
+		public String getItem() {
+			return item;
+		}
+		
+		/**
+		 * Returns the estimated count
+		 * @return the estimated count
+		 */
+		public long getCount() {
+			return count;
+		}
+		
+		/**
+		 * Returns the maximum overestimation of the count
+		 * @return the maximum overestimation of the count
+		 */
+		public long getError() {
+			return error;
+		}
+		
+		/**
+		 * Returns the count the string is guaranteed to have reached
+		 * @return the estimated count less the error
+		 */
+		public long getGuaranteedCount() {
+			return count - error;
+		}
+		
+		/**
+		 * Constructs a <code>String</code> with key attributes in name = value format.
+		 * @return a <code>String</code> representation of this object.
+		 */
+		public String toString() {
+			return new StringBuilder(item).append("=").append(count).toString();
+		}
+	}
+
+}
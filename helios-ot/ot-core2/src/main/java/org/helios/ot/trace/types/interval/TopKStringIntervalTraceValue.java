@@ -0,0 +1,192 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.ot.trace.types.interval;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import org.helios.helpers.ConfigurationHelper;
+import org.helios.ot.trace.types.StringTraceValue;
+import org.helios.ot.trace.types.TraceValueType;
+import org.helios.ot.type.MetricType;
+
+/**
+ * <p>Title: TopKStringIntervalTraceValue</p>
+ * <p>Description: Trace value for an interval of strings which reports the most frequently traced strings of the interval.
+ * The strings are offered to a bounded {@link TopKSketch} so memory does not grow with the number of distinct strings. The number of 
+ * strings reported is configured through the system property or environment variable {@link #TOP_SIZE_PROP}. The sketch travels with 
+ * the closed interval so that intervals from different agents or periods can be merged with {@link #merge(TopKStringIntervalTraceValue)}.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.ot.trace.types.interval.TopKStringIntervalTraceValue</code></p>
+ */
+public class TopKStringIntervalTraceValue<T extends StringTraceValue> extends AbstractIntervalTraceValue<T> {
+	/** The heavy hitter sketch for the interval */
+	protected TopKSketch sketch;
+	
+	/** The system property or environment variable name defining the number of reported strings */
+	public static final String TOP_SIZE_PROP = "org.helios.ot.sketch.topk.size";
+	/** The default number of reported strings */
+	public static final int DEFAULT_TOP_SIZE = 20;
+	/** The configured number of reported strings */
+	public static final int TOP_SIZE = ConfigurationHelper.getIntSystemThenEnvProperty(TOP_SIZE_PROP, DEFAULT_TOP_SIZE);
+
+	/**
+	 * Creates a new TopKStringIntervalTraceValue 
+	 */
+	public TopKStringIntervalTraceValue() {
+		super(TraceValueType.INTERVAL_TOPK_TYPE);
+		sketch = new TopKSketch();
+	}
+	
+	/**
+	 * Creates a new TopKStringIntervalTraceValue 
+	 * @param traces The initial traces to apply to this interval
+	 */
+	public TopKStringIntervalTraceValue(T...traces) {
+		super(TraceValueType.INTERVAL_TOPK_TYPE);
+		sketch = new TopKSketch();
+		if(traces!=null) {
+			for(T trace: traces) {
+				apply(trace);
+			}
+		}
+	}
+	
+	/**
+	 * Copy Constructor which hands the passed sketch to the new instance
+	 * @param topKStringIntervalTraceValue The interval trace to clone from
+	 * @param sketch The sketch for the new instance
+	 */
+	protected TopKStringIntervalTraceValue(TopKStringIntervalTraceValue<T> topKStringIntervalTraceValue, TopKSketch sketch) {
+		super(topKStringIntervalTraceValue);
+		this.sketch = sketch;
+	}
+
+	/**
+	 * Returns the most frequently traced strings of this interval, most frequent first
+	 * @return a string array
+	 */
+	@Override
+	public String[] getValue() {
+		TopKSketch.Entry[] top = sketch.getTop(TOP_SIZE);
+		String[] items = new String[top.length];
+		for(int i = 0; i < top.length; i++) {
+			items[i] = top[i].getItem();
+		}
+		return items;
+	}
+	
+	/**
+	 * Returns the most frequently traced strings of this interval with their estimated counts, most frequent first
+	 * @return an array of top entries
+	 */
+	public TopKSketch.Entry[] getTopEntries() {
+		return sketch.getTop(TOP_SIZE);
+	}
+
+	/**
+	 * Aggregates the passed ITraceValue into this interval trace value
+	 * @param value The ITraceValue to apply
+	 */
+	@Override
+	public void apply(T value) {		
+		super.apply(value);
+		sketch.offer(value.getValue());
+	}
+	
+	/**
+	 * Merges the passed interval trace value into this one. 
+	 * Used to combine heavy hitters from different agents or periods.
+	 * @param other The interval trace value to merge into this one
+	 */
+	public void merge(TopKStringIntervalTraceValue<?> other) {
+		if(other==null) throw new IllegalArgumentException("The passed TopKStringIntervalTraceValue was null", new Throwable());
+		count += other.count;
+		sketch.merge(other.sketch);
+	}
+	
+	/**
+	 * Clones the state of this interval trace value and then resets it's state for the next interval.
+	 * The clone takes over this instance's sketch and this instance starts the next interval with an empty one.
+	 * @param metricType The metric type of the owning trace passed so that the interval value 
+	 * can execute the reset with the correct semantics.
+	 * @return A clone of this object prior to reset.
+	 */
+	public TopKStringIntervalTraceValue<T> cloneReset(MetricType metricType) {
+		if(metricType==null) throw new IllegalArgumentException("Passed MetricType was null", new Throwable());		
+		TopKStringIntervalTraceValue<T> clone = new TopKStringIntervalTraceValue<T>(this, sketch);
+		sketch = sketch.newEmpty();
+		super.cloneReset(metricType);
+		return clone;
+	}
+	
+	/**
+	 * Returns the interval's heavy hitter sketch
+	 * @return the interval's heavy hitter sketch
+	 */
+	public TopKSketch getSketch() {
+		return sketch;
+	}
+	
+	/**
+	 * Reads the state of this object in from the Object input stream
+	 * @param in the stream to read data from in order to restore the object 
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		super.readExternal(in);
+		sketch.readExternal(in);
+	}
+
+	/**
+	 * Writes this object out to the Object output stream
+	 * @param out the stream to write the object to 
+	 * @throws IOException
+	 */
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		super.writeExternal(out);
+		sketch.writeExternal(out);
+	}
+	
+	/**
+	 * Constructs a <code>String</code> with key attributes in name = value format.
+	 * @return a <code>String</code> representation of this object.
+	 */
+	public String toString() {	    
+	    StringBuilder retValue = new StringBuilder("\n\tTopKStringIntervalTraceValue [")
+	        .append(TAB).append("cnt = ").append(this.count);
+	    for(TopKSketch.Entry e: getTopEntries()) {
+	    	retValue.append(TAB).append(e.getItem()).append(" = ").append(e.getCount());
+	    }
+	    return retValue.append("\n\t]").toString();
+	}
+	
+}
@@ -33,6 +33,7 @@ import org.helios.jmx.threadservices.instrumentation.ThreadInfoCapture;
 import org.helios.ot.subtracer.ISubTracerProvider;
 import org.helios.ot.trace.Trace;
 import org.helios.ot.trace.Trace.Builder;
+import org.helios.ot.trace.interval.MetricHandle;
 import org.helios.ot.type.MetricType;
 
 /**
@@ -376,6 +377,33 @@ public interface ITracer extends ISubTracerProvider {
 	 */
 	public Trace traceSticky(long value, String metricName, String... nameSpace);
 	
+	/**
+	 * Traces a long into an interval histogram which reports quantiles in addition to the min/max/avg. 
+	 * @param value The trace value.
+	 * @param metricName The metric name.
+	 * @param nameSpace The metric namespace suffix.
+	 * @return The generated Trace or null is returnTraces is false.
+	 */
+	public Trace traceHistogram(long value, String metricName, String... nameSpace);
+	
+	/**
+	 * Traces a string into an interval estimate of the number of distinct strings. The strings themselves are not retained.
+	 * @param value The trace value.
+	 * @param metricName The metric name.
+	 * @param nameSpace The metric namespace suffix.
+	 * @return The generated Trace or null is returnTraces is false.
+	 */
+	public Trace traceDistinct(String value, String metricName, String... nameSpace);
+	
+	/**
+	 * Traces a string into a bounded interval summary of the most frequently traced strings.
+	 * @param value The trace value.
+	 * @param metricName The metric name.
+	 * @param nameSpace The metric namespace suffix.
+	 * @return The generated Trace or null is returnTraces is false.
+	 */
+	public Trace traceTopK(String value, String metricName, String... nameSpace);
+	
 	/**
 	 * Traces a sticky delta integer. 
 	 * @param value The trace value.
@@ -576,6 +604,16 @@ public interface ITracer extends ISubTracerProvider {
 	 */
 	public Trace getInstance(MetricType metricType, Object value, String metricName, String[] prefix, String... nameSpace);
 	
+	/**
+	 * Acquires a pre-bound handle for a numeric interval metric. The name is resolved once against this tracer 
+	 * and subsequent calls to {@link MetricHandle#trace(long)} record without creating traces.
+	 * @param metricType The metric type. Averaging, sticky and incident types are supported.
+	 * @param metricName The metric name.
+	 * @param nameSpace The metric namespace suffix.
+	 * @return the metric handle
+	 */
+	public MetricHandle getMetricHandle(MetricType metricType, String metricName, String... nameSpace);
+	
 	/**
 	 * Dispatches the formatted trace to the process queue
 	 * @param trace The undecorated trace
@@ -25,6 +25,7 @@
 package org.helios.ot.tracer;
 
 import org.helios.ot.subtracer.ISubTracerProvider;
+import org.helios.ot.trace.Trace;
 
 import org.helios.ot.tracer.disruptor.TraceCollection;
 
@@ -65,6 +66,13 @@ public interface ITracerManager extends ISubTracerProvider {
 	 * @param traceCollection the trace collection to commit.
 	 */
 	public void commit(TraceCollection traceCollection);
+	
+	/**
+	 * Publishes a single trace to be batched with other published traces and processed by endpoints.
+	 * @param trace the trace to publish
+	 * @return true if the trace was published, false if it was dropped
+	 */
+	public boolean publish(Trace trace);
 
 	
 }
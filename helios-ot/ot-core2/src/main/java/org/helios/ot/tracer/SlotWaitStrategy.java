@@ -26,6 +26,7 @@ package org.helios.ot.tracer;
 
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import org.helios.ot.tracer.disruptor.TraceCollection;
 
@@ -95,6 +96,13 @@ public enum SlotWaitStrategy {
 		 */
 		public TraceCollection getSlot(BlockingQueue<TraceCollection> queue, long timeout);
 		
+		/**
+		 * Backs off one step while waiting for a {@link org.helios.ot.tracer.disruptor.TraceRing} sequence to become available
+		 * @param until The {@link System#nanoTime()} deadline of the wait
+		 * @return true if the caller should retry, false if the deadline has passed or the wait was interrupted
+		 */
+		public boolean backOff(long until);
+		
 		/**
 		 * Returns the SlotWaitStrategy for this impl.
 		 * @return the SlotWaitStrategy 
@@ -135,6 +143,18 @@ public enum SlotWaitStrategy {
 			return Blocking;
 		}
 		
+		/**
+		 * Parks the waiting thread for up to 1 ms. Parked dispatchers are unparked by the publishing thread.
+		 * @param until The {@link System#nanoTime()} deadline of the wait
+		 * @return true if the caller should retry, false if the deadline has passed or the wait was interrupted
+		 */
+		public boolean backOff(long until) {
+			long remaining = until - System.nanoTime();
+			if(remaining<=0) return false;
+			LockSupport.parkNanos(Math.min(remaining, NS_IN_MS));
+			return !Thread.interrupted();
+		}
+		
 		
 	}
 	
@@ -172,6 +192,17 @@ public enum SlotWaitStrategy {
 			return Yield;
 		}
 		
+		/**
+		 * Yields the waiting thread once
+		 * @param until The {@link System#nanoTime()} deadline of the wait
+		 * @return true if the caller should retry, false if the deadline has passed or the wait was interrupted
+		 */
+		public boolean backOff(long until) {
+			if(System.nanoTime()>=until) return false;
+			Thread.yield();
+			return true;
+		}
+		
 	}
 	
 	/**
@@ -213,6 +244,22 @@ public enum SlotWaitStrategy {
 			return Sleep;
 		}
 		
+		/**
+		 * Sleeps the waiting thread for 1 ms
+		 * @param until The {@link System#nanoTime()} deadline of the wait
+		 * @return true if the caller should retry, false if the deadline has passed or the wait was interrupted
+		 */
+		public boolean backOff(long until) {
+			if(System.nanoTime()>=until) return false;
+			try {
+				Thread.sleep(1);
+				return true;
+			} catch (InterruptedException ie) {
+				Thread.interrupted();
+				return false;
+			}
+		}
+		
 	}
 	
 	/**
@@ -254,6 +301,22 @@ public enum SlotWaitStrategy {
 			return Join;
 		}
 		
+		/**
+		 * Joins the waiting thread for 1 ms
+		 * @param until The {@link System#nanoTime()} deadline of the wait
+		 * @return true if the caller should retry, false if the deadline has passed or the wait was interrupted
+		 */
+		public boolean backOff(long until) {
+			if(System.nanoTime()>=until) return false;
+			try {
+				Thread.currentThread().join(1);
+				return true;
+			} catch (InterruptedException ie) {
+				Thread.interrupted();
+				return false;
+			}
+		}
+		
 	}
 	
 	/**
@@ -288,6 +351,15 @@ public enum SlotWaitStrategy {
 		public SlotWaitStrategy getStrategy() {
 			return Spin;
 		}
+		
+		/**
+		 * Returns immediately so the waiting thread busy spins
+		 * @param until The {@link System#nanoTime()} deadline of the wait
+		 * @return true if the caller should retry, false if the deadline has passed or the wait was interrupted
+		 */
+		public boolean backOff(long until) {
+			return System.nanoTime()<until;
+		}
 
 	}
 	
@@ -318,6 +390,15 @@ public enum SlotWaitStrategy {
 			return NoWait;
 		}
 		
+		/**
+		 * Never waits
+		 * @param until The {@link System#nanoTime()} deadline of the wait
+		 * @return true if the caller should retry, false if the deadline has passed or the wait was interrupted
+		 */
+		public boolean backOff(long until) {
+			return false;
+		}
+		
 	}
 
 	
@@ -32,6 +32,7 @@ import org.helios.ot.subtracer.TemporalTracer;
 import org.helios.ot.subtracer.UrgentTracer;
 import org.helios.ot.subtracer.VirtualTracer;
 import org.helios.ot.subtracer.pipeline.IPhaseTrigger;
+import org.helios.ot.trace.Trace;
 import org.helios.ot.tracer.disruptor.TraceCollection;
 import org.helios.ot.tracer.disruptor.TraceCollection.OfflineTraceCollection;
 
@@ -102,6 +103,19 @@ public class StateAwareITracerManager implements ITracerManager {
 		}
 	}
 	
+	/**
+	 * Publishes a single trace to be batched with other published traces and processed by endpoints.
+	 * @param trace the trace to publish
+	 * @return true if the trace was published, false if it was dropped
+	 */
+	public boolean publish(Trace trace) {
+		if(online) {
+			if(innerTraceManager.publish(trace)) return true;
+			dropCount.incrementAndGet();
+		}
+		return false;
+	}
+	
 	/**
 	 * Returns the next open TraceCollection slot from the ring buffer
 	 * @return the next open TraceCollection
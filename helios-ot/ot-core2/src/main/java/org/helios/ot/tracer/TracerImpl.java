@@ -68,6 +68,7 @@ import org.helios.ot.subtracer.pipeline.Phase;
 import org.helios.ot.trace.MetricId;
 import org.helios.ot.trace.Trace;
 import org.helios.ot.trace.Trace.Builder;
+import org.helios.ot.trace.interval.MetricHandle;
 import org.helios.ot.tracer.fixtures.thread.TraceThreadInfoCapture;
 import org.helios.ot.type.MetricType;
 
@@ -774,7 +775,7 @@ public class TracerImpl extends ManagedObjectDynamicMBean implements ITracer {
 					logDeriveError(type, value, valueClass, "MetricType was Number but String value could not be converted.");
 					return null; // type was number, but string could not be converted.
 				}
-			} else if(type.equals(MetricType.STRING)) {
+			} else if(type.equals(MetricType.STRING) || type.isSketch()) {
 				return strValue;
 			} else {
 				logDeriveError(type, value, valueClass, "A String value can only be a stringed number or string type but was neither.");
@@ -1078,6 +1079,45 @@ public class TracerImpl extends ManagedObjectDynamicMBean implements ITracer {
 		);	
 	}
 	
+	/**
+	 * Traces a long into an interval histogram which reports quantiles in addition to the min/max/avg. 
+	 * @param value The trace value.
+	 * @param metricName The metric name.
+	 * @param nameSpace The metric namespace suffix.
+	 * @return The generated Trace or null is returnTraces is false.
+	 */
+	public Trace traceHistogram(long value, String metricName, String... nameSpace) {
+		return traceTrace(
+				Trace.build(value, MetricType.LONG_HISTOGRAM, metricName).segment(nameSpace).format(this).build()
+		);	
+	}
+	
+	/**
+	 * Traces a string into an interval estimate of the number of distinct strings. The strings themselves are not retained.
+	 * @param value The trace value.
+	 * @param metricName The metric name.
+	 * @param nameSpace The metric namespace suffix.
+	 * @return The generated Trace or null is returnTraces is false.
+	 */
+	public Trace traceDistinct(String value, String metricName, String... nameSpace) {
+		return traceTrace(
+				Trace.build(value, MetricType.STRING_DISTINCT, metricName).segment(nameSpace).format(this).build()
+		);	
+	}
+	
+	/**
+	 * Traces a string into a bounded interval summary of the most frequently traced strings.
+	 * @param value The trace value.
+	 * @param metricName The metric name.
+	 * @param nameSpace The metric namespace suffix.
+	 * @return The generated Trace or null is returnTraces is false.
+	 */
+	public Trace traceTopK(String value, String metricName, String... nameSpace) {
+		return traceTrace(
+				Trace.build(value, MetricType.STRING_TOPK, metricName).segment(nameSpace).format(this).build()
+		);	
+	}
+	
 
 	
 	/**
@@ -1364,6 +1404,18 @@ public class TracerImpl extends ManagedObjectDynamicMBean implements ITracer {
 	}
 	
 
+	/**
+	 * Acquires a pre-bound handle for a numeric interval metric, starting the interval accumulator if necessary.
+	 * @param metricType The metric type. Averaging, sticky and incident types are supported.
+	 * @param metricName The metric name.
+	 * @param nameSpace The metric namespace suffix.
+	 * @return the metric handle
+	 */
+	public MetricHandle getMetricHandle(MetricType metricType, String metricName, String... nameSpace) {
+		getIntervalTracer();
+		return MetricHandle.getInstance(metricType, buildMetricName(metricName, nameSpace));
+	}
+	
 	/**
 	 * Dispatches the formatted trace to the process queue
 	 * @param trace The undecorated trace
@@ -1372,11 +1424,7 @@ public class TracerImpl extends ManagedObjectDynamicMBean implements ITracer {
 	@SuppressWarnings("unchecked")
 	public Trace traceTrace(Trace trace) {
 		if(trace!=null) {
-			tracerManager
-				.commit(
-						tracerManager.getNextTraceCollectionSlot()
-						.load(trace)
-			);
+			tracerManager.publish(trace);
 			if(trace.hasAnyPhaseTriggers() && trace.hasTriggersFor(Phase.ATTACHED)) {
 				trace.runPhaseTriggers(Phase.ATTACHED);
 			}
@@ -1394,12 +1442,8 @@ public class TracerImpl extends ManagedObjectDynamicMBean implements ITracer {
 	@SuppressWarnings("unchecked")
 	public Trace[] traceTrace(Trace ...traces) {
 		if(traces!=null && traces.length>0) {
-			tracerManager
-				.commit(
-						tracerManager.getNextTraceCollectionSlot()
-						.load(traces)
-			);
 			for(Trace trace: traces) {
+				tracerManager.publish(trace);
 				if(trace.hasAnyPhaseTriggers() && trace.hasTriggersFor(Phase.ATTACHED)) {
 					trace.runPhaseTriggers(Phase.ATTACHED);
 				}
@@ -1418,12 +1462,8 @@ public class TracerImpl extends ManagedObjectDynamicMBean implements ITracer {
 	@SuppressWarnings("unchecked")
 	public Collection<Trace> traceTrace(Collection<Trace> traces) {
 		if(traces!=null && !traces.isEmpty()) {
-			tracerManager
-				.commit(
-						tracerManager.getNextTraceCollectionSlot()
-						.load(traces)
-			);
 			for(Trace trace: traces) {
+				tracerManager.publish(trace);
 				if(trace.hasAnyPhaseTriggers() && trace.hasTriggersFor(Phase.ATTACHED)) {
 					trace.runPhaseTriggers(Phase.ATTACHED);
 				}
@@ -73,9 +73,11 @@ import org.helios.ot.subtracer.TemporalTracer;
 import org.helios.ot.subtracer.UrgentTracer;
 import org.helios.ot.subtracer.VirtualTracer;
 import org.helios.ot.subtracer.pipeline.IPhaseTrigger;
+import org.helios.ot.trace.Trace;
 import org.helios.ot.trace.interval.IntervalAccumulator;
 import org.helios.ot.tracer.disruptor.TraceCollection;
 import org.helios.ot.tracer.disruptor.TraceCollectionCloser;
+import org.helios.ot.tracer.disruptor.TraceRing;
 import org.helios.time.SystemClock;
 
 /**
@@ -134,6 +136,8 @@ public class TracerManager3 extends ManagedObjectDynamicMBean implements Runnabl
 	protected SlotWaitStrategy.ISlotWaitStrategy waitStrategyImpl = SlotWaitStrategy.DEFAULT.getStrategy();
 	/** The slot queue */
 	protected BlockingQueue<TraceCollection> slotQueue;
+	/** The trace ring that batches single trace submissions into TraceCollections */
+	protected volatile TraceRing traceRing = null;
 	/** The shared submission context passed to all TraceCollections to provide it the resources to submit. */
 	protected SubmissionContext submissionContext;
 	/** The slot acquisition wait time in ms. If a slot is not acquired in this time, the submission is dropped */
@@ -155,6 +159,8 @@ public class TracerManager3 extends ManagedObjectDynamicMBean implements Runnabl
 	public static final ObjectName TM_ON = JMXHelper.objectName("org.helios.ot.tm:service=TracerManager");
 	/** The ObjectName of the TM's endpoint executor */
 	public static final ObjectName TM_EXECUTOR_ON = JMXHelper.objectName("org.helios.ot.tm:service=ThreadPool");
+	/** The maximum time in ms. to wait for the trace ring to drain on shutdown */
+	public static final long TRACE_RING_DRAIN_TIME = 5000L;
 	
 	
 	private TracerManager3() {
@@ -207,7 +213,7 @@ public class TracerManager3 extends ManagedObjectDynamicMBean implements Runnabl
 			assert i==10000;
 			telapsedTime.put("" + x, SystemClock.lapTimer().toString());
 			queueDepth.put("" + x, instance.executor.getQueue().size());
-			while(!instance.executor.getQueue().isEmpty()) {
+			while(instance.traceRing.getBacklog()>0 || !instance.executor.getQueue().isEmpty()) {
 				//try { Thread.currentThread().join(5); } catch (Exception e) {}
 				Thread.yield();
 			}
@@ -292,6 +298,7 @@ public class TracerManager3 extends ManagedObjectDynamicMBean implements Runnabl
 		instance.executor = config.executor;
 		instance.slotQueue = config.slotQueue;
 		instance.waitStrategyImpl = config.waitStrategyImpl;
+		instance.traceRing = config.traceRing;
 		submissionContext = config.submissionContext;
 		for(IEndPoint ep: submissionContext.endPoints) {
 			if(ep instanceof LifecycleAwareIEndPoint) {
@@ -299,6 +306,7 @@ public class TracerManager3 extends ManagedObjectDynamicMBean implements Runnabl
 			}
 		}
 		rollingCounterSize = config.rollingCounterSize;
+		traceRing.start();
 		iTracerManager.setTracerManager(instance);		
 		iaBuilder = config.iaBuilder;
 		if(intervalTracerRequested.get()) {
@@ -346,6 +354,10 @@ public class TracerManager3 extends ManagedObjectDynamicMBean implements Runnabl
 		if(config==null) {
 			LOG.warn("Shutdown found the TracerManager configuration null");			
 		}
+		if(instance.traceRing!=null) {
+			instance.traceRing.stop(TRACE_RING_DRAIN_TIME);
+			instance.traceRing = null;
+		}
 		if(instance.executor!=null) {
 			instance.executor.shutdown();
 			instance.executor = null;
@@ -386,6 +398,57 @@ public class TracerManager3 extends ManagedObjectDynamicMBean implements Runnabl
 	public void commit(TraceCollection tc) {
 		if(tc!=null && tc!=StateAwareITracerManager.OFF_LINE_TC) executor.submit(tc);
 	}	
+	
+	/**
+	 * Publishes a single trace into the trace ring to be dispatched to the endpoints in a batch with other traces
+	 * @param trace The trace to publish
+	 * @return true if the trace was published, false if it was dropped
+	 */
+	public boolean publish(Trace trace) {
+		TraceRing ring = traceRing;
+		if(ring==null) throw new IllegalStateException("The TracerManager is not in a valid started state", new Throwable());
+		return ring.publish(trace);
+	}
+	
+	/**
+	 * Returns the number of traces published to the trace ring and not yet dispatched
+	 * @return the trace ring backlog
+	 */
+	@JMXAttribute(name="TraceRingBacklog", description="The number of traces published to the trace ring and not yet dispatched", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getTraceRingBacklog() {
+		TraceRing ring = traceRing;
+		return ring==null ? 0L : ring.getBacklog();
+	}
+	
+	/**
+	 * Returns the number of TraceCollection batches dispatched by the trace ring
+	 * @return the number of dispatched batches
+	 */
+	@JMXAttribute(name="TraceRingBatchCount", description="The number of TraceCollection batches dispatched by the trace ring", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getTraceRingBatchCount() {
+		TraceRing ring = traceRing;
+		return ring==null ? 0L : ring.getBatchCount();
+	}
+	
+	/**
+	 * Returns the number of traces dispatched by the trace ring
+	 * @return the number of dispatched traces
+	 */
+	@JMXAttribute(name="TraceRingTraceCount", description="The number of traces dispatched by the trace ring", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getTraceRingTraceCount() {
+		TraceRing ring = traceRing;
+		return ring==null ? 0L : ring.getTraceCount();
+	}
+	
+	/**
+	 * Returns the average number of traces per batch dispatched by the trace ring
+	 * @return the average batch size
+	 */
+	@JMXAttribute(name="TraceRingAverageBatchSize", description="The average number of traces per batch dispatched by the trace ring", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getTraceRingAverageBatchSize() {
+		TraceRing ring = traceRing;
+		return ring==null ? 0L : ring.getAverageBatchSize();
+	}
 
 	
 	/**
@@ -415,6 +478,14 @@ public class TracerManager3 extends ManagedObjectDynamicMBean implements Runnabl
 		protected boolean multiThreadEndpoints = false; 
 		/** The slot queue */
 		protected BlockingQueue<TraceCollection> slotQueue;
+		/** The configured size of the trace ring */
+		protected int ringSize = DEFAULT_RING_SIZE;
+		/** The configured maximum number of traces dispatched from the trace ring in one TraceCollection */
+		protected int dispatchBatchSize = DEFAULT_DISPATCH_BATCH_SIZE;
+		/** The wait strategy of the trace ring dispatcher, defaults to {@link SlotWaitStrategy#DEFAULT} */
+		protected SlotWaitStrategy dispatchWaitStrategy = SlotWaitStrategy.DEFAULT;
+		/** The trace ring */
+		protected TraceRing traceRing;
 		/** The shared submission context passed to all TraceCollections to provide it the resources to submit. */
 		protected SubmissionContext submissionContext;
 		/** The configured instrumentation profile */
@@ -434,6 +505,10 @@ public class TracerManager3 extends ManagedObjectDynamicMBean implements Runnabl
 		public static final InstrumentationProfile DEFAULT_INSTRUMENTATION = InstrumentationProfile.OFF;		
 		/** The default rolling counter size for rolling instrumented endpoints */
 		public static final int DEFAULT_ROLLING_COUNTER_SIZE  = 10;		
+		/** The default size of the trace ring */
+		public static final int DEFAULT_RING_SIZE = TraceRing.DEFAULT_RING_SIZE;
+		/** The default maximum number of traces dispatched from the trace ring in one TraceCollection */
+		public static final int DEFAULT_DISPATCH_BATCH_SIZE = TraceRing.DEFAULT_BATCH_SIZE;
 		
 		
 		/**
@@ -522,6 +597,8 @@ public class TracerManager3 extends ManagedObjectDynamicMBean implements Runnabl
 				tc.setSubmissionContext(submissionContext);						
 				slotQueue.add(tc);
 			}
+			waitStrategyImpl = waitStrategy.getStrategy();
+			traceRing = new TraceRing(ringSize, dispatchBatchSize, waitStrategyImpl, slotWaitTime, dispatchWaitStrategy.getStrategy(), slotQueue, executor);
 			return this;
 		}
 		
@@ -546,6 +623,72 @@ public class TracerManager3 extends ManagedObjectDynamicMBean implements Runnabl
 			return this;
 		}
 		
+		/**
+		 * Sets the trace ring size which is rounded up to the next power of 2
+		 * @param size the size of the trace ring
+		 */
+		public void setRingSize(int size) {
+			if(size<1) throw new IllegalArgumentException("Invalid ring size [" + size + "]", new Throwable());
+			this.ringSize = size;
+		}
+		
+		/**
+		 * Sets the trace ring size which is rounded up to the next power of 2
+		 * @param size the size of the trace ring
+		 * @return this Configuration
+		 */
+		public Configuration ringSize(int size) {
+			setRingSize(size);
+			return this;
+		}
+		
+		/**
+		 * Sets the maximum number of traces dispatched from the trace ring in one TraceCollection
+		 * @param size the dispatch batch size
+		 */
+		public void setDispatchBatchSize(int size) {
+			if(size<1) throw new IllegalArgumentException("Invalid dispatch batch size [" + size + "]", new Throwable());
+			this.dispatchBatchSize = size;
+		}
+		
+		/**
+		 * Sets the maximum number of traces dispatched from the trace ring in one TraceCollection
+		 * @param size the dispatch batch size
+		 * @return this Configuration
+		 */
+		public Configuration dispatchBatchSize(int size) {
+			setDispatchBatchSize(size);
+			return this;
+		}
+		
+		/**
+		 * Sets the wait strategy of the trace ring dispatcher
+		 * @param waitStrategy the dispatcher wait strategy
+		 */
+		public void setDispatchWaitStrategy(SlotWaitStrategy waitStrategy) {
+			if(waitStrategy==null) throw new IllegalArgumentException("SlotWaitStrategy was null", new Throwable());
+			this.dispatchWaitStrategy = waitStrategy;
+		}
+		
+		/**
+		 * Sets the wait strategy of the trace ring dispatcher by name
+		 * @param waitStrategy the name of the dispatcher wait strategy
+		 */
+		public void setDispatchWaitStrategy(String waitStrategy) {
+			if(waitStrategy==null) throw new IllegalArgumentException("SlotWaitStrategy was null", new Throwable());
+			this.dispatchWaitStrategy = SlotWaitStrategy.valueOf(waitStrategy.trim());
+		}
+		
+		/**
+		 * Sets the wait strategy of the trace ring dispatcher
+		 * @param waitStrategy the dispatcher wait strategy
+		 * @return this Configuration
+		 */
+		public Configuration dispatchWaitStrategy(SlotWaitStrategy waitStrategy) {
+			setDispatchWaitStrategy(waitStrategy);
+			return this;
+		}
+		
 		/**
 		 * Sets the rolling counter size for instrumented endpoints
 		 * @param size The size of the rolling counters to create
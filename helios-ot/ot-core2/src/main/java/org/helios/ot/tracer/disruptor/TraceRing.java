@@ -0,0 +1,311 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ *
+ */
+package org.helios.ot.tracer.disruptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+import org.helios.ot.trace.Trace;
+import org.helios.ot.tracer.SlotWaitStrategy;
+
+/**
+ * <p>Title: TraceRing</p>
+ * <p>Description: A pre-allocated multi-producer / single-dispatcher ring of traces. Tracing threads claim a sequence, write their trace into the
+ * claimed slot and publish it. A single dispatcher thread reads all the published slots in sequence, up to the configured batch size,
+ * loads them into one {@link TraceCollection} and submits that collection once to the endpoint executor, so the executor and endpoint
+ * overhead is paid once per batch rather than once per trace.</p>
+ * <p>Producers waiting on a full ring and the dispatcher waiting on an empty ring back off using a configurable {@link SlotWaitStrategy}.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.ot.tracer.disruptor.TraceRing</code></p>
+ */
+@SuppressWarnings("unchecked")
+public class TraceRing implements Runnable {
+	/** The ring entries */
+	protected final Trace[] entries;
+	/** The published sequence of each ring entry */
+	protected final AtomicLongArray published;
+	/** The ring size */
+	protected final int size;
+	/** The ring index mask */
+	protected final int mask;
+	/** The maximum number of traces dispatched in one TraceCollection */
+	protected final int batchSize;
+	/** The highest claimed sequence */
+	protected final AtomicLong claimed = new AtomicLong(-1L);
+	/** The highest sequence read by the dispatcher */
+	protected final AtomicLong dispatched = new AtomicLong(-1L);
+	/** The wait strategy for producers waiting on a full ring */
+	protected final SlotWaitStrategy.ISlotWaitStrategy publishWait;
+	/** The maximum time a producer will wait on a full ring in ms. before dropping the trace */
+	protected final long publishWaitTime;
+	/** The wait strategy for the dispatcher waiting on an empty ring */
+	protected final SlotWaitStrategy.ISlotWaitStrategy dispatchWait;
+	/** The TraceCollection slot queue */
+	protected final BlockingQueue<TraceCollection> slotQueue;
+	/** The endpoint executor */
+	protected final ExecutorService executor;
+	/** The dispatcher thread */
+	protected final Thread dispatcher;
+	/** Indicates if the dispatcher is running */
+	protected volatile boolean running = false;
+	/** The nano time after which a stopped dispatcher stops waiting on claimed slots that were never published */
+	protected volatile long drainDeadline = 0L;
+	/** Indicates if the dispatcher is waiting on an empty ring and should be unparked by the next publish */
+	protected volatile boolean dispatcherWaiting = false;
+	/** The number of dispatched batches */
+	protected final AtomicLong batchCount = new AtomicLong(0L);
+	/** The number of dispatched traces */
+	protected final AtomicLong traceCount = new AtomicLong(0L);
+	/** Instance logger */
+	protected final Logger log = Logger.getLogger(getClass());
+
+	/** The default ring size */
+	public static final int DEFAULT_RING_SIZE = 1024;
+	/** The default dispatch batch size */
+	public static final int DEFAULT_BATCH_SIZE = 256;
+	/** The dispatcher thread serial number factory */
+	private static final AtomicLong serial = new AtomicLong(0L);
+
+	/**
+	 * Creates a new TraceRing
+	 * @param size The ring size which is rounded up to the next power of 2
+	 * @param batchSize The maximum number of traces dispatched in one TraceCollection
+	 * @param publishWait The wait strategy for producers waiting on a full ring
+	 * @param publishWaitTime The maximum time a producer will wait on a full ring in ms.
+	 * @param dispatchWait The wait strategy for the dispatcher waiting on an empty ring
+	 * @param slotQueue The TraceCollection slot queue
+	 * @param executor The endpoint executor
+	 */
+	public TraceRing(int size, int batchSize, SlotWaitStrategy.ISlotWaitStrategy publishWait, long publishWaitTime, SlotWaitStrategy.ISlotWaitStrategy dispatchWait, BlockingQueue<TraceCollection> slotQueue, ExecutorService executor) {
+		if(size<1) throw new IllegalArgumentException("Invalid ring size [" + size + "]", new Throwable());
+		if(batchSize<1) throw new IllegalArgumentException("Invalid batch size [" + batchSize + "]", new Throwable());
+		if(publishWait==null) throw new IllegalArgumentException("Publish wait strategy was null", new Throwable());
+		if(dispatchWait==null) throw new IllegalArgumentException("Dispatch wait strategy was null", new Throwable());
+		if(slotQueue==null) throw new IllegalArgumentException("Slot queue was null", new Throwable());
+		if(executor==null) throw new IllegalArgumentException("Executor was null", new Throwable());
+		this.size = Integer.highestOneBit(size)==size ? size : Integer.highestOneBit(size) << 1;
+		this.mask = this.size-1;
+		this.batchSize = batchSize;
+		this.publishWait = publishWait;
+		this.publishWaitTime = publishWaitTime;
+		this.dispatchWait = dispatchWait;
+		this.slotQueue = slotQueue;
+		this.executor = executor;
+		entries = new Trace[this.size];
+		published = new AtomicLongArray(this.size);
+		for(int i = 0; i < this.size; i++) {
+			published.set(i, -1L);
+		}
+		dispatcher = new Thread(this, "OpenTrace.TraceRingDispatcher#" + serial.incrementAndGet());
+		dispatcher.setDaemon(true);
+	}
+
+	/**
+	 * Starts the dispatcher thread
+	 */
+	public void start() {
+		running = true;
+		dispatcher.start();
+	}
+
+	/**
+	 * Stops the dispatcher thread after the published traces have been dispatched
+	 * @param timeout The maximum time to wait for the dispatcher to drain the ring in ms.
+	 */
+	public void stop(long timeout) {
+		drainDeadline = System.nanoTime() + TimeUnit.NANOSECONDS.convert(timeout, TimeUnit.MILLISECONDS);
+		running = false;
+		LockSupport.unpark(dispatcher);
+		try {
+			dispatcher.join(timeout);
+		} catch (InterruptedException ie) {
+			Thread.interrupted();
+		}
+		if(dispatcher.isAlive()) {
+			log.warn("TraceRing dispatcher did not drain within [" + timeout + "] ms. Backlog:" + getBacklog());
+			dispatcher.interrupt();
+		}
+	}
+
+	/**
+	 * Publishes a trace into the ring
+	 * @param trace The trace to publish
+	 * @return true if the trace was published, false if the ring remained full for the publish wait time and the trace was dropped
+	 */
+	public boolean publish(Trace trace) {
+		if(trace==null || !running) return false;
+		long until = 0L;
+		long sequence;
+		for(;;) {
+			long current = claimed.get();
+			sequence = current + 1;
+			if(sequence - size > dispatched.get()) {
+				// ring is full
+				if(until==0L) until = System.nanoTime() + TimeUnit.NANOSECONDS.convert(publishWaitTime, TimeUnit.MILLISECONDS);
+				if(!publishWait.backOff(until)) return false;
+				continue;
+			}
+			if(claimed.compareAndSet(current, sequence)) break;
+		}
+		final int index = (int)sequence & mask;
+		entries[index] = trace;
+		published.lazySet(index, sequence);
+		if(dispatcherWaiting) LockSupport.unpark(dispatcher);
+		return true;
+	}
+
+	/**
+	 * The dispatcher loop. Once stopped, the loop keeps dispatching published traces but gives up on a claimed slot 
+	 * that is still unpublished when the drain deadline passes or the dispatcher is interrupted.
+	 */
+	public void run() {
+		final List<Trace> batch = new ArrayList<Trace>(batchSize);
+		while(running || getBacklog()>0) {
+			try {
+				if(!drain(batch)) {
+					if(!running && (Thread.currentThread().isInterrupted() || System.nanoTime() - drainDeadline > 0)) {
+						log.warn("TraceRing dispatcher abandoned [" + getBacklog() + "] claimed but unpublished traces");
+						break;
+					}
+					dispatcherWaiting = true;
+					final long next = dispatched.get() + 1;
+					if(published.get((int)next & mask)!=next) {
+						dispatchWait.backOff(System.nanoTime() + SlotWaitStrategy.NS_IN_MS);
+					}
+					dispatcherWaiting = false;
+				}
+			} catch (InterruptedException ie) {
+				Thread.interrupted();
+				if(!running) break;
+			} catch (Exception e) {
+				log.error("TraceRing dispatch failure", e);
+			}
+		}
+	}
+
+	/**
+	 * Reads the next batch of published traces and submits it to the executor
+	 * @param batch The dispatcher's reusable batch buffer
+	 * @return true if any traces were dispatched
+	 * @throws InterruptedException thrown if the dispatcher is interrupted waiting on a TraceCollection slot
+	 */
+	protected boolean drain(List<Trace> batch) throws InterruptedException {
+		long next = dispatched.get() + 1;
+		if(published.get((int)next & mask)!=next) return false;
+		TraceCollection tc = slotQueue.take();
+		while(batch.size() < batchSize) {
+			final int index = (int)next & mask;
+			if(published.get(index)!=next) break;
+			batch.add(entries[index]);
+			entries[index] = null;
+			next++;
+		}
+		try {
+			tc.load(batch);
+		} finally {
+			dispatched.lazySet(next-1);
+		}
+		executor.submit(tc);
+		batchCount.incrementAndGet();
+		traceCount.addAndGet(batch.size());
+		batch.clear();
+		return true;
+	}
+
+	/**
+	 * Returns the number of published traces not yet dispatched
+	 * @return the number of published traces not yet dispatched
+	 */
+	public long getBacklog() {
+		return claimed.get() - dispatched.get();
+	}
+
+	/**
+	 * Returns the ring size
+	 * @return the ring size
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the maximum number of traces dispatched in one TraceCollection
+	 * @return the dispatch batch size
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Returns the number of dispatched batches
+	 * @return the number of dispatched batches
+	 */
+	public long getBatchCount() {
+		return batchCount.get();
+	}
+
+	/**
+	 * Returns the number of dispatched traces
+	 * @return the number of dispatched traces
+	 */
+	public long getTraceCount() {
+		return traceCount.get();
+	}
+
+	/**
+	 * Returns the average number of traces per dispatched batch
+	 * @return the average batch size
+	 */
+	public long getAverageBatchSize() {
+		long batches = batchCount.get();
+		return batches==0 ? 0 : traceCount.get()/batches;
+	}
+
+	/**
+	 * Constructs a <code>String</code> with key attributes in name = value format.
+	 * @return a <code>String</code> representation of this object.
+	 */
+	@Override
+	public String toString() {
+	    final String TAB = "\n\t";
+	    StringBuilder retValue = new StringBuilder("TraceRing [")
+	        .append(TAB).append("size = ").append(this.size)
+	        .append(TAB).append("batchSize = ").append(this.batchSize)
+	        .append(TAB).append("backlog = ").append(getBacklog())
+	        .append(TAB).append("batches = ").append(this.batchCount.get())
+	        .append(TAB).append("traces = ").append(this.traceCount.get())
+	        .append("\n]");
+	    return retValue.toString();
+	}
+}
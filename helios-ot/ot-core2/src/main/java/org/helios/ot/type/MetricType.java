@@ -26,6 +26,9 @@ package org.helios.ot.type;
 
 import static org.helios.ot.trace.types.TraceValueType.BYTES_TYPE;
 import static org.helios.ot.trace.types.TraceValueType.INTERVAL_BYTES_TYPE;
+import static org.helios.ot.trace.types.TraceValueType.INTERVAL_HISTOGRAM_TYPE;
+import static org.helios.ot.trace.types.TraceValueType.INTERVAL_DISTINCT_TYPE;
+import static org.helios.ot.trace.types.TraceValueType.INTERVAL_TOPK_TYPE;
 import static org.helios.ot.trace.types.TraceValueType.INCIDENT_TYPE;
 import static org.helios.ot.trace.types.TraceValueType.INTERVAL_INCIDENT_TYPE;
 import static org.helios.ot.trace.types.TraceValueType.INT_TYPE;
@@ -95,7 +98,13 @@ public enum MetricType {
 	/** All distinct strings for an interval  */
 	STRINGS(false, false, false, STRINGS_TYPE, INTERVAL_STRINGS_TYPE),
 	/** A byte array  */
-	BYTES(false, false, false, BYTES_TYPE, INTERVAL_BYTES_TYPE);
+	BYTES(false, false, false, BYTES_TYPE, INTERVAL_BYTES_TYPE),
+	/** Interval histogram of longs, reporting quantiles in addition to min/max/avg */
+	LONG_HISTOGRAM (false, false, true, LONG_TYPE, INTERVAL_HISTOGRAM_TYPE),
+	/** Estimated count of distinct strings for an interval */
+	STRING_DISTINCT(false, false, false, STRING_TYPE, INTERVAL_DISTINCT_TYPE),
+	/** Most frequent strings for an interval */
+	STRING_TOPK(false, false, false, STRING_TYPE, INTERVAL_TOPK_TYPE);
 	
 	/**
 	 * Creates a new MetricType
@@ -158,6 +167,9 @@ public enum MetricType {
 	public static final int TYPE_STRING = STRING.ordinal();
 	public static final int TYPE_STRINGS = STRINGS.ordinal();
 	public static final int TYPE_BYTES = BYTES.ordinal();
+	public static final int TYPE_LONG_HISTOGRAM = LONG_HISTOGRAM.ordinal();
+	public static final int TYPE_STRING_DISTINCT = STRING_DISTINCT.ordinal();
+	public static final int TYPE_STRING_TOPK = STRING_TOPK.ordinal();
 	
 	public static final String HIGH = "High";
 	public static final String LOW = "Low";
@@ -195,6 +207,9 @@ public enum MetricType {
     	DESCRIPTIONS.put(TYPE_STRING, "Last message of the interval");
     	DESCRIPTIONS.put(TYPE_STRINGS, "All messages in the interval");
     	DESCRIPTIONS.put(TYPE_BYTES, "All byte arrays in the interval");
+    	DESCRIPTIONS.put(TYPE_LONG_HISTOGRAM, "Interval histogram of longs");
+    	DESCRIPTIONS.put(TYPE_STRING_DISTINCT, "Estimated distinct messages in the interval");
+    	DESCRIPTIONS.put(TYPE_STRING_TOPK, "Most frequent messages in the interval");
     	
     	INTERVAL_DATA_TYPE.put(TYPE_INT_AVG, CompositeData.class);
     	INTERVAL_DATA_TYPE.put(TYPE_LONG_AVG, CompositeData.class);
@@ -208,11 +223,14 @@ public enum MetricType {
     	INTERVAL_DATA_TYPE.put(TYPE_TIMESTAMP, CompositeData.class);    	
     	INTERVAL_DATA_TYPE.put(TYPE_STRING, String.class);
     	INTERVAL_DATA_TYPE.put(TYPE_STRINGS, new String[0].getClass());
+    	INTERVAL_DATA_TYPE.put(TYPE_LONG_HISTOGRAM, CompositeData.class);
+    	INTERVAL_DATA_TYPE.put(TYPE_STRING_DISTINCT, Long.class);
+    	INTERVAL_DATA_TYPE.put(TYPE_STRING_TOPK, new String[0].getClass());
 
     	
     	for(MetricType mt: MetricType.values()) {
         	CODE2TYPE.put(mt.ordinal(), mt);
-        	TRACER_FACTORIES.put(mt, mt.factory);
+        	TRACER_FACTORIES.put(mt, mt.intervalTraceValueType.getFactory());
     	}
     	
 
@@ -255,6 +273,22 @@ public enum MetricType {
         
     
     
+    /**
+     * Indicates if this is a histogram type
+     * @return true if this is a histogram type
+     */
+    public boolean isHistogram() {
+    	return this.equals(LONG_HISTOGRAM);
+    }
+    
+    /**
+     * Indicates if this is a sketch type which aggregates strings into a bounded size summary
+     * @return true if this is a distinct count or top-k type
+     */
+    public boolean isSketch() {
+    	return this.equals(STRING_DISTINCT) || this.equals(STRING_TOPK);
+    }
+    
     /**
      * Returns the description of the metric type.
      * @return the description of the metric type.
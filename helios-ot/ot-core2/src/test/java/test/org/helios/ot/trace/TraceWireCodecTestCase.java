@@ -0,0 +1,188 @@
+package test.org.helios.ot.trace;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.StreamCorruptedException;
+import java.util.Random;
+
+import org.helios.ot.trace.IntervalTrace;
+import org.helios.ot.trace.Trace;
+import org.helios.ot.trace.TraceWireCodec;
+import org.helios.ot.tracer.ITracer;
+import org.helios.ot.tracer.TracerManager3;
+import org.helios.ot.type.MetricType;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * <p>Title: TraceWireCodecTestCase</p>
+ * <p>Description: Test case to validate that traces survive a round trip through the binary wire codec.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>test.org.helios.ot.trace.TraceWireCodecTestCase</code></p>
+ */
+
+public class TraceWireCodecTestCase {
+	public static final Random random = new Random(System.nanoTime());
+	public static void log(Object obj) { System.out.println(obj); }
+	
+	/**
+	 * Tests the varint and zigzag encodings at the edges of the value range
+	 */
+	@Test
+	public void testVarLongs() throws Exception {
+		long[] values = new long[]{0L, 1L, -1L, 63L, -64L, 64L, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, random.nextLong()};
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(baos);
+		for(long value: values) {
+			TraceWireCodec.writeVarLong(out, TraceWireCodec.zigzag(value));
+		}
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(baos.toByteArray()));
+		for(long value: values) {
+			Assert.assertEquals("The decoded varlong", value, TraceWireCodec.unzigzag(TraceWireCodec.readVarLong(in)));
+		}
+		Assert.assertEquals("The remaining bytes", 0, in.available());
+	}
+	
+	/**
+	 * Tests that traces round trip and that repeated metrics are sent as dictionary references
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testTraceRoundTrip() throws Exception {
+		ITracer tracer = TracerManager3.getInstance().getTracer();
+		final int value = random.nextInt();
+		Trace intTrace = tracer.smartTrace(MetricType.INT_AVG.ordinal(), "" + value, "WireInt");
+		Trace longTrace = tracer.smartTrace(MetricType.LONG_AVG.ordinal(), "" + (value * 1000L), "WireLong");
+		Trace stringTrace = tracer.smartTrace(MetricType.STRING.ordinal(), "Wire" + value, "WireString");
+		IntervalTrace intervalTrace = IntervalTrace.intervalTrace(intTrace, intTrace.getTimeStamp());
+		intervalTrace.apply(intTrace);
+		IntervalTrace closedTrace = intervalTrace.cloneReset(intTrace.getTimeStamp() + 15000);
+		Trace[] traces = new Trace[]{intTrace, longTrace, stringTrace, intTrace, closedTrace};
+		
+		TraceWireCodec encoder = new TraceWireCodec();
+		TraceWireCodec decoder = new TraceWireCodec();
+		byte[] first = encode(encoder, traces);
+		byte[] second = encode(encoder, traces);
+		log("First Frame:" + first.length + " bytes, Second Frame:" + second.length + " bytes");
+		Assert.assertTrue("The second frame should be smaller than the first", second.length < first.length);
+		Assert.assertEquals("The encoder dictionary size", 3, encoder.getEncodeDictionarySize());
+		
+		for(byte[] frame: new byte[][]{first, second}) {
+			Trace[] decoded = decoder.decode(new DataInputStream(new ByteArrayInputStream(frame)));
+			Assert.assertEquals("The number of decoded traces", traces.length, decoded.length);
+			for(int i = 0; i < traces.length; i++) {
+				Assert.assertEquals("The trace class", traces[i].getClass(), decoded[i].getClass());
+				Assert.assertEquals("The trace FQN", traces[i].getFQN(), decoded[i].getFQN());
+				Assert.assertEquals("The trace type", traces[i].getMetricType(), decoded[i].getMetricType());
+				Assert.assertEquals("The trace timestamp", traces[i].getTimeStamp(), decoded[i].getTimeStamp());
+				Assert.assertEquals("The trace value", traces[i].getValue(), decoded[i].getValue());
+			}
+			IntervalTrace decodedInterval = (IntervalTrace)decoded[4];
+			Assert.assertEquals("The interval end timestamp", closedTrace.getEndTimeStamp(), decodedInterval.getEndTimeStamp());
+			Assert.assertEquals("The interval value", closedTrace.getIntervalTraceValue().toString(), decodedInterval.getIntervalTraceValue().toString());
+		}
+		Assert.assertEquals("The decoder dictionary size", 3, decoder.getDecodeDictionarySize());
+	}
+	
+	/**
+	 * Tests that a frame declaring more traces than its bytes can hold is rejected before the trace array is allocated
+	 */
+	@Test
+	public void testOversizedTraceCount() throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(baos);
+		TraceWireCodec.writeVarLong(out, Integer.MAX_VALUE);
+		out.write(new byte[16]);
+		byte[] frame = baos.toByteArray();
+		try {
+			new TraceWireCodec().decode(new DataInputStream(new ByteArrayInputStream(frame)), frame.length);
+			Assert.fail("The oversized trace count was not rejected");
+		} catch (StreamCorruptedException sce) {
+			log("Rejected:" + sce.getMessage());
+		}
+		baos.reset();
+		TraceWireCodec.writeVarLong(out, Integer.MAX_VALUE);
+		try {
+			new TraceWireCodec().decode(new DataInputStream(new ByteArrayInputStream(baos.toByteArray())));
+			Assert.fail("The truncated frame was not rejected");
+		} catch (EOFException eof) {
+			log("Truncated frame rejected without allocating the declared count");
+		}
+	}
+	
+	/**
+	 * Tests that invalid metric references, metric type codes and value lengths are rejected before anything is allocated for them
+	 */
+	@Test
+	public void testCorruptFieldsRejected() throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(baos);
+		// a negative metric reference
+		TraceWireCodec.writeVarLong(out, 1);
+		TraceWireCodec.writeVarLong(out, -1L);
+		out.write(new byte[16]);
+		assertCorrupt(baos.toByteArray(), "negative metric reference");
+		// an unknown metric type code
+		baos.reset();
+		TraceWireCodec.writeVarLong(out, 1);
+		TraceWireCodec.writeVarLong(out, 1);
+		TraceWireCodec.writeVarLong(out, Integer.MAX_VALUE + 1L);
+		out.write(new byte[16]);
+		assertCorrupt(baos.toByteArray(), "unknown metric type code");
+		// a metric name longer than the frame
+		baos.reset();
+		TraceWireCodec.writeVarLong(out, 1);
+		TraceWireCodec.writeVarLong(out, 1);
+		TraceWireCodec.writeVarLong(out, MetricType.LONG_AVG.getCode());
+		TraceWireCodec.writeVarLong(out, Integer.MAX_VALUE);
+		out.write(new byte[16]);
+		byte[] frame = baos.toByteArray();
+		assertCorrupt(frame, "oversized name length");
+		try {
+			new TraceWireCodec().decode(new DataInputStream(new ByteArrayInputStream(frame)));
+			Assert.fail("The truncated name was not rejected");
+		} catch (EOFException eof) {
+			log("Truncated name rejected without allocating the declared length");
+		}
+		// a negative metric name length
+		baos.reset();
+		TraceWireCodec.writeVarLong(out, 1);
+		TraceWireCodec.writeVarLong(out, 1);
+		TraceWireCodec.writeVarLong(out, MetricType.LONG_AVG.getCode());
+		TraceWireCodec.writeVarLong(out, -5L);
+		out.write(new byte[16]);
+		assertCorrupt(baos.toByteArray(), "negative name length");
+	}
+	
+	/**
+	 * Asserts that decoding the passed frame fails with a StreamCorruptedException
+	 * @param frame The frame to decode
+	 * @param description A description of the corruption
+	 */
+	protected static void assertCorrupt(byte[] frame, String description) throws Exception {
+		try {
+			new TraceWireCodec().decode(new DataInputStream(new ByteArrayInputStream(frame)), frame.length);
+			Assert.fail("The " + description + " was not rejected");
+		} catch (StreamCorruptedException sce) {
+			log("Rejected " + description + ":" + sce.getMessage());
+		}
+	}
+	
+	/**
+	 * Encodes an array of traces into a byte array
+	 * @param codec The codec to encode with
+	 * @param traces The traces to encode
+	 * @return the encoded bytes
+	 */
+	protected static byte[] encode(TraceWireCodec codec, Trace[] traces) throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		codec.encode(traces, new DataOutputStream(baos));
+		return baos.toByteArray();
+	}
+}
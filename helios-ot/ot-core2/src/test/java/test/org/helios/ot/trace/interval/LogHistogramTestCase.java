@@ -0,0 +1,159 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ *
+ */
+package test.org.helios.ot.trace.interval;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.helios.ot.trace.types.interval.LogHistogram;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>Title: LogHistogramTestCase</p>
+ * <p>Description: Test case for the quantiles, range and merging of the {@link LogHistogram}.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>test.org.helios.ot.trace.interval.LogHistogramTestCase</code></p>
+ */
+
+public class LogHistogramTestCase {
+	/** The number of recorded values */
+	public static final int VALUES = 10000;
+	/** The quantiles checked */
+	public static final double[] QUANTILES = new double[]{0.5D, 0.9D, 0.99D, 0.999D};
+
+	/**
+	 * Checks the quantiles of a uniform distribution are resolved to within the configured significant digits
+	 */
+	@Test
+	public void testQuantiles() {
+		LogHistogram histogram = new LogHistogram();
+		for(int i = 1; i <= VALUES; i++) {
+			histogram.recordValue(i);
+		}
+		Assert.assertEquals("Total count", VALUES, histogram.getTotalCount());
+		Assert.assertEquals("Min", 1, histogram.getMinValue());
+		Assert.assertEquals("Max", VALUES, histogram.getMaxValue());
+		Assert.assertEquals("p0", 1, histogram.getValueAtQuantile(0D));
+		Assert.assertEquals("p100", VALUES, histogram.getValueAtQuantile(1D));
+		long[] values = histogram.getValuesAtQuantiles(QUANTILES);
+		for(int i = 0; i < QUANTILES.length; i++) {
+			assertWithinDigits("p" + QUANTILES[i], (long)(QUANTILES[i] * VALUES), histogram.getValueAtQuantile(QUANTILES[i]));
+			Assert.assertEquals("Batch p" + QUANTILES[i], histogram.getValueAtQuantile(QUANTILES[i]), values[i]);
+		}
+		Assert.assertEquals("Mean", (VALUES + 1) / 2D, histogram.getMean(), VALUES / 100D);
+	}
+
+	/**
+	 * Checks that the default range tracks values well beyond an hour in ms. without clamping them
+	 */
+	@Test
+	public void testDefaultRangeDoesNotClamp() {
+		LogHistogram histogram = new LogHistogram();
+		long[] large = new long[]{36000000L, 5000000000000L, Long.MAX_VALUE / 3};
+		for(long value: large) {
+			histogram.recordValue(value);
+		}
+		Assert.assertEquals("Max", large[2], histogram.getMaxValue());
+		assertWithinDigits("p50", large[1], histogram.getValueAtQuantile(0.5D));
+		Assert.assertEquals("p100", large[2], histogram.getValueAtQuantile(1D));
+		Assert.assertEquals("Min", large[0], histogram.getMinValue());
+		histogram.recordValue(Long.MAX_VALUE);
+		Assert.assertEquals("Max after the largest long", Long.MAX_VALUE, histogram.getValueAtQuantile(1D));
+	}
+
+	/**
+	 * Checks that merging histograms with the same layout matches recording every value into one histogram
+	 */
+	@Test
+	public void testMergeSameLayout() {
+		LogHistogram all = new LogHistogram();
+		LogHistogram odd = new LogHistogram();
+		LogHistogram even = new LogHistogram();
+		for(int i = 1; i <= VALUES; i++) {
+			all.recordValue(i);
+			(i%2==0 ? even : odd).recordValue(i);
+		}
+		LogHistogram merged = new LogHistogram(odd);
+		merged.add(even);
+		Assert.assertEquals("Total count", all.getTotalCount(), merged.getTotalCount());
+		Assert.assertEquals("Min", all.getMinValue(), merged.getMinValue());
+		Assert.assertEquals("Max", all.getMaxValue(), merged.getMaxValue());
+		Assert.assertArrayEquals("Counts", all.getCounts(), merged.getCounts());
+		Assert.assertArrayEquals("Quantiles", all.getValuesAtQuantiles(QUANTILES), merged.getValuesAtQuantiles(QUANTILES));
+	}
+
+	/**
+	 * Checks that merging a histogram with a different layout keeps the quantiles within the configured significant digits
+	 */
+	@Test
+	public void testMergeDifferentLayout() {
+		LogHistogram other = new LogHistogram(3, 1000000L);
+		for(int i = 1; i <= VALUES; i++) {
+			other.recordValue(i * 10L);
+		}
+		LogHistogram merged = new LogHistogram();
+		merged.add(other);
+		Assert.assertEquals("Total count", VALUES, merged.getTotalCount());
+		for(double q: QUANTILES) {
+			assertWithinDigits("p" + q, other.getValueAtQuantile(q), merged.getValueAtQuantile(q));
+		}
+	}
+
+	/**
+	 * Checks that a histogram round trips through serialization
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testSerialization() throws Exception {
+		LogHistogram histogram = new LogHistogram();
+		for(int i = 1; i <= VALUES; i++) {
+			histogram.recordValue(i * 1000L);
+		}
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(baos);
+		oos.writeObject(histogram);
+		oos.close();
+		LogHistogram read = (LogHistogram)new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray())).readObject();
+		Assert.assertTrue("Same layout", histogram.isSameLayout(read));
+		Assert.assertArrayEquals("Counts", histogram.getCounts(), read.getCounts());
+		Assert.assertEquals("Max", histogram.getMaxValue(), read.getMaxValue());
+	}
+
+	/**
+	 * Asserts that a value is within the default 2 significant digits of the expected value
+	 * @param message The assertion message
+	 * @param expected The expected value
+	 * @param actual The actual value
+	 */
+	protected static void assertWithinDigits(String message, long expected, long actual) {
+		double error = Math.abs((double)actual - expected) / expected;
+		Assert.assertTrue(message + " expected [" + expected + "] but was [" + actual + "]", error <= 0.01D);
+	}
+}
@@ -151,6 +151,23 @@ public class TypesTestCase {
 					Arrays.sort(actual);
 					Assert.assertArrayEquals("[" + metricType + "] The return value of itValue.getValue was not the expected value", expected, actual);					
 				}
+			} else if(metricType.isSketch()) {
+				for(int val: testInts.toArray()) {
+					t.apply(metricType.traceValue(MSG_PREFIX + val));
+				}				
+				Assert.assertEquals("[" + metricType + "] Invalid count on interval metric", sampleCount, t.getCount());
+				Assert.assertEquals("[" + metricType + "] The return type of itValue.getValue was not the expected", metricType.getIntervalTraceValueType().getBaseType(), Primitive.primitive(t.getValue().getClass()));
+				testedTypes.add(metricType.name());
+				notTestedTypes.remove(metricType.name());
+				if(metricType.equals(MetricType.STRING_DISTINCT)) {
+					Assert.assertEquals("[" + metricType + "] The estimated distinct count was not the expected value", new HashSet<String>(testValues).size(), ((Long)t.getValue()).doubleValue(), 1D);
+				} else {
+					String[] expected = new HashSet<String>(testValues).toArray(new String[0]);
+					Arrays.sort(expected);
+					String[] actual = (String[])t.getValue();
+					Arrays.sort(actual);
+					Assert.assertArrayEquals("[" + metricType + "] The return value of itValue.getValue was not the expected value", expected, actual);
+				}
 			} else if(metricType.equals(MetricType.TIMESTAMP)) {
 				testedTypes.add(metricType.name());
 				notTestedTypes.remove(metricType.name());
@@ -31,6 +31,7 @@ import org.helios.jmx.dynamic.annotations.JMXAttribute;
 import org.helios.jmx.dynamic.annotations.JMXManagedObject;
 import org.helios.jmx.dynamic.annotations.options.AttributeMutabilityOption;
 import org.helios.ot.agent.HeliosOTClient;
+import org.helios.ot.agent.HeliosOTClientEventListener;
 import org.helios.ot.agent.HeliosOTClientFactory;
 import org.helios.ot.endpoint.AbstractEndpoint;
 import org.helios.ot.endpoint.EndpointConnectException;
@@ -61,6 +62,19 @@ public class HeliosEndpoint<T extends Trace<? extends ITraceValue>> extends Abst
 	private static final long serialVersionUID = -433677190518825263L;
 	/** The last elapsed message */
 	protected String lastElapsed = null;
+	/** The optional store and forward spool for batches submitted while the client is disconnected */
+	protected final TraceSpool spool;
+	/** Starts replaying the spool when the client connects */
+	protected final HeliosOTClientEventListener spoolReplayListener = new HeliosOTClientEventListener() {
+		public void onConnect(HeliosOTClient client) {
+			spool.startReplay(client);
+		}
+		public void onConnectFailure(HeliosOTClient client, Throwable cause) {
+		}
+		public void onDisconnect(HeliosOTClient client, Throwable cause) {
+			spool.stopReplay();
+		}
+	};
 	
 	
 	/**
@@ -68,6 +82,10 @@ public class HeliosEndpoint<T extends Trace<? extends ITraceValue>> extends Abst
 	 */
 	public HeliosEndpoint() {
 		// Read the basic config
+		spool = TraceSpool.fromConfiguration();
+		if(spool!=null) {
+			reflectObject(spool);
+		}
 	}
 	
 	
@@ -80,6 +98,9 @@ public class HeliosEndpoint<T extends Trace<? extends ITraceValue>> extends Abst
 	protected void connectImpl() throws EndpointConnectException {
 		try {
 			otAgent = HeliosOTClientFactory.newInstance();
+			if(spool!=null) {
+				otAgent.addListener(spoolReplayListener);
+			}
 			otAgent.connect(false);
 		} catch (Exception e) {
 			throw new EndpointConnectException("HeliosEndpoint failed to connect:" + e);			
@@ -92,6 +113,10 @@ public class HeliosEndpoint<T extends Trace<? extends ITraceValue>> extends Abst
 	 */
 	@Override
 	protected void disconnectImpl() {
+		if(spool!=null) {
+			spool.stopReplay();
+			otAgent.removeListener(spoolReplayListener);
+		}
 		otAgent.disconnect();
 		otAgent = null;
 	}
@@ -139,6 +164,17 @@ public class HeliosEndpoint<T extends Trace<? extends ITraceValue>> extends Abst
 	@Override
 	protected boolean processTracesImpl(TraceCollection<T> traceCollection) throws EndpointConnectException, EndpointTraceException {
 		SystemClock.startTimer();
+		if(spool!=null) {
+			final HeliosOTClient client = otAgent;
+			final boolean clientConnected = client!=null && client.isConnected();
+			if(!isConnected() || !clientConnected || spool.isActive()) {
+				// spool while disconnected, and while a backlog remains so batches are delivered in order
+				boolean spooled = spool.append(traceCollection.getTraces().toArray(new Trace[0]));
+				if(clientConnected) spool.startReplay(client);
+				lastElapsed = SystemClock.endTimer().toString();
+				return spooled;
+			}
+		}
 		if(isConnected()) {
 			otAgent.submitTraces(traceCollection.getTraces().toArray(new Trace[0]));
 			lastElapsed = SystemClock.endTimer().toString();
@@ -0,0 +1,745 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.ot.helios;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+import org.helios.helpers.ConfigurationHelper;
+import org.helios.jmx.dynamic.annotations.JMXAttribute;
+import org.helios.jmx.dynamic.annotations.JMXManagedObject;
+import org.helios.jmx.dynamic.annotations.JMXOperation;
+import org.helios.jmx.dynamic.annotations.options.AttributeMutabilityOption;
+import org.helios.ot.agent.HeliosOTClient;
+import org.helios.ot.trace.Trace;
+import org.helios.ot.trace.TraceWireCodec;
+
+/**
+ * <p>Title: TraceSpool</p>
+ * <p>Description: A bounded, memory mapped, append only store and forward spool for trace batches that could not be sent to the Helios OT Server.
+ * Batches are appended to fixed size segment files and replayed in order, at a limited rate, once the client reconnects. Whole segments are
+ * discarded, oldest first, when the spool exceeds its size cap or its newest batch exceeds the age cap.</p>
+ * <p>Segments left by a previous run in the spool directory are recovered on startup and replayed, so delivery is at least once.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.ot.helios.TraceSpool</code></p>
+ */
+@JMXManagedObject(annotated=true, declared=true)
+public class TraceSpool implements Runnable {
+	/** The spool segment directory */
+	protected final File directory;
+	/** The size of each segment file in bytes */
+	protected final int segmentSize;
+	/** The maximum number of spooled bytes */
+	protected final long maxBytes;
+	/** The maximum age of a spooled batch in ms. Zero or less disables the age cap. */
+	protected final long maxAge;
+	/** The maximum number of batches replayed per second */
+	protected final int replayRate;
+	/** The segments, oldest first. Guarded by this spool. */
+	protected final LinkedList<Segment> segments = new LinkedList<Segment>();
+	/** The serial number of the last created segment */
+	protected long segmentSerial = 0L;
+	/** The number of unreplayed bytes */
+	protected volatile long backlogBytes = 0L;
+	/** The number of unreplayed batches */
+	protected volatile long backlogBatches = 0L;
+	/** The number of spooled batches */
+	protected final AtomicLong spooledBatches = new AtomicLong(0L);
+	/** The number of replayed batches */
+	protected final AtomicLong replayedBatches = new AtomicLong(0L);
+	/** The number of replayed traces */
+	protected final AtomicLong replayedTraces = new AtomicLong(0L);
+	/** The number of batches discarded because of the size or age caps */
+	protected final AtomicLong droppedBatches = new AtomicLong(0L);
+	/** The client being replayed to */
+	protected volatile HeliosOTClient replayClient = null;
+	/** Indicates if a replay is in progress */
+	protected volatile boolean replaying = false;
+	/** The start time of the current or last replay */
+	protected volatile long replayStartTime = 0L;
+	/** The end time of the last replay, or 0 if a replay is in progress */
+	protected volatile long replayEndTime = 0L;
+	/** The number of traces replayed in the current or last replay */
+	protected volatile long replayRunTraces = 0L;
+	/** Instance logger */
+	protected final Logger log = Logger.getLogger(getClass());
+
+	/** The configuration property prefix */
+	public static final String SPOOL_PREFIX = "org.helios.ot.helios.spool";
+	/** The configuration property to enable the spool */
+	public static final String SPOOL_ENABLED = SPOOL_PREFIX + ".enabled";
+	/** The configuration property for the spool directory */
+	public static final String SPOOL_DIRECTORY = SPOOL_PREFIX + ".dir";
+	/** The configuration property for the segment size in bytes */
+	public static final String SPOOL_SEGMENT_SIZE = SPOOL_PREFIX + ".segmentSize";
+	/** The configuration property for the maximum spool size in bytes */
+	public static final String SPOOL_MAX_BYTES = SPOOL_PREFIX + ".maxBytes";
+	/** The configuration property for the maximum batch age in ms. */
+	public static final String SPOOL_MAX_AGE = SPOOL_PREFIX + ".maxAge";
+	/** The configuration property for the maximum number of batches replayed per second */
+	public static final String SPOOL_REPLAY_RATE = SPOOL_PREFIX + ".replayRate";
+
+	/** The default spool enablement */
+	public static final boolean DEFAULT_SPOOL_ENABLED = false;
+	/** The default spool directory */
+	public static final String DEFAULT_SPOOL_DIRECTORY = System.getProperty("java.io.tmpdir") + File.separator + "helios-spool";
+	/** The default segment size in bytes */
+	public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+	/** The default maximum spool size in bytes */
+	public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+	/** The default maximum batch age in ms. */
+	public static final long DEFAULT_MAX_AGE = 60L * 60 * 1000;
+	/** The default maximum number of batches replayed per second */
+	public static final int DEFAULT_REPLAY_RATE = 50;
+
+	/** The record header size: payload length, timestamp and trace count */
+	protected static final int RECORD_HEADER = 4 + 8 + 4;
+	/** The segment file name prefix */
+	protected static final String SEGMENT_PREFIX = "spool-";
+	/** The segment file name suffix */
+	protected static final String SEGMENT_SUFFIX = ".seg";
+
+	/**
+	 * Creates a new TraceSpool from system properties or environment variables
+	 * @return a new TraceSpool or null if the spool is not enabled
+	 */
+	public static TraceSpool fromConfiguration() {
+		if(!ConfigurationHelper.getBooleanSystemThenEnvProperty(SPOOL_ENABLED, DEFAULT_SPOOL_ENABLED)) return null;
+		return new TraceSpool(
+				new File(ConfigurationHelper.getSystemThenEnvProperty(SPOOL_DIRECTORY, DEFAULT_SPOOL_DIRECTORY)),
+				ConfigurationHelper.getIntSystemThenEnvProperty(SPOOL_SEGMENT_SIZE, DEFAULT_SEGMENT_SIZE),
+				ConfigurationHelper.getLongSystemThenEnvProperty(SPOOL_MAX_BYTES, DEFAULT_MAX_BYTES),
+				ConfigurationHelper.getLongSystemThenEnvProperty(SPOOL_MAX_AGE, DEFAULT_MAX_AGE),
+				ConfigurationHelper.getIntSystemThenEnvProperty(SPOOL_REPLAY_RATE, DEFAULT_REPLAY_RATE)
+		);
+	}
+
+	/**
+	 * Creates a new TraceSpool
+	 * @param directory The spool segment directory
+	 * @param segmentSize The size of each segment file in bytes
+	 * @param maxBytes The maximum number of spooled bytes
+	 * @param maxAge The maximum age of a spooled batch in ms.
+	 * @param replayRate The maximum number of batches replayed per second
+	 */
+	public TraceSpool(File directory, int segmentSize, long maxBytes, long maxAge, int replayRate) {
+		if(directory==null) throw new IllegalArgumentException("The passed directory was null", new Throwable());
+		if(segmentSize<=RECORD_HEADER*2) throw new IllegalArgumentException("Invalid segment size [" + segmentSize + "]", new Throwable());
+		if(maxBytes<segmentSize) throw new IllegalArgumentException("The maximum spool size [" + maxBytes + "] is less than the segment size [" + segmentSize + "]", new Throwable());
+		if(replayRate<1) throw new IllegalArgumentException("Invalid replay rate [" + replayRate + "]", new Throwable());
+		if(!directory.exists() && !directory.mkdirs()) throw new IllegalArgumentException("Failed to create spool directory [" + directory + "]", new Throwable());
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxBytes = maxBytes;
+		this.maxAge = maxAge;
+		this.replayRate = replayRate;
+		recover();
+	}
+
+	/**
+	 * Appends a batch of traces to the spool
+	 * @param traces The traces to spool
+	 * @return true if the batch was spooled, false if it was dropped
+	 */
+	public boolean append(Trace[] traces) {
+		if(traces==null || traces.length==0) return true;
+		byte[] payload;
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(traces.length * 32);
+			new TraceWireCodec(TraceWireCodec.DEFAULT_MAX_DICTIONARY_SIZE, true).encode(traces, new DataOutputStream(baos));
+			payload = baos.toByteArray();
+		} catch (IOException e) {
+			log.warn("Failed to encode batch for spooling", e);
+			droppedBatches.incrementAndGet();
+			return false;
+		}
+		final int recordSize = RECORD_HEADER + payload.length;
+		if(recordSize + 4 > segmentSize) {
+			log.warn("Batch of [" + recordSize + "] bytes exceeds the spool segment size [" + segmentSize + "]");
+			droppedBatches.incrementAndGet();
+			return false;
+		}
+		final long now = System.currentTimeMillis();
+		synchronized(this) {
+			evictAged(now);
+			while(!segments.isEmpty() && backlogBytes + recordSize > maxBytes) {
+				evict(segments.getFirst(), "size cap");
+			}
+			Segment tail = segments.isEmpty() ? null : segments.getLast();
+			try {
+				// leave room for the zero length end marker
+				if(tail==null || tail.writePos + recordSize + 4 > segmentSize) {
+					tail = newSegment();
+				}
+			} catch (IOException e) {
+				log.warn("Failed to create spool segment", e);
+				droppedBatches.incrementAndGet();
+				return false;
+			}
+			MappedByteBuffer buffer = tail.buffer;
+			buffer.putLong(tail.writePos + 4, now);
+			buffer.putInt(tail.writePos + 12, traces.length);
+			ByteBuffer data = buffer.duplicate();
+			data.position(tail.writePos + RECORD_HEADER);
+			data.put(payload);
+			// terminate the segment after this record, then write the length last so a partially written record reads as the end of the segment
+			buffer.putInt(tail.writePos + recordSize, 0);
+			buffer.putInt(tail.writePos, payload.length);
+			tail.writePos += recordSize;
+			tail.records++;
+			tail.lastTimestamp = now;
+			backlogBytes += recordSize;
+			backlogBatches++;
+		}
+		spooledBatches.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Starts replaying the spool to the passed client if it is not already replaying
+	 * @param client The client to replay to
+	 */
+	public synchronized void startReplay(HeliosOTClient client) {
+		if(replaying || backlogBatches==0 || client==null) return;
+		replaying = true;
+		replayClient = client;
+		replayStartTime = System.currentTimeMillis();
+		replayEndTime = 0L;
+		replayRunTraces = 0L;
+		Thread t = new Thread(this, "HeliosTraceSpoolReplay");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Requests that an in progress replay stop
+	 */
+	public void stopReplay() {
+		replayClient = null;
+	}
+
+	/**
+	 * The replay loop
+	 */
+	public void run() {
+		final long pause = TimeUnit.NANOSECONDS.convert(1, TimeUnit.SECONDS) / replayRate;
+		try {
+			for(;;) {
+				HeliosOTClient client = replayClient;
+				if(client==null || !client.isConnected()) break;
+				Record record;
+				synchronized(this) {
+					record = peek();
+					if(record==null) {
+						// nothing left, so live batches can go direct from here on
+						replaying = false;
+						return;
+					}
+				}
+				Trace[] traces = record.decode();
+				if(traces!=null) {
+					client.submitTraces(traces);
+					replayedBatches.incrementAndGet();
+					replayedTraces.addAndGet(traces.length);
+					replayRunTraces += traces.length;
+				}
+				commit(record);
+				LockSupport.parkNanos(pause);
+			}
+		} catch (Exception e) {
+			log.warn("Spool replay failed", e);
+		} finally {
+			replayEndTime = System.currentTimeMillis();
+			synchronized(this) {
+				replaying = false;
+			}
+		}
+	}
+
+	/**
+	 * Indicates if live batches must be spooled to preserve ordering, because the spool has a backlog or is replaying
+	 * @return true if live batches must be spooled
+	 */
+	public boolean isActive() {
+		return replaying || backlogBatches>0;
+	}
+
+	/**
+	 * Returns the next unreplayed record without consuming it. Must be called holding this spool's lock.
+	 * @return the next record or null if the spool is empty
+	 */
+	protected Record peek() {
+		evictAged(System.currentTimeMillis());
+		while(!segments.isEmpty()) {
+			Segment head = segments.getFirst();
+			if(head.readPos < head.writePos) {
+				MappedByteBuffer buffer = head.buffer;
+				int length = buffer.getInt(head.readPos);
+				long timestamp = buffer.getLong(head.readPos + 4);
+				byte[] payload = new byte[length];
+				ByteBuffer data = buffer.duplicate();
+				data.position(head.readPos + RECORD_HEADER);
+				data.get(payload);
+				return new Record(head, head.readPos, timestamp, payload);
+			}
+			if(head==segments.getLast()) return null;
+			remove(head);
+		}
+		return null;
+	}
+
+	/**
+	 * Consumes a replayed record
+	 * @param record The record to consume
+	 */
+	protected synchronized void commit(Record record) {
+		Segment head = segments.isEmpty() ? null : segments.getFirst();
+		// the segment may have been evicted while the record was being replayed
+		if(head!=record.segment || head.readPos!=record.position) return;
+		int recordSize = RECORD_HEADER + record.payload.length;
+		head.readPos += recordSize;
+		head.consumed++;
+		backlogBytes -= recordSize;
+		backlogBatches--;
+		if(head.readPos>=head.writePos && head!=segments.getLast()) {
+			remove(head);
+		}
+	}
+
+	/**
+	 * Discards segments whose newest batch is older than the age cap. Must be called holding this spool's lock.
+	 * @param now The current time
+	 */
+	protected void evictAged(long now) {
+		if(maxAge<1) return;
+		while(!segments.isEmpty() && segments.getFirst().lastTimestamp < now - maxAge) {
+			evict(segments.getFirst(), "age cap");
+		}
+	}
+
+	/**
+	 * Discards a segment and its unreplayed batches. Must be called holding this spool's lock.
+	 * @param segment The segment to discard
+	 * @param reason The reason for discarding the segment
+	 */
+	protected void evict(Segment segment, String reason) {
+		int unreplayed = segment.records - segment.consumed;
+		if(unreplayed>0) {
+			droppedBatches.addAndGet(unreplayed);
+			backlogBatches -= unreplayed;
+			backlogBytes -= (segment.writePos - segment.readPos);
+			log.warn("Discarded spool segment [" + segment.file.getName() + "] with [" + unreplayed + "] batches. Reason:" + reason);
+		}
+		remove(segment);
+	}
+
+	/**
+	 * Removes a segment and deletes its file. Must be called holding this spool's lock.
+	 * @param segment The segment to remove
+	 */
+	protected void remove(Segment segment) {
+		segments.remove(segment);
+		segment.close();
+		if(!segment.file.delete()) {
+			segment.file.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Creates and maps a new tail segment. Must be called holding this spool's lock.
+	 * @return the new segment
+	 * @throws IOException thrown if the segment file cannot be created or mapped
+	 */
+	protected Segment newSegment() throws IOException {
+		segmentSerial++;
+		File file = new File(directory, String.format("%s%016d%s", SEGMENT_PREFIX, segmentSerial, SEGMENT_SUFFIX));
+		Segment segment = map(file);
+		segments.addLast(segment);
+		return segment;
+	}
+
+	/**
+	 * Opens and maps a segment file
+	 * @param file The file to map
+	 * @return the mapped segment
+	 * @throws IOException thrown if the file cannot be mapped
+	 */
+	protected Segment map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(segmentSize);
+			return new Segment(file, raf, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+		} catch (IOException ioe) {
+			try { raf.close(); } catch (Exception e) {}
+			throw ioe;
+		}
+	}
+
+	/**
+	 * Recovers the segments left in the spool directory by a previous run
+	 */
+	protected synchronized void recover() {
+		File[] files = directory.listFiles(new FileFilter() {
+			public boolean accept(File f) {
+				return f.isFile() && f.getName().startsWith(SEGMENT_PREFIX) && f.getName().endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		if(files==null || files.length==0) return;
+		Arrays.sort(files);
+		for(File file: files) {
+			try {
+				String serial = file.getName().substring(SEGMENT_PREFIX.length(), file.getName().length() - SEGMENT_SUFFIX.length());
+				segmentSerial = Math.max(segmentSerial, Long.parseLong(serial));
+				if(file.length()!=segmentSize) {
+					log.warn("Discarding spool segment [" + file + "] with a different segment size");
+					file.delete();
+					continue;
+				}
+				Segment segment = map(file);
+				MappedByteBuffer buffer = segment.buffer;
+				while(segment.writePos + RECORD_HEADER <= segmentSize) {
+					int length = buffer.getInt(segment.writePos);
+					if(length<=0 || segment.writePos + RECORD_HEADER + length > segmentSize) break;
+					segment.lastTimestamp = buffer.getLong(segment.writePos + 4);
+					segment.writePos += RECORD_HEADER + length;
+					segment.records++;
+				}
+				if(segment.records==0) {
+					segment.close();
+					file.delete();
+					continue;
+				}
+				segments.addLast(segment);
+				backlogBytes += segment.writePos;
+				backlogBatches += segment.records;
+			} catch (Exception e) {
+				log.warn("Failed to recover spool segment [" + file + "]", e);
+			}
+		}
+		if(backlogBatches>0) {
+			log.info("Recovered [" + backlogBatches + "] spooled batches from [" + directory + "]");
+		}
+	}
+
+	/**
+	 * Unmaps and closes all the segments, leaving their files in place to be recovered by the next spool on this directory
+	 */
+	public synchronized void close() {
+		replayClient = null;
+		for(Segment segment: segments) {
+			segment.close();
+		}
+		segments.clear();
+		backlogBytes = 0L;
+		backlogBatches = 0L;
+	}
+
+	/**
+	 * Discards all spooled batches
+	 */
+	@JMXOperation(name="purge", description="Discards all spooled batches")
+	public synchronized void purge() {
+		while(!segments.isEmpty()) {
+			evict(segments.getFirst(), "purge");
+		}
+	}
+
+	/**
+	 * Returns the number of unreplayed bytes in the spool
+	 * @return the number of unreplayed bytes
+	 */
+	@JMXAttribute(name="SpoolBacklogBytes", description="The number of unreplayed bytes in the spool", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getBacklogBytes() {
+		return backlogBytes;
+	}
+
+	/**
+	 * Returns the number of unreplayed batches in the spool
+	 * @return the number of unreplayed batches
+	 */
+	@JMXAttribute(name="SpoolBacklogBatches", description="The number of unreplayed batches in the spool", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getBacklogBatches() {
+		return backlogBatches;
+	}
+
+	/**
+	 * Returns the age of the oldest unreplayed batch in ms.
+	 * @return the age of the oldest unreplayed batch or 0 if the spool is empty
+	 */
+	@JMXAttribute(name="SpoolOldestEntryAge", description="The age of the oldest unreplayed batch in ms.", mutability=AttributeMutabilityOption.READ_ONLY)
+	public synchronized long getOldestEntryAge() {
+		for(Segment segment: segments) {
+			if(segment.readPos < segment.writePos) {
+				return System.currentTimeMillis() - segment.buffer.getLong(segment.readPos + 4);
+			}
+		}
+		return 0L;
+	}
+
+	/**
+	 * Returns the number of segment files in the spool
+	 * @return the number of segment files
+	 */
+	@JMXAttribute(name="SpoolSegmentCount", description="The number of segment files in the spool", mutability=AttributeMutabilityOption.READ_ONLY)
+	public synchronized int getSegmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * Returns the number of spooled batches
+	 * @return the number of spooled batches
+	 */
+	@JMXAttribute(name="SpooledBatches", description="The number of spooled batches", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getSpooledBatches() {
+		return spooledBatches.get();
+	}
+
+	/**
+	 * Returns the number of replayed batches
+	 * @return the number of replayed batches
+	 */
+	@JMXAttribute(name="SpoolReplayedBatches", description="The number of replayed batches", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getReplayedBatches() {
+		return replayedBatches.get();
+	}
+
+	/**
+	 * Returns the number of replayed traces
+	 * @return the number of replayed traces
+	 */
+	@JMXAttribute(name="SpoolReplayedTraces", description="The number of replayed traces", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getReplayedTraces() {
+		return replayedTraces.get();
+	}
+
+	/**
+	 * Returns the number of batches discarded because of the size or age caps
+	 * @return the number of discarded batches
+	 */
+	@JMXAttribute(name="SpoolDroppedBatches", description="The number of batches discarded because of the spool size or age caps", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getDroppedBatches() {
+		return droppedBatches.get();
+	}
+
+	/**
+	 * Returns the replay throughput of the current or last replay in traces per second
+	 * @return the replay throughput
+	 */
+	@JMXAttribute(name="SpoolReplayThroughput", description="The replay throughput of the current or last replay in traces per second", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getReplayThroughput() {
+		if(replayStartTime==0L) return 0L;
+		long end = replayEndTime==0L ? System.currentTimeMillis() : replayEndTime;
+		long elapsed = Math.max(1L, end - replayStartTime);
+		return replayRunTraces * 1000L / elapsed;
+	}
+
+	/**
+	 * Indicates if a replay is in progress
+	 * @return true if a replay is in progress
+	 */
+	@JMXAttribute(name="SpoolReplaying", description="Indicates if a spool replay is in progress", mutability=AttributeMutabilityOption.READ_ONLY)
+	public boolean isReplaying() {
+		return replaying;
+	}
+
+	/**
+	 * Returns the spool directory
+	 * @return the spool directory
+	 */
+	@JMXAttribute(name="SpoolDirectory", description="The spool segment directory", mutability=AttributeMutabilityOption.READ_ONLY)
+	public String getDirectory() {
+		return directory.getAbsolutePath();
+	}
+
+	/**
+	 * Returns the maximum number of spooled bytes
+	 * @return the maximum number of spooled bytes
+	 */
+	@JMXAttribute(name="SpoolMaxBytes", description="The maximum number of spooled bytes", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Returns the maximum age of a spooled batch in ms.
+	 * @return the maximum age of a spooled batch
+	 */
+	@JMXAttribute(name="SpoolMaxAge", description="The maximum age of a spooled batch in ms.", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	/**
+	 * Returns the maximum number of batches replayed per second
+	 * @return the replay rate
+	 */
+	@JMXAttribute(name="SpoolReplayRate", description="The maximum number of batches replayed per second", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getReplayRate() {
+		return replayRate;
+	}
+
+	/**
+	 * <p>Title: Segment</p>
+	 * <p>Description: A memory mapped spool segment file</p>
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.ot.helios.TraceSpool.Segment</code></p>
+	 */
+	protected static class Segment {
+		/** The segment file */
+		protected final File file;
+		/** The open segment file, held until the segment is closed */
+		protected final RandomAccessFile raf;
+		/** The mapped segment */
+		protected final MappedByteBuffer buffer;
+		/** The offset of the next record to write */
+		protected int writePos = 0;
+		/** The offset of the next record to replay */
+		protected int readPos = 0;
+		/** The number of records written */
+		protected int records = 0;
+		/** The number of records replayed */
+		protected int consumed = 0;
+		/** The timestamp of the newest record */
+		protected long lastTimestamp = 0L;
+
+		/**
+		 * Creates a new Segment
+		 * @param file The segment file
+		 * @param raf The open segment file
+		 * @param buffer The mapped segment
+		 */
+		protected Segment(File file, RandomAccessFile raf, MappedByteBuffer buffer) {
+			this.file = file;
+			this.raf = raf;
+			this.buffer = buffer;
+		}
+
+		/**
+		 * Unmaps the segment and closes its file. The buffer must not be accessed afterwards.
+		 */
+		protected void close() {
+			unmap(buffer);
+			try { raf.close(); } catch (Exception e) {}
+		}
+	}
+
+	/**
+	 * Releases the mapping of the passed buffer immediately rather than when it is garbage collected, 
+	 * so deleted segment files do not keep their disk space and mapped memory. 
+	 * Falls back to releasing on collection if the JVM does not expose a buffer cleaner.
+	 * @param buffer The buffer to unmap
+	 */
+	protected static void unmap(MappedByteBuffer buffer) {
+		try {
+			// Java 9+
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			return;
+		} catch (NoSuchMethodException nsme) {
+			// fall through to the pre Java 9 cleaner
+		} catch (Throwable t) {
+			return;
+		}
+		try {
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+			if(cleaner!=null) cleaner.getClass().getMethod("clean").invoke(cleaner);
+		} catch (Throwable t) {
+			// the mapping is released when the buffer is collected
+		}
+	}
+
+	/**
+	 * <p>Title: Record</p>
+	 * <p>Description: A spooled batch read from a segment</p>
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.ot.helios.TraceSpool.Record</code></p>
+	 */
+	protected class Record {
+		/** The segment the record was read from */
+		protected final Segment segment;
+		/** The offset of the record in the segment */
+		protected final int position;
+		/** The time the batch was spooled */
+		protected final long timestamp;
+		/** The encoded batch */
+		protected final byte[] payload;
+
+		/**
+		 * Creates a new Record
+		 * @param segment The segment the record was read from
+		 * @param position The offset of the record in the segment
+		 * @param timestamp The time the batch was spooled
+		 * @param payload The encoded batch
+		 */
+		protected Record(Segment segment, int position, long timestamp, byte[] payload) {
+			this.segment = segment;
+			this.position = position;
+			this.timestamp = timestamp;
+			this.payload = payload;
+		}
+
+		/**
+		 * Decodes the batch
+		 * @return the decoded traces or null if the batch could not be decoded
+		 */
+		protected Trace[] decode() {
+			try {
+				return new TraceWireCodec(TraceWireCodec.DEFAULT_MAX_DICTIONARY_SIZE, true).decode(new DataInputStream(new ByteArrayInputStream(payload)), payload.length);
+			} catch (Exception e) {
+				log.warn("Discarding undecodable spooled batch from [" + segment.file.getName() + "]", e);
+				droppedBatches.incrementAndGet();
+				return null;
+			}
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.org.helios.ot.helios;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.helios.ot.agent.HeliosOTClient;
+import org.helios.ot.helios.TraceSpool;
+import org.helios.ot.trace.Trace;
+import org.helios.ot.tracer.ITracer;
+import org.helios.ot.tracer.TracerManager3;
+import org.helios.ot.type.MetricType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>Title: TraceSpoolTestCase</p>
+ * <p>Description: Test case to validate segment rollover, recovery, size capping and replay of the {@link TraceSpool}.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>test.org.helios.ot.helios.TraceSpoolTestCase</code></p>
+ */
+
+public class TraceSpoolTestCase {
+	/** The segment size used by the tests */
+	public static final int SEGMENT_SIZE = 4096;
+	/** The spool directory for the current test */
+	protected File directory = null;
+	/** The spool for the current test */
+	protected TraceSpool spool = null;
+	
+	public static void log(Object obj) { System.out.println(obj); }
+	
+	/**
+	 * Creates an empty spool directory
+	 */
+	@Before
+	public void setUp() {
+		directory = new File(System.getProperty("java.io.tmpdir"), "helios-spool-test-" + System.nanoTime());
+	}
+	
+	/**
+	 * Closes the spool and deletes the spool directory
+	 */
+	@After
+	public void tearDown() {
+		if(spool!=null) spool.close();
+		File[] files = directory.listFiles();
+		if(files!=null) {
+			for(File f: files) f.delete();
+		}
+		directory.delete();
+	}
+	
+	/**
+	 * Tests that appends roll over into new segments, that a new spool recovers them in order and that purged segment files are deleted
+	 */
+	@Test
+	public void testRolloverAndRecovery() throws Exception {
+		spool = new TraceSpool(directory, SEGMENT_SIZE, 1024 * 1024, 0, 1000);
+		final int batches = 200;
+		for(int i = 0; i < batches; i++) {
+			Assert.assertTrue("The batch was spooled", spool.append(batch(i)));
+		}
+		int segmentCount = spool.getSegmentCount();
+		log("Spooled [" + batches + "] batches into [" + segmentCount + "] segments");
+		Assert.assertTrue("The spool should have rolled over", segmentCount > 1);
+		Assert.assertEquals("The segment files", segmentCount, segmentFiles().length);
+		Assert.assertEquals("The backlog batches", batches, spool.getBacklogBatches());
+		long backlogBytes = spool.getBacklogBytes();
+		spool.close();
+		
+		spool = new TraceSpool(directory, SEGMENT_SIZE, 1024 * 1024, 0, 1000);
+		Assert.assertEquals("The recovered segments", segmentCount, spool.getSegmentCount());
+		Assert.assertEquals("The recovered backlog batches", batches, spool.getBacklogBatches());
+		Assert.assertEquals("The recovered backlog bytes", backlogBytes, spool.getBacklogBytes());
+		spool.purge();
+		Assert.assertEquals("The segments after purge", 0, spool.getSegmentCount());
+		Assert.assertEquals("The segment files after purge", 0, segmentFiles().length);
+		Assert.assertEquals("The dropped batches", batches, spool.getDroppedBatches());
+	}
+	
+	/**
+	 * Tests that the oldest segments are discarded when the spool exceeds its size cap
+	 */
+	@Test
+	public void testSizeCap() throws Exception {
+		final long maxBytes = SEGMENT_SIZE * 2;
+		spool = new TraceSpool(directory, SEGMENT_SIZE, maxBytes, 0, 1000);
+		for(int i = 0; i < 500; i++) {
+			spool.append(batch(i));
+		}
+		log("Backlog:" + spool.getBacklogBytes() + " bytes, dropped:" + spool.getDroppedBatches());
+		Assert.assertTrue("Batches should have been dropped", spool.getDroppedBatches() > 0);
+		Assert.assertTrue("The backlog exceeds the size cap", spool.getBacklogBytes() <= maxBytes);
+		Assert.assertEquals("The segment files", spool.getSegmentCount(), segmentFiles().length);
+	}
+	
+	/**
+	 * Tests that spooled batches across several segments are replayed in order and that replayed segments are deleted
+	 */
+	@Test
+	public void testReplay() throws Exception {
+		spool = new TraceSpool(directory, SEGMENT_SIZE, 1024 * 1024, 0, 1000);
+		final int batches = 100;
+		for(int i = 0; i < batches; i++) {
+			spool.append(batch(i));
+		}
+		Assert.assertTrue("The spool should have rolled over", spool.getSegmentCount() > 1);
+		final List<Trace> replayed = new CopyOnWriteArrayList<Trace>();
+		spool.startReplay(client(replayed));
+		long deadline = System.currentTimeMillis() + 30000;
+		while(spool.isActive() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		Assert.assertFalse("The replay did not complete", spool.isActive());
+		Assert.assertEquals("The replayed batches", batches, spool.getReplayedBatches());
+		Assert.assertEquals("The replayed traces", batches, replayed.size());
+		for(int i = 0; i < batches; i++) {
+			Assert.assertEquals("The replayed trace value", "" + i, replayed.get(i).getValue().toString());
+		}
+		Assert.assertEquals("The backlog batches", 0, spool.getBacklogBatches());
+		Assert.assertEquals("Only the tail segment should remain", 1, spool.getSegmentCount());
+		Assert.assertEquals("The segment files", 1, segmentFiles().length);
+	}
+	
+	/**
+	 * Creates a batch with one trace whose value is the passed sequence
+	 * @param sequence The batch sequence
+	 * @return the batch
+	 */
+	@SuppressWarnings("rawtypes")
+	protected static Trace[] batch(int sequence) {
+		ITracer tracer = TracerManager3.getInstance().getTracer();
+		return new Trace[]{tracer.smartTrace(MetricType.LONG_AVG.ordinal(), "" + sequence, "SpoolTest")};
+	}
+	
+	/**
+	 * Returns the segment files in the spool directory
+	 * @return the segment files
+	 */
+	protected File[] segmentFiles() {
+		File[] files = directory.listFiles(new FileFilter(){
+			public boolean accept(File f) {
+				return f.getName().endsWith(".seg");
+			}
+		});
+		return files==null ? new File[0] : files;
+	}
+	
+	/**
+	 * Creates a connected client that collects the traces submitted to it
+	 * @param submitted The list the submitted traces are added to
+	 * @return the client
+	 */
+	protected static HeliosOTClient client(final List<Trace> submitted) {
+		return (HeliosOTClient)Proxy.newProxyInstance(HeliosOTClient.class.getClassLoader(), new Class[]{HeliosOTClient.class}, new InvocationHandler(){
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if("isConnected".equals(name)) return true;
+				if("submitTraces".equals(name)) {
+					for(Object trace: (Object[])args[0]) submitted.add((Trace)trace);
+					return null;
+				}
+				if("toString".equals(name)) return "TestClient";
+				Class<?> rt = method.getReturnType();
+				if(rt==boolean.class) return false;
+				if(rt==long.class) return 0L;
+				return null;
+			}
+		});
+	}
+}
@@ -0,0 +1,163 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tracing.persistence.jdbc;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * <p>Title: PendingFacts</p>
+ * <p>Description: A bounded, ordered holding area for fact rows that cannot yet be handed off to the fact writers, either because
+ * the dimension rows they reference have not been persisted or because the hand-off queue is full. Facts are released in arrival order
+ * and, when the holding area exceeds its capacity, the oldest facts are discarded. Not thread safe: filled and released by the dimension stage thread.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.tracing.persistence.jdbc.PendingFacts</code></p>
+ * @param <T> The fact type
+ */
+public class PendingFacts<T> {
+	/** The held facts in arrival order */
+	protected final LinkedList<T> held = new LinkedList<T>();
+	/** The maximum number of held facts */
+	protected volatile int capacity;
+	/** The total number of held facts discarded because the capacity was exceeded */
+	protected long discardedCount = 0L;
+	
+	/**
+	 * <p>Title: Readiness</p>
+	 * <p>Description: Decides if a held fact can be released.</p> 
+	 * @param <T> The fact type
+	 */
+	public static interface Readiness<T> {
+		/**
+		 * Determines if the passed fact can be released
+		 * @param fact The fact to test
+		 * @return true if the fact's dependencies are satisfied
+		 */
+		public boolean isReady(T fact);
+	}
+	
+	/**
+	 * Creates a new PendingFacts
+	 * @param capacity The maximum number of held facts
+	 */
+	public PendingFacts(int capacity) {
+		setCapacity(capacity);
+	}
+	
+	/**
+	 * Appends facts to the holding area, discarding the oldest held facts if the capacity is exceeded
+	 * @param facts The facts to hold
+	 */
+	public synchronized void add(Collection<? extends T> facts) {
+		if(facts==null || facts.isEmpty()) return;
+		held.addAll(facts);
+		trim();
+	}
+	
+	/**
+	 * Offers every ready fact to the target queue in arrival order. Facts that are not ready stay held.
+	 * Release stops at the first fact the target refuses so that a full queue never reorders facts.
+	 * @param readiness The readiness test
+	 * @param target The queue to release facts to
+	 * @return the number of released facts
+	 */
+	public synchronized int release(Readiness<? super T> readiness, Queue<? super T> target) {
+		int released = 0;
+		for(Iterator<T> iter = held.iterator(); iter.hasNext();) {
+			T fact = iter.next();
+			if(!readiness.isReady(fact)) continue;
+			if(!target.offer(fact)) break;
+			iter.remove();
+			released++;
+		}
+		return released;
+	}
+	
+	/**
+	 * Discards all the held facts
+	 * @return the number of discarded facts
+	 */
+	public synchronized int clear() {
+		int size = held.size();
+		held.clear();
+		discardedCount += size;
+		return size;
+	}
+	
+	/**
+	 * Discards the oldest held facts until the holding area is within its capacity
+	 */
+	protected void trim() {
+		while(held.size() > capacity) {
+			held.removeFirst();
+			discardedCount++;
+		}
+	}
+	
+	/**
+	 * Returns the number of held facts
+	 * @return the number of held facts
+	 */
+	public synchronized int size() {
+		return held.size();
+	}
+	
+	/**
+	 * Indicates if there are no held facts
+	 * @return true if there are no held facts
+	 */
+	public synchronized boolean isEmpty() {
+		return held.isEmpty();
+	}
+	
+	/**
+	 * Returns the total number of held facts discarded
+	 * @return the total number of discarded facts
+	 */
+	public synchronized long getDiscardedCount() {
+		return discardedCount;
+	}
+
+	/**
+	 * Returns the maximum number of held facts
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Sets the maximum number of held facts. A reduced capacity is applied on the next add.
+	 * @param capacity the capacity to set
+	 */
+	public void setCapacity(int capacity) {
+		if(capacity<1) throw new IllegalArgumentException("Invalid capacity [" + capacity + "]", new Throwable());
+		this.capacity = capacity;
+	}
+}
@@ -24,10 +24,11 @@
  */
 package org.helios.tracing.persistence.jdbc;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
 
 import org.helios.jmx.dynamic.annotations.JMXAttribute;
 import org.helios.jmx.dynamic.annotations.JMXManagedObject;
@@ -37,13 +38,13 @@ import org.helios.tracing.core.trace.AgentMetric;
 import org.helios.tracing.core.trace.Host;
 import org.helios.tracing.core.trace.Metric;
 import org.helios.tracing.core.trace.TraceInstance;
-import org.helios.tracing.core.trace.TraceValue;
 import org.helios.tracing.core.trace.cache.PersistedIndicators;
 import org.helios.tracing.core.trace.cache.TraceModelCache;
 
 /**
  * <p>Title: PersistenceQueue</p>
- * <p>Description: A strongly typed multi-queue for pending persistence.</p> 
+ * <p>Description: A strongly typed multi-queue for pending persistence. Dimension rows are de-duplicated and only queued if the
+ * trace model cache does not already flag them as persisted. Not thread safe: a queue is filled and flushed by a single thread.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * @version $LastChangedRevision$
@@ -54,11 +55,11 @@ public class PersistenceQueue {
 	protected final TraceModelCache traceModelCache;
 	protected final PersistedIndicators pi;
 	
-	protected final ArrayBlockingQueue<Host> hosts = new ArrayBlockingQueue<Host>(10);
-	protected final ArrayBlockingQueue<Agent> agents = new ArrayBlockingQueue<Agent>(100);
-	protected final ArrayBlockingQueue<Metric> metrics = new ArrayBlockingQueue<Metric>(1000);
-	protected final ArrayBlockingQueue<AgentMetric> agentMetrics = new ArrayBlockingQueue<AgentMetric>(1000);
-	protected final ArrayBlockingQueue<TraceValue> traceValues = new ArrayBlockingQueue<TraceValue>(5000);
+	protected Set<Host> hosts = new LinkedHashSet<Host>();
+	protected Set<Agent> agents = new LinkedHashSet<Agent>();
+	protected Set<Metric> metrics = new LinkedHashSet<Metric>();
+	protected Set<AgentMetric> agentMetrics = new LinkedHashSet<AgentMetric>();
+	protected List<TraceInstance> facts = new ArrayList<TraceInstance>();
 	
 	public static final String HASH_HOST = Host.class.getSimpleName();
 	public static final String HASH_AGENT = Agent.class.getSimpleName();
@@ -77,34 +78,83 @@ public class PersistenceQueue {
 	/**
 	 * Adds the TraceInstance elements to be persisted to the work queue
 	 * @param trace The trace instance to add
-	 * @throws InterruptedException 
 	 */
-	public void process(TraceInstance trace) throws InterruptedException {
+	public void process(TraceInstance trace) {
 		if(trace==null) return;
+		queueDimensions(trace);
+		if(trace.getMetric().getType().isNumber()) {
+			facts.add(trace);
+		}
+	}
+	
+	/**
+	 * Queues the dimension rows referenced by the passed trace instance that are not flagged as persisted
+	 * @param trace The trace instance whose dimensions should be queued
+	 */
+	public void queueDimensions(TraceInstance trace) {
 		if(!pi.contains(HASH_HOST, trace.getHost().getId())) {
-			hosts.put(trace.getHost());
+			hosts.add(trace.getHost());
 		}
 		if(!pi.contains(HASH_AGENT, trace.getAgent().getId())) {
-			agents.put(trace.getAgent());
+			agents.add(trace.getAgent());
 		}
 		if(!pi.contains(HASH_METRIC, trace.getMetric().getId())) {
-			metrics.put(trace.getMetric());
+			metrics.add(trace.getMetric());
 		}
 		if(!pi.contains(HASH_AGENT_METRIC, trace.getAgentMetric().getId())) {
-			agentMetrics.put(trace.getAgentMetric());
+			agentMetrics.add(trace.getAgentMetric());
 		}
-		if(trace.getMetric().getType().isNumber()) {
-			traceValues.put(trace.getTraceValue());
+	}
+	
+	/**
+	 * Determines if all the dimension rows referenced by the passed trace instance are flagged as persisted
+	 * @param trace The trace instance to test
+	 * @return true if the trace instance's fact row can be written
+	 */
+	public boolean isPersisted(TraceInstance trace) {
+		return pi.contains(HASH_HOST, trace.getHost().getId())
+			&& pi.contains(HASH_AGENT, trace.getAgent().getId())
+			&& pi.contains(HASH_METRIC, trace.getMetric().getId())
+			&& pi.contains(HASH_AGENT_METRIC, trace.getAgentMetric().getId());
+	}
+	
+	/**
+	 * Returns previously flushed dimension rows that failed to persist to the queue
+	 * @param failedHosts The hosts to requeue
+	 * @param failedAgents The agents to requeue
+	 * @param failedMetrics The metrics to requeue
+	 * @param failedAgentMetrics The agent metrics to requeue
+	 */
+	public void requeue(Collection<Host> failedHosts, Collection<Agent> failedAgents, Collection<Metric> failedMetrics, Collection<AgentMetric> failedAgentMetrics) {
+		for(Host host: failedHosts) {
+			if(!pi.contains(HASH_HOST, host.getId())) hosts.add(host);
+		}
+		for(Agent agent: failedAgents) {
+			if(!pi.contains(HASH_AGENT, agent.getId())) agents.add(agent);
+		}
+		for(Metric metric: failedMetrics) {
+			if(!pi.contains(HASH_METRIC, metric.getId())) metrics.add(metric);
+		}
+		for(AgentMetric agentMetric: failedAgentMetrics) {
+			if(!pi.contains(HASH_AGENT_METRIC, agentMetric.getId())) agentMetrics.add(agentMetric);
 		}
 	}
 	
+	/**
+	 * Returns the number of dimension rows waiting to be persisted
+	 * @return the number of dimension rows waiting to be persisted
+	 */
+	public int getDimensionQueueSize() {
+		return (hosts.size() + agents.size() + metrics.size() + agentMetrics.size());
+	}
+	
 	/**
 	 * Returns the total number of elements waiting to be persisted
 	 * @return the total number of elements waiting to be persisted
 	 */
 	@JMXAttribute(name="QueueSize", description="The total number of elements waiting to be persisted", mutability=AttributeMutabilityOption.READ_ONLY)
 	public int getQueueSize() {
-		return (hosts.size() + agents.size() + metrics.size() + agentMetrics.size() + traceValues.size());
+		return (hosts.size() + agents.size() + metrics.size() + agentMetrics.size() + facts.size());
 	}
 	
 	/**
@@ -112,8 +162,8 @@ public class PersistenceQueue {
 	 * @return a set of the pending hosts to be persisted 
 	 */
 	public Collection<Host> flushHosts() {
-		Set<Host> drain = new HashSet<Host>(hosts.size());
-		hosts.drainTo(drain);
+		Set<Host> drain = hosts;
+		hosts = new LinkedHashSet<Host>();
 		return drain;		
 	}
 	
@@ -122,8 +172,8 @@ public class PersistenceQueue {
 	 * @return a set of the pending agents to be persisted 
 	 */
 	public Collection<Agent> flushAgents() {
-		Set<Agent> drain = new HashSet<Agent>(agents.size());
-		agents.drainTo(drain);
+		Set<Agent> drain = agents;
+		agents = new LinkedHashSet<Agent>();
 		return drain;		
 	}
 	
@@ -132,8 +182,8 @@ public class PersistenceQueue {
 	 * @return a set of the pending metrics to be persisted 
 	 */
 	public Collection<Metric> flushMetrics() {
-		Set<Metric> drain = new HashSet<Metric>(metrics.size());
-		metrics.drainTo(drain);
+		Set<Metric> drain = metrics;
+		metrics = new LinkedHashSet<Metric>();
 		return drain;		
 	}
 	
@@ -142,21 +192,19 @@ public class PersistenceQueue {
 	 * @return a set of the pending agentMetrics to be persisted 
 	 */
 	public Collection<AgentMetric> flushAgentMetrics() {
-		Set<AgentMetric> drain = new HashSet<AgentMetric>(agentMetrics.size());
-		agentMetrics.drainTo(drain);
+		Set<AgentMetric> drain = agentMetrics;
+		agentMetrics = new LinkedHashSet<AgentMetric>();
 		return drain;		
 	}
 	
 	/**
-	 * Flushes the pending traceValues to be persisted and returns them
-	 * @return a set of the pending traceValues to be persisted 
+	 * Flushes the pending numeric trace instances whose trace values are to be persisted and returns them
+	 * @return a list of the pending fact trace instances 
 	 */
-	public Collection<TraceValue> flushTraceValues() {
-		Set<TraceValue> drain = new HashSet<TraceValue>(traceValues.size());
-		traceValues.drainTo(drain);
+	public List<TraceInstance> flushFacts() {
+		List<TraceInstance> drain = facts;
+		facts = new ArrayList<TraceInstance>();
 		return drain;		
 	}
 	
-	
-	
 }
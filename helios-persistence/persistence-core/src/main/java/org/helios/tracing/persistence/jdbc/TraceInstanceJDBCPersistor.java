@@ -32,6 +32,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -64,7 +65,11 @@ import org.helios.tracing.persistence.miniorm.TraceObjectPersistorFactory;
 
 /**
  * <p>Title: TraceInstanceJDBCPersistor</p>
- * <p>Description: Entry point for persisting TraceInstances to a JDBC store.</p> 
+ * <p>Description: Entry point for persisting TraceInstances to a JDBC store.</p>
+ * <p>Persistence is pipelined in two stages. A single dimension stage drains submitted trace instances, writes any host, agent, metric and agent-metric
+ * rows not yet flagged as saved in the trace model cache, and only then hands the trace value fact rows to a pool of fact writer threads.
+ * Every stage thread holds a long lived connection and caches its prepared insert statements, re-opening both only after a failure.
+ * Submission never blocks the caller unless the overflow policy is {@link OverflowPolicy#BLOCK}.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * @version $LastChangedRevision$
@@ -94,15 +99,57 @@ public class TraceInstanceJDBCPersistor extends ManagedObjectDynamicMBean implem
 	protected final AtomicLong flushCount = new AtomicLong(0L);
 	/** the total number of processed traces */
 	protected final AtomicLong traceCount = new AtomicLong(0L);	
+	/** the total number of traces dropped on submission because the input queue was full */
+	protected final AtomicLong droppedCount = new AtomicLong(0L);
+	/** the total number of dimension rows inserted */
+	protected final AtomicLong dimensionCount = new AtomicLong(0L);
+	/** the total number of fact rows inserted */
+	protected final AtomicLong factCount = new AtomicLong(0L);
+	/** the total number of rows that failed to insert */
+	protected final AtomicLong failedCount = new AtomicLong(0L);
+	/** The number of fact writer threads */
+	protected final AtomicInteger writerThreads = new AtomicInteger(2);
+	/** The JDBC batch size for dimension table inserts */
+	protected final AtomicInteger dimensionBatchSize = new AtomicInteger(50);
+	/** The JDBC batch size for fact table inserts */
+	protected final AtomicInteger factBatchSize = new AtomicInteger(500);
+	/** The capacity of the submission queue */
+	protected final AtomicInteger inputQueueSize = new AtomicInteger(10000);
+	/** The capacity of the queue between the dimension stage and the fact writers */
+	protected final AtomicInteger factQueueSize = new AtomicInteger(10000);
+	/** The submission overflow policy */
+	protected volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+	/** A one shot flag requesting an immediate dimension stage flush */
+	protected final AtomicBoolean flushRequested = new AtomicBoolean(false);
+	/** The fact throughput sampling window start time */
+	protected long rateWindowStart = System.currentTimeMillis();
+	/** The fact count at the start of the sampling window */
+	protected long rateWindowCount = 0L;
+	/** The fact throughput of the last completed sampling window */
+	protected volatile long factRate = 0L;
+	/** The throughput sampling window period (ms) */
+	public static final long RATE_WINDOW = 5000L;
 	
 	/** Indicates if inserts should be batched */
 	protected AtomicBoolean batchedInserts = new AtomicBoolean(false);
-	/** The persistence worker thread */
+	/** The dimension stage thread */
 	protected Thread persistorThread = null;
+	/** The fact writer threads */
+	protected final List<Thread> factThreads = new ArrayList<Thread>();
 	/** The queue of pending items to persist */
 	protected PersistenceQueue workQueue; 
 	/** The incoming persistence item queue */
 	protected ArrayBlockingQueue<TraceInstance> inputQueue = null;
+	/** The queue of fact rows whose dimensions have been persisted */
+	protected ArrayBlockingQueue<TraceInstance> factQueue = null;
+	/** The fact rows held back by the dimension stage until their dimensions are persisted and the fact queue has room */
+	protected PendingFacts<TraceInstance> pendingFacts = null;
+	/** Releases held facts once all their dimension rows are flagged as persisted */
+	protected final PendingFacts.Readiness<TraceInstance> dimensionsPersisted = new PendingFacts.Readiness<TraceInstance>() {
+		public boolean isReady(TraceInstance fact) {
+			return workQueue.isPersisted(fact);
+		}
+	};
 	/** Indicates if the worker thread should keep running */
 	protected final AtomicBoolean running = new AtomicBoolean(false);
 	/** The configured item persistors */
@@ -122,9 +169,22 @@ public class TraceInstanceJDBCPersistor extends ManagedObjectDynamicMBean implem
 		}		
 	};
 	
+	/**
+	 * <p>Title: OverflowPolicy</p>
+	 * <p>Description: Enumerates the actions taken when a trace is submitted and the input queue is full</p> 
+	 */
+	public static enum OverflowPolicy {
+		/** The submitted trace is discarded */
+		DROP_NEWEST,
+		/** The oldest queued trace is discarded to make room for the submitted trace */
+		DROP_OLDEST,
+		/** The caller blocks until there is room in the queue */
+		BLOCK;
+	}
+	
 	
 	/**
-	 * Configures and starts the persistor thread
+	 * Configures and starts the persistor threads
 	 * @throws Exception
 	 */
 	public void start() throws Exception {
@@ -136,7 +196,9 @@ public class TraceInstanceJDBCPersistor extends ManagedObjectDynamicMBean implem
 		persistorThread = THREAD_FACTORY.newThread(this);
 		LOG.info("Created Worker Thread [" + persistorThread + "]");
 		workQueue = new PersistenceQueue(traceModelCache);
-		inputQueue = new ArrayBlockingQueue<TraceInstance>((sizeTrigger.get()*2));
+		inputQueue = new ArrayBlockingQueue<TraceInstance>(Math.max(inputQueueSize.get(), sizeTrigger.get()*2));
+		factQueue = new ArrayBlockingQueue<TraceInstance>(Math.max(factQueueSize.get(), factBatchSize.get()*2));
+		pendingFacts = new PendingFacts<TraceInstance>(Math.max(factQueueSize.get(), factBatchSize.get()*2));
 		try {
 			ObjectName on = JMXHelper.objectName("org.helios.tracing.persistence:service=PersistorService,type=" + getClass().getSimpleName());
 			MBeanServer server = JMXHelper.getHeliosMBeanServer();
@@ -151,19 +213,32 @@ public class TraceInstanceJDBCPersistor extends ManagedObjectDynamicMBean implem
 		LOG.info("Loading TraceModelCache from DB....");
 		long[] stats = primeCache();
 		LOG.info("Loaded TraceModelCache from DB with [" + stats[0] + "] items in [" + stats[1] + "] ms.");
-		persistorThread.start();
 		running.set(true);
-		LOG.info("Started persistor thread");
+		persistorThread.start();
+		for(int i = 0; i < Math.max(1, writerThreads.get()); i++) {
+			Thread t = THREAD_FACTORY.newThread(new Runnable(){
+				public void run() {
+					factLoop();
+				}
+			});
+			factThreads.add(t);
+			t.start();
+		}
+		LOG.info("Started persistor thread and [" + factThreads.size() + "] fact writer threads");
 		LOG.info("\n\t==========================================\n\tStarted TraceInstanceJDBCPersistor\n\t==========================================\n");
 	}
 	
 	/**
-	 * Stops the persistor thread
+	 * Stops the persistor threads. Queued items are drained before the threads exit.
 	 */
 	public void stop() {
 		LOG.info("\n\t==========================================\n\tStopping TraceInstanceJDBCPersistor\n\t==========================================\n");
 		running.set(false);
-		persistorThread.interrupt();
+		try { persistorThread.join(timeTrigger.get()); } catch (InterruptedException e) {}
+		for(Thread t: factThreads) {
+			try { t.join(timeTrigger.get()); } catch (InterruptedException e) {}
+		}
+		factThreads.clear();
 		LOG.info("\n\t==========================================\n\tStopped TraceInstanceJDBCPersistor\n\t==========================================\n");
 	}
 	
@@ -215,7 +290,7 @@ public class TraceInstanceJDBCPersistor extends ManagedObjectDynamicMBean implem
 	}
 	
 	/**
-	 * The runnable definition to start the process loop
+	 * The runnable definition to start the dimension stage loop
 	 */
 	public void run() {
 		loop();
@@ -224,125 +299,283 @@ public class TraceInstanceJDBCPersistor extends ManagedObjectDynamicMBean implem
 	
 	
 	/**
-	 * Runs the persistence loop
+	 * Runs the dimension stage loop. Submitted traces are accumulated into the work queue which is flushed
+	 * when it reaches the size trigger, when the time trigger elapses or when a flush is requested. 
 	 */
 	protected void loop() {
+		StatementWriter writer = new StatementWriter();
+		List<TraceInstance> drain = new ArrayList<TraceInstance>(sizeTrigger.get());
 		lastFlush.set(System.currentTimeMillis());
-		while(running.get()) {
-			try {
-				long pollTime = timeTrigger.get() - (System.currentTimeMillis()-lastFlush.get());
-				if(LOG.isTraceEnabled()) LOG.trace("Polling for [" + pollTime + "] ms.");
-				TraceInstance ti = inputQueue.poll(pollTime, TimeUnit.MILLISECONDS);
-				if(ti!=null) {
-					if(LOG.isTraceEnabled()) LOG.trace("Queueing trace instance");
-					workQueue.process(ti);
-					traceCount.incrementAndGet();
-				}
-				if(workQueue.getQueueSize() >= sizeTrigger.get() || System.currentTimeMillis()-timeTrigger.get() >= lastFlush.get()) {
-					if(LOG.isTraceEnabled()) LOG.trace("Calling flush....");
-					processWorkQueue();					
-				}				
-			} catch (InterruptedException ie) {
-				if(running.get()) {
+		try {
+			while(running.get() || !inputQueue.isEmpty()) {
+				try {
+					long pollTime = Math.max(1L, timeTrigger.get() - (System.currentTimeMillis()-lastFlush.get()));
+					if(LOG.isTraceEnabled()) LOG.trace("Polling for [" + pollTime + "] ms.");
+					TraceInstance ti = inputQueue.poll(Math.min(pollTime, 1000L), TimeUnit.MILLISECONDS);
+					if(ti!=null) {
+						drain.add(ti);
+						inputQueue.drainTo(drain, Math.max(0, sizeTrigger.get()-workQueue.getQueueSize()-1));
+						for(TraceInstance t: drain) {
+							workQueue.process(t);
+						}
+						traceCount.addAndGet(drain.size());
+						drain.clear();
+					}
+					if(workQueue.getQueueSize() >= sizeTrigger.get() || System.currentTimeMillis()-timeTrigger.get() >= lastFlush.get() || flushRequested.getAndSet(false) || (!running.get() && inputQueue.isEmpty())) {
+						if(LOG.isTraceEnabled()) LOG.trace("Calling flush....");
+						flushDimensions(writer);
+					} else if(!pendingFacts.isEmpty()) {
+						releaseFacts();
+					}
+				} catch (InterruptedException ie) {
 					Thread.interrupted();
+				} catch (Exception e) {
+					LOG.warn("Unexpected exception in persistence loop", e);
+				}
+			}
+		} finally {
+			writer.close();
+			if(!pendingFacts.isEmpty()) {
+				LOG.warn("Dimension stage stopped with [" + pendingFacts.clear() + "] unwritten facts");
+			}
+		}
+	}
+	
+	/**
+	 * Runs a fact writer loop, writing trace values handed off by the dimension stage in batches of up to the fact batch size.
+	 */
+	protected void factLoop() {
+		StatementWriter writer = new StatementWriter();
+		List<TraceInstance> drain = new ArrayList<TraceInstance>(factBatchSize.get());
+		List<TraceValue> batch = new ArrayList<TraceValue>(factBatchSize.get());
+		try {
+			while(running.get() || !factQueue.isEmpty() || persistorThread.isAlive()) {
+				try {
+					TraceInstance ti = factQueue.poll(500, TimeUnit.MILLISECONDS);
+					if(ti==null) continue;
+					drain.add(ti);
+					factQueue.drainTo(drain, Math.max(0, factBatchSize.get()-1));
+					for(TraceInstance t: drain) {
+						batch.add(t.getTraceValue());
+					}
+					long start = System.currentTimeMillis();
+					int saved = writer.write(TraceValue.class, batch, factBatchSize.get());
+					factCount.addAndGet(saved);
+					sampleRate();
+					if(LOG.isDebugEnabled()) LOG.debug("Fact writer saved [" + saved + "] trace values in [" + (System.currentTimeMillis()-start) + "] ms.");
+				} catch (InterruptedException ie) {
 					Thread.interrupted();
-				} else {
-					break;
+				} catch (Exception e) {
+					failedCount.addAndGet(batch.size());
+					LOG.error("Fact writer failed to save [" + batch.size() + "] trace values", e);
+				} finally {
+					drain.clear();
+					batch.clear();
 				}
-			} catch (Exception e) {
-				LOG.warn("Unexpected exception in persistence loop", e);
 			}
+		} finally {
+			writer.close();
 		}
 	}
 	
 	/**
-	 * Persists all the items in the work queue
-	 * @TODO: This can be optimized.
-	 * @TODO: Implement batching option
-	 * @TODO: Persistor instances can keep their PS instance. 
+	 * Rolls the fact throughput sampling window if it has expired
 	 */
-	@JMXOperation(name="processWorkQueue", description="Persists all the items in the work queue")
-	public synchronized void processWorkQueue() {
+	protected void sampleRate() {
+		long now = System.currentTimeMillis();
+		if(now-rateWindowStart < RATE_WINDOW) return;
+		synchronized(this) {
+			long elapsed = now-rateWindowStart; 
+			if(elapsed < RATE_WINDOW) return;
+			long count = factCount.get();
+			factRate = (count-rateWindowCount)*1000L/elapsed;
+			rateWindowCount = count;
+			rateWindowStart = now;
+		}
+	}
+	
+	/**
+	 * Requests that the dimension stage flush the work queue at the next opportunity.
+	 */
+	@JMXOperation(name="processWorkQueue", description="Requests that the work queue be flushed")
+	public void processWorkQueue() {
+		flushRequested.set(true);
+	}
+	
+	/**
+	 * Persists all the dimension rows in the work queue in one transaction, flags them as saved and then
+	 * hands the queued fact rows whose dimensions are all persisted off to the fact writers. If the transaction fails, 
+	 * the dimension rows are requeued and the dependent facts are held back until a later flush saves them.
+	 * @param writer The dimension stage statement writer
+	 */
+	protected void flushDimensions(StatementWriter writer) {
 		flushCount.incrementAndGet();
 		lastFlush.set(System.currentTimeMillis());
-		Connection conn = null;
-		List<PreparedStatement> statements = new ArrayList<PreparedStatement>(5);
-		try {
+		pendingFacts.add(workQueue.flushFacts());
+		if(workQueue.getDimensionQueueSize()>0) {
 			long start = System.currentTimeMillis();
-			conn = dataSource.getConnection();	
-			conn.setAutoCommit(false);
-			int itemsSaved = 0;
-			itemsSaved += processCollection(Host.class, conn, statements, workQueue.flushHosts());
-			itemsSaved += processCollection(Agent.class, conn, statements, workQueue.flushAgents());
-			itemsSaved += processCollection(Metric.class, conn, statements, workQueue.flushMetrics());
-			itemsSaved += processCollection(AgentMetric.class, conn, statements, workQueue.flushAgentMetrics());
-			itemsSaved += processCollection(TraceValue.class, conn, statements, workQueue.flushTraceValues());
-			if(batchedInserts.get()) {
-				for(PreparedStatement ps: statements) {
-					ps.executeBatch();
+			int batchSize = dimensionBatchSize.get();
+			Collection<Host> hosts = workQueue.flushHosts();
+			Collection<Agent> agents = workQueue.flushAgents();
+			Collection<Metric> metrics = workQueue.flushMetrics();
+			Collection<AgentMetric> agentMetrics = workQueue.flushAgentMetrics();
+			Map<Class<?>, Collection<?>> dimensions = new LinkedHashMap<Class<?>, Collection<?>>(4);
+			dimensions.put(Host.class, hosts);
+			dimensions.put(Agent.class, agents);
+			dimensions.put(Metric.class, metrics);
+			dimensions.put(AgentMetric.class, agentMetrics);
+			try {
+				int itemsSaved = writer.write(dimensions, batchSize);
+				dimensionCount.addAndGet(itemsSaved);
+				long elapsed = System.currentTimeMillis()-start;
+				lastFlushTime.set(elapsed);
+				lastFlushSize.set(itemsSaved);			
+				if(itemsSaved>0) {
+					LOG.info("Persistor saved [" + itemsSaved + "] dimension items in [" + elapsed + "] ms.");
 				}
+			} catch (Exception e) {
+				workQueue.requeue(hosts, agents, metrics, agentMetrics);
+				LOG.error("Failed to persist dimension items. Requeued for the next flush and holding back [" + pendingFacts.size() + "] facts.", e);
 			}
-			conn.commit();
-			long elapsed = System.currentTimeMillis()-start;
-			lastFlushTime.set(elapsed);
-			lastFlushSize.set(itemsSaved);			
-			if(itemsSaved>0) {
-				LOG.info("Persistor saved [" + itemsSaved + "] items in [" + elapsed + "] ms.");
-			}
-		} catch (Exception e) {
-			LOG.error("Unexpected exception in processWorkQueue", e);
-		} finally {
-			for(PreparedStatement ps: statements) {
-				try { ps.close(); } catch (Exception e) {}
-			}
-			if(conn!=null) try { conn.close(); } catch (Exception e) {}
 		}
+		releaseFacts();
 	}
-
+	
 	/**
-	 * Executes the persistence process on each of the passed items
-	 * @param type The class of the items to be persisted
-	 * @param conn The JDBC connection
-	 * @param statements A list of statements created if the insert is batched
-	 * @param items The items to be persisted
-	 * @return The number of items inserted
-	 * @throws SQLException
-	 */
-	protected int processCollection(Class<?> type, Connection conn, List<PreparedStatement> statements, Collection<?> items) throws SQLException {
-		int cnt = 0;
-		if(!items.isEmpty()) {			
-			ITracePersistor itp = persistors.get(type);
-			if(batchedInserts.get()) {
-				PreparedStatement ps = conn.prepareStatement(itp.getInsertSql());
-				statements.add(ps);	
-				for(Object item: items) {
-					try {
-						itp.doInsert(item, ps);
-						traceModelCache.flagAsSaved(item);
-						cnt++;
-					} catch (Exception e) {}
+	 * Offers the held facts whose dimensions are persisted to the fact writers without blocking. 
+	 * Facts that do not fit in the fact queue stay held for the next attempt.
+	 * @return the number of released facts
+	 */
+	protected int releaseFacts() {
+		int released = pendingFacts.release(dimensionsPersisted, factQueue);
+		if(LOG.isDebugEnabled() && !pendingFacts.isEmpty()) LOG.debug("Released [" + released + "] facts. Holding back [" + pendingFacts.size() + "]");
+		return released;
+	}
+	
+	/**
+	 * <p>Title: StatementWriter</p>
+	 * <p>Description: Holds a long lived connection and a cache of prepared insert statements for a single persistence thread.</p> 
+	 */
+	protected class StatementWriter {
+		/** The writer's connection */
+		protected Connection conn = null;
+		/** The writer's prepared statements keyed by the persisted class */
+		protected final Map<Class<?>, PreparedStatement> statements = new HashMap<Class<?>, PreparedStatement>(PERSISTENT_CLASSES.length);
+		
+		/**
+		 * Writes a collection of items of one type in one transaction
+		 * @param type The type of the items
+		 * @param items The items to write
+		 * @param batchSize The maximum number of inserts per JDBC batch
+		 * @return the number of items saved
+		 * @throws SQLException
+		 */
+		public int write(Class<?> type, Collection<?> items, int batchSize) throws SQLException {
+			Map<Class<?>, Collection<?>> map = new HashMap<Class<?>, Collection<?>>(1);
+			map.put(type, items);
+			return write(map, batchSize);
+		}
+		
+		/**
+		 * Writes collections of items in map iteration order in one transaction and flags them as saved in the trace model cache once committed.
+		 * A failed transaction is rolled back and the connection and statements are discarded.
+		 * @param items The items to write keyed by their type 
+		 * @param batchSize The maximum number of inserts per JDBC batch
+		 * @return the number of items saved
+		 * @throws SQLException
+		 */
+		public int write(Map<Class<?>, Collection<?>> items, int batchSize) throws SQLException {
+			List<Object> written = new ArrayList<Object>();
+			boolean batched = batchedInserts.get();
+			if(batchSize<1) batchSize = 1;
+			try {
+				if(conn==null) {
+					conn = dataSource.getConnection();
+					conn.setAutoCommit(false);
 				}
-			} else {
-				for(Object item: items) {
-					try {
-						itp.doInsert(item, conn);
-						traceModelCache.flagAsSaved(item);
-						cnt++;
-					} catch (Exception e) {}
-				}				
-			}			
+				for(Map.Entry<Class<?>, Collection<?>> entry: items.entrySet()) {
+					if(entry.getValue().isEmpty()) continue;
+					ITracePersistor itp = persistors.get(entry.getKey());
+					PreparedStatement ps = getStatement(entry.getKey(), itp);
+					int pending = 0;
+					for(Object item: entry.getValue()) {
+						try {
+							itp.doInsert(item, ps);
+						} catch (Exception e) {
+							failedCount.incrementAndGet();
+							continue;
+						}
+						written.add(item);
+						pending++;
+						if(!batched || pending >= batchSize) {
+							ps.executeBatch();
+							pending = 0;
+						}
+					}
+					if(pending>0) ps.executeBatch();
+				}
+				conn.commit();
+			} catch (SQLException e) {
+				if(conn!=null) try { conn.rollback(); } catch (Exception ex) {}
+				close();
+				throw e;
+			}
+			for(Object item: written) {
+				traceModelCache.flagAsSaved(item);
+			}
+			return written.size();
+		}
+		
+		/**
+		 * Returns the cached prepared insert statement for the passed type, preparing it if necessary
+		 * @param type The persisted type
+		 * @param itp The type's persistor
+		 * @return a prepared statement
+		 * @throws SQLException
+		 */
+		protected PreparedStatement getStatement(Class<?> type, ITracePersistor itp) throws SQLException {
+			PreparedStatement ps = statements.get(type);
+			if(ps==null) {
+				ps = conn.prepareStatement(itp.getInsertSql());
+				statements.put(type, ps);
+			}
+			return ps;
+		}
+		
+		/**
+		 * Closes the writer's statements and connection
+		 */
+		public void close() {
+			for(PreparedStatement ps: statements.values()) {
+				try { ps.close(); } catch (Exception e) {}
+			}
+			statements.clear();
+			if(conn!=null) try { conn.close(); } catch (Exception e) {}
+			conn = null;
 		}
-		return cnt;
 	}
 	
 	/**
-	 * Processes a TraceInstance exchange
-	 * @param exchange
+	 * Processes a TraceInstance exchange. Unless the overflow policy is {@link OverflowPolicy#BLOCK}, this call does not block 
+	 * when the input queue is full.
+	 * @param trace The trace instance to persist
 	 * @throws InterruptedException
 	 */
 	public void process(TraceInstance trace) throws InterruptedException {		
-		//workQueue.process(trace);
-		inputQueue.put(trace);
+		if(trace==null) return;
+		if(inputQueue.offer(trace)) return;
+		switch(overflowPolicy) {
+			case BLOCK:
+				inputQueue.put(trace);
+				return;
+			case DROP_OLDEST:
+				while(!inputQueue.offer(trace)) {
+					if(inputQueue.poll()!=null) droppedCount.incrementAndGet();
+				}
+				return;
+			default:
+				droppedCount.incrementAndGet();
+		}
 	}
 
 	/**
@@ -382,7 +615,7 @@ public class TraceInstanceJDBCPersistor extends ManagedObjectDynamicMBean implem
 	 */
 	@JMXAttribute(name="WorkQueueSize", description="The number of items pending in the work queue", mutability=AttributeMutabilityOption.READ_ONLY)
 	public long getWorkQueueSize() {
-		return workQueue.getQueueSize();
+		return workQueue.getQueueSize() + inputQueue.size() + factQueue.size() + pendingFacts.size();
 	}
 
 	/**
@@ -472,5 +705,195 @@ public class TraceInstanceJDBCPersistor extends ManagedObjectDynamicMBean implem
 	public long getTraceCount() {
 		return traceCount.get();
 	}
+
+	/**
+	 * Sets the number of fact writer threads. Takes effect on start.
+	 * @param writerThreads the number of fact writer threads
+	 */
+	public void setWriterThreads(int writerThreads) {
+		if(writerThreads<1) throw new IllegalArgumentException("Invalid writer thread count [" + writerThreads + "]", new Throwable());
+		this.writerThreads.set(writerThreads);
+	}
+	
+	/**
+	 * Returns the number of fact writer threads
+	 * @return the number of fact writer threads
+	 */
+	@JMXAttribute(name="WriterThreads", description="The number of fact writer threads", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getWriterThreads() {
+		return writerThreads.get();
+	}
+	
+	/**
+	 * Sets the JDBC batch size for dimension table inserts
+	 * @param dimensionBatchSize the dimension batch size
+	 */
+	public void setDimensionBatchSize(int dimensionBatchSize) {
+		this.dimensionBatchSize.set(dimensionBatchSize);
+	}
+	
+	/**
+	 * Returns the JDBC batch size for dimension table inserts
+	 * @return the JDBC batch size for dimension table inserts
+	 */
+	@JMXAttribute(name="DimensionBatchSize", description="The JDBC batch size for dimension table inserts", mutability=AttributeMutabilityOption.READ_WRITE)
+	public int getDimensionBatchSize() {
+		return dimensionBatchSize.get();
+	}
+	
+	/**
+	 * Sets the JDBC batch size for fact table inserts
+	 * @param factBatchSize the fact batch size
+	 */
+	public void setFactBatchSize(int factBatchSize) {
+		this.factBatchSize.set(factBatchSize);
+	}
+	
+	/**
+	 * Returns the JDBC batch size for fact table inserts
+	 * @return the JDBC batch size for fact table inserts
+	 */
+	@JMXAttribute(name="FactBatchSize", description="The JDBC batch size for fact table inserts", mutability=AttributeMutabilityOption.READ_WRITE)
+	public int getFactBatchSize() {
+		return factBatchSize.get();
+	}
+	
+	/**
+	 * Sets the capacity of the submission queue. Takes effect on start.
+	 * @param inputQueueSize the submission queue capacity
+	 */
+	public void setInputQueueSize(int inputQueueSize) {
+		this.inputQueueSize.set(inputQueueSize);
+	}
+	
+	/**
+	 * Returns the capacity of the submission queue
+	 * @return the capacity of the submission queue
+	 */
+	@JMXAttribute(name="InputQueueSize", description="The capacity of the submission queue", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getInputQueueSize() {
+		return inputQueueSize.get();
+	}
+	
+	/**
+	 * Sets the capacity of the fact hand-off queue and of the held fact area. Takes effect on start.
+	 * @param factQueueSize the fact hand-off queue capacity
+	 */
+	public void setFactQueueSize(int factQueueSize) {
+		this.factQueueSize.set(factQueueSize);
+	}
+	
+	/**
+	 * Returns the number of facts held back by the dimension stage
+	 * @return the number of held facts
+	 */
+	@JMXAttribute(name="HeldFactCount", description="The number of facts held back until their dimensions are persisted or the fact queue has room", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getHeldFactCount() {
+		return pendingFacts==null ? 0 : pendingFacts.size();
+	}
+	
+	/**
+	 * Returns the total number of held facts discarded because the holding area was full or the persistor stopped
+	 * @return the total number of discarded held facts
+	 */
+	@JMXAttribute(name="DiscardedFactCount", description="The total number of held facts discarded because the holding area was full or the persistor stopped", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getDiscardedFactCount() {
+		return pendingFacts==null ? 0L : pendingFacts.getDiscardedCount();
+	}
+	
+	/**
+	 * Returns the capacity of the fact hand-off queue
+	 * @return the capacity of the fact hand-off queue
+	 */
+	@JMXAttribute(name="FactQueueSize", description="The capacity of the fact hand-off queue", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getFactQueueSize() {
+		return factQueueSize.get();
+	}
+	
+	/**
+	 * Sets the submission overflow policy
+	 * @param overflowPolicy the name of the overflow policy (DROP_NEWEST, DROP_OLDEST or BLOCK)
+	 */
+	public void setOverflowPolicy(String overflowPolicy) {
+		if(overflowPolicy==null) throw new IllegalArgumentException("Passed overflow policy was null", new Throwable());
+		try {
+			this.overflowPolicy = OverflowPolicy.valueOf(overflowPolicy.trim().toUpperCase());
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Invalid overflow policy [" + overflowPolicy + "]", new Throwable());
+		}
+	}
+	
+	/**
+	 * Returns the name of the submission overflow policy
+	 * @return the name of the submission overflow policy
+	 */
+	@JMXAttribute(name="OverflowPolicy", description="The submission overflow policy", mutability=AttributeMutabilityOption.READ_WRITE)
+	public String getOverflowPolicy() {
+		return overflowPolicy.name();
+	}
+	
+	/**
+	 * Returns the number of traces waiting in the submission queue
+	 * @return the number of traces waiting in the submission queue
+	 */
+	@JMXAttribute(name="InputQueueDepth", description="The number of traces waiting in the submission queue", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getInputQueueDepth() {
+		return inputQueue.size();
+	}
+	
+	/**
+	 * Returns the number of trace values waiting for a fact writer
+	 * @return the number of trace values waiting for a fact writer
+	 */
+	@JMXAttribute(name="FactQueueDepth", description="The number of trace values waiting for a fact writer", mutability=AttributeMutabilityOption.READ_ONLY)
+	public int getFactQueueDepth() {
+		return factQueue.size();
+	}
+	
+	/**
+	 * Returns the total number of traces dropped because the submission queue was full
+	 * @return the total number of dropped traces
+	 */
+	@JMXAttribute(name="DroppedCount", description="The total number of traces dropped because the submission queue was full", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+	
+	/**
+	 * Returns the total number of dimension rows inserted
+	 * @return the total number of dimension rows inserted
+	 */
+	@JMXAttribute(name="DimensionCount", description="The total number of dimension rows inserted", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getDimensionCount() {
+		return dimensionCount.get();
+	}
+	
+	/**
+	 * Returns the total number of fact rows inserted
+	 * @return the total number of fact rows inserted
+	 */
+	@JMXAttribute(name="FactCount", description="The total number of fact rows inserted", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getFactCount() {
+		return factCount.get();
+	}
+	
+	/**
+	 * Returns the total number of rows that failed to insert
+	 * @return the total number of rows that failed to insert
+	 */
+	@JMXAttribute(name="FailedCount", description="The total number of rows that failed to insert", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+	
+	/**
+	 * Returns the fact rows inserted per second over the last sampling window
+	 * @return the fact insert rate
+	 */
+	@JMXAttribute(name="FactRate", description="The fact rows inserted per second over the last sampling window", mutability=AttributeMutabilityOption.READ_ONLY)
+	public long getFactRate() {
+		sampleRate();
+		return factRate;
+	}
 	
-}
+}
\ No newline at end of file
@@ -0,0 +1,123 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.org.helios.tracing.persistence.jdbc;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.helios.tracing.persistence.jdbc.PendingFacts;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>Title: PendingFactsTestCase</p>
+ * <p>Description: Test case to validate that held facts are only released once their dimensions are persisted, that a full fact queue
+ * never blocks or reorders the release and that the holding area stays bounded.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>test.org.helios.tracing.persistence.jdbc.PendingFactsTestCase</code></p>
+ */
+
+public class PendingFactsTestCase {
+	/** The dimensions flagged as persisted. Facts are named <code>dimension:value</code> */
+	protected final Set<String> persisted = new HashSet<String>();
+	/** A readiness test that releases facts whose dimension is in the persisted set */
+	protected final PendingFacts.Readiness<String> readiness = new PendingFacts.Readiness<String>() {
+		public boolean isReady(String fact) {
+			return persisted.contains(fact.split(":")[0]);
+		}
+	};
+	
+	/**
+	 * Validates that facts whose dimension failed to persist are held back and released once it is persisted
+	 */
+	@Test(timeout=5000)
+	public void testHoldBackUntilDimensionPersisted() {
+		PendingFacts<String> pending = new PendingFacts<String>(100);
+		ArrayBlockingQueue<String> factQueue = new ArrayBlockingQueue<String>(100);
+		persisted.add("A");
+		pending.add(Arrays.asList("A:1", "B:1", "A:2", "B:2"));
+		Assert.assertEquals("Released count", 2, pending.release(readiness, factQueue));
+		Assert.assertEquals("Released facts", Arrays.asList("A:1", "A:2"), Arrays.asList(factQueue.toArray()));
+		Assert.assertEquals("Held count", 2, pending.size());
+		factQueue.clear();
+		Assert.assertEquals("Released count with no new dimensions", 0, pending.release(readiness, factQueue));
+		persisted.add("B");
+		Assert.assertEquals("Released count", 2, pending.release(readiness, factQueue));
+		Assert.assertEquals("Released facts", Arrays.asList("B:1", "B:2"), Arrays.asList(factQueue.toArray()));
+		Assert.assertTrue("Holding area is empty", pending.isEmpty());
+		Assert.assertEquals("Discarded count", 0L, pending.getDiscardedCount());
+	}
+	
+	/**
+	 * Validates that a full fact queue stops the release without blocking and keeps the remaining facts in order
+	 */
+	@Test(timeout=5000)
+	public void testFullFactQueueDoesNotBlock() {
+		PendingFacts<String> pending = new PendingFacts<String>(100);
+		ArrayBlockingQueue<String> factQueue = new ArrayBlockingQueue<String>(2);
+		persisted.add("A");
+		pending.add(Arrays.asList("A:1", "A:2", "A:3", "A:4", "A:5"));
+		Assert.assertEquals("Released count", 2, pending.release(readiness, factQueue));
+		Assert.assertEquals("Held count", 3, pending.size());
+		Assert.assertEquals("Released count into full queue", 0, pending.release(readiness, factQueue));
+		Assert.assertEquals("First queued fact", "A:1", factQueue.poll());
+		Assert.assertEquals("Second queued fact", "A:2", factQueue.poll());
+		Assert.assertEquals("Released count", 2, pending.release(readiness, factQueue));
+		Assert.assertEquals("Third queued fact", "A:3", factQueue.poll());
+		Assert.assertEquals("Fourth queued fact", "A:4", factQueue.poll());
+		Assert.assertEquals("Held count", 1, pending.size());
+	}
+	
+	/**
+	 * Validates that the oldest held facts are discarded when the capacity is exceeded
+	 */
+	@Test(timeout=5000)
+	public void testCapacityDiscardsOldest() {
+		PendingFacts<String> pending = new PendingFacts<String>(3);
+		ArrayBlockingQueue<String> factQueue = new ArrayBlockingQueue<String>(10);
+		pending.add(Arrays.asList("A:1", "A:2"));
+		pending.add(Arrays.asList("A:3", "A:4", "A:5"));
+		Assert.assertEquals("Held count", 3, pending.size());
+		Assert.assertEquals("Discarded count", 2L, pending.getDiscardedCount());
+		persisted.add("A");
+		pending.release(readiness, factQueue);
+		Assert.assertEquals("Surviving facts", Arrays.asList("A:3", "A:4", "A:5"), Arrays.asList(factQueue.toArray()));
+		pending.add(Arrays.asList("A:6"));
+		Assert.assertEquals("Cleared count", 1, pending.clear());
+		Assert.assertEquals("Discarded count", 3L, pending.getDiscardedCount());
+	}
+	
+	/**
+	 * Validates that an invalid capacity is rejected
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidCapacity() {
+		new PendingFacts<String>(0);
+	}
+}
@@ -0,0 +1,216 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.containers.buckets;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Title: AbstractTimeRotation</p>
+ * <p>Description: The period tracking and rotation protocol shared by the time rotating containers. The index of the current bucket is 
+ * published through a volatile field so accessors never lock. The first accessor to observe a new period rotates the buckets while 
+ * concurrent accessors continue to use the outgoing bucket until the new index is published.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.containers.buckets.AbstractTimeRotation</code></p>
+ */
+public abstract class AbstractTimeRotation {
+	/** the start time of the time mamgement */
+	protected volatile long startTime = -1L;
+	/** the number of buckets */
+	protected final int bucketCount;
+	/** the index of the current bucket */
+	protected volatile int currentBucket = 0;
+	/** Indicates if the time bucket has started */
+	protected final AtomicBoolean started = new AtomicBoolean(false);
+	/** Held by the thread rotating the buckets */
+	protected final AtomicBoolean rotating = new AtomicBoolean(false);
+	/** indicates if elapsed time is measured in nanos. otherwise measured in ms. */
+	protected final boolean nanos;
+	/** the elapsed time of one period */
+	protected final long period;
+	/** the current period */
+	protected final AtomicLong currentPeriod = new AtomicLong(0);
+	/** the unit of the period */
+	protected final TimeUnit periodUnit;
+	/** the number of rotations */
+	protected final AtomicLong rotations = new AtomicLong(0);
+	
+	/**
+	 * Creates a new AbstractTimeRotation
+	 * @param period The elapsed time of one period.
+	 * @param periodTimeUnit The time unit of the period.
+	 * @param bucketCount The number of buckets
+	 */
+	protected AbstractTimeRotation(long period, TimeUnit periodTimeUnit, int bucketCount) {
+		if(bucketCount<1) throw new IllegalArgumentException("Invalid bucket count [" + bucketCount + "]", new Throwable());
+		if(periodTimeUnit==null) throw new IllegalArgumentException("The passed period time unit was null", new Throwable());
+		this.bucketCount = bucketCount;
+		this.periodUnit = periodTimeUnit;
+		this.nanos = (periodTimeUnit.ordinal() < TimeUnit.MILLISECONDS.ordinal());
+		long p = nanos ? TimeUnit.NANOSECONDS.convert(period, periodUnit) : TimeUnit.MILLISECONDS.convert(period, periodUnit);
+		this.period = p==0 ? 1 : p;
+	}
+	
+	/**
+	 * Called by the rotating thread when a bucket comes into scope
+	 * @param bucketId The id of the bucket
+	 * @param period The period the bucket is opened for
+	 */
+	protected abstract void openBucket(int bucketId, long period);
+	
+	/**
+	 * Called by the rotating thread when a bucket goes out of scope
+	 * @param bucketId The id of the bucket
+	 */
+	protected abstract void closeBucket(int bucketId);
+	
+	/**
+	 * Retrieves the current timestamp in ns. if <code>nanos</code> is true, else returns in ms.
+	 * @return the current timestamp
+	 */
+	protected long getCurrentTime() {
+		if(nanos) return System.nanoTime();
+		else return System.currentTimeMillis();
+	}
+	
+	/**
+	 * Retrieves the elapsed time since start in ns. if <code>nanos</code> is true, else returns in ms.
+	 * @return the elapsed time since start
+	 */
+	protected long getElapsedTime() {
+		return getCurrentTime()  - startTime;
+	}
+	
+	/**
+	 * Returns the current period based on the rounded elapsed time didvided by the period length.
+	 * @return the actual current period 
+	 */
+	protected long getActualPeriod() {
+		return getElapsedTime()/period;
+	}
+	
+	/**
+	 * Returns the last recorded current period.
+	 * @return the last recorded current period
+	 */
+	protected long getCurrentPeriod() {
+		return currentPeriod.get();
+	}
+	
+	/**
+	 * Determines if the actual current period is higher than the last recorded period.
+	 * @return true if the actual period is greater than the last recorded period.
+	 */
+	protected boolean isNewPeriod() {
+		return currentPeriod.get() < getActualPeriod();
+	}
+	
+	/**
+	 * Rotates the buckets if a new period has started and returns the id of the current bucket.
+	 * If another thread is already rotating, the outgoing bucket id is returned without waiting.
+	 * If a bucket callback fails, the rotation still completes and the first failure is then thrown to the rotating thread.
+	 * @return the id of the current bucket
+	 */
+	protected int currentBucketId() {
+		if(started.get()) {
+			long actual = getActualPeriod();
+			if(actual > currentPeriod.get() && rotating.compareAndSet(false, true)) {
+				try {
+					if(actual > currentPeriod.get()) {
+						int current = currentBucket;
+						int next = current+1==bucketCount ? 0 : current+1;
+						RuntimeException failure = null;
+						try {
+							closeBucket(current);
+						} catch (RuntimeException e) {
+							failure = e;
+						}
+						try {
+							openBucket(next, actual);
+						} catch (RuntimeException e) {
+							if(failure==null) failure = e;
+						}
+						currentBucket = next;
+						currentPeriod.set(actual);
+						rotations.incrementAndGet();
+						if(failure!=null) throw failure;
+					}
+				} finally {
+					rotating.set(false);
+				}
+			}
+		}
+		return currentBucket;
+	}
+	
+	/**
+	 * Returns the id of the bucket before the current bucket.
+	 * @return the prior bucket id
+	 */
+	protected int priorBucketId() {
+		int current = currentBucket;
+		return current==0 ? bucketCount-1 : current-1;
+	}
+	
+	/**
+	 * Starts the time bucketing if it has not already started.
+	 */
+	public synchronized void start() {
+		if(!started.get()) {
+			startTime = getCurrentTime();
+			currentBucket = 0;
+			currentPeriod.set(1);
+			openBucket(0, 1);
+			started.set(true);
+		}
+	}
+	
+	/**
+	 * Indicates if the time bucketing has started.
+	 * @return true if started
+	 */
+	public boolean isStarted() {
+		return started.get();
+	}
+	
+	/**
+	 * Returns the number of buckets
+	 * @return the number of buckets
+	 */
+	public int getBucketCount() {
+		return bucketCount;
+	}
+	
+	/**
+	 * Returns the number of bucket rotations since start
+	 * @return the number of rotations
+	 */
+	public long getRotations() {
+		return rotations.get();
+	}
+}
@@ -0,0 +1,57 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.containers.buckets;
+
+/**
+ * <p>Title: BucketLifecycle</p>
+ * <p>Description: Typed rotation callbacks for the pojos managed by a {@link TimeRotatingBucket}. Allows plain pojos to be managed 
+ * without implementing {@link IBucket} or being annotated with {@link BucketOpen}, {@link BucketClose} and {@link BucketId}.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.containers.buckets.BucketLifecycle</code></p>
+ * @param <K> The type of the managed pojos
+ */
+public interface BucketLifecycle<K> {
+	/**
+	 * Called when the bucket holding the passed pojo comes into scope.
+	 * @param pojo The managed pojo
+	 * @param period The period the bucket is opened for
+	 */
+	public void open(K pojo, long period);
+	
+	/**
+	 * Called when the bucket holding the passed pojo goes out of scope.
+	 * @param pojo The managed pojo
+	 */
+	public void close(K pojo);
+	
+	/**
+	 * Called once at construction with the id of the bucket holding the passed pojo.
+	 * @param pojo The managed pojo
+	 * @param bucketId The bucket id
+	 */
+	public void setBucketId(K pojo, int bucketId);
+}
@@ -25,100 +25,91 @@
 package org.helios.containers.buckets;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
-import org.helios.containers.counters.IntegerCircularCounter;
+import org.apache.log4j.Logger;
 import org.helios.helpers.ClassHelper;
 
 
 /**
  * <p>Title: TimeRotatingBucket</p>
- * <p>Description: A container that rotates at access time based on elapsed intervals</p> 
+ * <p>Description: A container that rotates at access time based on elapsed intervals. Accessors read the current bucket without locking 
+ * and the bucket lifecycle callbacks are made through a {@link BucketLifecycle}, which is supplied directly or derived from the 
+ * {@link IBucket} interface or the bucket annotations of the pojo class.</p> 
  * <p>Company: Helios Development Group</p>
  * @author Whitehead (whitehead.nicholas@gmail.com)
  * @version $LastChangedRevision$
  * $HeadURL$
  * $Id$
  */
-public class TimeRotatingBucket<K> {
-	/** the start time of the time mamgement */
-	protected long startTime = -1L;
-	/** the number of buckets */
-	protected int bucketCount = -1;
-	/**  the id of the current bucket */
-	protected AtomicInteger currentBucket = new AtomicInteger(0);
-	/**  the id of the prior bucket */
-	protected AtomicInteger priorBucket = new AtomicInteger(-1);
-	/** A map of the managed buckets */
-	protected Map<Integer, Bucket<K>> buckets = null;
+public class TimeRotatingBucket<K> extends AbstractTimeRotation {
+	/** The managed buckets indexed by bucket id */
+	protected final Bucket<K>[] buckets;
 	/** The class of the pojos that the buckets contain */
-	protected Class<K> pojoClass = null;
-	/** Indicates if the time bucket has started */
-	protected AtomicBoolean started = new AtomicBoolean(false);
-	/** indicates if elapsed time is measured in nanos. otherwise measured in ms. */
-	protected boolean nanos = false;
-	/** the elapsed time of one period */
-	protected long period = -1L;
-	/** the current period */
-	protected AtomicLong currentPeriod = new AtomicLong(0);
-	/** a circular counter to track bucket switches */
-	protected IntegerCircularCounter counter = null;
-	/** the unit of the period */
-	protected TimeUnit periodUnit = null;
+	protected final Class<K> pojoClass;
+	/** The lifecycle callbacks for the managed pojos */
+	protected final BucketLifecycle<? super K> lifecycle;
+	/** Class logger */
+	protected static final Logger LOG = Logger.getLogger(TimeRotatingBucket.class);
 	/** Signature constant for an int */
 	protected static final Class<?>[] INT_ARG = new Class[]{int.class};
 	/** Signature constant for a long */
 	protected static final Class<?>[] LONG_ARG = new Class[]{long.class};
+	/** The lifecycle for pojos implementing {@link IBucket} */
+	protected static final BucketLifecycle<IBucket> IBUCKET_LIFECYCLE = new BucketLifecycle<IBucket>() {
+		public void open(IBucket pojo, long period) {
+			pojo.open(period);
+		}
+		public void close(IBucket pojo) {
+			pojo.close();
+		}
+		public void setBucketId(IBucket pojo, int bucketId) {
+			pojo.setBucketId(bucketId);
+		}
+	};
 	
 	/**
-	 * Creates a new TimeRotatingBucket that will manage the passed pojos
+	 * Creates a new TimeRotatingBucket that will manage the passed pojos using the passed lifecycle callbacks
 	 * @param period The elapsed time of one period.
-	 * @param timeUnit The time unit of the period.
+	 * @param periodTimeUnit The time unit of the period.
 	 * @param start Indicates if the time bucketing should start now.
+	 * @param lifecycle The lifecycle callbacks for the managed pojos
 	 * @param pojos An array of pojos to manage.
 	 */
 	@SuppressWarnings("unchecked")
-	public TimeRotatingBucket(long period, TimeUnit periodTimeUnit, boolean start, K...pojos) {
-		if(pojos==null || pojos.length<1) throw new RuntimeException("Cannot create an empty TimeRotatingBucket and passed pojo array was null or zero length");
-		bucketCount = pojos.length;
-		counter = new IntegerCircularCounter(bucketCount);
-		this.periodUnit = periodTimeUnit;
-		this.nanos = (periodTimeUnit.ordinal() < TimeUnit.MILLISECONDS.ordinal());
-		if(nanos) {
-			this.period = TimeUnit.NANOSECONDS.convert(period, periodUnit);
-		} else {
-			this.period = TimeUnit.MILLISECONDS.convert(period, periodUnit);
-		}
-		if(this.period==0) this.period = 1;
+	public TimeRotatingBucket(long period, TimeUnit periodTimeUnit, boolean start, BucketLifecycle<? super K> lifecycle, K...pojos) {
+		super(period, periodTimeUnit, checkPojos(pojos));
+		if(lifecycle==null) throw new IllegalArgumentException("The passed lifecycle was null", new Throwable());
 		pojoClass = (Class<K>) pojos[0].getClass();
-		boolean bucketIface = (IBucket.class.isAssignableFrom(pojoClass));
-		
-		Set<Method> openMethods = getBucketMethods(BucketOpen.class, pojoClass, LONG_ARG);
-		Set<Method> closeMethods = getBucketMethods(BucketClose.class, pojoClass);
-		Set<Method> idMethods = getBucketMethods(BucketId.class, pojoClass, INT_ARG);
-		buckets = new ConcurrentHashMap<Integer, Bucket<K>>(bucketCount);
+		this.lifecycle = lifecycle;
+		buckets = new Bucket[bucketCount];
 		for(int i = 0; i < bucketCount; i++) {
-			if(bucketIface) ((IBucket)pojos[i]).setBucketId(i);
-			else {
-				for(Method m: idMethods) {
-					try { m.invoke(pojos[i], i); } catch (Exception e) {}
-				}
-			}
-			buckets.put(i, new Bucket<K>(pojos[i], openMethods, closeMethods));
+			lifecycle.setBucketId(pojos[i], i);
+			buckets[i] = new Bucket<K>(pojos[i], lifecycle);
 		}
 		if(start) start();
 	}
 	
+	/**
+	 * Creates a new TimeRotatingBucket that will manage the passed pojos. 
+	 * The pojos must implement {@link IBucket} or be annotated with the bucket lifecycle annotations.
+	 * @param period The elapsed time of one period.
+	 * @param periodTimeUnit The time unit of the period.
+	 * @param start Indicates if the time bucketing should start now.
+	 * @param pojos An array of pojos to manage.
+	 */
+	public TimeRotatingBucket(long period, TimeUnit periodTimeUnit, boolean start, K...pojos) {
+		this(period, periodTimeUnit, start, getLifecycle(pojos), pojos);
+	}
+	
 	/**
 	 * Creates a new TimeRotatingBucket that will manage the passed pojos and automatically starts the time bucketing.
 	 * The elapsed time unit defaults to ms. 
@@ -130,62 +121,36 @@ public class TimeRotatingBucket<K> {
 	}
 	
 	/**
-	 * Retrieves the current timestamp in ns. if <code>nanos</code> is true, else returns in ms.
-	 * @return the current timestamp
+	 * Validates the passed pojo array
+	 * @param pojos The pojos to manage
+	 * @return the number of pojos
 	 */
-	protected long getCurrentTime() {
-		if(nanos) return System.nanoTime();
-		else return System.currentTimeMillis();
-	}
-	
-	/**
-	 * Retrieves the elapsed time since start in ns. if <code>nanos</code> is true, else returns in ms.
-	 * @return the elapsed time since start
-	 */
-	protected long getElapsedTime() {
-		return getCurrentTime()  - startTime;
-	}
-	
-	/**
-	 * Returns the current period based on the rounded elapsed time didvided by the period length.
-	 * @return the actual current period 
-	 */
-	protected long getActualPeriod() {
-		long elapsed = getElapsedTime();
-		return (long)elapsed/period;
-	}
-	
-	/**
-	 * Returns the last recorded current period.
-	 * @return the last recorded current period
-	 */
-	protected long getCurrentPeriod() {
-		return currentPeriod.get();
+	private static int checkPojos(Object[] pojos) {
+		if(pojos==null || pojos.length<1) throw new RuntimeException("Cannot create an empty TimeRotatingBucket and passed pojo array was null or zero length");
+		return pojos.length;
 	}
 	
-	
 	/**
-	 * Determines if the actual current period is higher than the last recorded period.
-	 * @return true if the actual period is greater than the last recorded period.
+	 * Derives the lifecycle callbacks for the passed pojos from the {@link IBucket} interface or the bucket annotations.
+	 * @param pojos The pojos to manage
+	 * @return the lifecycle callbacks
 	 */
-	protected boolean isNewPeriod() {
-		return currentPeriod.get() < getActualPeriod();
+	@SuppressWarnings("unchecked")
+	protected static <K> BucketLifecycle<? super K> getLifecycle(K...pojos) {
+		checkPojos(pojos);
+		Class<K> pojoClass = (Class<K>) pojos[0].getClass();
+		if(IBucket.class.isAssignableFrom(pojoClass)) {
+			return (BucketLifecycle<? super K>)IBUCKET_LIFECYCLE;
+		}
+		return new AnnotatedBucketLifecycle<K>(pojoClass);
 	}
 	
 	/**
 	 * Retrieves the pojo in the current bucket.
 	 * @return the pojo from the current bucket.
 	 */
-	public synchronized K get() {
-		Bucket<K> bucket = null;
-		if(started.get() && isNewPeriod()) {
-			currentPeriod.set(getActualPeriod());
-			bucket = rollBuckets();
-			
-		} else {
-			bucket = buckets.get(currentBucket.get());
-		}
-		return bucket.getPojo(); 
+	public K get() {
+		return buckets[currentBucketId()].getPojo();
 	}
 	
 	/**
@@ -193,61 +158,28 @@ public class TimeRotatingBucket<K> {
 	 * @return the pojo from the prior bucket.
 	 */
 	public K getPrior() {
-		return buckets.get(getPriorBucketId()).getPojo();
-	}
-	
-	/**
-	 * Returns the next bucket Id.
-	 * @return
-	 */
-	protected int getNextBucketId() {
-		return counter.nextCounter();
+		return buckets[priorBucketId()].getPojo();
 	}
 	
 	/**
-	 * Returns the prior bucket Id.
-	 * @return
+	 * Closes the outgoing bucket
+	 * @param bucketId The id of the bucket
 	 */
-	protected int getPriorBucketId() {
-		return counter.priorCounter();
-	}	
-	
-	/**
-	 * Closes the current bucket and opens the new one, placing the new bucket in state. 
-	 */
-	protected Bucket<K> rollBuckets() {
-		int currentBucketId = currentBucket.get();
-		Bucket<K> currBucket = buckets.get(currentBucketId);
-		currBucket.close();
-		
-		int nextBucketId = getNextBucketId();		
-		Bucket<K> nextBucket = buckets.get(nextBucketId);
-		nextBucket.open(currentPeriod.get());
-		
-		currentBucket.set(nextBucketId);
-		priorBucket.set(currentBucketId);
-		
-		return nextBucket;
-		
-		
+	@Override
+	protected void closeBucket(int bucketId) {
+		buckets[bucketId].close();
 	}
 	
 	/**
-	 * Starts the time bucketing if it has not already started.
+	 * Opens the incoming bucket
+	 * @param bucketId The id of the bucket
+	 * @param period The period the bucket is opened for
 	 */
-	public void start() {
-		if(!started.get()) {
-			startTime = getCurrentTime();
-			currentBucket.set(this.getNextBucketId());
-			currentPeriod.set(1);
-			buckets.get(currentBucket.get()).open(1);						
-			started.set(true);
-		}
+	@Override
+	protected void openBucket(int bucketId, long period) {
+		buckets[bucketId].open(period);
 	}
 	
-
-	
-	
 	/**
 	 * Extracts a set of methods from the passed class that are annotated with the passed annotation.
 	 * Returns an empty set if the class implements <code>org.helios.containers.buckets.IBucket</code>.
@@ -256,7 +188,7 @@ public class TimeRotatingBucket<K> {
 	 * @param paramTypes The parameter signature of the target methods.
 	 * @return A (possibly empty) set of methods.
 	 */
-	protected Set<Method> getBucketMethods(Class<? extends Annotation> annotation, Class<K> pojoClass, Class<?>...paramTypes) {		
+	protected static Set<Method> getBucketMethods(Class<? extends Annotation> annotation, Class<?> pojoClass, Class<?>...paramTypes) {		
 		Set<Method> methods = new HashSet<Method>();
 		if(IBucket.class.isAssignableFrom(pojoClass)) return methods;
 		if(paramTypes==null) paramTypes = new Class[]{};
@@ -281,10 +213,6 @@ public class TimeRotatingBucket<K> {
 	 */
 	public static void main(String[] args) {		
 		log("TimeRotatingBucket Test");
-//		for(Method m: AnnotatedBucket.class.getDeclaredMethods()) {
-//			Annotation ann = ClassHelper.getAnnotationFromMethod(m, BucketOpen.class, true);
-//			log(m.getName() + ":" + ann);
-//		}
 		AnnotatedBucket[] buckets = new AnnotatedBucket[] {
 			new AnnotatedBucket("John"),
 			new AnnotatedBucket("George"),
@@ -320,16 +248,6 @@ public class TimeRotatingBucket<K> {
 		System.out.println(message);
 	}
 
-
-
-	/**
-	 * Indicates if the time bucketing has started.
-	 * @return true if started
-	 */
-	public boolean isStarted() {
-		return started.get();
-	}
-
 	/**
 	 * Constructs a <code>String</code> with all attributes in name = value format.
 	 * @return a <code>String</code> representation of this object.
@@ -340,16 +258,78 @@ public class TimeRotatingBucket<K> {
 	    retValue.append(TAB).append("startTime=").append(this.startTime);    
 	    retValue.append(TAB).append("bucketCount=").append(this.bucketCount);    
 	    retValue.append(TAB).append("currentBucket=").append(this.currentBucket);    
-	    retValue.append(TAB).append("priorBucket=").append(this.priorBucket);    
+	    retValue.append(TAB).append("priorBucket=").append(priorBucketId());    
 	    retValue.append(TAB).append("pojoClass=").append(this.pojoClass.getName());    
 	    retValue.append(TAB).append("started=").append(this.started.get());    
 	    retValue.append(TAB).append("nanos=").append(this.nanos);    
 	    retValue.append(TAB).append("period=").append(this.period);    
 	    retValue.append(TAB).append("currentPeriod=").append(this.currentPeriod);    
 	    retValue.append(TAB).append("periodUnit=").append(this.periodUnit);    
+	    retValue.append(TAB).append("rotations=").append(this.rotations);    
 	    retValue.append("\n]");
 	    return retValue.toString();
 	}
+	
+	/**
+	 * <p>Title: AnnotatedBucketLifecycle</p>
+	 * <p>Description: Adapts the {@link BucketOpen}, {@link BucketClose} and {@link BucketId} annotated methods of a pojo class 
+	 * to a {@link BucketLifecycle}. The methods are resolved once per TimeRotatingBucket.</p> 
+	 * @param <K> The type of the managed pojos
+	 */
+	protected static class AnnotatedBucketLifecycle<K> implements BucketLifecycle<K> {
+		/** the open methods to be called on the pojo when its bucket comes into scope */
+		protected final Method[] openMethods;
+		/** the close methods to be called on the pojo when its bucket exits scope */
+		protected final Method[] closeMethods;
+		/** the bucket id methods to be called on the pojo at construction */
+		protected final Method[] idMethods;
+		
+		/**
+		 * Creates a new AnnotatedBucketLifecycle
+		 * @param pojoClass The annotated pojo class
+		 */
+		protected AnnotatedBucketLifecycle(Class<K> pojoClass) {
+			openMethods = getBucketMethods(BucketOpen.class, pojoClass, LONG_ARG).toArray(new Method[0]);
+			closeMethods = getBucketMethods(BucketClose.class, pojoClass).toArray(new Method[0]);
+			idMethods = getBucketMethods(BucketId.class, pojoClass, INT_ARG).toArray(new Method[0]);
+		}
+
+		public void open(K pojo, long period) {
+			invoke(BucketOpen.class, openMethods, pojo, period);
+		}
+
+		public void close(K pojo) {
+			invoke(BucketClose.class, closeMethods, pojo);
+		}
+
+		public void setBucketId(K pojo, int bucketId) {
+			invoke(BucketId.class, idMethods, pojo, bucketId);
+		}
+		
+		/**
+		 * Invokes the passed annotated methods on the passed pojo. Every method is invoked, and the first failure is 
+		 * then thrown to the caller as an annotated pojo's callback would be if it were called directly.
+		 * @param annotation The lifecycle annotation, for reporting
+		 * @param methods The methods to invoke
+		 * @param pojo The managed pojo
+		 * @param args The method arguments
+		 */
+		protected void invoke(Class<? extends Annotation> annotation, Method[] methods, K pojo, Object...args) {
+			RuntimeException failure = null;
+			for(Method m: methods) {
+				try {
+					m.invoke(Modifier.isStatic(m.getModifiers()) ? null : pojo, args);
+				} catch (Exception e) {
+					Throwable cause = (e instanceof InvocationTargetException && e.getCause()!=null) ? e.getCause() : e;
+					if(cause instanceof Error) throw (Error)cause;
+					String message = "Failed to invoke @" + annotation.getSimpleName() + " method [" + m.getName() + "] on managed instance of [" + pojo.getClass().getName() + "]";
+					LOG.error(message, cause);
+					if(failure==null) failure = cause instanceof RuntimeException ? (RuntimeException)cause : new RuntimeException(message, cause);
+				}
+			}
+			if(failure!=null) throw failure;
+		}
+	}
 
 }
 
@@ -456,37 +436,21 @@ class TestBucket extends BaseBucket implements IBucket {
  */
 class Bucket<K> {
 	/** the pojo being managed	 */
-	protected K pojo = null;
-	/** the class of the pojo */
-	protected Class<K> pojoClass = null;
-	/** the open methods to be called on the pojo when this bucket comes into scope */
-	protected Set<Method> openMethods = new HashSet<Method>();
-	/** the close methods to be called on the pojo when this bucket exits scope */
-	protected Set<Method> closeMethods = new HashSet<Method>();	
-	
-	/** the open state of the bucket */
-	protected AtomicBoolean state = new AtomicBoolean(false);
-	/** indicates if the class of the managed pojo implemented the <code>IBucket</code> interface */
-	protected boolean isIBucket = false;
-	/** the cast iBucket  */
-	protected IBucket iBucket = null;
+	protected final K pojo;
+	/** the lifecycle callbacks for the pojo */
+	protected final BucketLifecycle<? super K> lifecycle;
+	/** the open state of the bucket. Only changed by the rotating thread. */
+	protected volatile boolean state = false;
 	
 
 	/**
 	 * Creates a new Bucket to manage the passed pojo
 	 * @param pojo The pojo to manage
-	 * @param openMethods A set of open methods to be called for this pojo
-	 * @param closeMethods A set of close methods to be called for this pojo
+	 * @param lifecycle The lifecycle callbacks for the pojo
 	 */
-	public Bucket(K pojo, Set<Method> openMethods, Set<Method>  closeMethods) {
+	public Bucket(K pojo, BucketLifecycle<? super K> lifecycle) {
 		this.pojo = pojo;
-		isIBucket = this.pojo instanceof IBucket;
-		if(isIBucket) {
-			iBucket = (IBucket)pojo;
-		} else {
-			this.openMethods = openMethods;
-			this.closeMethods = closeMethods;
-		}
+		this.lifecycle = lifecycle;
 	}
 
 	/**
@@ -501,59 +465,36 @@ class Bucket<K> {
 	 * @return true if the bucket is open, false if it is closed.
 	 */
 	public boolean isOpen() {
-		return state.get();
+		return state;
 	}
 	
 	/**
-	 * Opens the bucket.
+	 * Opens the bucket. The bucket is open even if the lifecycle callback fails.
 	 */
 	protected void open(long period) {
-		if(isOpen()) {
-			System.err.println("Attempted to open a bucket that is already open [" + this.toString() + "]");
+		if(state) {
+			TimeRotatingBucket.LOG.warn("Attempted to open a bucket that is already open [" + this.toString() + "]");
 			return;
 		}
-		if(isIBucket) {
-			iBucket.open(period);
-		} else {
-			for(Method m: openMethods) {
-				try {
-					if(Modifier.isStatic(m.getModifiers())) {
-						m.invoke(null, period);
-					} else {
-						m.invoke(pojo, period);
-					}
-				} catch (Exception e) {
-					System.err.println("Failed to invoke @BucketOpen method [" + m.getName() + "] on managed instance of [" + pojo.getClass().getName() + "]:" + e);
-				}
-			}
+		try {
+			lifecycle.open(pojo, period);
+		} finally {
+			state = true;
 		}
-		state.set(true);
 	}
 	
 	/**
-	 * Closes the bucket. 
+	 * Closes the bucket. The bucket is closed even if the lifecycle callback fails.
 	 */
 	protected void close() {
-		if(!isOpen()) {
-			System.err.println("Attempted to close a bucket that is already closed [" + this.toString() + "]");
+		if(!state) {
+			TimeRotatingBucket.LOG.warn("Attempted to close a bucket that is already closed [" + this.toString() + "]");
 			return;
 		}
-		if(isIBucket) {
-			iBucket.close();
-		} else {
-			for(Method m: closeMethods) {
-				try {
-					if(Modifier.isStatic(m.getModifiers())) {
-						m.invoke(null);
-					} else {
-						m.invoke(pojo);
-					}
-				} catch (Exception e) {
-					System.err.println("Failed to invoke @BucketClose method [" + m.getName() + "] on managed instance of [" + pojo.getClass().getName() + "]:" + e);
-				}
-			}
+		try {
+			lifecycle.close(pojo);
+		} finally {
+			state = false;
 		}
-		state.set(false);
-		
 	}
 }
@@ -0,0 +1,182 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.containers.buckets;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Title: TimeRotatingBucketPerf</p>
+ * <p>Description: Measures the cost of recording into a rotating rate window from contending threads: a {@link TimeRotatingBucket} 
+ * accessed under a lock as before, the lock free {@link TimeRotatingBucket} and the striped {@link TimeRotatingCounter}.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.containers.buckets.TimeRotatingBucketPerf</code></p>
+ */
+
+public class TimeRotatingBucketPerf {
+	/** The number of contending threads */
+	public static final int THREADS = 64;
+	/** The number of recordings per thread */
+	public static final int OPS = 200000;
+	/** The number of buckets in the window */
+	public static final int BUCKETS = 10;
+	/** The bucket period in ms. */
+	public static final long PERIOD = 10;
+	
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		log("TimeRotatingBucketPerf Test");
+		int threadCount = args.length > 0 ? Integer.parseInt(args[0]) : THREADS;
+		for(int i = 0; i < 3; i++) {
+			run(threadCount, OPS/10, false);
+		}
+		run(threadCount, OPS, true);
+	}
+	
+	/**
+	 * Runs each recording strategy on the passed number of threads
+	 * @param threadCount The number of contending threads
+	 * @param ops The number of recordings per thread
+	 * @param report If true, the timings are logged
+	 */
+	public static void run(int threadCount, final int ops, boolean report) {
+		final TimeRotatingBucket<CountBucket> locked = new TimeRotatingBucket<CountBucket>(PERIOD, TimeUnit.MILLISECONDS, true, CountBucket.create(BUCKETS));
+		long lockedNanos = phase(threadCount, new Phase(){
+			public void run(int thread) {
+				for(int i = 0; i < ops; i++) {
+					synchronized(locked) {
+						locked.get().count.incrementAndGet();
+					}
+				}
+			}
+		});
+		final TimeRotatingBucket<CountBucket> lockFree = new TimeRotatingBucket<CountBucket>(PERIOD, TimeUnit.MILLISECONDS, true, CountBucket.create(BUCKETS));
+		long lockFreeNanos = phase(threadCount, new Phase(){
+			public void run(int thread) {
+				for(int i = 0; i < ops; i++) {
+					lockFree.get().count.incrementAndGet();
+				}
+			}
+		});
+		final TimeRotatingCounter counter = new TimeRotatingCounter(PERIOD, TimeUnit.MILLISECONDS, true, BUCKETS);
+		long counterNanos = phase(threadCount, new Phase(){
+			public void run(int thread) {
+				for(int i = 0; i < ops; i++) {
+					counter.increment();
+				}
+			}
+		});
+		if(report) {
+			long total = (long)ops*threadCount;
+			log("[" + threadCount + "] threads, [" + total + "] recordings");
+			log("\tLocked bucket:    " + (lockedNanos/total) + " ns/op, rotations:" + locked.getRotations());
+			log("\tLock free bucket: " + (lockFreeNanos/total) + " ns/op, rotations:" + lockFree.getRotations());
+			log("\tStriped counter:  " + (counterNanos/total) + " ns/op, rotations:" + counter.getRotations() + ", stripes:" + counter.getStripes());
+		}
+	}
+	
+	/**
+	 * Runs a test phase on the passed number of threads
+	 * @param threadCount The number of threads
+	 * @param phase The phase to run
+	 * @return the elapsed time in ns.
+	 */
+	public static long phase(int threadCount, final Phase phase) {
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		final CountDownLatch endLatch = new CountDownLatch(threadCount);
+		for(int i = 0; i < threadCount; i++) {
+			final int thread = i;
+			new Thread() {
+				public void run() {
+					try {
+						startLatch.await();
+						phase.run(thread);
+					} catch (Exception e) {
+						e.printStackTrace(System.err);
+					} finally {
+						endLatch.countDown();
+					}
+				}
+			}.start();
+		}
+		long start = System.nanoTime();
+		startLatch.countDown();
+		try { endLatch.await(); } catch (Exception e) { e.printStackTrace(System.err); }
+		return System.nanoTime()-start;
+	}
+	
+	public static void log(Object msg) {
+		System.out.println(msg);
+	}
+	
+	/**
+	 * <p>Title: Phase</p>
+	 * <p>Description: A unit of work run on each test thread</p> 
+	 */
+	static interface Phase {
+		/**
+		 * Runs the phase
+		 * @param thread The test thread index
+		 */
+		public void run(int thread);
+	}
+	
+	/**
+	 * <p>Title: CountBucket</p>
+	 * <p>Description: A pojo rate bucket</p> 
+	 */
+	static class CountBucket implements IBucket {
+		/** The bucket count */
+		final AtomicLong count = new AtomicLong(0L);
+		
+		/**
+		 * Creates an array of count buckets
+		 * @param size The number of buckets
+		 * @return an array of count buckets
+		 */
+		static CountBucket[] create(int size) {
+			CountBucket[] buckets = new CountBucket[size];
+			for(int i = 0; i < size; i++) {
+				buckets[i] = new CountBucket();
+			}
+			return buckets;
+		}
+		
+		public void open(long period) {
+			count.set(0L);
+		}
+		
+		public void close() {
+		}
+		
+		public void setBucketId(int bucketId) {
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.containers.buckets;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Title: TimeRotatingCounter</p>
+ * <p>Description: A primitive specialization of the {@link TimeRotatingBucket} for rate windows, where each bucket is a long counter.
+ * Each bucket is striped across cache line padded cells selected by the updating thread, so concurrent increments rarely contend on 
+ * the same cell, and no pojo is allocated or called back on rotation. A bucket is zeroed when it comes into scope.</p>
+ * <p>A rotation only advances one bucket however many periods elapsed since the last access, so each bucket records the period it was 
+ * opened for and buckets that fell out of the window during an idle gap are ignored by {@link #getPrior()} and {@link #getWindow()}.</p>
+ * <p>Updates made by a thread that read the current bucket id just before a rotation land in the outgoing bucket.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.containers.buckets.TimeRotatingCounter</code></p>
+ */
+public class TimeRotatingCounter extends AbstractTimeRotation {
+	/** The counter cells of all buckets. Bucket <code>b</code>, stripe <code>s</code> is at <code>((b*stripes)+s)*PAD</code> */
+	protected final AtomicLongArray cells;
+	/** The period each bucket was last opened for. Written by the rotating thread before the new bucket index is published. */
+	protected final long[] bucketPeriods;
+	/** The number of stripes per bucket, a power of 2 */
+	protected final int stripes;
+	/** The stripe selection mask */
+	protected final int stripeMask;
+	/** The number of longs between cells, keeping each cell on its own cache line */
+	public static final int PAD = 8;
+	/** The default number of stripes per bucket */
+	public static final int DEFAULT_STRIPES = Math.min(64, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()*2-1)) << 1);
+	
+	/**
+	 * Creates a new TimeRotatingCounter
+	 * @param period The elapsed time of one period.
+	 * @param periodTimeUnit The time unit of the period.
+	 * @param start Indicates if the time bucketing should start now.
+	 * @param bucketCount The number of buckets
+	 * @param stripes The number of stripes per bucket, rounded up to a power of 2
+	 */
+	public TimeRotatingCounter(long period, TimeUnit periodTimeUnit, boolean start, int bucketCount, int stripes) {
+		super(period, periodTimeUnit, bucketCount);
+		if(stripes<1) throw new IllegalArgumentException("Invalid stripe count [" + stripes + "]", new Throwable());
+		int s = Integer.highestOneBit(stripes);
+		if(s<stripes) s <<= 1;
+		this.stripes = s;
+		stripeMask = s-1;
+		cells = new AtomicLongArray(bucketCount*s*PAD);
+		bucketPeriods = new long[bucketCount];
+		if(start) start();
+	}
+	
+	/**
+	 * Creates a new TimeRotatingCounter with the default number of stripes
+	 * @param period The elapsed time of one period.
+	 * @param periodTimeUnit The time unit of the period.
+	 * @param start Indicates if the time bucketing should start now.
+	 * @param bucketCount The number of buckets
+	 */
+	public TimeRotatingCounter(long period, TimeUnit periodTimeUnit, boolean start, int bucketCount) {
+		this(period, periodTimeUnit, start, bucketCount, DEFAULT_STRIPES);
+	}
+	
+	/**
+	 * Returns the cell index of the calling thread's stripe in the passed bucket
+	 * @param bucketId The bucket id
+	 * @return the cell index
+	 */
+	protected int cell(int bucketId) {
+		long id = Thread.currentThread().getId();
+		int h = (int)(id ^ (id >>> 32));
+		h *= 0x9E3779B9;
+		h ^= (h >>> 16);
+		return ((bucketId*stripes) + (h & stripeMask)) * PAD;
+	}
+	
+	/**
+	 * Adds the passed delta to the current bucket
+	 * @param delta The delta to add
+	 */
+	public void add(long delta) {
+		cells.addAndGet(cell(currentBucketId()), delta);
+	}
+	
+	/**
+	 * Increments the current bucket
+	 */
+	public void increment() {
+		cells.incrementAndGet(cell(currentBucketId()));
+	}
+	
+	/**
+	 * Returns the sum of the passed bucket's cells
+	 * @param bucketId The bucket id
+	 * @return the bucket total
+	 */
+	protected long sum(int bucketId) {
+		long total = 0L;
+		int base = bucketId*stripes*PAD;
+		for(int i = 0; i < stripes; i++) {
+			total += cells.get(base + (i*PAD));
+		}
+		return total;
+	}
+	
+	/**
+	 * Returns the count of the current bucket
+	 * @return the current count
+	 */
+	public long get() {
+		return sum(currentBucketId());
+	}
+	
+	/**
+	 * Returns the count of the prior closed bucket, or zero if no bucket was opened for the period before the current one
+	 * @return the prior count
+	 */
+	public long getPrior() {
+		int current = currentBucketId();
+		int prior = priorBucketId();
+		if(prior==current || bucketPeriods[prior]!=bucketPeriods[current]-1) return 0L;
+		return sum(prior);
+	}
+	
+	/**
+	 * Returns the total count of the buckets opened within the last <code>bucketCount</code> periods
+	 * @return the window count
+	 */
+	public long getWindow() {
+		currentBucketId();
+		long oldest = getActualPeriod() - bucketCount;
+		long total = 0L;
+		for(int b = 0; b < bucketCount; b++) {
+			if(bucketPeriods[b] > oldest) total += sum(b);
+		}
+		return total;
+	}
+	
+	/**
+	 * Zeroes the incoming bucket and records its period
+	 * @param bucketId The id of the bucket
+	 * @param period The period the bucket is opened for
+	 */
+	@Override
+	protected void openBucket(int bucketId, long period) {
+		int base = bucketId*stripes*PAD;
+		for(int i = 0; i < stripes; i++) {
+			cells.set(base + (i*PAD), 0L);
+		}
+		bucketPeriods[bucketId] = period;
+	}
+	
+	/**
+	 * No op. The outgoing bucket retains its count until it comes back into scope.
+	 * @param bucketId The id of the bucket
+	 */
+	@Override
+	protected void closeBucket(int bucketId) {
+	}
+	
+	/**
+	 * Returns the number of stripes per bucket
+	 * @return the number of stripes
+	 */
+	public int getStripes() {
+		return stripes;
+	}
+	
+	/**
+	 * Constructs a <code>String</code> with all attributes in name = value format.
+	 * @return a <code>String</code> representation of this object.
+	 */
+	public String toString()  {
+	    final String TAB = "\n\t";
+	    StringBuilder retValue = new StringBuilder("TimeRotatingCounter [");    
+	    retValue.append(TAB).append("bucketCount=").append(this.bucketCount);    
+	    retValue.append(TAB).append("stripes=").append(this.stripes);    
+	    retValue.append(TAB).append("currentBucket=").append(this.currentBucket);    
+	    retValue.append(TAB).append("started=").append(this.started.get());    
+	    retValue.append(TAB).append("period=").append(this.period);    
+	    retValue.append(TAB).append("periodUnit=").append(this.periodUnit);    
+	    retValue.append(TAB).append("rotations=").append(this.rotations);    
+	    retValue.append("\n]");
+	    return retValue.toString();
+	}
+}
@@ -0,0 +1,44 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.patterns.queues;
+
+import java.util.Map;
+
+/**
+ * <p>Title: BatchTimeoutListener</p>
+ * <p>Description: A {@link TimeoutListener} that is notified of all the values that timed out together in one callback</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.patterns.queues.BatchTimeoutListener</code></p>
+ */
+
+public interface BatchTimeoutListener<K, V> extends TimeoutListener<K, V> {
+	/**
+	 * Callback when a batch of delayed values time out. When registered with a {@link TimeoutQueueMap}, 
+	 * this callback is invoked instead of {@link TimeoutListener#onTimeout(Object, Object)}.
+	 * @param timedOut The timed out values keyed by their keys
+	 */
+	public void onTimeouts(Map<K, V> timedOut);
+}
@@ -24,14 +24,11 @@
  */
 package org.helios.patterns.queues;
 
-import java.util.concurrent.Delayed;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
-
 
 /**
  * <p>Title: DecayQueueMap</p>
- * <p>Description: </p> 
+ * <p>Description: A {@link TimeoutQueueMap} whose entries' timeouts are extended by their original delay each time they are retrieved.
+ * Touching an entry only moves its timing wheel deadline forward, so a retrieval is O(1).</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>org.helios.patterns.queues.DecayQueueMap</code></p>
@@ -39,14 +36,6 @@ import java.util.concurrent.atomic.AtomicLong;
 
 public class DecayQueueMap<K, V> extends TimeoutQueueMap<K, V> {
 
-	/**
-	 * {@inheritDoc}
-	 * @see org.helios.patterns.queues.TimeoutQueueMap#getKeyFor(java.lang.Object, java.lang.Object, long)
-	 */
-	protected DecayQueueMapKey<K, V> getKeyFor(K key, V value, long delayTime) {
-		return new DecayQueueMapKey<K, V>(key, value, delayTime);
-	}
-	
 	/**
 	 * Retrieves the object keyed by the passed key.
 	 * If the key is found, the decay timestamp of the entry is refreshed to prolong the eviction
@@ -55,27 +44,9 @@ public class DecayQueueMap<K, V> extends TimeoutQueueMap<K, V> {
 	 * @see java.util.Map#get(java.lang.Object)
 	 */
 	public V get(Object key) {
-		V v = referenceMap.get(key);
-		if(v!=null) {
-			/*  Need to touch key in queue
-			 * but there's no way to retrieve a reference
-			 * to the mapkey in the queue, so we have to iterate
-			 * all the keys in the queue.
-			 * Needs to be optimized. 
-			 */ 
-			boolean foundKey = false;
-			for(TimeoutQueueMapKey<K, V> k: this.timeOutQueue) {
-				if(key.equals(k.getKey())) {
-					((DecayQueueMapKey)k).touch();
-					foundKey = true;
-					break;
-				}
-			}			
-			if(!foundKey) {
-				throw new RuntimeException("Value for key [" + key + "] was found in reference map but not in decay queue. Programmer Error", new Throwable());
-			}
-		}
-		return v;
+		TimeoutQueueMapKey<K, V> mapKey = referenceMap.get(key);
+		if(mapKey==null || !mapKey.touch()) return null;
+		return mapKey.getDelayed();
 	}
 	
 	/**
@@ -84,7 +55,7 @@ public class DecayQueueMap<K, V> extends TimeoutQueueMap<K, V> {
 	 * @return The value bound to the passed key or null if no value was bound
 	 */
 	public V quietGet(Object key) {
-		return referenceMap.get(key);
+		return super.get(key);
 	}
 
 
@@ -128,49 +99,5 @@ public class DecayQueueMap<K, V> extends TimeoutQueueMap<K, V> {
 	public DecayQueueMap(long defaultDelayTime, int initialCapacity) {
 		super(defaultDelayTime, initialCapacity);
 	}
-	
-	/**
-	 * <p>Title: DecayQueueMapKey</p>
-	 * <p>Description: A timestamped {@link Delayed} wrapper around a referenced object</p> 
-	 * <p>Company: Helios Development Group LLC</p>
-	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
-	 * <p><code>org.helios.patterns.queues.DecayQueueMap.DecayQueueMapKey</code></p>
-	 */
-	protected class DecayQueueMapKey<K, V> extends TimeoutQueueMapKey<K, V> {
-		/** The updateable delay timestamp */
-		protected final AtomicLong decayTimestamp = new AtomicLong(-1L);
-		/** The original delay time offset */
-		protected final long delayTime;
-		
-		/**
-		 * Creates a new DecayQueueMapKey
-		 * @param key
-		 * @param delayed
-		 * @param delayTime
-		 */
-		public DecayQueueMapKey(K key, V delayed, long delayTime) {
-			super(key, delayed, delayTime);
-			this.delayTime = delayTime;
-			touch();
-		}
-		
-		/**
-		 * Returns the time remaining on the delay for this object.
-		 * {@inheritDoc}
-		 * @see java.util.concurrent.Delayed#getDelay(java.util.concurrent.TimeUnit)
-		 */
-		@Override
-		public long getDelay(TimeUnit unit) {
-			return unit.convert((decayTimestamp.get()-System.currentTimeMillis()), TimeUnit.MILLISECONDS);
-		}
-		
-		/**
-		 * Touches the updateable delay timestamp
-		 */
-		public void touch() {
-			decayTimestamp.set(System.currentTimeMillis() + delayTime);
-		}
-		
-	}	
 
 }
@@ -24,44 +24,42 @@
  */
 package org.helios.patterns.queues;
 
+import java.util.AbstractCollection;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.concurrent.DelayQueue;
-import java.util.concurrent.Delayed;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>Title: TimeoutQueueMap</p>
- * <p>Description: </p> 
+ * <p>Description: A map whose entries time out after a delay unless removed first. Registered {@link TimeoutListener}s are notified of timed out entries.
+ * Entry timeouts are scheduled in the shared {@link TimingWheel} so puts, removes and touches are O(1) and all instances share one ticker thread.
+ * Listeners are called on the ticker thread and should not block.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>org.helios.patterns.queues.TimeoutQueueMap</code></p>
  */
 
-public class TimeoutQueueMap<K, V>  implements Runnable, Map<K, V> {
-	/** The timeout queue */
-	protected final DelayQueue<TimeoutQueueMapKey<K, V>> timeOutQueue = new DelayQueue<TimeoutQueueMapKey<K, V>>();  
-	/** The reference map */
-	protected final Map<K, V> referenceMap;
+public class TimeoutQueueMap<K, V>  implements TimingWheel.ExpiryHandler, Map<K, V> {
+	/** The timing wheel that expires entries */
+	protected final TimingWheel timingWheel;
+	/** The reference map of entry timeouts keyed by the entry key */
+	protected final ConcurrentHashMap<K, TimeoutQueueMapKey<K, V>> referenceMap;
 	/** The default delay time */
 	protected final long defaultDelayTime;
-	/** The timeout thread */
-	protected final Thread timeoutThread;
 	/** A set of registered timeout listeners */
 	protected final Set<TimeoutListener<K, V>> timeOutListeners = new CopyOnWriteArraySet<TimeoutListener<K, V>>();
 	/** The number of timeout events that have occured */
 	protected final AtomicLong timeOutCount = new AtomicLong(0L);
-	/** A flag indicating that the timeout thread should keep running */
-	protected boolean running = true;
-	/** A serial number factory for timeout threads */
-	private static final AtomicLong serial = new AtomicLong(0L);
-	/** The thread group that timeout threads run in */
-	private static final ThreadGroup timeOutThreadGroup = new ThreadGroup(TimeoutQueueMap.class.getSimpleName() + "ThreadGroup");
+	/** A flag indicating that the map has not been shutdown */
+	protected volatile boolean running = true;
 	
 	
 
@@ -73,11 +71,9 @@ public class TimeoutQueueMap<K, V>  implements Runnable, Map<K, V> {
 	 * @param concurrencyLevel the estimated number of concurrently updating threads. The implementation performs internal sizing to try to accommodate this many threads. 
 	 */
 	public TimeoutQueueMap(long defaultDelayTime, int initialCapacity, float loadFactor, int concurrencyLevel) {
-		referenceMap = new ConcurrentHashMap<K, V>(initialCapacity, loadFactor, concurrencyLevel);
+		referenceMap = new ConcurrentHashMap<K, TimeoutQueueMapKey<K, V>>(initialCapacity, loadFactor, concurrencyLevel);
 		this.defaultDelayTime = defaultDelayTime;
-		timeoutThread = new Thread(timeOutThreadGroup, this, TimeoutQueueMap.class.getSimpleName() + "Thread#" + serial.incrementAndGet());
-		timeoutThread.setDaemon(true);
-		timeoutThread.start();
+		timingWheel = TimingWheel.getInstance();
 	}
 	
 	/**
@@ -156,27 +152,18 @@ public class TimeoutQueueMap<K, V>  implements Runnable, Map<K, V> {
 	 * @param value THe value to delay
 	 * @param delayTime The timeout delay time in ms.
 	 */
-	public synchronized V put(K key, V value, long delayTime) {
+	public V put(K key, V value, long delayTime) {
 		if(!running) throw new IllegalStateException("This TimeoutQueueMap has been shutdown", new Throwable());
-		V oldValue = referenceMap.put(key, value);
-		if(oldValue!=null) {
-			timeOutQueue.remove(getKeyFor(key));
+		TimeoutQueueMapKey<K, V> mapKey = new TimeoutQueueMapKey<K, V>(this, key, value, delayTime);
+		TimeoutQueueMapKey<K, V> oldKey = referenceMap.put(key, mapKey);
+		timingWheel.schedule(mapKey);
+		if(oldKey!=null) {
+			oldKey.cancel();
+			return oldKey.delayed;
 		}
-		timeOutQueue.add(getKeyFor(key, value, delayTime));
-		return oldValue;
+		return null;
 	}
 	
-	
-	/**
-	 * @param key
-	 * @param value
-	 * @param delayTime
-	 * @return
-	 */
-	protected TimeoutQueueMapKey<K, V> getKeyFor(K key, V value, long delayTime) {
-		return new TimeoutQueueMapKey<K, V>(key, value, delayTime);
-	}
-
 	/**
 	 * Registers a name/value binding which will timeout in the default delay time unless removed before the delay time
 	 * @param key The key to retrieve the value by
@@ -195,32 +182,36 @@ public class TimeoutQueueMap<K, V>  implements Runnable, Map<K, V> {
 	 * @return The delayed value if it has not timed out, null otherwise
 	 */
 	public V remove(Object key) {
-		TimeoutQueueMapKey<K, V> tKey = getKeyFor(key);
-		boolean removed = timeOutQueue.remove(tKey);
-		V value = referenceMap.remove(key);
-		if(!removed && value!=null) {
-			// This should never happen
-			throw new IllegalStateException("The referenced value [" + value + "] with key [" + key + "] could not be removed from the timeout queue, but was retrieved from the map. Programmer Error ?", new Throwable());
-		}
-		return value;
+		TimeoutQueueMapKey<K, V> mapKey = referenceMap.remove(key);
+		if(mapKey==null || !mapKey.cancel()) return null;
+		return mapKey.delayed;
 	}
 	
 	/**
-	 * Polls the timeout queue for timedout values
+	 * Removes timed out entries and notifies the registered listeners. Called by the timing wheel's ticker thread.
 	 * {@inheritDoc}
-	 * @see java.lang.Runnable#run()
+	 * @see org.helios.patterns.queues.TimingWheel.ExpiryHandler#onExpired(java.util.List)
 	 */
-	public void run() {
-		while(running) {
+	@SuppressWarnings("unchecked")
+	public void onExpired(List<TimingWheel.Timeout> expired) {
+		Map<K, V> timedOut = new LinkedHashMap<K, V>(expired.size());
+		for(TimingWheel.Timeout timeout: expired) {
+			TimeoutQueueMapKey<K, V> mapKey = (TimeoutQueueMapKey<K, V>)timeout;
+			referenceMap.remove(mapKey.key, mapKey);
+			timedOut.put(mapKey.key, mapKey.delayed);
+		}
+		timeOutCount.addAndGet(expired.size());
+		for(TimeoutListener<K, V> listener: timeOutListeners) {
 			try {
-				TimeoutQueueMapKey<K, V> mapKey = timeOutQueue.take();
-				referenceMap.remove(mapKey.key);
-				timeOutCount.incrementAndGet();
-				for(TimeoutListener<K, V> listener: timeOutListeners) {
-					listener.onTimeout(mapKey.key, mapKey.delayed);
+				if(listener instanceof BatchTimeoutListener) {
+					((BatchTimeoutListener<K, V>)listener).onTimeouts(timedOut);
+				} else {
+					for(Map.Entry<K, V> entry: timedOut.entrySet()) {
+						listener.onTimeout(entry.getKey(), entry.getValue());
+					}
 				}
-			} catch (Exception e) {	
-				if(!running) return;
+			} catch (Exception e) {
+				e.printStackTrace(System.err);
 			}
 		}
 	}
@@ -241,80 +232,62 @@ public class TimeoutQueueMap<K, V>  implements Runnable, Map<K, V> {
 		return referenceMap.size();
 	}
 	
+	/**
+	 * Cancels all pending timeouts and disables further puts
+	 */
 	public void shutdown() {
-		timeoutThread.interrupt();
-		referenceMap.clear();
-		timeOutQueue.clear();
+		running = false;
+		purge();
 	}
 	
 	/**
 	 * Purges thus timeout queue map and removes all entries.
-	 * A bit iffy thread-wise and has race condition issues.
 	 */
-	public synchronized void purge(){
-		timeOutQueue.clear();
-		referenceMap.clear();
-	}
-	
-	TimeoutQueueMapKey getKeyFor(Object key) {
-		return new TimeoutQueueMapKey(key, null, -1);
+	public void purge(){
+		for(Iterator<TimeoutQueueMapKey<K, V>> iter = referenceMap.values().iterator(); iter.hasNext();) {
+			TimeoutQueueMapKey<K, V> mapKey = iter.next();
+			iter.remove();
+			mapKey.cancel();
+		}
 	}
 	
 	/**
 	 * <p>Title: TimeoutQueueMapKey</p>
-	 * <p>Description: A timestamped {@link Delayed} wrapper around a referenced object</p> 
+	 * <p>Description: A timing wheel timeout wrapping a referenced object</p> 
 	 * <p>Company: Helios Development Group LLC</p>
 	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
 	 * <p><code>org.helios.patterns.queues.TimeoutQueueMap.TimeoutQueueMapKey</code></p>
 	 */
-	protected class TimeoutQueueMapKey<K, V> implements Delayed {
+	protected static class TimeoutQueueMapKey<K, V> extends TimingWheel.Timeout {
 		/** The referenced delay object */
 		protected final V delayed;
 		/** The referenced delay object key */
 		protected final K key;
-		
-		/** The timestamp of the creation of this delayed instance */
-		protected final long timestamp;
-		
-	
+		/** The delay time in ms. */
+		protected final long delayTime;
 
 		/**
 		 * Creates a new TimeoutQueueMapKey
+		 * @param handler The map that handles this key's expiry
 		 * @param key The delayed value key
 		 * @param delayed The object to wrap as a delay
 		 * @param delayTime The number of milliseconds to delay this object for
 		 */
-		public TimeoutQueueMapKey(K key, V delayed, long delayTime) {
+		public TimeoutQueueMapKey(TimingWheel.ExpiryHandler handler, K key, V delayed, long delayTime) {
+			super(handler, delayTime, TimeUnit.MILLISECONDS);
 			this.delayed = delayed;
 			this.key = key;
-			this.timestamp = System.currentTimeMillis() + delayTime;
-		}
-
-		/**
-		 * Compares this delayed with the specified delayed for order. 
-		 * Returns a negative integer, zero, or a positive integer as this object is less than, equal to, 
-		 * or greater than the specified object. 
-		 * @see java.lang.Comparable#compareTo(java.lang.Object)
-		 */
-		@Override
-		public int compareTo(Delayed delayed) {
-			long thisDelay = getDelay(TimeUnit.MILLISECONDS);
-			long thatDelay = delayed.getDelay(TimeUnit.MILLISECONDS);
-			return thisDelay <= thatDelay ? -1: 1; 			
+			this.delayTime = delayTime;
 		}
-
+		
 		/**
-		 * Returns the time remaining on the delay for this object.
-		 * {@inheritDoc}
-		 * @see java.util.concurrent.Delayed#getDelay(java.util.concurrent.TimeUnit)
+		 * Extends the timeout by the original delay time from now
+		 * @return true if the key was still pending
 		 */
-		@Override
-		public long getDelay(TimeUnit unit) {
-			return unit.convert((timestamp-System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+		public boolean touch() {
+			return touch(delayTime, TimeUnit.MILLISECONDS);
 		}
 
-
-
 		/**
 		 * Constructs a <code>String</code> with all attributes
 		 * in name = value format.
@@ -327,7 +300,7 @@ public class TimeoutQueueMap<K, V>  implements Runnable, Map<K, V> {
 		    StringBuilder retValue = new StringBuilder("TimeoutQueueMapKey [")
 		    	.append(TAB).append("key:").append(this.key)
 		        .append(TAB).append("delayed:").append(this.delayed)
-		        .append(TAB).append("timestamp:").append(this.timestamp)
+		        .append(TAB).append("timestamp:").append(getTimestamp())
 		        .append(TAB).append("delay:").append(getDelay(TimeUnit.MILLISECONDS)).append(" ms.")
 		        .append("\n]");    
 		    return retValue.toString();
@@ -350,42 +323,11 @@ public class TimeoutQueueMap<K, V>  implements Runnable, Map<K, V> {
 		}
 
 		/**
-		 * Returns 
+		 * Returns the UTC timestamp this key times out at
 		 * @return the timestamp
 		 */
 		public long getTimestamp() {
-			return timestamp;
-		}
-
-		/**
-		 * {@inheritDoc}
-		 * @see java.lang.Object#hashCode()
-		 */
-		@Override
-		public int hashCode() {
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + ((key == null) ? 0 : key.hashCode());
-			return result;
-		}
-
-		/**
-		 * {@inheritDoc}
-		 * @see java.lang.Object#equals(java.lang.Object)
-		 */
-		@Override
-		public boolean equals(Object obj) {
-			if (obj == null)
-				return false;
-			if(obj instanceof TimeoutQueueMapKey) {
-				TimeoutQueueMapKey other = (TimeoutQueueMapKey)obj;
-				return key.equals(other.key);
-			}
-			return false;
-		}
-
-		private TimeoutQueueMap getOuterType() {
-			return TimeoutQueueMap.this;
+			return System.currentTimeMillis() + getDelay(TimeUnit.MILLISECONDS);
 		}
 	}
 	/**
@@ -398,10 +340,9 @@ public class TimeoutQueueMap<K, V>  implements Runnable, Map<K, V> {
 	public String toString() {
 	    final String TAB = "\n\t";
 	    StringBuilder retValue = new StringBuilder("TimeoutQueueMap [")
-	        .append(TAB).append("timeOutQueue:").append(this.timeOutQueue)
 	        .append(TAB).append("referenceMap:").append(this.referenceMap)
 	        .append(TAB).append("defaultDelayTime:").append(this.defaultDelayTime)
-	        .append(TAB).append("timeoutThread:").append(this.timeoutThread)
+	        .append(TAB).append("timingWheelTick:").append(timingWheel.getTickMillis()).append(" ms.")
 	        .append(TAB).append("timeOutListeners:").append(this.timeOutListeners)
 	        .append(TAB).append("timeOutCount:").append(this.timeOutCount)
 	        .append("\n]");    
@@ -439,7 +380,10 @@ public class TimeoutQueueMap<K, V>  implements Runnable, Map<K, V> {
 	 * @see java.util.Map#containsValue(java.lang.Object)
 	 */
 	public boolean containsValue(Object value) {
-		return referenceMap.containsValue(value);
+		for(TimeoutQueueMapKey<K, V> mapKey: referenceMap.values()) {
+			if(value==null ? mapKey.delayed==null : value.equals(mapKey.delayed)) return true;
+		}
+		return false;
 	}
 
 	/**
@@ -448,7 +392,8 @@ public class TimeoutQueueMap<K, V>  implements Runnable, Map<K, V> {
 	 * @see java.util.Map#get(java.lang.Object)
 	 */
 	public V get(Object key) {
-		return referenceMap.get(key);
+		TimeoutQueueMapKey<K, V> mapKey = referenceMap.get(key);
+		return mapKey==null ? null : mapKey.delayed;
 	}
 
 
@@ -459,11 +404,7 @@ public class TimeoutQueueMap<K, V>  implements Runnable, Map<K, V> {
 	 * @see java.util.Map#putAll(java.util.Map)
 	 */
 	public void putAll(Map<? extends K, ? extends V> m) {
-		if(!running) throw new IllegalStateException("This TimeoutQueueMap has been shutdown", new Throwable());
-		for(Map.Entry<? extends K, ? extends V> entry: m.entrySet()) {
-			put(entry.getKey(), entry.getValue());
-		}
-		referenceMap.putAll(m);
+		putAll(m, defaultDelayTime);
 	}
 	
 	/**
@@ -477,7 +418,6 @@ public class TimeoutQueueMap<K, V>  implements Runnable, Map<K, V> {
 		for(Map.Entry<? extends K, ? extends V> entry: m.entrySet()) {
 			put(entry.getKey(), entry.getValue(), timeout);
 		}
-		referenceMap.putAll(m);
 	}
 	
 
@@ -498,27 +438,46 @@ public class TimeoutQueueMap<K, V>  implements Runnable, Map<K, V> {
 	}
 
 	/**
+	 * Returns a read only view of the values
 	 * @return
 	 * @see java.util.Map#values()
 	 */
 	public Collection<V> values() {
-		return referenceMap.values();
+		return new AbstractCollection<V>() {
+			public Iterator<V> iterator() {
+				final Iterator<TimeoutQueueMapKey<K, V>> iter = referenceMap.values().iterator();
+				return new Iterator<V>() {
+					public boolean hasNext() {
+						return iter.hasNext();
+					}
+					public V next() {
+						return iter.next().delayed;
+					}
+					public void remove() {
+						throw new UnsupportedOperationException("Removing values is not supported", new Throwable());
+					}
+				};
+			}
+			public int size() {
+				return referenceMap.size();
+			}
+		};
 	}
 	
 	private class ReadOnlyEntry implements  Entry<K,V> {
-		private final Entry<K,V> inner;
+		private final TimeoutQueueMapKey<K,V> inner;
 		/**
 		 * Creates a new ReadOnlyEntry
 		 * @param inner
 		 */
-		public ReadOnlyEntry(java.util.Map.Entry<K, V> inner) {
+		public ReadOnlyEntry(TimeoutQueueMapKey<K, V> inner) {
 			this.inner = inner;
 		}
 		public K getKey() {
-			return inner.getKey();
+			return inner.key;
 		}
 		public V getValue() {			
-			return inner.getValue();
+			return inner.delayed;
 		}
 		public V setValue(V value) {
 			throw new UnsupportedOperationException("Setting values in Entries is not supported", new Throwable());
@@ -534,8 +493,8 @@ public class TimeoutQueueMap<K, V>  implements Runnable, Map<K, V> {
 	 */
 	public Set<Entry<K, V>> entrySet() {
 		Set<Entry<K, V>> entrySet = new HashSet<Entry<K, V>>(size());
-		for(Entry<K,V> entry: referenceMap.entrySet()) {
-			entrySet.add(new ReadOnlyEntry(entry));
+		for(TimeoutQueueMapKey<K, V> mapKey: referenceMap.values()) {
+			entrySet.add(new ReadOnlyEntry(mapKey));
 		}
 		return entrySet;
 	}
@@ -546,7 +505,15 @@ public class TimeoutQueueMap<K, V>  implements Runnable, Map<K, V> {
 	 * @see java.util.Map#equals(java.lang.Object)
 	 */
 	public boolean equals(Object o) {
-		return referenceMap.equals(o);
+		if(o==this) return true;
+		if(!(o instanceof Map)) return false;
+		Map<?, ?> other = (Map<?, ?>)o;
+		if(other.size()!=size()) return false;
+		for(TimeoutQueueMapKey<K, V> mapKey: referenceMap.values()) {
+			Object otherValue = other.get(mapKey.key);
+			if(mapKey.delayed==null ? (otherValue!=null || !other.containsKey(mapKey.key)) : !mapKey.delayed.equals(otherValue)) return false;
+		}
+		return true;
 	}
 
 	/**
@@ -554,6 +521,10 @@ public class TimeoutQueueMap<K, V>  implements Runnable, Map<K, V> {
 	 * @see java.util.Map#hashCode()
 	 */
 	public int hashCode() {
-		return referenceMap.hashCode();
+		int h = 0;
+		for(TimeoutQueueMapKey<K, V> mapKey: referenceMap.values()) {
+			h += (mapKey.key==null ? 0 : mapKey.key.hashCode()) ^ (mapKey.delayed==null ? 0 : mapKey.delayed.hashCode());
+		}
+		return h;
 	}
 }
@@ -0,0 +1,175 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.patterns.queues;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Title: TimeoutQueueMapPerf</p>
+ * <p>Description: Measures put, touch and remove costs of the timing wheel backed {@link TimeoutQueueMap} and {@link DecayQueueMap} 
+ * with one million live keys, with a single writer and with contending writers, and the expiry lag of one million keys timing out together.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.patterns.queues.TimeoutQueueMapPerf</code></p>
+ */
+
+public class TimeoutQueueMapPerf {
+	/** The number of live keys */
+	public static final int KEYS = 1000000;
+	
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		log("TimeoutQueueMapPerf Test");
+		log("Timing wheel tick:" + TimingWheel.getInstance().getTickMillis() + " ms.");
+		for(int i = 0; i < 3; i++) {
+			runLive(1, KEYS/10, false);
+		}
+		for(int threadCount: new int[]{1, 4}) {
+			runLive(threadCount, KEYS, true);
+		}
+		runExpiry(KEYS, 1000);
+	}
+	
+	/**
+	 * Puts, touches and removes keys that do not time out during the test
+	 * @param threadCount The number of writer threads
+	 * @param keys The total number of keys
+	 * @param report If true, the timings are logged
+	 */
+	public static void runLive(final int threadCount, final int keys, boolean report) {
+		final DecayQueueMap<Integer, Integer> map = new DecayQueueMap<Integer, Integer>(600000, keys*2, 0.75f, threadCount*4);
+		final int perThread = keys/threadCount;
+		long putNanos = phase(threadCount, new Phase(){
+			public void run(int thread) {
+				int base = thread*perThread;
+				for(int i = 0; i < perThread; i++) {
+					map.put(base+i, i);
+				}
+			}
+		});
+		long touchNanos = phase(threadCount, new Phase(){
+			public void run(int thread) {
+				int base = thread*perThread;
+				for(int i = 0; i < perThread; i++) {
+					map.get(base+i);
+				}
+			}
+		});
+		int live = map.size();
+		long removeNanos = phase(threadCount, new Phase(){
+			public void run(int thread) {
+				int base = thread*perThread;
+				for(int i = 0; i < perThread; i++) {
+					map.remove(base+i);
+				}
+			}
+		});
+		map.shutdown();
+		if(report) {
+			long ops = (long)perThread*threadCount;
+			log("[" + threadCount + "] writers, [" + live + "] live keys: put " + (putNanos/ops) + " ns/op, touch " + (touchNanos/ops) + " ns/op, remove " + (removeNanos/ops) + " ns/op");
+		}
+	}
+	
+	/**
+	 * Puts keys that all time out together and measures the lag between the deadline and the last expiry callback
+	 * @param keys The number of keys
+	 * @param delay The timeout in ms.
+	 */
+	public static void runExpiry(final int keys, long delay) {
+		TimeoutQueueMap<Integer, Integer> map = new TimeoutQueueMap<Integer, Integer>(delay, keys*2);
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicLong expired = new AtomicLong(0L);
+		final AtomicLong batches = new AtomicLong(0L);
+		map.addListener(new BatchTimeoutListener<Integer, Integer>(){
+			public void onTimeouts(Map<Integer, Integer> timedOut) {
+				batches.incrementAndGet();
+				if(expired.addAndGet(timedOut.size())==keys) latch.countDown();
+			}
+			public void onTimeout(Integer key, Integer value) {
+			}
+		});
+		long start = System.currentTimeMillis();
+		for(int i = 0; i < keys; i++) {
+			map.put(i, i);
+		}
+		long loaded = System.currentTimeMillis();
+		try { latch.await(); } catch (Exception e) { e.printStackTrace(System.err); }
+		long end = System.currentTimeMillis();
+		log("Expired [" + expired.get() + "] keys in [" + batches.get() + "] batches. Load:" + (loaded-start) + " ms. Last expiry lag after final deadline:" + (end-loaded-delay) + " ms.");
+		map.shutdown();
+	}
+	
+	/**
+	 * Runs a test phase on the passed number of threads
+	 * @param threadCount The number of threads
+	 * @param phase The phase to run
+	 * @return the elapsed time in ns.
+	 */
+	public static long phase(int threadCount, final Phase phase) {
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		final CountDownLatch endLatch = new CountDownLatch(threadCount);
+		for(int i = 0; i < threadCount; i++) {
+			final int thread = i;
+			new Thread() {
+				public void run() {
+					try {
+						startLatch.await();
+						phase.run(thread);
+					} catch (Exception e) {
+						e.printStackTrace(System.err);
+					} finally {
+						endLatch.countDown();
+					}
+				}
+			}.start();
+		}
+		long start = System.nanoTime();
+		startLatch.countDown();
+		try { endLatch.await(); } catch (Exception e) { e.printStackTrace(System.err); }
+		return System.nanoTime()-start;
+	}
+	
+	public static void log(Object msg) {
+		System.out.println(msg);
+	}
+	
+	/**
+	 * <p>Title: Phase</p>
+	 * <p>Description: A unit of work run on each test thread</p> 
+	 */
+	static interface Phase {
+		/**
+		 * Runs the phase
+		 * @param thread The test thread index
+		 */
+		public void run(int thread);
+	}
+}
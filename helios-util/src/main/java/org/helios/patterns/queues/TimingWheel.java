@@ -0,0 +1,469 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.patterns.queues;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.helios.helpers.ConfigurationHelper;
+
+/**
+ * <p>Title: TimingWheel</p>
+ * <p>Description: A hashed hierarchical timing wheel that expires {@link Timeout}s for all its users from one shared ticker thread.
+ * The wheel has four levels of 256 slots. Level 0 slots are one tick wide and each higher level's slots span a full rotation of the level below, 
+ * so the wheel covers 2<sup>32</sup> ticks before timeouts are parked in the top level and re-cascaded.</p>
+ * <p>Scheduling, cancelling and touching a timeout are O(1) and never lock:<ul>
+ * <li>Scheduled timeouts are queued and linked into their slot by the ticker on its next tick.</li>
+ * <li>Cancelled timeouts are flagged and queued, and unlinked by the ticker on its next tick.</li>
+ * <li>Touching a timeout only moves its deadline forward. When the ticker reaches the slot of a touched timeout, the timeout is re-linked at its new deadline.</li>
+ * </ul>
+ * Expired timeouts are delivered to their {@link ExpiryHandler} in one batch per handler per tick on the ticker thread, so handlers should not block.
+ * Timeouts expire no earlier than their deadline and no later than one tick after it, plus scheduling latency.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.patterns.queues.TimingWheel</code></p>
+ */
+public class TimingWheel implements Runnable {
+	/** The tick duration in ns. */
+	protected final long tickNanos;
+	/** The nano time the wheel's tick count starts from */
+	protected final long startNanos;
+	/** The slot list heads indexed by level and slot */
+	protected final Timeout[][] wheel = new Timeout[LEVELS][SLOTS];
+	/** Timeouts scheduled since the last tick */
+	protected final ConcurrentLinkedQueue<Timeout> scheduled = new ConcurrentLinkedQueue<Timeout>();
+	/** Timeouts cancelled since the last tick */
+	protected final ConcurrentLinkedQueue<Timeout> cancelled = new ConcurrentLinkedQueue<Timeout>();
+	/** The ticker thread */
+	protected final Thread ticker;
+	/** The number of ticks processed. Only accessed by the ticker thread. */
+	protected long currentTick = 0;
+	/** The number of timeouts linked into the wheel. Only updated by the ticker thread. */
+	protected volatile int linkedCount = 0;
+	/** Indicates that the ticker is parked waiting for timeouts to be scheduled */
+	protected volatile boolean idle = false;
+	/** The number of timeouts that have expired */
+	protected final AtomicLong expiredCount = new AtomicLong(0L);
+	/** The number of timeouts re-linked after being touched */
+	protected final AtomicLong relinkCount = new AtomicLong(0L);
+	
+	/** The number of wheel levels */
+	public static final int LEVELS = 4;
+	/** The number of bits of the tick used to index the slots of one level */
+	public static final int SLOT_BITS = 8;
+	/** The number of slots in each level */
+	public static final int SLOTS = 1 << SLOT_BITS;
+	/** The slot index mask */
+	public static final int SLOT_MASK = SLOTS-1;
+	/** The largest tick offset that can be placed in the wheel */
+	public static final long MAX_TICK_OFFSET = (1L << (SLOT_BITS*LEVELS))-1;
+	/** The system property or environmental variable that overrides the shared wheel's tick in ms. */
+	public static final String TICK_PROP = "org.helios.patterns.queues.wheel.tick";
+	/** The default tick in ms. */
+	public static final int DEFAULT_TICK = 5;
+	
+	/** The shared wheel */
+	private static volatile TimingWheel sharedWheel = null;
+	/** The shared wheel lock */
+	private static final Object lock = new Object();
+	
+	/**
+	 * Acquires the shared TimingWheel
+	 * @return the shared TimingWheel
+	 */
+	public static TimingWheel getInstance() {
+		if(sharedWheel==null) {
+			synchronized(lock) {
+				if(sharedWheel==null) {
+					sharedWheel = new TimingWheel(ConfigurationHelper.getIntSystemThenEnvProperty(TICK_PROP, DEFAULT_TICK), TimeUnit.MILLISECONDS);
+				}
+			}
+		}
+		return sharedWheel;
+	}
+	
+	/**
+	 * Creates a new TimingWheel and starts its ticker thread
+	 * @param tick The tick duration
+	 * @param unit The unit of the tick duration
+	 */
+	public TimingWheel(long tick, TimeUnit unit) {
+		tickNanos = unit.toNanos(tick);
+		if(tickNanos<1) throw new IllegalArgumentException("Invalid tick [" + tick + " " + unit + "]", new Throwable());
+		startNanos = System.nanoTime();
+		ticker = new Thread(this, getClass().getSimpleName() + "Ticker#" + System.identityHashCode(this));
+		ticker.setDaemon(true);
+		ticker.start();
+	}
+	
+	/**
+	 * Schedules a timeout. A timeout can only be scheduled once.
+	 * @param timeout The timeout to schedule
+	 */
+	public void schedule(Timeout timeout) {
+		if(timeout.state!=Timeout.NEW) {
+			throw new IllegalStateException("The timeout has already been scheduled or cancelled", new Throwable());
+		}
+		timeout.wheel = this;
+		if(!Timeout.stateUpdater.compareAndSet(timeout, Timeout.NEW, Timeout.SCHEDULED)) {
+			throw new IllegalStateException("The timeout has already been scheduled or cancelled", new Throwable());
+		}
+		scheduled.offer(timeout);
+		if(idle) LockSupport.unpark(ticker);
+	}
+	
+	/**
+	 * The ticker loop
+	 * {@inheritDoc}
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run() {
+		while(true) {
+			try {
+				if(linkedCount==0 && scheduled.isEmpty()) {
+					idle = true;
+					if(scheduled.isEmpty()) LockSupport.parkNanos(this, TimeUnit.SECONDS.toNanos(1));
+					idle = false;
+					if(linkedCount==0) {
+						// nothing is linked so the wheel can skip straight to now
+						currentTick = Math.max(currentTick, (System.nanoTime()-startNanos)/tickNanos);
+					}
+					continue;
+				}
+				long sleep = startNanos + ((currentTick+1)*tickNanos) - System.nanoTime();
+				if(sleep>0) {
+					LockSupport.parkNanos(this, sleep);
+					continue;
+				}
+				tick();
+			} catch (Throwable t) {
+				t.printStackTrace(System.err);
+			}
+		}
+	}
+	
+	/**
+	 * Advances the wheel by one tick, cascading higher level slots and expiring the current level 0 slot.
+	 */
+	protected void tick() {
+		transferScheduled();
+		transferCancelled();
+		currentTick++;
+		// cascade from the highest level whose slot boundary was reached down to level 1
+		int cascadeLevel = 0;
+		while(cascadeLevel < LEVELS-1 && ((currentTick >>> (SLOT_BITS*(cascadeLevel+1)))<<(SLOT_BITS*(cascadeLevel+1)))==currentTick) {
+			cascadeLevel++;
+		}
+		for(int level = cascadeLevel; level > 0; level--) {
+			Timeout t = detachSlot(level, (int)((currentTick >>> (SLOT_BITS*level)) & SLOT_MASK));
+			while(t!=null) {
+				Timeout next = t.next;
+				t.next = null; t.prev = null;
+				if(t.state==Timeout.SCHEDULED) link(t); else linkedCount--;
+				t = next;
+			}
+		}
+		Timeout t = detachSlot(0, (int)(currentTick & SLOT_MASK));
+		if(t==null) return;
+		Map<ExpiryHandler, List<Timeout>> batches = null;
+		while(t!=null) {
+			Timeout next = t.next;
+			t.next = null; t.prev = null;
+			if(t.state!=Timeout.SCHEDULED) {
+				linkedCount--;
+			} else if(expiryTick(t.deadline) > currentTick) {
+				relinkCount.incrementAndGet();
+				link(t);
+			} else {
+				linkedCount--;
+				if(Timeout.stateUpdater.compareAndSet(t, Timeout.SCHEDULED, Timeout.EXPIRED)) {
+					if(batches==null) batches = new IdentityHashMap<ExpiryHandler, List<Timeout>>();
+					List<Timeout> batch = batches.get(t.handler);
+					if(batch==null) {
+						batch = new ArrayList<Timeout>();
+						batches.put(t.handler, batch);
+					}
+					batch.add(t);
+				}
+			}
+			t = next;
+		}
+		if(batches!=null) {
+			for(Map.Entry<ExpiryHandler, List<Timeout>> batch: batches.entrySet()) {
+				expiredCount.addAndGet(batch.getValue().size());
+				try {
+					batch.getKey().onExpired(batch.getValue());
+				} catch (Throwable e) {
+					e.printStackTrace(System.err);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Links timeouts scheduled since the last tick into the wheel
+	 */
+	protected void transferScheduled() {
+		Timeout t = null;
+		while((t = scheduled.poll())!=null) {
+			if(t.state==Timeout.SCHEDULED) {
+				linkedCount++;
+				link(t);
+			}
+		}
+	}
+	
+	/**
+	 * Unlinks timeouts cancelled since the last tick from the wheel
+	 */
+	protected void transferCancelled() {
+		Timeout t = null;
+		while((t = cancelled.poll())!=null) {
+			if(t.level!=-1) {
+				unlink(t);
+				linkedCount--;
+			}
+		}
+	}
+	
+	/**
+	 * Computes the tick a deadline expires on, rounding up so a timeout never expires early
+	 * @param deadline The deadline in nano time
+	 * @return the expiry tick
+	 */
+	protected long expiryTick(long deadline) {
+		long offset = deadline - startNanos;
+		if(offset<=0) return 0;
+		return (offset + tickNanos - 1) / tickNanos;
+	}
+	
+	/**
+	 * Links a timeout into the slot for its deadline.
+	 * @param t The timeout to link
+	 */
+	protected void link(Timeout t) {
+		long expiry = expiryTick(t.deadline);
+		long offset = expiry - currentTick;
+		if(offset < 1) {
+			offset = 1;
+			expiry = currentTick + 1;
+		} else if(offset > MAX_TICK_OFFSET) {
+			offset = MAX_TICK_OFFSET;
+			expiry = currentTick + MAX_TICK_OFFSET;
+		}
+		int level = 0;
+		while(level < LEVELS-1 && offset >= (1L << (SLOT_BITS*(level+1)))) {
+			level++;
+		}
+		int slot = (int)((expiry >>> (SLOT_BITS*level)) & SLOT_MASK);
+		Timeout head = wheel[level][slot];
+		t.prev = null;
+		t.next = head;
+		if(head!=null) head.prev = t;
+		wheel[level][slot] = t;
+		t.level = level;
+		t.slot = slot;
+	}
+	
+	/**
+	 * Unlinks a timeout from its slot
+	 * @param t The timeout to unlink
+	 */
+	protected void unlink(Timeout t) {
+		if(t.prev==null) {
+			wheel[t.level][t.slot] = t.next;
+		} else {
+			t.prev.next = t.next;
+		}
+		if(t.next!=null) t.next.prev = t.prev;
+		t.next = null; t.prev = null;
+		t.level = -1; t.slot = -1;
+	}
+	
+	/**
+	 * Detaches the whole list of a slot
+	 * @param level The wheel level
+	 * @param slot The slot index
+	 * @return the head of the detached list
+	 */
+	protected Timeout detachSlot(int level, int slot) {
+		Timeout head = wheel[level][slot];
+		wheel[level][slot] = null;
+		for(Timeout t = head; t!=null; t = t.next) {
+			t.level = -1; t.slot = -1;
+		}
+		return head;
+	}
+	
+	/**
+	 * Returns the tick duration in ms.
+	 * @return the tick duration in ms.
+	 */
+	public long getTickMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(tickNanos);
+	}
+	
+	/**
+	 * Returns the approximate number of timeouts linked into the wheel, including cancelled timeouts not yet unlinked
+	 * @return the number of linked timeouts
+	 */
+	public int getLinkedCount() {
+		return linkedCount;
+	}
+	
+	/**
+	 * Returns the number of timeouts that have expired
+	 * @return the number of timeouts that have expired
+	 */
+	public long getExpiredCount() {
+		return expiredCount.get();
+	}
+	
+	/**
+	 * Returns the number of touched timeouts re-linked at their extended deadline
+	 * @return the number of re-linked timeouts
+	 */
+	public long getRelinkCount() {
+		return relinkCount.get();
+	}
+	
+	/**
+	 * <p>Title: ExpiryHandler</p>
+	 * <p>Description: Receives the timeouts it owns as they expire, in one batch per tick</p> 
+	 */
+	public static interface ExpiryHandler {
+		/**
+		 * Callback with the timeouts owned by this handler that expired on one tick
+		 * @param expired The expired timeouts
+		 */
+		public void onExpired(List<Timeout> expired);
+	}
+	
+	/**
+	 * <p>Title: Timeout</p>
+	 * <p>Description: A cancellable, touchable deadline scheduled in a {@link TimingWheel}. 
+	 * The slot links are only accessed by the wheel's ticker thread.</p> 
+	 */
+	public static class Timeout {
+		/** The handler that receives this timeout on expiry */
+		protected final ExpiryHandler handler;
+		/** The deadline in nano time */
+		protected volatile long deadline;
+		/** The timeout state */
+		protected volatile int state = NEW;
+		/** The wheel this timeout is scheduled in */
+		protected volatile TimingWheel wheel = null;
+		/** The next timeout in the slot */
+		Timeout next = null;
+		/** The previous timeout in the slot */
+		Timeout prev = null;
+		/** The wheel level this timeout is linked in, or -1 if not linked */
+		int level = -1;
+		/** The slot this timeout is linked in, or -1 if not linked */
+		int slot = -1;
+		
+		/** The state of a timeout that has not been scheduled */
+		static final int NEW = 0;
+		/** The state of a scheduled timeout */
+		static final int SCHEDULED = 1;
+		/** The state of a cancelled timeout */
+		static final int CANCELLED = 2;
+		/** The state of an expired timeout */
+		static final int EXPIRED = 3;
+		/** The longest supported delay in ns. (about 73 years), which keeps nano time deadlines from overflowing */
+		static final long MAX_DELAY_NANOS = Long.MAX_VALUE >> 2;
+		/** The state updater */
+		static final AtomicIntegerFieldUpdater<Timeout> stateUpdater = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+		
+		/**
+		 * Creates a new Timeout
+		 * @param handler The handler that receives this timeout on expiry
+		 * @param delay The delay until the timeout expires
+		 * @param unit The unit of the delay
+		 */
+		public Timeout(ExpiryHandler handler, long delay, TimeUnit unit) {
+			if(handler==null) throw new IllegalArgumentException("The passed handler was null", new Throwable());
+			this.handler = handler;
+			this.deadline = System.nanoTime() + Math.min(unit.toNanos(delay), MAX_DELAY_NANOS);
+		}
+		
+		/**
+		 * Cancels this timeout
+		 * @return true if this call cancelled the timeout, false if it had already expired or been cancelled
+		 */
+		public boolean cancel() {
+			if(stateUpdater.compareAndSet(this, SCHEDULED, CANCELLED)) {
+				wheel.cancelled.offer(this);
+				return true;
+			}
+			return stateUpdater.compareAndSet(this, NEW, CANCELLED);
+		}
+		
+		/**
+		 * Moves this timeout's deadline to the passed delay from now. The deadline is only ever moved forward.
+		 * @param delay The delay from now
+		 * @param unit The unit of the delay
+		 * @return true if the timeout was still pending
+		 */
+		public boolean touch(long delay, TimeUnit unit) {
+			long newDeadline = System.nanoTime() + Math.min(unit.toNanos(delay), MAX_DELAY_NANOS);
+			if(newDeadline - deadline > 0) deadline = newDeadline;
+			return state==SCHEDULED || state==NEW;
+		}
+		
+		/**
+		 * Returns the remaining delay
+		 * @param unit The unit to return the delay in
+		 * @return the remaining delay
+		 */
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(deadline-System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+		
+		/**
+		 * Indicates if this timeout has expired
+		 * @return true if this timeout has expired
+		 */
+		public boolean isExpired() {
+			return state==EXPIRED;
+		}
+		
+		/**
+		 * Indicates if this timeout has been cancelled
+		 * @return true if this timeout has been cancelled
+		 */
+		public boolean isCancelled() {
+			return state==CANCELLED;
+		}
+	}
+}
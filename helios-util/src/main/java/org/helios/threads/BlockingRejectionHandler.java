@@ -0,0 +1,106 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.threads;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Title: BlockingRejectionHandler</p>
+ * <p>Description: A RejectedExecutionHandler that applies backpressure instead of dropping tasks. When the executor's work queue is full, 
+ * the submitting thread waits for space in the queue. Tasks are only dropped (and counted) if the executor has been shut down
+ * or the submitting thread is interrupted while waiting.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.threads.BlockingRejectionHandler</code></p>
+ */
+
+public class BlockingRejectionHandler implements RejectedExecutionHandler {
+	/** The count of dropped tasks */
+	protected final AtomicLong drops;
+	/** The count of submissions that waited for queue space */
+	protected final AtomicLong waits = new AtomicLong(0L);
+
+	/**
+	 * Creates a new BlockingRejectionHandler
+	 * @param drops The drop counter to use
+	 */
+	public BlockingRejectionHandler(final AtomicLong drops) {
+		this.drops = drops==null ? new AtomicLong(0L) : drops;
+	}
+	
+	/**
+	 * Creates a new BlockingRejectionHandler
+	 */
+	public BlockingRejectionHandler() {
+		this(null);
+	}
+
+	/**
+	 * Method that may be invoked by a ThreadPoolExecutor when execute cannot accept a task.
+	 * @param runnable the runnable task requested to be executed
+	 * @param executor the executor attempting to execute this task 
+	 */
+	@Override
+	public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+		if(executor.isShutdown()) {
+			drops.incrementAndGet();
+			return;
+		}
+		waits.incrementAndGet();
+		try {
+			executor.getQueue().put(runnable);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			drops.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Returns the count of dropped tasks
+	 * @return the count of dropped tasks
+	 */
+	public long getDrops() {
+		return drops.get();
+	}
+	
+	/**
+	 * Returns the count of submissions that waited for queue space
+	 * @return the count of backpressure waits
+	 */
+	public long getWaits() {
+		return waits.get();
+	}
+	
+	/**
+	 * Resets the counters.
+	 */
+	public void resetCounter() {
+		drops.set(0L);
+		waits.set(0L);
+	}
+}
@@ -24,6 +24,7 @@
  */
 package org.helios.patterns.queues;
 
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
@@ -145,6 +146,29 @@ public class DecayQueueMapTestCase {
 		Assert.assertEquals("DecayMap timeout count was not 1", 1, decayMap.getTimeOutCount());
 	}
 	
+	@Test
+	public void testBatchListener() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicLong timedOutCount = new AtomicLong(0);
+		decayMap = new DecayQueueMap<Long, String>(500);
+		decayMap.addListener(new BatchTimeoutListener<Long, String>(){
+			public void onTimeouts(Map<Long, String> timedOut) {
+				if(timedOutCount.addAndGet(timedOut.size())==100) latch.countDown();
+			}
+			public void onTimeout(Long key, String value) {
+				Assert.fail("Single timeout callback invoked on a batch listener");
+			}
+		});
+		String value = testName.getMethodName();
+		for(long key = 0; key < 100; key++) {
+			decayMap.put(key, value);
+		}
+		Assert.assertTrue("Latch did not drop within the timeout period", latch.await(1000, TimeUnit.MILLISECONDS));
+		Assert.assertEquals("Batched timeout count was not 100", 100, timedOutCount.get());
+		Assert.assertEquals("DecayMap size was not 0", 0, decayMap.size());
+		Assert.assertEquals("DecayMap timeout count was not 100", 100, decayMap.getTimeOutCount());
+	}
+	
 //	@Test
 //	public void testItemRetrievedQuietly() throws Exception {
 //		decayMap = new DecayQueueMap<Long, String>(1000);
@@ -0,0 +1,124 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ *
+ */
+package test.org.helios.containers.buckets;
+
+import java.util.concurrent.TimeUnit;
+
+import org.helios.containers.buckets.BucketClose;
+import org.helios.containers.buckets.BucketId;
+import org.helios.containers.buckets.BucketOpen;
+import org.helios.containers.buckets.TimeRotatingBucket;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>Title: TimeRotatingBucketTestCase</p>
+ * <p>Description: Test case for the propagation of failures from annotated bucket lifecycle methods.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>test.org.helios.containers.buckets.TimeRotatingBucketTestCase</code></p>
+ */
+
+public class TimeRotatingBucketTestCase {
+	/** The bucket period in ms. */
+	public static final long PERIOD = 50L;
+
+	/**
+	 * Fails the outgoing bucket's close and checks the failure reaches the accessor while the rotation still completes
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testCloseFailurePropagates() throws Exception {
+		AnnotatedPojo first = new AnnotatedPojo();
+		AnnotatedPojo second = new AnnotatedPojo();
+		TimeRotatingBucket<AnnotatedPojo> trb = new TimeRotatingBucket<AnnotatedPojo>(PERIOD, TimeUnit.MILLISECONDS, true, first, second);
+		Assert.assertSame("Current before rotation", first, trb.get());
+		first.failClose = true;
+		Thread.sleep(PERIOD * 3);
+		try {
+			trb.get();
+			Assert.fail("Expected the close failure");
+		} catch (IllegalStateException e) {
+			Assert.assertEquals("Failure", "close failed", e.getMessage());
+		}
+		Assert.assertSame("Current after failed rotation", second, trb.get());
+		Assert.assertEquals("Second opened", 1, second.opens);
+		Assert.assertEquals("Rotations", 1, trb.getRotations());
+	}
+
+	/**
+	 * Checks a checked exception thrown by an annotated method is wrapped with the pojo method in the message
+	 */
+	@Test
+	public void testCheckedFailureWrapped() {
+		try {
+			new TimeRotatingBucket<FailingIdPojo>(PERIOD, TimeUnit.MILLISECONDS, false, new FailingIdPojo());
+			Assert.fail("Expected the bucket id failure");
+		} catch (RuntimeException e) {
+			Assert.assertTrue("Cause", e.getCause() instanceof Exception && "no id".equals(e.getCause().getMessage()));
+			Assert.assertTrue("Message [" + e.getMessage() + "]", e.getMessage().indexOf("@BucketId method [setBucketId]")!=-1);
+		}
+	}
+
+	/**
+	 * <p>Title: AnnotatedPojo</p>
+	 * <p>Description: An annotated pojo that counts opens and can fail its close.</p>
+	 */
+	public static class AnnotatedPojo {
+		/** The number of opens */
+		int opens = 0;
+		/** The bucket id */
+		int bucketId = -1;
+		/** Fails the next close when true */
+		volatile boolean failClose = false;
+
+		@BucketOpen
+		public void open(long period) {
+			opens++;
+		}
+
+		@BucketClose
+		public void close() {
+			if(failClose) throw new IllegalStateException("close failed");
+		}
+
+		@BucketId
+		public void setBucketId(int bucketId) {
+			this.bucketId = bucketId;
+		}
+	}
+
+	/**
+	 * <p>Title: FailingIdPojo</p>
+	 * <p>Description: An annotated pojo whose bucket id method throws a checked exception.</p>
+	 */
+	public static class FailingIdPojo {
+		@BucketId
+		public void setBucketId(int bucketId) throws Exception {
+			throw new Exception("no id");
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ *
+ */
+package test.org.helios.containers.buckets;
+
+import java.util.concurrent.TimeUnit;
+
+import org.helios.containers.buckets.TimeRotatingCounter;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>Title: TimeRotatingCounterTestCase</p>
+ * <p>Description: Test case for the window semantics of the {@link TimeRotatingCounter}, driven by a manual clock.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>test.org.helios.containers.buckets.TimeRotatingCounterTestCase</code></p>
+ */
+
+public class TimeRotatingCounterTestCase {
+	/** The bucket period in ms. */
+	public static final long PERIOD = 10L;
+	/** The number of buckets */
+	public static final int BUCKETS = 4;
+
+	/**
+	 * Checks the current, prior and window counts across consecutive periods
+	 */
+	@Test
+	public void testConsecutivePeriods() {
+		ManualCounter counter = new ManualCounter();
+		counter.add(1);
+		counter.now = PERIOD * 2;
+		counter.add(2);
+		counter.now = PERIOD * 3;
+		counter.add(3);
+		Assert.assertEquals("Rotations", 2, counter.getRotations());
+		Assert.assertEquals("Current", 3, counter.get());
+		Assert.assertEquals("Prior", 2, counter.getPrior());
+		Assert.assertEquals("Window", 6, counter.getWindow());
+	}
+
+	/**
+	 * Checks that counts of periods that fell out of the window during an idle gap are not reported
+	 */
+	@Test
+	public void testIdleGapExpiresBuckets() {
+		ManualCounter counter = new ManualCounter();
+		counter.add(1);
+		counter.now = PERIOD * 2;
+		counter.add(2);
+		counter.now = PERIOD * 3;
+		counter.add(3);
+		// two idle periods: the first bucket is out of the window and the prior period had no bucket
+		counter.now = PERIOD * 5;
+		Assert.assertEquals("Current after short gap", 0, counter.get());
+		Assert.assertEquals("Prior after short gap", 0, counter.getPrior());
+		Assert.assertEquals("Window after short gap", 5, counter.getWindow());
+		// a gap longer than the window expires every bucket
+		counter.now = PERIOD * 20;
+		Assert.assertEquals("Current after long gap", 0, counter.get());
+		Assert.assertEquals("Prior after long gap", 0, counter.getPrior());
+		Assert.assertEquals("Window after long gap", 0, counter.getWindow());
+		counter.add(7);
+		counter.now = PERIOD * 21;
+		counter.add(1);
+		Assert.assertEquals("Prior after resume", 7, counter.getPrior());
+		Assert.assertEquals("Window after resume", 8, counter.getWindow());
+	}
+
+	/**
+	 * <p>Title: ManualCounter</p>
+	 * <p>Description: A counter whose clock is set by the test.</p>
+	 */
+	public static class ManualCounter extends TimeRotatingCounter {
+		/** The current time in ms. */
+		long now = 0L;
+
+		/**
+		 * Creates a new started ManualCounter
+		 */
+		public ManualCounter() {
+			super(PERIOD, TimeUnit.MILLISECONDS, false, BUCKETS, 2);
+			start();
+		}
+
+		@Override
+		protected long getCurrentTime() {
+			return now;
+		}
+	}
+}